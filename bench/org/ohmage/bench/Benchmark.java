@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.bench;
+
+/**
+ * A single operation whose cost is measured by the {@link BenchmarkRunner}.
+ * The fixtures should be built in {@link #setUp()} so that only the operation
+ * itself is timed.
+ *
+ * @author John Jenkins
+ */
+public abstract class Benchmark {
+	private final String name;
+	private final int itemsPerOp;
+
+	/**
+	 * Creates a new benchmark.
+	 *
+	 * @param name The benchmark's unique name. This is used to filter the
+	 * 			   benchmarks and to match results against a baseline.
+	 *
+	 * @param itemsPerOp The number of items, e.g. survey responses or
+	 * 					 points, that are processed by each operation. This is
+	 * 					 used to report the cost per item.
+	 *
+	 * @throws IllegalArgumentException The name is null or the number of
+	 * 									items is not positive.
+	 */
+	protected Benchmark(final String name, final int itemsPerOp) {
+		if(name == null) {
+			throw new IllegalArgumentException("The name is null.");
+		}
+		if(itemsPerOp < 1) {
+			throw new IllegalArgumentException(
+				"The number of items per operation must be positive.");
+		}
+
+		this.name = name;
+		this.itemsPerOp = itemsPerOp;
+	}
+
+	/**
+	 * Returns the benchmark's name.
+	 *
+	 * @return The benchmark's name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of items processed by each operation.
+	 *
+	 * @return The number of items processed by each operation.
+	 */
+	public int getItemsPerOp() {
+		return itemsPerOp;
+	}
+
+	/**
+	 * Builds the fixtures for this benchmark. This is called once before any
+	 * of the operations are run and is not timed. By default, this does
+	 * nothing.
+	 *
+	 * @throws Exception The fixtures could not be built.
+	 */
+	public void setUp() throws Exception {
+		// Do nothing.
+	}
+
+	/**
+	 * Performs the operation once.
+	 *
+	 * @return Some result of the operation. This is consumed by the runner so
+	 * 		   that the JIT cannot remove the work as dead code.
+	 *
+	 * @throws Exception The operation failed, which will abort the run.
+	 */
+	public abstract Object run() throws Exception;
+}
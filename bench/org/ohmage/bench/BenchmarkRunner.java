@@ -0,0 +1,466 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.joda.time.DateTime;
+import org.ohmage.util.DateTimeUtils;
+
+/**
+ * <p>
+ * Runs the benchmarks and reports the results. This is meant to be called
+ * from the command line, usually through the "bench" Ant target.
+ * </p>
+ *
+ * <p>
+ * Each benchmark is run for a number of warm-up iterations, whose results
+ * are discarded, and then for a number of measured iterations. Each
+ * iteration runs the operation repeatedly for a fixed amount of time. The
+ * mean and standard deviation of the per-iteration costs are printed and,
+ * optionally, written as JSON, along with the number of bytes allocated per
+ * operation when the JVM can report it. If a baseline from a previous run is
+ * given,
+ * any benchmark that has become slower than the allowed threshold fails the
+ * run.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public final class BenchmarkRunner {
+	private static final int DEFAULT_WARMUP_ITERATIONS = 5;
+	private static final int DEFAULT_ITERATIONS = 10;
+	private static final long DEFAULT_ITERATION_MILLIS = 1000;
+	private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+	private static final String JSON_KEY_TIMESTAMP = "timestamp";
+	private static final String JSON_KEY_JAVA_VERSION = "java_version";
+	private static final String JSON_KEY_WARMUP_ITERATIONS = "warmup_iterations";
+	private static final String JSON_KEY_ITERATIONS = "iterations";
+	private static final String JSON_KEY_ITERATION_MILLIS = "iteration_millis";
+	private static final String JSON_KEY_RESULTS = "results";
+	private static final String JSON_KEY_NAME = "name";
+	private static final String JSON_KEY_ITEMS_PER_OP = "items_per_op";
+	private static final String JSON_KEY_OPS = "ops";
+	private static final String JSON_KEY_MEAN = "mean_ns_per_op";
+	private static final String JSON_KEY_STDDEV = "stddev_ns_per_op";
+	private static final String JSON_KEY_MIN = "min_ns_per_op";
+	private static final String JSON_KEY_MAX = "max_ns_per_op";
+	private static final String JSON_KEY_MEAN_PER_ITEM = "mean_ns_per_item";
+	private static final String JSON_KEY_BYTES = "bytes_per_op";
+	private static final String JSON_KEY_BYTES_PER_ITEM = "bytes_per_item";
+
+	/**
+	 * The JVM's per-thread allocation counter or null if it does not have
+	 * one.
+	 */
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN;
+	static {
+		java.lang.management.ThreadMXBean bean =
+			ManagementFactory.getThreadMXBean();
+
+		if((bean instanceof com.sun.management.ThreadMXBean) &&
+			((com.sun.management.ThreadMXBean) bean)
+				.isThreadAllocatedMemorySupported()) {
+
+			((com.sun.management.ThreadMXBean) bean)
+				.setThreadAllocatedMemoryEnabled(true);
+			THREAD_BEAN = (com.sun.management.ThreadMXBean) bean;
+		}
+		else {
+			THREAD_BEAN = null;
+		}
+	}
+
+	/**
+	 * Consumes the results of the operations so that the JIT cannot remove
+	 * them.
+	 */
+	private static volatile int sink;
+
+	/**
+	 * The measurements of a single benchmark.
+	 *
+	 * @author John Jenkins
+	 */
+	private static final class Result {
+		private final Benchmark benchmark;
+		private final long ops;
+		private final double mean;
+		private final double stddev;
+		private final double min;
+		private final double max;
+		private final double bytes;
+
+		/**
+		 * Summarizes the per-iteration costs of a benchmark.
+		 *
+		 * @param allocatedBytes The number of bytes allocated by all of the
+		 * 						 operations or a negative number if it is
+		 * 						 unknown.
+		 */
+		private Result(
+				final Benchmark benchmark,
+				final long ops,
+				final double[] nanosPerOp,
+				final long allocatedBytes) {
+
+			this.benchmark = benchmark;
+			this.ops = ops;
+			bytes = (allocatedBytes < 0) ? -1 : ((double) allocatedBytes) / ops;
+
+			double tMin = Double.MAX_VALUE;
+			double tMax = 0;
+			double sum = 0;
+			for(double value : nanosPerOp) {
+				sum += value;
+				tMin = Math.min(tMin, value);
+				tMax = Math.max(tMax, value);
+			}
+			mean = sum / nanosPerOp.length;
+
+			double squares = 0;
+			for(double value : nanosPerOp) {
+				squares += (value - mean) * (value - mean);
+			}
+			stddev =
+				(nanosPerOp.length > 1) ?
+					Math.sqrt(squares / (nanosPerOp.length - 1)) :
+					0;
+
+			min = tMin;
+			max = tMax;
+		}
+	}
+
+	/**
+	 * Default constructor. Private to prevent instantiation.
+	 */
+	private BenchmarkRunner() {}
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args The arguments as defined in {@link #printUsage()}.
+	 *
+	 * @throws Exception A benchmark failed or the results could not be
+	 * 					 written.
+	 */
+	public static void main(final String[] args) throws Exception {
+		Pattern filter = null;
+		File output = null;
+		File baseline = null;
+		double threshold = DEFAULT_THRESHOLD_PERCENT;
+		int warmupIterations = DEFAULT_WARMUP_ITERATIONS;
+		int iterations = DEFAULT_ITERATIONS;
+		long iterationMillis = DEFAULT_ITERATION_MILLIS;
+
+		try {
+			for(int i = 0; i < args.length; i++) {
+				String arg = args[i];
+
+				// Ant passes empty strings for unset properties.
+				if(arg.length() == 0) {
+					continue;
+				}
+
+				if("-f".equals(arg)) {
+					filter = Pattern.compile(args[++i]);
+				}
+				else if("-o".equals(arg)) {
+					output = new File(args[++i]);
+				}
+				else if("-b".equals(arg)) {
+					baseline = new File(args[++i]);
+				}
+				else if("-r".equals(arg)) {
+					threshold = Double.parseDouble(args[++i]);
+				}
+				else if("-w".equals(arg)) {
+					warmupIterations = Integer.parseInt(args[++i]);
+				}
+				else if("-i".equals(arg)) {
+					iterations = Integer.parseInt(args[++i]);
+				}
+				else if("-t".equals(arg)) {
+					iterationMillis = Long.parseLong(args[++i]);
+				}
+				else {
+					printUsage();
+					System.exit(2);
+				}
+			}
+		}
+		catch(ArrayIndexOutOfBoundsException e) {
+			printUsage();
+			System.exit(2);
+		}
+		catch(NumberFormatException e) {
+			printUsage();
+			System.exit(2);
+		}
+		if((iterations < 1) || (warmupIterations < 0) || (iterationMillis < 1)) {
+			printUsage();
+			System.exit(2);
+		}
+
+		List<Result> results = new ArrayList<Result>();
+		for(Benchmark benchmark : DomainBenchmarks.all()) {
+			if((filter != null) &&
+				(! filter.matcher(benchmark.getName()).find())) {
+
+				continue;
+			}
+
+			benchmark.setUp();
+
+			for(int i = 0; i < warmupIterations; i++) {
+				runIteration(benchmark, iterationMillis, new long[1]);
+			}
+
+			long[] ops = new long[1];
+			double[] nanosPerOp = new double[iterations];
+			long allocatedBytes = getAllocatedBytes();
+			for(int i = 0; i < iterations; i++) {
+				nanosPerOp[i] = runIteration(benchmark, iterationMillis, ops);
+			}
+			if(allocatedBytes >= 0) {
+				allocatedBytes = getAllocatedBytes() - allocatedBytes;
+			}
+
+			Result result =
+				new Result(benchmark, ops[0], nanosPerOp, allocatedBytes);
+			results.add(result);
+
+			System.out.println(
+				String.format(
+					"%-32s %14.1f ns/op +- %10.1f %12.1f ns/item " +
+						"%12.1f B/item",
+					benchmark.getName(),
+					result.mean,
+					result.stddev,
+					result.mean / benchmark.getItemsPerOp(),
+					result.bytes / benchmark.getItemsPerOp()));
+		}
+
+		if(output != null) {
+			writeResults(
+				output,
+				results,
+				warmupIterations,
+				iterations,
+				iterationMillis);
+			System.out.println("Results written to: " + output);
+		}
+
+		if((baseline != null) &&
+			(! compareToBaseline(baseline, results, threshold))) {
+
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Prints how to run this class.
+	 */
+	private static void printUsage() {
+		System.out.println(
+			"Usage: BenchmarkRunner " +
+				"[-f <name regex>] " +
+				"[-o <results file>] " +
+				"[-b <baseline file> [-r <allowed regression percent>]] " +
+				"[-w <warm-up iterations>] " +
+				"[-i <iterations>] " +
+				"[-t <milliseconds per iteration>]");
+	}
+
+	/**
+	 * Returns the number of bytes that have been allocated by this thread.
+	 *
+	 * @return The number of bytes or -1 if the JVM cannot report it.
+	 */
+	private static long getAllocatedBytes() {
+		if(THREAD_BEAN == null) {
+			return -1;
+		}
+
+		return
+			THREAD_BEAN.getThreadAllocatedBytes(
+				Thread.currentThread().getId());
+	}
+
+	/**
+	 * Runs a benchmark's operation repeatedly for the given amount of time.
+	 *
+	 * @param benchmark The benchmark to run.
+	 *
+	 * @param iterationMillis The minimum length of the iteration.
+	 *
+	 * @param ops A single-element array to which the number of operations
+	 * 			  that were run will be added.
+	 *
+	 * @return The mean number of nanoseconds per operation.
+	 */
+	private static double runIteration(
+			final Benchmark benchmark,
+			final long iterationMillis,
+			final long[] ops)
+			throws Exception {
+
+		long iterationNanos = iterationMillis * 1000000L;
+		long count = 0;
+		int hash = 0;
+
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			Object result = benchmark.run();
+			hash ^= System.identityHashCode(result);
+			count++;
+			elapsed = System.nanoTime() - start;
+		}
+		while(elapsed < iterationNanos);
+
+		sink ^= hash;
+		ops[0] += count;
+		return ((double) elapsed) / count;
+	}
+
+	/**
+	 * Writes the results as JSON.
+	 */
+	private static void writeResults(
+			final File output,
+			final List<Result> results,
+			final int warmupIterations,
+			final int iterations,
+			final long iterationMillis)
+			throws IOException {
+
+		File parent = output.getAbsoluteFile().getParentFile();
+		if(parent != null) {
+			parent.mkdirs();
+		}
+
+		JsonGenerator generator =
+			(new JsonFactory()).createJsonGenerator(output, JsonEncoding.UTF8);
+		generator.useDefaultPrettyPrinter();
+
+		generator.writeStartObject();
+		generator.writeStringField(
+			JSON_KEY_TIMESTAMP,
+			DateTimeUtils.getIso8601DateString(new DateTime(), true));
+		generator.writeStringField(
+			JSON_KEY_JAVA_VERSION,
+			System.getProperty("java.version"));
+		generator.writeNumberField(
+			JSON_KEY_WARMUP_ITERATIONS,
+			warmupIterations);
+		generator.writeNumberField(JSON_KEY_ITERATIONS, iterations);
+		generator.writeNumberField(JSON_KEY_ITERATION_MILLIS, iterationMillis);
+
+		generator.writeArrayFieldStart(JSON_KEY_RESULTS);
+		for(Result result : results) {
+			generator.writeStartObject();
+			generator.writeStringField(
+				JSON_KEY_NAME,
+				result.benchmark.getName());
+			generator.writeNumberField(
+				JSON_KEY_ITEMS_PER_OP,
+				result.benchmark.getItemsPerOp());
+			generator.writeNumberField(JSON_KEY_OPS, result.ops);
+			generator.writeNumberField(JSON_KEY_MEAN, result.mean);
+			generator.writeNumberField(JSON_KEY_STDDEV, result.stddev);
+			generator.writeNumberField(JSON_KEY_MIN, result.min);
+			generator.writeNumberField(JSON_KEY_MAX, result.max);
+			generator.writeNumberField(
+				JSON_KEY_MEAN_PER_ITEM,
+				result.mean / result.benchmark.getItemsPerOp());
+			if(result.bytes >= 0) {
+				generator.writeNumberField(JSON_KEY_BYTES, result.bytes);
+				generator.writeNumberField(
+					JSON_KEY_BYTES_PER_ITEM,
+					result.bytes / result.benchmark.getItemsPerOp());
+			}
+			generator.writeEndObject();
+		}
+		generator.writeEndArray();
+
+		generator.writeEndObject();
+		generator.close();
+	}
+
+	/**
+	 * Compares the results to those of a previous run.
+	 *
+	 * @return True if none of the benchmarks became slower than the threshold
+	 * 		   allows; false, otherwise. Benchmarks that are not in the
+	 * 		   baseline are ignored.
+	 */
+	private static boolean compareToBaseline(
+			final File baseline,
+			final List<Result> results,
+			final double threshold)
+			throws IOException {
+
+		JsonNode baselineResults =
+			(new ObjectMapper()).readTree(baseline).get(JSON_KEY_RESULTS);
+		if(baselineResults == null) {
+			throw new IOException(
+				"The baseline does not contain any results: " + baseline);
+		}
+
+		boolean passed = true;
+		for(Result result : results) {
+			for(JsonNode baselineResult : baselineResults) {
+				if(! result.benchmark.getName().equals(
+						baselineResult.path(JSON_KEY_NAME).getTextValue())) {
+
+					continue;
+				}
+
+				double baselineMean =
+					baselineResult.path(JSON_KEY_MEAN).getDoubleValue();
+				double change =
+					((result.mean - baselineMean) / baselineMean) * 100;
+
+				if(change > threshold) {
+					passed = false;
+					System.out.println(
+						String.format(
+							"REGRESSION: %s is %.1f%% slower than the " +
+								"baseline (%.1f ns/op vs %.1f ns/op).",
+							result.benchmark.getName(),
+							change,
+							result.mean,
+							baselineMean));
+				}
+			}
+		}
+
+		return passed;
+	}
+}
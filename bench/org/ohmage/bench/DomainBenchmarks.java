@@ -0,0 +1,640 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.bench;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.ohmage.domain.ColumnKey;
+import org.ohmage.domain.Location;
+import org.ohmage.domain.Location.LocationColumnKey;
+import org.ohmage.domain.MobilityPoint;
+import org.ohmage.domain.MobilityPoint.MobilityColumnKey;
+import org.ohmage.domain.MobilityPoint.SensorData.SensorDataColumnKey;
+import org.ohmage.domain.Observer;
+import org.ohmage.domain.campaign.Campaign;
+import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.service.UploadValidationServices;
+import org.ohmage.util.DateTimeUtils;
+import org.ohmage.util.StringUtils;
+
+/**
+ * The benchmarks for the CPU-bound domain code: parsing campaigns,
+ * validating and serializing survey responses and Mobility points,
+ * validating observer stream data, decoding the fields common to every
+ * upload, and the string and date utilities that all of them use.
+ *
+ * @author John Jenkins
+ */
+public final class DomainBenchmarks {
+	/**
+	 * The number of surveys in the campaign fixture.
+	 */
+	public static final int NUM_SURVEYS = 10;
+	/**
+	 * The number of prompts in each survey of the campaign fixture.
+	 */
+	public static final int NUM_PROMPTS_PER_SURVEY = 50;
+	/**
+	 * The number of survey responses in an upload.
+	 */
+	public static final int NUM_SURVEY_RESPONSES = 1000;
+	/**
+	 * The number of Mobility points in an upload.
+	 */
+	public static final int NUM_MOBILITY_POINTS = 5000;
+	/**
+	 * The number of observer data points in an upload.
+	 */
+	public static final int NUM_STREAM_POINTS = 10;
+	/**
+	 * The number of values passed through each utility method.
+	 */
+	public static final int NUM_UTILITY_VALUES = 1000;
+
+	private static final long SEED = 1234L;
+
+	private static final String USERNAME = "bench.user";
+	private static final String CLIENT = "bench";
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	/**
+	 * Default constructor. Private to prevent instantiation.
+	 */
+	private DomainBenchmarks() {}
+
+	/**
+	 * Returns all of the benchmarks.
+	 *
+	 * @return All of the benchmarks, in the order in which they should be
+	 * 		   run.
+	 */
+	public static List<Benchmark> all() {
+		List<Benchmark> result = new ArrayList<Benchmark>();
+
+		result.add(
+			new Benchmark("campaign.parseXml", 1) {
+				private String xml;
+
+				@Override
+				public void setUp() {
+					xml =
+						Fixtures.campaignXml(
+							NUM_SURVEYS,
+							NUM_PROMPTS_PER_SURVEY);
+				}
+
+				@Override
+				public Object run() throws Exception {
+					return newCampaign(xml);
+				}
+			});
+
+		result.add(
+			new Benchmark("campaign.getSurveys", 1) {
+				private Campaign campaign;
+
+				@Override
+				public void setUp() throws Exception {
+					campaign = newCampaign();
+				}
+
+				@Override
+				public Object run() {
+					return campaign.getSurveys();
+				}
+			});
+
+		result.add(
+			new Benchmark(
+					"surveyResponse.fromJson",
+					NUM_SURVEY_RESPONSES) {
+
+				private Campaign campaign;
+				private JSONArray responses;
+
+				@Override
+				public void setUp() throws Exception {
+					campaign = newCampaign();
+					responses =
+						Fixtures.surveyResponses(
+							campaign,
+							NUM_SURVEY_RESPONSES,
+							SEED);
+				}
+
+				@Override
+				public Object run() throws Exception {
+					return parseSurveyResponses(campaign, responses);
+				}
+			});
+
+		result.add(
+			new Benchmark(
+					"surveyResponse.toJson",
+					NUM_SURVEY_RESPONSES) {
+
+				private List<SurveyResponse> responses;
+
+				@Override
+				public void setUp() throws Exception {
+					Campaign campaign = newCampaign();
+					responses =
+						parseSurveyResponses(
+							campaign,
+							Fixtures.surveyResponses(
+								campaign,
+								NUM_SURVEY_RESPONSES,
+								SEED));
+				}
+
+				@Override
+				public Object run() throws Exception {
+					// These are the same flags the library uses to upload
+					// survey responses.
+					JSONArray result = new JSONArray();
+					for(SurveyResponse response : responses) {
+						result.put(
+							response.toJson(
+								false, false, false, false, true, true,
+								true, true, true, false, false, true, true,
+								true, true, false, false));
+					}
+					return result;
+				}
+			});
+
+		result.add(
+			new Benchmark(
+					"mobilityPoint.fromJson",
+					NUM_MOBILITY_POINTS) {
+
+				private JSONArray points;
+
+				@Override
+				public void setUp() throws Exception {
+					points =
+						Fixtures.mobilityPoints(NUM_MOBILITY_POINTS, SEED);
+				}
+
+				@Override
+				public Object run() throws Exception {
+					return parseMobilityPoints(points);
+				}
+			});
+
+		result.add(
+			new Benchmark(
+					"mobilityPoint.toJson",
+					NUM_MOBILITY_POINTS) {
+
+				private List<MobilityPoint> points;
+
+				@Override
+				public void setUp() throws Exception {
+					points =
+						parseMobilityPoints(
+							Fixtures.mobilityPoints(
+								NUM_MOBILITY_POINTS,
+								SEED));
+				}
+
+				@Override
+				public Object run() throws Exception {
+					JSONArray result = new JSONArray();
+					for(MobilityPoint point : points) {
+						result.put(
+							point.toJson(
+								false,
+								MobilityColumnKey.ALL_COLUMNS));
+					}
+					return result;
+				}
+			});
+
+		result.add(
+			new Benchmark(
+					"mobilityPoint.toCsvRow",
+					NUM_MOBILITY_POINTS) {
+
+				private List<MobilityPoint> points;
+				private List<ColumnKey> columns;
+
+				@Override
+				public void setUp() throws Exception {
+					points =
+						parseMobilityPoints(
+							Fixtures.mobilityPoints(
+								NUM_MOBILITY_POINTS,
+								SEED));
+
+					// The fixtures are not classified, so the classifier
+					// columns are left out.
+					columns = new ArrayList<ColumnKey>();
+					columns.add(MobilityColumnKey.ID);
+					columns.add(MobilityColumnKey.MODE);
+					columns.add(MobilityColumnKey.TIME);
+					columns.add(MobilityColumnKey.TIMESTAMP);
+					columns.add(MobilityColumnKey.TIMEZONE);
+					columns.add(MobilityColumnKey.SUB_TYPE);
+					columns.addAll(LocationColumnKey.ALL_COLUMNS);
+					columns.addAll(SensorDataColumnKey.ALL_COLUMNS);
+				}
+
+				@Override
+				public Object run() throws Exception {
+					List<Object> row =
+						new ArrayList<Object>(
+							Collections.nCopies(columns.size(), null));
+
+					int result = 0;
+					for(MobilityPoint point : points) {
+						point.toCsvRow(columns, row);
+						result += row.size();
+					}
+					return result;
+				}
+			});
+
+		result.add(
+			new Benchmark(
+					"location.streamJson",
+					NUM_MOBILITY_POINTS) {
+
+				private List<Location> locations;
+
+				@Override
+				public void setUp() throws Exception {
+					locations = new ArrayList<Location>(NUM_MOBILITY_POINTS);
+					for(MobilityPoint point :
+							parseMobilityPoints(
+								Fixtures.mobilityPoints(
+									NUM_MOBILITY_POINTS,
+									SEED))) {
+
+						locations.add(point.getLocation());
+					}
+				}
+
+				@Override
+				public Object run() throws Exception {
+					StringWriter writer = new StringWriter();
+					JsonGenerator generator =
+						JSON_FACTORY.createJsonGenerator(writer);
+
+					generator.writeStartArray();
+					for(Location location : locations) {
+						generator.writeStartObject();
+						location.streamJson(
+							generator,
+							false,
+							LocationColumnKey.ALL_COLUMNS);
+						generator.writeEndObject();
+					}
+					generator.writeEndArray();
+					generator.close();
+
+					return writer.getBuffer().length();
+				}
+			});
+
+		result.add(
+			new Benchmark(
+					"location.toCsvRow",
+					NUM_MOBILITY_POINTS) {
+
+				private List<Location> locations;
+
+				@Override
+				public void setUp() throws Exception {
+					locations = new ArrayList<Location>(NUM_MOBILITY_POINTS);
+					for(MobilityPoint point :
+							parseMobilityPoints(
+								Fixtures.mobilityPoints(
+									NUM_MOBILITY_POINTS,
+									SEED))) {
+
+						locations.add(point.getLocation());
+					}
+				}
+
+				@Override
+				public Object run() throws Exception {
+					List<ColumnKey> columns = LocationColumnKey.ALL_COLUMNS;
+					List<Object> row =
+						new ArrayList<Object>(
+							Collections.nCopies(columns.size(), null));
+
+					int result = 0;
+					for(Location location : locations) {
+						location.toCsvRow(columns, row);
+						result += row.size();
+					}
+					return result;
+				}
+			});
+
+		result.add(
+			new Benchmark(
+					"observerStream.validateData",
+					NUM_STREAM_POINTS) {
+
+				private Observer.Stream stream;
+				private JsonNode[] data;
+
+				@Override
+				public void setUp() throws Exception {
+					stream =
+						new Observer.Stream(
+							"bench",
+							1,
+							"Benchmark Stream",
+							"A generated stream.",
+							false,
+							false,
+							false,
+							Fixtures.streamSchema());
+					data = Fixtures.streamData(NUM_STREAM_POINTS, SEED);
+				}
+
+				@Override
+				public Object run() throws Exception {
+					int result = 0;
+					for(JsonNode point : data) {
+						result += stream.validateData(point).size();
+					}
+					return result;
+				}
+			});
+
+		result.add(
+			new Benchmark(
+					"stringUtils.validateAndDecode",
+					NUM_UTILITY_VALUES) {
+
+				private String[] uuids;
+				private String[] urns;
+				private String[] booleans;
+				private String list;
+
+				@Override
+				public void setUp() throws Exception {
+					uuids = new String[NUM_UTILITY_VALUES];
+					urns = new String[NUM_UTILITY_VALUES];
+					booleans = new String[NUM_UTILITY_VALUES];
+					JSONArray points =
+						Fixtures.mobilityPoints(NUM_UTILITY_VALUES, SEED);
+					for(int i = 0; i < NUM_UTILITY_VALUES; i++) {
+						uuids[i] = points.getJSONObject(i).getString("id");
+						urns[i] = "urn:campaign:bench:" + i;
+						booleans[i] = ((i % 2) == 0) ? "true" : "false";
+					}
+					list =
+						StringUtils.collectionToStringList(
+							Arrays.asList(urns),
+							",");
+				}
+
+				@Override
+				public Object run() {
+					int result = 0;
+					for(int i = 0; i < NUM_UTILITY_VALUES; i++) {
+						if(StringUtils.isValidUuid(uuids[i])) {
+							result++;
+						}
+						if(StringUtils.isValidUrn(urns[i])) {
+							result++;
+						}
+						if(StringUtils.decodeBoolean(booleans[i])) {
+							result++;
+						}
+						if(StringUtils.isEmptyOrWhitespaceOnly(urns[i])) {
+							result--;
+						}
+					}
+					return result + StringUtils.splitString(list, ",").size();
+				}
+			});
+
+		result.add(
+			new Benchmark(
+					"dateTimeUtils.formatAndParse",
+					NUM_UTILITY_VALUES) {
+
+				private DateTime[] dateTimes;
+
+				@Override
+				public void setUp() {
+					dateTimes = new DateTime[NUM_UTILITY_VALUES];
+					for(int i = 0; i < NUM_UTILITY_VALUES; i++) {
+						dateTimes[i] =
+							new DateTime(
+								1356998400000L + (i * 3600000L),
+								DateTimeUtils.getDateTimeZoneFromString(
+									Fixtures.TIMEZONE));
+					}
+				}
+
+				@Override
+				public Object run() {
+					long result = 0;
+					for(DateTime dateTime : dateTimes) {
+						String iso =
+							DateTimeUtils.getIso8601DateString(dateTime, true);
+						result +=
+							DateTimeUtils
+								.getDateTimeFromString(iso)
+								.getMillis();
+
+						String w3c =
+							DateTimeUtils
+								.getW3cIso8601DateString(dateTime, true);
+						result +=
+							DateTimeUtils
+								.parseIsoW3CDateTime(w3c)
+								.getMillis();
+
+						result +=
+							DateTimeUtils
+								.getDateTimeZoneFromString(Fixtures.TIMEZONE)
+								.hashCode();
+					}
+					return result;
+				}
+			});
+
+		result.add(
+			new Benchmark(
+					"upload.decodeFields",
+					NUM_UTILITY_VALUES) {
+
+				private JSONObject[] metadata;
+				private JSONObject[] abbreviatedLocations;
+				private String[] dateTimes;
+				private DateTimeZone timeZone;
+
+				@Override
+				public void setUp() throws Exception {
+					metadata = new JSONObject[NUM_UTILITY_VALUES];
+					abbreviatedLocations = new JSONObject[NUM_UTILITY_VALUES];
+					dateTimes = new String[NUM_UTILITY_VALUES];
+					timeZone =
+						DateTimeUtils.getDateTimeZoneFromString(
+							Fixtures.TIMEZONE);
+
+					JSONArray points =
+						Fixtures.mobilityPoints(NUM_UTILITY_VALUES, SEED);
+					for(int i = 0; i < NUM_UTILITY_VALUES; i++) {
+						JSONObject point = points.getJSONObject(i);
+						JSONObject location = point.getJSONObject("location");
+						String dateTime =
+							DateTimeUtils.getIso8601DateString(
+								new DateTime(point.getLong("time"), timeZone),
+								true);
+
+						// The legacy upload metadata.
+						JSONObject pointMetadata = new JSONObject();
+						pointMetadata.put("date", dateTime);
+						pointMetadata.put("time", point.getLong("time"));
+						pointMetadata.put("timezone", Fixtures.TIMEZONE);
+						pointMetadata.put("location_status", "valid");
+						JSONObject metadataLocation =
+							new JSONObject(location.toString());
+						metadataLocation.put("timestamp", dateTime);
+						pointMetadata.put("location", metadataLocation);
+						metadata[i] = pointMetadata;
+
+						// A location that only uses the abbreviated keys, so
+						// that every full key must be tried first.
+						JSONObject abbreviated = new JSONObject();
+						for(LocationColumnKey key :
+								new LocationColumnKey[] {
+									LocationColumnKey.LATITUDE,
+									LocationColumnKey.LONGITUDE,
+									LocationColumnKey.ACCURACY,
+									LocationColumnKey.PROVIDER,
+									LocationColumnKey.TIME,
+									LocationColumnKey.TIMEZONE }) {
+
+							abbreviated.put(
+								key.toString(true),
+								location.get(key.toString(false)));
+						}
+						abbreviatedLocations[i] = abbreviated;
+
+						dateTimes[i] = dateTime;
+					}
+				}
+
+				@Override
+				public Object run() throws Exception {
+					long result = 0;
+					for(int i = 0; i < NUM_UTILITY_VALUES; i++) {
+						UploadValidationServices
+							.validateUploadMetadata(metadata[i]);
+
+						result +=
+							StringUtils.decodeDateTime(dateTimes[i]).getTime();
+
+						result +=
+							(long) (new Location(
+									abbreviatedLocations[i],
+									timeZone)).getLatitude();
+					}
+					return result;
+				}
+			});
+
+		return result;
+	}
+
+	/**
+	 * Builds the campaign fixture.
+	 */
+	private static Campaign newCampaign() throws Exception {
+		return
+			newCampaign(
+				Fixtures.campaignXml(NUM_SURVEYS, NUM_PROMPTS_PER_SURVEY));
+	}
+
+	/**
+	 * Parses a campaign's XML the same way the server does when it reads a
+	 * campaign from the database.
+	 */
+	private static Campaign newCampaign(final String xml) throws Exception {
+		return
+			new Campaign(
+				null,
+				null,
+				"A generated campaign.",
+				Campaign.RunningState.RUNNING,
+				Campaign.PrivacyState.SHARED,
+				new Date(1356998400000L),
+				xml);
+	}
+
+	/**
+	 * Validates uploaded survey responses the same way the upload does.
+	 */
+	private static List<SurveyResponse> parseSurveyResponses(
+			final Campaign campaign,
+			final JSONArray responses)
+			throws Exception {
+
+		List<SurveyResponse> result =
+			new ArrayList<SurveyResponse>(responses.length());
+		for(int i = 0; i < responses.length(); i++) {
+			result.add(
+				new SurveyResponse(
+					USERNAME,
+					campaign.getId(),
+					CLIENT,
+					campaign,
+					responses.getJSONObject(i)));
+		}
+		return result;
+	}
+
+	/**
+	 * Validates uploaded Mobility points the same way the upload does.
+	 */
+	private static List<MobilityPoint> parseMobilityPoints(
+			final JSONArray points)
+			throws Exception {
+
+		List<MobilityPoint> result =
+			new ArrayList<MobilityPoint>(points.length());
+		for(int i = 0; i < points.length(); i++) {
+			result.add(
+				new MobilityPoint(
+					points.getJSONObject(i),
+					MobilityPoint.PrivacyState.PRIVATE));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,596 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.bench;
+
+import java.util.Random;
+import java.util.UUID;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.domain.campaign.Campaign;
+import org.ohmage.domain.campaign.Prompt;
+import org.ohmage.domain.campaign.Survey;
+import org.ohmage.domain.campaign.SurveyItem;
+
+/**
+ * Generates realistic, but deterministic, fixtures for the benchmarks. Every
+ * generator takes a seed so that repeated runs measure the same data.
+ *
+ * @author John Jenkins
+ */
+public final class Fixtures {
+	/**
+	 * The ID of the generated campaign.
+	 */
+	public static final String CAMPAIGN_ID = "urn:campaign:bench:fixture";
+
+	/**
+	 * The time zone given to all of the generated data.
+	 */
+	public static final String TIMEZONE = "America/Los_Angeles";
+
+	/**
+	 * The time from which all of the generated data is offset.
+	 */
+	private static final long START_TIME = 1356998400000L;
+
+	/**
+	 * The number of choices given to each choice prompt.
+	 */
+	private static final int NUM_CHOICES = 5;
+
+	/**
+	 * The prompt types that are generated, in the order in which they are
+	 * cycled.
+	 */
+	private static final Prompt.Type[] PROMPT_TYPES = {
+		Prompt.Type.NUMBER,
+		Prompt.Type.TEXT,
+		Prompt.Type.SINGLE_CHOICE,
+		Prompt.Type.MULTI_CHOICE
+	};
+
+	/**
+	 * The modes given to the mode-only Mobility points.
+	 */
+	private static final String[] MODES =
+		{ "still", "walk", "run", "bike", "drive" };
+
+	/**
+	 * Default constructor. Private to prevent instantiation.
+	 */
+	private Fixtures() {}
+
+	/**
+	 * Generates a campaign's XML.
+	 *
+	 * @param numSurveys The number of surveys in the campaign.
+	 *
+	 * @param numPromptsPerSurvey The number of prompts in each survey. These
+	 * 							  cycle through number, text, single choice,
+	 * 							  and multiple choice prompts.
+	 *
+	 * @return The campaign's XML.
+	 */
+	public static String campaignXml(
+			final int numSurveys,
+			final int numPromptsPerSurvey) {
+
+		return campaignXml(CAMPAIGN_ID, numSurveys, numPromptsPerSurvey);
+	}
+
+	/**
+	 * Generates a campaign's XML with the given ID.
+	 *
+	 * @param campaignId The campaign's ID.
+	 *
+	 * @param numSurveys The number of surveys in the campaign.
+	 *
+	 * @param numPromptsPerSurvey The number of prompts in each survey.
+	 *
+	 * @return The campaign's XML.
+	 *
+	 * @see #campaignXml(int, int)
+	 */
+	public static String campaignXml(
+			final String campaignId,
+			final int numSurveys,
+			final int numPromptsPerSurvey) {
+
+		StringBuilder builder = new StringBuilder();
+		builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		builder.append("<campaign>");
+		element(builder, "campaignUrn", campaignId);
+		element(builder, "campaignName", "Fixture " + campaignId);
+		builder.append("<surveys>");
+
+		for(int i = 0; i < numSurveys; i++) {
+			builder.append("<survey>");
+			element(builder, "id", "survey" + i);
+			element(builder, "title", "Survey " + i);
+			element(builder, "description", "Generated survey " + i + ".");
+			element(builder, "submitText", "Thank you.");
+			element(builder, "anytime", "true");
+			builder.append("<contentList>");
+
+			for(int j = 0; j < numPromptsPerSurvey; j++) {
+				Prompt.Type type = PROMPT_TYPES[j % PROMPT_TYPES.length];
+
+				builder.append("<prompt>");
+				element(builder, "id", "prompt" + i + "_" + j);
+				element(builder, "displayLabel", "Prompt " + j);
+				element(
+					builder,
+					"promptText",
+					"What is the answer to question " + j + "?");
+				element(builder, "promptType", type.toString());
+				element(builder, "skippable", "true");
+				element(builder, "skipLabel", "Skip");
+				builder.append("<properties>");
+
+				switch(type) {
+				case NUMBER:
+					property(builder, "min", "0", null);
+					property(builder, "max", "100", null);
+					break;
+
+				case TEXT:
+					property(builder, "min", "1", null);
+					property(builder, "max", "200", null);
+					break;
+
+				default:
+					for(int k = 0; k < NUM_CHOICES; k++) {
+						property(
+							builder,
+							Integer.toString(k),
+							"Choice " + k,
+							Integer.toString(k));
+					}
+					break;
+				}
+
+				builder.append("</properties>");
+				builder.append("</prompt>");
+			}
+
+			builder.append("</contentList>");
+			builder.append("</survey>");
+		}
+
+		builder.append("</surveys>");
+		builder.append("</campaign>");
+		return builder.toString();
+	}
+
+	/**
+	 * Generates survey responses, as they would be uploaded, for the surveys
+	 * in a campaign. Every prompt is answered.
+	 *
+	 * @param campaign The campaign whose surveys are being answered.
+	 *
+	 * @param numResponses The number of responses to generate. These are
+	 * 					   spread evenly across the surveys.
+	 *
+	 * @param seed The random seed.
+	 *
+	 * @return The survey responses.
+	 *
+	 * @throws JSONException There was an error building the JSON.
+	 */
+	public static JSONArray surveyResponses(
+			final Campaign campaign,
+			final int numResponses,
+			final long seed)
+			throws JSONException {
+
+		return surveyResponses(campaign, numResponses, seed, START_TIME, 60000L);
+	}
+
+	/**
+	 * Generates survey responses for the surveys in a campaign that were
+	 * taken at regular intervals.
+	 *
+	 * @param campaign The campaign whose surveys are being answered.
+	 *
+	 * @param numResponses The number of responses to generate.
+	 *
+	 * @param seed The random seed.
+	 *
+	 * @param startTime The time of the first response.
+	 *
+	 * @param intervalMillis The number of milliseconds between responses.
+	 *
+	 * @return The survey responses.
+	 *
+	 * @throws JSONException There was an error building the JSON.
+	 *
+	 * @see #surveyResponses(Campaign, int, long)
+	 */
+	public static JSONArray surveyResponses(
+			final Campaign campaign,
+			final int numResponses,
+			final long seed,
+			final long startTime,
+			final long intervalMillis)
+			throws JSONException {
+
+		Random random = new Random(seed);
+		Survey[] surveys =
+			campaign.getSurveys().values().toArray(new Survey[0]);
+
+		JSONArray result = new JSONArray();
+		for(int i = 0; i < numResponses; i++) {
+			Survey survey = surveys[i % surveys.length];
+			long time = startTime + (i * intervalMillis);
+
+			JSONObject response = new JSONObject();
+			response.put("survey_key", uuid(random).toString());
+			response.put("time", time);
+			response.put("timezone", TIMEZONE);
+			response.put("location_status", "valid");
+			response.put("location", location(random, time));
+			response.put("survey_id", survey.getId());
+
+			JSONObject launchContext = new JSONObject();
+			launchContext.put("launch_time", time);
+			launchContext.put("launch_timezone", TIMEZONE);
+			launchContext.put("active_triggers", new JSONArray());
+			response.put("survey_launch_context", launchContext);
+
+			JSONArray responses = new JSONArray();
+			for(SurveyItem item : survey.getSurveyItems().values()) {
+				if(! (item instanceof Prompt)) {
+					continue;
+				}
+				Prompt prompt = (Prompt) item;
+
+				JSONObject promptResponse = new JSONObject();
+				promptResponse.put("prompt_id", prompt.getId());
+
+				switch(prompt.getType()) {
+				case NUMBER:
+					promptResponse.put("value", random.nextInt(101));
+					break;
+
+				case TEXT:
+					promptResponse.put(
+						"value",
+						"Response text " + random.nextInt(10000));
+					break;
+
+				case SINGLE_CHOICE:
+					promptResponse.put("value", random.nextInt(NUM_CHOICES));
+					break;
+
+				case MULTI_CHOICE:
+					JSONArray choices = new JSONArray();
+					for(int k = 0; k < NUM_CHOICES; k++) {
+						if(random.nextBoolean()) {
+							choices.put(k);
+						}
+					}
+					promptResponse.put("value", choices);
+					break;
+
+				default:
+					promptResponse.put("value", "SKIPPED");
+					break;
+				}
+
+				responses.put(promptResponse);
+			}
+			response.put("responses", responses);
+
+			result.put(response);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Generates Mobility points, as they would be uploaded. Every fourth
+	 * point is a sensor data point with accelerometer and WiFi readings; the
+	 * rest are mode-only points.
+	 *
+	 * @param numPoints The number of points to generate.
+	 *
+	 * @param seed The random seed.
+	 *
+	 * @return The Mobility points.
+	 *
+	 * @throws JSONException There was an error building the JSON.
+	 */
+	public static JSONArray mobilityPoints(
+			final int numPoints,
+			final long seed)
+			throws JSONException {
+
+		Random random = new Random(seed);
+
+		JSONArray result = new JSONArray();
+		for(int i = 0; i < numPoints; i++) {
+			long time = START_TIME + (i * 60000L);
+			String mode = MODES[random.nextInt(MODES.length)];
+
+			JSONObject point = new JSONObject();
+			point.put("id", uuid(random).toString());
+			point.put("time", time);
+			point.put("timezone", TIMEZONE);
+			point.put("location_status", "valid");
+			point.put("location", location(random, time));
+
+			if((i % 4) == 3) {
+				point.put("subtype", "sensor_data");
+
+				JSONObject sensorData = new JSONObject();
+				sensorData.put("mode", mode);
+				sensorData.put("speed", random.nextDouble() * 10);
+
+				JSONArray accelData = new JSONArray();
+				for(int j = 0; j < 10; j++) {
+					JSONObject accel = new JSONObject();
+					accel.put("x", random.nextGaussian());
+					accel.put("y", random.nextGaussian());
+					accel.put("z", random.nextGaussian() + 9.8);
+					accelData.put(accel);
+				}
+				sensorData.put("accel_data", accelData);
+
+				JSONObject wifiData = new JSONObject();
+				wifiData.put("time", time);
+				wifiData.put("timezone", TIMEZONE);
+				JSONArray scan = new JSONArray();
+				for(int j = 0; j < 5; j++) {
+					JSONObject accessPoint = new JSONObject();
+					accessPoint.put(
+						"ssid",
+						String.format(
+							"00:11:22:33:44:%02x",
+							random.nextInt(256)));
+					accessPoint.put("strength", -30 - random.nextInt(60));
+					scan.put(accessPoint);
+				}
+				wifiData.put("scan", scan);
+				sensorData.put("wifi_data", wifiData);
+
+				point.put("data", sensorData);
+			}
+			else {
+				point.put("subtype", "mode_only");
+				point.put("mode", mode);
+			}
+
+			result.put(point);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Generates the definition of an observer stream with a nested object, a
+	 * variety of primitive fields, and an array.
+	 *
+	 * @return The stream's schema.
+	 */
+	public static String streamSchema() {
+		return
+			"{" +
+				"\"type\":\"object\"," +
+				"\"fields\":[" +
+					"{\"name\":\"x\",\"type\":\"number\"}," +
+					"{\"name\":\"y\",\"type\":\"number\"}," +
+					"{\"name\":\"z\",\"type\":\"number\"}," +
+					"{\"name\":\"label\",\"type\":\"string\"}," +
+					"{\"name\":\"moving\",\"type\":\"boolean\"}," +
+					"{" +
+						"\"name\":\"battery\"," +
+						"\"type\":\"object\"," +
+						"\"fields\":[" +
+							"{\"name\":\"level\",\"type\":\"number\"}," +
+							"{\"name\":\"charging\",\"type\":\"boolean\"}" +
+						"]" +
+					"}," +
+					"{" +
+						"\"name\":\"samples\"," +
+						"\"type\":\"array\"," +
+						"\"constType\":{\"type\":\"number\"}" +
+					"}" +
+				"]" +
+			"}";
+	}
+
+	/**
+	 * Generates the XML definition of an observer with a single stream whose
+	 * schema is {@link #streamSchema()} and whose points have an ID and a
+	 * timestamp.
+	 *
+	 * @param observerId The observer's ID.
+	 *
+	 * @param streamId The stream's ID.
+	 *
+	 * @return The observer's XML.
+	 */
+	public static String observerXml(
+			final String observerId,
+			final String streamId) {
+
+		StringBuilder builder = new StringBuilder();
+		builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		builder.append("<observer>");
+		element(builder, "id", observerId);
+		element(builder, "version", "1");
+		element(builder, "name", "Fixture " + observerId);
+		element(builder, "description", "A generated observer.");
+		element(builder, "versionString", "1.0");
+		builder.append("<stream>");
+		element(builder, "id", streamId);
+		element(builder, "version", "1");
+		element(builder, "name", "Fixture " + streamId);
+		element(builder, "description", "A generated stream.");
+		builder.append("<metadata><id /><timestamp /></metadata>");
+		element(builder, "schema", streamSchema());
+		builder.append("</stream>");
+		builder.append("</observer>");
+		return builder.toString();
+	}
+
+	/**
+	 * Generates data points that conform to {@link #streamSchema()}.
+	 *
+	 * @param numPoints The number of data points to generate.
+	 *
+	 * @param seed The random seed.
+	 *
+	 * @return The data points.
+	 */
+	public static JsonNode[] streamData(
+			final int numPoints,
+			final long seed) {
+
+		Random random = new Random(seed);
+		JsonNodeFactory factory = JsonNodeFactory.instance;
+
+		JsonNode[] result = new JsonNode[numPoints];
+		for(int i = 0; i < numPoints; i++) {
+			ObjectNode point = factory.objectNode();
+			point.put("x", random.nextGaussian());
+			point.put("y", random.nextGaussian());
+			point.put("z", random.nextGaussian());
+			point.put("label", MODES[random.nextInt(MODES.length)]);
+			point.put("moving", random.nextBoolean());
+
+			ObjectNode battery = point.putObject("battery");
+			battery.put("level", random.nextInt(101));
+			battery.put("charging", random.nextBoolean());
+
+			ArrayNode samples = point.putArray("samples");
+			for(int j = 0; j < 16; j++) {
+				samples.add(random.nextInt(1024));
+			}
+
+			result[i] = point;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Generates the points of a stream upload for the stream defined by
+	 * {@link #observerXml(String, String)}. Each point has a random ID and a
+	 * timestamp, and its data is from {@link #streamData(int, long)}.
+	 *
+	 * @param streamId The stream's ID.
+	 *
+	 * @param numPoints The number of points to generate.
+	 *
+	 * @param seed The random seed.
+	 *
+	 * @param startTime The time of the first point.
+	 *
+	 * @param intervalMillis The number of milliseconds between points.
+	 *
+	 * @return The points as they would be uploaded.
+	 */
+	public static ArrayNode streamUpload(
+			final String streamId,
+			final int numPoints,
+			final long seed,
+			final long startTime,
+			final long intervalMillis) {
+
+		Random random = new Random(seed);
+		JsonNode[] data = streamData(numPoints, seed);
+
+		ArrayNode result = JsonNodeFactory.instance.arrayNode();
+		for(int i = 0; i < numPoints; i++) {
+			ObjectNode point = result.addObject();
+			point.put("stream_id", streamId);
+			point.put("stream_version", 1);
+
+			ObjectNode metadata = point.putObject("metadata");
+			metadata.put("id", uuid(random).toString());
+			metadata.put("time", startTime + (i * intervalMillis));
+			metadata.put("timezone", TIMEZONE);
+
+			point.put("data", data[i]);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Generates a location at some time near UCLA.
+	 */
+	private static JSONObject location(
+			final Random random,
+			final long time)
+			throws JSONException {
+
+		JSONObject result = new JSONObject();
+		result.put("latitude", 34.0689 + (random.nextDouble() / 100));
+		result.put("longitude", -118.4452 + (random.nextDouble() / 100));
+		result.put("accuracy", 5 + random.nextInt(50));
+		result.put("provider", "gps");
+		result.put("time", time);
+		result.put("timezone", TIMEZONE);
+		return result;
+	}
+
+	/**
+	 * Generates a random UUID from the given source.
+	 */
+	private static UUID uuid(final Random random) {
+		return new UUID(random.nextLong(), random.nextLong());
+	}
+
+	/**
+	 * Appends a simple element.
+	 */
+	private static void element(
+			final StringBuilder builder,
+			final String name,
+			final String value) {
+
+		builder
+			.append('<').append(name).append('>')
+			.append(value)
+			.append("</").append(name).append('>');
+	}
+
+	/**
+	 * Appends a prompt property.
+	 */
+	private static void property(
+			final StringBuilder builder,
+			final String key,
+			final String label,
+			final String value) {
+
+		builder.append("<property>");
+		element(builder, "key", key);
+		element(builder, "label", label);
+		if(value != null) {
+			element(builder, "value", value);
+		}
+		builder.append("</property>");
+	}
+}
@@ -0,0 +1,834 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.bench.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletContext;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.ohmage.bench.Fixtures;
+import org.ohmage.domain.campaign.Campaign;
+import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.lib.OhmageApi;
+import org.ohmage.lib.exception.ApiException;
+import org.ohmage.lib.exception.RequestErrorException;
+import org.ohmage.reporting.LatencyHistogram;
+import org.ohmage.request.RequestBuilder;
+import org.ohmage.util.DateTimeUtils;
+
+/**
+ * <p>
+ * Drives a mixed workload against a running server at a target rate and
+ * reports the latency percentiles and errors of each endpoint. This is
+ * meant to be called from the command line, usually through the "loadtest"
+ * Ant target.
+ * </p>
+ *
+ * <p>
+ * The server is first seeded with a synthetic {@link Population} by the
+ * {@link PopulationGenerator}, or an existing population is read from a
+ * file. Then, requests are started on a fixed schedule regardless of how
+ * long the previous requests took, and each request's latency is measured
+ * from when it was scheduled to start. This way, a server that falls behind
+ * is charged for the time requests spent waiting rather than silently
+ * lowering the offered load.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public final class LoadTest {
+	private static final String DEFAULT_SERVER = "localhost";
+	private static final int DEFAULT_PORT = 8080;
+	private static final String DEFAULT_CONTEXT = "/app";
+	private static final String DEFAULT_CLIENT = "load_test";
+
+	private static final String DEFAULT_MIX =
+		"survey_upload=4,stream_upload=4,survey_response_read=1,campaign_read=1";
+
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	/**
+	 * The number of failed requests whose errors are printed.
+	 */
+	private static final int MAX_REPORTED_ERRORS = 10;
+
+	/**
+	 * The length of the window of history read by each survey response read.
+	 */
+	private static final long READ_WINDOW_MILLIS = 7 * MILLIS_PER_DAY;
+
+	private static final String JSON_KEY_TIMESTAMP = "timestamp";
+	private static final String JSON_KEY_TARGET_RATE = "target_rate";
+	private static final String JSON_KEY_ACHIEVED_RATE = "achieved_rate";
+	private static final String JSON_KEY_DURATION = "duration_seconds";
+	private static final String JSON_KEY_THREADS = "threads";
+	private static final String JSON_KEY_USERS = "users";
+	private static final String JSON_KEY_ENDPOINTS = "endpoints";
+	private static final String JSON_KEY_NAME = "name";
+	private static final String JSON_KEY_COUNT = "count";
+	private static final String JSON_KEY_ERRORS = "errors";
+	private static final String JSON_KEY_MEAN = "mean_ms";
+	private static final String JSON_KEY_MAX = "max_ms";
+
+	/**
+	 * The percentiles that are reported.
+	 */
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	/**
+	 * The endpoints that make up the workload.
+	 *
+	 * @author John Jenkins
+	 */
+	private static enum Endpoint {
+		SURVEY_UPLOAD,
+		STREAM_UPLOAD,
+		SURVEY_RESPONSE_READ,
+		CAMPAIGN_READ;
+
+		/**
+		 * Returns the name used on the command line and in the results.
+		 *
+		 * @return The endpoint's name.
+		 */
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	/**
+	 * The workload's settings.
+	 *
+	 * @author John Jenkins
+	 */
+	private static final class Settings {
+		private String server = DEFAULT_SERVER;
+		private int port = DEFAULT_PORT;
+		private boolean secure = false;
+		private String context = DEFAULT_CONTEXT;
+		private String client = DEFAULT_CLIENT;
+		private boolean compress = false;
+
+		private String adminUsername = null;
+		private String adminPassword = null;
+
+		private File populationFile = null;
+		private int numUsers = 10;
+		private int numSurveys = 5;
+		private int numPromptsPerSurvey = 10;
+		private int days = 90;
+		private int responsesPerDay = 4;
+		private int pointsPerDay = 96;
+		private int seedThreads = 4;
+
+		private double rate = 10;
+		private int warmupSeconds = 10;
+		private int durationSeconds = 60;
+		private int threads = 32;
+		private Endpoint[] schedule = parseMix(DEFAULT_MIX);
+		private int surveyBatchSize = 5;
+		private int streamBatchSize = 50;
+
+		private File output = null;
+	}
+
+	private final Settings settings;
+	private final Population population;
+	private final OhmageApi[] apis;
+
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicLong reportedErrors = new AtomicLong();
+	private final long seedBase = (new Random()).nextLong();
+
+	private volatile Map<Endpoint, LatencyHistogram> histograms;
+
+	/**
+	 * Creates a new load test.
+	 */
+	private LoadTest(
+			final Settings settings,
+			final Population population,
+			final OhmageApi[] apis) {
+
+		this.settings = settings;
+		this.population = population;
+		this.apis = apis;
+	}
+
+	/**
+	 * Runs the load test.
+	 *
+	 * @param args The arguments as defined in {@link #printUsage()}.
+	 *
+	 * @throws Exception The population could not be seeded or the results
+	 * 					 could not be written.
+	 */
+	public static void main(final String[] args) throws Exception {
+		Settings settings = parseArguments(args);
+		if(settings == null) {
+			printUsage();
+			System.exit(2);
+		}
+
+		initializeRequestBuilder(settings.context);
+
+		// Each API object has its own bounded connection pool, so enough of
+		// them are created that the pools are never the bottleneck.
+		OhmageApi[] apis =
+			new OhmageApi[
+				(settings.threads + OhmageApi.MAX_CONNECTIONS - 1) /
+					OhmageApi.MAX_CONNECTIONS];
+		for(int i = 0; i < apis.length; i++) {
+			apis[i] =
+				new OhmageApi(settings.server, settings.port, settings.secure);
+			apis[i].setRequestCompression(settings.compress);
+		}
+
+		try {
+			Population population =
+				getPopulation(settings, apis[0]);
+
+			System.out.println(
+				"Authenticating " + population.getUsers().size() + " users.");
+			for(Population.User user : population.getUsers()) {
+				user.setAuthenticationToken(
+					apis[0].getAuthenticationToken(
+						user.getUsername(),
+						user.getPassword(),
+						settings.client));
+			}
+
+			LoadTest loadTest = new LoadTest(settings, population, apis);
+
+			if(settings.warmupSeconds > 0) {
+				System.out.println(
+					"Warming up for " + settings.warmupSeconds + " seconds.");
+				loadTest.run(settings.warmupSeconds);
+			}
+
+			System.out.println(
+				"Running at " +
+					settings.rate +
+					" requests per second for " +
+					settings.durationSeconds +
+					" seconds.");
+			double elapsed = loadTest.run(settings.durationSeconds);
+
+			loadTest.printResults(elapsed);
+			if(settings.output != null) {
+				loadTest.writeResults(settings.output, elapsed);
+				System.out.println("Results written to: " + settings.output);
+			}
+		}
+		finally {
+			for(OhmageApi api : apis) {
+				api.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Prints how to run this class.
+	 */
+	private static void printUsage() {
+		System.out.println(
+			"Usage: LoadTest " +
+				"--admin <username> --admin-password <password> " +
+				"[--server <host>] [--port <port>] [--secure] " +
+				"[--context <path>] [--client <client>] [--compress] " +
+				"[--population <file>] [--users <count>] " +
+				"[--surveys <count>] [--prompts <count>] " +
+				"[--days <count>] [--responses-per-day <count>] " +
+				"[--points-per-day <count>] [--seed-threads <count>] " +
+				"[--rate <requests per second>] " +
+				"[--warmup <seconds>] [--duration <seconds>] " +
+				"[--threads <count>] " +
+				"[--mix <endpoint>=<weight>[,...]] " +
+				"[--survey-batch <responses per upload>] " +
+				"[--stream-batch <points per upload>] " +
+				"[-o <results file>]");
+		System.out.println(
+			"The endpoints are: " +
+				Endpoint.SURVEY_UPLOAD + ", " +
+				Endpoint.STREAM_UPLOAD + ", " +
+				Endpoint.SURVEY_RESPONSE_READ + ", and " +
+				Endpoint.CAMPAIGN_READ + ".");
+		System.out.println(
+			"If the population file exists, it is reused; otherwise, a " +
+				"new population is seeded and written to it.");
+	}
+
+	/**
+	 * Parses the command line arguments.
+	 *
+	 * @return The settings or null if the arguments are invalid.
+	 */
+	private static Settings parseArguments(final String[] args) {
+		Settings settings = new Settings();
+
+		try {
+			for(int i = 0; i < args.length; i++) {
+				String arg = args[i];
+
+				// Ant passes empty strings for unset properties.
+				if(arg.length() == 0) {
+					continue;
+				}
+
+				if("--server".equals(arg)) {
+					settings.server = args[++i];
+				}
+				else if("--port".equals(arg)) {
+					settings.port = Integer.parseInt(args[++i]);
+				}
+				else if("--secure".equals(arg)) {
+					settings.secure = true;
+				}
+				else if("--context".equals(arg)) {
+					settings.context = args[++i];
+				}
+				else if("--client".equals(arg)) {
+					settings.client = args[++i];
+				}
+				else if("--compress".equals(arg)) {
+					settings.compress = true;
+				}
+				else if("--admin".equals(arg)) {
+					settings.adminUsername = args[++i];
+				}
+				else if("--admin-password".equals(arg)) {
+					settings.adminPassword = args[++i];
+				}
+				else if("--population".equals(arg)) {
+					settings.populationFile = new File(args[++i]);
+				}
+				else if("--users".equals(arg)) {
+					settings.numUsers = Integer.parseInt(args[++i]);
+				}
+				else if("--surveys".equals(arg)) {
+					settings.numSurveys = Integer.parseInt(args[++i]);
+				}
+				else if("--prompts".equals(arg)) {
+					settings.numPromptsPerSurvey = Integer.parseInt(args[++i]);
+				}
+				else if("--days".equals(arg)) {
+					settings.days = Integer.parseInt(args[++i]);
+				}
+				else if("--responses-per-day".equals(arg)) {
+					settings.responsesPerDay = Integer.parseInt(args[++i]);
+				}
+				else if("--points-per-day".equals(arg)) {
+					settings.pointsPerDay = Integer.parseInt(args[++i]);
+				}
+				else if("--seed-threads".equals(arg)) {
+					settings.seedThreads = Integer.parseInt(args[++i]);
+				}
+				else if("--rate".equals(arg)) {
+					settings.rate = Double.parseDouble(args[++i]);
+				}
+				else if("--warmup".equals(arg)) {
+					settings.warmupSeconds = Integer.parseInt(args[++i]);
+				}
+				else if("--duration".equals(arg)) {
+					settings.durationSeconds = Integer.parseInt(args[++i]);
+				}
+				else if("--threads".equals(arg)) {
+					settings.threads = Integer.parseInt(args[++i]);
+				}
+				else if("--mix".equals(arg)) {
+					settings.schedule = parseMix(args[++i]);
+				}
+				else if("--survey-batch".equals(arg)) {
+					settings.surveyBatchSize = Integer.parseInt(args[++i]);
+				}
+				else if("--stream-batch".equals(arg)) {
+					settings.streamBatchSize = Integer.parseInt(args[++i]);
+				}
+				else if("-o".equals(arg)) {
+					settings.output = new File(args[++i]);
+				}
+				else {
+					return null;
+				}
+			}
+		}
+		catch(ArrayIndexOutOfBoundsException e) {
+			return null;
+		}
+		catch(NumberFormatException e) {
+			return null;
+		}
+		catch(IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			return null;
+		}
+
+		if((settings.adminUsername == null) ||
+			(settings.adminPassword == null) ||
+			(settings.rate <= 0) ||
+			(settings.warmupSeconds < 0) ||
+			(settings.durationSeconds < 1) ||
+			(settings.threads < 1) ||
+			(settings.surveyBatchSize < 1) ||
+			(settings.streamBatchSize < 1)) {
+
+			return null;
+		}
+
+		return settings;
+	}
+
+	/**
+	 * Parses the workload mix into a schedule of endpoints in which each
+	 * endpoint appears as many times as its weight.
+	 *
+	 * @throws IllegalArgumentException The mix is invalid.
+	 */
+	private static Endpoint[] parseMix(final String mix) {
+		List<Endpoint> result = new ArrayList<Endpoint>();
+
+		for(String entry : mix.split(",")) {
+			String[] parts = entry.trim().split("=");
+			if(parts.length != 2) {
+				throw new IllegalArgumentException(
+					"The mix entry is invalid: " + entry);
+			}
+
+			Endpoint endpoint;
+			int weight;
+			try {
+				endpoint = Endpoint.valueOf(parts[0].trim().toUpperCase());
+				weight = Integer.parseInt(parts[1].trim());
+			}
+			catch(IllegalArgumentException e) {
+				throw new IllegalArgumentException(
+					"The mix entry is invalid: " + entry,
+					e);
+			}
+			if(weight < 0) {
+				throw new IllegalArgumentException(
+					"The weight cannot be negative: " + entry);
+			}
+
+			for(int i = 0; i < weight; i++) {
+				result.add(endpoint);
+			}
+		}
+
+		if(result.isEmpty()) {
+			throw new IllegalArgumentException(
+				"The mix does not contain any requests.");
+		}
+
+		// Spread the endpoints through the schedule so that the heavy ones
+		// are not all sent back-to-back.
+		Collections.shuffle(result, new Random(0));
+		return result.toArray(new Endpoint[result.size()]);
+	}
+
+	/**
+	 * Configures the paths of the API's requests. Outside of the web
+	 * application, there is no servlet context to do this, so the only part
+	 * of it that is used, the context path, is provided by a proxy.
+	 */
+	private static void initializeRequestBuilder(final String contextPath) {
+		ServletContext servletContext =
+			(ServletContext) Proxy.newProxyInstance(
+				ServletContext.class.getClassLoader(),
+				new Class<?>[] { ServletContext.class },
+				new InvocationHandler() {
+					/**
+					 * Returns the context path and nothing else.
+					 */
+					@Override
+					public Object invoke(
+							final Object proxy,
+							final Method method,
+							final Object[] args) {
+
+						if("getContextPath".equals(method.getName())) {
+							return contextPath;
+						}
+						return null;
+					}
+				});
+
+		(new RequestBuilder()).setServletContext(servletContext);
+	}
+
+	/**
+	 * Reads the population from its file or, if there is no file, seeds a new
+	 * population and writes it to the file.
+	 */
+	private static Population getPopulation(
+			final Settings settings,
+			final OhmageApi api)
+			throws Exception {
+
+		if((settings.populationFile != null) &&
+			settings.populationFile.exists()) {
+
+			System.out.println(
+				"Reading the population: " + settings.populationFile);
+			return Population.read(settings.populationFile);
+		}
+
+		String adminToken =
+			api.getAuthenticationToken(
+				settings.adminUsername,
+				settings.adminPassword,
+				settings.client);
+
+		long start = System.currentTimeMillis();
+		Population population =
+			(new PopulationGenerator(
+				api,
+				settings.client,
+				adminToken,
+				settings.numUsers,
+				settings.numSurveys,
+				settings.numPromptsPerSurvey,
+				settings.days,
+				settings.responsesPerDay,
+				settings.pointsPerDay,
+				settings.seedThreads))
+			.generate();
+		System.out.println(
+			"Seeded the population in " +
+				((System.currentTimeMillis() - start) / 1000) +
+				" seconds.");
+
+		if(settings.populationFile != null) {
+			population.write(settings.populationFile);
+			System.out.println(
+				"Population written to: " + settings.populationFile);
+		}
+
+		return population;
+	}
+
+	/**
+	 * Sends requests at the target rate for the given amount of time, then
+	 * waits for the outstanding requests to finish. The latencies are
+	 * recorded in a fresh set of histograms.
+	 *
+	 * @return The number of seconds from the first request being scheduled
+	 * 		   until the last one finished.
+	 */
+	private double run(final int seconds) throws InterruptedException {
+		Map<Endpoint, LatencyHistogram> tHistograms =
+			new EnumMap<Endpoint, LatencyHistogram>(Endpoint.class);
+		for(Endpoint endpoint : Endpoint.values()) {
+			tHistograms.put(endpoint, new LatencyHistogram());
+		}
+		histograms = tHistograms;
+
+		ExecutorService executor =
+			Executors.newFixedThreadPool(settings.threads);
+
+		long intervalNanos = (long) (1000000000L / settings.rate);
+		long numRequests = (long) (settings.rate * seconds);
+		long start = System.nanoTime();
+
+		for(long i = 0; i < numRequests; i++) {
+			final long scheduled = start + (i * intervalNanos);
+			final Endpoint endpoint =
+				settings.schedule[(int) (i % settings.schedule.length)];
+
+			long wait = scheduled - System.nanoTime();
+			if(wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+
+			executor.execute(
+				new Runnable() {
+					/**
+					 * Sends the request and records its latency.
+					 */
+					@Override
+					public void run() {
+						LatencyHistogram histogram =
+							histograms.get(endpoint);
+						try {
+							send(endpoint);
+							histogram.record(System.nanoTime() - scheduled);
+						}
+						catch(ApiException e) {
+							histogram.recordError();
+							reportError(endpoint, e);
+						}
+						catch(RuntimeException e) {
+							histogram.recordError();
+							reportError(endpoint, e);
+						}
+					}
+				});
+		}
+
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+		return (System.nanoTime() - start) / 1000000000.0;
+	}
+
+	/**
+	 * Sends a single request to an endpoint as a random user.
+	 */
+	private void send(final Endpoint endpoint)
+			throws ApiException, RequestErrorException {
+
+		long id = sequence.getAndIncrement();
+		OhmageApi api = apis[(int) (id % apis.length)];
+		List<Population.User> users = population.getUsers();
+		Population.User user =
+			users.get(ThreadLocalRandom.current().nextInt(users.size()));
+		Campaign campaign = population.getCampaign();
+		long now = System.currentTimeMillis();
+
+		switch(endpoint) {
+		case SURVEY_UPLOAD:
+			List<SurveyResponse> responses =
+				PopulationGenerator.surveyResponses(
+					population,
+					user,
+					settings.client,
+					settings.surveyBatchSize,
+					seedBase + id,
+					now - settings.surveyBatchSize,
+					1);
+			api.uploadSurveyResponses(
+				user.getUsername(),
+				user.getHashedPassword(),
+				settings.client,
+				campaign.getId(),
+				population.getCampaignCreationTimestamp(),
+				responses);
+			break;
+
+		case STREAM_UPLOAD:
+			api.uploadStreamData(
+				user.getUsername(),
+				user.getHashedPassword(),
+				settings.client,
+				population.getObserverId(),
+				1,
+				Fixtures
+					.streamUpload(
+						population.getStreamId(),
+						settings.streamBatchSize,
+						seedBase + id,
+						now - settings.streamBatchSize,
+						1)
+					.toString());
+			break;
+
+		case SURVEY_RESPONSE_READ:
+			long historyLength =
+				population.getHistoryEnd() - population.getHistoryStart();
+			long windowStart =
+				population.getHistoryStart() +
+					(long) (ThreadLocalRandom.current().nextDouble() *
+						Math.max(0, historyLength - READ_WINDOW_MILLIS));
+			api.getSurveyResponsesJsonRows(
+				user.getAuthenticationToken(),
+				null,
+				null,
+				settings.client,
+				campaign.getId(),
+				Collections.singleton(user.getUsername()),
+				Collections.<SurveyResponse.ColumnKey>emptyList(),
+				Collections.<String>emptyList(),
+				null,
+				new DateTime(windowStart, DateTimeZone.UTC),
+				new DateTime(
+					windowStart + READ_WINDOW_MILLIS,
+					DateTimeZone.UTC),
+				null,
+				null,
+				null,
+				null);
+			break;
+
+		case CAMPAIGN_READ:
+			api.getCampaigns(
+				user.getAuthenticationToken(),
+				settings.client,
+				Campaign.OutputFormat.SHORT,
+				null,
+				null,
+				null,
+				null,
+				null,
+				null,
+				null);
+			break;
+		}
+	}
+
+	/**
+	 * Prints a failed request. Only the first few are printed so that a
+	 * failing server does not flood the output.
+	 */
+	private void reportError(final Endpoint endpoint, final Exception e) {
+		if(reportedErrors.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+			System.out.println(
+				"Request to " + endpoint + " failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Prints the results of the measured run.
+	 */
+	private void printResults(final double elapsed) {
+		StringBuilder header = new StringBuilder();
+		header.append(
+			String.format(
+				"%-22s %8s %7s %9s",
+				"endpoint",
+				"count",
+				"errors",
+				"mean"));
+		for(double percentile : PERCENTILES) {
+			header.append(String.format(" %9s", percentileName(percentile)));
+		}
+		header.append(String.format(" %9s", "max"));
+		System.out.println(header);
+
+		long total = 0;
+		for(Endpoint endpoint : Endpoint.values()) {
+			LatencyHistogram histogram = histograms.get(endpoint);
+			total += histogram.getCount() + histogram.getErrors();
+			if((histogram.getCount() + histogram.getErrors()) == 0) {
+				continue;
+			}
+
+			StringBuilder row = new StringBuilder();
+			row.append(
+				String.format(
+					"%-22s %8d %7d %9.1f",
+					endpoint,
+					histogram.getCount(),
+					histogram.getErrors(),
+					histogram.getMeanMicros() / 1000));
+			for(double percentile : PERCENTILES) {
+				row.append(
+					String.format(
+						" %9.1f",
+						histogram.getPercentileMicros(percentile) / 1000.0));
+			}
+			row.append(
+				String.format(" %9.1f", histogram.getMaxMicros() / 1000.0));
+			System.out.println(row);
+		}
+
+		System.out.println(
+			String.format(
+				"Achieved %.1f requests per second (target %.1f); " +
+					"latencies are in milliseconds.",
+				total / elapsed,
+				settings.rate));
+	}
+
+	/**
+	 * Returns the name of a percentile, e.g. "p50" or "p99.9".
+	 */
+	private static String percentileName(final double percentile) {
+		if(percentile == Math.rint(percentile)) {
+			return "p" + ((long) percentile);
+		}
+		return "p" + percentile;
+	}
+
+	/**
+	 * Writes the results of the measured run as JSON.
+	 */
+	private void writeResults(final File output, final double elapsed)
+			throws IOException {
+
+		File parent = output.getAbsoluteFile().getParentFile();
+		if(parent != null) {
+			parent.mkdirs();
+		}
+
+		JsonGenerator generator =
+			(new JsonFactory()).createJsonGenerator(output, JsonEncoding.UTF8);
+		generator.useDefaultPrettyPrinter();
+
+		long total = 0;
+		for(LatencyHistogram histogram : histograms.values()) {
+			total += histogram.getCount() + histogram.getErrors();
+		}
+
+		generator.writeStartObject();
+		generator.writeStringField(
+			JSON_KEY_TIMESTAMP,
+			DateTimeUtils.getIso8601DateString(new DateTime(), true));
+		generator.writeNumberField(JSON_KEY_TARGET_RATE, settings.rate);
+		generator.writeNumberField(JSON_KEY_ACHIEVED_RATE, total / elapsed);
+		generator.writeNumberField(JSON_KEY_DURATION, elapsed);
+		generator.writeNumberField(JSON_KEY_THREADS, settings.threads);
+		generator.writeNumberField(
+			JSON_KEY_USERS,
+			population.getUsers().size());
+
+		generator.writeArrayFieldStart(JSON_KEY_ENDPOINTS);
+		for(Endpoint endpoint : Endpoint.values()) {
+			LatencyHistogram histogram = histograms.get(endpoint);
+
+			generator.writeStartObject();
+			generator.writeStringField(JSON_KEY_NAME, endpoint.toString());
+			generator.writeNumberField(JSON_KEY_COUNT, histogram.getCount());
+			generator.writeNumberField(JSON_KEY_ERRORS, histogram.getErrors());
+			generator.writeNumberField(
+				JSON_KEY_MEAN,
+				histogram.getMeanMicros() / 1000);
+			for(double percentile : PERCENTILES) {
+				generator.writeNumberField(
+					percentileName(percentile) + "_ms",
+					histogram.getPercentileMicros(percentile) / 1000.0);
+			}
+			generator.writeNumberField(
+				JSON_KEY_MAX,
+				histogram.getMaxMicros() / 1000.0);
+			generator.writeEndObject();
+		}
+		generator.writeEndArray();
+
+		generator.writeEndObject();
+		generator.close();
+	}
+}
@@ -0,0 +1,386 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.bench.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.joda.time.DateTime;
+import org.ohmage.domain.campaign.Campaign;
+import org.ohmage.exception.DomainException;
+import org.ohmage.util.DateTimeUtils;
+
+/**
+ * The synthetic users, class, campaign, and observer that were created by
+ * the {@link PopulationGenerator} and against which the {@link LoadTest}
+ * runs. A population may be written to a file so that later runs can reuse
+ * it instead of seeding the database again.
+ *
+ * @author John Jenkins
+ */
+public final class Population {
+	private static final String JSON_KEY_CLASS_ID = "class_id";
+	private static final String JSON_KEY_CAMPAIGN_ID = "campaign_id";
+	private static final String JSON_KEY_CAMPAIGN_XML = "campaign_xml";
+	private static final String JSON_KEY_CAMPAIGN_CREATION_TIMESTAMP =
+		"campaign_creation_timestamp";
+	private static final String JSON_KEY_OBSERVER_ID = "observer_id";
+	private static final String JSON_KEY_STREAM_ID = "stream_id";
+	private static final String JSON_KEY_HISTORY_START = "history_start";
+	private static final String JSON_KEY_HISTORY_END = "history_end";
+	private static final String JSON_KEY_USERS = "users";
+	private static final String JSON_KEY_USERNAME = "username";
+	private static final String JSON_KEY_PASSWORD = "password";
+	private static final String JSON_KEY_HASHED_PASSWORD = "hashed_password";
+
+	/**
+	 * A synthetic user.
+	 *
+	 * @author John Jenkins
+	 */
+	public static final class User {
+		private final String username;
+		private final String password;
+		private final String hashedPassword;
+		private volatile String authenticationToken;
+
+		/**
+		 * Creates a new user.
+		 *
+		 * @param username The user's username.
+		 *
+		 * @param password The user's plaintext password.
+		 *
+		 * @param hashedPassword The user's hashed password, which is used
+		 * 						 by the upload calls.
+		 */
+		public User(
+				final String username,
+				final String password,
+				final String hashedPassword) {
+
+			this.username = username;
+			this.password = password;
+			this.hashedPassword = hashedPassword;
+		}
+
+		/**
+		 * Returns the user's username.
+		 *
+		 * @return The user's username.
+		 */
+		public String getUsername() {
+			return username;
+		}
+
+		/**
+		 * Returns the user's plaintext password.
+		 *
+		 * @return The user's plaintext password.
+		 */
+		public String getPassword() {
+			return password;
+		}
+
+		/**
+		 * Returns the user's hashed password.
+		 *
+		 * @return The user's hashed password.
+		 */
+		public String getHashedPassword() {
+			return hashedPassword;
+		}
+
+		/**
+		 * Returns the user's authentication token, which is used by the read
+		 * calls.
+		 *
+		 * @return The user's authentication token or null if the user has
+		 * 		   not yet been authenticated.
+		 */
+		public String getAuthenticationToken() {
+			return authenticationToken;
+		}
+
+		/**
+		 * Sets the user's authentication token.
+		 *
+		 * @param authenticationToken The user's authentication token.
+		 */
+		public void setAuthenticationToken(final String authenticationToken) {
+			this.authenticationToken = authenticationToken;
+		}
+	}
+
+	private final String classId;
+	private final String campaignXml;
+	private final Campaign campaign;
+	private final DateTime campaignCreationTimestamp;
+	private final String observerId;
+	private final String streamId;
+	private final long historyStart;
+	private final long historyEnd;
+	private final List<User> users;
+
+	/**
+	 * Creates a new population.
+	 *
+	 * @param classId The class to which all of the users belong.
+	 *
+	 * @param campaignXml The XML of the campaign to which all of the users
+	 * 					  belong.
+	 *
+	 * @param campaignCreationTimestamp The campaign's creation timestamp as
+	 * 									reported by the server, which the
+	 * 									survey uploads must echo.
+	 *
+	 * @param observerId The observer to which the stream data is uploaded.
+	 *
+	 * @param streamId The observer's stream.
+	 *
+	 * @param historyStart The earliest time of the generated history.
+	 *
+	 * @param historyEnd The latest time of the generated history.
+	 *
+	 * @param users The users.
+	 *
+	 * @throws DomainException The campaign's XML is invalid.
+	 */
+	public Population(
+			final String classId,
+			final String campaignXml,
+			final DateTime campaignCreationTimestamp,
+			final String observerId,
+			final String streamId,
+			final long historyStart,
+			final long historyEnd,
+			final List<User> users)
+			throws DomainException {
+
+		this.classId = classId;
+		this.campaignXml = campaignXml;
+		this.campaign =
+			new Campaign(
+				null,
+				null,
+				"A generated campaign.",
+				Campaign.RunningState.RUNNING,
+				Campaign.PrivacyState.SHARED,
+				new Date(campaignCreationTimestamp.getMillis()),
+				campaignXml);
+		this.campaignCreationTimestamp = campaignCreationTimestamp;
+		this.observerId = observerId;
+		this.streamId = streamId;
+		this.historyStart = historyStart;
+		this.historyEnd = historyEnd;
+		this.users = Collections.unmodifiableList(new ArrayList<User>(users));
+	}
+
+	/**
+	 * Returns the class' ID.
+	 *
+	 * @return The class' ID.
+	 */
+	public String getClassId() {
+		return classId;
+	}
+
+	/**
+	 * Returns the campaign, which is used to generate survey responses.
+	 *
+	 * @return The campaign.
+	 */
+	public Campaign getCampaign() {
+		return campaign;
+	}
+
+	/**
+	 * Returns the campaign's creation timestamp as reported by the server.
+	 *
+	 * @return The campaign's creation timestamp.
+	 */
+	public DateTime getCampaignCreationTimestamp() {
+		return campaignCreationTimestamp;
+	}
+
+	/**
+	 * Returns the observer's ID.
+	 *
+	 * @return The observer's ID.
+	 */
+	public String getObserverId() {
+		return observerId;
+	}
+
+	/**
+	 * Returns the stream's ID.
+	 *
+	 * @return The stream's ID.
+	 */
+	public String getStreamId() {
+		return streamId;
+	}
+
+	/**
+	 * Returns the earliest time of the generated history.
+	 *
+	 * @return The earliest time of the generated history.
+	 */
+	public long getHistoryStart() {
+		return historyStart;
+	}
+
+	/**
+	 * Returns the latest time of the generated history.
+	 *
+	 * @return The latest time of the generated history.
+	 */
+	public long getHistoryEnd() {
+		return historyEnd;
+	}
+
+	/**
+	 * Returns the users.
+	 *
+	 * @return An unmodifiable list of the users.
+	 */
+	public List<User> getUsers() {
+		return users;
+	}
+
+	/**
+	 * Writes this population to a file.
+	 *
+	 * @param file The file.
+	 *
+	 * @throws IOException The file could not be written.
+	 */
+	public void write(final File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null) {
+			parent.mkdirs();
+		}
+
+		JsonGenerator generator =
+			(new JsonFactory()).createJsonGenerator(file, JsonEncoding.UTF8);
+		generator.useDefaultPrettyPrinter();
+
+		generator.writeStartObject();
+		generator.writeStringField(JSON_KEY_CLASS_ID, classId);
+		generator.writeStringField(JSON_KEY_CAMPAIGN_ID, campaign.getId());
+		generator.writeStringField(JSON_KEY_CAMPAIGN_XML, campaignXml);
+		generator.writeStringField(
+			JSON_KEY_CAMPAIGN_CREATION_TIMESTAMP,
+			DateTimeUtils.getIso8601DateString(
+				campaignCreationTimestamp,
+				true));
+		generator.writeStringField(JSON_KEY_OBSERVER_ID, observerId);
+		generator.writeStringField(JSON_KEY_STREAM_ID, streamId);
+		generator.writeNumberField(JSON_KEY_HISTORY_START, historyStart);
+		generator.writeNumberField(JSON_KEY_HISTORY_END, historyEnd);
+
+		generator.writeArrayFieldStart(JSON_KEY_USERS);
+		for(User user : users) {
+			generator.writeStartObject();
+			generator.writeStringField(JSON_KEY_USERNAME, user.username);
+			generator.writeStringField(JSON_KEY_PASSWORD, user.password);
+			generator.writeStringField(
+				JSON_KEY_HASHED_PASSWORD,
+				user.hashedPassword);
+			generator.writeEndObject();
+		}
+		generator.writeEndArray();
+
+		generator.writeEndObject();
+		generator.close();
+	}
+
+	/**
+	 * Reads a population that was written by {@link #write(File)}. The users
+	 * will not have authentication tokens.
+	 *
+	 * @param file The file.
+	 *
+	 * @return The population.
+	 *
+	 * @throws IOException The file could not be read or was malformed.
+	 */
+	public static Population read(final File file) throws IOException {
+		JsonNode root = (new ObjectMapper()).readTree(file);
+
+		List<User> users = new ArrayList<User>();
+		for(JsonNode user : root.path(JSON_KEY_USERS)) {
+			users.add(
+				new User(
+					text(file, user, JSON_KEY_USERNAME),
+					text(file, user, JSON_KEY_PASSWORD),
+					text(file, user, JSON_KEY_HASHED_PASSWORD)));
+		}
+		if(users.isEmpty()) {
+			throw new IOException("The population has no users: " + file);
+		}
+
+		DateTime campaignCreationTimestamp =
+			DateTimeUtils.getDateTimeFromString(
+				text(file, root, JSON_KEY_CAMPAIGN_CREATION_TIMESTAMP));
+		if(campaignCreationTimestamp == null) {
+			throw new IOException(
+				"The campaign creation timestamp is invalid: " + file);
+		}
+
+		try {
+			return
+				new Population(
+					text(file, root, JSON_KEY_CLASS_ID),
+					text(file, root, JSON_KEY_CAMPAIGN_XML),
+					campaignCreationTimestamp,
+					text(file, root, JSON_KEY_OBSERVER_ID),
+					text(file, root, JSON_KEY_STREAM_ID),
+					root.path(JSON_KEY_HISTORY_START).getLongValue(),
+					root.path(JSON_KEY_HISTORY_END).getLongValue(),
+					users);
+		}
+		catch(DomainException e) {
+			throw new IOException("The population is malformed: " + file, e);
+		}
+	}
+
+	/**
+	 * Returns a required text field from a population file.
+	 */
+	private static String text(
+			final File file,
+			final JsonNode node,
+			final String key)
+			throws IOException {
+
+		String result = node.path(key).getTextValue();
+		if(result == null) {
+			throw new IOException(
+				"The population is missing '" + key + "': " + file);
+		}
+		return result;
+	}
+}
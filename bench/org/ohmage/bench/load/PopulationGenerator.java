@@ -0,0 +1,488 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.bench.load;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.ohmage.bench.Fixtures;
+import org.ohmage.domain.Clazz;
+import org.ohmage.domain.campaign.Campaign;
+import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.exception.DomainException;
+import org.ohmage.lib.OhmageApi;
+import org.ohmage.lib.exception.ApiException;
+import org.ohmage.lib.exception.RequestErrorException;
+
+/**
+ * <p>
+ * Seeds a server with a synthetic {@link Population}: a class, a campaign
+ * associated with that class, an observer, and a number of users who belong
+ * to the class. Each user is then given a history of survey responses and
+ * stream data that ends now and reaches back the given number of days.
+ * </p>
+ *
+ * <p>
+ * Everything is created through the public API as an admin, so the server
+ * and its database are exercised exactly as they would be by real clients.
+ * Every generated ID includes a random run ID so that repeated runs against
+ * the same database do not collide.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public final class PopulationGenerator {
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	/**
+	 * The number of survey responses in each upload of the history.
+	 */
+	private static final int SURVEY_BATCH_SIZE = 100;
+
+	/**
+	 * The number of stream points in each upload of the history.
+	 */
+	private static final int STREAM_BATCH_SIZE = 500;
+
+	/**
+	 * The ID of the observer's only stream.
+	 */
+	private static final String STREAM_ID = "fixture";
+
+	private final OhmageApi api;
+	private final String client;
+	private final String adminToken;
+
+	private final int numUsers;
+	private final int numSurveys;
+	private final int numPromptsPerSurvey;
+	private final int days;
+	private final int responsesPerDay;
+	private final int pointsPerDay;
+	private final int threads;
+
+	/**
+	 * Creates a new generator.
+	 *
+	 * @param api The connection to the server.
+	 *
+	 * @param client The client value given with every request.
+	 *
+	 * @param adminToken An admin's authentication token.
+	 *
+	 * @param numUsers The number of users to create.
+	 *
+	 * @param numSurveys The number of surveys in the campaign.
+	 *
+	 * @param numPromptsPerSurvey The number of prompts in each survey.
+	 *
+	 * @param days The number of days of history to give each user.
+	 *
+	 * @param responsesPerDay The number of survey responses each user
+	 * 						  uploaded each day.
+	 *
+	 * @param pointsPerDay The number of stream points each user uploaded
+	 * 					   each day.
+	 *
+	 * @param threads The number of users to seed concurrently.
+	 */
+	public PopulationGenerator(
+			final OhmageApi api,
+			final String client,
+			final String adminToken,
+			final int numUsers,
+			final int numSurveys,
+			final int numPromptsPerSurvey,
+			final int days,
+			final int responsesPerDay,
+			final int pointsPerDay,
+			final int threads) {
+
+		if(numUsers < 1) {
+			throw new IllegalArgumentException(
+				"There must be at least one user.");
+		}
+		if((numSurveys < 1) || (numPromptsPerSurvey < 1)) {
+			throw new IllegalArgumentException(
+				"The campaign must have at least one survey and prompt.");
+		}
+		if((days < 0) || (responsesPerDay < 0) || (pointsPerDay < 0)) {
+			throw new IllegalArgumentException(
+				"The history cannot be negative.");
+		}
+		if(threads < 1) {
+			throw new IllegalArgumentException(
+				"There must be at least one thread.");
+		}
+
+		this.api = api;
+		this.client = client;
+		this.adminToken = adminToken;
+		this.numUsers = numUsers;
+		this.numSurveys = numSurveys;
+		this.numPromptsPerSurvey = numPromptsPerSurvey;
+		this.days = days;
+		this.responsesPerDay = responsesPerDay;
+		this.pointsPerDay = pointsPerDay;
+		this.threads = threads;
+	}
+
+	/**
+	 * Creates the population and uploads its history.
+	 *
+	 * @return The population.
+	 *
+	 * @throws ApiException There was a library error.
+	 *
+	 * @throws RequestErrorException The server rejected one of the requests.
+	 *
+	 * @throws DomainException The generated campaign was invalid.
+	 */
+	public Population generate()
+			throws ApiException, RequestErrorException, DomainException {
+
+		String runId = runId();
+		final long historyEnd = System.currentTimeMillis();
+		final long historyStart = historyEnd - (days * MILLIS_PER_DAY);
+
+		String classId = "urn:class:load:" + runId;
+		log("Creating the class: " + classId);
+		api.createClass(
+			adminToken,
+			client,
+			classId,
+			"Load Test " + runId,
+			"A generated class.");
+
+		log("Creating " + numUsers + " users.");
+		List<Callable<Population.User>> userCreations =
+			new ArrayList<Callable<Population.User>>(numUsers);
+		for(int i = 0; i < numUsers; i++) {
+			final String username = "load" + runId + "u" + i;
+			final String password = "Load-" + runId + "-" + i;
+
+			userCreations.add(
+				new Callable<Population.User>() {
+					/**
+					 * Creates the user and retrieves its hashed password.
+					 */
+					@Override
+					public Population.User call()
+							throws ApiException, RequestErrorException {
+
+						api.createUser(
+							adminToken,
+							client,
+							username,
+							password,
+							false,
+							true,
+							false,
+							null);
+
+						return
+							new Population.User(
+								username,
+								password,
+								api.getHashedPassword(
+									username,
+									password,
+									client));
+					}
+				});
+		}
+		List<Population.User> users = runAll(userCreations);
+
+		Map<String, Clazz.Role> roster = new HashMap<String, Clazz.Role>();
+		for(Population.User user : users) {
+			roster.put(user.getUsername(), Clazz.Role.RESTRICTED);
+		}
+		api.updateClass(adminToken, client, classId, null, null, roster, null);
+
+		String campaignId = "urn:campaign:load:" + runId;
+		log("Creating the campaign: " + campaignId);
+		String campaignXml =
+			Fixtures.campaignXml(campaignId, numSurveys, numPromptsPerSurvey);
+		api.createCampaign(
+			adminToken,
+			client,
+			Campaign.RunningState.RUNNING,
+			Campaign.PrivacyState.SHARED,
+			Collections.singleton(classId),
+			campaignXml,
+			"A generated campaign.");
+		Campaign campaignInfo =
+			api.getCampaigns(
+				adminToken,
+				client,
+				Campaign.OutputFormat.SHORT,
+				Collections.singleton(campaignId),
+				null,
+				null,
+				null,
+				null,
+				null,
+				null)
+			.get(campaignId);
+		if(campaignInfo == null) {
+			throw new ApiException(
+				"The campaign was created but could not be read: " +
+					campaignId);
+		}
+
+		String observerId = "org.ohmage.load.r" + runId;
+		log("Creating the observer: " + observerId);
+		api.createObserver(
+			adminToken,
+			client,
+			Fixtures.observerXml(observerId, STREAM_ID));
+
+		final Population population =
+			new Population(
+				classId,
+				campaignXml,
+				campaignInfo.getCreationTimestamp(),
+				observerId,
+				STREAM_ID,
+				historyStart,
+				historyEnd,
+				users);
+
+		log(
+			"Uploading " +
+				days +
+				" days of history for each user.");
+		final Random random = new Random();
+		List<Callable<Population.User>> histories =
+			new ArrayList<Callable<Population.User>>(numUsers);
+		for(final Population.User user : users) {
+			final long seed = random.nextLong();
+
+			histories.add(
+				new Callable<Population.User>() {
+					/**
+					 * Uploads the user's history.
+					 */
+					@Override
+					public Population.User call()
+							throws ApiException, RequestErrorException {
+
+						uploadHistory(population, user, seed);
+						return user;
+					}
+				});
+		}
+		runAll(histories);
+
+		return population;
+	}
+
+	/**
+	 * Uploads the survey responses and stream data of a user's history.
+	 */
+	private void uploadHistory(
+			final Population population,
+			final Population.User user,
+			final long seed)
+			throws ApiException, RequestErrorException {
+
+		int numResponses = days * responsesPerDay;
+		if(numResponses > 0) {
+			List<SurveyResponse> responses =
+				surveyResponses(
+					population,
+					user,
+					client,
+					numResponses,
+					seed,
+					population.getHistoryStart(),
+					MILLIS_PER_DAY / responsesPerDay);
+
+			api.uploadSurveyResponses(
+				user.getUsername(),
+				user.getHashedPassword(),
+				client,
+				population.getCampaign().getId(),
+				population.getCampaignCreationTimestamp(),
+				responses,
+				SURVEY_BATCH_SIZE,
+				1);
+		}
+
+		int numPoints = days * pointsPerDay;
+		if(numPoints > 0) {
+			long interval = MILLIS_PER_DAY / pointsPerDay;
+
+			for(int i = 0; i < numPoints; i += STREAM_BATCH_SIZE) {
+				api.uploadStreamData(
+					user.getUsername(),
+					user.getHashedPassword(),
+					client,
+					population.getObserverId(),
+					1,
+					Fixtures
+						.streamUpload(
+							population.getStreamId(),
+							Math.min(STREAM_BATCH_SIZE, numPoints - i),
+							seed + i,
+							population.getHistoryStart() + (i * interval),
+							interval)
+						.toString());
+			}
+		}
+	}
+
+	/**
+	 * Generates survey responses for a user.
+	 *
+	 * @param population The population whose campaign is being answered.
+	 *
+	 * @param user The user who is answering the surveys.
+	 *
+	 * @param client The client value given to the responses.
+	 *
+	 * @param numResponses The number of responses to generate.
+	 *
+	 * @param seed The random seed.
+	 *
+	 * @param startTime The time of the first response.
+	 *
+	 * @param intervalMillis The number of milliseconds between responses.
+	 *
+	 * @return The survey responses.
+	 *
+	 * @throws ApiException The responses could not be generated.
+	 */
+	public static List<SurveyResponse> surveyResponses(
+			final Population population,
+			final Population.User user,
+			final String client,
+			final int numResponses,
+			final long seed,
+			final long startTime,
+			final long intervalMillis)
+			throws ApiException {
+
+		Campaign campaign = population.getCampaign();
+
+		try {
+			JSONArray responses =
+				Fixtures.surveyResponses(
+					campaign,
+					numResponses,
+					seed,
+					startTime,
+					intervalMillis);
+
+			List<SurveyResponse> result =
+				new ArrayList<SurveyResponse>(responses.length());
+			for(int i = 0; i < responses.length(); i++) {
+				result.add(
+					new SurveyResponse(
+						user.getUsername(),
+						campaign.getId(),
+						client,
+						campaign,
+						responses.getJSONObject(i)));
+			}
+			return result;
+		}
+		catch(JSONException e) {
+			throw new ApiException(
+				"The survey responses could not be generated.",
+				e);
+		}
+		catch(DomainException e) {
+			throw new ApiException(
+				"The survey responses could not be generated.",
+				e);
+		}
+	}
+
+	/**
+	 * Runs the tasks on a pool of {@link #threads} threads and returns their
+	 * results in order. If any task fails, the remaining tasks are cancelled
+	 * and its exception is thrown.
+	 */
+	private <T> List<T> runAll(final List<Callable<T>> tasks)
+			throws ApiException, RequestErrorException {
+
+		ExecutorService executor =
+			Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+		try {
+			List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+			for(Callable<T> task : tasks) {
+				futures.add(executor.submit(task));
+			}
+
+			List<T> result = new ArrayList<T>(tasks.size());
+			for(Future<T> future : futures) {
+				try {
+					result.add(future.get());
+				}
+				catch(ExecutionException e) {
+					Throwable cause = e.getCause();
+					if(cause instanceof ApiException) {
+						throw (ApiException) cause;
+					}
+					else if(cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					throw new ApiException("A task failed.", cause);
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ApiException("Interrupted while seeding.", e);
+				}
+			}
+			return result;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns a short, random ID that is valid in usernames, URNs, and
+	 * observer IDs.
+	 */
+	private static String runId() {
+		StringBuilder builder = new StringBuilder();
+		Random random = new Random();
+		for(int i = 0; i < 6; i++) {
+			builder.append(Character.forDigit(random.nextInt(36), 36));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Prints a progress message.
+	 */
+	private static void log(final String message) {
+		System.out.println(message);
+	}
+}
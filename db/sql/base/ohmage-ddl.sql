@@ -600,6 +600,9 @@ CREATE TABLE IF NOT EXISTS observer_stream (
     with_timestamp boolean DEFAULT NULL,
     with_location boolean DEFAULT NULL,
     stream_schema text NOT NULL,
+    -- How the stream's data is stored: 'json', 'binary', or 
+    -- 'binary_compressed'.
+    stream_encoding varchar(32) NOT NULL DEFAULT 'json',
     last_modified_timestamp timestamp DEFAULT now() ON UPDATE now(),
     PRIMARY KEY (id),
     KEY observer_stream_key_stream_id (stream_id)
@@ -649,7 +652,9 @@ CREATE TABLE IF NOT EXISTS observer_stream_data (
   location_longitude double DEFAULT NULL,
   location_accuracy double DEFAULT NULL,
   location_provider varchar(255) DEFAULT NULL,
-  data longtext NOT NULL,
+  -- Either JSON text or, if the stream is binary encoded, a value with a
+  -- leading marker byte. See the stream's encoding.
+  data longblob NOT NULL,
   last_modified_timestamp timestamp DEFAULT now() ON UPDATE now(),
   PRIMARY KEY (id),
   KEY observer_stream_data_key_observer_stream_link_id (observer_stream_link_id),
@@ -789,3 +794,83 @@ CREATE TABLE IF NOT EXISTS `observer_stream_data_invalid` (
       ON DELETE CASCADE
       ON UPDATE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- --------------------------------------------------------------------
+-- A summary of each user's upload activity for each campaign or 
+-- observer. This is maintained by the upload paths so that the user
+-- stats may be read without scanning the uploaded data.
+-- --------------------------------------------------------------------
+CREATE TABLE IF NOT EXISTS `user_activity_summary` (
+    `id` int(10) unsigned NOT NULL AUTO_INCREMENT,
+    `user_id` int(10) unsigned NOT NULL,
+    `source_type` varchar(16) NOT NULL,
+    `source_id` varchar(255) NOT NULL,
+    `last_data_millis` bigint(20) DEFAULT NULL,
+    `last_modified_timestamp` timestamp NOT NULL
+        DEFAULT CURRENT_TIMESTAMP
+        ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `user_activity_summary_unique_user_source`
+        (`user_id`, `source_type`, `source_id`),
+    CONSTRAINT `user_activity_summary_fk_user_id`
+        FOREIGN KEY (`user_id`)
+        REFERENCES `user` (`id`)
+        ON DELETE CASCADE
+        ON UPDATE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- --------------------------------------------------------------------
+-- The number of points, and the number of those with a location, that
+-- were uploaded for an activity summary in each hour.
+-- --------------------------------------------------------------------
+CREATE TABLE IF NOT EXISTS `user_activity_hourly` (
+    `summary_id` int(10) unsigned NOT NULL,
+    `hour_bucket` bigint(20) NOT NULL,
+    `num_points` int(10) unsigned NOT NULL DEFAULT 0,
+    `num_points_with_location` int(10) unsigned NOT NULL DEFAULT 0,
+    UNIQUE KEY `user_activity_hourly_unique_summary_hour`
+        (`summary_id`, `hour_bucket`),
+    CONSTRAINT `user_activity_hourly_fk_summary_id`
+        FOREIGN KEY (`summary_id`)
+        REFERENCES `user_activity_summary` (`id`)
+        ON DELETE CASCADE
+        ON UPDATE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- --------------------------------------------------------------------
+-- A log of the survey responses and stream points that have been 
+-- inserted, updated, or deleted. Each row's ID is its position in the
+-- change feed. The rows do not reference the changed data so that 
+-- deletions remain in the log. Stream points are logged with one row for
+-- each stream in each stored batch, which counts the batch's points.
+-- --------------------------------------------------------------------
+CREATE TABLE IF NOT EXISTS `change_log` (
+    `id` bigint(20) unsigned NOT NULL AUTO_INCREMENT,
+    `source_type` varchar(16) NOT NULL,
+    `source_id` varchar(255) NOT NULL,
+    `stream_id` varchar(255) NOT NULL DEFAULT '',
+    `operation` varchar(8) NOT NULL,
+    `item_id` varchar(255) DEFAULT NULL,
+    `item_millis` bigint(20) DEFAULT NULL,
+    `item_count` int(10) unsigned NOT NULL DEFAULT 1,
+    `username` varchar(25) NOT NULL,
+    `change_timestamp` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (`id`),
+    KEY `change_log_source`
+        (`source_type`, `source_id`, `stream_id`, `id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- --------------------------------------------------------------------
+-- The files in the content-addressed media store, which are named by 
+-- the SHA-256 digest of their contents and their extension, and the 
+-- number of images, videos, audio files, and documents that refer to 
+-- each of them. A file is deleted when its last reference is removed.
+-- --------------------------------------------------------------------
+CREATE TABLE IF NOT EXISTS `media_blob` (
+    `digest` char(64) NOT NULL,
+    `extension` varchar(16) NOT NULL DEFAULT '',
+    `size` bigint(20) unsigned NOT NULL,
+    `reference_count` int(10) unsigned NOT NULL DEFAULT 0,
+    `creation_timestamp` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (`digest`, `extension`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
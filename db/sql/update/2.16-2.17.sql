@@ -0,0 +1,130 @@
+-- Always make sure we are using our own database.
+USE ohmage;
+
+-- Drop the procedure if it already existed.
+DROP PROCEDURE IF EXISTS upgradeFrom2Dot16To2Dot17;
+
+-- Set a dummy delimiter so that our scripts may be properly formed.
+DELIMITER //
+
+-- Create a procedure to do the things 
+CREATE PROCEDURE upgradeFrom2Dot16To2Dot17 (OUT resultCode INT)
+BEGIN
+    -- Declare a handler that will catch all SQL exceptions.
+    DECLARE exit HANDLER FOR sqlexception
+    BEGIN
+        -- Set the result code to a generic -1.
+        SET resultCode = -1;
+    END;
+
+    -- Add the table for the users' activity summaries.
+    CREATE TABLE IF NOT EXISTS `user_activity_summary` (
+        `id` int(10) unsigned NOT NULL AUTO_INCREMENT,
+        `user_id` int(10) unsigned NOT NULL,
+        `source_type` varchar(16) NOT NULL,
+        `source_id` varchar(255) NOT NULL,
+        `last_data_millis` bigint(20) DEFAULT NULL,
+        `last_modified_timestamp` timestamp NOT NULL
+            DEFAULT CURRENT_TIMESTAMP
+            ON UPDATE CURRENT_TIMESTAMP,
+        PRIMARY KEY (`id`),
+        UNIQUE KEY `user_activity_summary_unique_user_source`
+            (`user_id`, `source_type`, `source_id`),
+        CONSTRAINT `user_activity_summary_fk_user_id`
+            FOREIGN KEY (`user_id`)
+            REFERENCES `user` (`id`)
+            ON DELETE CASCADE
+            ON UPDATE CASCADE
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+    -- Add the table for the hourly activity counts.
+    CREATE TABLE IF NOT EXISTS `user_activity_hourly` (
+        `summary_id` int(10) unsigned NOT NULL,
+        `hour_bucket` bigint(20) NOT NULL,
+        `num_points` int(10) unsigned NOT NULL DEFAULT 0,
+        `num_points_with_location` int(10) unsigned NOT NULL DEFAULT 0,
+        UNIQUE KEY `user_activity_hourly_unique_summary_hour`
+            (`summary_id`, `hour_bucket`),
+        CONSTRAINT `user_activity_hourly_fk_summary_id`
+            FOREIGN KEY (`summary_id`)
+            REFERENCES `user_activity_summary` (`id`)
+            ON DELETE CASCADE
+            ON UPDATE CASCADE
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+    -- Seed the survey summaries with the existing responses. The hourly
+    -- counts start empty and fill in as new data is uploaded.
+    INSERT IGNORE INTO user_activity_summary(
+        user_id, source_type, source_id, last_data_millis)
+    SELECT sr.user_id, 'survey', c.urn, MAX(sr.epoch_millis)
+    FROM survey_response sr, campaign c
+    WHERE sr.campaign_id = c.id
+    GROUP BY sr.user_id, c.urn;
+
+    -- Seed the stream summaries with the existing data.
+    INSERT IGNORE INTO user_activity_summary(
+        user_id, source_type, source_id, last_data_millis)
+    SELECT osd.user_id, 'stream', o.observer_id, MAX(osd.time)
+    FROM observer_stream_data osd, observer_stream_link osl, observer o
+    WHERE osd.observer_stream_link_id = osl.id
+    AND osl.observer_id = o.id
+    GROUP BY osd.user_id, o.observer_id;
+
+    -- Add the per-stream encoding of the stored data.
+    ALTER TABLE observer_stream
+        ADD COLUMN `stream_encoding` varchar(32) NOT NULL DEFAULT 'json'
+        AFTER `stream_schema`;
+
+    -- Allow the stream data to be stored in its binary encoding. The
+    -- existing JSON text is kept as-is and continues to be readable.
+    ALTER TABLE observer_stream_data
+        MODIFY COLUMN `data` longblob NOT NULL;
+
+    -- Add the log of changes to survey responses and stream data.
+    CREATE TABLE IF NOT EXISTS `change_log` (
+        `id` bigint(20) unsigned NOT NULL AUTO_INCREMENT,
+        `source_type` varchar(16) NOT NULL,
+        `source_id` varchar(255) NOT NULL,
+        `stream_id` varchar(255) NOT NULL DEFAULT '',
+        `operation` varchar(8) NOT NULL,
+        `item_id` varchar(255) DEFAULT NULL,
+        `item_millis` bigint(20) DEFAULT NULL,
+        `item_count` int(10) unsigned NOT NULL DEFAULT 1,
+        `username` varchar(25) NOT NULL,
+        `change_timestamp` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+        PRIMARY KEY (`id`),
+        KEY `change_log_source`
+            (`source_type`, `source_id`, `stream_id`, `id`)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+    -- Add the reference counts for the content-addressed media store. The
+    -- existing media files are not moved into it and continue to be read
+    -- and deleted where they are.
+    CREATE TABLE IF NOT EXISTS `media_blob` (
+        `digest` char(64) NOT NULL,
+        `extension` varchar(16) NOT NULL DEFAULT '',
+        `size` bigint(20) unsigned NOT NULL,
+        `reference_count` int(10) unsigned NOT NULL DEFAULT 0,
+        `creation_timestamp` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+        PRIMARY KEY (`digest`, `extension`)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+    -- Add the location of the media store.
+    INSERT IGNORE INTO preference(p_key, p_value)
+        VALUES ('media_directory', '/opt/ohmage/userdata/media');
+
+    -- Set the result to 0.
+    SET resultCode = 0;
+END //
+
+-- Reset the delimiter to its proper value.
+DELIMITER ;
+
+-- Call the procedure.
+CALL upgradeFrom2Dot16To2Dot17(@upgradeResultCode);
+
+-- Clean up.
+DROP PROCEDURE upgradeFrom2Dot16To2Dot17;
+
+-- Echo a result message.
+SELECT @upgradeResultCode;
@@ -44,6 +44,7 @@ public class Annotator {
 	public static enum ErrorCode {
 		SYSTEM_GENERAL_ERROR ("0100"),
 		SYSTEM_REQUEST_TOO_LARGE ("0101"),
+		SYSTEM_SERVER_BUSY ("0102"),
 
 		AUTHENTICATION_FAILED ("0200"),
 		AUTHENTICATION_ACCOUNT_DISABLED ("0201"),
@@ -110,6 +111,8 @@ public class Annotator {
 		SURVEY_INVALID_IMAGES_VALUE ("0628"),
 		SURVEY_INVALID_PROMPT_RESPONSE_SEARCH ("0629"),
 		SURVEY_INVALID_SURVEY_PROMPT_MAP ("0630"),
+		SURVEY_INVALID_INCLUDE_ANNOTATIONS_VALUE ("0631"),
+		SURVEY_INVALID_ALLOW_PARTIAL_VALUE ("0632"),
 
 		CAMPAIGN_INVALID_ID ("0700"),
 		CAMPAIGN_INVALID_NAME ("0701"),
@@ -157,6 +160,7 @@ public class Annotator {
 		USER_INVALID_DELETE_PERSONAL_INFO ("1015"),
 		USER_INVALID_CLASS_CREATION_PRIVILEGE ("1016"),
 		USER_INVALID_USER_SETUP_PRIVILEGE ("1017"),
+		USER_INVALID_BATCH ("1018"),
 
 		DOCUMENT_INVALID_ID ("1100"),
 		DOCUMENT_INVALID_NAME ("1101"),
@@ -204,6 +208,10 @@ public class Annotator {
 		OBSERVER_INVALID_COLUMN_LIST ("1514"),
 		OBSERVER_INVALID_CHRONOLOGICAL_VALUE ("1515"),
 		OBSERVER_INVALID_PRESERVE_INVALID_POINTS ("1516"),
+		OBSERVER_INVALID_BUCKET_WIDTH ("1517"),
+		OBSERVER_INVALID_AGGREGATE_FUNCTIONS ("1518"),
+		OBSERVER_INVALID_DOWNSAMPLE ("1519"),
+		OBSERVER_INVALID_AGGREGATION_FIELD ("1520"),
 		
 		VIDEO_INVALID_ID("1600"),
 
@@ -224,7 +232,14 @@ public class Annotator {
 		AUDIO_INVALID_ID ("1800"),
 		AUDIO_INVALID_DURATION ("1801"),
 		AUDIO_INSUFFICIENT_PERMISSIONS ("1802"),
-		AUDIO_INVALID_CONTENT ("1803");
+		AUDIO_INVALID_CONTENT ("1803"),
+
+		EXPORT_INVALID_ID ("1900"),
+		EXPORT_INVALID_TYPE ("1901"),
+		EXPORT_NOT_FINISHED ("1902"),
+		EXPORT_TOO_MANY_EXPORTS ("1903"),
+
+		CHANGE_INVALID_TOKEN ("2000");
 		
 		private final String value;
 		
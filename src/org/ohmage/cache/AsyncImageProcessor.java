@@ -148,6 +148,21 @@ public class AsyncImageProcessor
 					// If the size of the image does not exist, create it.
 					if(! image.sizeExists(size)) {
 						image.saveImage(size);
+						
+						// The new variant is still in memory, so cache it
+						// now instead of reading it back on its first
+						// request.
+						try {
+							ImageVariantCache.load(image, size);
+						}
+						catch(DomainException e) {
+							LOGGER
+								.warn(
+									"The new size of the image could not " +
+										"be cached: " + 
+										image.getId().toString(),
+									e);
+						}
 					}
 				}
 			}
@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.domain.Image;
+import org.ohmage.exception.DomainException;
+
+/**
+ * <p>
+ * An in-memory, least-recently-used cache of the small variants of images,
+ * e.g. their {@link Image#SMALL small} and {@link Image#ICON icon} sizes. 
+ * Galleries request the same thumbnails over and over, and this lets them be
+ * served without opening a file. The cache is bounded by the total number of
+ * bytes it holds rather than by its number of entries.
+ * </p>
+ * 
+ * <p>
+ * Entries are added when the variants are first created by the
+ * {@link AsyncImageProcessor} or, failing that, when they are first read. 
+ * They must be {@link #invalidate(UUID) invalidated} when their image is 
+ * deleted. Access control is not the cache's concern; callers must check it
+ * before using an entry.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public final class ImageVariantCache {
+	private static final String JSON_KEY_HITS = "hits";
+	private static final String JSON_KEY_MISSES = "misses";
+	private static final String JSON_KEY_HIT_RATIO = "hit_ratio";
+	private static final String JSON_KEY_EVICTIONS = "evictions";
+	private static final String JSON_KEY_ENTRIES = "entries";
+	private static final String JSON_KEY_BYTES = "bytes";
+	private static final String JSON_KEY_MAX_BYTES = "max_bytes";
+	
+	/**
+	 * The maximum number of bytes of image variants that will be cached.
+	 */
+	private static final long MAX_CACHE_BYTES = 64 * 1024 * 1024;
+	/**
+	 * The maximum size of a single variant that will be cached. Anything 
+	 * larger is always read from disk.
+	 */
+	private static final int MAX_CACHED_VARIANT_BYTES = 256 * 1024;
+	
+	/**
+	 * The contents of one variant of an image and its MIME type.
+	 *
+	 * @author John Jenkins
+	 */
+	public static final class Variant {
+		private final byte[] contents;
+		private final String type;
+		
+		/**
+		 * Creates a new variant.
+		 * 
+		 * @param contents The variant's contents.
+		 * 
+		 * @param type The variant's MIME type.
+		 */
+		private Variant(final byte[] contents, final String type) {
+			this.contents = contents;
+			this.type = type;
+		}
+		
+		/**
+		 * Returns the variant's MIME type.
+		 * 
+		 * @return The MIME type.
+		 */
+		public String getType() {
+			return type;
+		}
+		
+		/**
+		 * Returns the number of bytes in the variant.
+		 * 
+		 * @return The number of bytes in the variant.
+		 */
+		public long getSizeBytes() {
+			return contents.length;
+		}
+		
+		/**
+		 * Returns a new stream of the variant's contents.
+		 * 
+		 * @return A stream of the variant's contents.
+		 */
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(contents);
+		}
+	}
+	
+	/**
+	 * The cached variants in least-recently-used order, keyed by the image's
+	 * ID followed by the size's extension. All access must be synchronized on
+	 * the map itself.
+	 */
+	private static final LinkedHashMap<String, Variant> CACHE =
+		new LinkedHashMap<String, Variant>(16, 0.75f, true);
+	/**
+	 * The total number of bytes in the cache. This is guarded by the cache's
+	 * lock.
+	 */
+	private static long cacheBytes = 0;
+	
+	private static final AtomicLong HITS = new AtomicLong();
+	private static final AtomicLong MISSES = new AtomicLong();
+	private static final AtomicLong EVICTIONS = new AtomicLong();
+	
+	/**
+	 * Default constructor. Made private so that it cannot be instantiated.
+	 */
+	private ImageVariantCache() {}
+	
+	/**
+	 * Returns whether or not variants of some size are cached. Only the 
+	 * small sizes are; originals are too large to be worth holding in 
+	 * memory.
+	 * 
+	 * @param size The size.
+	 * 
+	 * @return Whether or not variants of the size are cached.
+	 */
+	public static boolean isCached(final Image.Size size) {
+		return Image.SMALL.equals(size) || Image.ICON.equals(size);
+	}
+	
+	/**
+	 * Returns a cached variant.
+	 * 
+	 * @param imageId The image's unique identifier.
+	 * 
+	 * @param size The variant's size.
+	 * 
+	 * @return The variant or null if it is not cached.
+	 */
+	public static Variant get(final UUID imageId, final Image.Size size) {
+		Variant result;
+		synchronized(CACHE) {
+			result = CACHE.get(getKey(imageId, size));
+		}
+		
+		if(result == null) {
+			MISSES.incrementAndGet();
+		}
+		else {
+			HITS.incrementAndGet();
+		}
+		return result;
+	}
+	
+	/**
+	 * Reads a variant from an image and caches it. If the variant doesn't 
+	 * exist yet, the image creates it.
+	 * 
+	 * @param image The image.
+	 * 
+	 * @param size The variant's size.
+	 * 
+	 * @return The variant or null if the size is not 
+	 * 		   {@link #isCached(Image.Size) cached} or the variant is too 
+	 * 		   large to be cached, in which case it should be read from the
+	 * 		   image instead.
+	 * 
+	 * @throws DomainException There was an error reading the variant.
+	 */
+	public static Variant load(
+			final Image image, 
+			final Image.Size size) 
+			throws DomainException {
+		
+		if(! isCached(size)) {
+			return null;
+		}
+		
+		ByteArrayOutputStream contents = new ByteArrayOutputStream();
+		InputStream imageStream = image.getInputStream(size);
+		try {
+			int bytesRead;
+			byte[] buffer = new byte[4096];
+			while((bytesRead = imageStream.read(buffer)) != -1) {
+				contents.write(buffer, 0, bytesRead);
+				
+				if(contents.size() > MAX_CACHED_VARIANT_BYTES) {
+					return null;
+				}
+			}
+		}
+		catch(IOException e) {
+			throw new DomainException("The image could not be read.", e);
+		}
+		finally {
+			try {
+				imageStream.close();
+			}
+			catch(IOException e) {
+				// The contents have already been read or have failed.
+			}
+		}
+		
+		Variant result = 
+			new Variant(contents.toByteArray(), image.getType(size));
+		put(getKey(image.getId(), size), result);
+		return result;
+	}
+	
+	/**
+	 * Removes all of the variants of an image from the cache.
+	 * 
+	 * @param imageId The image's unique identifier.
+	 */
+	public static void invalidate(final UUID imageId) {
+		synchronized(CACHE) {
+			for(Image.Size size : Image.getSizes()) {
+				if(isCached(size)) {
+					Variant removed = CACHE.remove(getKey(imageId, size));
+					if(removed != null) {
+						cacheBytes -= removed.getSizeBytes();
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the hit ratio, the number of entries and bytes, and the bounds
+	 * of the cache as JSON.
+	 * 
+	 * @return The cache's statistics as JSON.
+	 * 
+	 * @throws JSONException There was an error building the JSON.
+	 */
+	public static JSONObject toJson() throws JSONException {
+		long hits = HITS.get();
+		long misses = MISSES.get();
+		
+		JSONObject result = new JSONObject();
+		result.put(JSON_KEY_HITS, hits);
+		result.put(JSON_KEY_MISSES, misses);
+		result.put(
+			JSON_KEY_HIT_RATIO, 
+			((hits + misses) == 0) ? 0 : ((double) hits) / (hits + misses));
+		result.put(JSON_KEY_EVICTIONS, EVICTIONS.get());
+		synchronized(CACHE) {
+			result.put(JSON_KEY_ENTRIES, CACHE.size());
+			result.put(JSON_KEY_BYTES, cacheBytes);
+		}
+		result.put(JSON_KEY_MAX_BYTES, MAX_CACHE_BYTES);
+		return result;
+	}
+	
+	/**
+	 * Adds a variant to the cache, evicting the least-recently-used variants
+	 * until it fits.
+	 * 
+	 * @param key The variant's key.
+	 * 
+	 * @param variant The variant.
+	 */
+	private static void put(final String key, final Variant variant) {
+		synchronized(CACHE) {
+			Variant previous = CACHE.put(key, variant);
+			if(previous != null) {
+				cacheBytes -= previous.getSizeBytes();
+			}
+			cacheBytes += variant.getSizeBytes();
+			
+			Iterator<Map.Entry<String, Variant>> iterator = 
+				CACHE.entrySet().iterator();
+			while((cacheBytes > MAX_CACHE_BYTES) && iterator.hasNext()) {
+				Map.Entry<String, Variant> eldest = iterator.next();
+				cacheBytes -= eldest.getValue().getSizeBytes();
+				iterator.remove();
+				EVICTIONS.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * Builds the key for a variant, which is the image's ID followed by the
+	 * size's extension, just as the variant's file is named.
+	 * 
+	 * @param imageId The image's unique identifier.
+	 * 
+	 * @param size The variant's size.
+	 * 
+	 * @return The key.
+	 */
+	private static String getKey(final UUID imageId, final Image.Size size) {
+		return imageId.toString() + size.getExtension();
+	}
+}
@@ -212,8 +212,21 @@ public abstract class KeyValueCache extends Cache {
 		for(KeyAndValue currStateAndId : keyAndValue) {
 			keyValueMap.put(currStateAndId.key, currStateAndId.value);
 		}
+		boolean changed = ! keyValueMap.equals(this.keyValueMap);
 		this.keyValueMap = keyValueMap;
 
 		setLastUpdateTimestamp(System.currentTimeMillis());
+		
+		if(changed) {
+			valuesChanged();
+		}
+	}
+
+	/**
+	 * Called after a refresh has found that the keys or their values have
+	 * changed. By default, this does nothing.
+	 */
+	protected void valuesChanged() {
+		// Do nothing.
 	}
 }
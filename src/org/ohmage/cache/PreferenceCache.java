@@ -62,6 +62,9 @@ public final class PreferenceCache extends KeyValueCache {
 	// Audio-specific information.
 	public static final String KEY_AUDIO_DIRECTORY = "audio_directory";
 	
+	// The content-addressed store shared by all media.
+	public static final String KEY_MEDIA_DIRECTORY = "media_directory";
+	
 	// Allows privileged users in a class to view the Mobility information 
 	// about everyone else in the class.
 	public static final String 
@@ -183,6 +186,14 @@ public final class PreferenceCache extends KeyValueCache {
 		return CACHE_KEY;
 	}
 	
+	/**
+	 * Marks the server's configuration as changed.
+	 */
+	@Override
+	protected void valuesChanged() {
+		VersionStamps.bump(VersionStamps.Domain.CONFIGURATION);
+	}
+	
 	/**
 	 * Compares the current timestamp with the last time we did an update plus
 	 * the amount of time between updates. If our cache has become stale, we
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.cache;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * Version stamps for the metadata that clients poll, e.g. campaigns, classes,
+ * observers, and the server's configuration. Each stamp is bumped whenever
+ * anything in its domain changes, and the read requests build their entity
+ * tags from them so that an unchanged response can be answered with "304 Not
+ * Modified" without being queried for or serialized again.
+ * </p>
+ *
+ * <p>
+ * A stamp covers its whole domain, so a change to one campaign invalidates
+ * the tags for every campaign read. That is deliberate: which campaigns a
+ * read returns depends on the requester's roles, classes, and the read's
+ * parameters, and a coarse stamp cannot miss any of them. The stamps only
+ * see changes made through this server, so the tags also include the time
+ * to bound how long a change made elsewhere, e.g. by another server sharing
+ * the database, may go unnoticed.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public final class VersionStamps {
+	/**
+	 * The domains that are stamped.
+	 *
+	 * @author John Jenkins
+	 */
+	public static enum Domain {
+		/**
+		 * The server's configuration.
+		 */
+		CONFIGURATION,
+		/**
+		 * Campaigns, their classes, and their users' roles.
+		 */
+		CAMPAIGN,
+		/**
+		 * Classes and their rosters.
+		 */
+		CLASS,
+		/**
+		 * Observers and their streams.
+		 */
+		OBSERVER;
+	}
+
+	/**
+	 * How long an entity tag is valid regardless of whether or not its stamps
+	 * have changed.
+	 */
+	private static final long TAG_LIFETIME_MILLIS = 5 * 60 * 1000;
+
+	/**
+	 * The algorithm used to digest the entity tags.
+	 */
+	private static final String DIGEST_ALGORITHM = "SHA-1";
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * When this server started. The stamps start over with every restart, so
+	 * this keeps a tag from before a restart from matching one after it.
+	 */
+	private static final long EPOCH = System.currentTimeMillis();
+
+	/**
+	 * The stamps, indexed by their domain's ordinal.
+	 */
+	private static final AtomicLongArray STAMPS =
+		new AtomicLongArray(Domain.values().length);
+
+	/**
+	 * Default constructor. Made private so that it cannot be instantiated.
+	 */
+	private VersionStamps() {}
+
+	/**
+	 * Marks that something in each of the domains has changed. This should be
+	 * called after the change has been committed.
+	 *
+	 * @param domains The domains that have changed.
+	 */
+	public static void bump(final Domain... domains) {
+		for(Domain domain : domains) {
+			STAMPS.incrementAndGet(domain.ordinal());
+		}
+	}
+
+	/**
+	 * Returns the current stamp for a domain.
+	 *
+	 * @param domain The domain.
+	 *
+	 * @return The domain's stamp.
+	 */
+	public static long get(final Domain domain) {
+		return STAMPS.get(domain.ordinal());
+	}
+
+	/**
+	 * Builds an entity tag from a key that describes a response, e.g.
+	 * the request, its parameters, and the requester, and the current stamps
+	 * of the domains the response depends on.
+	 *
+	 * @param key The key describing the response.
+	 *
+	 * @param domains The domains the response depends on.
+	 *
+	 * @return The entity tag, including its quotes.
+	 */
+	public static String buildTag(final String key, final Domain... domains) {
+		StringBuilder builder = new StringBuilder();
+		builder
+			.append(EPOCH).append('\n')
+			.append(System.currentTimeMillis() / TAG_LIFETIME_MILLIS)
+			.append('\n')
+			.append(key);
+		for(Domain domain : domains) {
+			builder
+				.append('\n')
+				.append(domain.name())
+				.append('=')
+				.append(get(domain));
+		}
+
+		byte[] digest;
+		try {
+			digest =
+				MessageDigest
+					.getInstance(DIGEST_ALGORITHM)
+					.digest(builder.toString().getBytes("UTF-8"));
+		}
+		catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(
+				"The digest algorithm is unknown: " + DIGEST_ALGORITHM,
+				e);
+		}
+		catch(UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is unknown.", e);
+		}
+
+		char[] result = new char[(digest.length * 2) + 2];
+		result[0] = '"';
+		for(int i = 0; i < digest.length; i++) {
+			result[(2 * i) + 1] = HEX_DIGITS[(digest[i] >> 4) & 0x0F];
+			result[(2 * i) + 2] = HEX_DIGITS[digest[i] & 0x0F];
+		}
+		result[result.length - 1] = '"';
+		return new String(result);
+	}
+}
@@ -18,6 +18,8 @@ package org.ohmage.domain;
 import java.util.TimeZone;
 import java.util.UUID;
 
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.ohmage.exception.DomainException;
 import org.ohmage.util.StringUtils;
 
@@ -29,6 +31,10 @@ import org.ohmage.util.StringUtils;
  * @author Joshua Selsky
  */
 public class Annotation {
+	private static final String JSON_KEY_TEXT = "text";
+	private static final String JSON_KEY_TIME = "time";
+	private static final String JSON_KEY_TIMEZONE = "timezone";
+	
 	private UUID id;
 	private String text;
 	private Long epochMillis;
@@ -84,6 +90,25 @@ public class Annotation {
 		return timezone;
 	}
 
+	/**
+	 * Creates a JSONObject with the annotation's text, time, and timezone.
+	 * The id is not included, as annotations are keyed by their id wherever
+	 * they are returned.
+	 * 
+	 * @return A JSONObject representing this annotation.
+	 * 
+	 * @throws JSONException There was an error building the JSONObject.
+	 */
+	public JSONObject toJson() throws JSONException {
+		JSONObject result = new JSONObject();
+		
+		result.put(JSON_KEY_TEXT, text);
+		result.put(JSON_KEY_TIME, epochMillis);
+		result.put(JSON_KEY_TIMEZONE, timezone.getID());
+		
+		return result;
+	}
+
 	@Override
 	public String toString() {
 		return "Annotation [id=" + id + ", text=" + text + ", epochMillis="
@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain;
+
+import org.joda.time.format.ISODateTimeFormat;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.exception.DomainException;
+
+/**
+ * <p>
+ * A single entry in the change feed, which records that a survey response or
+ * a batch of stream points was inserted, updated, or deleted. Entries only
+ * identify the data that changed; the data itself must be read with the usual
+ * APIs.
+ * </p>
+ *
+ * <p>
+ * Each entry has a sequence number, which is its position in the feed. It is
+ * given to clients as an opaque token, via {@link #getToken()}, which they
+ * return to read the entries after it.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public class Change {
+	private static final String JSON_KEY_TOKEN = "token";
+	private static final String JSON_KEY_OPERATION = "operation";
+	private static final String JSON_KEY_ID = "id";
+	private static final String JSON_KEY_USER = "user";
+	private static final String JSON_KEY_TIMESTAMP = "timestamp";
+	private static final String JSON_KEY_COUNT = "count";
+	private static final String JSON_KEY_CHANGED = "changed";
+
+	/**
+	 * The radix used to encode a sequence number as a token.
+	 */
+	private static final int TOKEN_RADIX = Character.MAX_RADIX;
+
+	/**
+	 * The kinds of data whose changes are recorded.
+	 *
+	 * @author John Jenkins
+	 */
+	public static enum SourceType {
+		/**
+		 * The source is a campaign, and the changed items are its survey
+		 * responses.
+		 */
+		SURVEY_RESPONSE,
+		/**
+		 * The source is an observer's stream, and the changed items are its
+		 * points.
+		 */
+		STREAM;
+
+		/**
+		 * Converts a String value into a SourceType or throws an exception
+		 * if there is no comparable source type.
+		 *
+		 * @param sourceType The source type to be converted into a
+		 * 					 SourceType enum.
+		 *
+		 * @return A comparable SourceType enum.
+		 *
+		 * @throws IllegalArgumentException Thrown if there is no comparable
+		 * 									SourceType enum.
+		 */
+		public static SourceType getValue(final String sourceType) {
+			return valueOf(sourceType.toUpperCase());
+		}
+
+		/**
+		 * Converts the source type to a nice, human-readable format.
+		 */
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	/**
+	 * The kinds of change.
+	 *
+	 * @author John Jenkins
+	 */
+	public static enum Operation {
+		INSERT,
+		UPDATE,
+		DELETE;
+
+		/**
+		 * Converts a String value into an Operation or throws an exception
+		 * if there is no comparable operation.
+		 *
+		 * @param operation The operation to be converted into an Operation
+		 * 					enum.
+		 *
+		 * @return A comparable Operation enum.
+		 *
+		 * @throws IllegalArgumentException Thrown if there is no comparable
+		 * 									Operation enum.
+		 */
+		public static Operation getValue(final String operation) {
+			return valueOf(operation.toUpperCase());
+		}
+
+		/**
+		 * Converts the operation to a nice, human-readable format.
+		 */
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	private final long sequence;
+	private final Operation operation;
+	private final String itemId;
+	private final Long itemMillis;
+	private final int itemCount;
+	private final String username;
+	private final long changedMillis;
+
+	/**
+	 * Creates a new change.
+	 *
+	 * @param sequence The change's position in the feed.
+	 *
+	 * @param operation The kind of change.
+	 *
+	 * @param itemId The unique identifier of the survey response that
+	 * 				 changed. This is null for stream points, whose changes
+	 * 				 are recorded in batches.
+	 *
+	 * @param itemMillis The time, in milliseconds since the epoch, at which
+	 * 					 the survey response or the earliest of the stream
+	 * 					 points was generated or null if it is unknown.
+	 *
+	 * @param itemCount The number of items that changed, which is 1 for a
+	 * 					survey response and the size of the batch for stream
+	 * 					points.
+	 *
+	 * @param username The username of the user that owns the changed data.
+	 *
+	 * @param changedMillis The time, in milliseconds since the epoch, at
+	 * 						which the change was made.
+	 *
+	 * @throws DomainException The operation or username is null.
+	 */
+	public Change(
+			final long sequence,
+			final Operation operation,
+			final String itemId,
+			final Long itemMillis,
+			final int itemCount,
+			final String username,
+			final long changedMillis)
+			throws DomainException {
+
+		if(operation == null) {
+			throw new DomainException("The operation is null.");
+		}
+		if(username == null) {
+			throw new DomainException("The username is null.");
+		}
+
+		this.sequence = sequence;
+		this.operation = operation;
+		this.itemId = itemId;
+		this.itemMillis = itemMillis;
+		this.itemCount = itemCount;
+		this.username = username;
+		this.changedMillis = changedMillis;
+	}
+
+	/**
+	 * Returns the change's position in the feed.
+	 *
+	 * @return The change's sequence number.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the opaque token that refers to this change's position in the
+	 * feed.
+	 *
+	 * @return The change's token.
+	 */
+	public String getToken() {
+		return encodeToken(sequence);
+	}
+
+	/**
+	 * Returns the kind of change.
+	 *
+	 * @return The change's operation.
+	 */
+	public Operation getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Returns the unique identifier of the data that changed.
+	 *
+	 * @return The changed item's identifier, which may be null.
+	 */
+	public String getItemId() {
+		return itemId;
+	}
+
+	/**
+	 * Returns the number of items that changed.
+	 *
+	 * @return The number of changed items.
+	 */
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	/**
+	 * Returns the username of the user that owns the changed data.
+	 *
+	 * @return The owner's username.
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * Encodes a position in the feed as an opaque token.
+	 *
+	 * @param sequence The position in the feed.
+	 *
+	 * @return The token.
+	 */
+	public static String encodeToken(final long sequence) {
+		return Long.toString(sequence, TOKEN_RADIX);
+	}
+
+	/**
+	 * Decodes a token into a position in the feed.
+	 *
+	 * @param token The token.
+	 *
+	 * @return The position in the feed.
+	 *
+	 * @throws IllegalArgumentException The token is not a valid token.
+	 */
+	public static long decodeToken(final String token) {
+		long result;
+		try {
+			result = Long.parseLong(token, TOKEN_RADIX);
+		}
+		catch(NumberFormatException e) {
+			throw new IllegalArgumentException("The token is invalid.", e);
+		}
+
+		if(result < 0) {
+			throw new IllegalArgumentException("The token is invalid.");
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a JSONObject that represents this change.
+	 *
+	 * @return A JSONObject that represents this change.
+	 *
+	 * @throws JSONException There was an error building the JSONObject.
+	 */
+	public JSONObject toJson() throws JSONException {
+		JSONObject result = new JSONObject();
+
+		result.put(JSON_KEY_TOKEN, getToken());
+		result.put(JSON_KEY_OPERATION, operation.toString());
+		result.put(JSON_KEY_ID, itemId);
+		result.put(JSON_KEY_USER, username);
+		if(itemMillis != null) {
+			result.put(
+				JSON_KEY_TIMESTAMP,
+				ISODateTimeFormat.dateTime().print(itemMillis));
+		}
+		result.put(JSON_KEY_COUNT, itemCount);
+		result.put(
+			JSON_KEY_CHANGED,
+			ISODateTimeFormat.dateTime().print(changedMillis));
+
+		return result;
+	}
+}
@@ -1,9 +1,11 @@
 package org.ohmage.domain;
 
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonNode;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -37,6 +39,24 @@ public class DataStream {
 		}
 	}
 	
+	/**
+	 * Receives each point, one at a time, as a user's data for a stream is
+	 * read, so that the points never all need to be in memory.
+	 *
+	 * @author John Jenkins
+	 */
+	public static interface Handler {
+		/**
+		 * Handles the next point.
+		 * 
+		 * @param dataStream The point.
+		 * 
+		 * @throws DomainException The point could not be handled, which 
+		 * 						   stops the read.
+		 */
+		public void handle(DataStream dataStream) throws DomainException;
+	}
+	
 	/**
 	 * This class represents the meta-data for a data stream. All fields are 
 	 * optional. This class is immutable and, therefore, thread-safe.
@@ -353,9 +373,16 @@ public class DataStream {
 	private final Stream stream;
 	
 	/**
-	 * The data in its Jackson object representation.
+	 * The data in its Jackson object representation. If this data was read
+	 * from the database, this is only built when it is first requested.
+	 */
+	private JsonNode data;
+	
+	/**
+	 * The data as it was stored in the database or null if this data was not
+	 * read from the database.
 	 */
-	private final JsonNode data;
+	private final byte[] storedData;
 
 	/**
 	 * Creates a new DataStream from JSON data encoded as a JsonNode.
@@ -390,6 +417,41 @@ public class DataStream {
 		
 		// Decode the data from the stream.
 		this.data = data;
+		this.storedData = null;
+	}
+
+	/**
+	 * Creates a new DataStream from data as it was stored in the database.
+	 * The data is not decoded until it is requested.
+	 * 
+	 * @param stream The stream that contains the definition on how to decode
+	 *				 the data.
+	 *
+	 * @param metaData The meta-data.
+	 * 
+	 * @param storedData The data as it was stored.
+	 * 
+	 * @throws DomainException One of the parameters is invalid or null.
+	 * 
+	 * @see DataStreamCodec
+	 */
+	public DataStream(
+			final Stream stream,
+			final MetaData metaData,
+			final byte[] storedData) 
+			throws DomainException {
+
+		if(stream == null) {
+			throw new DomainException("The stream is null.");
+		}
+		else if(storedData == null) {
+			throw new DomainException("The data is null.");
+		}
+		
+		this.stream = stream;
+		this.metaData = metaData;
+		this.data = null;
+		this.storedData = storedData;
 	}
 
 	/**
@@ -414,8 +476,38 @@ public class DataStream {
 	 * Returns a JsonNode for the data.
 	 * 
 	 * @return A JsonNode for the data.
+	 * 
+	 * @throws DomainException The stored data could not be decoded.
 	 */
-	public JsonNode getData() {
+	public JsonNode getData() throws DomainException {
+		if(data == null) {
+			data = DataStreamCodec.decode(stream, storedData);
+		}
+		
 		return data;
 	}
+	
+	/**
+	 * Writes the data to a generator. If the data was read from the database
+	 * and has not yet been decoded, it is transcoded directly from its stored
+	 * form without building a JsonNode.
+	 * 
+	 * @param generator The generator to write to. It must be at a point where
+	 * 					a value may be written.
+	 * 
+	 * @throws DomainException The stored data could not be decoded.
+	 * 
+	 * @throws IOException There was an error writing to the generator.
+	 */
+	public void writeData(
+			final JsonGenerator generator)
+			throws DomainException, IOException {
+		
+		if(data == null) {
+			DataStreamCodec.transcode(stream, storedData, generator);
+		}
+		else {
+			generator.writeTree(data);
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,211 @@
+package org.ohmage.domain;
+
+import org.codehaus.jackson.JsonNode;
+import org.ohmage.exception.DomainException;
+
+/**
+ * <p>
+ * The base class for the reductions of a stream's data that are computed in a
+ * single pass as its points are read. The points must be given in
+ * chronological order, and the result of a reduction is bounded by the number
+ * of time buckets it was configured with rather than by the number of points
+ * it was given.
+ * </p>
+ *
+ * <p>
+ * This class is mutable and, therefore, not thread-safe.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public abstract class DataStreamAggregator {
+	/**
+	 * The separator between the keys of a field's path.
+	 */
+	private static final String PATH_SEPARATOR = ":";
+
+	/**
+	 * The time of the first bucket.
+	 */
+	private final long origin;
+	/**
+	 * The width of each bucket in milliseconds.
+	 */
+	private final long width;
+	/**
+	 * The number of buckets.
+	 */
+	private final long numBuckets;
+
+	/**
+	 * Creates a new aggregator over a range of time.
+	 *
+	 * @param origin The time at which the first bucket begins.
+	 *
+	 * @param width The width of each bucket in milliseconds.
+	 *
+	 * @param numBuckets The number of buckets after the origin.
+	 *
+	 * @throws DomainException The width or number of buckets is not
+	 * 						   positive.
+	 */
+	protected DataStreamAggregator(
+			final long origin,
+			final long width,
+			final long numBuckets)
+			throws DomainException {
+
+		if(width <= 0) {
+			throw new DomainException("The bucket width must be positive.");
+		}
+		if(numBuckets <= 0) {
+			throw new DomainException(
+				"The number of buckets must be positive.");
+		}
+
+		this.origin = origin;
+		this.width = width;
+		this.numBuckets = numBuckets;
+	}
+
+	/**
+	 * Computes the number of buckets of some width needed to cover a range
+	 * of time.
+	 *
+	 * @param startMillis The beginning of the range, inclusive.
+	 *
+	 * @param endMillis The end of the range, inclusive.
+	 *
+	 * @param width The width of each bucket in milliseconds.
+	 *
+	 * @return The number of buckets.
+	 *
+	 * @throws DomainException The end is before the start or the width is
+	 * 						   not positive.
+	 */
+	public static long getNumBuckets(
+			final long startMillis,
+			final long endMillis,
+			final long width)
+			throws DomainException {
+
+		if(endMillis < startMillis) {
+			throw new DomainException("The end is before the start.");
+		}
+		if(width <= 0) {
+			throw new DomainException("The bucket width must be positive.");
+		}
+
+		long range = endMillis - startMillis + 1;
+		return (range / width) + (((range % width) == 0) ? 0 : 1);
+	}
+
+	/**
+	 * Adds the next point. Points without a timestamp or outside of the
+	 * range are ignored.
+	 *
+	 * @param dataStream The point.
+	 *
+	 * @throws DomainException The point's data could not be decoded.
+	 */
+	public final void add(final DataStream dataStream) throws DomainException {
+		DataStream.MetaData metaData = dataStream.getMetaData();
+		if((metaData == null) || (metaData.getTimestamp() == null)) {
+			return;
+		}
+
+		long time = metaData.getTimestamp().getMillis();
+		if(time < origin) {
+			return;
+		}
+
+		long bucket = (time - origin) / width;
+		if(bucket >= numBuckets) {
+			return;
+		}
+
+		add(dataStream, time, bucket);
+	}
+
+	/**
+	 * Completes the reduction after the last point has been added.
+	 */
+	public abstract void finish();
+
+	/**
+	 * Returns the number of results the reduction produced. This is only
+	 * meaningful after {@link #finish()} has been called.
+	 *
+	 * @return The number of results.
+	 */
+	public abstract int size();
+
+	/**
+	 * Adds a point that falls within the range.
+	 *
+	 * @param dataStream The point.
+	 *
+	 * @param time The point's time in milliseconds.
+	 *
+	 * @param bucket The index of the bucket in which the point falls.
+	 *
+	 * @throws DomainException The point's data could not be decoded.
+	 */
+	protected abstract void add(
+			final DataStream dataStream,
+			final long time,
+			final long bucket)
+			throws DomainException;
+
+	/**
+	 * Returns the time at which a bucket begins.
+	 *
+	 * @param bucket The bucket's index.
+	 *
+	 * @return The bucket's start time in milliseconds.
+	 */
+	protected final long getBucketStart(final long bucket) {
+		return origin + (bucket * width);
+	}
+
+	/**
+	 * Splits a field's path, as returned by
+	 * {@link Observer.Stream#getNumericFields()}, into its keys.
+	 *
+	 * @param path The field's path.
+	 *
+	 * @return The keys, which is empty if the path refers to the data itself.
+	 */
+	public static String[] splitPath(final String path) {
+		if(path.length() == 0) {
+			return new String[0];
+		}
+
+		return path.split(PATH_SEPARATOR);
+	}
+
+	/**
+	 * Looks up a numeric field in a point's data.
+	 *
+	 * @param data The point's data.
+	 *
+	 * @param keys The keys to the field.
+	 *
+	 * @return The field's value or null if it is missing or not a number.
+	 */
+	protected static Double getNumber(
+			final JsonNode data,
+			final String[] keys) {
+
+		JsonNode node = data;
+		for(int i = 0; (node != null) && (i < keys.length); i++) {
+			node = node.get(keys[i]);
+		}
+
+		if((node == null) || (! node.isNumber())) {
+			return null;
+		}
+
+		return node.getDoubleValue();
+	}
+}
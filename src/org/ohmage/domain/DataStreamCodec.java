@@ -0,0 +1,897 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.map.MappingJsonFactory;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.util.TokenBuffer;
+import org.ohmage.domain.Observer.Stream;
+import org.ohmage.exception.DomainException;
+
+/**
+ * <p>
+ * Encodes and decodes the stored form of a stream's data points. A stream may
+ * store its data as JSON text, which is the default, or in a compact binary
+ * form that is directed by the stream's Concordia schema. The binary form
+ * never stores the field names, writes integers as variable-length values,
+ * and may additionally be deflated.
+ * </p>
+ *
+ * <p>
+ * Every binary value begins with a marker byte that can never begin JSON
+ * text followed by the format version and a set of flags. This allows data
+ * that was stored as JSON text, including all data stored before a stream
+ * switched encodings, to continue to be read. If a point cannot be
+ * represented by the schema, e.g. it contains additional fields, it is
+ * stored as JSON text instead.
+ * </p>
+ *
+ * <p>
+ * Instances of this class are compiled from a schema once and are immutable
+ * and, therefore, thread-safe.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public final class DataStreamCodec {
+	/**
+	 * The ways in which a stream's data may be stored.
+	 *
+	 * @author John Jenkins
+	 */
+	public static enum Encoding {
+		/**
+		 * The data is stored as JSON text.
+		 */
+		JSON,
+		/**
+		 * The data is stored in the schema-directed binary form.
+		 */
+		BINARY,
+		/**
+		 * The data is stored in the schema-directed binary form and then
+		 * deflated.
+		 */
+		BINARY_COMPRESSED;
+
+		/**
+		 * Converts a String value into an Encoding or throws an exception if
+		 * there is no comparable encoding.
+		 *
+		 * @param encoding The encoding to be converted into an Encoding enum.
+		 *
+		 * @return A comparable Encoding enum.
+		 *
+		 * @throws IllegalArgumentException Thrown if there is no comparable
+		 * 									Encoding enum.
+		 */
+		public static Encoding getValue(final String encoding) {
+			return valueOf(encoding.toUpperCase());
+		}
+
+		/**
+		 * Converts the encoding to a nice, human-readable format.
+		 */
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	/**
+	 * The first byte of all binary values. JSON text may not begin with this
+	 * byte.
+	 */
+	public static final byte MARKER = 0x00;
+
+	/**
+	 * The current version of the binary format.
+	 */
+	public static final byte FORMAT_VERSION = 1;
+
+	/**
+	 * The flag set when the remainder of the value is deflated.
+	 */
+	private static final byte FLAG_DEFLATED = 0x01;
+
+	/**
+	 * The length of the marker, version, and flags.
+	 */
+	private static final int HEADER_LENGTH = 3;
+
+	/**
+	 * The most that deflate can shrink a value, which bounds the inflated
+	 * length that a deflated value may claim.
+	 */
+	private static final int MAX_DEFLATE_RATIO = 1032;
+
+	// The states of an optional value.
+	private static final int PRESENCE_ABSENT = 0;
+	private static final int PRESENCE_NULL = 1;
+	private static final int PRESENCE_VALUE = 2;
+
+	// The representations of a number.
+	private static final int NUMBER_INTEGER = 0;
+	private static final int NUMBER_DOUBLE = 1;
+	private static final int NUMBER_TEXT = 2;
+
+	// The Concordia keywords and types.
+	private static final String KEYWORD_TYPE = "type";
+	private static final String KEYWORD_OPTIONAL = "optional";
+	private static final String KEYWORD_FIELDS = "fields";
+	private static final String KEYWORD_NAME = "name";
+	private static final String KEYWORD_CONST_TYPE = "constType";
+	private static final String KEYWORD_CONST_LENGTH = "constLength";
+	private static final String TYPE_BOOLEAN = "boolean";
+	private static final String TYPE_NUMBER = "number";
+	private static final String TYPE_STRING = "string";
+	private static final String TYPE_OBJECT = "object";
+	private static final String TYPE_ARRAY = "array";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * The factory used to parse the schemas and any data stored as JSON text.
+	 */
+	private static final JsonFactory JSON_FACTORY = new MappingJsonFactory();
+
+	/**
+	 * The mapper used to build trees from decoded data.
+	 */
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	/**
+	 * Thrown internally when a point does not conform to the schema and,
+	 * therefore, must be stored as JSON text.
+	 *
+	 * @author John Jenkins
+	 */
+	private static final class NonConformingDataException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		private NonConformingDataException(final String reason) {
+			super(reason);
+		}
+	}
+
+	/**
+	 * The compiled form of one type in the schema.
+	 *
+	 * @author John Jenkins
+	 */
+	private static final class Type {
+		private static enum Kind {
+			BOOLEAN, NUMBER, STRING, OBJECT, CONST_TYPE_ARRAY, CONST_LENGTH_ARRAY
+		}
+
+		private final Kind kind;
+		private final boolean optional;
+
+		// The field names and their types for objects.
+		private final String[] names;
+		private final Set<String> nameSet;
+		// The element types for constant-length arrays or the single element
+		// type for constant-type arrays.
+		private final Type[] children;
+
+		/**
+		 * Compiles a type from its schema definition.
+		 *
+		 * @param definition The type's definition.
+		 *
+		 * @throws DomainException The definition cannot be compiled.
+		 */
+		private Type(final JsonNode definition) throws DomainException {
+			if((definition == null) || (! definition.isObject())) {
+				throw new DomainException(
+					"A type definition is not a JSON object.");
+			}
+
+			JsonNode optionalNode = definition.get(KEYWORD_OPTIONAL);
+			optional = (optionalNode != null) && optionalNode.asBoolean();
+
+			JsonNode typeNode = definition.get(KEYWORD_TYPE);
+			String type = (typeNode == null) ? null : typeNode.getTextValue();
+			if(TYPE_BOOLEAN.equals(type)) {
+				kind = Kind.BOOLEAN;
+				names = null;
+				nameSet = null;
+				children = null;
+			}
+			else if(TYPE_NUMBER.equals(type)) {
+				kind = Kind.NUMBER;
+				names = null;
+				nameSet = null;
+				children = null;
+			}
+			else if(TYPE_STRING.equals(type)) {
+				kind = Kind.STRING;
+				names = null;
+				nameSet = null;
+				children = null;
+			}
+			else if(TYPE_OBJECT.equals(type)) {
+				JsonNode fields = definition.get(KEYWORD_FIELDS);
+				if((fields == null) || (! fields.isArray())) {
+					throw new DomainException(
+						"An object definition is missing its fields.");
+				}
+
+				kind = Kind.OBJECT;
+				names = new String[fields.size()];
+				nameSet = new HashSet<String>();
+				children = new Type[fields.size()];
+				for(int i = 0; i < names.length; i++) {
+					JsonNode field = fields.get(i);
+					JsonNode nameNode = field.get(KEYWORD_NAME);
+					if((nameNode == null) || (! nameNode.isTextual())) {
+						throw new DomainException(
+							"An object's field is missing its name.");
+					}
+
+					names[i] = nameNode.getTextValue();
+					nameSet.add(names[i]);
+					children[i] = new Type(field);
+				}
+			}
+			else if(TYPE_ARRAY.equals(type)) {
+				names = null;
+				nameSet = null;
+
+				JsonNode constType = definition.get(KEYWORD_CONST_TYPE);
+				JsonNode constLength = definition.get(KEYWORD_CONST_LENGTH);
+				if(constType != null) {
+					kind = Kind.CONST_TYPE_ARRAY;
+					children = new Type[] { new Type(constType) };
+				}
+				else if((constLength != null) && constLength.isArray()) {
+					kind = Kind.CONST_LENGTH_ARRAY;
+					children = new Type[constLength.size()];
+					for(int i = 0; i < children.length; i++) {
+						children[i] = new Type(constLength.get(i));
+					}
+				}
+				else {
+					throw new DomainException(
+						"An array definition has neither a constant type nor a constant length.");
+				}
+			}
+			else {
+				// This includes references to other schemas, which are not
+				// supported.
+				throw new DomainException(
+					"The type is not supported for binary encoding: " + type);
+			}
+		}
+	}
+
+	/**
+	 * A growable buffer with the primitives of the binary form.
+	 *
+	 * @author John Jenkins
+	 */
+	private static final class Writer extends ByteArrayOutputStream {
+		private Writer() {
+			super(64);
+		}
+
+		private void writeVarLong(final long value) {
+			long remaining = value;
+			while((remaining & ~0x7FL) != 0) {
+				write((int) ((remaining & 0x7F) | 0x80));
+				remaining >>>= 7;
+			}
+			write((int) remaining);
+		}
+
+		private void writeDouble(final double value) {
+			long bits = Double.doubleToLongBits(value);
+			for(int shift = 56; shift >= 0; shift -= 8) {
+				write((int) (bits >>> shift));
+			}
+		}
+
+		private void writeString(final String value) {
+			byte[] bytes = value.getBytes(UTF_8);
+			writeVarLong(bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * A cursor over a binary value.
+	 *
+	 * @author John Jenkins
+	 */
+	private static final class Reader {
+		private final byte[] buffer;
+		private final int end;
+		private int position;
+
+		private Reader(final byte[] buffer, final int start, final int end) {
+			this.buffer = buffer;
+			this.position = start;
+			this.end = end;
+		}
+
+		private int read() throws DomainException {
+			if(position >= end) {
+				throw new DomainException("The binary data is truncated.");
+			}
+			return buffer[position++] & 0xFF;
+		}
+
+		private long readVarLong() throws DomainException {
+			long result = 0;
+			for(int shift = 0; shift < 64; shift += 7) {
+				int b = read();
+				result |= ((long) (b & 0x7F)) << shift;
+				if((b & 0x80) == 0) {
+					return result;
+				}
+			}
+			throw new DomainException("The binary data is corrupt.");
+		}
+
+		private double readDouble() throws DomainException {
+			long bits = 0;
+			for(int i = 0; i < 8; i++) {
+				bits = (bits << 8) | read();
+			}
+			return Double.longBitsToDouble(bits);
+		}
+
+		private String readString() throws DomainException {
+			long length = readVarLong();
+			if((length < 0) || (length > (end - position))) {
+				throw new DomainException("The binary data is truncated.");
+			}
+
+			String result = new String(buffer, position, (int) length, UTF_8);
+			position += (int) length;
+			return result;
+		}
+	}
+
+	private final Type root;
+
+	/**
+	 * Compiles a codec for a stream's schema.
+	 *
+	 * @param schema The stream's Concordia schema.
+	 *
+	 * @throws DomainException The schema could not be parsed or uses features
+	 * 						   that cannot be binary encoded.
+	 */
+	DataStreamCodec(final String schema) throws DomainException {
+		try {
+			root = new Type(JSON_FACTORY.createJsonParser(schema).readValueAsTree());
+		}
+		catch(JsonProcessingException e) {
+			throw new DomainException("The schema is not valid JSON.", e);
+		}
+		catch(IOException e) {
+			throw new DomainException("The schema could not be read.", e);
+		}
+	}
+
+	/**
+	 * Encodes a data point as it should be stored for its stream. If the
+	 * stream uses a binary encoding but the point does not conform to the
+	 * schema, it is stored as JSON text.
+	 *
+	 * @param stream The stream to which the data belongs.
+	 *
+	 * @param data The data point.
+	 *
+	 * @return The stored form of the data.
+	 */
+	public static byte[] encode(final Stream stream, final JsonNode data) {
+		Encoding encoding = stream.getEncoding();
+		DataStreamCodec codec = stream.getCodec();
+
+		if((encoding != Encoding.JSON) && (codec != null)) {
+			Writer writer = new Writer();
+			writer.write(MARKER);
+			writer.write(FORMAT_VERSION);
+			writer.write(0);
+
+			try {
+				codec.encode(codec.root, data, writer);
+
+				byte[] result = writer.toByteArray();
+				if(encoding == Encoding.BINARY_COMPRESSED) {
+					result = deflate(result);
+				}
+				return result;
+			}
+			catch(NonConformingDataException e) {
+				// Fall through to the JSON text.
+			}
+		}
+
+		return data.toString().getBytes(UTF_8);
+	}
+
+	/**
+	 * Decodes a stored data point into a tree.
+	 *
+	 * @param stream The stream to which the data belongs.
+	 *
+	 * @param data The stored form of the data.
+	 *
+	 * @return The decoded data.
+	 *
+	 * @throws DomainException The data is corrupt.
+	 */
+	public static JsonNode decode(
+			final Stream stream,
+			final byte[] data)
+			throws DomainException {
+
+		try {
+			if(! isBinary(data)) {
+				return JSON_FACTORY.createJsonParser(data).readValueAsTree();
+			}
+
+			TokenBuffer buffer = new TokenBuffer(OBJECT_MAPPER);
+			transcode(stream, data, buffer);
+			return buffer.asParser().readValueAsTree();
+		}
+		catch(JsonProcessingException e) {
+			throw new DomainException("The data is invalid.", e);
+		}
+		catch(IOException e) {
+			throw new DomainException("The data could not be read.", e);
+		}
+	}
+
+	/**
+	 * Writes a stored data point directly to a generator without building an
+	 * intermediate tree. The generator must be at a point where a value may
+	 * be written.
+	 *
+	 * @param stream The stream to which the data belongs.
+	 *
+	 * @param data The stored form of the data.
+	 *
+	 * @param generator The generator to write the data to.
+	 *
+	 * @throws DomainException The data is corrupt.
+	 *
+	 * @throws IOException There was an error writing to the generator.
+	 */
+	public static void transcode(
+			final Stream stream,
+			final byte[] data,
+			final JsonGenerator generator)
+			throws DomainException, IOException {
+
+		if(! isBinary(data)) {
+			JsonParser parser = JSON_FACTORY.createJsonParser(data);
+			try {
+				if(parser.nextToken() == null) {
+					throw new DomainException("The data is empty.");
+				}
+				generator.copyCurrentStructure(parser);
+			}
+			catch(JsonProcessingException e) {
+				throw new DomainException("The data is invalid.", e);
+			}
+			finally {
+				parser.close();
+			}
+			return;
+		}
+
+		if(data[1] != FORMAT_VERSION) {
+			throw new DomainException(
+				"The binary data's version is unknown: " + data[1]);
+		}
+
+		DataStreamCodec codec = stream.getCodec();
+		if(codec == null) {
+			throw new DomainException(
+				"The data is binary, but the stream cannot decode it: " +
+					stream.getId());
+		}
+
+		Reader reader;
+		if((data[2] & FLAG_DEFLATED) != 0) {
+			byte[] inflated = inflate(data);
+			reader = new Reader(inflated, 0, inflated.length);
+		}
+		else {
+			reader = new Reader(data, HEADER_LENGTH, data.length);
+		}
+
+		codec.decode(codec.root, reader, generator);
+	}
+
+	/**
+	 * Returns whether or not some stored data is in the binary form.
+	 *
+	 * @param data The stored data.
+	 *
+	 * @return Whether or not the data is binary.
+	 */
+	private static boolean isBinary(final byte[] data) {
+		return (data.length >= HEADER_LENGTH) && (data[0] == MARKER);
+	}
+
+	/**
+	 * Writes a value and its presence, if it is optional.
+	 */
+	private void encode(
+			final Type type,
+			final JsonNode value,
+			final Writer writer)
+			throws NonConformingDataException {
+
+		if(type.optional) {
+			if(value == null) {
+				writer.write(PRESENCE_ABSENT);
+				return;
+			}
+			else if(value.isNull()) {
+				writer.write(PRESENCE_NULL);
+				return;
+			}
+			writer.write(PRESENCE_VALUE);
+		}
+		else if((value == null) || value.isNull()) {
+			throw new NonConformingDataException("A required value is missing.");
+		}
+
+		switch(type.kind) {
+		case BOOLEAN:
+			if(! value.isBoolean()) {
+				throw new NonConformingDataException("Expected a boolean.");
+			}
+			writer.write(value.getBooleanValue() ? 1 : 0);
+			break;
+
+		case NUMBER:
+			if(value.isInt() || value.isLong()) {
+				long longValue = value.getLongValue();
+				writer.write(NUMBER_INTEGER);
+				writer.writeVarLong((longValue << 1) ^ (longValue >> 63));
+			}
+			else if(value.isDouble()) {
+				writer.write(NUMBER_DOUBLE);
+				writer.writeDouble(value.getDoubleValue());
+			}
+			else if(value.isNumber()) {
+				writer.write(NUMBER_TEXT);
+				writer.writeString(value.asText());
+			}
+			else {
+				throw new NonConformingDataException("Expected a number.");
+			}
+			break;
+
+		case STRING:
+			if(! value.isTextual()) {
+				throw new NonConformingDataException("Expected a string.");
+			}
+			writer.writeString(value.getTextValue());
+			break;
+
+		case OBJECT:
+			if(! value.isObject()) {
+				throw new NonConformingDataException("Expected an object.");
+			}
+			// Any field that isn't in the schema would be lost.
+			Iterator<String> fieldNames = value.getFieldNames();
+			while(fieldNames.hasNext()) {
+				if(! type.nameSet.contains(fieldNames.next())) {
+					throw new NonConformingDataException(
+						"The object has an unknown field.");
+				}
+			}
+			for(int i = 0; i < type.names.length; i++) {
+				encode(type.children[i], value.get(type.names[i]), writer);
+			}
+			break;
+
+		case CONST_TYPE_ARRAY:
+			if(! value.isArray()) {
+				throw new NonConformingDataException("Expected an array.");
+			}
+			writer.writeVarLong(value.size());
+			for(int i = 0; i < value.size(); i++) {
+				encode(type.children[0], value.get(i), writer);
+			}
+			break;
+
+		case CONST_LENGTH_ARRAY:
+			if((! value.isArray()) || (value.size() != type.children.length)) {
+				throw new NonConformingDataException(
+					"Expected an array of length " + type.children.length);
+			}
+			for(int i = 0; i < type.children.length; i++) {
+				encode(type.children[i], value.get(i), writer);
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Reads a value and writes it to the generator. If the value is optional
+	 * and absent, nothing is written. Callers writing object fields must,
+	 * therefore, check the presence before writing the field's name, which
+	 * is why the presence is decoded by {@link #decodeField(Type, String,
+	 * Reader, JsonGenerator)}.
+	 */
+	private void decode(
+			final Type type,
+			final Reader reader,
+			final JsonGenerator generator)
+			throws DomainException, IOException {
+
+		if(type.optional) {
+			int presence = reader.read();
+			if(presence == PRESENCE_NULL) {
+				generator.writeNull();
+				return;
+			}
+			else if(presence != PRESENCE_VALUE) {
+				throw new DomainException(
+					"The binary data is corrupt: an array element is absent.");
+			}
+		}
+
+		decodeValue(type, reader, generator);
+	}
+
+	/**
+	 * Reads an object's field and, if it is present, writes it and its value
+	 * to the generator.
+	 */
+	private void decodeField(
+			final Type type,
+			final String name,
+			final Reader reader,
+			final JsonGenerator generator)
+			throws DomainException, IOException {
+
+		if(type.optional) {
+			int presence = reader.read();
+			if(presence == PRESENCE_ABSENT) {
+				return;
+			}
+			else if(presence == PRESENCE_NULL) {
+				generator.writeNullField(name);
+				return;
+			}
+			else if(presence != PRESENCE_VALUE) {
+				throw new DomainException("The binary data is corrupt.");
+			}
+		}
+
+		generator.writeFieldName(name);
+		decodeValue(type, reader, generator);
+	}
+
+	/**
+	 * Reads a value, whose presence has already been established, and writes
+	 * it to the generator.
+	 */
+	private void decodeValue(
+			final Type type,
+			final Reader reader,
+			final JsonGenerator generator)
+			throws DomainException, IOException {
+
+		switch(type.kind) {
+		case BOOLEAN:
+			generator.writeBoolean(reader.read() != 0);
+			break;
+
+		case NUMBER:
+			int representation = reader.read();
+			if(representation == NUMBER_INTEGER) {
+				long zigZag = reader.readVarLong();
+				long value = (zigZag >>> 1) ^ -(zigZag & 1);
+				// Match the parser, which uses ints whenever it can.
+				if((value >= Integer.MIN_VALUE) && (value <= Integer.MAX_VALUE)) {
+					generator.writeNumber((int) value);
+				}
+				else {
+					generator.writeNumber(value);
+				}
+			}
+			else if(representation == NUMBER_DOUBLE) {
+				generator.writeNumber(reader.readDouble());
+			}
+			else if(representation == NUMBER_TEXT) {
+				// Write the number rather than its text so that every 
+				// generator, including a TokenBuffer, treats it as a number.
+				String text = reader.readString();
+				try {
+					if((text.indexOf('.') == -1) &&
+						(text.indexOf('e') == -1) &&
+						(text.indexOf('E') == -1)) {
+
+						generator.writeNumber(new BigInteger(text));
+					}
+					else {
+						generator.writeNumber(new BigDecimal(text));
+					}
+				}
+				catch(NumberFormatException e) {
+					throw new DomainException(
+						"The binary data is corrupt: a number is invalid.",
+						e);
+				}
+			}
+			else {
+				throw new DomainException("The binary data is corrupt.");
+			}
+			break;
+
+		case STRING:
+			generator.writeString(reader.readString());
+			break;
+
+		case OBJECT:
+			generator.writeStartObject();
+			for(int i = 0; i < type.names.length; i++) {
+				decodeField(type.children[i], type.names[i], reader, generator);
+			}
+			generator.writeEndObject();
+			break;
+
+		case CONST_TYPE_ARRAY:
+			long length = reader.readVarLong();
+			generator.writeStartArray();
+			for(long i = 0; i < length; i++) {
+				decode(type.children[0], reader, generator);
+			}
+			generator.writeEndArray();
+			break;
+
+		case CONST_LENGTH_ARRAY:
+			generator.writeStartArray();
+			for(int i = 0; i < type.children.length; i++) {
+				decode(type.children[i], reader, generator);
+			}
+			generator.writeEndArray();
+			break;
+		}
+	}
+
+	/**
+	 * Deflates the body of a binary value. If deflating doesn't make it any
+	 * smaller, the original value is returned.
+	 *
+	 * @param value The binary value with its header.
+	 *
+	 * @return The deflated binary value with its header or the original
+	 * 		   value.
+	 */
+	private static byte[] deflate(final byte[] value) {
+		int bodyLength = value.length - HEADER_LENGTH;
+
+		Writer writer = new Writer();
+		writer.write(MARKER);
+		writer.write(FORMAT_VERSION);
+		writer.write(FLAG_DEFLATED);
+		writer.writeVarLong(bodyLength);
+
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(value, HEADER_LENGTH, bodyLength);
+			deflater.finish();
+
+			byte[] chunk = new byte[512];
+			while(! deflater.finished()) {
+				int length = deflater.deflate(chunk);
+				writer.write(chunk, 0, length);
+			}
+		}
+		finally {
+			deflater.end();
+		}
+
+		if(writer.size() >= value.length) {
+			return value;
+		}
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Inflates the body of a deflated binary value.
+	 *
+	 * @param value The deflated binary value with its header.
+	 *
+	 * @return The inflated body without the header.
+	 *
+	 * @throws DomainException The value is corrupt.
+	 */
+	private static byte[] inflate(final byte[] value) throws DomainException {
+		Reader reader = new Reader(value, HEADER_LENGTH, value.length);
+		long bodyLength = reader.readVarLong();
+		long maxBodyLength =
+			((long) (value.length - reader.position)) * MAX_DEFLATE_RATIO;
+		if((bodyLength < 0) ||
+			(bodyLength > Integer.MAX_VALUE) ||
+			(bodyLength > maxBodyLength)) {
+
+			throw new DomainException("The binary data is corrupt.");
+		}
+
+		byte[] result = new byte[(int) bodyLength];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(
+				value,
+				reader.position,
+				value.length - reader.position);
+
+			int inflated = 0;
+			while(inflated < result.length) {
+				int length =
+					inflater.inflate(
+						result,
+						inflated,
+						result.length - inflated);
+				if((length == 0) &&
+					(inflater.finished() || inflater.needsInput())) {
+
+					throw new DomainException(
+						"The binary data is truncated.");
+				}
+				inflated += length;
+			}
+
+			// The deflated stream must end, with its checksum, exactly where
+			// the body does.
+			if((! inflater.finished()) &&
+				((inflater.inflate(new byte[1]) != 0) ||
+					(! inflater.finished()))) {
+
+				throw new DomainException(
+					"The binary data is truncated or corrupt.");
+			}
+		}
+		catch(DataFormatException e) {
+			throw new DomainException("The binary data is corrupt.", e);
+		}
+		finally {
+			inflater.end();
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain;
+
+import java.util.UUID;
+
+import org.joda.time.format.ISODateTimeFormat;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.annotator.Annotator;
+
+/**
+ * An export of a large set of data that is produced in the background and
+ * then downloaded. This only tracks the export's state; the export itself is
+ * produced by the export services.
+ *
+ * @author John Jenkins
+ */
+public class ExportJob {
+	private static final String JSON_KEY_ID = "id";
+	private static final String JSON_KEY_TYPE = "type";
+	private static final String JSON_KEY_STATE = "state";
+	private static final String JSON_KEY_SUBMITTED = "submitted";
+	private static final String JSON_KEY_STARTED = "started";
+	private static final String JSON_KEY_FINISHED = "finished";
+	private static final String JSON_KEY_SIZE = "size";
+	private static final String JSON_KEY_CONTENT_TYPE = "content_type";
+	private static final String JSON_KEY_ERROR = "error";
+
+	/**
+	 * The kinds of data that may be exported.
+	 *
+	 * @author John Jenkins
+	 */
+	public static enum Type {
+		/**
+		 * Survey responses, as read by survey_response/read.
+		 */
+		SURVEY_RESPONSE,
+		/**
+		 * Stream data, as read by stream/read.
+		 */
+		STREAM;
+
+		/**
+		 * Returns the Type object that represents the value.
+		 *
+		 * @param value The value to use to get a Type object.
+		 *
+		 * @return The Type object.
+		 *
+		 * @throws IllegalArgumentException Thrown if the value is not
+		 * 									decodable as a type.
+		 */
+		public static Type getValue(final String value) {
+			return valueOf(value.toUpperCase());
+		}
+
+		/**
+		 * This type as a human-readable string.
+		 */
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	/**
+	 * The states of an export.
+	 *
+	 * @author John Jenkins
+	 */
+	public static enum State {
+		/**
+		 * The export is waiting for a worker.
+		 */
+		QUEUED,
+		/**
+		 * The export is being produced.
+		 */
+		RUNNING,
+		/**
+		 * The export is finished and may be downloaded.
+		 */
+		SUCCEEDED,
+		/**
+		 * The export could not be produced.
+		 */
+		FAILED;
+
+		/**
+		 * This state as a human-readable string.
+		 */
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	private final UUID id;
+	private final String owner;
+	private final Type type;
+	private final long submitted;
+
+	private State state;
+	private long started;
+	private long finished;
+	private long size;
+	private String contentType;
+	private Annotator error;
+
+	/**
+	 * Creates a new, queued export.
+	 *
+	 * @param owner The username of the user that requested the export.
+	 *
+	 * @param type The kind of data being exported.
+	 *
+	 * @throws IllegalArgumentException The owner or type is null.
+	 */
+	public ExportJob(final String owner, final Type type) {
+		if(owner == null) {
+			throw new IllegalArgumentException("The owner is null.");
+		}
+		if(type == null) {
+			throw new IllegalArgumentException("The type is null.");
+		}
+
+		id = UUID.randomUUID();
+		this.owner = owner;
+		this.type = type;
+		submitted = System.currentTimeMillis();
+
+		state = State.QUEUED;
+	}
+
+	/**
+	 * Returns the export's unique identifier.
+	 *
+	 * @return The export's unique identifier.
+	 */
+	public UUID getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the username of the user that requested the export.
+	 *
+	 * @return The owner's username.
+	 */
+	public String getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Returns the kind of data being exported.
+	 *
+	 * @return The export's type.
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the export's current state.
+	 *
+	 * @return The export's state.
+	 */
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * Returns when the export finished, successfully or not.
+	 *
+	 * @return The milliseconds since the epoch when the export finished or 0
+	 * 		   if it has not yet finished.
+	 */
+	public synchronized long getFinished() {
+		return finished;
+	}
+
+	/**
+	 * Returns the size of the finished export.
+	 *
+	 * @return The size of the compressed export in bytes or 0 if it has not
+	 * 		   succeeded.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the content type of the uncompressed export, e.g. "text/csv".
+	 *
+	 * @return The content type or null if the export has not succeeded.
+	 */
+	public synchronized String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Marks the export as being produced.
+	 */
+	public synchronized void setRunning() {
+		state = State.RUNNING;
+		started = System.currentTimeMillis();
+	}
+
+	/**
+	 * Marks the export as finished and ready to be downloaded.
+	 *
+	 * @param contentType The content type of the uncompressed export.
+	 *
+	 * @param size The size of the compressed export in bytes.
+	 */
+	public synchronized void setSucceeded(
+			final String contentType,
+			final long size) {
+
+		state = State.SUCCEEDED;
+		finished = System.currentTimeMillis();
+		this.contentType = contentType;
+		this.size = size;
+	}
+
+	/**
+	 * Marks the export as failed.
+	 *
+	 * @param error The reason the export failed.
+	 */
+	public synchronized void setFailed(final Annotator error) {
+		state = State.FAILED;
+		finished = System.currentTimeMillis();
+		contentType = null;
+		size = 0;
+		this.error = error;
+	}
+
+	/**
+	 * Creates a JSONObject that represents this export's state.
+	 *
+	 * @return A JSONObject that represents this export.
+	 *
+	 * @throws JSONException There was an error building the JSONObject.
+	 */
+	public synchronized JSONObject toJson() throws JSONException {
+		JSONObject result = new JSONObject();
+
+		result.put(JSON_KEY_ID, id.toString());
+		result.put(JSON_KEY_TYPE, type.toString());
+		result.put(JSON_KEY_STATE, state.toString());
+		result.put(
+			JSON_KEY_SUBMITTED,
+			ISODateTimeFormat.dateTime().print(submitted));
+		if(started != 0) {
+			result.put(
+				JSON_KEY_STARTED,
+				ISODateTimeFormat.dateTime().print(started));
+		}
+		if(finished != 0) {
+			result.put(
+				JSON_KEY_FINISHED,
+				ISODateTimeFormat.dateTime().print(finished));
+		}
+		if(State.SUCCEEDED.equals(state)) {
+			result.put(JSON_KEY_SIZE, size);
+			result.put(JSON_KEY_CONTENT_TYPE, contentType);
+		}
+		if(error != null) {
+			result.put(JSON_KEY_ERROR, error.toJsonObject());
+		}
+
+		return result;
+	}
+}
@@ -291,7 +291,7 @@ public class Image {
 				new ByteArrayInputStream(bufferStream.toByteArray());
 			
 			// Create the image data and return it.
-			return new ImageData(resultStream);
+			return new ImageData(resultStream, imageType);
 		}
 	}
 
@@ -406,7 +406,7 @@ public class Image {
 				new ByteArrayInputStream(bufferStream.toByteArray());
 			
 			// Create the image data and return it.
-			return new ImageData(resultStream);
+			return new ImageData(resultStream, imageType);
 		}
 	}
 	public static final Size ORIGINAL = Original.getInstance();
@@ -459,6 +459,30 @@ public class Image {
 			imageType = null;
 		}
 		
+		/**
+		 * Stores the InputStream used to reference the image data along with
+		 * the image's type, e.g. for an image that was just transformed.
+		 * 
+		 * @param inputStream An InputStream that points to the image data.
+		 * 
+		 * @param imageType The image's type, e.g. "jpg".
+		 * 
+		 * @throws DomainException The InputStream was null.
+		 */
+		public ImageData(
+			final InputStream inputStream,
+			final String imageType)
+			throws DomainException {
+			
+			if(inputStream == null) {
+				throw new DomainException("The InputStream is null.");
+			}
+			
+			this.inputStream = inputStream;
+			this.url = null;
+			this.imageType = imageType;
+		}
+		
 		/**
 		 * Stores the URL used to reference the image data.
 		 * 
@@ -33,6 +33,7 @@ import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.exception.DomainException;
 import org.ohmage.util.DateTimeUtils;
+import org.ohmage.util.JsonUtils;
 
 /**
  * This class contains all of the information associated with a location
@@ -578,90 +579,50 @@ public class Location {
 			timestamp = fromTimestamp;
 		}
 		
-		double tLatitude;
-		try {
-			tLatitude = 
-					locationData.getDouble(
-							LocationColumnKey.LATITUDE.toString(false));
-		}
-		catch(JSONException noRegular) {
-			try {
-				tLatitude = 
-						locationData.getDouble(
-								LocationColumnKey.LATITUDE.toString(true));
-			}
-			catch(JSONException noShort) {
-				throw new DomainException(
-						ErrorCode.SERVER_INVALID_LOCATION, 
-						"The latitude is missing or invalid: " + 
-							LocationColumnKey.LATITUDE.toString(false), 
-						noShort);
-			}
+		latitude =
+			JsonUtils.getDouble(
+				locationData,
+				LocationColumnKey.LATITUDE.toString(false),
+				LocationColumnKey.LATITUDE.toString(true));
+		if(Double.isNaN(latitude)) {
+			throw new DomainException(
+					ErrorCode.SERVER_INVALID_LOCATION, 
+					"The latitude is missing or invalid: " + 
+						LocationColumnKey.LATITUDE.toString(false));
 		}
-		latitude = tLatitude;
 		
-		double tLongitude;
-		try {
-			tLongitude = 
-					locationData.getDouble(
-							LocationColumnKey.LONGITUDE.toString(false));
-		}
-		catch(JSONException noRegular) {
-			try {
-				tLongitude = 
-						locationData.getDouble(
-								LocationColumnKey.LONGITUDE.toString(true));
-			}
-			catch(JSONException noShort) {
-				throw new DomainException(
-						ErrorCode.SERVER_INVALID_LOCATION, 
-						"The longitude is missing or invalid.", 
-						noShort);
-			}
+		longitude =
+			JsonUtils.getDouble(
+				locationData,
+				LocationColumnKey.LONGITUDE.toString(false),
+				LocationColumnKey.LONGITUDE.toString(true));
+		if(Double.isNaN(longitude)) {
+			throw new DomainException(
+					ErrorCode.SERVER_INVALID_LOCATION, 
+					"The longitude is missing or invalid.");
 		}
-		longitude = tLongitude;
 
-		double tAccuracy;
-		try {
-			tAccuracy = 
-					locationData.getDouble(
-							LocationColumnKey.ACCURACY.toString(false));
-		}
-		catch(JSONException noRegular) {
-			try {
-				tAccuracy = 
-						locationData.getDouble(
-								LocationColumnKey.ACCURACY.toString(true));
-			}
-			catch(JSONException noShort) {
-				throw new DomainException(
-						ErrorCode.SERVER_INVALID_LOCATION, 
-						"The accuracy is missing or invalid.", 
-						noShort);
-			}
+		accuracy =
+			JsonUtils.getDouble(
+				locationData,
+				LocationColumnKey.ACCURACY.toString(false),
+				LocationColumnKey.ACCURACY.toString(true));
+		if(Double.isNaN(accuracy)) {
+			throw new DomainException(
+					ErrorCode.SERVER_INVALID_LOCATION, 
+					"The accuracy is missing or invalid.");
 		}
-		accuracy = tAccuracy;
 		
-		String tProvider;
-		try {
-			tProvider = 
-					locationData.getString(
-							LocationColumnKey.PROVIDER.toString(false));
-		}
-		catch(JSONException noRegular) {
-			try {
-				tProvider = 
-						locationData.getString(
-								LocationColumnKey.PROVIDER.toString(true));
-			}
-			catch(JSONException noShort) {
-				throw new DomainException(
-						ErrorCode.SERVER_INVALID_LOCATION, 
-						"The provider is missing.", 
-						noShort);
-			}
+		provider =
+			JsonUtils.getString(
+				locationData,
+				LocationColumnKey.PROVIDER.toString(false),
+				LocationColumnKey.PROVIDER.toString(true));
+		if(provider == null) {
+			throw new DomainException(
+					ErrorCode.SERVER_INVALID_LOCATION, 
+					"The provider is missing.");
 		}
-		provider = tProvider;
 	}
 
 	/**
@@ -0,0 +1,289 @@
+package org.ohmage.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.ohmage.exception.DomainException;
+
+/**
+ * <p>
+ * Downsamples a stream's data for plotting with the Largest-Triangle-Three-
+ * Buckets algorithm. The first and last points are always kept. The range of
+ * time between them is divided into equal-width buckets and, from each
+ * non-empty bucket, the point that forms the largest triangle with the
+ * previously kept point and the average of the next bucket is kept. This
+ * keeps the peaks and troughs that make a series recognizable while
+ * returning at most the requested number of points.
+ * </p>
+ *
+ * <p>
+ * The triangles are measured with a single numeric field. Points without a
+ * value for that field are ignored. Only the points of the current and
+ * previous buckets are kept while points are being added.
+ * </p>
+ *
+ * <p>
+ * This class is mutable and, therefore, not thread-safe.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public class LttbDownsampler extends DataStreamAggregator {
+	/**
+	 * The smallest number of points that may be requested, the first point,
+	 * the last point, and one point between them.
+	 */
+	public static final int MIN_NUM_POINTS = 3;
+
+	/**
+	 * A point with its value for the measured field.
+	 *
+	 * @author John Jenkins
+	 */
+	private static final class Candidate {
+		private final DataStream point;
+		private final double time;
+		private final double value;
+
+		/**
+		 * Creates a candidate.
+		 *
+		 * @param point The point.
+		 *
+		 * @param time The point's time.
+		 *
+		 * @param value The point's value for the measured field.
+		 */
+		private Candidate(
+				final DataStream point,
+				final double time,
+				final double value) {
+
+			this.point = point;
+			this.time = time;
+			this.value = value;
+		}
+	}
+
+	private final String[] field;
+
+	private final List<DataStream> points;
+
+	// The most recently kept point.
+	private Candidate anchor;
+	// The points of the bucket before the current bucket, from which a point
+	// will be kept once the current bucket is complete.
+	private List<Candidate> previous;
+	// The points of the current bucket.
+	private List<Candidate> current;
+	private long currentBucket;
+
+	/**
+	 * Creates a new downsampler.
+	 *
+	 * @param startMillis The beginning of the range, inclusive.
+	 *
+	 * @param endMillis The end of the range, inclusive.
+	 *
+	 * @param numPoints The maximum number of points to keep. This must be at
+	 * 					least {@value #MIN_NUM_POINTS}.
+	 *
+	 * @param field The path to the numeric field with which to measure the
+	 * 				points, as returned by
+	 * 				{@link Observer.Stream#getNumericFields()}.
+	 *
+	 * @throws DomainException The range is invalid, the number of points is
+	 * 						   too small, or the field is null.
+	 */
+	public LttbDownsampler(
+			final long startMillis,
+			final long endMillis,
+			final int numPoints,
+			final String field)
+			throws DomainException {
+
+		super(
+			startMillis,
+			getWidth(startMillis, endMillis, numPoints),
+			numPoints - 2);
+
+		if(field == null) {
+			throw new DomainException("The field is null.");
+		}
+
+		this.field = splitPath(field);
+
+		points = new ArrayList<DataStream>(numPoints);
+		anchor = null;
+		previous = new ArrayList<Candidate>();
+		current = new ArrayList<Candidate>();
+		currentBucket = -1;
+	}
+
+	/**
+	 * Returns the points that were kept in chronological order. This is only
+	 * complete after {@link #finish()} has been called.
+	 *
+	 * @return An unmodifiable list of the points.
+	 */
+	public List<DataStream> getPoints() {
+		return Collections.unmodifiableList(points);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.domain.DataStreamAggregator#add(org.ohmage.domain.DataStream, long, long)
+	 */
+	@Override
+	protected void add(
+			final DataStream dataStream,
+			final long time,
+			final long bucket)
+			throws DomainException {
+
+		Double value = getNumber(dataStream.getData(), field);
+		if(value == null) {
+			return;
+		}
+
+		Candidate candidate = new Candidate(dataStream, time, value);
+
+		// The first point is always kept.
+		if(anchor == null) {
+			anchor = candidate;
+			points.add(dataStream);
+			return;
+		}
+
+		// When a new bucket begins, the current bucket is complete, so a
+		// point can be chosen from the previous one.
+		if(bucket != currentBucket) {
+			if(! previous.isEmpty()) {
+				keep(previous, average(current));
+			}
+
+			previous = current;
+			current = new ArrayList<Candidate>();
+			currentBucket = bucket;
+		}
+
+		current.add(candidate);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.domain.DataStreamAggregator#finish()
+	 */
+	@Override
+	public void finish() {
+		if(current.isEmpty()) {
+			return;
+		}
+
+		if(! previous.isEmpty()) {
+			keep(previous, average(current));
+			previous = new ArrayList<Candidate>();
+		}
+
+		// The last point is always kept, and it is what the rest of the last
+		// bucket is measured against.
+		Candidate last = current.remove(current.size() - 1);
+		if(! current.isEmpty()) {
+			keep(current, last);
+		}
+		points.add(last.point);
+
+		current = new ArrayList<Candidate>();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.domain.DataStreamAggregator#size()
+	 */
+	@Override
+	public int size() {
+		return points.size();
+	}
+
+	/**
+	 * Keeps the point from a bucket that forms the largest triangle with the
+	 * anchor and the given point and makes it the new anchor.
+	 *
+	 * @param bucket The bucket's points, which must not be empty.
+	 *
+	 * @param next The average of the next bucket.
+	 */
+	private void keep(final List<Candidate> bucket, final Candidate next) {
+		Candidate best = null;
+		double bestArea = -1;
+		for(Candidate candidate : bucket) {
+			// Twice the triangle's area, which is enough to compare them.
+			double area =
+				Math.abs(
+					((anchor.time - next.time) *
+						(candidate.value - anchor.value)) -
+					((anchor.time - candidate.time) *
+						(next.value - anchor.value)));
+
+			if(area > bestArea) {
+				best = candidate;
+				bestArea = area;
+			}
+		}
+
+		anchor = best;
+		points.add(best.point);
+	}
+
+	/**
+	 * Computes the average time and value of a bucket.
+	 *
+	 * @param bucket The bucket's points, which must not be empty.
+	 *
+	 * @return A candidate without a point with the averages.
+	 */
+	private static Candidate average(final List<Candidate> bucket) {
+		double time = 0;
+		double value = 0;
+		for(Candidate candidate : bucket) {
+			time += candidate.time;
+			value += candidate.value;
+		}
+
+		return new Candidate(null, time / bucket.size(), value / bucket.size());
+	}
+
+	/**
+	 * Computes the width of the buckets between the first and last points.
+	 *
+	 * @param startMillis The beginning of the range, inclusive.
+	 *
+	 * @param endMillis The end of the range, inclusive.
+	 *
+	 * @param numPoints The maximum number of points to keep.
+	 *
+	 * @return The width of each bucket in milliseconds.
+	 *
+	 * @throws DomainException The range is invalid or the number of points is
+	 * 						   too small.
+	 */
+	private static long getWidth(
+			final long startMillis,
+			final long endMillis,
+			final int numPoints)
+			throws DomainException {
+
+		if(numPoints < MIN_NUM_POINTS) {
+			throw new DomainException(
+				"At least " + MIN_NUM_POINTS + " points must be kept.");
+		}
+		if(endMillis < startMillis) {
+			throw new DomainException("The end is before the start.");
+		}
+
+		long range = endMillis - startMillis + 1;
+		long numBuckets = numPoints - 2;
+		return (range / numBuckets) + (((range % numBuckets) == 0) ? 0 : 1);
+	}
+}
@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain;
+
+import java.io.File;
+
+import org.ohmage.exception.DomainException;
+
+/**
+ * <p>
+ * A file in the media store. The store is content-addressed: a file is named
+ * by the SHA-256 digest of its contents, followed by the media's extension if
+ * it has one, so that identical contents are only ever stored once no matter
+ * how many images, videos, audio files, or documents refer to them.
+ * </p>
+ *
+ * <p>
+ * Files are fanned out into two levels of directories named by the first two
+ * pairs of characters of their digest. A file's location is therefore known
+ * from its digest alone, and no directory ever needs to be listed to decide
+ * where a file goes.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public class MediaBlob {
+	/**
+	 * The algorithm used to digest the contents.
+	 */
+	public static final String DIGEST_ALGORITHM = "SHA-256";
+
+	/**
+	 * The number of hexadecimal characters in a digest.
+	 */
+	public static final int DIGEST_LENGTH = 64;
+
+	/**
+	 * The number of hexadecimal characters used to name each level of
+	 * directories.
+	 */
+	private static final int FAN_OUT_WIDTH = 2;
+	/**
+	 * The number of levels of directories.
+	 */
+	private static final int FAN_OUT_DEPTH = 2;
+
+	private static final char EXTENSION_SEPARATOR = '.';
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final String digest;
+	private final String extension;
+	private final long size;
+	private final File file;
+	private final boolean created;
+
+	/**
+	 * Creates a reference to a stored file.
+	 *
+	 * @param digest The hexadecimal digest of the contents.
+	 *
+	 * @param extension The media's extension or null if it has none.
+	 *
+	 * @param size The number of bytes in the contents.
+	 *
+	 * @param file The stored file.
+	 *
+	 * @param created Whether or not the file was written by the call that
+	 * 				  stored it, as opposed to already having been stored.
+	 *
+	 * @throws DomainException The digest is not a valid digest or the file is
+	 * 						   null.
+	 */
+	public MediaBlob(
+			final String digest,
+			final String extension,
+			final long size,
+			final File file,
+			final boolean created)
+			throws DomainException {
+
+		if(! isDigest(digest)) {
+			throw new DomainException("The digest is invalid: " + digest);
+		}
+		if(file == null) {
+			throw new DomainException("The file is null.");
+		}
+
+		this.digest = digest;
+		this.extension = extension;
+		this.size = size;
+		this.file = file;
+		this.created = created;
+	}
+
+	/**
+	 * Returns the hexadecimal digest of the contents.
+	 *
+	 * @return The digest.
+	 */
+	public String getDigest() {
+		return digest;
+	}
+
+	/**
+	 * Returns the media's extension.
+	 *
+	 * @return The extension or null if there is none.
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * Returns the number of bytes in the contents.
+	 *
+	 * @return The size of the contents.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the stored file.
+	 *
+	 * @return The stored file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the URL that should be recorded for the stored file.
+	 *
+	 * @return The URL as a string.
+	 */
+	public String getUrl() {
+		return "file://" + file.getAbsolutePath();
+	}
+
+	/**
+	 * Returns whether or not the file was written when it was stored. If
+	 * not, identical contents had already been stored, and the file must not
+	 * be removed if the store is rolled back.
+	 *
+	 * @return Whether or not the file was written when it was stored.
+	 */
+	public boolean isCreated() {
+		return created;
+	}
+
+	/**
+	 * Encodes the bytes of a digest as lower-case hexadecimal characters.
+	 *
+	 * @param digest The bytes of the digest.
+	 *
+	 * @return The hexadecimal digest.
+	 */
+	public static String encodeDigest(final byte[] digest) {
+		char[] result = new char[digest.length * 2];
+		for(int i = 0; i < digest.length; i++) {
+			result[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0x0F];
+			result[(2 * i) + 1] = HEX_DIGITS[digest[i] & 0x0F];
+		}
+		return new String(result);
+	}
+
+	/**
+	 * Returns whether or not a string is a hexadecimal digest, as returned by
+	 * {@link #encodeDigest(byte[])}.
+	 *
+	 * @param value The string to check.
+	 *
+	 * @return Whether or not the string is a digest.
+	 */
+	public static boolean isDigest(final String value) {
+		if((value == null) || (value.length() != DIGEST_LENGTH)) {
+			return false;
+		}
+
+		for(int i = 0; i < DIGEST_LENGTH; i++) {
+			char c = value.charAt(i);
+			if(! (((c >= '0') && (c <= '9')) || ((c >= 'a') && (c <= 'f')))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Builds the name of the file for some contents.
+	 *
+	 * @param digest The hexadecimal digest of the contents.
+	 *
+	 * @param extension The media's extension or null if it has none.
+	 *
+	 * @return The file's name.
+	 */
+	public static String getFilename(
+			final String digest,
+			final String extension) {
+
+		if(extension == null) {
+			return digest;
+		}
+
+		return digest + EXTENSION_SEPARATOR + extension;
+	}
+
+	/**
+	 * Builds the location of the file for some contents relative to the root
+	 * of the store.
+	 *
+	 * @param root The root directory of the store.
+	 *
+	 * @param digest The hexadecimal digest of the contents.
+	 *
+	 * @param extension The media's extension or null if it has none.
+	 *
+	 * @return The file.
+	 */
+	public static File getFile(
+			final File root,
+			final String digest,
+			final String extension) {
+
+		File directory = root;
+		for(int i = 0; i < FAN_OUT_DEPTH; i++) {
+			directory =
+				new File(
+					directory,
+					digest.substring(
+						i * FAN_OUT_WIDTH,
+						(i + 1) * FAN_OUT_WIDTH));
+		}
+
+		return new File(directory, getFilename(digest, extension));
+	}
+
+	/**
+	 * Returns the digest from a stored file's name.
+	 *
+	 * @param filename The file's name.
+	 *
+	 * @return The digest or null if the name is not the name of a stored
+	 * 		   file.
+	 */
+	public static String getDigest(final String filename) {
+		int separator = filename.indexOf(EXTENSION_SEPARATOR);
+		String digest =
+			(separator == -1) ? filename : filename.substring(0, separator);
+
+		return (isDigest(digest)) ? digest : null;
+	}
+
+	/**
+	 * Returns the extension from a stored file's name.
+	 *
+	 * @param filename The file's name.
+	 *
+	 * @return The extension or null if there is none.
+	 */
+	public static String getExtension(final String filename) {
+		int separator = filename.indexOf(EXTENSION_SEPARATOR);
+
+		return (separator == -1) ? null : filename.substring(separator + 1);
+	}
+}
@@ -42,6 +42,7 @@ import org.ohmage.domain.MobilityPoint.SensorData.WifiData.WifiDataColumnKey;
 import org.ohmage.exception.DomainException;
 import org.ohmage.util.StringUtils;
 import org.ohmage.util.DateTimeUtils;
+import org.ohmage.util.JsonUtils;
 
 import edu.ucla.cens.mobilityclassifier.AccessPoint;
 import edu.ucla.cens.mobilityclassifier.Sample;
@@ -2833,18 +2834,16 @@ public class MobilityPoint implements Comparable<MobilityPoint> {
 			final PrivacyState privacyState) 
 			throws DomainException {
 		
-		String idString;
-		try {
-			idString = 
-					mobilityPoint.getString(
-							MobilityColumnKey.ID.toString(false));
-		}
-		catch(JSONException e) {
+		String idString =
+				JsonUtils.getString(
+						mobilityPoint,
+						MobilityColumnKey.ID.toString(false),
+						null);
+		if(idString == null) {
 			throw new DomainException(
 					ErrorCode.MOBILITY_INVALID_ID, 
 					"The Mobility point's ID is missing: " +
-							MobilityColumnKey.ID.toString(false), 
-					e);
+							MobilityColumnKey.ID.toString(false));
 		}
 		try {
 			id = UUID.fromString(idString);
@@ -2857,51 +2856,34 @@ public class MobilityPoint implements Comparable<MobilityPoint> {
 		}
 		
 		// Get the time.
-		long tTime;
-		try {
-			tTime = mobilityPoint.getLong(
+		Long tTime =
+				JsonUtils.getLong(
+						mobilityPoint,
+						MobilityColumnKey.TIME.toString(false),
+						MobilityColumnKey.TIME.toString(true));
+		if(tTime == null) {
+			throw new DomainException(
+					ErrorCode.SERVER_INVALID_TIME, 
+					"The time is missing: " + 
 							MobilityColumnKey.TIME.toString(false));
 		}
-		catch(JSONException outerException) {
-			try {
-				tTime = mobilityPoint.getLong(
-								MobilityColumnKey.TIME.toString(true));
-			}
-			catch(JSONException innerException) {
-				throw new DomainException(
-						ErrorCode.SERVER_INVALID_TIME, 
-						"The time is missing: " + 
-								MobilityColumnKey.TIME.toString(false), 
-						innerException);
-			}
-		}
 		time = tTime;
 		
 		// Get the timezone.
-		DateTimeZone tTimezone;
-		try {
-			tTimezone = 
-					DateTimeUtils.getDateTimeZoneFromString(
-							mobilityPoint.getString(
-									MobilityColumnKey.TIMEZONE.toString(
-											false)));
+		String timezoneString =
+				JsonUtils.getString(
+						mobilityPoint,
+						MobilityColumnKey.TIMEZONE.toString(false),
+						MobilityColumnKey.TIMEZONE.toString(true));
+		if(timezoneString == null) {
+			throw new DomainException(
+					ErrorCode.SERVER_INVALID_TIMEZONE, 
+					"The timezone is missing: " + 
+							MobilityColumnKey.TIMEZONE.toString(false));
 		}
-		catch(JSONException outerException) {
-			try {
-				tTimezone = 
-						DateTimeUtils.getDateTimeZoneFromString(
-								mobilityPoint.getString(
-										MobilityColumnKey.TIMEZONE.toString(
-												true)));
-			}
-			catch(JSONException innerException) {
-				throw new DomainException(
-						ErrorCode.SERVER_INVALID_TIMEZONE, 
-						"The timezone is missing: " + 
-								MobilityColumnKey.TIMEZONE.toString(
-										false), 
-						innerException);
-			}
+		try {
+			timezone = 
+					DateTimeUtils.getDateTimeZoneFromString(timezoneString);
 		}
 		catch(IllegalArgumentException e) {
 			throw new DomainException(
@@ -2909,31 +2891,20 @@ public class MobilityPoint implements Comparable<MobilityPoint> {
 				"The time zone is unknown.",
 				e);
 		}
-		timezone = tTimezone;
 		
 		// Get the location status.
-		String locationStatusString;
-		try {
-			locationStatusString = 
-					mobilityPoint.getString(
-							LocationColumnKey.STATUS.toString(false)
-					).toUpperCase();
-		}
-		catch(JSONException outerException) {
-			try {
-				locationStatusString =
-						mobilityPoint.getString(
-								LocationColumnKey.STATUS.toString(true)
-						).toUpperCase();
-			}
-			catch(JSONException innerException) {
-				throw new DomainException(
-						ErrorCode.SERVER_INVALID_LOCATION_STATUS, 
-						"The location status is missing: " +
-								LocationColumnKey.STATUS.toString(false), 
-						innerException);
-			}
+		String locationStatusString =
+				JsonUtils.getString(
+						mobilityPoint,
+						LocationColumnKey.STATUS.toString(false),
+						LocationColumnKey.STATUS.toString(true));
+		if(locationStatusString == null) {
+			throw new DomainException(
+					ErrorCode.SERVER_INVALID_LOCATION_STATUS, 
+					"The location status is missing: " +
+							LocationColumnKey.STATUS.toString(false));
 		}
+		locationStatusString = locationStatusString.toUpperCase();
 		try {
 			locationStatus = LocationStatus.valueOf(locationStatusString);
 		}
@@ -2945,67 +2916,40 @@ public class MobilityPoint implements Comparable<MobilityPoint> {
 		}
 		
 		// Get the location.
-		Location tLocation;
-		try {
-			tLocation = 
-					new Location(
-							mobilityPoint.getJSONObject(
-									MobilityColumnKey.LOCATION.toString(
-											false)),
-							timezone);
+		JSONObject locationJson =
+				JsonUtils.getJsonObject(
+						mobilityPoint,
+						MobilityColumnKey.LOCATION.toString(false),
+						MobilityColumnKey.LOCATION.toString(true));
+		if(locationJson != null) {
+			location = new Location(locationJson, timezone);
+		}
+		// If there was no location information in the JSONObject, check to
+		// ensure that the location status was unavailable as that is the
+		// only time this is acceptable.
+		else if(LocationStatus.UNAVAILABLE.equals(locationStatus)) {
+			location = null;
 		}
-		catch(JSONException outerException) {
-			try {
-				tLocation = 
-						new Location(
-								mobilityPoint.getJSONObject(
-										MobilityColumnKey.LOCATION.toString(
-												true)),
-								timezone);
-			}
-			catch(JSONException innerException) {
-				// If there was no location information in the JSONObject, 
-				// check to ensure that the location status was unavailable as
-				// that is the only time this is acceptable.
-				if(LocationStatus.UNAVAILABLE.equals(locationStatus)) {
-					tLocation = null;
-				}
-				else {
-					throw new DomainException(
-							ErrorCode.SERVER_INVALID_LOCATION, 
-							"The location is missing: " +
-									MobilityColumnKey.LOCATION.toString(
-											false), 
-							innerException);
-				}
-			}
+		else {
+			throw new DomainException(
+					ErrorCode.SERVER_INVALID_LOCATION, 
+					"The location is missing: " +
+							MobilityColumnKey.LOCATION.toString(false));
 		}
-		location = tLocation;
 		
 		// Get the subtype.
-		String subTypeString;
-		try {
-			subTypeString = 
-					mobilityPoint.getString(
-							MobilityColumnKey.SUB_TYPE.toString(false)
-					).toUpperCase();
-		}
-		catch(JSONException notLong) {
-			try {
-				subTypeString = 
-						mobilityPoint
-							.getString(
-									MobilityColumnKey.SUB_TYPE.toString(true)
-							).toUpperCase();
-			}
-			catch(JSONException notShort) {
-				throw new DomainException(
-						ErrorCode.MOBILITY_INVALID_SUBTYPE, 
-						"The subtype is missing: " +
-								MobilityColumnKey.SUB_TYPE.toString(false), 
-						notShort);
-			}
+		String subTypeString =
+				JsonUtils.getString(
+						mobilityPoint,
+						MobilityColumnKey.SUB_TYPE.toString(false),
+						MobilityColumnKey.SUB_TYPE.toString(true));
+		if(subTypeString == null) {
+			throw new DomainException(
+					ErrorCode.MOBILITY_INVALID_SUBTYPE, 
+					"The subtype is missing: " +
+							MobilityColumnKey.SUB_TYPE.toString(false));
 		}
+		subTypeString = subTypeString.toUpperCase();
 		
 		try {
 			subType = SubType.valueOf(subTypeString);
@@ -8,6 +8,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
@@ -140,6 +141,7 @@ public class Observer {
 		private static final String KEY_JSON_WITH_TIMESTAMP = "with_timestamp";
 		private static final String KEY_JSON_WITH_LOCATION = "with_location";
 		private static final String KEY_JSON_SCHEMA = "schema";
+		private static final String KEY_JSON_ENCODING = "encoding";
 
 		private static final Pattern PATTERN_ID_VALIDATOR = 
 			Pattern.compile("[a-zA-Z]{1}[\\w_]{0,254}");
@@ -168,6 +170,10 @@ public class Observer {
 		private final String schemaString;
 		private final JsonParser schema;
 		
+		@XmlElement(name=KEY_JSON_ENCODING)
+		private final DataStreamCodec.Encoding encoding;
+		private final DataStreamCodec codec;
+		
 		/**
 		 * Private, default constructor. This should never be used and would
 		 * result in a very broken object, but it is required by JAXB. :(
@@ -183,6 +189,8 @@ public class Observer {
 			withLocation = null;
 			schemaString = null;
 			schema = null;
+			encoding = null;
+			codec = null;
 		}
 
 		/**
@@ -220,6 +228,56 @@ public class Observer {
 				final Boolean withLocation,
 				final String schema) 
 				throws DomainException {
+			
+			this(
+				id,
+				version,
+				name,
+				description,
+				withId,
+				withTimestamp,
+				withLocation,
+				schema,
+				DataStreamCodec.Encoding.JSON);
+		}
+
+		/**
+		 * Creates a new stream definition whose data is stored with a specific
+		 * encoding.
+		 * 
+		 * @param id The unique identifier.
+		 * 
+		 * @param version The version for internal use.
+		 * 
+		 * @param name The display name for this stream.
+		 * 
+		 * @param description The description to be displayed to users.
+		 * 
+		 * @param withTimestamp Whether or not the data streams for this stream
+		 * 						should contain a timestamp.
+		 * 
+		 * @param withLocation Whether or not the data streams for this stream
+		 * 					   should contain a location.
+		 * 
+		 * @param schema A string representing a valid Concordia schema.
+		 * 
+		 * @param encoding How this stream's data is stored.
+		 * 
+		 * @throws DomainException Required information was missing or invalid
+		 * 						   or the schema cannot be used with the 
+		 * 						   encoding.
+		 */
+		public Stream(
+				final String id,
+				final long version,
+				final String name,
+				final String description,
+				final Boolean withId,
+				final Boolean withTimestamp,
+				final Boolean withLocation,
+				final String schema,
+				final DataStreamCodec.Encoding encoding) 
+				throws DomainException {
 
 			if(id == null) {
 				throw new DomainException("The ID is null.");
@@ -247,6 +305,12 @@ public class Observer {
 
 			this.schema = validateSchema(schema);
 			this.schemaString = schema;
+			
+			if(encoding == null) {
+				throw new DomainException("The encoding is null.");
+			}
+			this.encoding = encoding;
+			this.codec = buildCodec(id, schema, encoding);
 		}
 		
 		/**
@@ -409,6 +473,39 @@ public class Observer {
 				getXmlValue(stream, "schema", "stream, " + id + ", schema");
 			schema = validateSchema(schemaString);
 			
+			Nodes encodings;
+			try {
+				encodings = stream.query("encoding");
+			}
+			catch(XPathException e) {
+				// The XPath is invalid.
+				throw new DomainException(e);
+			}
+			
+			if(encodings.size() > 1) {
+				throw new DomainException(
+					"Multiple encodings were given for the stream '" +
+						id +
+						"'.");
+			}
+			else if(encodings.size() == 1) {
+				String encodingString = encodings.get(0).getValue().trim();
+				try {
+					encoding = DataStreamCodec.Encoding.getValue(encodingString);
+				}
+				catch(IllegalArgumentException e) {
+					throw new DomainException(
+						"The encoding for the stream '" +
+							id +
+							"' is unknown: " +
+							encodingString,
+						e);
+				}
+			}
+			else {
+				encoding = DataStreamCodec.Encoding.JSON;
+			}
+			codec = buildCodec(id, schemaString, encoding);
 		}
 
 		/**
@@ -483,6 +580,103 @@ public class Observer {
 			return schema;
 		}
 		
+		/**
+		 * Returns how this stream's data is stored.
+		 * 
+		 * @return The encoding.
+		 */
+		public DataStreamCodec.Encoding getEncoding() {
+			return encoding;
+		}
+		
+		/**
+		 * Returns the codec compiled from this stream's schema.
+		 * 
+		 * @return The codec or null if this stream's data is stored as JSON
+		 * 		   text.
+		 */
+		public DataStreamCodec getCodec() {
+			return codec;
+		}
+
+		/**
+		 * Returns the paths to the numeric fields in this stream's schema.
+		 * Each path is the list of keys from the root of a point's data to
+		 * the field, separated by colons as in a column list. Fields within
+		 * arrays are not included as they have no single value per point. If
+		 * the data itself is a number, the only path is the empty string.
+		 *
+		 * @return The paths to the numeric fields in the order they are
+		 * 		   defined, which may be empty.
+		 *
+		 * @throws DomainException The schema could not be read.
+		 */
+		public List<String> getNumericFields() throws DomainException {
+			JsonNode root;
+			try {
+				root =
+					JSON_FACTORY
+						.createJsonParser(schemaString)
+						.readValueAsTree();
+			}
+			catch(IOException e) {
+				throw new DomainException("The schema could not be read.", e);
+			}
+
+			List<String> result = new LinkedList<String>();
+			addNumericFields(root, "", result);
+			return result;
+		}
+
+		/**
+		 * Adds the paths to the numeric fields of a type definition and its
+		 * sub-fields.
+		 *
+		 * @param definition The type definition.
+		 *
+		 * @param path The path to this type, which is the empty string for
+		 * 			   the root.
+		 *
+		 * @param result The list to which the paths are added.
+		 */
+		private static void addNumericFields(
+				final JsonNode definition,
+				final String path,
+				final List<String> result) {
+
+			if((definition == null) || (! definition.isObject())) {
+				return;
+			}
+
+			JsonNode type = definition.get("type");
+			if(type == null) {
+				return;
+			}
+			else if("number".equals(type.getTextValue())) {
+				result.add(path);
+			}
+			else if("object".equals(type.getTextValue())) {
+				JsonNode fields = definition.get("fields");
+				if((fields == null) || (! fields.isArray())) {
+					return;
+				}
+
+				for(JsonNode field : fields) {
+					JsonNode name = field.get("name");
+					if((name == null) || (! name.isTextual())) {
+						continue;
+					}
+
+					addNumericFields(
+						field,
+						(path.length() == 0) ?
+							name.getTextValue() :
+							path + ":" + name.getTextValue(),
+						result);
+				}
+			}
+		}
+
 		/**
 		 * Writes this stream to the JSON generator.
 		 * 
@@ -538,6 +732,13 @@ public class Observer {
 				generator.writeObjectField(
 					KEY_JSON_SCHEMA, 
 					schema.readValueAsTree());
+				
+				// Add the encoding if it isn't the default.
+				if(encoding != DataStreamCodec.Encoding.JSON) {
+					generator.writeStringField(
+						KEY_JSON_ENCODING, 
+						encoding.toString());
+				}
 			}
 			finally {
 				// Close this observer's object.
@@ -635,6 +836,44 @@ public class Observer {
 			return trimmedId;
 		}
 		
+		/**
+		 * Compiles the codec for a stream whose data is binary encoded.
+		 * 
+		 * @param id The stream's ID, for error reporting.
+		 * 
+		 * @param schema The stream's schema.
+		 * 
+		 * @param encoding The stream's encoding.
+		 * 
+		 * @return The codec or null if the data is stored as JSON text.
+		 * 
+		 * @throws DomainException The schema cannot be binary encoded.
+		 */
+		private static DataStreamCodec buildCodec(
+				final String id,
+				final String schema,
+				final DataStreamCodec.Encoding encoding)
+				throws DomainException {
+			
+			if(encoding == DataStreamCodec.Encoding.JSON) {
+				return null;
+			}
+			
+			try {
+				return new DataStreamCodec(schema);
+			}
+			catch(DomainException e) {
+				throw new DomainException(
+					"The schema for the stream '" +
+						id +
+						"' cannot be used with the '" +
+						encoding +
+						"' encoding: " +
+						e.getMessage(),
+					e);
+			}
+		}
+		
 		/**
 		 * Validates that a schema used to defined a stream is valid.
 		 * 
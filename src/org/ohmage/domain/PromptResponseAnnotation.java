@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.exception.DomainException;
+import org.ohmage.util.StringUtils;
+
+/**
+ * An annotation on a prompt response, which also records the prompt response
+ * it is attached to: the prompt's id and, if the prompt is in a repeatable
+ * set, the repeatable set's id and the iteration.
+ * 
+ * @author Joshua Selsky
+ */
+public class PromptResponseAnnotation extends Annotation {
+	private static final String JSON_KEY_PROMPT_ID = "prompt_id";
+	private static final String JSON_KEY_REPEATABLE_SET_ID = "repeatable_set_id";
+	private static final String JSON_KEY_REPEATABLE_SET_ITERATION = "repeatable_set_iteration";
+	
+	private final String promptId;
+	private final String repeatableSetId;
+	private final Integer repeatableSetIteration;
+	
+	/**
+	 * Creates a PromptResponseAnnotation using the provided values.
+	 * 
+	 * @param id a UUID
+	 * @param text the annotation text
+	 * @param epochMillis the UNIX epoch millis
+	 * @param timezone the timezone on the annotation
+	 * @param promptId the id of the annotated prompt response's prompt
+	 * @param repeatableSetId the id of the prompt's repeatable set or null if
+	 * it is not in one
+	 * @param repeatableSetIteration the iteration of the repeatable set or
+	 * null if the prompt is not in one
+	 * @throws DomainException if any of the input is missing or malformed
+	 */
+	public PromptResponseAnnotation(String id, String text, Long epochMillis, String timezone, 
+		String promptId, String repeatableSetId, Integer repeatableSetIteration) 
+			throws DomainException {
+		
+		super(id, text, epochMillis, timezone);
+		
+		if(StringUtils.isEmptyOrWhitespaceOnly(promptId)) {
+			throw new DomainException("A prompt id is required.");
+		}
+		
+		this.promptId = promptId;
+		this.repeatableSetId = repeatableSetId;
+		this.repeatableSetIteration = repeatableSetIteration;
+	}
+	
+	public String getPromptId() {
+		return promptId;
+	}
+	
+	public String getRepeatableSetId() {
+		return repeatableSetId;
+	}
+	
+	public Integer getRepeatableSetIteration() {
+		return repeatableSetIteration;
+	}
+	
+	/**
+	 * Creates a JSONObject with the annotation's text, time, and timezone as
+	 * well as the prompt id and, if there is one, the repeatable set id and
+	 * iteration.
+	 * 
+	 * @return A JSONObject representing this annotation.
+	 * 
+	 * @throws JSONException There was an error building the JSONObject.
+	 */
+	@Override
+	public JSONObject toJson() throws JSONException {
+		JSONObject result = super.toJson();
+		
+		result.put(JSON_KEY_PROMPT_ID, promptId);
+		if(repeatableSetId != null) {
+			result.put(JSON_KEY_REPEATABLE_SET_ID, repeatableSetId);
+			result.put(JSON_KEY_REPEATABLE_SET_ITERATION, repeatableSetIteration);
+		}
+		
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "PromptResponseAnnotation [" + super.toString() + 
+				", promptId=" + promptId + ", repeatableSetId=" + repeatableSetId + 
+				", repeatableSetIteration=" + repeatableSetIteration + "]";
+	}
+}
@@ -0,0 +1,331 @@
+package org.ohmage.domain;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.ISODateTimeFormat;
+import org.ohmage.exception.DomainException;
+
+/**
+ * <p>
+ * Reduces a stream's data to one summary per fixed-width time bucket. For
+ * each numeric field, the requested functions are computed over the values
+ * of the points in the bucket. Only the statistics of the current bucket are
+ * kept while points are being added, so the memory used is proportional to
+ * the number of non-empty buckets, not the number of points.
+ * </p>
+ *
+ * <p>
+ * This class is mutable and, therefore, not thread-safe.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public class TimeBucketAggregator extends DataStreamAggregator {
+	private static final String JSON_KEY_METADATA = "metadata";
+	private static final String JSON_KEY_TIMESTAMP = "timestamp";
+	private static final String JSON_KEY_COUNT = "count";
+	private static final String JSON_KEY_DATA = "data";
+
+	/**
+	 * The functions that may be computed over a numeric field's values in a
+	 * bucket.
+	 *
+	 * @author John Jenkins
+	 */
+	public static enum Function {
+		COUNT,
+		MIN,
+		MAX,
+		MEAN,
+		SUM,
+		FIRST,
+		LAST;
+
+		/**
+		 * Converts a String value into a Function or throws an exception if
+		 * there is no comparable function.
+		 *
+		 * @param function The function to be converted into a Function
+		 * 				   enum.
+		 *
+		 * @return A comparable Function enum.
+		 *
+		 * @throws IllegalArgumentException Thrown if there is no comparable
+		 * 									Function enum.
+		 */
+		public static Function getValue(final String function) {
+			return valueOf(function.trim().toUpperCase());
+		}
+
+		/**
+		 * Converts the function to a nice, human-readable format.
+		 */
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	/**
+	 * The statistics for one non-empty bucket.
+	 *
+	 * @author John Jenkins
+	 */
+	private final class Bucket {
+		private final long index;
+		private long numPoints = 0;
+
+		// The statistics for each field, indexed the same as the fields.
+		private final long[] counts;
+		private final double[] sums;
+		private final double[] mins;
+		private final double[] maxes;
+		private final double[] firsts;
+		private final double[] lasts;
+
+		/**
+		 * Creates an empty bucket.
+		 *
+		 * @param index The bucket's index.
+		 */
+		private Bucket(final long index) {
+			this.index = index;
+
+			counts = new long[fields.length];
+			sums = new double[fields.length];
+			mins = new double[fields.length];
+			maxes = new double[fields.length];
+			firsts = new double[fields.length];
+			lasts = new double[fields.length];
+		}
+
+		/**
+		 * Adds a point's values to the statistics.
+		 *
+		 * @param data The point's data.
+		 */
+		private void add(final JsonNode data) {
+			numPoints++;
+
+			for(int i = 0; i < fields.length; i++) {
+				Double value = getNumber(data, fields[i]);
+				if(value == null) {
+					continue;
+				}
+
+				if(counts[i] == 0) {
+					mins[i] = value;
+					maxes[i] = value;
+					firsts[i] = value;
+				}
+				else {
+					mins[i] = Math.min(mins[i], value);
+					maxes[i] = Math.max(maxes[i], value);
+				}
+				lasts[i] = value;
+				sums[i] += value;
+				counts[i]++;
+			}
+		}
+
+		/**
+		 * Returns the value of a function for a field.
+		 *
+		 * @param field The field's index.
+		 *
+		 * @param function The function.
+		 *
+		 * @return The function's value.
+		 */
+		private double getValue(final int field, final Function function) {
+			switch(function) {
+			case COUNT:
+				return counts[field];
+			case MIN:
+				return mins[field];
+			case MAX:
+				return maxes[field];
+			case MEAN:
+				return sums[field] / counts[field];
+			case SUM:
+				return sums[field];
+			case FIRST:
+				return firsts[field];
+			case LAST:
+				return lasts[field];
+			default:
+				throw new IllegalStateException(
+					"The function is unknown: " + function);
+			}
+		}
+	}
+
+	private final String[][] fields;
+	private final Function[] functions;
+
+	private final List<Bucket> buckets;
+	private Bucket current;
+
+	/**
+	 * Creates a new aggregator.
+	 *
+	 * @param startMillis The time at which the first bucket begins.
+	 *
+	 * @param endMillis The time at which the last bucket ends, inclusive.
+	 *
+	 * @param width The width of each bucket in milliseconds.
+	 *
+	 * @param fields The paths to the numeric fields to aggregate, as returned
+	 * 				 by {@link Observer.Stream#getNumericFields()}.
+	 *
+	 * @param functions The functions to compute for each field.
+	 *
+	 * @throws DomainException The range or width is invalid or no fields or
+	 * 						   functions were given.
+	 */
+	public TimeBucketAggregator(
+			final long startMillis,
+			final long endMillis,
+			final long width,
+			final Collection<String> fields,
+			final Collection<Function> functions)
+			throws DomainException {
+
+		super(
+			startMillis,
+			width,
+			getNumBuckets(startMillis, endMillis, width));
+
+		if((fields == null) || fields.isEmpty()) {
+			throw new DomainException("There are no numeric fields.");
+		}
+		if((functions == null) || functions.isEmpty()) {
+			throw new DomainException("There are no functions.");
+		}
+
+		this.fields = new String[fields.size()][];
+		int i = 0;
+		for(String field : fields) {
+			this.fields[i++] = splitPath(field);
+		}
+		this.functions = functions.toArray(new Function[functions.size()]);
+
+		buckets = new ArrayList<Bucket>();
+		current = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.domain.DataStreamAggregator#add(org.ohmage.domain.DataStream, long, long)
+	 */
+	@Override
+	protected void add(
+			final DataStream dataStream,
+			final long time,
+			final long bucket)
+			throws DomainException {
+
+		if((current == null) || (current.index != bucket)) {
+			finish();
+			current = new Bucket(bucket);
+		}
+
+		current.add(dataStream.getData());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.domain.DataStreamAggregator#finish()
+	 */
+	@Override
+	public void finish() {
+		if(current != null) {
+			buckets.add(current);
+			current = null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.domain.DataStreamAggregator#size()
+	 */
+	@Override
+	public int size() {
+		return buckets.size();
+	}
+
+	/**
+	 * Writes each non-empty bucket as a JSON object with its meta-data, the
+	 * time at which it begins and the number of points in it, and its data,
+	 * an object with the same shape as a point's data where each field's
+	 * value is an object of function names to their values. Fields that had
+	 * no values in a bucket are omitted. The generator must be at a point
+	 * where the values of an array may be written.
+	 *
+	 * @param generator The generator to write to.
+	 *
+	 * @param timeZone The time zone in which to write the buckets' times.
+	 *
+	 * @throws IOException There was an error writing to the generator.
+	 */
+	public void write(
+			final JsonGenerator generator,
+			final DateTimeZone timeZone)
+			throws IOException {
+
+		JsonNodeFactory factory = JsonNodeFactory.instance;
+
+		for(Bucket bucket : buckets) {
+			generator.writeStartObject();
+
+			generator.writeObjectFieldStart(JSON_KEY_METADATA);
+			generator.writeStringField(
+				JSON_KEY_TIMESTAMP,
+				ISODateTimeFormat.dateTime().print(
+					new DateTime(getBucketStart(bucket.index), timeZone)));
+			generator.writeNumberField(JSON_KEY_COUNT, bucket.numPoints);
+			generator.writeEndObject();
+
+			ObjectNode data = factory.objectNode();
+			for(int i = 0; i < fields.length; i++) {
+				if(bucket.counts[i] == 0) {
+					continue;
+				}
+
+				// Find or create the object for this field.
+				ObjectNode node = data;
+				for(String key : fields[i]) {
+					JsonNode child = node.get(key);
+					if((child == null) || (! child.isObject())) {
+						child = node.putObject(key);
+					}
+					node = (ObjectNode) child;
+				}
+
+				for(Function function : functions) {
+					if(function == Function.COUNT) {
+						node.put(function.toString(), bucket.counts[i]);
+					}
+					else {
+						node.put(
+							function.toString(),
+							bucket.getValue(i, function));
+					}
+				}
+			}
+			generator.writeFieldName(JSON_KEY_DATA);
+			generator.writeTree(data);
+
+			generator.writeEndObject();
+		}
+	}
+}
@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain;
+
+import org.ohmage.exception.DomainException;
+
+/**
+ * <p>
+ * A summary of a user's upload activity for a single source, e.g. the survey
+ * responses for one campaign or the data for one observer. The summary is
+ * maintained incrementally by the upload paths, so it can be read without
+ * scanning the uploaded data itself.
+ * </p>
+ *
+ * <p>
+ * The counts only cover the rolling window that was requested when the
+ * summary was read, which is, by default, the last day.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public class UserActivity {
+	/**
+	 * The number of milliseconds in an hour.
+	 */
+	public static final long MILLIS_PER_HOUR = 1000 * 60 * 60;
+
+	/**
+	 * The default number of hours in the rolling window.
+	 */
+	public static final int DEFAULT_WINDOW_HOURS = 24;
+
+	/**
+	 * The kinds of sources whose activity is tracked.
+	 *
+	 * @author John Jenkins
+	 */
+	public static enum SourceType {
+		/**
+		 * The source is a campaign, and its ID is the campaign's ID.
+		 */
+		SURVEY,
+		/**
+		 * The source is an observer, and its ID is the observer's ID.
+		 */
+		STREAM;
+
+		/**
+		 * Converts a String value into a SourceType or throws an exception
+		 * if there is no comparable source type.
+		 *
+		 * @param sourceType The source type to be converted into a
+		 * 					 SourceType enum.
+		 *
+		 * @return A comparable SourceType enum.
+		 *
+		 * @throws IllegalArgumentException Thrown if there is no comparable
+		 * 									SourceType enum.
+		 */
+		public static SourceType getValue(final String sourceType) {
+			return valueOf(sourceType.toUpperCase());
+		}
+
+		/**
+		 * Converts the source type to a nice, human-readable format.
+		 */
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	private final String username;
+	private final SourceType sourceType;
+	private final String sourceId;
+	private final Long lastDataMillis;
+	private final long numPoints;
+	private final long numPointsWithLocation;
+
+	/**
+	 * Creates a new activity summary.
+	 *
+	 * @param username
+	 *        The username of the user that uploaded the data.
+	 *
+	 * @param sourceType
+	 *        The kind of source to which the data was uploaded.
+	 *
+	 * @param sourceId
+	 *        The unique identifier for the source.
+	 *
+	 * @param lastDataMillis
+	 *        The most recent time, in milliseconds since the epoch, at which
+	 *        any uploaded point was generated. This may be null if none of
+	 *        the points had a time.
+	 *
+	 * @param numPoints
+	 *        The number of points uploaded within the window.
+	 *
+	 * @param numPointsWithLocation
+	 *        The number of points uploaded within the window that had a
+	 *        location.
+	 *
+	 * @throws DomainException
+	 *         One of the parameters is null or the counts are invalid.
+	 */
+	public UserActivity(
+			final String username,
+			final SourceType sourceType,
+			final String sourceId,
+			final Long lastDataMillis,
+			final long numPoints,
+			final long numPointsWithLocation)
+			throws DomainException {
+
+		if(username == null) {
+			throw new DomainException("The username is null.");
+		}
+		if(sourceType == null) {
+			throw new DomainException("The source type is null.");
+		}
+		if(sourceId == null) {
+			throw new DomainException("The source ID is null.");
+		}
+		if(numPoints < 0) {
+			throw new DomainException("The number of points is negative.");
+		}
+		if((numPointsWithLocation < 0) || (numPointsWithLocation > numPoints)) {
+			throw new DomainException(
+				"The number of points with a location is invalid.");
+		}
+
+		this.username = username;
+		this.sourceType = sourceType;
+		this.sourceId = sourceId;
+		this.lastDataMillis = lastDataMillis;
+		this.numPoints = numPoints;
+		this.numPointsWithLocation = numPointsWithLocation;
+	}
+
+	/**
+	 * Returns the username of the user to whom this activity belongs.
+	 *
+	 * @return The user's username.
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * Returns the type of source for this activity.
+	 *
+	 * @return The source type.
+	 */
+	public SourceType getSourceType() {
+		return sourceType;
+	}
+
+	/**
+	 * Returns the unique identifier for the source.
+	 *
+	 * @return The source's ID.
+	 */
+	public String getSourceId() {
+		return sourceId;
+	}
+
+	/**
+	 * Returns the time of the most recently generated point.
+	 *
+	 * @return The number of milliseconds since the epoch or null if it is
+	 * 		   unknown.
+	 */
+	public Long getLastDataMillis() {
+		return lastDataMillis;
+	}
+
+	/**
+	 * Returns the number of points uploaded within the window.
+	 *
+	 * @return The number of points uploaded within the window.
+	 */
+	public long getNumPoints() {
+		return numPoints;
+	}
+
+	/**
+	 * Returns the number of points uploaded within the window that had a
+	 * location.
+	 *
+	 * @return The number of points with a location.
+	 */
+	public long getNumPointsWithLocation() {
+		return numPointsWithLocation;
+	}
+
+	/**
+	 * Returns the number of hours, as a decimal, between the most recent
+	 * point and some moment.
+	 *
+	 * @param now
+	 *        The moment to compare against in milliseconds since the epoch.
+	 *
+	 * @return The number of hours or null if the time of the most recent
+	 * 		   point is unknown.
+	 */
+	public Double getHoursSinceLastData(final long now) {
+		if(lastDataMillis == null) {
+			return null;
+		}
+
+		return ((double) (now - lastDataMillis)) / MILLIS_PER_HOUR;
+	}
+
+	/**
+	 * Returns the ratio of the points within the window that had a location.
+	 *
+	 * @return The ratio between 0 and 1 or null if there were no points
+	 * 		   within the window.
+	 */
+	public Double getPercentageWithLocation() {
+		if(numPoints == 0) {
+			return null;
+		}
+
+		return ((double) numPointsWithLocation) / numPoints;
+	}
+
+	/**
+	 * Returns the hour bucket for some moment, which is the number of whole
+	 * hours since the epoch.
+	 *
+	 * @param millis
+	 *        The moment in milliseconds since the epoch.
+	 *
+	 * @return The hour bucket.
+	 */
+	public static long getHourBucket(final long millis) {
+		return millis / MILLIS_PER_HOUR;
+	}
+}
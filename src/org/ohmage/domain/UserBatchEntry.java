@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.domain.UserInformation.UserPersonal;
+import org.ohmage.exception.DomainException;
+
+/**
+ * One user in a batch of users that are being created or updated. Any value
+ * other than the username may be null, in which case it is given its default
+ * value when the user is created and left alone when the user is updated.
+ *
+ * @author John Jenkins
+ */
+public class UserBatchEntry {
+	private final int row;
+	private final String username;
+	private final String password;
+	private final String emailAddress;
+	private final Boolean admin;
+	private final Boolean enabled;
+	private final Boolean newAccount;
+	private final Boolean campaignCreationPrivilege;
+	private final UserPersonal personalInfo;
+
+	/**
+	 * The outcome of creating or updating one user in a batch.
+	 *
+	 * @author John Jenkins
+	 */
+	public static class Result {
+		private static final String JSON_KEY_ROW = "row";
+		private static final String JSON_KEY_USERNAME = "username";
+		private static final String JSON_KEY_STATUS = "status";
+		private static final String JSON_KEY_MESSAGE = "message";
+
+		/**
+		 * The possible outcomes.
+		 *
+		 * @author John Jenkins
+		 */
+		public static enum Status {
+			/**
+			 * The user did not exist and was created.
+			 */
+			CREATED,
+			/**
+			 * The user already existed and was updated.
+			 */
+			UPDATED,
+			/**
+			 * The user was neither created nor updated.
+			 */
+			FAILED;
+
+			/**
+			 * Converts the status to a nice, human-readable format.
+			 */
+			@Override
+			public String toString() {
+				return name().toLowerCase();
+			}
+		}
+
+		private final UserBatchEntry entry;
+		private final Status status;
+		private final String message;
+
+		/**
+		 * Creates a result.
+		 *
+		 * @param entry The entry this is the result for.
+		 *
+		 * @param status The outcome.
+		 *
+		 * @param message A message explaining a failure or null.
+		 */
+		public Result(
+				final UserBatchEntry entry,
+				final Status status,
+				final String message) {
+
+			if(entry == null) {
+				throw new IllegalArgumentException("The entry is null.");
+			}
+			if(status == null) {
+				throw new IllegalArgumentException("The status is null.");
+			}
+
+			this.entry = entry;
+			this.status = status;
+			this.message = message;
+		}
+
+		/**
+		 * Returns the entry this is the result for.
+		 *
+		 * @return The entry.
+		 */
+		public UserBatchEntry getEntry() {
+			return entry;
+		}
+
+		/**
+		 * Returns the outcome.
+		 *
+		 * @return The status.
+		 */
+		public Status getStatus() {
+			return status;
+		}
+
+		/**
+		 * Returns the message explaining a failure.
+		 *
+		 * @return The message or null if there is none.
+		 */
+		public String getMessage() {
+			return message;
+		}
+
+		/**
+		 * Creates a JSONObject with the entry's row and username, the
+		 * outcome, and the message if there is one.
+		 *
+		 * @return A JSONObject representing this result.
+		 *
+		 * @throws JSONException There was an error building the JSONObject.
+		 */
+		public JSONObject toJson() throws JSONException {
+			JSONObject result = new JSONObject();
+
+			result.put(JSON_KEY_ROW, entry.getRow());
+			result.put(JSON_KEY_USERNAME, entry.getUsername());
+			result.put(JSON_KEY_STATUS, status.toString());
+			if(message != null) {
+				result.put(JSON_KEY_MESSAGE, message);
+			}
+
+			return result;
+		}
+	}
+
+	/**
+	 * Creates an entry.
+	 *
+	 * @param row The entry's position in the batch, starting at 1.
+	 *
+	 * @param username The user's username.
+	 *
+	 * @param password The user's plain-text password or null.
+	 *
+	 * @param emailAddress The user's email address or null.
+	 *
+	 * @param admin Whether or not the user is an admin or null.
+	 *
+	 * @param enabled Whether or not the user's account is enabled or null.
+	 *
+	 * @param newAccount Whether or not the user must change their password
+	 * 					 before using any other APIs or null.
+	 *
+	 * @param campaignCreationPrivilege Whether or not the user may create
+	 * 									campaigns or null.
+	 *
+	 * @param personalInfo The user's personal information or null.
+	 *
+	 * @throws DomainException The row is not positive or the username is
+	 * 						   null.
+	 */
+	public UserBatchEntry(
+			final int row,
+			final String username,
+			final String password,
+			final String emailAddress,
+			final Boolean admin,
+			final Boolean enabled,
+			final Boolean newAccount,
+			final Boolean campaignCreationPrivilege,
+			final UserPersonal personalInfo)
+			throws DomainException {
+
+		if(row < 1) {
+			throw new DomainException("The row must be positive.");
+		}
+		if(username == null) {
+			throw new DomainException("The username is null.");
+		}
+
+		this.row = row;
+		this.username = username;
+		this.password = password;
+		this.emailAddress = emailAddress;
+		this.admin = admin;
+		this.enabled = enabled;
+		this.newAccount = newAccount;
+		this.campaignCreationPrivilege = campaignCreationPrivilege;
+		this.personalInfo = personalInfo;
+	}
+
+	/**
+	 * Returns the entry's position in the batch, starting at 1.
+	 *
+	 * @return The row.
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * Returns the user's username.
+	 *
+	 * @return The username.
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * Returns the user's plain-text password.
+	 *
+	 * @return The password or null.
+	 */
+	public String getPassword() {
+		return password;
+	}
+
+	/**
+	 * Returns the user's email address.
+	 *
+	 * @return The email address or null.
+	 */
+	public String getEmailAddress() {
+		return emailAddress;
+	}
+
+	/**
+	 * Returns whether or not the user is an admin.
+	 *
+	 * @return Whether or not the user is an admin or null.
+	 */
+	public Boolean getAdmin() {
+		return admin;
+	}
+
+	/**
+	 * Returns whether or not the user's account is enabled.
+	 *
+	 * @return Whether or not the account is enabled or null.
+	 */
+	public Boolean getEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Returns whether or not the user must change their password before using
+	 * any other APIs.
+	 *
+	 * @return Whether or not the account is new or null.
+	 */
+	public Boolean getNewAccount() {
+		return newAccount;
+	}
+
+	/**
+	 * Returns whether or not the user may create campaigns.
+	 *
+	 * @return Whether or not the user may create campaigns or null.
+	 */
+	public Boolean getCampaignCreationPrivilege() {
+		return campaignCreationPrivilege;
+	}
+
+	/**
+	 * Returns the user's personal information.
+	 *
+	 * @return The personal information or null.
+	 */
+	public UserPersonal getPersonalInfo() {
+		return personalInfo;
+	}
+}
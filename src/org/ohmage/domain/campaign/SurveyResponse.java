@@ -38,6 +38,7 @@ import org.ohmage.domain.Location.LocationColumnKey;
 import org.ohmage.domain.campaign.Response.NoResponse;
 import org.ohmage.exception.DomainException;
 import org.ohmage.util.DateTimeUtils;
+import org.ohmage.util.JsonUtils;
 import org.ohmage.util.StringUtils;
 
 /**
@@ -720,6 +721,26 @@ public class SurveyResponse {
 		}
 	}
 	
+	/**
+	 * Receives each survey response, one at a time, as survey responses are
+	 * read, so that they never all need to be in memory.
+	 * 
+	 * @author John Jenkins
+	 */
+	public static interface Handler {
+		/**
+		 * Handles the next survey response.
+		 * 
+		 * @param surveyResponse The survey response with all of its prompt
+		 * 						 responses.
+		 * 
+		 * @throws DomainException The survey response could not be handled,
+		 * 						   which stops the read.
+		 */
+		public void handle(SurveyResponse surveyResponse)
+			throws DomainException;
+	}
+	
 	/**
 	 * This represents the different sort parameters influencing how the final
 	 * results are presented to the user.
@@ -1154,25 +1175,22 @@ public class SurveyResponse {
 					e);
 		}
 		
-		Location tLocation = null;
-		try {
-			tLocation = 
-				new Location(
-					response.getJSONObject(JSON_KEY_LOCATION),
-					timezone);
+		JSONObject locationJson =
+			JsonUtils.getJsonObject(response, JSON_KEY_LOCATION, null);
+		if(locationJson != null) {
+			location = new Location(locationJson, timezone);
 		}
-		catch(JSONException e) {
-			if(!(
-				LocationStatus.UNAVAILABLE.equals(locationStatus) ||
-				LocationStatus.GPS_OFF.equals(locationStatus))) {
-				
-				throw new DomainException(
-						ErrorCode.SERVER_INVALID_LOCATION, 
-						"The location is missing.", 
-						e);
-			}
+		else if(
+			LocationStatus.UNAVAILABLE.equals(locationStatus) ||
+			LocationStatus.GPS_OFF.equals(locationStatus)) {
+			
+			location = null;
+		}
+		else {
+			throw new DomainException(
+					ErrorCode.SERVER_INVALID_LOCATION, 
+					"The location is missing.");
 		}
-		location = tLocation;
 		
 		PrivacyState tPrivacyState;
 		if(response.has(JSON_KEY_PRIVACY_STATE)) {
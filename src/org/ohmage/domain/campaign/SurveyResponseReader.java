@@ -0,0 +1,356 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain.campaign;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.exception.DomainException;
+
+/**
+ * <p>
+ * Reads uploaded survey responses one at a time from their JSON array. Only
+ * the response currently being read is held in its JSON form; it is
+ * validated against the campaign as soon as it has been read, and the
+ * resulting SurveyResponse objects are handed out in batches.
+ * </p>
+ *
+ * <p>
+ * This class is mutable and not thread-safe.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public class SurveyResponseReader {
+	/**
+	 * The factory for the underlying token parsers.
+	 */
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final String username;
+	private final String client;
+	private final Campaign campaign;
+
+	private final JsonParser parser;
+	private boolean started;
+	private boolean finished;
+	private int numRead;
+
+	/**
+	 * Creates a new reader over the uploaded survey responses.
+	 *
+	 * @param username The username of the user that is uploading the
+	 * 				   responses.
+	 *
+	 * @param client The client that is uploading the responses.
+	 *
+	 * @param campaign The campaign to which the responses belong and against
+	 * 				   which they will be validated.
+	 *
+	 * @param data The UTF-8 encoded JSON array of survey responses.
+	 *
+	 * @throws DomainException One of the parameters was null or the parser
+	 * 						   could not be created.
+	 */
+	public SurveyResponseReader(
+			final String username,
+			final String client,
+			final Campaign campaign,
+			final byte[] data)
+			throws DomainException {
+
+		if(campaign == null) {
+			throw new DomainException("The campaign is null.");
+		}
+		if(data == null) {
+			throw new DomainException(
+				ErrorCode.SURVEY_INVALID_RESPONSES,
+				"The list of survey responses is null.");
+		}
+
+		this.username = username;
+		this.client = client;
+		this.campaign = campaign;
+
+		try {
+			parser = JSON_FACTORY.createJsonParser(data);
+		}
+		catch(IOException e) {
+			throw new DomainException("The parser could not be created.", e);
+		}
+
+		started = false;
+		finished = false;
+		numRead = 0;
+	}
+
+	/**
+	 * Reads and validates up to the given number of survey responses.
+	 *
+	 * @param maxSize The maximum number of responses to read.
+	 *
+	 * @return The next batch of survey responses. This will be empty once all
+	 * 		   of the responses have been read.
+	 *
+	 * @throws DomainException The JSON is invalid or one of the responses
+	 * 						   failed validation.
+	 */
+	public List<SurveyResponse> nextBatch(
+			final int maxSize)
+			throws DomainException {
+
+		return
+			new ArrayList<SurveyResponse>(
+				nextIndexedBatch(maxSize, null).values());
+	}
+
+	/**
+	 * Reads and validates up to the given number of survey responses, keeping
+	 * track of each one's position in the upload. If the invalid responses
+	 * are being collected, a response that is valid JSON but fails
+	 * validation is skipped, and a failed status is added for it instead, so
+	 * that it doesn't keep the rest from being read.
+	 *
+	 * @param maxSize The maximum number of valid responses to read.
+	 *
+	 * @param invalidResponses The collection to which a failed status is
+	 * 						   added for each response that failed
+	 * 						   validation or null if such a response should
+	 * 						   stop the reading.
+	 *
+	 * @return The next batch of valid survey responses keyed by their
+	 * 		   indexes in the upload, starting at 0. This will be empty once
+	 * 		   all of the responses have been read.
+	 *
+	 * @throws DomainException The JSON is invalid or, if the invalid
+	 * 						   responses aren't being collected, one of the
+	 * 						   responses failed validation.
+	 */
+	public SortedMap<Integer, SurveyResponse> nextIndexedBatch(
+			final int maxSize,
+			final Collection<SurveyUploadStatus> invalidResponses)
+			throws DomainException {
+
+		SortedMap<Integer, SurveyResponse> result =
+			new TreeMap<Integer, SurveyResponse>();
+		if(finished) {
+			return result;
+		}
+
+		try {
+			if(! started) {
+				if(parser.nextToken() != JsonToken.START_ARRAY) {
+					throw new DomainException(
+						ErrorCode.SERVER_INVALID_JSON,
+						"The uploaded JSON was not a JSONArray.");
+				}
+				started = true;
+			}
+
+			while(result.size() < maxSize) {
+				JsonToken token = parser.nextToken();
+				if(token == JsonToken.END_ARRAY) {
+					if(parser.nextToken() != null) {
+						throw new DomainException(
+							ErrorCode.SERVER_INVALID_JSON,
+							"There was data after the JSONArray.");
+					}
+
+					finished = true;
+					parser.close();
+					break;
+				}
+				else if(token != JsonToken.START_OBJECT) {
+					throw new DomainException(
+						ErrorCode.SERVER_INVALID_JSON,
+						"One of the survey responses was not valid JSON.");
+				}
+
+				// The whole object has been read before it is validated, so
+				// the parser is ready for the next one even if it is
+				// invalid.
+				int index = numRead++;
+				JSONObject response = readObject();
+				try {
+					result.put(
+						index,
+						new SurveyResponse(
+							username,
+							campaign.getId(),
+							client,
+							campaign,
+							response));
+				}
+				catch(DomainException e) {
+					if(invalidResponses == null) {
+						throw e;
+					}
+
+					invalidResponses.add(
+						new SurveyUploadStatus(
+							index,
+							getSurveyResponseId(response),
+							SurveyUploadStatus.Status.FAILED,
+							e.getMessage()));
+				}
+			}
+		}
+		catch(JsonParseException e) {
+			throw new DomainException(
+				ErrorCode.SERVER_INVALID_JSON,
+				"The uploaded JSON was not valid: " + e.getMessage(),
+				e);
+		}
+		catch(JSONException e) {
+			throw new DomainException(
+				ErrorCode.SERVER_INVALID_JSON,
+				"One of the survey responses was not valid JSON.",
+				e);
+		}
+		catch(IOException e) {
+			throw new DomainException(
+				"The survey responses could not be read.",
+				e);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of survey responses that have been read so far,
+	 * including any that were invalid.
+	 *
+	 * @return The number of survey responses read.
+	 */
+	public int getNumRead() {
+		return numRead;
+	}
+
+	/**
+	 * Returns the ID of a survey response that failed validation, if it has
+	 * one.
+	 *
+	 * @param response The survey response's JSON.
+	 *
+	 * @return The ID or null if it is missing or invalid.
+	 */
+	private static UUID getSurveyResponseId(final JSONObject response) {
+		String id =
+			response.optString(
+				SurveyResponse.JSON_KEY_SURVEY_RESPONSE_ID,
+				null);
+		if(id == null) {
+			return null;
+		}
+
+		try {
+			return UUID.fromString(id);
+		}
+		catch(IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Builds a JSONObject from the parser's tokens. The parser must be on the
+	 * object's START_OBJECT token and will be left on its END_OBJECT token.
+	 * Values are given the same types that org.json would give them.
+	 */
+	private JSONObject readObject() throws IOException, JSONException {
+		JSONObject result = new JSONObject();
+
+		while(parser.nextToken() == JsonToken.FIELD_NAME) {
+			String key = parser.getCurrentName();
+			parser.nextToken();
+			result.putOnce(key, readValue());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Builds a JSONArray from the parser's tokens. The parser must be on the
+	 * array's START_ARRAY token and will be left on its END_ARRAY token.
+	 */
+	private JSONArray readArray() throws IOException, JSONException {
+		JSONArray result = new JSONArray();
+
+		while(parser.nextToken() != JsonToken.END_ARRAY) {
+			result.put(readValue());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Converts the value at the parser's current token.
+	 */
+	private Object readValue() throws IOException, JSONException {
+		switch(parser.getCurrentToken()) {
+		case START_OBJECT:
+			return readObject();
+
+		case START_ARRAY:
+			return readArray();
+
+		case VALUE_STRING:
+			return parser.getText();
+
+		case VALUE_NUMBER_INT:
+			switch(parser.getNumberType()) {
+			case INT:
+				return parser.getIntValue();
+			case LONG:
+				return parser.getLongValue();
+			default:
+				// org.json keeps integers that don't fit in a long as
+				// text.
+				return parser.getText();
+			}
+
+		case VALUE_NUMBER_FLOAT:
+			return new BigDecimal(parser.getText());
+
+		case VALUE_TRUE:
+			return Boolean.TRUE;
+
+		case VALUE_FALSE:
+			return Boolean.FALSE;
+
+		case VALUE_NULL:
+			return JSONObject.NULL;
+
+		default:
+			throw new JsonParseException(
+				"Unexpected token: " + parser.getCurrentToken(),
+				parser.getCurrentLocation());
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain.campaign;
+
+import java.util.UUID;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The outcome of uploading one survey response in an upload that may
+ * partially fail.
+ *
+ * @author John Jenkins
+ */
+public class SurveyUploadStatus {
+	private static final String JSON_KEY_INDEX = "index";
+	private static final String JSON_KEY_STATUS = "status";
+	private static final String JSON_KEY_MESSAGE = "message";
+
+	/**
+	 * The possible outcomes.
+	 *
+	 * @author John Jenkins
+	 */
+	public static enum Status {
+		/**
+		 * The survey response was stored.
+		 */
+		STORED,
+		/**
+		 * A survey response with the same ID had already been stored, so
+		 * this one was not.
+		 */
+		DUPLICATE,
+		/**
+		 * The survey response was not stored and should be uploaded again.
+		 */
+		FAILED;
+
+		/**
+		 * Converts the status to a nice, human-readable format.
+		 */
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	private final int index;
+	private final UUID surveyResponseId;
+	private final Status status;
+	private final String message;
+
+	/**
+	 * Creates a status.
+	 *
+	 * @param index The survey response's position in the upload, starting at
+	 * 				0.
+	 *
+	 * @param surveyResponseId The survey response's unique identifier or
+	 * 						   null if it failed and its ID could not be
+	 * 						   read.
+	 *
+	 * @param status The outcome.
+	 *
+	 * @param message A message explaining a failure or null.
+	 */
+	public SurveyUploadStatus(
+			final int index,
+			final UUID surveyResponseId,
+			final Status status,
+			final String message) {
+
+		if(index < 0) {
+			throw new IllegalArgumentException("The index is negative.");
+		}
+		if(status == null) {
+			throw new IllegalArgumentException("The status is null.");
+		}
+
+		this.index = index;
+		this.surveyResponseId = surveyResponseId;
+		this.status = status;
+		this.message = message;
+	}
+
+	/**
+	 * Returns the survey response's position in the upload, starting at 0.
+	 *
+	 * @return The index.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the survey response's unique identifier.
+	 *
+	 * @return The survey response's ID or null if it failed and its ID
+	 * 		   could not be read.
+	 */
+	public UUID getSurveyResponseId() {
+		return surveyResponseId;
+	}
+
+	/**
+	 * Returns the outcome.
+	 *
+	 * @return The status.
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the message explaining a failure.
+	 *
+	 * @return The message or null if there is none.
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Creates a JSONObject with the survey response's index, its ID if it is
+	 * known, the outcome, and the message if there is one.
+	 *
+	 * @return A JSONObject representing this status.
+	 *
+	 * @throws JSONException There was an error building the JSONObject.
+	 */
+	public JSONObject toJson() throws JSONException {
+		JSONObject result = new JSONObject();
+
+		result.put(JSON_KEY_INDEX, index);
+		if(surveyResponseId != null) {
+			result.put(
+				SurveyResponse.JSON_KEY_SURVEY_RESPONSE_ID,
+				surveyResponseId.toString());
+		}
+		result.put(JSON_KEY_STATUS, status.toString());
+		if(message != null) {
+			result.put(JSON_KEY_MESSAGE, message);
+		}
+
+		return result;
+	}
+}
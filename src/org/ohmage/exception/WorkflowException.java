@@ -154,6 +154,16 @@ public abstract class WorkflowException extends Exception {
 		annotator = new Annotator(errorCode, errorText);
 	}
 	
+	/**
+	 * Returns the annotator with the error code and error text in this
+	 * exception, if any is present.
+	 * 
+	 * @return The annotator or null if no error code and text were given.
+	 */
+	public Annotator getAnnotator() {
+		return annotator;
+	}
+	
 	/**
 	 * Sets a request as failed based on the error code and error text in this
 	 * exception if any is present. If not, it will fail it with whatever the
@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.jee.servlet;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * <p>
+ * Limits how many requests of each kind may be processed at once. Every
+ * request holds a database connection for most of its life, so a burst of
+ * bulk reads would otherwise take every worker thread and every pooled
+ * connection, and cheap requests, e.g. authentication and uploads, would
+ * wait behind them until their clients gave up.
+ * </p>
+ *
+ * <p>
+ * Requests are sorted into {@link Lane lanes}, each with its own limit and
+ * its own bounded queue. A request that finds its lane full waits in the
+ * queue for a short while; if the queue is full too, or the wait runs out,
+ * the request is rejected at once so that the client may retry later rather
+ * than hold a worker thread. The limits of all of the lanes together should
+ * stay below the size of the database connection pool.
+ * </p>
+ *
+ * <p>
+ * This is built once by Spring when the server starts. If it has not been
+ * built, e.g. outside of the web application, every request is admitted.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public final class AdmissionControl {
+	private static final String JSON_KEY_LIMIT = "limit";
+	private static final String JSON_KEY_MAX_QUEUED = "max_queued";
+	private static final String JSON_KEY_ACTIVE = "active";
+	private static final String JSON_KEY_QUEUED = "queued";
+	private static final String JSON_KEY_ADMITTED = "admitted";
+	private static final String JSON_KEY_REJECTED = "rejected";
+
+	/**
+	 * The kinds of requests that are limited separately.
+	 *
+	 * @author John Jenkins
+	 */
+	public static enum Lane {
+		/**
+		 * Reads that may return a large amount of data and hold their
+		 * connection for a long time, e.g. survey response, Mobility, and
+		 * stream reads and image archives.
+		 */
+		BULK_READ,
+		/**
+		 * Uploads of survey responses and other data from clients.
+		 */
+		UPLOAD,
+		/**
+		 * Everything else, e.g. authentication and metadata reads.
+		 */
+		INTERACTIVE;
+
+		/**
+		 * Returns this lane's name as it appears in the statistics.
+		 *
+		 * @return The lane's name.
+		 */
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	/**
+	 * The limit, the queue, and the statistics of one lane.
+	 *
+	 * @author John Jenkins
+	 */
+	private static final class LaneState {
+		private final int limit;
+		private final int maxQueued;
+		private final Semaphore permits;
+		private final AtomicInteger queued = new AtomicInteger(0);
+		private final AtomicLong admitted = new AtomicLong(0);
+		private final AtomicLong rejected = new AtomicLong(0);
+
+		/**
+		 * Creates the state of a lane.
+		 *
+		 * @param limit The number of requests that may be processed at once.
+		 *
+		 * @param maxQueued The number of requests that may wait.
+		 */
+		private LaneState(final int limit, final int maxQueued) {
+			this.limit = limit;
+			this.maxQueued = maxQueued;
+
+			// Waiting requests are admitted in the order they arrived.
+			permits = new Semaphore(limit, true);
+		}
+	}
+
+	private static AdmissionControl instance;
+
+	private final Map<Lane, LaneState> lanes =
+		new EnumMap<Lane, LaneState>(Lane.class);
+	private final long maxWaitMillis;
+	private final int retryAfterSeconds;
+
+	/**
+	 * Default constructor. Privately instantiated via dependency injection
+	 * (reflection).
+	 *
+	 * @param bulkReadLimit The number of bulk reads that may be processed at
+	 * 						once.
+	 *
+	 * @param bulkReadMaxQueued The number of bulk reads that may wait.
+	 *
+	 * @param uploadLimit The number of uploads that may be processed at once.
+	 *
+	 * @param uploadMaxQueued The number of uploads that may wait.
+	 *
+	 * @param interactiveLimit The number of other requests that may be
+	 * 						   processed at once.
+	 *
+	 * @param interactiveMaxQueued The number of other requests that may
+	 * 							   wait.
+	 *
+	 * @param maxWaitMillis The number of milliseconds a request may wait
+	 * 						before it is rejected.
+	 *
+	 * @param retryAfterSeconds The number of seconds after which a rejected
+	 * 							client is told to retry.
+	 *
+	 * @throws IllegalStateException An instance of this class already exists.
+	 *
+	 * @throws IllegalArgumentException A limit or the retry delay is not
+	 * 									positive, or a queue size or the wait
+	 * 									is negative.
+	 */
+	private AdmissionControl(
+			final int bulkReadLimit,
+			final int bulkReadMaxQueued,
+			final int uploadLimit,
+			final int uploadMaxQueued,
+			final int interactiveLimit,
+			final int interactiveMaxQueued,
+			final long maxWaitMillis,
+			final int retryAfterSeconds) {
+
+		if(instance != null) {
+			throw new IllegalStateException(
+				"An instance of this class already exists.");
+		}
+
+		if((bulkReadLimit < 1) || (uploadLimit < 1) || (interactiveLimit < 1)) {
+			throw new IllegalArgumentException(
+				"The limits must be positive.");
+		}
+		if(
+			(bulkReadMaxQueued < 0) ||
+			(uploadMaxQueued < 0) ||
+			(interactiveMaxQueued < 0)) {
+
+			throw new IllegalArgumentException(
+				"The maximum numbers of queued requests must not be negative.");
+		}
+		if(maxWaitMillis < 0) {
+			throw new IllegalArgumentException(
+				"The maximum wait must not be negative.");
+		}
+		if(retryAfterSeconds < 1) {
+			throw new IllegalArgumentException(
+				"The retry delay must be positive.");
+		}
+
+		lanes.put(
+			Lane.BULK_READ,
+			new LaneState(bulkReadLimit, bulkReadMaxQueued));
+		lanes.put(
+			Lane.UPLOAD,
+			new LaneState(uploadLimit, uploadMaxQueued));
+		lanes.put(
+			Lane.INTERACTIVE,
+			new LaneState(interactiveLimit, interactiveMaxQueued));
+
+		this.maxWaitMillis = maxWaitMillis;
+		this.retryAfterSeconds = retryAfterSeconds;
+
+		instance = this;
+	}
+
+	/**
+	 * Returns the singleton instance of this class.
+	 *
+	 * @return The singleton instance of this class or null if it has not yet
+	 * 		   been built, e.g. outside of the web application.
+	 */
+	public static AdmissionControl instance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the number of seconds after which a rejected client should
+	 * retry.
+	 *
+	 * @return The number of seconds.
+	 */
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+	/**
+	 * Admits a request into its lane, waiting if the lane is full and its
+	 * queue is not. Every request that is admitted must be
+	 * {@link #release(Lane) released} when it has been processed.
+	 *
+	 * @param lane The request's lane.
+	 *
+	 * @return True if the request was admitted; false if it was rejected.
+	 */
+	public boolean admit(final Lane lane) {
+		LaneState state = lanes.get(lane);
+
+		boolean acquired = false;
+		try {
+			// Take a free slot without queueing if there is one. Unlike
+			// tryAcquire(), this does not jump ahead of the queue.
+			acquired = state.permits.tryAcquire(0, TimeUnit.MILLISECONDS);
+
+			// Otherwise, join the queue if there is room.
+			if(! acquired) {
+				if(state.queued.incrementAndGet() > state.maxQueued) {
+					state.queued.decrementAndGet();
+				}
+				else {
+					try {
+						acquired =
+							state
+								.permits
+								.tryAcquire(
+									maxWaitMillis,
+									TimeUnit.MILLISECONDS);
+					}
+					finally {
+						state.queued.decrementAndGet();
+					}
+				}
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		if(acquired) {
+			state.admitted.incrementAndGet();
+		}
+		else {
+			state.rejected.incrementAndGet();
+		}
+		return acquired;
+	}
+
+	/**
+	 * Releases a request's slot in its lane.
+	 *
+	 * @param lane The lane the request was admitted into.
+	 */
+	public void release(final Lane lane) {
+		lanes.get(lane).permits.release();
+	}
+
+	/**
+	 * Returns a snapshot of each lane's limits and statistics as JSON.
+	 *
+	 * @return The statistics as JSON.
+	 *
+	 * @throws JSONException There was an error building the JSON.
+	 */
+	public JSONObject toJson() throws JSONException {
+		JSONObject result = new JSONObject();
+		for(Map.Entry<Lane, LaneState> entry : lanes.entrySet()) {
+			LaneState state = entry.getValue();
+
+			JSONObject laneJson = new JSONObject();
+			laneJson.put(JSON_KEY_LIMIT, state.limit);
+			laneJson.put(JSON_KEY_MAX_QUEUED, state.maxQueued);
+			laneJson.put(
+				JSON_KEY_ACTIVE,
+				state.limit - state.permits.availablePermits());
+			laneJson.put(JSON_KEY_QUEUED, state.queued.get());
+			laneJson.put(JSON_KEY_ADMITTED, state.admitted.get());
+			laneJson.put(JSON_KEY_REJECTED, state.rejected.get());
+
+			result.put(entry.getKey().toString(), laneJson);
+		}
+		return result;
+	}
+}
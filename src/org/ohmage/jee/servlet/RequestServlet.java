@@ -31,6 +31,11 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.annotator.Annotator;
+import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.exception.InvalidRequestException;
 import org.ohmage.exception.ServiceException;
 import org.ohmage.jee.filter.Log4jNdcFilter;
@@ -38,6 +43,8 @@ import org.ohmage.request.InputKeys;
 import org.ohmage.request.Request;
 import org.ohmage.request.RequestBuilder;
 import org.ohmage.request.UserRequest;
+import org.ohmage.reporting.PerformanceMetrics;
+import org.ohmage.reporting.PerformanceMetrics.Phase;
 import org.ohmage.service.AuditServices;
 
 /**
@@ -98,6 +105,8 @@ public class RequestServlet extends HttpServlet {
 	
 	private static final String KEY_ATTRIBUTE = "_ohmage_request_";
 	
+	private static final String HEADER_RETRY_AFTER = "Retry-After";
+	
 	private static final long serialVersionUID = 1L;
 	
 	/**
@@ -383,13 +392,17 @@ public class RequestServlet extends HttpServlet {
 			RequestBuilder.getInstance().getApiImageRead().equals(httpRequest.getRequestURI()) ||
 			RequestBuilder.getInstance().getApiImageBatchZipRead().equals(httpRequest.getRequestURI()) ||
 			RequestBuilder.getInstance().getApiDocumentReadContents().equals(httpRequest.getRequestURI()) ||
+			RequestBuilder.getInstance().getApiExportRead().equals(httpRequest.getRequestURI()) ||
+			RequestBuilder.getInstance().getApiExportDownload().equals(httpRequest.getRequestURI()) ||
 			RequestBuilder.getInstance().getApiVisualization().equals(httpRequest.getRequestURI()) |
 			RequestBuilder.getInstance().getApiUserActivate().equals(httpRequest.getRequestURI()) ||
 			RequestBuilder.getInstance().getApiRegistrationRead().equals(httpRequest.getRequestURI()) ||
 			RequestBuilder.getInstance().getApiStreamRead().equals(httpRequest.getRequestURI()) ||
+			RequestBuilder.getInstance().getApiStreamChangesRead().equals(httpRequest.getRequestURI()) ||
 			RequestBuilder.getInstance().getApiUserWhoAmI().equals(httpRequest.getRequestURI()) ||
 			RequestBuilder.getInstance().getApiOmhRead().equals(httpRequest.getRequestURI()) ||
 			RequestBuilder.getInstance().getApiSurveyResponseRead().equals(httpRequest.getRequestURI()) ||
+			RequestBuilder.getInstance().getApiSurveyResponseChangesRead().equals(httpRequest.getRequestURI()) ||
 			RequestBuilder.getInstance().getApiVideoRead().equals(httpRequest.getRequestURI())
 			
 		) {
@@ -443,14 +456,83 @@ public class RequestServlet extends HttpServlet {
 			final HttpServletRequest httpRequest, 
 			final HttpServletResponse httpResponse) {
 		
+		PerformanceMetrics metrics = PerformanceMetrics.instance();
+		String uri = httpRequest.getRequestURI();
+		if((metrics != null) && (! RequestBuilder.getInstance().knownUri(uri))) {
+			uri = PerformanceMetrics.UNKNOWN_URI;
+		}
+		
+		// Wait for a slot in the request's lane or reject it if its lane is
+		// saturated.
+		AdmissionControl admission = AdmissionControl.instance();
+		AdmissionControl.Lane lane = 
+			RequestBuilder
+				.getInstance()
+				.getAdmissionLane(httpRequest.getRequestURI());
+		if(admission != null) {
+			long queued = System.nanoTime();
+			boolean admitted = admission.admit(lane);
+			if(metrics != null) {
+				metrics.recordRequest(
+					uri, 
+					Phase.QUEUE, 
+					System.nanoTime() - queued);
+			}
+			
+			if(! admitted) {
+				LOGGER.warn(
+					"The " + lane + " lane is saturated. Rejecting the request.");
+				rejectRequest(httpResponse, admission.getRetryAfterSeconds());
+				return;
+			}
+		}
+		
 		try {
+			processAdmittedRequest(httpRequest, httpResponse, metrics, uri);
+		}
+		finally {
+			if(admission != null) {
+				admission.release(lane);
+			}
+		}
+	}
+	
+	/**
+	 * Builds, services, and responds to a request that has been admitted.
+	 * 
+	 * @param httpRequest The HTTP request.
+	 * 
+	 * @param httpResponse The HTTP response.
+	 * 
+	 * @param metrics The performance metrics or null if they are not being
+	 * 				  collected.
+	 * 
+	 * @param uri The URI under which the request's phases are recorded.
+	 */
+	private void processAdmittedRequest(
+			final HttpServletRequest httpRequest, 
+			final HttpServletResponse httpResponse,
+			final PerformanceMetrics metrics,
+			final String uri) {
+		
+		try {
+			long start = System.nanoTime();
 			Request request = RequestBuilder.getInstance().buildRequest(httpRequest);
+			long built = System.nanoTime();
 	
 			if(! request.isFailed()) {
 				request.service();
 			}
+			long serviced = System.nanoTime();
 			
 			request.respond(httpRequest, httpResponse);
+			long responded = System.nanoTime();
+			
+			if(metrics != null) {
+				metrics.recordRequest(uri, Phase.BUILD, built - start);
+				metrics.recordRequest(uri, Phase.SERVICE, serviced - built);
+				metrics.recordRequest(uri, Phase.RESPOND, responded - serviced);
+			}
 			
 			httpRequest.setAttribute(KEY_ATTRIBUTE, request);
 		}
@@ -479,4 +561,54 @@ public class RequestServlet extends HttpServlet {
 			}
 		}
 	}
+	
+	/**
+	 * Responds with "503 Service Unavailable" and a failure message, and 
+	 * tells the client when to retry.
+	 * 
+	 * @param httpResponse The HTTP response.
+	 * 
+	 * @param retryAfterSeconds The number of seconds after which the client
+	 * 							should retry.
+	 */
+	private void rejectRequest(
+			final HttpServletResponse httpResponse,
+			final int retryAfterSeconds) {
+		
+		httpResponse.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		httpResponse.setHeader(
+			HEADER_RETRY_AFTER, 
+			Integer.toString(retryAfterSeconds));
+		httpResponse.setContentType("application/json");
+		
+		String responseText;
+		try {
+			Annotator annotator = 
+				new Annotator(
+					ErrorCode.SYSTEM_SERVER_BUSY, 
+					"The server is busy. Please try again later.");
+			
+			JSONArray errors = new JSONArray();
+			errors.put(annotator.toJsonObject());
+			
+			JSONObject response = new JSONObject();
+			response.put(Request.JSON_KEY_RESULT, Request.RESULT_FAILURE);
+			response.put(Request.JSON_KEY_ERRORS, errors);
+			responseText = response.toString();
+		}
+		catch(JSONException e) {
+			LOGGER.error("Error building the rejection.", e);
+			responseText = Request.RESPONSE_ERROR_JSON_TEXT;
+		}
+		
+		try {
+			Writer writer = httpResponse.getWriter();
+			writer.write(responseText);
+			writer.flush();
+			writer.close();
+		}
+		catch(IOException e) {
+			LOGGER.error("Could not respond with the rejection.", e);
+		}
+	}
 }
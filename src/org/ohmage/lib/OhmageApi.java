@@ -19,6 +19,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
@@ -30,6 +31,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
@@ -40,11 +47,15 @@ import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.StringBody;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.ContentEncodingHttpClient;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
 import org.joda.time.DateTime;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -86,13 +97,30 @@ public class OhmageApi {
 	
 	private static final int CHUNK_SIZE = 4096;
 	
+	/**
+	 * The maximum number of pooled connections that will be kept open to the
+	 * server. This also bounds the number of concurrent batch uploads.
+	 */
+	public static final int MAX_CONNECTIONS = 16;
+	
 	private static final String CONTENT_TYPE_HEADER = "Content-Type";
 	private static final String CONTENT_TYPE_HTML = "text/html";
+	
+	private static final String CONTENT_ENCODING_GZIP = "gzip";
 		
 	private final URL url;
 	
+	private final ThreadSafeClientConnManager connectionManager;
+	private final HttpClient httpClient;
+	
+	private volatile boolean compressRequests = false;
+	
 	/**
-	 * Creates a new OhmageAPI object that points to a single server.
+	 * Creates a new OhmageAPI object that points to a single server. All of
+	 * the calls made through this object share a pool of keep-alive 
+	 * connections to the server and ask for gzip'd responses. When the object
+	 * is no longer needed, {@link #shutdown()} should be called to close the
+	 * connections.
 	 * 
 	 * @param serverAddress The servers address. This includes only the domain
 	 * 						section of the URL such as "dev.andwellness.org" or
@@ -141,6 +169,36 @@ public class OhmageApi {
 		catch(MalformedURLException e) {
 			throw new IllegalArgumentException("The server's address is invalid.");
 		}
+		
+		// Create the connection pool that will be shared by all calls.
+		connectionManager = 
+			new ThreadSafeClientConnManager(
+				SchemeRegistryFactory.createDefault());
+		connectionManager.setMaxTotal(MAX_CONNECTIONS);
+		connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+		
+		// This client adds the "Accept-Encoding" header to every request and
+		// transparently decompresses the responses.
+		httpClient = new ContentEncodingHttpClient(connectionManager, null);
+	}
+	
+	/**
+	 * Sets whether or not the bodies of "application/x-www-form-urlencoded"
+	 * POST requests should be gzip'd before being sent to the server. This is
+	 * off by default. "multipart/form-data" requests are never compressed.
+	 * 
+	 * @param compressRequests Whether or not to compress the requests.
+	 */
+	public void setRequestCompression(final boolean compressRequests) {
+		this.compressRequests = compressRequests;
+	}
+	
+	/**
+	 * Closes all of the pooled connections to the server. This object should
+	 * not be used after this has been called.
+	 */
+	public void shutdown() {
+		connectionManager.shutdown();
 	}
 	
 	/**************************************************************************
@@ -1137,16 +1195,45 @@ public class OhmageApi {
 			final String client, final String documentId) 
 			throws ApiException, RequestErrorException {
 		
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		getDocumentContents(authenticationToken, client, documentId, result);
+		return result.toByteArray();
+	}
+	
+	/**
+	 * Retrieves the contents of the document and writes them to the given
+	 * stream as they are received, so the document is never held in memory.
+	 * The stream is not closed.
+	 * 
+	 * @param authenticationToken The user's authentication token.
+	 * 
+	 * @param client The client value.
+	 * 
+	 * @param documentId The document's unique identifier.
+	 * 
+	 * @param destination The stream to which the contents will be written.
+	 * 
+	 * @throws ApiException Thrown if there is a library error or if the 
+	 * 						contents could not be written to the stream.
+	 * 
+	 * @throws RequestErrorException Thrown if the server returns an error.
+	 */
+	public void getDocumentContents(final String authenticationToken,
+			final String client, final String documentId,
+			final OutputStream destination)
+			throws ApiException, RequestErrorException {
+		
 		Map<String, Object> parameters = new HashMap<String, Object>();
 		parameters.put(InputKeys.AUTH_TOKEN, authenticationToken);
 		parameters.put(InputKeys.CLIENT, client);
 		parameters.put(InputKeys.DOCUMENT_ID, documentId);
 		
 		try {
-			return makeRequest(
+			makeRequest(
 					new URL(url.toString() + RequestBuilder.getInstance().getApiDocumentReadContents()), 
 					parameters, 
-					false);
+					false,
+					destination);
 		}
 		catch(MalformedURLException e) {
 			throw new ApiException("The URL was incorrectly created.", e);
@@ -1385,6 +1472,63 @@ public class OhmageApi {
 		}
 	}
 	
+	/**
+	 * Uploads a collection of Mobility points as a series of smaller uploads,
+	 * several of which are made at the same time. Each batch is stored by the
+	 * server independently, so, if one fails, some of the other batches may
+	 * have already been stored. The server ignores points that it has already
+	 * stored, so it is safe to retry the whole upload.
+	 * 
+	 * @param username The username of the user who is attempting the upload.
+	 * 
+	 * @param hashedPassword The user's hashed password.
+	 * 
+	 * @param client The client value.
+	 * 
+	 * @param points The collection of points to be uploaded.
+	 * 
+	 * @param batchSize The maximum number of points in each upload.
+	 * 
+	 * @param maxInFlight The maximum number of uploads that may be made at 
+	 * 					  the same time. This is limited to 
+	 * 					  {@value #MAX_CONNECTIONS}.
+	 * 
+	 * @throws ApiException Thrown if there is a library error.
+	 * 
+	 * @throws RequestErrorException Thrown if the server returns an error for
+	 * 								 any of the batches.
+	 * 
+	 * @throws IllegalArgumentException Thrown if the batch size or the number
+	 * 									of uploads in flight is less than 1.
+	 */
+	public void uploadMobilityPoints(final String username, 
+			final String hashedPassword, final String client, 
+			final Collection<MobilityPoint> points, final int batchSize,
+			final int maxInFlight) 
+			throws ApiException, RequestErrorException {
+		
+		uploadInBatches(
+			points,
+			batchSize,
+			maxInFlight,
+			new BatchUploader<MobilityPoint>() {
+				/**
+				 * Uploads a single batch.
+				 */
+				@Override
+				public void upload(
+						final Collection<MobilityPoint> batch)
+						throws ApiException, RequestErrorException {
+					
+					uploadMobilityPoints(
+						username, 
+						hashedPassword, 
+						client, 
+						batch);
+				}
+			});
+	}
+	
 	/**
 	 * Reads Mobility points.
 	 * 
@@ -1479,7 +1623,99 @@ public class OhmageApi {
 		
 		return results;
 	}
-	
+
+	/**************************************************************************
+	 * Observer Requests
+	 *************************************************************************/
+
+	/**
+	 * Creates a new observer.
+	 *
+	 * @param authenticationToken The user's authentication token.
+	 *
+	 * @param client The client value.
+	 *
+	 * @param observerDefinition The observer's XML definition.
+	 *
+	 * @throws ApiException Thrown if there is a library error.
+	 *
+	 * @throws RequestErrorException Thrown if the server returns an error.
+	 */
+	public void createObserver(final String authenticationToken,
+			final String client, final String observerDefinition)
+			throws ApiException, RequestErrorException {
+
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put(InputKeys.AUTH_TOKEN, authenticationToken);
+		parameters.put(InputKeys.CLIENT, client);
+		parameters.put(InputKeys.OBSERVER_DEFINITION, observerDefinition);
+
+		try {
+			makeRequest(
+					new URL(url.toString() + RequestBuilder.getInstance().getApiObserverCreate()),
+					parameters,
+					true
+				);
+		}
+		catch(MalformedURLException e) {
+			throw new ApiException("The URL was incorrectly created.", e);
+		}
+		catch(IllegalArgumentException e) {
+			throw new ApiException("The response was not proper JSON.", e);
+		}
+	}
+
+	/**
+	 * Uploads stream data for an observer.
+	 *
+	 * @param username The username of the user who is uploading the data.
+	 *
+	 * @param hashedPassword The user's hashed password.
+	 *
+	 * @param client The client value.
+	 *
+	 * @param observerId The observer's unique identifier.
+	 *
+	 * @param observerVersion The version of the observer to which the data
+	 * 						  belongs.
+	 *
+	 * @param data The data as a JSON array of objects, each of which has a
+	 * 			   "stream_id", a "stream_version", a "data", and,
+	 * 			   optionally, a "metadata" key.
+	 *
+	 * @throws ApiException Thrown if there is a library error.
+	 *
+	 * @throws RequestErrorException Thrown if the server returns an error.
+	 */
+	public void uploadStreamData(final String username,
+			final String hashedPassword, final String client,
+			final String observerId, final long observerVersion,
+			final String data)
+			throws ApiException, RequestErrorException {
+
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put(InputKeys.USER, username);
+		parameters.put(InputKeys.PASSWORD, hashedPassword);
+		parameters.put(InputKeys.CLIENT, client);
+		parameters.put(InputKeys.OBSERVER_ID, observerId);
+		parameters.put(InputKeys.OBSERVER_VERSION, observerVersion);
+		parameters.put(InputKeys.DATA, data);
+
+		try {
+			makeRequest(
+					new URL(url.toString() + RequestBuilder.getInstance().getApiStreamUpload()),
+					parameters,
+					false
+				);
+		}
+		catch(MalformedURLException e) {
+			throw new ApiException("The URL was incorrectly created.", e);
+		}
+		catch(IllegalArgumentException e) {
+			throw new ApiException("The response was not proper JSON.", e);
+		}
+	}
+
 	/**************************************************************************
 	 * Survey Response Requests
 	 *************************************************************************/
@@ -1564,7 +1800,78 @@ public class OhmageApi {
 		catch(IllegalArgumentException e) {
 			throw new ApiException("The response was not proper JSON.", e);
 		}
-	}	
+	}
+	
+	/**
+	 * Uploads a collection of survey responses as a series of smaller 
+	 * uploads, several of which are made at the same time. Each batch is 
+	 * stored by the server independently, so, if one fails, some of the other
+	 * batches may have already been stored. The server ignores survey 
+	 * responses that it has already stored, so it is safe to retry the whole
+	 * upload.
+	 * 
+	 * @param username The username of the user for whom this survey response
+	 * 				   belongs.
+	 * 
+	 * @param hashedPassword The hashsed password of the user that is creating
+	 * 						 this point.
+	 * 
+	 * @param client The client value.
+	 * 
+	 * @param campaignId The unique identifier for the campaign for whom these
+	 * 					 survey responses belong.
+	 * 
+	 * @param campaignCreationTimestamp The campaign's creation timestamp to
+	 * 									ensure we are not uploading out-dated
+	 * 									data.
+	 * 
+	 * @param surveyResponses The collection of survey responses to be 
+	 * 						  uploaded.
+	 * 
+	 * @param batchSize The maximum number of survey responses in each upload.
+	 * 
+	 * @param maxInFlight The maximum number of uploads that may be made at 
+	 * 					  the same time. This is limited to 
+	 * 					  {@value #MAX_CONNECTIONS}.
+	 * 
+	 * @throws ApiException Thrown if there is a library error.
+	 * 
+	 * @throws RequestErrorException Thrown if the server returns an error for
+	 * 								 any of the batches.
+	 * 
+	 * @throws IllegalArgumentException Thrown if the batch size or the number
+	 * 									of uploads in flight is less than 1.
+	 */
+	public void uploadSurveyResponses(final String username, 
+			final String hashedPassword, final String client,
+			final String campaignId, final DateTime campaignCreationTimestamp,
+			final Collection<SurveyResponse> surveyResponses,
+			final int batchSize, final int maxInFlight)
+			throws ApiException, RequestErrorException {
+		
+		uploadInBatches(
+			surveyResponses,
+			batchSize,
+			maxInFlight,
+			new BatchUploader<SurveyResponse>() {
+				/**
+				 * Uploads a single batch.
+				 */
+				@Override
+				public void upload(
+						final Collection<SurveyResponse> batch)
+						throws ApiException, RequestErrorException {
+					
+					uploadSurveyResponses(
+						username, 
+						hashedPassword, 
+						client, 
+						campaignId, 
+						campaignCreationTimestamp, 
+						batch);
+				}
+			});
+	}
 	
 	/**
 	 * Makes a request to the server for the survey responses based on the 
@@ -1623,6 +1930,8 @@ public class OhmageApi {
 	 * @throws ApiException Thrown if there is a library error.
 	 * 
 	 * @throws RequestErrorException Thrown if the server returns an error.
+	 * 
+	 * @see #getSurveyResponsesCsv(String, String, String, String, String, Collection, Collection, Collection, Collection, DateTime, DateTime, org.ohmage.domain.campaign.SurveyResponse.PrivacyState, Boolean, Boolean, Boolean, OutputStream)
 	 */
 	public byte[] getSurveyResponsesCsv(
 			final String authenticationToken, final String username, 
@@ -1637,6 +1946,43 @@ public class OhmageApi {
 			final Boolean returnId)
 			throws ApiException, RequestErrorException {
 		
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		getSurveyResponsesCsv(
+				authenticationToken, username, hashedPassword, client, 
+				campaignId, usernames, columnList, surveyIdList, 
+				promptIdList, startDate, endDate, privacyState, collapse,
+				suppressMetadata, returnId, result);
+		return result.toByteArray();
+	}
+	
+	/**
+	 * Makes a request to the server for the survey responses based on the 
+	 * given parameters and writes the CSV file to the given stream as it is
+	 * received. This should be preferred for large exports as the file is 
+	 * never held in memory. The stream is not closed.
+	 * 
+	 * @param destination The stream to which the CSV file will be written.
+	 * 
+	 * @throws ApiException Thrown if there is a library error or if the file
+	 * 						could not be written to the stream.
+	 * 
+	 * @throws RequestErrorException Thrown if the server returns an error.
+	 * 
+	 * @see #getSurveyResponsesCsv(String, String, String, String, String, Collection, Collection, Collection, Collection, DateTime, DateTime, org.ohmage.domain.campaign.SurveyResponse.PrivacyState, Boolean, Boolean, Boolean)
+	 */
+	public void getSurveyResponsesCsv(
+			final String authenticationToken, final String username, 
+			final String hashedPassword, final String client,
+			final String campaignId, final Collection<String> usernames,
+			final Collection<SurveyResponse.ColumnKey> columnList,
+			final Collection<String> surveyIdList, 
+			final Collection<String> promptIdList,
+			final DateTime startDate, final DateTime endDate, 
+			final SurveyResponse.PrivacyState privacyState,
+			final Boolean collapse, final Boolean suppressMetadata,
+			final Boolean returnId, final OutputStream destination)
+			throws ApiException, RequestErrorException {
+		
 		Map<String, Object> parameters = new HashMap<String, Object>();
 		parameters.put(InputKeys.USER, username);
 		parameters.put(InputKeys.PASSWORD, hashedPassword);
@@ -1690,12 +2036,12 @@ public class OhmageApi {
 			parameters.put(InputKeys.PRIVACY_STATE, privacyState.toString());
 		}
 		
-		byte[] response;
 		try {
-			response = makeRequest(
+			makeRequest(
 					new URL(url.toString() + RequestBuilder.getInstance().getApiSurveyResponseRead()), 
 					parameters, 
-					false
+					false,
+					destination
 				);
 		}
 		catch(MalformedURLException e) {
@@ -1704,8 +2050,6 @@ public class OhmageApi {
 		catch(IllegalArgumentException e) {
 			throw new ApiException("The response was not proper JSON.", e);
 		}
-		
-		return response;
 	}
 	
 	/**
@@ -2605,8 +2949,40 @@ public class OhmageApi {
 			final Map<String, Object> postParameters, final boolean isForm) 
 		throws ApiException, RequestErrorException {
 		
-		// Create a default client to use to connect with.
-		HttpClient httpClient = new DefaultHttpClient();
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		makeRequest(url, postParameters, isForm, result);
+		return result.toByteArray();
+	}
+	
+	/**
+	 * Makes a call to the URL and writes the response to the given stream as
+	 * it is received. See {@link #makeRequest(URL, Map, boolean)} for how the
+	 * request is built.<br />
+	 * <br />
+	 * If the response has a Content-Type that suggests that it is JSON, it is
+	 * read fully so that it may be checked for failure before it is written
+	 * to the stream. Otherwise, it is copied to the stream in chunks. The 
+	 * connection is always returned to the pool before this returns.
+	 * 
+	 * @param url The URL which dictates the location to which the request
+	 * 			  should be made.
+	 * 
+	 * @param postParameters A map of keys to values for a POST call or null 
+	 * 						 for a GET call.
+	 * 
+	 * @param isForm Whether a POST should be a "multipart/form-data" request.
+	 * 
+	 * @param destination The stream to which the response will be written.
+	 * 					  It is not closed.
+	 * 
+	 * @throws ApiException Thrown if the URL is not an HTTP URL, if there was
+	 * 						an error communicating with the server, or if the
+	 * 						response could not be written to the stream.
+	 */
+	private void makeRequest(final URL url, 
+			final Map<String, Object> postParameters, final boolean isForm,
+			final OutputStream destination) 
+		throws ApiException, RequestErrorException {
 		
 		// Build the request based on the parameters.
 		HttpRequestBase request;
@@ -2671,6 +3047,12 @@ public class OhmageApi {
 					catch(UnsupportedEncodingException e) {
 						throw new ApiException("The parameter list could not be properly encoded.", e);
 					}
+					
+					// The server will gunzip these parameters if the 
+					// "Content-Encoding" is "gzip".
+					if(compressRequests) {
+						entity = compress(entity);
+					}
 				}
 				postRequest.setEntity(entity);
 			}
@@ -2691,60 +3073,298 @@ public class OhmageApi {
 			throw new ApiException("The connection was aborted.", e);
 		}
 		
-		// Check the status code.
-		int statusCode = httpResponse.getStatusLine().getStatusCode();
-		// If it is a redirect, get the new location and remake the request.
-		if((statusCode == 301) || (statusCode == 302)) {
-			String newLocation = httpResponse.getFirstHeader("Location").getValue();
+		// If anything goes wrong before the response has been read, the
+		// connection is aborted instead of being returned to the pool.
+		HttpEntity responseEntity = httpResponse.getEntity();
+		boolean responseRead = false;
+		try {
+			// Check the status code.
+			int statusCode = httpResponse.getStatusLine().getStatusCode();
+			// If it is a redirect, get the new location and remake the 
+			// request.
+			if((statusCode == 301) || (statusCode == 302)) {
+				String newLocation = httpResponse.getFirstHeader("Location").getValue();
+				
+				// Release this connection before making the new request.
+				consume(responseEntity);
+				responseRead = true;
+				
+				try {
+					makeRequest(new URL(newLocation), postParameters, isForm, destination);
+					return;
+				}
+				catch(MalformedURLException e) {
+					throw new ApiException("The server returned a bad redirect address: " + newLocation, e);
+				}
+			}
+			// Otherwise, if it is is a non-success code, fail the request.
+			else if(statusCode != 200) {
+				throw new ApiException("There was an error connecting to the server: " + statusCode);
+			}
 			
+			// Retrieve the server's response as an InputStream.
+			InputStream content;
 			try {
-				return makeRequest(new URL(newLocation), postParameters, isForm);
+				content = responseEntity.getContent();
 			}
-			catch(MalformedURLException e) {
-				throw new ApiException("The server returned a bad redirect address: " + newLocation, e);
+			catch(IOException e) {
+				throw new ApiException("There was an error connecting to the response from the server.", e);
 			}
+			
+			// Check the Content-Type to see if it suggests that this is an 
+			// ohmage JSON result. If so, read it fully and check if it 
+			// failed and, if so, throw an exception.
+			Header contentType = httpResponse.getFirstHeader(CONTENT_TYPE_HEADER);
+			if((contentType != null) && 
+				CONTENT_TYPE_HTML.equals(contentType.getValue())) {
+				
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				copy(content, baos);
+				byte[] result = baos.toByteArray();
+				
+				checkFailure(result);
+				
+				try {
+					destination.write(result);
+				}
+				catch(IOException e) {
+					throw new ApiException("There was an error writing the response.", e);
+				}
+			}
+			// Otherwise, pass it through as it arrives. This is read as bytes
+			// instead of a string to allow the function to be more open to 
+			// different types of return values such as text, images, etc.
+			else {
+				copy(content, destination);
+			}
+			
+			consume(responseEntity);
+			responseRead = true;
 		}
-		// Otherwise, if it is is a non-success code, fail the request.
-		else if(statusCode != 200) {
-			throw new ApiException("There was an error connecting to the server: " + statusCode);
+		finally {
+			if(! responseRead) {
+				request.abort();
+			}
 		}
+	}
+	
+	/**
+	 * Copies a response from the server to a stream.
+	 * 
+	 * @param content The response from the server.
+	 * 
+	 * @param destination The stream to which the response should be written.
+	 * 
+	 * @throws ApiException Thrown if there was an error reading from the 
+	 * 						server or writing to the stream.
+	 */
+	private static void copy(
+			final InputStream content, 
+			final OutputStream destination) 
+			throws ApiException {
+		
+		byte[] chunk = new byte[CHUNK_SIZE];
+		int amountRead;
+		while(true) {
+			try {
+				amountRead = content.read(chunk);
+			}
+			catch(IOException e) {
+				throw new ApiException("There was an error reading from the server.", e);
+			}
+			
+			if(amountRead == -1) {
+				break;
+			}
+			
+			try {
+				destination.write(chunk, 0, amountRead);
+			}
+			catch(IOException e) {
+				throw new ApiException("There was an error writing the response.", e);
+			}
+		}
+	}
+	
+	/**
+	 * Ensures that a response has been fully read so that its connection may
+	 * be reused.
+	 * 
+	 * @param entity The response's entity, which may be null.
+	 * 
+	 * @throws ApiException Thrown if the remainder of the response could not
+	 * 						be read.
+	 */
+	private static void consume(
+			final HttpEntity entity) 
+			throws ApiException {
 		
-		// Retrieve the server's response as an InputStream.
-		InputStream content;
 		try {
-			content = httpResponse.getEntity().getContent();
+			EntityUtils.consume(entity);
 		}
 		catch(IOException e) {
-			throw new ApiException("There was an error connecting to the response from the server.", e);
+			throw new ApiException("There was an error reading from the server.", e);
 		}
+	}
+	
+	/**
+	 * Gzips a request's body.
+	 * 
+	 * @param entity The uncompressed body.
+	 * 
+	 * @return A new body with the same Content-Type whose Content-Encoding is
+	 * 		   "gzip".
+	 * 
+	 * @throws ApiException Thrown if the body could not be compressed.
+	 */
+	private static HttpEntity compress(
+			final HttpEntity entity) 
+			throws ApiException {
 		
-		// Read the results as a byte array. This is used instead of a string 
-		// to allow the function to me more open to different types of return 
-		// values such as text, images, etc.
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		byte[] chunk = new byte[CHUNK_SIZE];
-		int amountRead;
 		try {
-			while((amountRead = content.read(chunk)) != -1) {
-				baos.write(chunk, 0, amountRead);
-			}
+			GZIPOutputStream gzipOutputStream = new GZIPOutputStream(baos);
+			entity.writeTo(gzipOutputStream);
+			gzipOutputStream.close();
 		}
 		catch(IOException e) {
-			throw new ApiException("There was an error reading from the server.", e);
+			throw new ApiException("The request could not be compressed.", e);
+		}
+		
+		ByteArrayEntity result = new ByteArrayEntity(baos.toByteArray());
+		result.setContentType(entity.getContentType());
+		result.setContentEncoding(CONTENT_ENCODING_GZIP);
+		return result;
+	}
+	
+	/**
+	 * Uploads one batch of a larger upload.
+	 *
+	 * @param <T> The type of the items being uploaded.
+	 */
+	private static interface BatchUploader<T> {
+		/**
+		 * Uploads the batch.
+		 * 
+		 * @param batch The items in the batch.
+		 * 
+		 * @throws ApiException Thrown if there is a library error.
+		 * 
+		 * @throws RequestErrorException Thrown if the server returns an 
+		 * 								 error.
+		 */
+		void upload(
+				Collection<T> batch)
+				throws ApiException, RequestErrorException;
+	}
+	
+	/**
+	 * Splits a collection into batches and uploads them with a bounded number
+	 * of uploads in flight at once. If any batch fails, the batches that have
+	 * not yet started are cancelled and the first failure, in batch order, is
+	 * thrown.
+	 * 
+	 * @param items The items to upload. Null items are left to the uploader.
+	 * 
+	 * @param batchSize The maximum number of items in each batch.
+	 * 
+	 * @param maxInFlight The maximum number of batches being uploaded at the
+	 * 					  same time. This is limited to 
+	 * 					  {@value #MAX_CONNECTIONS}.
+	 * 
+	 * @param uploader Uploads each batch.
+	 * 
+	 * @throws ApiException Thrown if there is a library error.
+	 * 
+	 * @throws RequestErrorException Thrown if the server returns an error.
+	 * 
+	 * @throws IllegalArgumentException Thrown if the batch size or the number
+	 * 									of uploads in flight is less than 1.
+	 */
+	private <T> void uploadInBatches(
+			final Collection<T> items,
+			final int batchSize,
+			final int maxInFlight,
+			final BatchUploader<T> uploader)
+			throws ApiException, RequestErrorException {
+		
+		if(batchSize < 1) {
+			throw new IllegalArgumentException("The batch size must be positive.");
+		}
+		if(maxInFlight < 1) {
+			throw new IllegalArgumentException("The number of uploads in flight must be positive.");
 		}
-		byte[] result = baos.toByteArray();
 		
-		// Finally, check the Content-Type to see if it suggests that this is
-		// an ohmage JSON result. If so, check if it failed and, if so, throw
-		// an exception.
-		Header[] headers = httpResponse.getHeaders(CONTENT_TYPE_HEADER);
-		String contentType = headers[0].getValue();
-		if(CONTENT_TYPE_HTML.equals(contentType)) {
-			checkFailure(result);
+		// Split the items into batches.
+		List<List<T>> batches = new ArrayList<List<T>>();
+		List<T> batch = null;
+		for(T item : items) {
+			if((batch == null) || (batch.size() == batchSize)) {
+				batch = new ArrayList<T>(batchSize);
+				batches.add(batch);
+			}
+			batch.add(item);
 		}
 		
-		// Return the byte array.
-		return result;
+		// A single batch doesn't need any other threads.
+		if(batches.size() <= 1) {
+			if(batches.size() == 1) {
+				uploader.upload(batches.get(0));
+			}
+			return;
+		}
+		
+		ExecutorService executor = 
+			Executors.newFixedThreadPool(
+				Math.min(
+					Math.min(maxInFlight, MAX_CONNECTIONS), 
+					batches.size()));
+		try {
+			List<Future<Void>> futures = 
+				new ArrayList<Future<Void>>(batches.size());
+			for(final List<T> currBatch : batches) {
+				futures.add(
+					executor.submit(
+						new Callable<Void>() {
+							/**
+							 * Uploads the batch.
+							 */
+							@Override
+							public Void call() 
+									throws ApiException, 
+										RequestErrorException {
+								
+								uploader.upload(currBatch);
+								return null;
+							}
+						}));
+			}
+			
+			for(Future<Void> future : futures) {
+				try {
+					future.get();
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ApiException("The upload was interrupted.", e);
+				}
+				catch(ExecutionException e) {
+					Throwable cause = e.getCause();
+					if(cause instanceof ApiException) {
+						throw (ApiException) cause;
+					}
+					else if(cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					else {
+						throw new ApiException("One of the batches could not be uploaded.", cause);
+					}
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
 	}
 
 	/**
@@ -15,11 +15,14 @@
  ******************************************************************************/
 package org.ohmage.query;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTimeZone;
 import org.ohmage.domain.Annotation;
+import org.ohmage.domain.PromptResponseAnnotation;
 import org.ohmage.exception.DataAccessException;
 
 /**
@@ -58,6 +61,19 @@ public interface IAnnotationQueries {
 	 */
 	List<Annotation> readSurveyResponseAnnotations(UUID surveyId) throws DataAccessException;
 	
+	/**
+	 * Retrieves the annotations for many survey responses at once.
+	 * 
+	 * @param surveyResponseIds the survey response ids
+	 * @return a map of each survey response id to the annotations bound to
+	 * it, in the order they were created; every id is a key, and ids with no
+	 * annotations map to an empty list
+	 * @throws DataAccessException if an error occurs
+	 */
+	Map<UUID, List<Annotation>> readSurveyResponseAnnotations(
+		Collection<UUID> surveyResponseIds
+	) throws DataAccessException;
+	
 	/**
 	 * Creates a prompt response annotation.
 	 * 
@@ -94,6 +110,20 @@ public interface IAnnotationQueries {
 		Integer repeatableSetIteration
 	) throws DataAccessException;
 	
+	/**
+	 * Retrieves the annotations on all of the prompt responses of many survey
+	 * responses at once.
+	 * 
+	 * @param surveyResponseIds the survey response ids
+	 * @return a map of each survey response id to the annotations bound to
+	 * its prompt responses, in the order they were created; every id is a
+	 * key, and ids with no annotations map to an empty list
+	 * @throws DataAccessException if an error occurs
+	 */
+	Map<UUID, List<PromptResponseAnnotation>> readPromptResponseAnnotations(
+		Collection<UUID> surveyResponseIds
+	) throws DataAccessException;
+	
 	/**
 	 * @param username      The user who ostensibly owns the annotation.  
 	 * @param annotationId  The id of the annotation.
@@ -15,7 +15,9 @@
  ******************************************************************************/
 package org.ohmage.query;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.ohmage.domain.Clazz;
 import org.ohmage.domain.campaign.Campaign;
@@ -53,6 +55,19 @@ public interface ICampaignClassQueries {
 	List<String> getClassesAssociatedWithCampaign(String campaignId)
 			throws DataAccessException;
 
+	/**
+	 * Retrieves the unique identifiers for all of the classes that are
+	 * associated with each of a collection of campaigns in a single query.
+	 * 
+	 * @param campaignIds The campaigns' unique identifiers.
+	 * 
+	 * @return A map of campaign IDs to the IDs of their classes. Every 
+	 * 		   campaign ID is in the map, even if it has no classes.
+	 */
+	Map<String, List<String>> getClassesAssociatedWithCampaigns(
+			Collection<String> campaignIds)
+			throws DataAccessException;
+
 	/**
 	 * Retrieves the list of default campaign roles for a user in a class with
 	 * the specified class role.
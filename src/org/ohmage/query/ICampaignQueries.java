@@ -349,6 +349,12 @@ public interface ICampaignQueries {
 	 * @param role Limits the results to only those campaigns where the 
 	 * 			   requesting user has at least this role in the campaign.
 	 * 
+	 * @param parseXml Whether or not to parse each campaign's XML, which is
+	 * 				   only required if the campaigns' surveys are needed. If
+	 * 				   false, the campaigns are built from their stored 
+	 * 				   summary information, they have no surveys, and their
+	 * 				   XML is kept as-is.
+	 * 
 	 * @return The query results which contain the total number of campaigns 
 	 * 		   that matched this criteria as well as the list of campaigns in
 	 * 		   the current page.
@@ -365,7 +371,8 @@ public interface ICampaignQueries {
 			final DateTime endDate,
 			final Campaign.PrivacyState privacyState,
 			final Campaign.RunningState runningState,
-			final Campaign.Role role)
+			final Campaign.Role role,
+			final boolean parseXml)
 			throws DataAccessException;
 	
 	/**
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query;
+
+import java.util.List;
+
+import org.ohmage.domain.Change;
+import org.ohmage.exception.DataAccessException;
+
+public interface IChangeQueries {
+	/**
+	 * Retrieves the changes to a source that come after some position in the
+	 * change feed, in the order that they were made.
+	 *
+	 * @param sourceType The kind of source.
+	 *
+	 * @param sourceId The source's unique identifier, the campaign's ID or
+	 * 				   the observer's ID.
+	 *
+	 * @param streamId The stream's unique identifier if the source is a
+	 * 				   stream; otherwise, null.
+	 *
+	 * @param username Limits the changes to those to the given user's data.
+	 * 				   If null, the changes for all users are returned.
+	 *
+	 * @param after The position in the feed after which changes should be
+	 * 				returned.
+	 *
+	 * @param numToReturn The maximum number of changes to return.
+	 *
+	 * @return The changes, which may be empty.
+	 *
+	 * @throws DataAccessException There was an error.
+	 */
+	List<Change> getChanges(
+		Change.SourceType sourceType,
+		String sourceId,
+		String streamId,
+		String username,
+		long after,
+		int numToReturn)
+		throws DataAccessException;
+}
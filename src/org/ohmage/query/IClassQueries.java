@@ -159,6 +159,25 @@ public interface IClassQueries {
 			final String username, 
 			final String classId)
 			throws DataAccessException;
+	
+	/**
+	 * Retrieves the user-role pairs for a collection of classes in a single
+	 * query. If the requesting user is not an admin nor are they privileged
+	 * in a class, then that class' roles will all be null.
+	 * 
+	 * @param username The requesting user's username.
+	 * 
+	 * @param classIds The unique identifiers for the classes.
+	 * 
+	 * @return A map of class IDs to maps of usernames to class roles. Every
+	 * 		   class ID is in the map, even if the class has no users.
+	 * 
+	 * @throws DataAccessException There was an error.
+	 */
+	Map<String, Map<String, Clazz.Role>> getUserRolePairs(
+			String username,
+			Collection<String> classIds)
+			throws DataAccessException;
 
 	/**
 	 * Updates a class' information and adds and removes users from the class
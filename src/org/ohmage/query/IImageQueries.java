@@ -16,7 +16,9 @@
 package org.ohmage.query;
 
 import java.net.URL;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.ohmage.domain.Image;
@@ -48,6 +50,19 @@ public interface IImageQueries {
 	 * @throws DataAccessException Thrown if there is an error.
 	 */
 	URL getImageUrl(UUID imageId) throws DataAccessException;
+
+	/**
+	 * Retrieves the URLs for a collection of images in a single query. Images
+	 * that don't exist are not included in the result.
+	 * 
+	 * @param imageIds The unique identifiers for the images.
+	 * 
+	 * @return A map of image IDs to their URLs.
+	 * 
+	 * @throws DataAccessException Thrown if there is an error.
+	 */
+	Map<UUID, URL> getImageUrls(Collection<UUID> imageIds) 
+			throws DataAccessException;
 	
 	/**
 	 * Retrieves the Images that have not yet been processed.
@@ -92,7 +107,11 @@ public interface IImageQueries {
 	 * this was used improperly, it could easily put us in a state where images
 	 * were deleted but their references still existed. Use this with caution
 	 * and only when you know the reference no longer exists. Otherwise, use
-	 * {@link #deleteImage(UUID)}.
+	 * {@link #deleteImage(UUID)}.<br />
+	 * <br />
+	 * If the image is in the media store, this only releases the image's
+	 * reference to its file, and the file is only deleted once no other image
+	 * refers to the same contents.
 	 * 
 	 * @param imageUrl The image's URL.
 	 * 
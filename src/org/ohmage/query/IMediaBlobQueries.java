@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collection;
+
+import org.ohmage.domain.MediaBlob;
+import org.ohmage.exception.DataAccessException;
+
+public interface IMediaBlobQueries {
+	/**
+	 * Stores some contents in the media store and adds a reference to them.
+	 * The contents are digested as they are written, and, if identical
+	 * contents were already stored, the existing file is reused. Every call
+	 * must eventually be balanced by a call to
+	 * {@link #releaseBlob(URL, Collection)} or be rolled back with the
+	 * transaction it was made in.
+	 *
+	 * @param contents The contents to store. The stream is read to its end
+	 * 				   but is not closed.
+	 *
+	 * @param extension The media's extension, which is added to the file's
+	 * 					name, or null if it has none.
+	 *
+	 * @return The stored file.
+	 *
+	 * @throws DataAccessException There was an error writing the file or
+	 * 							   recording the reference.
+	 */
+	MediaBlob storeBlob(
+			InputStream contents,
+			String extension)
+			throws DataAccessException;
+
+	/**
+	 * Removes a reference to a file in the media store. When the last
+	 * reference is removed, the file and any of its variants are deleted,
+	 * but only once the transaction the call was made in has been committed
+	 * and only if the contents have not been stored again by then.
+	 *
+	 * @param url The URL of the stored file.
+	 *
+	 * @param variantSuffixes The suffixes that are appended to the file's
+	 * 						  name to name its variants, such as the smaller
+	 * 						  sizes of an image, or null if there are none.
+	 *
+	 * @return True if the URL refers to a file in the media store; false if
+	 * 		   it refers to a file that was written before the store existed,
+	 * 		   in which case the caller is responsible for deleting it.
+	 *
+	 * @throws DataAccessException There was an error removing the reference.
+	 */
+	boolean releaseBlob(
+			URL url,
+			Collection<String> variantSuffixes)
+			throws DataAccessException;
+}
@@ -6,6 +6,7 @@ import java.util.Map;
 
 import org.joda.time.DateTime;
 import org.ohmage.domain.DataStream;
+import org.ohmage.domain.DataStreamAggregator;
 import org.ohmage.domain.Observer;
 import org.ohmage.domain.Observer.Stream;
 import org.ohmage.exception.DataAccessException;
@@ -242,6 +243,84 @@ public interface IObserverQueries {
 		final long numToReturn) 
 		throws DataAccessException;
 
+	/**
+	 * Reads all of a user's data for a stream in chronological order and
+	 * gives each point to an aggregator as it is read. The points are
+	 * streamed from the database so that they are never all in memory. The
+	 * aggregator is finished once the last point has been given to it.
+	 * 
+	 * @param stream The Stream object for the stream whose data is in 
+	 * 				 question. Required.
+	 * 
+	 * @param username The username of the user to which the data must belong.
+	 * 				   Required.
+	 * 
+	 * @param observerId The observer's unique identifier. Required.
+	 * 
+	 * @param observerVersion The observer's version. Optional.
+	 * 
+	 * @param startDate The earliest data point to read. Optional.
+	 * 
+	 * @param endDate The latest data point to read. Optional.
+	 * 
+	 * @param aggregator The aggregator to which the points are given.
+	 * 
+	 * @throws DataAccessException There was an error reading the data or a
+	 * 							   point could not be aggregated.
+	 */
+	public void aggregateData(
+		final Stream stream,
+		final String username,
+		final String observerId,
+		final Long observerVersion,
+		final DateTime startDate,
+		final DateTime endDate,
+		final DataStreamAggregator aggregator)
+		throws DataAccessException;
+	
+	/**
+	 * Reads all of a user's data for a stream and gives each point to a
+	 * handler as it is read. The points are streamed from the database in a
+	 * single pass, so they are never all in memory and, unlike paging, no
+	 * point is skipped or repeated when points are added during the read.
+	 * 
+	 * @param stream The Stream object for the stream whose data is in 
+	 * 				 question. Required.
+	 * 
+	 * @param username The username of the user to which the data must belong.
+	 * 				   Required.
+	 * 
+	 * @param observerId The observer's unique identifier. Required.
+	 * 
+	 * @param observerVersion The observer's version. Optional.
+	 * 
+	 * @param startDate The earliest data point to read. Optional.
+	 * 
+	 * @param endDate The latest data point to read. Optional.
+	 * 
+	 * @param chronological Whether the points are read oldest first or 
+	 * 						newest first.
+	 * 
+	 * @param numToSkip The number of points to skip before the first one
+	 * 					that is handled.
+	 * 
+	 * @param handler The handler to which the points are given.
+	 * 
+	 * @throws DataAccessException There was an error reading the data or a
+	 * 							   point could not be handled.
+	 */
+	public void readAllData(
+		final Stream stream,
+		final String username,
+		final String observerId,
+		final Long observerVersion,
+		final DateTime startDate,
+		final DateTime endDate,
+		final boolean chronological,
+		final long numToSkip,
+		final DataStream.Handler handler)
+		throws DataAccessException;
+
 	/**
 	 * Retrieves the data for a stream.
 	 * 
@@ -17,6 +17,7 @@ package org.ohmage.query;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -39,6 +40,19 @@ public interface ISurveyResponseQueries {
 	String getCampaignIdForSurveyResponseId(UUID uuid) 
 			throws DataAccessException;
 	
+	/**
+	 * Retrieves the campaign ids (URNs) for many survey responses at once.
+	 * 
+	 * @param uuids The ids of the survey responses.
+	 * 
+	 * @return A map of each survey response id to its campaign's id. Ids that
+	 * 		   don't refer to a survey response are not keys.
+	 * 
+	 * @throws DataAccessException if there is an error
+	 */
+	Map<UUID, String> getCampaignIdsForSurveyResponseIds(Collection<UUID> uuids)
+			throws DataAccessException;
+	
 	/**
 	 * Returns the survey response privacy states.
 	 * 
@@ -94,6 +108,11 @@ public interface ISurveyResponseQueries {
 	 * 				  null, no aggregation is performed. If the list is empty,
 	 * 				  an empty list is returned.
 	 * 
+	 * @param projection The columns that will be output for individual survey
+	 * 					 responses, which limits what is read. If this is 
+	 * 					 null, everything is read. This is ignored when 
+	 * 					 aggregating.
+	 * 
 	 * @param sortOrder The order in which to sort the responses.
 	 * 
 	 * @param surveyResponsesToSkip The number of survey responses to skip once
@@ -127,31 +146,107 @@ public interface ISurveyResponseQueries {
 			final String promptType,
 			final Set<String> promptResponseSearchTokens,
 			final Collection<ColumnKey> columns, 
+			final Collection<ColumnKey> projection,
 			final List<SortParameter> sortOrder,
 			final long surveyResponsesToSkip,
 			final long surveyResponsesToProcess,
 			List<SurveyResponse> result) 
 			throws DataAccessException;
+	
+	/**
+	 * Reads every individual survey response that matches the given criteria
+	 * and gives each one to a handler as it is read. The survey responses 
+	 * and their prompt responses are streamed from the database in a single
+	 * pass, so they are never all in memory. The criteria are the same as
+	 * those of
+	 * {@link #retrieveSurveyResponses(Campaign, String, Set, Collection, DateTime, DateTime, SurveyResponse.PrivacyState, Collection, Collection, String, Set, Collection, Collection, List, long, long, List)}
+	 * when the results are not aggregated.
+	 * 
+	 * @param campaign The campaign to which the survey responses must belong.
+	 * 
+	 * @param username The username of the user that is making this request.
+	 * 				   This is used by the ACLs to limit who sees what.
+	 * 
+	 * @param surveyResponseIds A set of survey response unique identifiers 
+	 * 							limiting the results to only those survey
+	 * 							responses whose IDs are in this list.
+	 * 
+	 * @param usernames Limits the results to only those submitted by any one 
+	 * 					of the users in the list.
+	 * 
+	 * @param startDate Limits the results to only those survey responses that
+	 * 					occurred on or after this date.
+	 * 
+	 * @param endDate Limits the results to only those survey responses that
+	 * 				  occurred on or before this date.
+	 * 
+	 * @param privacyState Limits the results to only those survey responses
+	 * 					   with this privacy state.
+	 * 
+	 * @param surveyIds Limits the results to only those survey responses that 
+	 * 					were derived from a survey in this collection.
+	 * 
+	 * @param promptIds Limits the results to only those survey responses that 
+	 * 					were derived from a prompt in this collection.
+	 * 
+	 * @param promptType Limits the results to only those survey responses that
+	 * 					 are of the given prompt type.
+	 * 
+	 * @param promptResponseSearchTokens The set of tokens to use against the
+	 * 									 prompt response values.
+	 * 
+	 * @param sortOrder The order in which to sort the responses.
+	 * 
+	 * @param surveyResponsesToSkip The number of survey responses to skip 
+	 * 								before the first one that is handled.
+	 * 
+	 * @param handler The handler to which each survey response is given.
+	 * 
+	 * @throws DataAccessException Thrown if there is an error or a survey
+	 * 							   response could not be handled.
+	 */
+	void readAllSurveyResponses(
+			final Campaign campaign,
+			final String username,
+			final Set<UUID> surveyResponseIds,
+			final Collection<String> usernames,
+			final DateTime startDate,
+			final DateTime endDate,
+			final SurveyResponse.PrivacyState privacyState,
+			final Collection<String> surveyIds,
+			final Collection<String> promptIds,
+			final String promptType,
+			final Set<String> promptResponseSearchTokens,
+			final List<SortParameter> sortOrder,
+			final long surveyResponsesToSkip,
+			final SurveyResponse.Handler handler)
+			throws DataAccessException;
 
 	/**
 	 * Updates the privacy state on a survey response.
 	 * 
+	 * @param username The username of the user making the change, whose
+	 * 				   reads must see it.
 	 * @param surveyResponseIds The survey responses' unique identifier.
 	 * @param privacyState The survey's new privacy state
 	 * 
 	 * @throws DataAccessException Thrown if there is an error.
 	 */
-	void updateSurveyResponsesPrivacyState(Set<UUID> surveyResponseIds,
+	void updateSurveyResponsesPrivacyState(String username,
+			Set<UUID> surveyResponseIds,
 			SurveyResponse.PrivacyState newPrivacyState)
 			throws DataAccessException;
 
 	/**
 	 * Deletes a survey response.
 	 * 
+	 * @param username The username of the user deleting the survey response,
+	 * 				   whose reads must see the deletion.
 	 * @param surveyResponseId The survey response's unique identifier.
 	 * 
 	 * @throws DataAccessException Thrown if there is an error.
 	 */
-	void deleteSurveyResponse(UUID surveyResponseId) throws DataAccessException;
+	void deleteSurveyResponse(String username, UUID surveyResponseId)
+			throws DataAccessException;
 
 }
@@ -15,17 +15,55 @@
  ******************************************************************************/
 package org.ohmage.query;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.UUID;
 
 import org.ohmage.domain.Audio;
 import org.ohmage.domain.Image;
 import org.ohmage.domain.Video;
 import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.domain.campaign.SurveyUploadStatus;
 import org.ohmage.exception.DataAccessException;
 
 public interface ISurveyUploadQuery {
+	/**
+	 * A source of survey responses that are produced, in batches, while the
+	 * previous batches are being inserted.
+	 *
+	 * @author John Jenkins
+	 */
+	public static interface SurveyResponseSource {
+		/**
+		 * Returns the next batch of survey responses to insert. This may
+		 * block until the batch is available.
+		 * 
+		 * @return The next batch or null if there are no more survey
+		 *         responses.
+		 * 
+		 * @throws DataAccessException
+		 *         The batch could not be produced, and the upload should be
+		 *         aborted.
+		 */
+		List<SurveyResponse> nextBatch() throws DataAccessException;
+		
+		/**
+		 * Called once a batch has been inserted, but before the upload's
+		 * transaction has been committed.
+		 * 
+		 * @param batch
+		 *        The batch that was inserted.
+		 * 
+		 * @param duplicateIndexes
+		 *        The indexes, within the batch, of the survey responses that
+		 *        were duplicates and were not inserted.
+		 */
+		void batchInserted(
+			List<SurveyResponse> batch,
+			Collection<Integer> duplicateIndexes);
+	}
 
 	/**
 	 * Inserts surveys into survey_response, prompt_response, and
@@ -61,4 +99,78 @@ public interface ISurveyUploadQuery {
 			final Map<String, Video> videoContentsMap,
 			final Map<String, Audio> audioContentsMap)
 			throws DataAccessException;
+
+	/**
+	 * Inserts surveys exactly as
+	 * {@link #insertSurveys(String, String, String, List, Map, Map, Map)}
+	 * does, except that the surveys are pulled from the source in batches as
+	 * they are inserted. The entire upload is still one transaction, so if
+	 * the source fails, nothing is persisted.
+	 * 
+	 * @param user
+	 *        The owner of the survey upload.
+	 * @param client
+	 *        The software client that performed the upload.
+	 * @param campaignUrn
+	 *        The campaign for the survey upload.
+	 * @param source
+	 *        The source of the surveys to persist.
+	 * @param bufferedImageMap
+	 *        The images to persist.
+	 * @param videoContentsMap
+	 *        The videos to persist.
+	 * @param audioContentsMap
+	 *        The audio files to persist.
+	 * @return Returns a List of Integers representing the indexes, across all
+	 *         batches, of duplicate surveys.
+	 * @throws DataAccessException
+	 *         If any IO error occurs or the source failed.
+	 */
+	List<Integer> insertSurveys(
+			final String username, 
+			final String client,
+			final String campaignUrn,
+			final SurveyResponseSource source,
+			final Map<UUID, Image> bufferedImageMap,
+			final Map<String, Video> videoContentsMap,
+			final Map<String, Audio> audioContentsMap)
+			throws DataAccessException;
+
+	/**
+	 * Inserts one chunk of surveys in its own transaction. Unlike
+	 * {@link #insertSurveys(String, String, String, List, Map, Map, Map)},
+	 * each survey is rolled back on its own if it cannot be inserted, e.g.
+	 * because it is a duplicate or its media could not be saved, and the
+	 * rest of the chunk is still committed.
+	 * 
+	 * @param user
+	 *        The owner of the survey upload.
+	 * @param client
+	 *        The software client that performed the upload.
+	 * @param campaignUrn
+	 *        The campaign for the survey upload.
+	 * @param chunk
+	 *        The surveys to persist, keyed by their indexes within the whole
+	 *        upload.
+	 * @param bufferedImageMap
+	 *        The images to persist.
+	 * @param videoContentsMap
+	 *        The videos to persist.
+	 * @param audioContentsMap
+	 *        The audio files to persist.
+	 * @return The status of each survey in the chunk, in the order of their
+	 *         indexes.
+	 * @throws DataAccessException
+	 *         The chunk's transaction could not be started or committed, so
+	 *         none of the surveys in the chunk were persisted.
+	 */
+	List<SurveyUploadStatus> insertSurveyChunk(
+			final String username, 
+			final String client,
+			final String campaignUrn,
+			final SortedMap<Integer, SurveyResponse> chunk,
+			final Map<UUID, Image> bufferedImageMap,
+			final Map<String, Video> videoContentsMap,
+			final Map<String, Audio> audioContentsMap)
+			throws DataAccessException;
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.ohmage.domain.UserActivity;
+import org.ohmage.exception.DataAccessException;
+
+public interface IUserActivityQueries {
+	/**
+	 * Adds a batch of uploaded points to a user's activity summary for some
+	 * source. The points are counted in the bucket for the current hour, and
+	 * buckets that have fallen outside of the retained window are pruned.
+	 *
+	 * @param username
+	 *        The username of the user that uploaded the points.
+	 *
+	 * @param sourceType
+	 *        The type of source to which the points were uploaded.
+	 *
+	 * @param sourceId
+	 *        The source's unique identifier.
+	 *
+	 * @param lastDataMillis
+	 *        The time of the most recently generated point in the batch or
+	 *        null if none of the points had a time.
+	 *
+	 * @param numPoints
+	 *        The number of points in the batch.
+	 *
+	 * @param numPointsWithLocation
+	 *        The number of points in the batch that had a location.
+	 *
+	 * @throws DataAccessException
+	 *         There was an error.
+	 */
+	void recordActivity(
+		String username,
+		UserActivity.SourceType sourceType,
+		String sourceId,
+		Long lastDataMillis,
+		long numPoints,
+		long numPointsWithLocation)
+		throws DataAccessException;
+
+	/**
+	 * Retrieves the activity summaries for a set of users for a single
+	 * source. This is done in a single query regardless of the number of
+	 * users.
+	 *
+	 * @param usernames
+	 *        The usernames of the users whose activity is desired.
+	 *
+	 * @param sourceType
+	 *        The type of the source.
+	 *
+	 * @param sourceId
+	 *        The source's unique identifier.
+	 *
+	 * @param windowHours
+	 *        The number of hours, counting back from now, over which the
+	 *        points should be counted.
+	 *
+	 * @return A map of usernames to their activity. Users that have never
+	 *         uploaded anything to the source will not have an entry.
+	 *
+	 * @throws DataAccessException
+	 *         There was an error.
+	 */
+	Map<String, UserActivity> getActivity(
+		Collection<String> usernames,
+		UserActivity.SourceType sourceType,
+		String sourceId,
+		int windowHours)
+		throws DataAccessException;
+}
@@ -106,6 +106,23 @@ public interface IUserCampaignQueries {
 	Map<String, Collection<Campaign.Role>> getUsersAndRolesForCampaign(
 		String campaignId) throws DataAccessException;
 
+	/**
+	 * Returns the users and their roles for each of a collection of 
+	 * campaigns in a single query.
+	 * 
+	 * @param campaignIds
+	 *        The campaigns' unique identifiers.
+	 * 
+	 * @return A map of campaign IDs to maps of usernames to a set of campaign
+	 *         roles. Every campaign ID is in the map, even if it has no
+	 *         users.
+	 * 
+	 * @throws DataAccessException
+	 *         Thrown if there is an error.
+	 */
+	Map<String, Map<String, Collection<Campaign.Role>>> getUsersAndRolesForCampaigns(
+		Collection<String> campaignIds) throws DataAccessException;
+
 	/**
 	 * Retrieves all of the campaign IDs and their respective names to which a
 	 * user is associated.
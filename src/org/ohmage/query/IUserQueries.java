@@ -18,7 +18,10 @@ package org.ohmage.query;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.ohmage.domain.UserBatchEntry;
 import org.ohmage.domain.UserInformation;
 import org.ohmage.domain.UserInformation.UserPersonal;
 import org.ohmage.exception.DataAccessException;
@@ -54,6 +57,31 @@ public interface IUserQueries {
 			final Boolean campaignCreationPrivilege) 
 			throws DataAccessException;
 	
+	/**
+	 * Creates and updates a batch of users in a single transaction. Each kind
+	 * of change is made with a single batch of statements.
+	 * 
+	 * @param newUsers The users to create. Values that are null are given
+	 * 				   the same defaults as
+	 * 				   {@link #createUser(String, String, String, Boolean, Boolean, Boolean, Boolean)}
+	 * 				   gives them.
+	 * 
+	 * @param existingUsers The users to update. Values that are null are left
+	 * 						unchanged. Personal information that is given 
+	 * 						replaces any that the user already has.
+	 * 
+	 * @param hashedPasswords The hashed passwords of the users by their
+	 * 						  usernames. Every new user must have one.
+	 * 
+	 * @throws DataAccessException There was an error, and none of the users
+	 * 							   were created or updated.
+	 */
+	void createAndUpdateUsers(
+			final Collection<UserBatchEntry> newUsers,
+			final Collection<UserBatchEntry> existingUsers,
+			final Map<String, String> hashedPasswords)
+			throws DataAccessException;
+	
 	/**
 	 * Creates a user registration by first creating the user, second adding 
 	 * them to the public class, and finally by storing their registration
@@ -85,6 +113,19 @@ public interface IUserQueries {
 	 */
 	Boolean userExists(String username) throws DataAccessException;
 	
+	/**
+	 * Returns which of a collection of users exist. The users are looked up
+	 * in chunks rather than one at a time.
+	 * 
+	 * @param usernames The usernames for which to check.
+	 * 
+	 * @return The usernames from the collection whose users exist.
+	 * 
+	 * @throws DataAccessException Thrown if there is an error.
+	 */
+	Set<String> getExistingUsernames(Collection<String> usernames)
+		throws DataAccessException;
+	
 	/**
 	 * Returns the user's email address or null if one doesn't exist.
 	 * 
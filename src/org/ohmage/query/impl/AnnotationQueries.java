@@ -20,17 +20,24 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.sql.DataSource;
 
 import org.joda.time.DateTimeZone;
 import org.ohmage.domain.Annotation;
+import org.ohmage.domain.PromptResponseAnnotation;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.DomainException;
 import org.ohmage.query.IAnnotationQueries;
+import org.ohmage.util.StringUtils;
 import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -82,6 +89,29 @@ public class AnnotationQueries extends Query implements IAnnotationQueries {
 		" AND repeatable_set_id = ? " +
 		"AND repeatable_set_iteration = ?";
 	
+	// The IN list of survey response ids is appended, followed by
+	// SQL_ORDER_BY_ANNOTATION.
+	private static final String SQL_READ_SURVEY_RESPONSE_ANNOTATIONS = 
+		"SELECT sr.uuid, a.uuid, a.annotation, a.epoch_millis, a.timezone " +
+		"FROM survey_response sr, survey_response_annotation sra, annotation a " +
+		"WHERE sr.id = sra.survey_response_id " +
+		"AND sra.annotation_id = a.id " +
+		"AND sr.uuid IN ";
+	
+	// The IN list of survey response ids is appended, followed by
+	// SQL_ORDER_BY_ANNOTATION.
+	private static final String SQL_READ_PROMPT_RESPONSE_ANNOTATIONS = 
+		"SELECT sr.uuid, a.uuid, a.annotation, a.epoch_millis, a.timezone, " +
+			"pr.prompt_id, pr.repeatable_set_id, pr.repeatable_set_iteration " +
+		"FROM prompt_response pr, survey_response sr, prompt_response_annotation pra, annotation a " +
+		"WHERE pr.survey_response_id = sr.id " +
+		"AND pr.id = pra.prompt_response_id " +
+		"AND pra.annotation_id = a.id " +
+		"AND sr.uuid IN ";
+	
+	private static final String SQL_ORDER_BY_ANNOTATION = 
+		" ORDER BY a.id";
+	
 	private static final String SQL_ANNOTATION_EXISTS_FOR_USER = 
 		"SELECT EXISTS" +
 		" (SELECT id FROM annotation" +
@@ -193,6 +223,61 @@ public class AnnotationQueries extends Query implements IAnnotationQueries {
 		}
 	}
 	
+	@Override
+	public Map<UUID, List<Annotation>> readSurveyResponseAnnotations(
+			final Collection<UUID> surveyResponseIds)
+			throws DataAccessException {
+		
+		final Map<UUID, List<Annotation>> result = 
+			new HashMap<UUID, List<Annotation>>();
+		for(UUID surveyResponseId : surveyResponseIds) {
+			result.put(surveyResponseId, new LinkedList<Annotation>());
+		}
+		
+		for(List<String> chunk : chunk(toStrings(result.keySet()))) {
+			String sql = 
+				SQL_READ_SURVEY_RESPONSE_ANNOTATIONS + 
+				StringUtils.generateStatementPList(chunk.size()) +
+				SQL_ORDER_BY_ANNOTATION;
+			
+			try {
+				getJdbcTemplate().query(
+					sql,
+					chunk.toArray(),
+					new RowCallbackHandler() {
+						/**
+						 * Creates the annotation and adds it to its survey
+						 * response's list.
+						 */
+						@Override
+						public void processRow(
+								final ResultSet rs)
+								throws SQLException {
+							
+							try {
+								result.get(UUID.fromString(rs.getString(1))).add(
+									new Annotation(
+										rs.getString(2),
+										rs.getString(3),
+										rs.getLong(4),
+										rs.getString(5)));
+							}
+							catch(DomainException e) {
+								throw new SQLException("Error creating an annotation object.", e);
+							}
+						}
+					});
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				throw new DataAccessException(
+					"Error executing SQL '" + sql + "' with parameters: " + chunk, 
+					e);
+			}
+		}
+		
+		return result;
+	}
+	
 	@Override
 	public void createPromptResponseAnnotation(final UUID annotationId, final String client, final Long time,
 		final DateTimeZone timezone, final String annotationText, Integer promptResponseId)
@@ -294,6 +379,68 @@ public class AnnotationQueries extends Query implements IAnnotationQueries {
 		}
 	}
 	
+	@Override
+	public Map<UUID, List<PromptResponseAnnotation>> readPromptResponseAnnotations(
+			final Collection<UUID> surveyResponseIds)
+			throws DataAccessException {
+		
+		final Map<UUID, List<PromptResponseAnnotation>> result = 
+			new HashMap<UUID, List<PromptResponseAnnotation>>();
+		for(UUID surveyResponseId : surveyResponseIds) {
+			result.put(surveyResponseId, new LinkedList<PromptResponseAnnotation>());
+		}
+		
+		for(List<String> chunk : chunk(toStrings(result.keySet()))) {
+			String sql = 
+				SQL_READ_PROMPT_RESPONSE_ANNOTATIONS + 
+				StringUtils.generateStatementPList(chunk.size()) +
+				SQL_ORDER_BY_ANNOTATION;
+			
+			try {
+				getJdbcTemplate().query(
+					sql,
+					chunk.toArray(),
+					new RowCallbackHandler() {
+						/**
+						 * Creates the annotation and adds it to its survey
+						 * response's list.
+						 */
+						@Override
+						public void processRow(
+								final ResultSet rs)
+								throws SQLException {
+							
+							// The iteration is a tiny integer, which may be
+							// null.
+							int iteration = rs.getInt(8);
+							
+							try {
+								result.get(UUID.fromString(rs.getString(1))).add(
+									new PromptResponseAnnotation(
+										rs.getString(2),
+										rs.getString(3),
+										rs.getLong(4),
+										rs.getString(5),
+										rs.getString(6),
+										rs.getString(7),
+										(rs.wasNull()) ? null : iteration));
+							}
+							catch(DomainException e) {
+								throw new SQLException("Error creating an annotation object.", e);
+							}
+						}
+					});
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				throw new DataAccessException(
+					"Error executing SQL '" + sql + "' with parameters: " + chunk, 
+					e);
+			}
+		}
+		
+		return result;
+	}
+	
 	@Override
 	public boolean userOwnsAnnotation(String username, UUID annotationId) 
 			throws DataAccessException {
@@ -306,6 +453,21 @@ public class AnnotationQueries extends Query implements IAnnotationQueries {
 		}
 	}
 	
+	/**
+	 * Converts survey response ids into the strings that are stored in the
+	 * database.
+	 * 
+	 * @param surveyResponseIds the survey response ids
+	 * @return the ids as strings
+	 */
+	private static List<String> toStrings(final Collection<UUID> surveyResponseIds) {
+		List<String> result = new ArrayList<String>(surveyResponseIds.size());
+		for(UUID surveyResponseId : surveyResponseIds) {
+			result.add(surveyResponseId.toString());
+		}
+		return result;
+	}
+	
 	/**
 	 * Helper method to insert an annotation and allow the other methods in
 	 * this class to do the work of linking the annotation to the appropriate
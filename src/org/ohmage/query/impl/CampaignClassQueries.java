@@ -17,7 +17,11 @@ package org.ohmage.query.impl;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
@@ -25,6 +29,8 @@ import org.ohmage.domain.Clazz;
 import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.query.ICampaignClassQueries;
+import org.ohmage.util.StringUtils;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.SingleColumnRowMapper;
 
@@ -51,6 +57,16 @@ public final class CampaignClassQueries extends Query implements ICampaignClassQ
 		"AND ca.id = cc.campaign_id " +
 		"AND cl.id = cc.class_id";
 	
+	// Retrieves the IDs for all of the classes associated with a set of 
+	// campaigns, which must be completed with the parameter list for the 
+	// campaign IDs.
+	private static final String SQL_GET_CLASSES_ASSOCIATED_WITH_CAMPAIGNS =
+		"SELECT ca.urn AS campaign_urn, cl.urn AS class_urn " +
+		"FROM campaign ca, class cl, campaign_class cc " +
+		"WHERE ca.id = cc.campaign_id " +
+		"AND cl.id = cc.class_id " +
+		"AND ca.urn IN ";
+	
 	// Retrieves all of the default roles for a campaign-class association 
 	// based on some class role.
 	private static final String SQL_GET_CAMPAIGN_CLASS_DEFAULT_ROLES =
@@ -106,6 +122,57 @@ public final class CampaignClassQueries extends Query implements ICampaignClassQ
 		}
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.ICampaignClassQueries#getClassesAssociatedWithCampaigns(java.util.Collection)
+	 */
+	@Override
+	public Map<String, List<String>> getClassesAssociatedWithCampaigns(
+			final Collection<String> campaignIds)
+			throws DataAccessException {
+		
+		final Map<String, List<String>> result = 
+				new HashMap<String, List<String>>();
+		for(String campaignId : campaignIds) {
+			result.put(campaignId, new LinkedList<String>());
+		}
+		if(campaignIds.isEmpty()) {
+			return result;
+		}
+		
+		String sql = 
+				SQL_GET_CLASSES_ASSOCIATED_WITH_CAMPAIGNS + 
+				StringUtils.generateStatementPList(campaignIds.size());
+		
+		try {
+			getJdbcTemplate().query(
+					sql, 
+					campaignIds.toArray(),
+					new RowCallbackHandler() {
+						/**
+						 * Adds the class to its campaign's list.
+						 */
+						@Override
+						public void processRow(
+								final ResultSet rs)
+								throws SQLException {
+							
+							result
+								.get(rs.getString("campaign_urn"))
+								.add(rs.getString("class_urn"));
+						}
+					});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+					"Error executing SQL '" + sql + "' with parameters: " + 
+						campaignIds, 
+					e);
+		}
+		
+		return result;
+	}
+	
 	/* (non-Javadoc)
 	 * @see org.ohmage.query.impl.ICampaignClassQueries#getDefaultCampaignRolesForCampaignClass(java.lang.String, java.lang.String, org.ohmage.domain.Clazz.Role)
 	 */
@@ -22,6 +22,7 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -1060,7 +1061,7 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 
 	/*
 	 * (non-Javadoc)
-	 * @see org.ohmage.query.ICampaignQueries#getCampaignInformation(java.lang.String, java.util.Collection, java.util.Collection, java.util.Date, java.util.Date, org.ohmage.domain.campaign.Campaign.PrivacyState, org.ohmage.domain.campaign.Campaign.RunningState, org.ohmage.domain.campaign.Campaign.Role)
+	 * @see org.ohmage.query.ICampaignQueries#getCampaignInformation(java.lang.String, java.util.Collection, java.util.Collection, java.util.Collection, java.util.Collection, org.joda.time.DateTime, org.joda.time.DateTime, org.ohmage.domain.campaign.Campaign.PrivacyState, org.ohmage.domain.campaign.Campaign.RunningState, org.ohmage.domain.campaign.Campaign.Role, boolean)
 	 */
 	@Override
 	public QueryResultsList<Campaign> getCampaignInformation(
@@ -1073,7 +1074,8 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 			final DateTime endDate,
 			final Campaign.PrivacyState privacyState,
 			final Campaign.RunningState runningState,
-			final Campaign.Role role)
+			final Campaign.Role role,
+			final boolean parseXml)
 			throws DataAccessException {
 		
 		try {
@@ -1251,14 +1253,52 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 										new QueryResultListBuilder<Campaign>();
 								
 								while(rs.next()) {
+									Campaign.RunningState runningState =
+										Campaign.RunningState.valueOf(rs.getString("running_state").toUpperCase());
+									Campaign.PrivacyState privacyState =
+										Campaign.PrivacyState.valueOf(rs.getString("privacy_state").toUpperCase());
+									DateTime creationTimestamp =
+										new DateTime(rs.getTimestamp("creation_timestamp").getTime());
+									
+									if(parseXml) {
+										result.addResult(
+												new Campaign(
+														null,
+														null,
+														rs.getString("description"),
+														runningState,
+														privacyState,
+														creationTimestamp.toDate(),
+														rs.getString("xml")));
+										continue;
+									}
+									
+									// Build the campaign from its columns 
+									// without parsing its XML.
+									URL iconUrl = null;
+									String iconUrlString = rs.getString("icon_url");
+									if(iconUrlString != null) {
+										try {
+											iconUrl = new URL(iconUrlString);
+										}
+										catch(MalformedURLException e) {
+											throw new SQLException(
+													"The icon URL is not a valid URL.",
+													e);
+										}
+									}
+									
 									result.addResult(
 											new Campaign(
-													null,
-													null,
+													rs.getString("urn"),
+													rs.getString("name"),
 													rs.getString("description"),
-													Campaign.RunningState.valueOf(rs.getString("running_state").toUpperCase()),
-													Campaign.PrivacyState.valueOf(rs.getString("privacy_state").toUpperCase()),
-													new DateTime(rs.getTimestamp("creation_timestamp").getTime()).toDate(),
+													iconUrl,
+													rs.getString("authored_by"),
+													runningState,
+													privacyState,
+													creationTimestamp,
+													Collections.<String, Survey>emptyMap(),
 													rs.getString("xml")));
 								}
 							
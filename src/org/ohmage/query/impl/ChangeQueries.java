@@ -0,0 +1,353 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.ohmage.domain.Change;
+import org.ohmage.domain.DataStream;
+import org.ohmage.exception.DataAccessException;
+import org.ohmage.exception.DomainException;
+import org.ohmage.query.IChangeQueries;
+import org.ohmage.util.StringUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * <p>
+ * This class contains all of the functionality for reading the change feed.
+ * It also has the functions with which the upload, update, and delete paths
+ * record their changes. Those must be called with the same JdbcTemplate, and
+ * within the same transaction, as the change itself so that the change is
+ * only recorded if it is committed.
+ * </p>
+ *
+ * <p>
+ * The change feed is ordered by the auto-incremented ID of each entry, but
+ * IDs are assigned when a row is inserted, not when its transaction commits.
+ * A long upload may therefore commit its changes after later changes have
+ * already been read. To avoid skipping them, the changes that were inserted
+ * in the last {@value #SETTLE_SECONDS} seconds are never returned. This must
+ * be longer than any transaction that records a change, the longest of which
+ * is a survey upload that stores all of its responses and their media in one
+ * transaction, so clients see each change up to that long after it is made.
+ * </p>
+ *
+ * <p>
+ * Survey responses are recorded individually, but stream points are recorded
+ * with one entry for each stream in each batch that is stored. The entry
+ * counts the batch's points and has the time of its earliest point, from
+ * which the client may read the stream to get them.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public final class ChangeQueries extends Query implements IChangeQueries {
+	/**
+	 * The number of seconds that a change must be in the log before it is
+	 * returned, which is the longest that a transaction that records a
+	 * change may take without its changes being skipped.
+	 */
+	public static final int SETTLE_SECONDS = 15 * 60;
+
+	private static final String SQL_INSERT_CHANGE =
+		"INSERT INTO change_log(" +
+			"source_type, " +
+			"source_id, " +
+			"stream_id, " +
+			"operation, " +
+			"item_id, " +
+			"item_millis, " +
+			"item_count, " +
+			"username) " +
+		"VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+	// Records a change for each of a set of survey responses, which must be
+	// completed with the parameter list for their IDs.
+	private static final String SQL_INSERT_SURVEY_RESPONSE_CHANGES =
+		"INSERT INTO change_log(" +
+			"source_type, " +
+			"source_id, " +
+			"operation, " +
+			"item_id, " +
+			"item_millis, " +
+			"username) " +
+		"SELECT ?, c.urn, ?, sr.uuid, sr.epoch_millis, u.username " +
+		"FROM survey_response sr, campaign c, user u " +
+		"WHERE sr.campaign_id = c.id " +
+		"AND sr.user_id = u.id " +
+		"AND sr.uuid IN ";
+
+	private static final String SQL_GET_CHANGES =
+		"SELECT " +
+			"id, " +
+			"operation, " +
+			"item_id, " +
+			"item_millis, " +
+			"item_count, " +
+			"username, " +
+			"change_timestamp " +
+		"FROM change_log " +
+		"WHERE source_type = ? " +
+		"AND source_id = ? " +
+		"AND stream_id = ? " +
+		"AND id > ? " +
+		"AND change_timestamp < (NOW() - INTERVAL " +
+			SETTLE_SECONDS + " SECOND)";
+
+	private static final String SQL_AND_USERNAME =
+		" AND username = ?";
+
+	private static final String SQL_ORDER_BY_LIMIT =
+		" ORDER BY id LIMIT ?";
+
+	/**
+	 * Creates this object via dependency injection (reflection).
+	 *
+	 * @param dataSource The DataSource to use when querying the database.
+	 */
+	private ChangeQueries(final DataSource dataSource) {
+		super(dataSource);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IChangeQueries#getChanges(org.ohmage.domain.Change.SourceType, java.lang.String, java.lang.String, java.lang.String, long, int)
+	 */
+	@Override
+	public List<Change> getChanges(
+			final Change.SourceType sourceType,
+			final String sourceId,
+			final String streamId,
+			final String username,
+			final long after,
+			final int numToReturn)
+			throws DataAccessException {
+
+		StringBuilder sql = new StringBuilder(SQL_GET_CHANGES);
+		List<Object> parameters = new ArrayList<Object>(6);
+		parameters.add(sourceType.toString());
+		parameters.add(sourceId);
+		parameters.add((streamId == null) ? "" : streamId);
+		parameters.add(after);
+
+		if(username != null) {
+			sql.append(SQL_AND_USERNAME);
+			parameters.add(username);
+		}
+
+		sql.append(SQL_ORDER_BY_LIMIT);
+		parameters.add(numToReturn);
+
+		try {
+			return
+				getReadJdbcTemplate(ReplicaRouter.Consistency.EVENTUAL, null)
+					.query(
+						sql.toString(),
+						parameters.toArray(),
+						new RowMapper<Change>() {
+							/**
+							 * Creates a change from the row.
+							 */
+							@Override
+							public Change mapRow(
+									final ResultSet rs,
+									final int rowNum)
+									throws SQLException {
+
+								long itemMillis = rs.getLong("item_millis");
+								try {
+									return
+										new Change(
+											rs.getLong("id"),
+											Change.Operation.getValue(
+												rs.getString("operation")),
+											rs.getString("item_id"),
+											(rs.wasNull()) ? null : itemMillis,
+											rs.getInt("item_count"),
+											rs.getString("username"),
+											rs.getTimestamp(
+												"change_timestamp")
+												.getTime());
+								}
+								catch(DomainException e) {
+									throw new SQLException(
+										"The change could not be built.",
+										e);
+								}
+								catch(IllegalArgumentException e) {
+									throw new SQLException(
+										"The change's operation is unknown.",
+										e);
+								}
+							}
+						});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" +
+					sql.toString() +
+					"' with parameters: " +
+					parameters,
+				e);
+		}
+	}
+
+	/**
+	 * Records that a survey response was inserted.
+	 *
+	 * @param jdbcTemplate The template with which the survey response was
+	 * 					   inserted.
+	 *
+	 * @param campaignId The campaign's unique identifier.
+	 *
+	 * @param username The username of the user that owns the response.
+	 *
+	 * @param surveyResponseId The survey response's unique identifier.
+	 *
+	 * @param time The time at which the survey response was taken.
+	 *
+	 * @throws org.springframework.dao.DataAccessException The change could
+	 * 													   not be recorded.
+	 */
+	static void recordSurveyResponseInsert(
+			final JdbcTemplate jdbcTemplate,
+			final String campaignId,
+			final String username,
+			final UUID surveyResponseId,
+			final long time) {
+
+		jdbcTemplate.update(
+			SQL_INSERT_CHANGE,
+			Change.SourceType.SURVEY_RESPONSE.toString(),
+			campaignId,
+			"",
+			Change.Operation.INSERT.toString(),
+			surveyResponseId.toString(),
+			time,
+			1,
+			username);
+	}
+
+	/**
+	 * Records that a set of survey responses were updated or are about to be
+	 * deleted. The survey responses must still exist, so this must be called
+	 * before they are deleted.
+	 *
+	 * @param jdbcTemplate The template with which the survey responses are
+	 * 					   being changed.
+	 *
+	 * @param operation The kind of change.
+	 *
+	 * @param surveyResponseIds The survey responses' unique identifiers.
+	 *
+	 * @throws org.springframework.dao.DataAccessException The changes could
+	 * 													   not be recorded.
+	 */
+	static void recordSurveyResponseChanges(
+			final JdbcTemplate jdbcTemplate,
+			final Change.Operation operation,
+			final Collection<UUID> surveyResponseIds) {
+
+		if(surveyResponseIds.isEmpty()) {
+			return;
+		}
+
+		List<Object> parameters =
+			new ArrayList<Object>(surveyResponseIds.size() + 2);
+		parameters.add(Change.SourceType.SURVEY_RESPONSE.toString());
+		parameters.add(operation.toString());
+		for(UUID surveyResponseId : surveyResponseIds) {
+			parameters.add(surveyResponseId.toString());
+		}
+
+		jdbcTemplate.update(
+			SQL_INSERT_SURVEY_RESPONSE_CHANGES +
+				StringUtils.generateStatementPList(surveyResponseIds.size()),
+			parameters.toArray());
+	}
+
+	/**
+	 * Records that a batch of stream points was inserted. One change is
+	 * recorded for each stream in the batch, which counts its points and has
+	 * the time of its earliest point.
+	 *
+	 * @param jdbcTemplate The template with which the points were inserted.
+	 *
+	 * @param username The username of the user that owns the points.
+	 *
+	 * @param observerId The observer's unique identifier.
+	 *
+	 * @param points The points that were inserted.
+	 *
+	 * @throws org.springframework.dao.DataAccessException The changes could
+	 * 													   not be recorded.
+	 */
+	static void recordStreamInserts(
+			final JdbcTemplate jdbcTemplate,
+			final String username,
+			final String observerId,
+			final Collection<DataStream> points) {
+
+		if(points.isEmpty()) {
+			return;
+		}
+
+		// Build one change for each stream, keeping the streams in the
+		// order in which they were uploaded.
+		Map<String, Object[]> changes = new LinkedHashMap<String, Object[]>();
+		for(DataStream point : points) {
+			String streamId = point.getStream().getId();
+			Object[] change = changes.get(streamId);
+			if(change == null) {
+				change =
+					new Object[] {
+						Change.SourceType.STREAM.toString(),
+						observerId,
+						streamId,
+						Change.Operation.INSERT.toString(),
+						null,
+						null,
+						0,
+						username
+					};
+				changes.put(streamId, change);
+			}
+
+			DataStream.MetaData metaData = point.getMetaData();
+			if((metaData != null) && (metaData.getTimestamp() != null)) {
+				long time = metaData.getTimestamp().getMillis();
+				if((change[5] == null) || (time < (Long) change[5])) {
+					change[5] = time;
+				}
+			}
+			change[6] = (Integer) change[6] + 1;
+		}
+
+		jdbcTemplate.batchUpdate(
+			SQL_INSERT_CHANGE,
+			new ArrayList<Object[]>(changes.values()));
+	}
+}
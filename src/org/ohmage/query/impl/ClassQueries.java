@@ -17,30 +17,28 @@ package org.ohmage.query.impl;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.sql.DataSource;
 
 import org.apache.log4j.Logger;
 import org.ohmage.domain.Clazz;
 import org.ohmage.domain.Clazz.Role;
-import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.DomainException;
-import org.ohmage.query.ICampaignClassQueries;
 import org.ohmage.query.IClassQueries;
-import org.ohmage.query.IUserCampaignClassQueries;
-import org.ohmage.query.IUserCampaignQueries;
-import org.ohmage.query.IUserClassQueries;
 import org.ohmage.query.impl.QueryResultsList.QueryResultListBuilder;
 import org.ohmage.util.StringUtils;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.SingleColumnRowMapper;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -63,11 +61,6 @@ public class ClassQueries extends Query implements IClassQueries {
 	
 	private static Logger LOGGER = Logger.getLogger(ClassQueries.class);
 	
-	private ICampaignClassQueries campaignClassQueries; 
-	private IUserCampaignClassQueries userCampaignClassQueries;
-	private IUserClassQueries userClassQueries;
-	private IUserCampaignQueries userCampaignQueries;
-	
 	// Returns a boolean as to whether or not the given class exists.
 	private static final String SQL_EXISTS_CLASS = 
 		"SELECT EXISTS(" +
@@ -107,45 +100,6 @@ public class ClassQueries extends Query implements IClassQueries {
 		"INSERT INTO class(urn, name, description) " +
 		"VALUES (?,?,?)";
 	
-	// Associates a user with a class.
-	private static final String SQL_INSERT_USER_CLASS = 
-		"INSERT INTO user_class(user_id, class_id, user_class_role_id) " +
-		"VALUES (" +
-			"(" +
-				"SELECT id " +
-				"FROM user " +
-				"WHERE username = ?" +
-			"), (" +
-				"SELECT id " +
-				"FROM class " +
-				"WHERE urn = ?" +
-			"), (" +
-				"SELECT id " +
-				"FROM user_class_role " +
-				"WHERE role = ?" +
-			")" +
-		")";
-	
-	// Associates a user with a campaign.
-	private static final String SQL_INSERT_USER_CAMPAIGN =
-		"INSERT INTO user_role_campaign(user_id, campaign_id, user_role_id) " +
-		"VALUES (" +
-			"(" +
-				"SELECT id " +
-				"FROM user " +
-				"WHERE username = ?" +
-			"), (" +
-				"SELECT id " +
-				"FROM campaign " +
-				"WHERE urn = ?" +
-			"), (" +
-				"SELECT id " +
-				"FROM user_role " +
-				"WHERE role = ?" +
-			")" +
-			"" +
-		")";
-	
 	// Updates a class' name.
 	private static final String SQL_UPDATE_CLASS_NAME =
 		"UPDATE class " +
@@ -158,92 +112,180 @@ public class ClassQueries extends Query implements IClassQueries {
 		"SET description = ? " +
 		"WHERE urn = ?";
 	
-	// Updates a user's role in a class.
-	private static final String SQL_UPDATE_USER_CLASS =
-		"UPDATE user_class " +
-		"SET user_class_role_id = (" +
-			"SELECT id " +
-			"FROM user_class_role " +
-			"WHERE role = ?" +
-		")" +
-		"WHERE user_id = (" +
-			"SELECT id " +
-			"FROM user " +
-			"WHERE username = ?" +
-		")" +
-		"AND class_id = (" +
-			"SELECT id " +
-			"FROM class " +
-			"WHERE urn = ?" +
-		")";
-	
 	// Deletes a class.
 	private static final String SQL_DELETE_CLASS = 
 		"DELETE FROM class " + 
 		"WHERE urn = ?";
 	
+	// Returns the database ID of a class.
+	private static final String SQL_GET_CLASS_PK =
+		"SELECT id " +
+		"FROM class " +
+		"WHERE urn = ?";
+	
+	// Returns the database IDs of all of the class roles.
+	private static final String SQL_GET_CLASS_ROLE_PKS =
+		"SELECT id, role " +
+		"FROM user_class_role";
+	
+	// Returns the database IDs of a set of users, which must be completed 
+	// with the parameter list for the usernames.
+	private static final String SQL_GET_USER_PKS =
+		"SELECT id, username " +
+		"FROM user " +
+		"WHERE username IN ";
+	
+	// Returns the database ID of each user in a class and of their role.
+	private static final String SQL_GET_CLASS_ROSTER =
+		"SELECT user_id, user_class_role_id " +
+		"FROM user_class " +
+		"WHERE class_id = ?";
+	
+	// Returns the database ID of each campaign associated with a class along
+	// with the default campaign roles for each class role. Campaigns without
+	// default roles have a single row with NULL roles.
+	private static final String SQL_GET_CLASS_CAMPAIGN_DEFAULT_ROLES =
+		"SELECT cc.campaign_id, " +
+			"ccdr.user_class_role_id, " +
+			"ccdr.user_role_id " +
+		"FROM campaign_class cc " +
+		"LEFT JOIN campaign_class_default_role ccdr " +
+			"ON cc.id = ccdr.campaign_class_id " +
+		"WHERE cc.class_id = ?";
+	
+	// Returns, for a set of users and each of the campaigns associated with a
+	// class, the number of classes through which the user is associated with
+	// the campaign. This must be completed with the parameter list for the 
+	// users' database IDs.
+	private static final String SQL_COUNT_USERS_CLASSES_PER_CAMPAIGN =
+		"SELECT uc.user_id, cc.campaign_id, COUNT(cc.id) " +
+		"FROM user_class uc, campaign_class cc, campaign_class this_cc " +
+		"WHERE this_cc.class_id = ? " +
+		"AND cc.campaign_id = this_cc.campaign_id " +
+		"AND uc.class_id = cc.class_id " +
+		"AND uc.user_id IN ";
+	private static final String SQL_COUNT_USERS_CLASSES_PER_CAMPAIGN_GROUP =
+		" GROUP BY uc.user_id, cc.campaign_id";
+	
+	// Returns, for a set of users, their roles in each of the campaigns 
+	// associated with a class. This must be completed with the parameter list
+	// for the users' database IDs.
+	private static final String SQL_GET_USERS_CLASS_CAMPAIGN_ROLES =
+		"SELECT urc.user_id, urc.campaign_id, urc.user_role_id " +
+		"FROM user_role_campaign urc, campaign_class cc " +
+		"WHERE cc.class_id = ? " +
+		"AND urc.campaign_id = cc.campaign_id " +
+		"AND urc.user_id IN ";
+	
+	// Associates a user with a class.
+	private static final String SQL_INSERT_USER_CLASS = 
+		"INSERT INTO user_class(user_id, class_id, user_class_role_id) " +
+		"VALUES (?,?,?)";
+	
+	// Updates a user's role in a class.
+	private static final String SQL_UPDATE_USER_CLASS =
+		"UPDATE user_class " +
+		"SET user_class_role_id = ? " +
+		"WHERE user_id = ? " +
+		"AND class_id = ?";
+	
 	// Deletes a user from a class.
 	private static final String SQL_DELETE_USER_FROM_CLASS =
 		"DELETE FROM user_class " +
-		"WHERE user_id = (" +
-			"SELECT id " +
-			"FROM user " +
-			"WHERE username = ?" +
-		") " +
-		"AND class_id = (" +
-			"SELECT id " +
-			"FROM class " +
-			"WHERE urn = ?" +
-		")";
+		"WHERE user_id = ? " +
+		"AND class_id = ?";
 	
-	// Deletes a user from a campaign as long as they have the given role.
+	// Associates a user with a campaign.
+	private static final String SQL_INSERT_USER_CAMPAIGN =
+		"INSERT INTO user_role_campaign(user_id, campaign_id, user_role_id) " +
+		"VALUES (?,?,?)";
+	
+	// Deletes a role from a user in a campaign.
 	private static final String SQL_DELETE_USER_FROM_CAMPAIGN =
 		"DELETE FROM user_role_campaign " +
-		"WHERE user_id = (" +
-			"SELECT id " +
-			"FROM user " +
-			"WHERE username = ?" +
-		") " +
-		"AND campaign_id = (" +
-			"SELECT id " +
-			"FROM campaign " +
-			"WHERE urn = ?" +
-		") " +
-		"AND user_role_id = (" +
-			"SELECT id " +
-			"FROM user_role " +
-			"WHERE role = ?" +
-		")";
+		"WHERE user_id = ? " +
+		"AND campaign_id = ? " +
+		"AND user_role_id = ?";
 	
 	/**
-	 * Creates this object.
+	 * A user's role in a campaign by their database IDs.
 	 * 
-	 * @param dataSource A DataSource object to use when querying the database.
+	 * @author John Jenkins
 	 */
-	private ClassQueries(DataSource dataSource, ICampaignClassQueries iCampaignClassQueries, 
-			IUserCampaignClassQueries iUserCampaignClassQueries, IUserClassQueries iUserClassQueries, IUserCampaignQueries iUserCampaignQueries) {
-		super(dataSource);
+	private static final class UserCampaignRole {
+		private final long userId;
+		private final long campaignId;
+		private final long roleId;
 		
-		if(iCampaignClassQueries == null) {
-			throw new IllegalArgumentException("An instance of ICampaignClassQueries is a required argument.");
+		/**
+		 * Creates the association.
+		 * 
+		 * @param userId The user's database ID.
+		 * 
+		 * @param campaignId The campaign's database ID.
+		 * 
+		 * @param roleId The campaign role's database ID.
+		 */
+		private UserCampaignRole(
+				final long userId, 
+				final long campaignId, 
+				final long roleId) {
+			
+			this.userId = userId;
+			this.campaignId = campaignId;
+			this.roleId = roleId;
 		}
 		
-		if(iUserCampaignClassQueries == null) {
-			throw new IllegalArgumentException("An instance of IUserCampaignClassQueries is a required argument.");
+		/**
+		 * Returns the parameters for the insert and delete statements.
+		 * 
+		 * @return The user's, campaign's, and role's IDs in that order.
+		 */
+		private Object[] toParameters() {
+			return new Object[] { userId, campaignId, roleId };
 		}
 		
-		if(iUserClassQueries == null) {
-			throw new IllegalArgumentException("An instance of IUserClassQueries is a required argument.");
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + (int) (userId ^ (userId >>> 32));
+			result = prime * result + (int) (campaignId ^ (campaignId >>> 32));
+			result = prime * result + (int) (roleId ^ (roleId >>> 32));
+			return result;
 		}
 		
-		if(iUserCampaignQueries == null) {
-			throw new IllegalArgumentException("An instance of IUserCampaignQueries is a required argument.");
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(final Object obj) {
+			if(this == obj) {
+				return true;
+			}
+			if(! (obj instanceof UserCampaignRole)) {
+				return false;
+			}
+			UserCampaignRole other = (UserCampaignRole) obj;
+			return 
+				(userId == other.userId) && 
+				(campaignId == other.campaignId) && 
+				(roleId == other.roleId);
 		}
-		
-		campaignClassQueries = iCampaignClassQueries;
-		userCampaignClassQueries = iUserCampaignClassQueries;
-		userClassQueries = iUserClassQueries;
-		userCampaignQueries = iUserCampaignQueries;
+	}
+	
+	/**
+	 * Creates this object.
+	 * 
+	 * @param dataSource A DataSource object to use when querying the database.
+	 */
+	private ClassQueries(DataSource dataSource) {
+		super(dataSource);
 	}
 	
 	/* (non-Javadoc)
@@ -656,6 +698,108 @@ public class ClassQueries extends Query implements IClassQueries {
 		}
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IClassQueries#getUserRolePairs(java.lang.String, java.util.Collection)
+	 */
+	@Override
+	public Map<String, Map<String, Clazz.Role>> getUserRolePairs(
+			final String username,
+			final Collection<String> classIds)
+			throws DataAccessException {
+		
+		final Map<String, Map<String, Clazz.Role>> result =
+				new HashMap<String, Map<String, Clazz.Role>>();
+		for(String classId : classIds) {
+			result.put(classId, new HashMap<String, Clazz.Role>());
+		}
+		if(classIds.isEmpty()) {
+			return result;
+		}
+		
+		String sql = 
+				"SELECT c.urn, u.username, " +
+					"CASE WHEN (" +
+						"SELECT EXISTS (" +
+							"SELECT ru.id " +
+							"FROM user ru, " +
+								"user_class ruc, user_class_role rucr " +
+							"WHERE ru.username = ? " +
+							"AND (" +
+								"(ru.admin = true)" +
+								" OR " +
+								"(c.id = ruc.class_id " +
+									"AND ru.id = ruc.user_id " +
+									"AND rucr.id = ruc.user_class_role_id " +
+									"AND rucr.role = '" + 
+									Clazz.Role.PRIVILEGED.toString().toLowerCase() + 
+									"'" +
+								")" +
+							")" +
+						")" +
+					") " +
+					"THEN ucr.role " +
+					"ELSE NULL " +
+					"END " +
+					"AS role " +
+				"FROM user u, user_class uc, user_class_role ucr, class c " +
+				"WHERE c.urn IN " + 
+					StringUtils.generateStatementPList(classIds.size()) + " " +
+				"AND c.id = uc.class_id " +
+				"AND u.id = uc.user_id " +
+				"AND ucr.id = uc.user_class_role_id";
+		
+		List<Object> parameters = new ArrayList<Object>(classIds.size() + 1);
+		parameters.add(username);
+		parameters.addAll(classIds);
+		
+		try {
+			getJdbcTemplate().query(
+					sql, 
+					parameters.toArray(), 
+					new RowCallbackHandler() {
+						/**
+						 * Adds each user-role pair to its class' map.
+						 */
+						@Override
+						public void processRow(
+								final ResultSet rs)
+								throws SQLException {
+							
+							Map<String, Clazz.Role> classRoles =
+									result.get(rs.getString("urn"));
+							
+							String role = rs.getString("role");
+							if(role == null) {
+								classRoles.put(rs.getString("username"), null);
+							}
+							else {
+								try {
+									classRoles.put(
+											rs.getString("username"), 
+											Clazz.Role.getValue(role));
+								}
+								catch(IllegalArgumentException e) {
+									throw new SQLException(
+											"The role is unknown.",
+											e);
+								}
+							}
+						}
+					});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+					"Error executing SQL '" + 
+							sql + 
+							"' with parameters: " + 
+							parameters, 
+					e);
+		}
+		
+		return result;
+	}
+	
 	/* (non-Javadoc)
 	 * @see org.ohmage.query.impl.IClassQueries#updateClass(java.lang.String, java.lang.String, java.lang.String, java.util.Map, java.util.Collection)
 	 */
@@ -701,13 +845,19 @@ public class ClassQueries extends Query implements IClassQueries {
 				}
 			}
 			
-			// If either of the user lists are non-empty, we grab the list of
-			// campaigns associated with the class now as it will be needed, 
-			// and we don't want to grab it multiple times.
-			List<String> campaignIds = Collections.emptyList();
+			// Create the list of warning messages to be returned to the 
+			// caller.
+			List<String> warningMessages = new LinkedList<String>();
+			
+			// Delete the users before adding the new ones. This facilitates
+			// upgrading a user from one role to another.
 			if((usersToRemove != null) || (userAndRolesToAdd != null)) {
 				try {
-					campaignIds = campaignClassQueries.getCampaignsAssociatedWithClass(classId);
+					updateRoster(
+						classId, 
+						userAndRolesToAdd, 
+						usersToRemove, 
+						warningMessages);
 				}
 				catch(DataAccessException e) {
 					transactionManager.rollback(status);
@@ -715,286 +865,526 @@ public class ClassQueries extends Query implements IClassQueries {
 				}
 			}
 			
-			// Delete the users before adding the new ones. This facilitates
-			// upgrading a user from one role to another.
-			if(usersToRemove != null) {
-				for(String username : usersToRemove) {
-					// Get the user's role in the class before removing
-					// it.
-					Clazz.Role classRole;
-					try {
-						classRole = userClassQueries.getUserClassRole(classId, username);
-					}
-					catch(DataAccessException e) {
-						transactionManager.rollback(status);
-						throw e;
-					}
-					
-					// To prevent a concurrency bug, the user may have already
-					// been deleted from the class which will be indicated by
-					// having a null value for the role. When this happens, we
-					// may continue on with the next user.
-					if(classRole == null) {
-						continue;
-					}
-					
-					// Remove the user from the class.
-					try {
-						getJdbcTemplate().update(SQL_DELETE_USER_FROM_CLASS, new Object[] { username, classId });
-					}
-					catch(org.springframework.dao.DataAccessException e) {
-						transactionManager.rollback(status);
-						throw new DataAccessException("Error while executing SQL '" + SQL_DELETE_USER_FROM_CLASS + "' with parameters: " + 
-								username + ", " + classId, e);
+			// Commit the transaction.
+			try {
+				transactionManager.commit(status);
+			}
+			catch(TransactionException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException("Error while committing the transaction.", e);
+			}
+			
+			return warningMessages;
+		}
+		catch(TransactionException e) {
+			throw new DataAccessException("Error while attempting to rollback the transaction.", e);
+		}
+	}
+	
+	/**
+	 * Removes and then adds users to a class and grants or revokes the 
+	 * default campaign roles of each of the campaigns associated with the 
+	 * class accordingly. Everything that is needed is read in a fixed number
+	 * of statements, with the users read in chunks, the changes are computed
+	 * in memory, and then they are applied with one batch per kind of 
+	 * change. This must be called within a transaction.
+	 * 
+	 * @param classId The class' unique identifier.
+	 * 
+	 * @param userAndRolesToAdd The users to add to the class and their roles
+	 * 							or null if no users are being added.
+	 * 
+	 * @param usersToRemove The users to remove from the class or null if no
+	 * 						users are being removed.
+	 * 
+	 * @param warningMessages The list to which a warning is added for each
+	 * 						  user whose role in the class was changed.
+	 * 
+	 * @throws DataAccessException A user that is being added does not exist 
+	 * 							   or there was an error.
+	 */
+	private void updateRoster(
+			final String classId,
+			final Map<String, Clazz.Role> userAndRolesToAdd,
+			final Collection<String> usersToRemove,
+			final List<String> warningMessages)
+			throws DataAccessException {
+		
+		Set<String> usernames = new HashSet<String>();
+		if(usersToRemove != null) {
+			usernames.addAll(usersToRemove);
+		}
+		if(userAndRolesToAdd != null) {
+			usernames.addAll(userAndRolesToAdd.keySet());
+		}
+		if(usernames.isEmpty()) {
+			return;
+		}
+		
+		// Get the class' ID.
+		final long classPk;
+		try {
+			classPk = 
+				getJdbcTemplate().queryForLong(
+					SQL_GET_CLASS_PK, 
+					new Object[] { classId });
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + SQL_GET_CLASS_PK + 
+					"' with parameter: " + classId, 
+				e);
+		}
+		
+		// Get the IDs of the class roles.
+		final Map<Clazz.Role, Long> classRolePks = 
+			new HashMap<Clazz.Role, Long>();
+		final Map<Long, Clazz.Role> classRoles = new HashMap<Long, Clazz.Role>();
+		try {
+			getJdbcTemplate().query(
+				SQL_GET_CLASS_ROLE_PKS, 
+				new RowCallbackHandler() {
+					@Override
+					public void processRow(
+							final ResultSet rs)
+							throws SQLException {
+						
+						Clazz.Role role = 
+							Clazz.Role.getValue(rs.getString("role"));
+						classRolePks.put(role, rs.getLong("id"));
+						classRoles.put(rs.getLong("id"), role);
 					}
-					
-					// For all of the campaigns associated with the class, see
-					// if the user is associated with any of them in any other
-					// capacity, and, if not, dissociate them from the 
-					// campaign.
-					for(String campaignId : campaignIds) {
-						// If they are associated with the campaign through 
-						// no classes, then we are going to remove any 
-						// campaign-class associations that may exist.
-						int numClasses;
-						try {
-							numClasses = userCampaignClassQueries.getNumberOfClassesThroughWhichUserIsAssociatedWithCampaign(username, campaignId);
+				});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + SQL_GET_CLASS_ROLE_PKS + "'.", 
+				e);
+		}
+		
+		// Get the IDs of the users. Usernames are compared without regard to
+		// case, just as they are by the database.
+		final Map<String, Long> userPks = new HashMap<String, Long>();
+		for(List<String> chunk : chunk(usernames)) {
+			String sql = 
+				SQL_GET_USER_PKS + 
+				StringUtils.generateStatementPList(chunk.size());
+			
+			try {
+				getJdbcTemplate().query(
+					sql, 
+					chunk.toArray(), 
+					new RowCallbackHandler() {
+						@Override
+						public void processRow(
+								final ResultSet rs)
+								throws SQLException {
+							
+							userPks.put(
+								rs.getString("username").toLowerCase(), 
+								rs.getLong("id"));
 						}
-						catch(DataAccessException e) {
-							transactionManager.rollback(status);
-							throw e;
+					});
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				throw new DataAccessException(
+					"Error executing SQL '" + sql + "' with parameters: " + 
+						chunk, 
+					e);
+			}
+		}
+		if(userPks.isEmpty()) {
+			// None of the users that are being removed exist, so there is 
+			// nothing to do, but, if any are being added, it is an error.
+			if((userAndRolesToAdd != null) && 
+				(! userAndRolesToAdd.isEmpty())) {
+				
+				throw new DataAccessException(
+					"The user does not exist: " + 
+						userAndRolesToAdd.keySet().iterator().next());
+			}
+			return;
+		}
+		
+		// Get the class' roster.
+		final Map<Long, Long> roster = new HashMap<Long, Long>();
+		try {
+			getJdbcTemplate().query(
+				SQL_GET_CLASS_ROSTER, 
+				new Object[] { classPk }, 
+				new RowCallbackHandler() {
+					@Override
+					public void processRow(
+							final ResultSet rs)
+							throws SQLException {
+						
+						roster.put(
+							rs.getLong("user_id"), 
+							rs.getLong("user_class_role_id"));
+					}
+				});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + SQL_GET_CLASS_ROSTER + 
+					"' with parameter: " + classPk, 
+				e);
+		}
+		
+		// Get the campaigns associated with the class and their default 
+		// roles for each class role.
+		final Map<Long, Map<Long, List<Long>>> defaultRoles = 
+			new HashMap<Long, Map<Long, List<Long>>>();
+		try {
+			getJdbcTemplate().query(
+				SQL_GET_CLASS_CAMPAIGN_DEFAULT_ROLES, 
+				new Object[] { classPk }, 
+				new RowCallbackHandler() {
+					@Override
+					public void processRow(
+							final ResultSet rs)
+							throws SQLException {
+						
+						long campaignPk = rs.getLong("campaign_id");
+						Map<Long, List<Long>> campaignDefaultRoles = 
+							defaultRoles.get(campaignPk);
+						if(campaignDefaultRoles == null) {
+							campaignDefaultRoles = 
+								new HashMap<Long, List<Long>>();
+							defaultRoles.put(
+								campaignPk, 
+								campaignDefaultRoles);
 						}
 						
-						if(numClasses == 0) {
-							// Get the default roles which are to be revoked
-							// from the user.
-							List<Campaign.Role> defaultRoles;
-							try {
-								defaultRoles = campaignClassQueries.getDefaultCampaignRolesForCampaignClass(campaignId, classId, classRole);
+						long classRolePk = rs.getLong("user_class_role_id");
+						if(rs.wasNull()) {
+							return;
+						}
+						List<Long> roles = 
+							campaignDefaultRoles.get(classRolePk);
+						if(roles == null) {
+							roles = new LinkedList<Long>();
+							campaignDefaultRoles.put(classRolePk, roles);
+						}
+						roles.add(rs.getLong("user_role_id"));
+					}
+				});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + 
+					SQL_GET_CLASS_CAMPAIGN_DEFAULT_ROLES + 
+					"' with parameter: " + classPk, 
+				e);
+		}
+		
+		// For each of the users and each of the campaigns, get the number of
+		// classes through which the user is associated with the campaign and
+		// the user's roles in the campaign.
+		final Map<Long, Map<Long, Integer>> numClasses = 
+			new HashMap<Long, Map<Long, Integer>>();
+		final Set<UserCampaignRole> originalCampaignRoles = 
+			new HashSet<UserCampaignRole>();
+		if(! defaultRoles.isEmpty()) {
+			for(List<Long> chunk : chunk(userPks.values())) {
+				List<Object> parameters = 
+					new ArrayList<Object>(chunk.size() + 1);
+				parameters.add(classPk);
+				parameters.addAll(chunk);
+				
+				String countSql = 
+					SQL_COUNT_USERS_CLASSES_PER_CAMPAIGN + 
+					StringUtils.generateStatementPList(chunk.size()) +
+					SQL_COUNT_USERS_CLASSES_PER_CAMPAIGN_GROUP;
+				try {
+					getJdbcTemplate().query(
+						countSql, 
+						parameters.toArray(), 
+						new RowCallbackHandler() {
+							@Override
+							public void processRow(
+									final ResultSet rs)
+									throws SQLException {
+								
+								long userPk = rs.getLong(1);
+								Map<Long, Integer> userNumClasses = 
+									numClasses.get(userPk);
+								if(userNumClasses == null) {
+									userNumClasses = 
+										new HashMap<Long, Integer>();
+									numClasses.put(userPk, userNumClasses);
+								}
+								userNumClasses.put(
+									rs.getLong(2), 
+									rs.getInt(3));
 							}
-							catch(DataAccessException e) {
-								transactionManager.rollback(status);
-								throw e;
+						});
+				}
+				catch(org.springframework.dao.DataAccessException e) {
+					throw new DataAccessException(
+						"Error executing SQL '" + countSql + 
+							"' with parameters: " + parameters, 
+						e);
+				}
+				
+				String rolesSql = 
+					SQL_GET_USERS_CLASS_CAMPAIGN_ROLES + 
+					StringUtils.generateStatementPList(chunk.size());
+				try {
+					getJdbcTemplate().query(
+						rolesSql, 
+						parameters.toArray(), 
+						new RowCallbackHandler() {
+							@Override
+							public void processRow(
+									final ResultSet rs)
+									throws SQLException {
+								
+								originalCampaignRoles.add(
+									new UserCampaignRole(
+										rs.getLong("user_id"), 
+										rs.getLong("campaign_id"), 
+										rs.getLong("user_role_id")));
 							}
+						});
+				}
+				catch(org.springframework.dao.DataAccessException e) {
+					throw new DataAccessException(
+						"Error executing SQL '" + rolesSql + 
+							"' with parameters: " + parameters, 
+						e);
+				}
+			}
+		}
+		
+		// Compute the new roster and campaign roles.
+		Map<Long, Long> newRoster = new HashMap<Long, Long>(roster);
+		Set<UserCampaignRole> campaignRoles = 
+			new HashSet<UserCampaignRole>(originalCampaignRoles);
+		
+		// Delete the users before adding the new ones. This facilitates
+		// upgrading a user from one role to another.
+		if(usersToRemove != null) {
+			for(String username : usersToRemove) {
+				// Users that don't exist or have already been removed from 
+				// the class are ignored.
+				Long userPk = userPks.get(username.toLowerCase());
+				if(userPk == null) {
+					continue;
+				}
+				Long classRolePk = newRoster.remove(userPk);
+				if(classRolePk == null) {
+					continue;
+				}
+				
+				// For all of the campaigns associated with the class, if the
+				// user is no longer associated with them through any classes,
+				// revoke the default roles they were given through this 
+				// class.
+				for(Long campaignPk : defaultRoles.keySet()) {
+					int userNumClasses = 
+						addNumClasses(numClasses, userPk, campaignPk, -1);
+					
+					if(userNumClasses == 0) {
+						for(Long rolePk : 
+								getDefaultRoles(
+									defaultRoles, 
+									campaignPk, 
+									classRolePk)) {
 							
-							// For each of the default roles, remove that role
-							// from the user.
-							for(Campaign.Role defaultRole : defaultRoles) {
-								try {
-									getJdbcTemplate().update(
-											SQL_DELETE_USER_FROM_CAMPAIGN,
-											new Object[] { username, campaignId, defaultRole.toString() });
-								}
-								catch(org.springframework.dao.DataAccessException e) {
-									transactionManager.rollback(status);
-									throw new DataAccessException("Error executing SQL '" + SQL_DELETE_USER_FROM_CAMPAIGN + "' with parameters: " +
-											username + ", " + campaignId + ", " + defaultRole, e);
-								}
-							}
+							campaignRoles.remove(
+								new UserCampaignRole(
+									userPk, 
+									campaignPk, 
+									rolePk));
 						}
 					}
 				}
 			}
-			
-			// Create the list of warning messages to be returned to the 
-			// caller.
-			List<String> warningMessages = new LinkedList<String>();
-			
-			// Add the users to the class.
-			if(userAndRolesToAdd != null) {
+		}
+		
+		// Add the users to the class.
+		if(userAndRolesToAdd != null) {
+			for(String username : userAndRolesToAdd.keySet()) {
+				Clazz.Role role = userAndRolesToAdd.get(username);
 				
-				for(String username : userAndRolesToAdd.keySet()) {
+				Long userPk = userPks.get(username.toLowerCase());
+				if(userPk == null) {
+					throw new DataAccessException(
+						"The user does not exist: " + username);
+				}
+				Long classRolePk = classRolePks.get(role);
+				
+				boolean addDefaultRoles = false;
+				Long originalClassRolePk = newRoster.put(userPk, classRolePk);
+				if(originalClassRolePk == null) {
+					if(LOGGER.isDebugEnabled()) {
+						LOGGER.debug("The user did not exist in the class so the user is being added.");
+					}
 					
-					// Get the user's (new) role.
-					Clazz.Role role = userAndRolesToAdd.get(username);
+					for(Long campaignPk : defaultRoles.keySet()) {
+						addNumClasses(numClasses, userPk, campaignPk, 1);
+					}
+					addDefaultRoles = true;
+				}
+				else if(! originalClassRolePk.equals(classRolePk)) {
+					Clazz.Role originalRole = 
+						classRoles.get(originalClassRolePk);
 					
-					boolean addDefaultRoles = false;
+					if(LOGGER.isDebugEnabled()) {
+						LOGGER.debug("Changing user's class role from " + originalRole + " to " + role);
+					}
 					
-					try {
-						
-						if(! userClassQueries.userBelongsToClass(classId, username)) {
-							
-							if(LOGGER.isDebugEnabled()) {
-								LOGGER.debug("The user did not exist in the class so the user is being added before any updates are attemped.");
-							}
-							
-							getJdbcTemplate().update(SQL_INSERT_USER_CLASS, new Object[] { username, classId, role.toString() } );
-							addDefaultRoles = true;
-						}
-						
-						else  {
-							
-							if(LOGGER.isDebugEnabled()) {
-								LOGGER.debug("The user already has a role in the class so only updates will be performed.");
-							}
-							
-							// Get the user's current role.
-							Clazz.Role originalRole = null;
-							try {
-								originalRole = userClassQueries.getUserClassRole(classId, username);
-							}
-							catch(DataAccessException e) {
-								transactionManager.rollback(status);
-								throw e;
-							}
-							
-							// If their new role is the same as their old role, we
-							// will ignore this update.
-							if(! role.equals(originalRole)) {
-								
-								if(LOGGER.isDebugEnabled()) {
-									LOGGER.debug("Changing user's class role from " + originalRole + " to " + role);
-								}
-								
-								// Update their role to the new role.
-								try {
-									if(getJdbcTemplate().update(SQL_UPDATE_USER_CLASS, new Object[] { role.toString(), username, classId }) > 0) {
-										warningMessages.add("The user '" + username + 
-												"' was already associated with the class '" + classId + 
-												"'. Their role has been updated from '" + originalRole +
-												"' to '" + role + "'");
-									}
-								}
-								catch(org.springframework.dao.DataAccessException e) {
-									transactionManager.rollback(status);
-									throw new DataAccessException("Error while executing SQL '" + SQL_UPDATE_USER_CLASS + "' with parameters: " + 
-											role + ", " + username + ", " + classId, e);
-								}
-								
-								// For each of the campaigns associated with this
-								// class,
-								for(String campaignId : campaignIds) {
-									// If they are only associated with this 
-									// campaign in this class.
-									int numClasses;
-									try {
-										numClasses = userCampaignClassQueries.getNumberOfClassesThroughWhichUserIsAssociatedWithCampaign(username, campaignId);
-									}
-									catch(DataAccessException e) {
-										transactionManager.rollback(status);
-										throw e;
-									}
-									
-									if(numClasses == 1) {
-										
-										if(LOGGER.isDebugEnabled()) {
-											LOGGER.debug("The user only belonged to the campaign " + campaignId + " via one class" +
-												" and their class role is changing so all default campaign roles are being deleted.");
-										}
-										
-										// Remove the current roles with the 
-										// campaign and add a new role with the
-										// campaign.
-										List<Campaign.Role> defaultRoles;
-										try {
-											defaultRoles = campaignClassQueries.getDefaultCampaignRolesForCampaignClass(campaignId, classId, originalRole);
-										}
-										catch(DataAccessException e) {
-											transactionManager.rollback(status);
-											throw e;
-										}
-										
-										for(Campaign.Role defaultRole : defaultRoles) {
-											try {
-												getJdbcTemplate().update(
-														SQL_DELETE_USER_FROM_CAMPAIGN,
-														new Object[] { username, campaignId, defaultRole.toString() });
-											}
-											catch(org.springframework.dao.DataAccessException e) {
-												transactionManager.rollback(status);
-												throw new DataAccessException("Error executing SQL '" + SQL_DELETE_USER_FROM_CAMPAIGN + "' with parameters: " +
-														username + ", " + campaignId + ", " + defaultRole, e);
-											}
-										}
-									}
-									
-									addDefaultRoles = true;
-								}
-							}
-							else {
+					warningMessages.add("The user '" + username + 
+							"' was already associated with the class '" + classId + 
+							"'. Their role has been updated from '" + originalRole +
+							"' to '" + role + "'");
+					
+					// For each of the campaigns that the user is only 
+					// associated with through this class, revoke the default
+					// roles of their original role.
+					for(Long campaignPk : defaultRoles.keySet()) {
+						if(addNumClasses(numClasses, userPk, campaignPk, 0) == 1) {
+							for(Long rolePk : 
+									getDefaultRoles(
+										defaultRoles, 
+										campaignPk, 
+										originalClassRolePk)) {
 								
-								if(LOGGER.isDebugEnabled()) {
-									LOGGER.debug("Nothing to do because the user's class role is not changing.");
-								}
+								campaignRoles.remove(
+									new UserCampaignRole(
+										userPk, 
+										campaignPk, 
+										rolePk));
 							}
 						}
+						
+						addDefaultRoles = true;
 					}
-					catch(org.springframework.dao.DataAccessException e) {
-						transactionManager.rollback(status);
-						throw new DataAccessException("Error while executing SQL '" + SQL_INSERT_USER_CLASS + "' with parameters: " + 
-								username + ", " + classId + ", " + role, e);
-					}
-					catch(DataAccessException e) {
-						transactionManager.rollback(status);
-						throw e;
-					}
-
-					if(addDefaultRoles) {
-						// For each of the campaign's associated with the 
-						// class, add them to the campaign with the default
-						// roles.
-						for(String campaignId : campaignIds) {
-							List<Campaign.Role> defaultRoles;
-							try {
-								defaultRoles = campaignClassQueries.getDefaultCampaignRolesForCampaignClass(campaignId, classId, role);
-							}
-							catch(DataAccessException e) {
-								transactionManager.rollback(status);
-								throw e;
-							}
+				}
+				else if(LOGGER.isDebugEnabled()) {
+					LOGGER.debug("Nothing to do because the user's class role is not changing.");
+				}
+				
+				// Grant the user the default roles of each of the campaigns
+				// associated with the class. The user may already have some
+				// of them via another class or directly.
+				if(addDefaultRoles) {
+					for(Long campaignPk : defaultRoles.keySet()) {
+						for(Long rolePk : 
+								getDefaultRoles(
+									defaultRoles, 
+									campaignPk, 
+									classRolePk)) {
 							
-							for(Campaign.Role defaultRole : defaultRoles) {
-								try {
-									final Object[] params = new Object[] {username, campaignId, defaultRole.toString()};
-									
-									if(LOGGER.isDebugEnabled()) {
-										LOGGER.debug("Assigning the user a default campaign role of " + defaultRole + " in campaign " + campaignId);
-									}
-									
-									// The user may already have the role in
-									// the campaign via another class or the 
-									// user may have not been in any class
-									// at all.
-									if(! userCampaignQueries.getUserCampaignRoles(username, campaignId).contains(defaultRole)) {
-									
-										getJdbcTemplate().update(SQL_INSERT_USER_CAMPAIGN, params);
-									} 
-									else {
-										
-										if(LOGGER.isDebugEnabled()) {
-											LOGGER.debug("User already has this role in the campaign: " + Arrays.asList(params));
-										}			
-									}
-								}
-								catch(org.springframework.dao.DataAccessException e) {
-									transactionManager.rollback(status);
-									throw new DataAccessException("Error executing SQL '" + SQL_INSERT_USER_CAMPAIGN + "' with parameters: " +
-											username + ", " + campaignId + ", " + defaultRole, e);
-								}
-								catch(DataAccessException e) {
-									transactionManager.rollback(status);
-									throw e;
-								}
-							}
+							campaignRoles.add(
+								new UserCampaignRole(
+									userPk, 
+									campaignPk, 
+									rolePk));
 						}
 					}
 				}
 			}
+		}
+		
+		// Build the batches from the differences.
+		List<Object[]> userClassDeletes = new LinkedList<Object[]>();
+		List<Object[]> userClassUpdates = new LinkedList<Object[]>();
+		List<Object[]> userClassInserts = new LinkedList<Object[]>();
+		for(Long userPk : userPks.values()) {
+			Long originalClassRolePk = roster.get(userPk);
+			Long classRolePk = newRoster.get(userPk);
 			
-			// Commit the transaction.
-			try {
-				transactionManager.commit(status);
+			if(originalClassRolePk == null) {
+				if(classRolePk != null) {
+					userClassInserts.add(
+						new Object[] { userPk, classPk, classRolePk });
+				}
 			}
-			catch(TransactionException e) {
-				transactionManager.rollback(status);
-				throw new DataAccessException("Error while committing the transaction.", e);
+			else if(classRolePk == null) {
+				userClassDeletes.add(new Object[] { userPk, classPk });
+			}
+			else if(! originalClassRolePk.equals(classRolePk)) {
+				userClassUpdates.add(
+					new Object[] { classRolePk, userPk, classPk });
 			}
-			
-			return warningMessages;
 		}
-		catch(TransactionException e) {
-			throw new DataAccessException("Error while attempting to rollback the transaction.", e);
+		
+		List<Object[]> userCampaignDeletes = new LinkedList<Object[]>();
+		for(UserCampaignRole campaignRole : originalCampaignRoles) {
+			if(! campaignRoles.contains(campaignRole)) {
+				userCampaignDeletes.add(campaignRole.toParameters());
+			}
+		}
+		List<Object[]> userCampaignInserts = new LinkedList<Object[]>();
+		for(UserCampaignRole campaignRole : campaignRoles) {
+			if(! originalCampaignRoles.contains(campaignRole)) {
+				userCampaignInserts.add(campaignRole.toParameters());
+			}
+		}
+		
+		// Apply the batches.
+		batchUpdate(SQL_DELETE_USER_FROM_CAMPAIGN, userCampaignDeletes);
+		batchUpdate(SQL_DELETE_USER_FROM_CLASS, userClassDeletes);
+		batchUpdate(SQL_UPDATE_USER_CLASS, userClassUpdates);
+		batchUpdate(SQL_INSERT_USER_CLASS, userClassInserts);
+		batchUpdate(SQL_INSERT_USER_CAMPAIGN, userCampaignInserts);
+	}
+	
+	/**
+	 * Adds to the number of classes through which a user is associated with
+	 * a campaign.
+	 * 
+	 * @param numClasses The numbers of classes by user and then campaign.
+	 * 
+	 * @param userPk The user's database ID.
+	 * 
+	 * @param campaignPk The campaign's database ID.
+	 * 
+	 * @param amount The amount to add, which may be zero or negative.
+	 * 
+	 * @return The new number of classes.
+	 */
+	private static int addNumClasses(
+			final Map<Long, Map<Long, Integer>> numClasses,
+			final Long userPk,
+			final Long campaignPk,
+			final int amount) {
+		
+		Map<Long, Integer> userNumClasses = numClasses.get(userPk);
+		if(userNumClasses == null) {
+			userNumClasses = new HashMap<Long, Integer>();
+			numClasses.put(userPk, userNumClasses);
+		}
+		
+		Integer current = userNumClasses.get(campaignPk);
+		int result = ((current == null) ? 0 : current) + amount;
+		userNumClasses.put(campaignPk, result);
+		return result;
+	}
+	
+	/**
+	 * Returns the default campaign roles for a class role in a campaign.
+	 * 
+	 * @param defaultRoles The default roles by campaign and then class role.
+	 * 
+	 * @param campaignPk The campaign's database ID.
+	 * 
+	 * @param classRolePk The class role's database ID.
+	 * 
+	 * @return The default campaign roles' database IDs, which may be empty.
+	 */
+	private static List<Long> getDefaultRoles(
+			final Map<Long, Map<Long, List<Long>>> defaultRoles,
+			final Long campaignPk,
+			final Long classRolePk) {
+		
+		List<Long> result = defaultRoles.get(campaignPk).get(classRolePk);
+		if(result == null) {
+			return Collections.emptyList();
 		}
+		return result;
 	}
 	
 	/* (non-Javadoc)
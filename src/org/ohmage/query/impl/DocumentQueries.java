@@ -15,16 +15,12 @@
  ******************************************************************************/
 package org.ohmage.query.impl;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FilenameFilter;
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -32,9 +28,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.regex.Pattern;
 
 import javax.sql.DataSource;
 
@@ -43,6 +36,7 @@ import org.joda.time.DateTime;
 import org.ohmage.cache.PreferenceCache;
 import org.ohmage.domain.Clazz;
 import org.ohmage.domain.Document;
+import org.ohmage.domain.MediaBlob;
 import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.exception.CacheMissException;
 import org.ohmage.exception.DataAccessException;
@@ -181,6 +175,12 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 		"UPDATE document " +
 		"SET size = ? " +
 		"WHERE uuid = ?";
+	
+	// Updates the URL of a document's contents.
+	private static final String SQL_UPDATE_URL = 
+		"UPDATE document " +
+		"SET url = ? " +
+		"WHERE uuid = ?";
 
 	private static final String SQL_UPDATE_CAMPAIGN_ROLE = 
 		"UPDATE document_campaign_role " +
@@ -279,32 +279,8 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 			"WHERE username = ?" +
 		")";
 	
-	private static final String DOCUMENT_DIRECTORY_PATTERN_STRING = "[0-9]+";
-	private static final Pattern DOCUMENT_DIRECTORY_PATTERN = Pattern.compile(DOCUMENT_DIRECTORY_PATTERN_STRING);
-
-	private static final Lock DIRECTORY_CREATION_LOCK = new ReentrantLock();
-	
 	private static final int MAX_EXTENSION_LENGTH = 12;
 	
-	/**
-	 * Filters the subdirectories in a directory to only return those that
-	 * match the regular expression matcher for directories.
-	 * 
-	 * @author Joshua Selsky
-	 */
-	private static final class DirectoryFilter implements FilenameFilter {
-		/**
-		 * Returns true iff the filename is appropriate for the regular
-		 * expression.
-		 */
-		public boolean accept(File f, String name) {
-			return DOCUMENT_DIRECTORY_PATTERN.matcher(name).matches();
-		}
-	}
-	
-	// The current directory to which the next document should be saved.
-	private static File currLeafDirectory;
-	
 	/**
 	 * Creates this object.
 	 * 
@@ -324,25 +300,6 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 		// Create a new, random UUID to use to save this file.
 		String uuid = UUID.randomUUID().toString();
 		
-		// getDirectory() is used as opposed to accessing the current leaf
-		// directory class variable as it will do sanitation in case it hasn't
-		// been initialized or is full.
-		File documentDirectory = getDirectory();
-		File newFile = new File(documentDirectory.getAbsolutePath() + "/" + uuid);
-		String url = "file://" + newFile.getAbsolutePath();
-		
-		// Write the document to the file system.
-		try {
-			FileOutputStream os = new FileOutputStream(newFile);
-			os.write(contents);
-			os.flush();
-			os.close();
-		}
-		catch(IOException e) {
-			throw new DataAccessException("Error writing the new document to the system.", e);
-		}
-		long fileLength = newFile.length();
-		
 		// Parse the name and get the extension.
 		String extension = getExtension(name);
 		
@@ -355,6 +312,19 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 			PlatformTransactionManager transactionManager = new DataSourceTransactionManager(getDataSource());
 			TransactionStatus status = transactionManager.getTransaction(def);
 			
+			// Write the document to the media store. This is done within the
+			// transaction so that its reference is rolled back with it.
+			MediaBlob blob;
+			try {
+				blob = MediaBlobQueries.instance().storeBlob(new ByteArrayInputStream(contents), null);
+			}
+			catch(DataAccessException e) {
+				transactionManager.rollback(status);
+				throw e;
+			}
+			String url = blob.getUrl();
+			long fileLength = blob.getSize();
+			
 			// Insert the file in the DB.
 			try {
 				getJdbcTemplate().update(
@@ -371,10 +341,10 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 					);
 			}
 			catch(org.springframework.dao.DataAccessException e) {
-				if(newFile.delete()) {
+				if(blob.isCreated() && (! blob.getFile().delete())) {
 					LOGGER.warn(
 						"Could not delete the file that was just created: " +
-							newFile.toString());
+							blob.getFile().toString());
 				}
 				transactionManager.rollback(status);
 				throw new DataAccessException("Error executing SQL '" + SQL_INSERT_DOCUMENT + "' with parameters: " +
@@ -392,10 +362,10 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 					);
 			}
 			catch(org.springframework.dao.DataAccessException e) {
-				if(newFile.delete()) {
+				if(blob.isCreated() && (! blob.getFile().delete())) {
 					LOGGER.warn(
 						"Could not delete the file that was just created: " +
-							newFile.toString());
+							blob.getFile().toString());
 				}
 				transactionManager.rollback(status);
 				throw new DataAccessException("Error executing SQL '" + SQL_INSERT_DOCUMENT_USER_CREATOR + "' with parameters: " +
@@ -414,10 +384,10 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 					);
 			}
 			catch(org.springframework.dao.DataAccessException e) {
-				if(newFile.delete()) {
+				if(blob.isCreated() && (! blob.getFile().delete())) {
 					LOGGER.warn(
 						"Could not delete the file that was just created: " +
-							newFile.toString());
+							blob.getFile().toString());
 				}
 				transactionManager.rollback(status);
 				throw new DataAccessException("Error executing SQL '" + SQL_INSERT_USER_ROLE + "' with parameters: " +
@@ -439,10 +409,10 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 							);
 					}
 					catch(org.springframework.dao.DataAccessException e) {
-						if(newFile.delete()) {
+						if(blob.isCreated() && (! blob.getFile().delete())) {
 							LOGGER.warn(
 								"Could not delete the file that was just created: " +
-									newFile.toString());
+									blob.getFile().toString());
 						}
 						transactionManager.rollback(status);
 						throw new DataAccessException("Error executing SQL '" + SQL_INSERT_CAMPAIGN_ROLE + "' with parameters: " + 
@@ -466,10 +436,10 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 							);
 					}
 					catch(org.springframework.dao.DataAccessException e) {
-						if(newFile.delete()) {
+						if(blob.isCreated() && (! blob.getFile().delete())) {
 							LOGGER.warn(
 								"Could not delete the file that was just created: " +
-									newFile.toString());
+									blob.getFile().toString());
 						}
 						transactionManager.rollback(status);
 						throw new DataAccessException("Error executing SQL '" + SQL_INSERT_CLASS_ROLE + "' with parameters: " + 
@@ -894,6 +864,10 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 				transactionManager.rollback(status);
 				throw e;
 			}
+			catch(DataAccessException e) {
+				transactionManager.rollback(status);
+				throw e;
+			}
 			
 			// Commit transaction.
 			try {
@@ -932,10 +906,19 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 			}
 			
 			try {
-				if(! (new File((new URL(documentUrl)).getFile())).delete()) {
-					LOGGER.warn("The document no longer existed, so the deletion only removed the entry from the database.");
+				// Documents in the media store share their files with any
+				// other document with the same contents, so they are only
+				// deleted with the last one.
+				URL url = new URL(documentUrl);
+				if(! MediaBlobQueries.instance().releaseBlob(url, null)) {
+					MediaBlobQueries.deleteAfterCommit(
+						Collections.singletonList(new File(url.getFile())));
 				}
 			}
+			catch(DataAccessException e) {
+				transactionManager.rollback(status);
+				throw e;
+			}
 			catch(MalformedURLException e) {
 				LOGGER.warn("The URL was malformed, meaning that we couldn't have referenced the file anyway. Cannot delete the file.", e);
 			}
@@ -1053,28 +1036,32 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 			throw new DataAccessException("Error executing SQL '" + SQL_UPDATE_SIZE + "' with parameters: " + contents.length + ", " + documentId, e);
 		}
 		
-		// Write the new contents to the document.
+		// Write the new contents to the media store and point the document at
+		// them. The old contents are released rather than overwritten, as
+		// other documents may share them.
+		MediaBlob blob = MediaBlobQueries.instance().storeBlob(new ByteArrayInputStream(contents), null);
 		try {
-			// TODO: If we are really going to support any URL, then we need to
-			// find a way to be able to write to URLs as well. Currently, we 
-			// are only writing to files, so that is what is "hard coded." But,
-			// we really need to switch the writer based on the URL.
-			FileOutputStream fileOutputStream = new FileOutputStream(new URL(documentUrl).getFile());
-			fileOutputStream.write(contents);
-			fileOutputStream.flush();
-			fileOutputStream.close();
-		} 
+			getJdbcTemplate().update(SQL_UPDATE_URL, new Object[] { blob.getUrl(), documentId });
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			if(blob.isCreated()) {
+				blob.getFile().delete();
+			}
+			throw new DataAccessException("Error executing SQL '" + SQL_UPDATE_URL + "' with parameters: " + blob.getUrl() + ", " + documentId, e);
+		}
+		
+		try {
+			URL url = new URL(documentUrl);
+			if(! MediaBlobQueries.instance().releaseBlob(url, null)) {
+				MediaBlobQueries.deleteAfterCommit(
+					Collections.singletonList(new File(url.getFile())));
+			}
+		}
 		catch(MalformedURLException e) {
-			throw new DataAccessException("The URL pointing to this resource is broken. This could be a major issue.", e);
-		} 
-		catch(FileNotFoundException e) {
-			throw new DataAccessException("The file that this URL points to is missing. This could be a major issue.", e);
+			LOGGER.warn("The URL pointing to the old contents is broken, so they cannot be deleted: " + documentUrl, e);
 		}
 		catch(SecurityException e) {
-			throw new DataAccessException("We don't have permissions to open a connection or write to a document.", e);
-		}
-		catch (IOException e) {
-			throw new DataAccessException("There was an error writing to the URL.", e);
+			LOGGER.warn("We don't have permissions to delete the old contents: " + documentUrl, e);
 		}
 	}
 	
@@ -1185,328 +1172,4 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 		
 		return extension;
 	}
-	
-	/**
-	 * Gets the directory to which a new file should be saved. This should be
-	 * used instead of accessing the class-level variable directly as it
-	 * handles the creation of new folders and the checking that the current
-	 * folder is not full.
-	 * 
-	 * @return A File object for where a document should be written.
-	 */
-	private File getDirectory() throws DataAccessException {
-		// Get the maximum number of items in a directory.
-		int numFilesPerDirectory;
-		try {
-			numFilesPerDirectory = Integer.decode(PreferenceCache.instance().lookup(PreferenceCache.KEY_MAXIMUM_NUMBER_OF_FILES_PER_DIRECTORY));
-		}
-		catch(CacheMissException e) {
-			throw new DataAccessException("Preference cache doesn't know about 'known' key: " + PreferenceCache.KEY_MAXIMUM_NUMBER_OF_FILES_PER_DIRECTORY, e);
-		}
-		catch(NumberFormatException e) {
-			throw new DataAccessException("Stored value for key '" + PreferenceCache.KEY_MAXIMUM_NUMBER_OF_FILES_PER_DIRECTORY + "' is not decodable as a number.", e);
-		}
-		
-		// If the leaf directory was never initialized, then we should do
-		// that. Note that the initialization is dumb in that it will get to
-		// the end of the structure and not check to see if the leaf node is
-		// full.
-		if(currLeafDirectory == null) {
-			init(numFilesPerDirectory);
-		}
-		
-		File[] documents = currLeafDirectory.listFiles();
-		// If the _currLeafDirectory directory is full, traverse the tree and
-		// find a new directory.
-		if(documents.length >= numFilesPerDirectory) {
-			getNewDirectory(numFilesPerDirectory);
-		}
-		
-		return currLeafDirectory;
-	}
-	
-	/**
-	 * Initializes the directory structure by drilling down to the leaf
-	 * directory with each step choosing the directory with the largest
-	 * integer value.
-	 */
-	private void init(int numFilesPerDirectory) throws DataAccessException {
-		// Get the lock.
-		DIRECTORY_CREATION_LOCK.lock();
-		
-		try {
-			// If the current leaf directory has been set, we weren't the
-			// first to call init(), so we can just unlock the lock and back
-			// out.
-			if(currLeafDirectory != null) {
-				return;
-			}
-			
-			// Get the root directory from the preference cache based on the
-			// key.
-			String rootFile;
-			try {
-				rootFile = PreferenceCache.instance().lookup(PreferenceCache.KEY_DOCUMENT_DIRECTORY);
-			}
-			catch(CacheMissException e) {
-				throw new DataAccessException("Preference cache doesn't know about 'known' key: " + PreferenceCache.KEY_DOCUMENT_DIRECTORY, e);
-			}
-			File rootDirectory = new File(rootFile);
-			if(! rootDirectory.exists()) {
-				throw new DataAccessException("The root file doesn't exist suggesting an incomplete installation: " + rootFile);
-			}
-			else if(! rootDirectory.isDirectory()) {
-				throw new DataAccessException("The root file isn't a directory.");
-			}
-			
-			// Get the number of folders deep that documents are stored.
-			int fileDepth;
-			try {
-				fileDepth = Integer.decode(PreferenceCache.instance().lookup(PreferenceCache.KEY_FILE_HIERARCHY_DEPTH));
-			}
-			catch(CacheMissException e) {
-				throw new DataAccessException("Preference cache doesn't know about 'known' key: " + PreferenceCache.KEY_FILE_HIERARCHY_DEPTH, e);
-			}
-			catch(NumberFormatException e) {
-				throw new DataAccessException("Stored value for key '" + PreferenceCache.KEY_FILE_HIERARCHY_DEPTH + "' is not decodable as a number.", e);
-			}
-			
-			DirectoryFilter directoryFilter = new DirectoryFilter();
-			File currDirectory = rootDirectory;
-			for(int currDepth = 0; currDepth < fileDepth; currDepth++) {
-				// Get the list of directories in the current directory.
-				File[] currDirectories = currDirectory.listFiles(directoryFilter);
-				
-				// If there aren't any, create the first subdirectory in this
-				// directory.
-				if(currDirectories.length == 0) {
-					String newFolderName = directoryNameBuilder(0, numFilesPerDirectory);
-					currDirectory = new File(currDirectory.getAbsolutePath() + "/" + newFolderName);
-					currDirectory.mkdir();
-				}
-				// If the directory is overly full, step back up in the
-				// structure. This should never happen, as it indicates that
-				// there is an overflow in the structure.
-				else if(currDirectories.length > numFilesPerDirectory) {
-					LOGGER.warn("Too many subdirectories in: " + currDirectory.getAbsolutePath());
-					
-					// Take a step back in our depth.
-					currDepth--;
-					
-					// If, while backing up the tree, we back out of the root
-					// directory, we have filled up the space.
-					if(currDepth < 0) {
-						throw new DataAccessException("Document structure full!");
-					}
-
-					// Get the next parent and the current directory to it.
-					int nextDirectoryNumber = Integer.decode(currDirectory.getName()) + 1;
-					currDirectory = new File(currDirectory.getParent() + "/" + nextDirectoryNumber);
-					
-					// If the directory already exists, then there is either a
-					// concurrency issue or someone else is adding files.
-					// Either way, this shouldn't happen.
-					if(currDirectory.exists()) {
-						LOGGER.error("Somehow the 'new' directory already exists. This should be looked into: " + currDirectory.getAbsolutePath());
-					}
-					// Otherwise, create the directory.
-					else {
-						currDirectory.mkdir();
-					}
-				}
-				// Drill down to the directory with the largest, numeric value.
-				else {
-					currDirectory = getLargestSubfolder(currDirectories);
-				}
-			}
-			
-			// After we have found a suitable directory, set it.
-			currLeafDirectory = currDirectory;
-		}
-		catch(SecurityException e) {
-			throw new DataAccessException("The current process doesn't have sufficient permiossions to create new directories.", e);
-		}
-		finally {
-			// No matter what happens, unlock the lock.
-			DIRECTORY_CREATION_LOCK.unlock();
-		}
-	}
-	
-	/**
-	 * Locks the creation lock and checks again that the current leaf
-	 * directory is full. If it is not, then it will just back out under the
-	 * impression someone else made the change. If it is, it will go up and
-	 * down the directory tree structure to find a new leaf node in which to
-	 * store new files.
-	 * 
-	 * @param numFilesPerDirectory The maximum allowed number of files in a
-	 * 							   leaf directory and the maximum allowed
-	 * 							   number of directories in the branches.
-	 */
-	private void getNewDirectory(int numFilesPerDirectory) throws DataAccessException {
-		// Get the lock.
-		DIRECTORY_CREATION_LOCK.lock();
-		
-		try {
-			// Make sure that this hasn't changed because another thread may
-			// have preempted us and already changed the current leaf
-			// directory.
-			File[] files = currLeafDirectory.listFiles();
-			if(files.length < numFilesPerDirectory) {
-				return;
-			}
-			
-			// Get the root directory from the preference cache based on the
-			// key.
-			String rootFile;
-			try {
-				rootFile = PreferenceCache.instance().lookup(PreferenceCache.KEY_DOCUMENT_DIRECTORY);
-			}
-			catch(CacheMissException e) {
-				throw new DataAccessException("Preference cache doesn't know about 'known' key: " + PreferenceCache.KEY_DOCUMENT_DIRECTORY, e);
-			}
-			File rootDirectory = new File(rootFile);
-			if(! rootDirectory.exists()) {
-				throw new DataAccessException("The root file doesn't exist suggesting an incomplete installation: " + rootFile);
-			}
-			else if(! rootDirectory.isDirectory()) {
-				throw new DataAccessException("The root file isn't a directory.");
-			}
-			String absoluteRootDirectory = rootDirectory.getAbsolutePath();
-			
-			// A filter when listing a set of directories for a file.
-			DirectoryFilter directoryFilter = new DirectoryFilter();
-			
-			// A local File to use while we are searching to not confuse other
-			// threads.
-			File newDirectory = currLeafDirectory;
-			
-			// A flag to indicate when we are done looking for a directory.
-			boolean lookingForDirectory = true;
-			
-			// The number of times we stepped up in the hierarchy.
-			int depth = 0;
-			
-			// While we are still looking for a suitable directory,
-			while(lookingForDirectory) {
-				// Get the current directory's name which should be a Long
-				// Valvalueue.
-				long currDirectoryName;
-				try {
-					String dirName = newDirectory.getName();
-					while(dirName.startsWith("0")) {
-						dirName = dirName.substring(1);
-					}
-					if("".equals(dirName)) {
-						currDirectoryName = 0;
-					}
-					else {
-						currDirectoryName = Long.decode(dirName);
-					}
-				}
-				catch(NumberFormatException e) {
-					if(newDirectory.getAbsolutePath().equals(absoluteRootDirectory)) {
-						throw new DataAccessException("Document structure full!", e);
-					}
-					else {
-						throw new DataAccessException("Potential breach of document structure.", e);
-					}
-				}
-				
-				// Move the pointer up a directory.
-				newDirectory = new File(newDirectory.getParent());
-				// Get the list of files in the parent.
-				File[] parentDirectoryFiles = newDirectory.listFiles(directoryFilter);
-				
-				// If this directory has room for a new subdirectory,
-				if(parentDirectoryFiles.length < numFilesPerDirectory) {
-					// Increment the name for the next subfolder.
-					currDirectoryName++;
-					
-					// Create the new subfolder.
-					newDirectory = new File(newDirectory.getAbsolutePath() + "/" + directoryNameBuilder(currDirectoryName, numFilesPerDirectory));
-					newDirectory.mkdir();
-					
-					// Continue drilling down to reach an appropriate leaf
-					// node.
-					while(depth > 0) {
-						newDirectory = new File(newDirectory.getAbsolutePath() + "/" + directoryNameBuilder(0, numFilesPerDirectory));
-						newDirectory.mkdir();
-						
-						depth--;
-					}
-					
-					lookingForDirectory = false;
-				}
-				// If the parent is full as well, increment the depth unless
-				// we are already at the parent. If we are at the parent, then
-				// we cannot go up any further and have exhausted the
-				// directory structure.
-				else
-				{
-					if(newDirectory.getAbsoluteFile().equals(absoluteRootDirectory)) {
-						throw new DataAccessException("Document structure full!");
-					}
-					else {
-						depth++;
-					}
-				}
-			}
-			
-			currLeafDirectory = newDirectory;
-		}
-		catch(NumberFormatException e) {
-			throw new DataAccessException("Could not decode a directory name as an integer.", e);
-		}
-		finally {
-			DIRECTORY_CREATION_LOCK.unlock();
-		}
-	}
-	
-	/**
-	 * Builds the name of a folder by prepending zeroes where necessary and
-	 * converting the name into a String.
-	 * 
-	 * @param name The name of the file as an integer.
-	 * 
-	 * @param numFilesPerDirectory The maximum number of files allowed in the
-	 * 							   directory used to determine how many zeroes
-	 * 							   to prepend.
-	 * 
-	 * @return A String representing the directory name based on the
-	 * 		   parameters.
-	 */
-	private String directoryNameBuilder(long name, int numFilesPerDirectory) {
-		int nameLength = String.valueOf(name).length();
-		int maxLength = new Double(Math.log10(numFilesPerDirectory)).intValue();
-		int numberOfZeros = maxLength - nameLength;
-		
-		StringBuilder builder = new StringBuilder();
-		for(int i = 0; i < numberOfZeros; i++) {
-			builder.append("0");
-		}
-		builder.append(String.valueOf(name));
-		
-		return builder.toString();
-	}
-	
-	/**
-	 * Sorts the directories and returns the one whose alphanumeric value is
-	 * the greatest.
-	 * 
-	 * This will work with any naming for directories, so it is the caller's
-	 * responsibility to ensure that the list of directories are what they
-	 * want them to be.
-	 *  
-	 * @param directories The list of directories whose largest alphanumeric
-	 * 					  value is desired.
-	 * 
-	 * @return Returns the File whose path and name has the largest
-	 * 		   alphanumeric value.
-	 */
-	private File getLargestSubfolder(File[] directories) {
-		Arrays.sort(directories);
-		
-		return directories[directories.length - 1];
-	}
-}
\ No newline at end of file
+}
@@ -20,7 +20,11 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.sql.DataSource;
@@ -30,6 +34,8 @@ import org.ohmage.domain.Image;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.DomainException;
 import org.ohmage.query.IImageQueries;
+import org.ohmage.util.StringUtils;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -66,6 +72,15 @@ public final class ImageQueries extends Query implements IImageQueries {
 		"AND pr.response = ubr.uuid " +
 		"AND pr.prompt_type = 'photo'";
 	
+	// Retrieves the URLs for a set of images, which must be completed with 
+	// the parameter list for the IDs.
+	private static final String SQL_GET_IMAGE_URLS =
+		"SELECT DISTINCT ubr.uuid, ubr.url " +
+		"FROM url_based_resource ubr, prompt_response pr " +
+		"WHERE pr.response = ubr.uuid " +
+		"AND pr.prompt_type = 'photo' " +
+		"AND ubr.uuid IN ";
+	
 	// Deletes an image form the url_based_resource table.
 	private static final String SQL_DELETE_IMAGE =
 		"DELETE FROM url_based_resource " +
@@ -122,6 +137,68 @@ public final class ImageQueries extends Query implements IImageQueries {
 		}
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IImageQueries#getImageUrls(java.util.Collection)
+	 */
+	@Override
+	public Map<UUID, URL> getImageUrls(
+			final Collection<UUID> imageIds)
+			throws DataAccessException {
+		
+		final Map<UUID, URL> result = new HashMap<UUID, URL>();
+		if(imageIds.isEmpty()) {
+			return result;
+		}
+		
+		String sql = 
+			SQL_GET_IMAGE_URLS + 
+			StringUtils.generateStatementPList(imageIds.size());
+		
+		List<String> parameters = new ArrayList<String>(imageIds.size());
+		for(UUID imageId : imageIds) {
+			parameters.add(imageId.toString());
+		}
+		
+		try {
+			getJdbcTemplate().query(
+				sql,
+				parameters.toArray(),
+				new RowCallbackHandler() {
+					/**
+					 * Adds each image's URL to the result.
+					 */
+					@Override
+					public void processRow(
+							final ResultSet rs)
+							throws SQLException {
+						
+						UUID imageId = UUID.fromString(rs.getString("uuid"));
+						try {
+							if(result.put(imageId, new URL(rs.getString("url"))) != null) {
+								throw new SQLException(
+									"Multiple images have the same unique identifier: " +
+										imageId);
+							}
+						}
+						catch(MalformedURLException e) {
+							throw new SQLException(
+								"The URL was not a valid URL: " + imageId,
+								e);
+						}
+					}
+				});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + sql + "' with parameters: " + 
+					parameters, 
+				e);
+		}
+		
+		return result;
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see org.ohmage.query.IImageQueries#getUnprocessedImages()
@@ -286,22 +363,44 @@ public final class ImageQueries extends Query implements IImageQueries {
 	 * @see org.ohmage.query.IImageQueries#deleteImageDiskOnly(java.net.URL)
 	 */
 	public void deleteImageDiskOnly(URL imageUrl) {
+		// Images in the media store share their files with any other image
+		// with the same contents, so they are only deleted with the last one.
 		try {
-			// Delete the original image.
-			if((new File(imageUrl.getFile())).delete()) {
-				LOGGER.warn("The image no longer existed.");
-			}
-			
-			// Delete the scaled image.
-			if((new File((new URL(imageUrl + IMAGE_SCALED_EXTENSION)).getFile())).delete()) {
-				LOGGER.warn("The scaled image no longer existed.");
+			if(MediaBlobQueries.instance().releaseBlob(imageUrl, getVariantSuffixes())) {
+				return;
 			}
 		}
+		catch(DataAccessException e) {
+			LOGGER.error("The image could not be released from the media store.", e);
+			return;
+		}
+		
+		// Delete the original and scaled images once the image's removal has
+		// been committed.
+		Collection<File> files = new ArrayList<File>(2);
+		files.add(new File(imageUrl.getFile()));
+		try {
+			files.add(new File((new URL(imageUrl + IMAGE_SCALED_EXTENSION)).getFile()));
+		}
 		catch(MalformedURLException e) {
 			LOGGER.warn("The URL was malformed, but we are deleting the image anyway.", e);
 		}
-		catch(SecurityException e) {
-			LOGGER.error("The system would not allow us to delete the image.", e);
+		MediaBlobQueries.deleteAfterCommit(files);
+	}
+	
+	/**
+	 * Returns the suffixes that name the files for the sizes of an image
+	 * other than the original.
+	 * 
+	 * @return The suffixes.
+	 */
+	private static Collection<String> getVariantSuffixes() {
+		Collection<String> result = new ArrayList<String>();
+		for(Image.Size size : Image.getSizes()) {
+			if(size.getExtension().length() > 0) {
+				result.add(size.getExtension());
+			}
 		}
+		return result;
 	}
 }
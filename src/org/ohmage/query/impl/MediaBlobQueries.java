@@ -0,0 +1,584 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import javax.sql.DataSource;
+
+import org.apache.log4j.Logger;
+import org.ohmage.cache.PreferenceCache;
+import org.ohmage.domain.MediaBlob;
+import org.ohmage.exception.CacheMissException;
+import org.ohmage.exception.DataAccessException;
+import org.ohmage.exception.DomainException;
+import org.ohmage.query.IMediaBlobQueries;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * <p>
+ * This class is responsible for the media store, the content-addressed files
+ * that hold the contents of images, videos, audio files, and documents. The
+ * number of references to each file is kept in the database, and a file is
+ * only deleted once its last reference has been released.
+ * </p>
+ *
+ * <p>
+ * The other queries call this class from within their own transactions. It
+ * uses the same data source, so its statements are part of those
+ * transactions and are rolled back with them. A reference is always claimed
+ * before its file is put in place, and its row stays locked until the
+ * transaction ends, so concurrent stores of the same contents are
+ * serialized. A file is only removed after the release of its last
+ * reference has been committed, so a rollback never loses a file that is
+ * still referenced.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public final class MediaBlobQueries extends Query implements IMediaBlobQueries {
+	private static final Logger LOGGER =
+		Logger.getLogger(MediaBlobQueries.class);
+
+	/**
+	 * The directory within the store's root where contents are written
+	 * before they have been digested. It is on the same file system as the
+	 * stored files so that they can be moved into place.
+	 */
+	private static final String TEMPORARY_DIRECTORY = "tmp";
+	private static final String TEMPORARY_PREFIX = "upload";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+
+	private static final int BUFFER_SIZE = 4096;
+
+	// Adds a reference to some contents, creating their row if necessary.
+	private static final String SQL_INSERT_REFERENCE =
+		"INSERT INTO media_blob(digest, extension, size, reference_count) " +
+		"VALUES (?, ?, ?, 1) " +
+		"ON DUPLICATE KEY UPDATE reference_count = reference_count + 1";
+
+	// Removes a reference to some contents.
+	private static final String SQL_DELETE_REFERENCE =
+		"UPDATE media_blob " +
+		"SET reference_count = reference_count - 1 " +
+		"WHERE digest = ? " +
+		"AND extension = ? " +
+		"AND reference_count > 0";
+
+	// Removes the row for some contents if they are no longer referenced.
+	private static final String SQL_DELETE_UNREFERENCED =
+		"DELETE FROM media_blob " +
+		"WHERE digest = ? " +
+		"AND extension = ? " +
+		"AND reference_count = 0";
+
+	// Locks the row for some contents or, if there is none, the gap where it
+	// would be, so that the contents cannot be claimed again until the lock
+	// is released.
+	private static final String SQL_LOCK_REFERENCE =
+		"SELECT COUNT(*) " +
+		"FROM media_blob " +
+		"WHERE digest = ? " +
+		"AND extension = ? " +
+		"FOR UPDATE";
+
+	private static MediaBlobQueries instance;
+
+	/**
+	 * Creates this object.
+	 *
+	 * @param dataSource The DataSource to use when querying the database.
+	 */
+	private MediaBlobQueries(final DataSource dataSource) {
+		super(dataSource);
+
+		instance = this;
+	}
+
+	/**
+	 * Returns the singleton instance of this class.
+	 *
+	 * @return The singleton instance of this class.
+	 */
+	public static MediaBlobQueries instance() {
+		return instance;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IMediaBlobQueries#storeBlob(java.io.InputStream, java.lang.String)
+	 */
+	@Override
+	public MediaBlob storeBlob(
+			final InputStream contents,
+			final String extension)
+			throws DataAccessException {
+
+		if(contents == null) {
+			throw new DataAccessException("The contents are null.");
+		}
+
+		String mediaExtension = null;
+		if(extension != null) {
+			mediaExtension = extension.trim();
+			if(mediaExtension.length() == 0) {
+				mediaExtension = null;
+			}
+			else if((mediaExtension.indexOf('.') != -1) ||
+					(mediaExtension.indexOf('/') != -1)) {
+
+				throw new DataAccessException(
+					"The extension is invalid: " + extension);
+			}
+		}
+
+		File root = getRootDirectory();
+
+		MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance(MediaBlob.DIGEST_ALGORITHM);
+		}
+		catch(NoSuchAlgorithmException e) {
+			throw new DataAccessException(
+				"The digest algorithm is unknown: " +
+					MediaBlob.DIGEST_ALGORITHM,
+				e);
+		}
+
+		// Write the contents to a temporary file, digesting them as they are
+		// written.
+		File temporaryFile = createTemporaryFile(root);
+		long size = 0;
+		try {
+			OutputStream outputStream = new FileOutputStream(temporaryFile);
+			try {
+				int bytesRead;
+				byte[] buffer = new byte[BUFFER_SIZE];
+				while((bytesRead = contents.read(buffer)) != -1) {
+					messageDigest.update(buffer, 0, bytesRead);
+					outputStream.write(buffer, 0, bytesRead);
+					size += bytesRead;
+				}
+			}
+			finally {
+				outputStream.close();
+			}
+		}
+		catch(IOException e) {
+			temporaryFile.delete();
+			throw new DataAccessException("Could not write the file.", e);
+		}
+
+		String digest = MediaBlob.encodeDigest(messageDigest.digest());
+
+		// Claim the reference before the file is put in place.
+		try {
+			getJdbcTemplate().update(
+				SQL_INSERT_REFERENCE,
+				new Object[] { digest, getExtensionColumn(mediaExtension), size });
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			temporaryFile.delete();
+			throw new DataAccessException(
+				"Error executing SQL '" + SQL_INSERT_REFERENCE +
+					"' with parameters: " +
+					digest + ", " + mediaExtension + ", " + size,
+				e);
+		}
+
+		// If identical contents are already stored, the new copy is not
+		// needed.
+		File file = MediaBlob.getFile(root, digest, mediaExtension);
+		boolean created = false;
+		if(file.exists()) {
+			temporaryFile.delete();
+		}
+		else {
+			File directory = file.getParentFile();
+			if((! directory.mkdirs()) && (! directory.isDirectory())) {
+				temporaryFile.delete();
+				throw new DataAccessException(
+					"Could not create the directory: " +
+						directory.getAbsolutePath());
+			}
+
+			if(temporaryFile.renameTo(file)) {
+				created = true;
+			}
+			// Another request may have stored the same contents while the
+			// reference was being claimed.
+			else if(file.exists()) {
+				temporaryFile.delete();
+			}
+			else {
+				temporaryFile.delete();
+				throw new DataAccessException(
+					"Could not move the file into place: " +
+						file.getAbsolutePath());
+			}
+		}
+
+		try {
+			return new MediaBlob(digest, mediaExtension, size, file, created);
+		}
+		catch(DomainException e) {
+			throw new DataAccessException(e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IMediaBlobQueries#releaseBlob(java.net.URL, java.util.Collection)
+	 */
+	@Override
+	public boolean releaseBlob(
+			final URL url,
+			final Collection<String> variantSuffixes)
+			throws DataAccessException {
+
+		if((url == null) || (! "file".equals(url.getProtocol()))) {
+			return false;
+		}
+
+		// Only files that are exactly where the store would have put them are
+		// treated as stored files.
+		File file = new File(url.getFile()).getAbsoluteFile();
+		final String digest = MediaBlob.getDigest(file.getName());
+		if(digest == null) {
+			return false;
+		}
+		String extension = MediaBlob.getExtension(file.getName());
+		File root = getRootDirectory();
+		if(! MediaBlob
+				.getFile(root, digest, extension)
+				.getAbsoluteFile()
+				.equals(file)) {
+
+			return false;
+		}
+
+		final String extensionColumn = getExtensionColumn(extension);
+
+		// If the caller has already begun a transaction, this is part of it.
+		DefaultTransactionDefinition def = new DefaultTransactionDefinition();
+		def.setName("Releasing a media file.");
+
+		try {
+			PlatformTransactionManager transactionManager =
+				new DataSourceTransactionManager(getDataSource());
+			TransactionStatus status = transactionManager.getTransaction(def);
+
+			try {
+				if(getJdbcTemplate().update(
+						SQL_DELETE_REFERENCE,
+						new Object[] { digest, extensionColumn }) == 0) {
+
+					LOGGER.warn(
+						"There were no references to the media file, so it " +
+							"will not be deleted: " +
+							file.getAbsolutePath());
+				}
+				// The files are only deleted once the release has been
+				// committed, and only if the contents haven't been claimed
+				// again in the meantime.
+				else if(getJdbcTemplate().update(
+						SQL_DELETE_UNREFERENCED,
+						new Object[] { digest, extensionColumn }) > 0) {
+
+					final Collection<File> files = new ArrayList<File>();
+					files.add(file);
+					if(variantSuffixes != null) {
+						for(String variantSuffix : variantSuffixes) {
+							files.add(
+								new File(
+									file.getAbsolutePath() + variantSuffix));
+						}
+					}
+
+					runAfterCommit(
+						new Runnable() {
+							/**
+							 * Deletes the files if they are still
+							 * unreferenced.
+							 */
+							@Override
+							public void run() {
+								deleteIfUnreferenced(
+									digest,
+									extensionColumn,
+									files);
+							}
+						});
+				}
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error executing SQL '" + SQL_DELETE_REFERENCE +
+						"' with parameters: " +
+						digest + ", " + extension,
+					e);
+			}
+
+			try {
+				transactionManager.commit(status);
+			}
+			catch(TransactionException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error while committing the transaction.",
+					e);
+			}
+		}
+		catch(TransactionException e) {
+			throw new DataAccessException(
+				"Error while attempting to rollback the transaction.",
+				e);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Deletes files once the current transaction has been committed, so that
+	 * they are never lost if the transaction is rolled back instead. If there
+	 * is no transaction, they are deleted immediately.
+	 *
+	 * @param files The files to delete.
+	 */
+	static void deleteAfterCommit(final Collection<File> files) {
+		runAfterCommit(
+			new Runnable() {
+				/**
+				 * Deletes the files.
+				 */
+				@Override
+				public void run() {
+					for(File file : files) {
+						deleteFile(file);
+					}
+				}
+			});
+	}
+
+	/**
+	 * Runs some work once the current transaction has been committed or, if
+	 * there is no transaction, immediately. If the transaction is rolled
+	 * back, the work is never run.
+	 *
+	 * @param work The work to run.
+	 */
+	private static void runAfterCommit(final Runnable work) {
+		if(! TransactionSynchronizationManager.isSynchronizationActive()) {
+			work.run();
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(
+			new TransactionSynchronizationAdapter() {
+				/**
+				 * Runs the work.
+				 */
+				@Override
+				public void afterCommit() {
+					work.run();
+				}
+			});
+	}
+
+	/**
+	 * Deletes the files for some contents unless they have been claimed
+	 * again since they were released. This runs in its own transaction,
+	 * which locks the contents' row, or the gap where it would be, while
+	 * the files are deleted, so a concurrent store of the same contents
+	 * waits and then writes them again.
+	 *
+	 * @param digest The contents' digest.
+	 *
+	 * @param extensionColumn The value of the contents' extension column.
+	 *
+	 * @param files The contents' file and any of its variants.
+	 */
+	private void deleteIfUnreferenced(
+			final String digest,
+			final String extensionColumn,
+			final Collection<File> files) {
+
+		// This may be called while the committed transaction's connection is
+		// still bound, so it must not join it.
+		DefaultTransactionDefinition def =
+			new DefaultTransactionDefinition(
+				TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		def.setName("Deleting an unreferenced media file.");
+
+		try {
+			PlatformTransactionManager transactionManager =
+				new DataSourceTransactionManager(getDataSource());
+			TransactionStatus status = transactionManager.getTransaction(def);
+
+			try {
+				if(getJdbcTemplate().queryForObject(
+						SQL_LOCK_REFERENCE,
+						new Object[] { digest, extensionColumn },
+						Integer.class) == 0) {
+
+					for(File file : files) {
+						deleteFile(file);
+					}
+				}
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				LOGGER.error(
+					"Error executing SQL '" + SQL_LOCK_REFERENCE +
+						"' with parameters: " +
+						digest + ", " + extensionColumn +
+						", so the media file was not deleted: " +
+						files,
+					e);
+				return;
+			}
+
+			transactionManager.commit(status);
+		}
+		catch(TransactionException e) {
+			LOGGER.error(
+				"The media file could not be checked, so it was not " +
+					"deleted: " +
+					files,
+				e);
+		}
+	}
+
+	/**
+	 * Returns the root directory of the store.
+	 *
+	 * @return The root directory.
+	 *
+	 * @throws DataAccessException The directory is not configured or does
+	 * 							   not exist.
+	 */
+	private static File getRootDirectory() throws DataAccessException {
+		String rootFile;
+		try {
+			rootFile =
+				PreferenceCache.instance().lookup(
+					PreferenceCache.KEY_MEDIA_DIRECTORY);
+		}
+		catch(CacheMissException e) {
+			throw new DataAccessException(
+				"Preference cache doesn't know about 'known' key: " +
+					PreferenceCache.KEY_MEDIA_DIRECTORY,
+				e);
+		}
+
+		File rootDirectory = new File(rootFile);
+		if(! rootDirectory.exists()) {
+			throw new DataAccessException(
+				"The root file doesn't exist suggesting an incomplete " +
+					"installation: " +
+					rootFile);
+		}
+		else if(! rootDirectory.isDirectory()) {
+			throw new DataAccessException(
+				"The root file isn't a directory: " + rootFile);
+		}
+
+		return rootDirectory;
+	}
+
+	/**
+	 * Creates a new, empty file in the store's temporary directory.
+	 *
+	 * @param root The root directory of the store.
+	 *
+	 * @return The temporary file.
+	 *
+	 * @throws DataAccessException The file could not be created.
+	 */
+	private static File createTemporaryFile(
+			final File root)
+			throws DataAccessException {
+
+		File temporaryDirectory = new File(root, TEMPORARY_DIRECTORY);
+		if((! temporaryDirectory.mkdirs()) &&
+				(! temporaryDirectory.isDirectory())) {
+
+			throw new DataAccessException(
+				"Could not create the directory: " +
+					temporaryDirectory.getAbsolutePath());
+		}
+
+		try {
+			return
+				File.createTempFile(
+					TEMPORARY_PREFIX,
+					TEMPORARY_SUFFIX,
+					temporaryDirectory);
+		}
+		catch(IOException e) {
+			throw new DataAccessException(
+				"Could not create a temporary file.",
+				e);
+		}
+	}
+
+	/**
+	 * Returns the value of the extension column for an extension. The column
+	 * is part of a unique key, so it is never null.
+	 *
+	 * @param extension The extension or null if there is none.
+	 *
+	 * @return The column's value.
+	 */
+	private static String getExtensionColumn(final String extension) {
+		return (extension == null) ? "" : extension;
+	}
+
+	/**
+	 * Deletes a file, logging if it could not be deleted.
+	 *
+	 * @param file The file to delete.
+	 */
+	private static void deleteFile(final File file) {
+		try {
+			if((! file.delete()) && file.exists()) {
+				LOGGER.warn("Could not delete the file: " + file);
+			}
+		}
+		catch(SecurityException e) {
+			LOGGER.error(
+				"The system would not allow us to delete the file: " + file,
+				e);
+		}
+	}
+}
@@ -15,26 +15,26 @@ import java.util.Map;
 
 import javax.sql.DataSource;
 
-import org.codehaus.jackson.JsonFactory;
-import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.JsonParseException;
-import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonProcessingException;
-import org.codehaus.jackson.map.MappingJsonFactory;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.ISODateTimeFormat;
 import org.ohmage.domain.DataStream;
 import org.ohmage.domain.DataStream.MetaData;
+import org.ohmage.domain.DataStreamAggregator;
+import org.ohmage.domain.DataStreamCodec;
 import org.ohmage.domain.Location;
 import org.ohmage.domain.Observer;
 import org.ohmage.domain.Observer.Stream;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.DomainException;
 import org.ohmage.query.IObserverQueries;
+import org.ohmage.query.impl.ReplicaRouter.Consistency;
 import org.ohmage.service.ObserverServices.InvalidPoint;
 import org.ohmage.util.StringUtils;
 import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.SingleColumnRowMapper;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
@@ -159,8 +159,9 @@ public class ObserverQueries extends Query implements IObserverQueries {
 					"with_id, " +
 					"with_timestamp, " +
 					"with_location, " +
-					"stream_schema)" +
-				"VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+					"stream_schema, " +
+					"stream_encoding)" +
+				"VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
 			
 			// For each stream, insert it and link it to the observer.
 			for(final Stream stream : observer.getStreamsMap().values()) {
@@ -205,6 +206,8 @@ public class ObserverQueries extends Query implements IObserverQueries {
 									e);
 							}
 							
+							ps.setString(9, stream.getEncoding().toString());
+							
 							return ps;
 						}
 
@@ -230,7 +233,8 @@ public class ObserverQueries extends Query implements IObserverQueries {
 							stream.getWithId() + ", " +
 							stream.getWithTimestamp() + ", " +
 							stream.getWithLocation() + ", " +
-							stream.getSchema().toString(),
+							stream.getSchema().toString() + ", " +
+							stream.getEncoding(),
 						e);
 				}
 				
@@ -467,7 +471,8 @@ public class ObserverQueries extends Query implements IObserverQueries {
 				"os.with_id, " +
 				"os.with_timestamp, " +
 				"os.with_location, " +
-				"os.stream_schema " +
+				"os.stream_schema, " +
+				"os.stream_encoding " +
 			"FROM observer_stream os, observer_stream_link osl " +
 			"WHERE osl.observer_id = ? " +
 			"AND osl.observer_stream_id = os.id";
@@ -517,7 +522,14 @@ public class ObserverQueries extends Query implements IObserverQueries {
 										withId,
 										withTimestamp, 
 										withLocation, 
-										rs.getString("stream_schema"));
+										rs.getString("stream_schema"),
+										DataStreamCodec.Encoding.getValue(
+											rs.getString("stream_encoding")));
+								}
+								catch(IllegalArgumentException e) {
+									throw new SQLException(
+										"The stream's encoding is unknown.",
+										e);
 								}
 								catch(DomainException e) {
 									throw new SQLException(e);
@@ -612,7 +624,8 @@ public class ObserverQueries extends Query implements IObserverQueries {
 					"os.with_id, " +
 					"os.with_timestamp, " +
 					"os.with_location, " +
-					"os.stream_schema " +
+					"os.stream_schema, " +
+					"os.stream_encoding " +
 				"FROM " +
 					"observer o, " +
 					"observer_stream os, " +
@@ -736,7 +749,14 @@ public class ObserverQueries extends Query implements IObserverQueries {
 										withId,
 										withTimestamp, 
 										withLocation, 
-										rs.getString("stream_schema")));
+										rs.getString("stream_schema"),
+										DataStreamCodec.Encoding.getValue(
+											rs.getString("stream_encoding"))));
+						}
+						catch(IllegalArgumentException e) {
+							throw new SQLException(
+								"The stream's encoding is unknown.",
+								e);
 						}
 						catch(DomainException e) {
 							throw new SQLException(e);
@@ -869,6 +889,8 @@ public class ObserverQueries extends Query implements IObserverQueries {
 			final Collection<DataStream> data)
 			throws DataAccessException {
 		
+		recordWrite(username);
+		
 		String sql =
 			"INSERT INTO observer_stream_data (" +
 				"user_id, " +
@@ -933,6 +955,19 @@ public class ObserverQueries extends Query implements IObserverQueries {
 			String timeZoneId = 
 				(timestamp == null) ? null : timestamp.getZone().getID();
 			
+			byte[] storedData;
+			try {
+				storedData =
+					DataStreamCodec.encode(
+						currData.getStream(),
+						currData.getData());
+			}
+			catch(DomainException e) {
+				throw new DataAccessException(
+					"The data could not be encoded for storage.",
+					e);
+			}
+			
 			args.add(
 				new Object[] {
 					username,
@@ -950,7 +985,7 @@ public class ObserverQueries extends Query implements IObserverQueries {
 					(location == null) ? null : location.getLongitude(),
 					(location == null) ? null : location.getAccuracy(),
 					(location == null) ? null : location.getProvider(),
-					currData.getData().toString()
+					storedData
 				}
 			);
 		}
@@ -967,6 +1002,13 @@ public class ObserverQueries extends Query implements IObserverQueries {
 			
 			try {
 				getJdbcTemplate().batchUpdate(sql, args);
+				
+				// Record the new points in the change feed.
+				ChangeQueries.recordStreamInserts(
+					getJdbcTemplate(), 
+					username, 
+					observer.getId(), 
+					data);
 			}
 			catch(org.springframework.dao.DataAccessException e) {
 				transactionManager.rollback(status);
@@ -1004,6 +1046,8 @@ public class ObserverQueries extends Query implements IObserverQueries {
 		final Collection<InvalidPoint> invalidData)
 		throws DataAccessException {
 		
+		recordWrite(username);
+		
 		String sql =
 			"INSERT INTO observer_stream_data_invalid (" +
 				"user_id, " +
@@ -1095,6 +1139,201 @@ public class ObserverQueries extends Query implements IObserverQueries {
 			final long numToReturn) 
 			throws DataAccessException {
 		
+		List<Object> parameters = new LinkedList<Object>();
+		StringBuilder builder =
+			buildReadDataSql(
+				stream,
+				username,
+				observerId,
+				observerVersion,
+				startDate,
+				endDate,
+				parameters);
+		
+		// Add the ordering based on whether or not these should be 
+		// chronological or reverse chronological.
+		builder
+			.append(
+				" ORDER BY osd.time " + ((chronological) ? "ASC" : "DESC"));
+		
+		// Limit the number of results based on the paging.
+		builder.append(" LIMIT ?, ?");
+		parameters.add(numToSkip);
+		parameters.add(numToReturn);
+		
+		try {
+			return
+				getReadJdbcTemplate(Consistency.READ_YOUR_WRITES, username)
+				.query(
+					builder.toString(),
+					parameters.toArray(),
+					new DataStreamRowMapper(stream));
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + 
+					builder.toString() + 
+					"' with parameters: " +
+					parameters,
+				e);
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IObserverQueries#aggregateData(org.ohmage.domain.Observer.Stream, java.lang.String, java.lang.String, java.lang.Long, org.joda.time.DateTime, org.joda.time.DateTime, org.ohmage.domain.DataStreamAggregator)
+	 */
+	@Override
+	public void aggregateData(
+			final Stream stream,
+			final String username,
+			final String observerId,
+			final Long observerVersion,
+			final DateTime startDate,
+			final DateTime endDate,
+			final DataStreamAggregator aggregator)
+			throws DataAccessException {
+		
+		final List<Object> parameters = new LinkedList<Object>();
+		final StringBuilder builder =
+			buildReadDataSql(
+				stream,
+				username,
+				observerId,
+				observerVersion,
+				startDate,
+				endDate,
+				parameters);
+		builder.append(" ORDER BY osd.time ASC");
+		
+		final DataStreamRowMapper rowMapper = new DataStreamRowMapper(stream);
+		streamQuery(
+			getReadJdbcTemplate(Consistency.READ_YOUR_WRITES, username),
+			builder.toString(),
+			parameters,
+			new RowCallbackHandler() {
+				private int rowNum = 0;
+				
+				/**
+				 * Decodes each row and adds it to the aggregator.
+				 */
+				@Override
+				public void processRow(
+						final ResultSet rs)
+						throws SQLException {
+					
+					try {
+						aggregator.add(rowMapper.mapRow(rs, rowNum++));
+					}
+					catch(DomainException e) {
+						throw new SQLException(
+							"Could not aggregate the data stream.",
+							e);
+					}
+				}
+			});
+		
+		aggregator.finish();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IObserverQueries#readAllData(org.ohmage.domain.Observer.Stream, java.lang.String, java.lang.String, java.lang.Long, org.joda.time.DateTime, org.joda.time.DateTime, boolean, long, org.ohmage.domain.DataStream.Handler)
+	 */
+	@Override
+	public void readAllData(
+			final Stream stream,
+			final String username,
+			final String observerId,
+			final Long observerVersion,
+			final DateTime startDate,
+			final DateTime endDate,
+			final boolean chronological,
+			final long numToSkip,
+			final DataStream.Handler handler)
+			throws DataAccessException {
+		
+		List<Object> parameters = new LinkedList<Object>();
+		StringBuilder builder =
+			buildReadDataSql(
+				stream,
+				username,
+				observerId,
+				observerVersion,
+				startDate,
+				endDate,
+				parameters);
+		
+		// The database ID breaks ties between points at the same time, so
+		// the order is total.
+		String direction = (chronological) ? "ASC" : "DESC";
+		builder
+			.append(" ORDER BY osd.time " + direction + ", osd.id " + direction);
+		
+		// MySQL only allows an offset with a limit, so the limit is the
+		// largest possible.
+		if(numToSkip > 0) {
+			builder.append(" LIMIT ?, 18446744073709551615");
+			parameters.add(numToSkip);
+		}
+		
+		final DataStreamRowMapper rowMapper = new DataStreamRowMapper(stream);
+		streamQuery(
+			getReadJdbcTemplate(Consistency.READ_YOUR_WRITES, username),
+			builder.toString(),
+			parameters,
+			new RowCallbackHandler() {
+				private int rowNum = 0;
+				
+				/**
+				 * Decodes each row and gives it to the handler.
+				 */
+				@Override
+				public void processRow(
+						final ResultSet rs)
+						throws SQLException {
+					
+					try {
+						handler.handle(rowMapper.mapRow(rs, rowNum++));
+					}
+					catch(DomainException e) {
+						throw new SQLException(
+							"Could not handle the data stream.",
+							e);
+					}
+				}
+			});
+	}
+	
+	/**
+	 * Builds the query for a user's data for a stream without any ordering
+	 * or paging.
+	 * 
+	 * @param stream The stream whose data is being read.
+	 * 
+	 * @param username The username of the user to which the data must belong.
+	 * 
+	 * @param observerId The observer's unique identifier.
+	 * 
+	 * @param observerVersion The observer's version or null for the latest.
+	 * 
+	 * @param startDate The earliest data point to return or null.
+	 * 
+	 * @param endDate The latest data point to return or null.
+	 * 
+	 * @param parameters The list to which the query's parameters are added.
+	 * 
+	 * @return The query.
+	 */
+	private static StringBuilder buildReadDataSql(
+			final Stream stream,
+			final String username,
+			final String observerId,
+			final Long observerVersion,
+			final DateTime startDate,
+			final DateTime endDate,
+			final List<Object> parameters) {
+		
 		// Create the initial query and required set of parameters.
 		StringBuilder builder = 
 			new StringBuilder(
@@ -1120,7 +1359,6 @@ public class ObserverQueries extends Query implements IObserverQueries {
 					"( SELECT id FROM observer_stream_link WHERE observer_id = " +
 						"( SELECT id FROM observer WHERE observer_id = ? ");
 				
-		List<Object> parameters = new LinkedList<Object>();
 		parameters.add(username);
 		parameters.add(observerId);
 		
@@ -1163,131 +1401,104 @@ public class ObserverQueries extends Query implements IObserverQueries {
 			parameters.add(endDate.getMillis());
 		}
 		
-		// Add the ordering based on whether or not these should be 
-		// chronological or reverse chronological.
-		builder
-			.append(
-				" ORDER BY osd.time " + ((chronological) ? "ASC" : "DESC"));
 		
-		// Limit the number of results based on the paging.
-		builder.append(" LIMIT ?, ?");
-		parameters.add(numToSkip);
-		parameters.add(numToReturn);
+		return builder;
+	}
+	
+	/**
+	 * Decodes the rows of the stream data queries into data streams.
+	 *
+	 * @author John Jenkins
+	 */
+	private static final class DataStreamRowMapper
+			implements RowMapper<DataStream> {
 		
-		// Create a JSON factory, which will be used by each data point to
-		// deserialize its data into a JsonNode.
-		final JsonFactory jsonFactory = new MappingJsonFactory();
+		private final Stream stream;
 		
-		try {
-			return
-				getJdbcTemplate().query(
-					builder.toString(),
-					parameters.toArray(),
-					new RowMapper<DataStream>() {
-						/**
-						 * Decodes the resulting data into a data stream.
-						 */
-						@Override
-						public DataStream mapRow(
-								final ResultSet rs, 
-								final int rowNum)
-								throws SQLException {
-							
-							MetaData.Builder metaDataBuilder =
-								new MetaData.Builder();
-							
-							String id = rs.getString("osd.uid");
-							if(id != null) {
-								metaDataBuilder.setId(id);
-							}
-							
-							Long time = rs.getLong("osd.time");
-							if(time != null) {
-								metaDataBuilder.setTimestamp(
-									new DateTime(
-										time,
-										DateTimeZone.forID(
-											rs.getString("osd.time_zone"))));
-							}
-							
-							String locationTimestampString = 
-								rs.getString("location_timestamp");
-							if(locationTimestampString != null) {
-								Location location;
-								try {
-									location =
-										new Location(
-											ISODateTimeFormat
-												.dateTime()
-												.parseDateTime(
-													rs.getString(
-														"osd.location_timestamp")),
-											rs.getDouble("osd.location_latitude"),
-											rs.getDouble("osd.location_longitude"),
-											rs.getDouble("osd.location_accuracy"),
-											rs.getString("osd.location_provider"));
-								}
-								catch(IllegalArgumentException e) {
-									throw new SQLException(
-										"The timestamp in the database is corrupted.",
-										e);
-								}
-								catch(NullPointerException e) {
-									throw new SQLException(
-										"A double in the database is corrupted.",
-										e);
-								}
-								catch(DomainException e) {
-									throw new SQLException(
-										"Could not create the location object.",
-										e);
-								}
-								
-								metaDataBuilder.setLocation(location);
-							}
-							
-							JsonNode data;
-							try {
-								JsonParser parser =
-									jsonFactory
-										.createJsonParser(
-											rs.getString("osd.data"));
-								data = parser.readValueAsTree();
-							}
-							catch(JsonParseException e) {
-								throw new SQLException(
-									"The data in the database is invalid: " +
-										id,
-									e);
-							}
-							catch(IOException e) {
-								throw new SQLException(
-									"There was a problem reading the data: " +
-										id,
-									e);
-							}
-							
-							try {
-								return new DataStream(
-									stream, 
-									metaDataBuilder.build(), 
-									data);
-							}
-							catch(DomainException e) {
-								throw new SQLException(
-									"Could not create the data stream.",
-									e);
-							}
-						}
-					});
+		/**
+		 * Creates a row mapper for a stream's data.
+		 * 
+		 * @param stream The stream whose data is being read.
+		 */
+		private DataStreamRowMapper(final Stream stream) {
+			this.stream = stream;
 		}
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException(
-				"Error executing SQL '" + 
-					builder.toString() + 
-					"' with parameters: " +
-					parameters,
-				e);
+		
+		/**
+		 * Decodes the resulting data into a data stream.
+		 */
+		@Override
+		public DataStream mapRow(
+				final ResultSet rs, 
+				final int rowNum)
+				throws SQLException {
+			
+			MetaData.Builder metaDataBuilder =
+				new MetaData.Builder();
+			
+			String id = rs.getString("osd.uid");
+			if(id != null) {
+				metaDataBuilder.setId(id);
+			}
+			
+			Long time = rs.getLong("osd.time");
+			if(time != null) {
+				metaDataBuilder.setTimestamp(
+					new DateTime(
+						time,
+						DateTimeZone.forID(
+							rs.getString("osd.time_zone"))));
+			}
+			
+			String locationTimestampString = 
+				rs.getString("location_timestamp");
+			if(locationTimestampString != null) {
+				Location location;
+				try {
+					location =
+						new Location(
+							ISODateTimeFormat
+								.dateTime()
+								.parseDateTime(
+									rs.getString(
+										"osd.location_timestamp")),
+							rs.getDouble("osd.location_latitude"),
+							rs.getDouble("osd.location_longitude"),
+							rs.getDouble("osd.location_accuracy"),
+							rs.getString("osd.location_provider"));
+				}
+				catch(IllegalArgumentException e) {
+					throw new SQLException(
+						"The timestamp in the database is corrupted.",
+						e);
+				}
+				catch(NullPointerException e) {
+					throw new SQLException(
+						"A double in the database is corrupted.",
+						e);
+				}
+				catch(DomainException e) {
+					throw new SQLException(
+						"Could not create the location object.",
+						e);
+				}
+				
+				metaDataBuilder.setLocation(location);
+			}
+			
+			// The data is left in its stored form and is
+			// only decoded when it is used.
+			try {
+				return new DataStream(
+					stream, 
+					metaDataBuilder.build(), 
+					rs.getBytes("osd.data"));
+			}
+			catch(DomainException e) {
+				throw new SQLException(
+					"Could not create the data stream.",
+					e);
+			}
 		}
 	}
 
@@ -1342,7 +1553,7 @@ public class ObserverQueries extends Query implements IObserverQueries {
 		
 		try {
 			return
-				getJdbcTemplate()
+				getReadJdbcTemplate(Consistency.EVENTUAL, null)
 					.query(
 						sqlBuilder.toString(),
 						parameters.toArray(),
@@ -1482,8 +1693,9 @@ public class ObserverQueries extends Query implements IObserverQueries {
 					"with_id, " +
 					"with_timestamp, " +
 					"with_location, " +
-					"stream_schema) " +
-				"VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+					"stream_schema, " +
+					"stream_encoding) " +
+				"VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
 			
 			// Observer-stream link SQL.
 			final String observerStreamSql =
@@ -1601,6 +1813,9 @@ public class ObserverQueries extends Query implements IObserverQueries {
 								ps.setObject(6, stream.getWithTimestamp());
 								ps.setObject(7, stream.getWithLocation());
 								ps.setString(8, schema);
+								ps.setString(
+									9,
+									stream.getEncoding().toString());
 								
 								return ps;
 							}
@@ -1627,7 +1842,8 @@ public class ObserverQueries extends Query implements IObserverQueries {
 								stream.getWithId() + ", " +
 								stream.getWithTimestamp() + ", " +
 								stream.getWithLocation() + ", " +
-								schema,
+								schema + ", " +
+								stream.getEncoding(),
 							e);
 					}
 					
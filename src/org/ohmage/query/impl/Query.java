@@ -15,15 +15,29 @@
  ******************************************************************************/
 package org.ohmage.query.impl;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import javax.sql.DataSource;
 
 import org.ohmage.exception.DataAccessException;
+import org.ohmage.query.impl.ReplicaRouter.Consistency;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
 /**
  * The superclass for all Queries, this class contains the DataSource with which 
  * it was built as well as a JDBC template which is the most common field that
- * subclasses will use to access the database.
+ * subclasses will use to access the database. Every statement made through
+ * the template is timed; see {@link TimedJdbcTemplate}. Reads that may be
+ * served by a read-only replica of the database should instead use
+ * {@link #getReadJdbcTemplate(Consistency, String)}.
  * 
  * All subclasses must be Singletons as subsequent invocations of a constructor
  * will throw an IllegalStateException.
@@ -31,10 +45,17 @@ import org.springframework.jdbc.core.JdbcTemplate;
  * @author John Jenkins
  */
 public abstract class Query {
+	/**
+	 * The largest number of parameters that are put in a single "IN" list.
+	 * Larger collections are queried in chunks; see {@link #chunk(Collection)}.
+	 */
+	protected static final int MAX_IN_LIST_SIZE = 500;
+	
 	private boolean initialized = false;
 	
 	private final DataSource dataSource;
 	private final JdbcTemplate jdbcTemplate;
+	private volatile JdbcTemplate replicaJdbcTemplate = null;
 	
 	/**
 	 * Builds this query object by keeping track of the DataSource that was 
@@ -61,7 +82,8 @@ public abstract class Query {
 		}
 		
 		this.dataSource = dataSource;
-		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate = 
+			new TimedJdbcTemplate(dataSource, getClass().getSimpleName());
 		
 		initialized = true;
 	}
@@ -110,4 +132,176 @@ public abstract class Query {
 	protected JdbcTemplate getJdbcTemplate() {
 		return jdbcTemplate;
 	}
+	
+	/**
+	 * Returns the JdbcTemplate that should be used by this object to perform
+	 * a read, which is over the read-only replica if one is configured, it is
+	 * healthy, and the consistency allows it. Otherwise, it is the same as
+	 * {@link #getJdbcTemplate()}. This must not be used within a 
+	 * transaction.
+	 * 
+	 * @param consistency The consistency that the read requires.
+	 * 
+	 * @param username The user whose own writes the read must see if the
+	 * 				   consistency is 
+	 * 				   {@link Consistency#READ_YOUR_WRITES}. This may be null.
+	 * 
+	 * @return The JdbcTemplate that should be used to perform the read.
+	 */
+	protected JdbcTemplate getReadJdbcTemplate(
+			final Consistency consistency,
+			final String username) {
+		
+		ReplicaRouter router = ReplicaRouter.instance();
+		if((router == null) || (! router.useReplica(consistency, username))) {
+			return jdbcTemplate;
+		}
+		
+		JdbcTemplate result = replicaJdbcTemplate;
+		if(result == null) {
+			synchronized(this) {
+				result = replicaJdbcTemplate;
+				if(result == null) {
+					result = 
+						new ReplicaJdbcTemplate(
+							router, 
+							jdbcTemplate, 
+							getClass().getSimpleName());
+					replicaJdbcTemplate = result;
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Splits a collection of values into chunks that are small enough to be
+	 * the parameters of a single "IN" list, i.e. at most
+	 * {@value #MAX_IN_LIST_SIZE} values each.
+	 * 
+	 * @param values The values to split.
+	 * 
+	 * @return The chunks in the collection's iteration order.
+	 */
+	protected static <T> List<List<T>> chunk(final Collection<T> values) {
+		List<List<T>> result = new ArrayList<List<T>>();
+		
+		List<T> current = null;
+		for(T value : values) {
+			if((current == null) || (current.size() == MAX_IN_LIST_SIZE)) {
+				current = new ArrayList<T>(MAX_IN_LIST_SIZE);
+				result.add(current);
+			}
+			current.add(value);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Executes a query on a forward-only statement whose rows are streamed
+	 * from the database one at a time instead of being buffered in memory,
+	 * so that a result of any size may be read in a single pass. The 
+	 * connection is held until every row has been handled. This must not be
+	 * used within a transaction.
+	 * 
+	 * @param jdbcTemplate The JdbcTemplate with which to execute the query.
+	 * 
+	 * @param sql The query.
+	 * 
+	 * @param parameters The query's parameters.
+	 * 
+	 * @param handler The handler for each row.
+	 * 
+	 * @throws DataAccessException There was an error executing the query or
+	 * 							   handling a row.
+	 */
+	protected static void streamQuery(
+			final JdbcTemplate jdbcTemplate,
+			final String sql,
+			final List<Object> parameters,
+			final RowCallbackHandler handler)
+			throws DataAccessException {
+		
+		try {
+			jdbcTemplate.query(
+				new PreparedStatementCreator() {
+					/**
+					 * Creates the forward-only statement. MySQL only streams
+					 * the rows when the fetch size is the minimum integer.
+					 */
+					@Override
+					public PreparedStatement createPreparedStatement(
+							final Connection connection)
+							throws SQLException {
+						
+						PreparedStatement ps =
+							connection.prepareStatement(
+								sql,
+								ResultSet.TYPE_FORWARD_ONLY,
+								ResultSet.CONCUR_READ_ONLY);
+						ps.setFetchSize(Integer.MIN_VALUE);
+						
+						int i = 1;
+						for(Object parameter : parameters) {
+							ps.setObject(i++, parameter);
+						}
+						
+						return ps;
+					}
+				},
+				handler);
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + 
+					sql + 
+					"' with parameters: " +
+					parameters,
+				e);
+		}
+	}
+	
+	/**
+	 * Executes a statement once for each set of parameters in a single batch.
+	 * 
+	 * @param sql The statement.
+	 * 
+	 * @param parameters The sets of parameters, which may be empty.
+	 * 
+	 * @throws DataAccessException There was an error executing the batch.
+	 */
+	protected void batchUpdate(
+			final String sql, 
+			final List<Object[]> parameters)
+			throws DataAccessException {
+		
+		if(parameters.isEmpty()) {
+			return;
+		}
+		
+		try {
+			getJdbcTemplate().batchUpdate(sql, parameters);
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + sql + "' in a batch of " + 
+					parameters.size() + " statements.", 
+				e);
+		}
+	}
+	
+	/**
+	 * Records that a user is writing so that, for a while, the reads that
+	 * must see that user's writes are not served by the read-only replica.
+	 * This should be called before the write is committed.
+	 * 
+	 * @param username The user's username.
+	 */
+	protected static void recordWrite(final String username) {
+		ReplicaRouter router = ReplicaRouter.instance();
+		if(router != null) {
+			router.recordWrite(username);
+		}
+	}
 }
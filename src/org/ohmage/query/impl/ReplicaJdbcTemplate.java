@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.CallableStatementCallback;
+import org.springframework.jdbc.core.CallableStatementCreator;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.StatementCallback;
+
+/**
+ * A timed JDBC template over the read-only replica. If a connection to the
+ * replica cannot be made, the router is told to stop using the replica and
+ * the statement is retried against the primary. If the connection is lost
+ * while the statement is running, the router is also told but the statement
+ * is not retried, as its callback may have already consumed part of the
+ * results. Any other error, e.g. bad SQL, is thrown as-is.
+ * 
+ * The statements made against the replica are recorded under the query 
+ * class's name with a "@replica" suffix so that they may be compared to the
+ * same statements against the primary.
+ * 
+ * @author John Jenkins
+ */
+class ReplicaJdbcTemplate extends TimedJdbcTemplate {
+	private static final String REPLICA_SUFFIX = "@replica";
+	
+	private final ReplicaRouter router;
+	private final JdbcTemplate primary;
+	
+	/**
+	 * Creates a JDBC template over the replica.
+	 * 
+	 * @param router The router whose replica this is.
+	 * 
+	 * @param primary The JDBC template over the primary that is used if a
+	 * 				  connection to the replica cannot be made.
+	 * 
+	 * @param queryName The name of the query class that owns this template.
+	 */
+	ReplicaJdbcTemplate(
+			final ReplicaRouter router,
+			final JdbcTemplate primary,
+			final String queryName) {
+		
+		super(router.getReplicaDataSource(), queryName + REPLICA_SUFFIX);
+		
+		this.router = router;
+		this.primary = primary;
+	}
+	
+	/**
+	 * Executes the connection callback on the replica or, if a
+	 * connection to it cannot be made, on the primary.
+	 */
+	@Override
+	public <T> T execute(
+			final ConnectionCallback<T> action)
+			throws DataAccessException {
+		
+		try {
+			return super.execute(action);
+		}
+		catch(CannotGetJdbcConnectionException e) {
+			router.fallBack(e);
+			return primary.execute(action);
+		}
+		catch(DataAccessResourceFailureException e) {
+			router.fallBack(e);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Executes the statement callback on the replica or, if a
+	 * connection to it cannot be made, on the primary.
+	 */
+	@Override
+	public <T> T execute(
+			final StatementCallback<T> action)
+			throws DataAccessException {
+		
+		try {
+			return super.execute(action);
+		}
+		catch(CannotGetJdbcConnectionException e) {
+			router.fallBack(e);
+			return primary.execute(action);
+		}
+		catch(DataAccessResourceFailureException e) {
+			router.fallBack(e);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Executes the prepared statement callback on the replica or, if
+	 * a connection to it cannot be made, on the primary.
+	 */
+	@Override
+	public <T> T execute(
+			final PreparedStatementCreator psc,
+			final PreparedStatementCallback<T> action)
+			throws DataAccessException {
+		
+		try {
+			return super.execute(psc, action);
+		}
+		catch(CannotGetJdbcConnectionException e) {
+			router.fallBack(e);
+			return primary.execute(psc, action);
+		}
+		catch(DataAccessResourceFailureException e) {
+			router.fallBack(e);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Executes the callable statement callback on the replica or, if
+	 * a connection to it cannot be made, on the primary.
+	 */
+	@Override
+	public <T> T execute(
+			final CallableStatementCreator csc,
+			final CallableStatementCallback<T> action)
+			throws DataAccessException {
+		
+		try {
+			return super.execute(csc, action);
+		}
+		catch(CannotGetJdbcConnectionException e) {
+			router.fallBack(e);
+			return primary.execute(csc, action);
+		}
+		catch(DataAccessResourceFailureException e) {
+			router.fallBack(e);
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,396 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.log4j.Logger;
+import org.ohmage.reporting.PerformanceMetrics;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+/**
+ * <p>
+ * Decides whether a read should be sent to the read-only replica of the
+ * database or to the primary. This is built once by Spring when the server
+ * starts. If no replica is configured, every read goes to the primary.
+ * </p>
+ *
+ * <p>
+ * Each read declares the {@link Consistency} it needs. Reads that must see
+ * a user's own writes go to the primary for a configurable window after that
+ * user's last write, which must be recorded with
+ * {@link #recordWrite(String)}. The replica is checked periodically and no
+ * reads are sent to it while it is unreachable or too far behind the
+ * primary. Reads that fail to reach the replica are retried against the
+ * primary; see {@link ReplicaJdbcTemplate}.
+ * </p>
+ *
+ * <p>
+ * Only reads that are made outside of a transaction may be routed, as the
+ * replica never participates in the primary's transactions.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public final class ReplicaRouter {
+	private static final Logger LOGGER = Logger.getLogger(ReplicaRouter.class);
+
+	private static final String SQL_GET_REPLICATION_STATUS =
+		"SHOW SLAVE STATUS";
+	private static final String COLUMN_SECONDS_BEHIND =
+		"Seconds_Behind_Master";
+
+	private static final String COUNTER_REPLICA = "replica.routed";
+	private static final String COUNTER_PRIMARY_CONSISTENCY =
+		"replica.primary.consistency";
+	private static final String COUNTER_PRIMARY_RECENT_WRITE =
+		"replica.primary.recent_write";
+	private static final String COUNTER_PRIMARY_UNHEALTHY =
+		"replica.primary.unhealthy";
+	private static final String COUNTER_FALLBACK = "replica.fallback";
+
+	/**
+	 * The consistency that a read requires.
+	 *
+	 * @author John Jenkins
+	 */
+	public static enum Consistency {
+		/**
+		 * The read may be served by the replica, even if it is slightly
+		 * behind the primary.
+		 */
+		EVENTUAL,
+		/**
+		 * The read may be served by the replica unless the user has recently
+		 * written, in which case it is served by the primary.
+		 */
+		READ_YOUR_WRITES,
+		/**
+		 * The read must be served by the primary.
+		 */
+		PRIMARY;
+	}
+
+	private static ReplicaRouter instance;
+
+	private final DataSource replicaDataSource;
+	private final boolean enabled;
+	private final long readYourWritesMillis;
+	private final long maxLagSeconds;
+
+	private final ConcurrentMap<String, Long> lastWrites =
+		new ConcurrentHashMap<String, Long>();
+
+	private volatile boolean healthy = false;
+	private boolean checked = false;
+
+	/**
+	 * Creates the router and, if a replica is configured, begins checking
+	 * its health. The replica is not used until the first check succeeds.
+	 *
+	 * @param replicaDataSource The DataSource for the replica.
+	 *
+	 * @param replicaUrl The JDBC URL of the replica. If this is null or
+	 * 					 empty, there is no replica and every read goes to
+	 * 					 the primary.
+	 *
+	 * @param readYourWritesSeconds The number of seconds after a user's last
+	 * 								write during which the reads that must see
+	 * 								that user's writes go to the primary.
+	 *
+	 * @param maxLagSeconds The number of seconds the replica may be behind
+	 * 						the primary before it is no longer used.
+	 *
+	 * @param healthCheckSeconds The number of seconds between checks of the
+	 * 							 replica's health.
+	 *
+	 * @throws IllegalStateException An instance of this class already exists.
+	 *
+	 * @throws IllegalArgumentException A replica is configured but its
+	 * 									DataSource is null or one of the
+	 * 									durations is invalid.
+	 */
+	private ReplicaRouter(
+			final DataSource replicaDataSource,
+			final String replicaUrl,
+			final int readYourWritesSeconds,
+			final int maxLagSeconds,
+			final int healthCheckSeconds) {
+
+		if(instance != null) {
+			throw new IllegalStateException(
+				"An instance of this class already exists.");
+		}
+
+		enabled = (replicaUrl != null) && (replicaUrl.trim().length() != 0);
+		if(enabled) {
+			if(replicaDataSource == null) {
+				throw new IllegalArgumentException(
+					"The replica's data source is null.");
+			}
+			if(readYourWritesSeconds < 0) {
+				throw new IllegalArgumentException(
+					"The read-your-writes window cannot be negative.");
+			}
+			if(maxLagSeconds < 0) {
+				throw new IllegalArgumentException(
+					"The maximum replica lag cannot be negative.");
+			}
+			if(healthCheckSeconds < 1) {
+				throw new IllegalArgumentException(
+					"The health check interval must be positive.");
+			}
+		}
+
+		this.replicaDataSource = replicaDataSource;
+		this.readYourWritesMillis = readYourWritesSeconds * 1000L;
+		this.maxLagSeconds = maxLagSeconds;
+
+		if(enabled) {
+			LOGGER.info("Reads may be routed to the replica: " + replicaUrl);
+
+			ScheduledExecutorService executor =
+				Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactory() {
+						/**
+						 * Creates a daemon thread so that the health checks
+						 * never keep the server from shutting down.
+						 */
+						@Override
+						public Thread newThread(final Runnable runnable) {
+							Thread result =
+								new Thread(runnable, "ReplicaRouter");
+							result.setDaemon(true);
+							return result;
+						}
+					});
+			executor.scheduleWithFixedDelay(
+				new Runnable() {
+					/**
+					 * Checks the replica's health and forgets the writes
+					 * that are outside of the read-your-writes window.
+					 */
+					@Override
+					public void run() {
+						checkHealth();
+						pruneWrites();
+					}
+				},
+				0,
+				healthCheckSeconds,
+				TimeUnit.SECONDS);
+		}
+
+		instance = this;
+	}
+
+	/**
+	 * Returns the singleton instance of this class.
+	 *
+	 * @return The singleton instance of this class or null if it has not yet
+	 * 		   been built, e.g. outside of the web application.
+	 */
+	public static ReplicaRouter instance() {
+		return instance;
+	}
+
+	/**
+	 * Records that a user is writing so that, for a while, the reads that
+	 * must see that user's writes go to the primary. This should be called
+	 * before the write is committed.
+	 *
+	 * @param username The user's username.
+	 */
+	public void recordWrite(final String username) {
+		if(enabled && (username != null)) {
+			lastWrites.put(username, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Returns whether or not a read should be sent to the replica and records
+	 * the decision with the {@link PerformanceMetrics}.
+	 *
+	 * @param consistency The consistency that the read requires.
+	 *
+	 * @param username The user whose writes the read must see if the
+	 * 				   consistency is {@link Consistency#READ_YOUR_WRITES}.
+	 * 				   This may be null.
+	 *
+	 * @return True if the read should be sent to the replica; false if it
+	 * 		   should be sent to the primary.
+	 */
+	public boolean useReplica(
+			final Consistency consistency,
+			final String username) {
+
+		if(! enabled) {
+			return false;
+		}
+
+		String counter;
+		boolean result = false;
+		if(Consistency.PRIMARY.equals(consistency)) {
+			counter = COUNTER_PRIMARY_CONSISTENCY;
+		}
+		else if(! healthy) {
+			counter = COUNTER_PRIMARY_UNHEALTHY;
+		}
+		else if(
+				Consistency.READ_YOUR_WRITES.equals(consistency) &&
+				wroteRecently(username)) {
+
+			counter = COUNTER_PRIMARY_RECENT_WRITE;
+		}
+		else {
+			counter = COUNTER_REPLICA;
+			result = true;
+		}
+
+		PerformanceMetrics metrics = PerformanceMetrics.instance();
+		if(metrics != null) {
+			metrics.incrementCounter(counter);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the replica's DataSource.
+	 *
+	 * @return The replica's DataSource.
+	 */
+	DataSource getReplicaDataSource() {
+		return replicaDataSource;
+	}
+
+	/**
+	 * Stops sending reads to the replica until the next health check
+	 * succeeds. This is called when a read could not reach the replica and is
+	 * being retried against the primary.
+	 *
+	 * @param cause The reason the read failed.
+	 */
+	void fallBack(final Exception cause) {
+		if(healthy) {
+			LOGGER.warn(
+				"A read could not reach the replica; using the primary.",
+				cause);
+		}
+		healthy = false;
+
+		PerformanceMetrics metrics = PerformanceMetrics.instance();
+		if(metrics != null) {
+			metrics.incrementCounter(COUNTER_FALLBACK);
+		}
+	}
+
+	/**
+	 * Returns whether or not the user wrote within the read-your-writes
+	 * window.
+	 */
+	private boolean wroteRecently(final String username) {
+		if(username == null) {
+			return false;
+		}
+
+		Long lastWrite = lastWrites.get(username);
+		return
+			(lastWrite != null) &&
+			((System.currentTimeMillis() - lastWrite) < readYourWritesMillis);
+	}
+
+	/**
+	 * Checks that the replica is reachable and is replicating without too
+	 * much lag. If the replica is not a MySQL slave, e.g. it is behind a
+	 * proxy, only its reachability is checked.
+	 */
+	private void checkHealth() {
+		boolean wasHealthy = healthy;
+
+		String problem;
+		try {
+			Long lag =
+				new JdbcTemplate(replicaDataSource).query(
+					SQL_GET_REPLICATION_STATUS,
+					new ResultSetExtractor<Long>() {
+						/**
+						 * Returns the replication lag, null if replication is
+						 * not running, or 0 if this is not a slave.
+						 */
+						@Override
+						public Long extractData(
+								final ResultSet rs)
+								throws SQLException {
+
+							if(! rs.next()) {
+								return 0L;
+							}
+
+							long result = rs.getLong(COLUMN_SECONDS_BEHIND);
+							return (rs.wasNull()) ? null : result;
+						}
+					});
+
+			if(lag == null) {
+				problem = "Replication is not running.";
+			}
+			else if(lag > maxLagSeconds) {
+				problem = "The replica is " + lag + " seconds behind.";
+			}
+			else {
+				problem = null;
+			}
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			problem = "The replica could not be reached: " + e.getMessage();
+		}
+
+		healthy = (problem == null);
+		if((! healthy) && (wasHealthy || (! checked))) {
+			LOGGER.warn(problem + " Reads will use the primary.");
+		}
+		else if((! wasHealthy) && healthy) {
+			LOGGER.info("The replica is healthy. Reads may use it.");
+		}
+		checked = true;
+	}
+
+	/**
+	 * Forgets the writes that are outside of the read-your-writes window so
+	 * that the map does not grow with every user that has ever written.
+	 */
+	private void pruneWrites() {
+		long cutoff = System.currentTimeMillis() - readYourWritesMillis;
+
+		for(Map.Entry<String, Long> entry : lastWrites.entrySet()) {
+			if(entry.getValue() < cutoff) {
+				// Only remove it if the user has not written again since.
+				lastWrites.remove(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+}
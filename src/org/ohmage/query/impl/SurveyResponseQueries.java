@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -30,8 +31,10 @@ import java.util.UUID;
 import javax.sql.DataSource;
 
 import org.joda.time.DateTime;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.ohmage.domain.Change;
 import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.domain.campaign.Prompt;
 import org.ohmage.domain.campaign.SurveyResponse;
@@ -41,9 +44,12 @@ import org.ohmage.domain.campaign.SurveyResponse.SortParameter;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.DomainException;
 import org.ohmage.query.ISurveyResponseQueries;
+import org.ohmage.query.impl.ReplicaRouter.Consistency;
 import org.ohmage.util.DateTimeUtils;
 import org.ohmage.util.StringUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -65,6 +71,12 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 	    "FROM campaign, survey_response " +
 	    "WHERE campaign_id = campaign.id and survey_response.uuid = ?";
 	
+	// The IN list of survey response ids is appended.
+	private static final String SQL_GET_CAMPAIGN_URNS_FOR_SURVEY_IDS =
+	    "SELECT survey_response.uuid, urn " +
+	    "FROM campaign, survey_response " +
+	    "WHERE campaign_id = campaign.id and survey_response.uuid IN ";
+	
 	// Retrieves all of the survey response privacy states.
 	private static final String SQL_GET_SURVEY_RESPONSE_PRIVACY_STATES =
 		"SELECT privacy_state " +
@@ -97,38 +109,91 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 			"ON sr.id = pr.survey_response_id ";
 	
 	/**
-	 * Retrieves all of the necessary information for survey responses. It 
-	 * should almost certainly be used with the {@link #SQL_WHERE_ACL} in order
-	 * to ensure that a user cannot see more than they are privileged to see.
-	 * However, this may not be used in the case of administrators when they
-	 * need to see all data regardless of role.<br />
-	 * <br />
-	 * Note: This should never use a GROUP BY clause as you will lose the count
-	 * for the columns that were aggregated together. If you need to group the
-	 * results, use {@link #SQL_GET_SURVEY_RESPONSES_AGGREGATED}, instead.
-	 * 
-	 * @see #SQL_WHERE_ACL
-	 * @see #SQL_WHERE_USERNAMES
-	 * @see #SQL_WHERE_ON_OR_AFTER
-	 * @see #SQL_WHERE_ON_OR_BEFORE
-	 * @see #SQL_WHERE_PRIVACY_STATE
-	 * @see #SQL_WHERE_SURVEY_IDS
-	 * @see #SQL_WHERE_PROMPT_IDS
-	 * @see #SQL_WHERE_PROMPT_TYPE
+	 * Retrieves the survey-level information for survey responses, one row per
+	 * survey response. The launch context and location are only needed for a
+	 * few columns, so they are only added, via
+	 * {@link #SQL_SELECT_LAUNCH_CONTEXT} and {@link #SQL_SELECT_LOCATION}, when
+	 * they were requested. The prompt responses are retrieved separately via
+	 * {@link #SQL_GET_PROMPT_RESPONSES}, so none of this is repeated for each of
+	 * them. It should almost certainly be used with the ACLs in order to
+	 * ensure that a user cannot see more than they are privileged to see.
 	 * 
-	 * @see #SQL_ORDER_BY
+	 * @see #SQL_WHERE_HAS_PROMPT_RESPONSE
+	 * @see #SQL_LIMIT
 	 */
-	private static final String SQL_GET_SURVEY_RESPONSES_INDIVIDUAL =
-		// Retrieve all of the columns necessary to build a SurveyResponse
-		// object.
+	private static final String SQL_GET_SURVEY_RESPONSE_HEADERS =
 		"SELECT u.username, c.urn, " +
 			"sr.id, sr.uuid, sr.client, " +
 			"sr.epoch_millis, sr.phone_timezone, " +
-			"sr.survey_id, sr.launch_context, " +
-			"sr.location_status, sr.location, srps.privacy_state, " +
-			"pr.prompt_id, pr.response, pr.repeatable_set_iteration " +
-			SQL_BASE_FROM +
-			SQL_FROM_WITH_PROMPT_RESPONSE;
+			"sr.survey_id, sr.location_status, srps.privacy_state";
+	
+	/**
+	 * The additional column for {@link #SQL_GET_SURVEY_RESPONSE_HEADERS} to
+	 * retrieve the launch context.
+	 */
+	private static final String SQL_SELECT_LAUNCH_CONTEXT =
+		", sr.launch_context";
+	
+	/**
+	 * The additional column for {@link #SQL_GET_SURVEY_RESPONSE_HEADERS} to
+	 * retrieve the location.
+	 */
+	private static final String SQL_SELECT_LOCATION =
+		", sr.location";
+	
+	/**
+	 * Counts the survey responses that match the same criteria as
+	 * {@link #SQL_GET_SURVEY_RESPONSE_HEADERS}.
+	 */
+	private static final String SQL_COUNT_SURVEY_RESPONSES =
+		"SELECT COUNT(sr.id) ";
+	
+	/**
+	 * Retrieves the prompt responses for a set of survey responses. This SQL
+	 * is incomplete and ends with "IN ". The user will need to fill in a 
+	 * parenthetical of "?"s and supply an equal number of survey response
+	 * database IDs to the parameter list. It may then be followed by the
+	 * prompt criteria and should be finished with
+	 * {@link #SQL_ORDER_BY_PROMPT_RESPONSE}.
+	 * 
+	 * @see #SQL_WHERE_PROMPT_IDS
+	 * @see #SQL_WHERE_PROMPT_TYPE
+	 * @see #SQL_WHERE_PROMPT_RESPONSE_SEARCH_TOKEN
+	 */
+	private static final String SQL_GET_PROMPT_RESPONSES =
+		"SELECT pr.survey_response_id, pr.prompt_id, " +
+			"pr.response, pr.repeatable_set_iteration " +
+		"FROM prompt_response AS pr " +
+		"WHERE pr.survey_response_id IN ";
+	
+	/**
+	 * Orders the prompt responses in the order in which they were stored.
+	 */
+	private static final String SQL_ORDER_BY_PROMPT_RESPONSE =
+		" ORDER BY pr.id";
+	
+	/**
+	 * The additional columns for {@link #SQL_GET_SURVEY_RESPONSE_HEADERS} to
+	 * retrieve a prompt response in the same row as its survey response. The
+	 * FROM clause must then be followed by {@link #SQL_JOIN_PROMPT_RESPONSE}.
+	 */
+	private static final String SQL_SELECT_PROMPT_RESPONSE =
+		", pr.prompt_id, pr.response, pr.repeatable_set_iteration";
+	
+	/**
+	 * Joins the prompt responses to {@link #SQL_BASE_FROM}, so that there is
+	 * one row per prompt response.
+	 */
+	private static final String SQL_JOIN_PROMPT_RESPONSE =
+		"JOIN prompt_response AS pr ON pr.survey_response_id = sr.id ";
+	
+	/**
+	 * Orders the prompt responses of each survey response, after the survey
+	 * responses themselves have been ordered, in the order in which they were
+	 * stored.
+	 */
+	private static final String SQL_THEN_BY_PROMPT_RESPONSE =
+		", pr.id";
 	
 	/**
 	 * Retrieves all of the necessary information for survey responses. It also
@@ -297,6 +362,28 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 	private static final String SQL_WHERE_PROMPT_RESPONSE_SEARCH_TOKEN =
 		" AND pr.response LIKE ?";
 	
+	/**
+	 * Limit the responses to only those with at least one prompt response.
+	 * This SQL is incomplete and does not close its parenthetical. The user
+	 * may add any of the prompt criteria and must then close it with a ")".
+	 * 
+	 * @see #SQL_WHERE_PROMPT_IDS
+	 * @see #SQL_WHERE_PROMPT_TYPE
+	 * @see #SQL_WHERE_PROMPT_RESPONSE_SEARCH_TOKEN
+	 */
+	private static final String SQL_WHERE_HAS_PROMPT_RESPONSE =
+		" AND EXISTS (" +
+			"SELECT pr.id " +
+			"FROM prompt_response AS pr " +
+			"WHERE pr.survey_response_id = sr.id";
+	
+	/**
+	 * Limits the survey responses to a page of them. The parameters are the
+	 * number of survey responses to skip followed by the number to return.
+	 */
+	private static final String SQL_LIMIT =
+		" LIMIT ?, ?";
+	
 	/**
 	 * Order the results first by the number of milliseconds since the epoch at
 	 * which time the survey was taken and then, if there is a collision, by
@@ -346,6 +433,55 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 		}
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.ISurveyResponseQueries#getCampaignIdsForSurveyResponseIds(java.util.Collection)
+	 */
+	@Override
+	public Map<UUID, String> getCampaignIdsForSurveyResponseIds(
+			final Collection<UUID> uuids)
+			throws DataAccessException {
+		
+		List<String> ids = new ArrayList<String>(uuids.size());
+		for(UUID uuid : uuids) {
+			ids.add(uuid.toString());
+		}
+		
+		final Map<UUID, String> result = new HashMap<UUID, String>();
+		for(List<String> chunk : chunk(ids)) {
+			String sql = 
+				SQL_GET_CAMPAIGN_URNS_FOR_SURVEY_IDS + 
+				StringUtils.generateStatementPList(chunk.size());
+			
+			try {
+				getJdbcTemplate().query(
+					sql,
+					chunk.toArray(),
+					new RowCallbackHandler() {
+						/**
+						 * Records the survey response's campaign.
+						 */
+						@Override
+						public void processRow(
+								final ResultSet rs)
+								throws SQLException {
+							
+							result.put(
+								UUID.fromString(rs.getString(1)),
+								rs.getString(2));
+						}
+					});
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				throw new DataAccessException(
+					"Error executing SQL '" + sql + "' with parameters: " + chunk, 
+					e);
+			}
+		}
+		
+		return result;
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see org.ohmage.query.ISurveyResponseQueries#retrieveSurveyResponsePrivacyStates()
@@ -404,6 +540,7 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 			final String promptType,
 			final Set<String> promptResponseSearchTokens,
 			final Collection<ColumnKey> columns,
+			final Collection<ColumnKey> projection,
 			final List<SortParameter> sortOrder,
 			final long surveyResponsesToSkip,
 			final long surveyResponsesToProcess,
@@ -418,6 +555,29 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 			return 0;
 		}
 		
+		// Individual survey responses are read in two phases, so that the
+		// survey response information isn't repeated for each prompt
+		// response.
+		if(columns == null) {
+			return retrieveIndividualSurveyResponses(
+					campaign,
+					username,
+					surveyResponseIds,
+					usernames,
+					startDate,
+					endDate,
+					privacyState,
+					surveyIds,
+					promptIds,
+					promptType,
+					promptResponseSearchTokens,
+					projection,
+					sortOrder,
+					surveyResponsesToSkip,
+					surveyResponsesToProcess,
+					result);
+		}
+		
 		List<Object> parameters = new LinkedList<Object>();
 		String sql = buildSqlAndParameters(
 				campaign,
@@ -444,7 +604,7 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 		final Collection<Integer> totalCount = new ArrayList<Integer>(1);
 		
 		try {
-			result.addAll(getJdbcTemplate().query(
+			result.addAll(getReadJdbcTemplate(Consistency.READ_YOUR_WRITES, username).query(
 				sql,
 				parameters.toArray(),
 				new ResultSetExtractor<List<SurveyResponse>>() {
@@ -539,10 +699,7 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 											locationJson,
 											SurveyResponse.PrivacyState.getValue(rs.getString("privacy_state")));
 								
-								if(columns != null) {
-									surveyResponse.setCount(
-											rs.getLong("count"));
-								}
+								surveyResponse.setCount(rs.getLong("count"));
 							}
 							catch(IllegalArgumentException e) {
 								throw new SQLException("The TimeZone is unknown.", e);
@@ -658,33 +815,447 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 			return totalCount.iterator().next();
 		}
 		catch(org.springframework.dao.DataAccessException e) {
-			StringBuilder errorBuilder =
-				new StringBuilder(
-					"Error executing SQL '" + sql + "' with parameters: ");
+			throw new DataAccessException(
+					getErrorMessage(sql, parameters),
+					e);
+		}
+	}
+	
+	/**
+	 * Retrieves individual, as opposed to aggregated, survey responses in two
+	 * phases. First, the requested page of survey responses is read, one row
+	 * per survey response, with only the columns that the projection needs.
+	 * Then, if the projection needs them, the prompt responses for only that
+	 * page are read and added to their survey responses.
+	 * 
+	 * @param projection The columns that will be output. If this is null, 
+	 * 					 all of the columns are read.
+	 * 
+	 * @return The total number of survey responses that matched the criteria.
+	 * 
+	 * @see #retrieveSurveyResponses(Campaign, String, Set, Collection, DateTime, DateTime, PrivacyState, Collection, Collection, String, Set, Collection, Collection, List, long, long, List)
+	 */
+	private int retrieveIndividualSurveyResponses(
+			final Campaign campaign,
+			final String username,
+			final Set<UUID> surveyResponseIds,
+			final Collection<String> usernames, 
+			final DateTime startDate,
+			final DateTime endDate, 
+			final SurveyResponse.PrivacyState privacyState,
+			final Collection<String> surveyIds,
+			final Collection<String> promptIds,
+			final String promptType,
+			final Set<String> promptResponseSearchTokens,
+			final Collection<ColumnKey> projection,
+			final List<SortParameter> sortOrder,
+			final long surveyResponsesToSkip,
+			final long surveyResponsesToProcess,
+			final List<SurveyResponse> result)
+			throws DataAccessException {
+		
+		final boolean withLaunchContext =
+			(projection == null) ||
+			projection.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_LONG) ||
+			projection.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_SHORT);
+		final boolean withLocation =
+			(projection == null) ||
+			projection.contains(ColumnKey.CONTEXT_LOCATION_LATITUDE) ||
+			projection.contains(ColumnKey.CONTEXT_LOCATION_LONGITUDE) ||
+			projection.contains(ColumnKey.CONTEXT_LOCATION_TIMESTAMP) ||
+			projection.contains(ColumnKey.CONTEXT_LOCATION_TIMEZONE) ||
+			projection.contains(ColumnKey.CONTEXT_LOCATION_ACCURACY) ||
+			projection.contains(ColumnKey.CONTEXT_LOCATION_PROVIDER);
+		boolean withPromptResponses =
+			(projection == null) ||
+			projection.contains(ColumnKey.PROMPT_RESPONSE) ||
+			projection.contains(ColumnKey.REPEATABLE_SET_ID) ||
+			projection.contains(ColumnKey.REPEATABLE_SET_ITERATION);
+		
+		// Only survey responses with at least one prompt response that 
+		// matches the prompt criteria are returned.
+		List<Object> parameters = new LinkedList<Object>();
+		StringBuilder whereBuilder =
+			buildWhereAndParameters(
+				campaign,
+				username,
+				surveyResponseIds,
+				usernames,
+				startDate,
+				endDate,
+				privacyState,
+				surveyIds,
+				parameters);
+		whereBuilder.append(SQL_WHERE_HAS_PROMPT_RESPONSE);
+		appendPromptCriteria(
+			whereBuilder,
+			promptIds,
+			promptType,
+			promptResponseSearchTokens,
+			parameters);
+		whereBuilder.append(')');
+		String where = whereBuilder.toString();
+		
+		JdbcTemplate jdbcTemplate =
+			getReadJdbcTemplate(Consistency.READ_YOUR_WRITES, username);
+		
+		// Count all of the survey responses, which is cheap compared to
+		// reading them only to discard them.
+		String sql = SQL_COUNT_SURVEY_RESPONSES + SQL_BASE_FROM + where;
+		long totalCount;
+		try {
+			totalCount =
+				jdbcTemplate.queryForObject(
+					sql,
+					parameters.toArray(),
+					Long.class);
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+					getErrorMessage(sql, parameters),
+					e);
+		}
+		
+		if(
+			(surveyResponsesToSkip >= totalCount) ||
+			(surveyResponsesToProcess <= 0)) {
+			
+			return (int) totalCount;
+		}
+		
+		// Read the page of survey responses, keeping them in order and 
+		// indexed by their database ID.
+		StringBuilder sqlBuilder =
+			new StringBuilder(SQL_GET_SURVEY_RESPONSE_HEADERS);
+		if(withLaunchContext) {
+			sqlBuilder.append(SQL_SELECT_LAUNCH_CONTEXT);
+		}
+		if(withLocation) {
+			sqlBuilder.append(SQL_SELECT_LOCATION);
+		}
+		sqlBuilder.append(' ').append(SQL_BASE_FROM).append(where);
+		appendOrderBy(sqlBuilder, sortOrder);
+		sqlBuilder.append(SQL_LIMIT);
+		parameters.add(surveyResponsesToSkip);
+		parameters.add(surveyResponsesToProcess);
+		sql = sqlBuilder.toString();
+		
+		final Map<Long, SurveyResponse> surveyResponses =
+			new LinkedHashMap<Long, SurveyResponse>();
+		try {
+			jdbcTemplate.query(
+				sql,
+				parameters.toArray(),
+				new RowCallbackHandler() {
+					/**
+					 * Creates the survey response.
+					 */
+					@Override
+					public void processRow(
+							final ResultSet rs)
+							throws SQLException {
+						
+						surveyResponses.put(
+							rs.getLong("id"),
+							mapSurveyResponse(
+								campaign,
+								rs,
+								withLaunchContext,
+								withLocation));
+					}
+				});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+					getErrorMessage(sql, parameters),
+					e);
+		}
+		
+		// Read the prompt responses for only this page of survey responses.
+		if(withPromptResponses && (! surveyResponses.isEmpty())) {
+			List<Object> promptParameters = new LinkedList<Object>();
+			StringBuilder promptCriteriaBuilder = new StringBuilder();
+			appendPromptCriteria(
+				promptCriteriaBuilder,
+				promptIds,
+				promptType,
+				promptResponseSearchTokens,
+				promptParameters);
 			
-			boolean firstPass = true;
-			for(Object parameter : parameters) {
-				if(firstPass) {
-					firstPass = false;
+			// This is necessary to map tiny integers in SQL to Java's 
+			// integer.
+			final Map<String, Class<?>> typeMapping =
+				new HashMap<String, Class<?>>();
+			typeMapping.put("tinyint", Integer.class);
+			
+			for(List<Long> ids : chunk(surveyResponses.keySet())) {
+				sql =
+					SQL_GET_PROMPT_RESPONSES +
+					StringUtils.generateStatementPList(ids.size()) +
+					promptCriteriaBuilder.toString() +
+					SQL_ORDER_BY_PROMPT_RESPONSE;
+				parameters = new ArrayList<Object>(ids);
+				parameters.addAll(promptParameters);
+				
+				try {
+					jdbcTemplate.query(
+						sql,
+						parameters.toArray(),
+						new RowCallbackHandler() {
+							/**
+							 * Creates the prompt response and adds it to
+							 * its survey response.
+							 */
+							@Override
+							public void processRow(
+									final ResultSet rs)
+									throws SQLException {
+								
+								SurveyResponse surveyResponse =
+									surveyResponses.get(
+										rs.getLong("survey_response_id"));
+								
+								try {
+									Prompt prompt =
+										campaign.getPrompt(
+											surveyResponse.getSurvey().getId(),
+											rs.getString("prompt_id"));
+									
+									surveyResponse.addPromptResponse(
+										prompt.createResponse(
+											(Integer) rs.getObject(
+												"repeatable_set_iteration",
+												typeMapping),
+											rs.getObject("response")));
+								}
+								catch(DomainException e) {
+									throw new SQLException(
+											"The prompt response value from the database is not a valid response value for this prompt.", 
+											e);
+								}
+							}
+						});
+				}
+				catch(org.springframework.dao.DataAccessException e) {
+					throw new DataAccessException(
+							getErrorMessage(sql, parameters),
+							e);
+				}
+			}
+		}
+		
+		result.addAll(surveyResponses.values());
+		return (int) totalCount;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.ohmage.query.ISurveyResponseQueries#readAllSurveyResponses(org.ohmage.domain.campaign.Campaign, java.lang.String, java.util.Set, java.util.Collection, org.joda.time.DateTime, org.joda.time.DateTime, org.ohmage.domain.campaign.SurveyResponse.PrivacyState, java.util.Collection, java.util.Collection, java.lang.String, java.util.Set, java.util.List, long, org.ohmage.domain.campaign.SurveyResponse.Handler)
+	 */
+	@Override
+	public void readAllSurveyResponses(
+			final Campaign campaign,
+			final String username,
+			final Set<UUID> surveyResponseIds,
+			final Collection<String> usernames, 
+			final DateTime startDate,
+			final DateTime endDate, 
+			final SurveyResponse.PrivacyState privacyState,
+			final Collection<String> surveyIds,
+			final Collection<String> promptIds,
+			final String promptType,
+			final Set<String> promptResponseSearchTokens,
+			final List<SortParameter> sortOrder,
+			final long surveyResponsesToSkip,
+			final SurveyResponse.Handler handler)
+			throws DataAccessException {
+		
+		if(
+			((surveyIds != null) && (surveyIds.size() == 0)) ||
+			((promptIds != null) && (promptIds.size() == 0))) {
+			
+			return;
+		}
+		
+		// A survey response's row is repeated for each of its prompt 
+		// responses that match the prompt criteria, so only the survey 
+		// responses with at least one are read, as they are for a page. The
+		// rows of one survey response are adjacent, because the order always
+		// ends with the survey response's unique identifier.
+		List<Object> parameters = new LinkedList<Object>();
+		StringBuilder sqlBuilder =
+			new StringBuilder(SQL_GET_SURVEY_RESPONSE_HEADERS);
+		sqlBuilder
+			.append(SQL_SELECT_LAUNCH_CONTEXT)
+			.append(SQL_SELECT_LOCATION)
+			.append(SQL_SELECT_PROMPT_RESPONSE)
+			.append(' ')
+			.append(SQL_BASE_FROM)
+			.append(SQL_JOIN_PROMPT_RESPONSE)
+			.append(
+				buildWhereAndParameters(
+					campaign,
+					username,
+					surveyResponseIds,
+					usernames,
+					startDate,
+					endDate,
+					privacyState,
+					surveyIds,
+					parameters));
+		appendPromptCriteria(
+			sqlBuilder,
+			promptIds,
+			promptType,
+			promptResponseSearchTokens,
+			parameters);
+		appendOrderBy(sqlBuilder, sortOrder);
+		sqlBuilder.append(SQL_THEN_BY_PROMPT_RESPONSE);
+		
+		SurveyResponseCollator collator =
+			new SurveyResponseCollator(
+				campaign,
+				surveyResponsesToSkip,
+				handler);
+		streamQuery(
+			getReadJdbcTemplate(Consistency.READ_YOUR_WRITES, username),
+			sqlBuilder.toString(),
+			parameters,
+			collator);
+		
+		try {
+			collator.finish();
+		}
+		catch(SQLException e) {
+			throw new DataAccessException(
+				"Could not handle the last survey response.",
+				e);
+		}
+	}
+	
+	/**
+	 * Collates the rows of {@link #readAllSurveyResponses(Campaign, String, Set, Collection, DateTime, DateTime, PrivacyState, Collection, Collection, String, Set, List, long, SurveyResponse.Handler)},
+	 * one per prompt response, into survey responses and gives each one to a
+	 * handler once all of its rows have been read.
+	 *
+	 * @author John Jenkins
+	 */
+	private static final class SurveyResponseCollator
+			implements RowCallbackHandler {
+		
+		private final Campaign campaign;
+		private final long surveyResponsesToSkip;
+		private final SurveyResponse.Handler handler;
+		
+		// This is necessary to map tiny integers in SQL to Java's integer.
+		private final Map<String, Class<?>> typeMapping =
+			new HashMap<String, Class<?>>();
+		
+		private long surveyResponsesSkipped = 0;
+		private long id = -1;
+		private SurveyResponse surveyResponse = null;
+		
+		/**
+		 * Creates a collator.
+		 * 
+		 * @param campaign The campaign to which the survey responses belong.
+		 * 
+		 * @param surveyResponsesToSkip The number of survey responses to skip
+		 * 								before the first one that is handled.
+		 * 
+		 * @param handler The handler to which the survey responses are 
+		 * 				  given.
+		 */
+		private SurveyResponseCollator(
+				final Campaign campaign,
+				final long surveyResponsesToSkip,
+				final SurveyResponse.Handler handler) {
+			
+			this.campaign = campaign;
+			this.surveyResponsesToSkip = surveyResponsesToSkip;
+			this.handler = handler;
+			
+			typeMapping.put("tinyint", Integer.class);
+		}
+		
+		/**
+		 * Starts a new survey response, after handing off the previous one,
+		 * if the row belongs to a different survey response than the last
+		 * row did, and then adds the row's prompt response to it.
+		 */
+		@Override
+		public void processRow(final ResultSet rs) throws SQLException {
+			if(rs.getLong("id") != id) {
+				finish();
+				
+				id = rs.getLong("id");
+				if(surveyResponsesSkipped < surveyResponsesToSkip) {
+					surveyResponsesSkipped++;
 				}
 				else {
-					errorBuilder.append(", ");
+					surveyResponse =
+						mapSurveyResponse(campaign, rs, true, true);
 				}
-				errorBuilder.append(parameter.toString());
 			}
 			
-			throw new DataAccessException(errorBuilder.toString(), e);
+			if(surveyResponse == null) {
+				return;
+			}
+			
+			try {
+				Prompt prompt =
+					campaign.getPrompt(
+						surveyResponse.getSurvey().getId(),
+						rs.getString("prompt_id"));
+				
+				surveyResponse.addPromptResponse(
+					prompt.createResponse(
+						(Integer) rs.getObject(
+							"repeatable_set_iteration", 
+							typeMapping),
+						rs.getObject("response")));
+			}
+			catch(DomainException e) {
+				throw new SQLException(
+						"The prompt response value from the database is not a valid response value for this prompt.", 
+						e);
+			}
+		}
+		
+		/**
+		 * Gives the current survey response, if any, to the handler. This 
+		 * must be called once the last row has been processed.
+		 * 
+		 * @throws SQLException The handler could not handle the survey
+		 * 						response.
+		 */
+		private void finish() throws SQLException {
+			if(surveyResponse == null) {
+				return;
+			}
+			
+			try {
+				handler.handle(surveyResponse);
+			}
+			catch(DomainException e) {
+				throw new SQLException(
+					"Could not handle the survey response.",
+					e);
+			}
+			surveyResponse = null;
 		}
 	}
 	
 	/* (non-Javadoc)
-	 * @see org.ohmage.query.impl.ISurveyResponseQueries#updateSurveyResponsePrivacyState(java.lang.Long, org.ohmage.domain.campaign.SurveyResponse.PrivacyState)
+	 * @see org.ohmage.query.impl.ISurveyResponseQueries#updateSurveyResponsePrivacyState(java.lang.String, java.lang.Long, org.ohmage.domain.campaign.SurveyResponse.PrivacyState)
 	 */
 	public void updateSurveyResponsesPrivacyState(
+			final String username,
 			final Set<UUID> surveyResponseIds, 
 			final SurveyResponse.PrivacyState newPrivacyState)
 			throws DataAccessException {
 		
+		recordWrite(username);
+		
 		StringBuilder sqlBuilder = 
 				new StringBuilder(SQL_UPDATE_SURVEY_RESPONSES_PRIVACY_STATE);
 		sqlBuilder.append(
@@ -711,6 +1282,11 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 				getJdbcTemplate().update(
 						sqlBuilder.toString(), 
 						parameters.toArray());
+				
+				ChangeQueries.recordSurveyResponseChanges(
+						getJdbcTemplate(), 
+						Change.Operation.UPDATE, 
+						surveyResponseIds);
 			}
 			catch(org.springframework.dao.DataAccessException e) {
 				transactionManager.rollback(status);
@@ -737,12 +1313,15 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 	}
 	
 	/* (non-Javadoc)
-	 * @see org.ohmage.query.impl.ISurveyResponseQueries#deleteSurveyResponse(java.lang.Long)
+	 * @see org.ohmage.query.impl.ISurveyResponseQueries#deleteSurveyResponse(java.lang.String, java.lang.Long)
 	 */
 	public void deleteSurveyResponse(
+			final String username,
 			final UUID surveyResponseId) 
 			throws DataAccessException {
 		
+		recordWrite(username);
+		
 		// Create the transaction.
 		DefaultTransactionDefinition def = new DefaultTransactionDefinition();
 		def.setName("Deleting a survey response.");
@@ -754,6 +1333,13 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 			TransactionStatus status = transactionManager.getTransaction(def);
 			
 			try {
+				// The change must be recorded while the response still
+				// exists.
+				ChangeQueries.recordSurveyResponseChanges(
+						getJdbcTemplate(), 
+						Change.Operation.DELETE, 
+						Collections.singleton(surveyResponseId));
+				
 				getJdbcTemplate().update(
 						SQL_DELETE_SURVEY_RESPONSE, 
 						new Object[] { surveyResponseId.toString() });
@@ -840,19 +1426,203 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 		final Collection<Object> parameters) 
 		throws DataAccessException {
 		
-		// Begin with the SQL string which gets all results or the one that
-		// aggregates results.
-		StringBuilder sqlBuilder = new StringBuilder(SQL_BASE_WHERE);
-		parameters.add(campaign.getId());
+		// Begin with the survey response criteria and add the prompt 
+		// criteria to them.
+		StringBuilder sqlBuilder =
+			buildWhereAndParameters(
+				campaign,
+				username,
+				surveyResponseIds,
+				usernames,
+				startDate,
+				endDate,
+				privacyState,
+				surveyIds,
+				parameters);
+		appendPromptCriteria(
+			sqlBuilder,
+			promptIds,
+			promptType,
+			promptResponseSearchTokens,
+			parameters);
 		
-		// Catch any query exceptions.
-		try {
-			// If the requesting user is an admin, don't bother applying the
-			// ACLs.
-			if(!
-				getJdbcTemplate()
-					.queryForObject(
-						"SELECT admin FROM user WHERE username = ?",
+		// Now, collapse the columns if columns is non-null.
+		boolean onSurveyResponse = true;
+		if(columns != null) {
+			sqlBuilder.append(" GROUP BY ");
+			
+			boolean firstPass = true;
+			for(ColumnKey columnKey : columns) {
+				if(firstPass) {
+					firstPass = false;
+				}
+				else {
+					sqlBuilder.append(", ");
+				}
+				
+				switch(columnKey) {
+				case CONTEXT_CLIENT:
+					sqlBuilder.append("sr.client");
+					break;
+					
+				case CONTEXT_DATE:
+					sqlBuilder.append("DATE(CONVERT_TZ(FROM_UNIXTIME(epoch_millis / 1000), 'UTC', phone_timezone))");
+					break;
+					
+				case CONTEXT_TIMESTAMP:
+				case CONTEXT_UTC_TIMESTAMP:
+					sqlBuilder.append("(sr.epoch_millis / 1000)");
+					break;
+					
+				case CONTEXT_EPOCH_MILLIS:
+					sqlBuilder.append("sr.epoch_millis");
+					break;
+					
+				case CONTEXT_TIMEZONE:
+					sqlBuilder.append("sr.phone_timezone");
+					break;
+					
+				case CONTEXT_LAUNCH_CONTEXT_LONG:
+				case CONTEXT_LAUNCH_CONTEXT_SHORT:
+					sqlBuilder.append("sr.launch_context");
+					break;
+					
+				case CONTEXT_LOCATION_STATUS:
+					sqlBuilder.append("sr.location_status");
+					break;
+					
+				case USER_ID:
+					sqlBuilder.append("u.username");
+					break;
+					
+				case SURVEY_ID:
+					sqlBuilder.append("sr.survey_id");
+					break;
+					
+				case SURVEY_RESPONSE_ID:
+					sqlBuilder.append("sr.uuid");
+					break;
+					
+				case SURVEY_PRIVACY_STATE:
+					sqlBuilder.append("srps.privacy_state");
+					break;
+					
+				case REPEATABLE_SET_ID:
+					onSurveyResponse = false;
+					sqlBuilder.append("pr.repeatable_set_id");
+					break;
+					
+				case REPEATABLE_SET_ITERATION:
+					onSurveyResponse = false;
+					sqlBuilder.append("pr.repeatable_set_iteration");
+					break;
+					
+				case PROMPT_RESPONSE:
+					onSurveyResponse = false;
+					sqlBuilder.append("pr.response");
+					break;
+					
+				// This is inaccurate and will only work if the entire 
+				// JSONObject is the same. We cannot do this without JSONObject
+				// dissection in SQL.
+				case CONTEXT_LOCATION_LATITUDE:
+				case CONTEXT_LOCATION_LONGITUDE:
+				case CONTEXT_LOCATION_TIMESTAMP:
+				case CONTEXT_LOCATION_TIMEZONE:
+				case CONTEXT_LOCATION_ACCURACY:
+				case CONTEXT_LOCATION_PROVIDER:
+					sqlBuilder.append("sr.location");
+					break;
+					
+				// This cannot be done without XML manipulation in the SQL. 
+				// Instead, we shouldn't dump the XML in the database and 
+				// should explode it into its own series of columns and, if
+				// necessary, additional tables.
+				case SURVEY_TITLE:
+					
+				case SURVEY_DESCRIPTION:
+					
+				default:
+					int length = sqlBuilder.length();
+					sqlBuilder.delete(length - 2, length);
+				}
+			}
+		}
+		// Now, go back and insert the correct SELECT clause based on if we are
+		// aggregating at the survey level or the prompt level.
+		if(onSurveyResponse) {
+			sqlBuilder.insert(0, SQL_GET_SURVEY_RESPONSES_AGGREGATED_SURVEY);
+		}
+		else {
+			sqlBuilder.insert(0, SQL_GET_SURVEY_RESPONSES_AGGREGATED_PROMPT);
+		}
+		
+		// Finally, add some ordering to facilitate consistent results in the
+		// paging system.
+		appendOrderBy(sqlBuilder, sortOrder);
+		
+		return sqlBuilder.toString();
+	}
+	
+	/**
+	 * Builds the WHERE clause that limits the survey responses, including the
+	 * ACLs, but not the prompt criteria, and adds its parameters to the 
+	 * parameter list.
+	 * 
+	 * @param campaign The campaign to which the survey responses must belong.
+	 * 
+	 * @param username The username of the user that is making this request.
+	 * 				   This is used by the ACLs to limit who sees what.
+	 * 
+	 * @param surveyResponseIds Limits the results to only those survey 
+	 * 							responses with these unique identifiers.
+	 * 
+	 * @param usernames Limits the results to only those submitted by any one 
+	 * 					of the users in the list.
+	 * 
+	 * @param startDate Limits the results to only those survey responses that
+	 * 					occurred on or after this date.
+	 * 
+	 * @param endDate Limits the results to only those survey responses that
+	 * 				  occurred on or before this date.
+	 * 
+	 * @param privacyState Limits the results to only those survey responses
+	 * 					   with this privacy state.
+	 * 
+	 * @param surveyIds Limits the results to only those survey responses that 
+	 * 					were derived from a survey in this collection.
+	 * 
+	 * @param parameters The list to which the parameters are added.
+	 * 
+	 * @return The WHERE clause, to which more criteria may be appended.
+	 * 
+	 * @throws DataAccessException There was an error reading the requesting
+	 * 							   user's roles.
+	 */
+	private StringBuilder buildWhereAndParameters(
+		final Campaign campaign,
+		final String username,
+		final Set<UUID> surveyResponseIds,
+		final Collection<String> usernames, 
+		final DateTime startDate,
+		final DateTime endDate, 
+		final SurveyResponse.PrivacyState privacyState,
+		final Collection<String> surveyIds,
+		final Collection<Object> parameters) 
+		throws DataAccessException {
+		
+		// Begin with the campaign, which is required.
+		StringBuilder sqlBuilder = new StringBuilder(SQL_BASE_WHERE);
+		parameters.add(campaign.getId());
+		
+		// Catch any query exceptions.
+		try {
+			// If the requesting user is an admin, don't bother applying the
+			// ACLs.
+			if(!
+				getJdbcTemplate()
+					.queryForObject(
+						"SELECT admin FROM user WHERE username = ?",
 						new Object[] { username },
 						Boolean.class)) {
 				
@@ -953,6 +1723,36 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 			sqlBuilder.append(StringUtils.generateStatementPList(surveyIds.size()));
 			parameters.addAll(surveyIds);
 		}
+		
+		return sqlBuilder;
+	}
+	
+	/**
+	 * Appends the criteria that limit the prompt responses and adds their
+	 * parameters to the parameter list. The criteria refer to the 
+	 * prompt_response table as "pr".
+	 * 
+	 * @param sqlBuilder The SQL to which the criteria are appended.
+	 * 
+	 * @param promptIds Limits the prompt responses to only those for a prompt
+	 * 					in this collection. Optional.
+	 * 
+	 * @param promptType Limits the prompt responses to only those of this
+	 * 					 prompt type. Optional.
+	 * 
+	 * @param promptResponseSearchTokens Limits the prompt responses to only
+	 * 									 those that contain all of these
+	 * 									 tokens. Optional.
+	 * 
+	 * @param parameters The list to which the parameters are added.
+	 */
+	private static void appendPromptCriteria(
+		final StringBuilder sqlBuilder,
+		final Collection<String> promptIds,
+		final String promptType,
+		final Set<String> promptResponseSearchTokens,
+		final Collection<Object> parameters) {
+		
 		if(promptIds != null) {
 			sqlBuilder.append(SQL_WHERE_PROMPT_IDS);
 			sqlBuilder.append(StringUtils.generateStatementPList(promptIds.size()));
@@ -968,124 +1768,22 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 				parameters.add('%' + promptResponseSearchToken + '%');
 			}
 		}
+	}
+	
+	/**
+	 * Appends the ORDER BY clause for the survey responses. The survey 
+	 * response's unique identifier is always the last column, so the order is
+	 * consistent between pages.
+	 * 
+	 * @param sqlBuilder The SQL to which the clause is appended.
+	 * 
+	 * @param sortOrder The order in which to sort the responses or null for
+	 * 					the default order, newest first.
+	 */
+	private static void appendOrderBy(
+		final StringBuilder sqlBuilder,
+		final List<SortParameter> sortOrder) {
 		
-		// Now, collapse the columns if columns is non-null.
-		boolean onSurveyResponse = true;
-		if(columns != null) {
-			sqlBuilder.append(" GROUP BY ");
-			
-			boolean firstPass = true;
-			for(ColumnKey columnKey : columns) {
-				if(firstPass) {
-					firstPass = false;
-				}
-				else {
-					sqlBuilder.append(", ");
-				}
-				
-				switch(columnKey) {
-				case CONTEXT_CLIENT:
-					sqlBuilder.append("sr.client");
-					break;
-					
-				case CONTEXT_DATE:
-					sqlBuilder.append("DATE(CONVERT_TZ(FROM_UNIXTIME(epoch_millis / 1000), 'UTC', phone_timezone))");
-					break;
-					
-				case CONTEXT_TIMESTAMP:
-				case CONTEXT_UTC_TIMESTAMP:
-					sqlBuilder.append("(sr.epoch_millis / 1000)");
-					break;
-					
-				case CONTEXT_EPOCH_MILLIS:
-					sqlBuilder.append("sr.epoch_millis");
-					break;
-					
-				case CONTEXT_TIMEZONE:
-					sqlBuilder.append("sr.phone_timezone");
-					break;
-					
-				case CONTEXT_LAUNCH_CONTEXT_LONG:
-				case CONTEXT_LAUNCH_CONTEXT_SHORT:
-					sqlBuilder.append("sr.launch_context");
-					break;
-					
-				case CONTEXT_LOCATION_STATUS:
-					sqlBuilder.append("sr.location_status");
-					break;
-					
-				case USER_ID:
-					sqlBuilder.append("u.username");
-					break;
-					
-				case SURVEY_ID:
-					sqlBuilder.append("sr.survey_id");
-					break;
-					
-				case SURVEY_RESPONSE_ID:
-					sqlBuilder.append("sr.uuid");
-					break;
-					
-				case SURVEY_PRIVACY_STATE:
-					sqlBuilder.append("srps.privacy_state");
-					break;
-					
-				case REPEATABLE_SET_ID:
-					onSurveyResponse = false;
-					sqlBuilder.append("pr.repeatable_set_id");
-					break;
-					
-				case REPEATABLE_SET_ITERATION:
-					onSurveyResponse = false;
-					sqlBuilder.append("pr.repeatable_set_iteration");
-					break;
-					
-				case PROMPT_RESPONSE:
-					onSurveyResponse = false;
-					sqlBuilder.append("pr.response");
-					break;
-					
-				// This is inaccurate and will only work if the entire 
-				// JSONObject is the same. We cannot do this without JSONObject
-				// dissection in SQL.
-				case CONTEXT_LOCATION_LATITUDE:
-				case CONTEXT_LOCATION_LONGITUDE:
-				case CONTEXT_LOCATION_TIMESTAMP:
-				case CONTEXT_LOCATION_TIMEZONE:
-				case CONTEXT_LOCATION_ACCURACY:
-				case CONTEXT_LOCATION_PROVIDER:
-					sqlBuilder.append("sr.location");
-					break;
-					
-				// This cannot be done without XML manipulation in the SQL. 
-				// Instead, we shouldn't dump the XML in the database and 
-				// should explode it into its own series of columns and, if
-				// necessary, additional tables.
-				case SURVEY_TITLE:
-					
-				case SURVEY_DESCRIPTION:
-					
-				default:
-					int length = sqlBuilder.length();
-					sqlBuilder.delete(length - 2, length);
-				}
-			}
-		}
-		// Now, go back and insert the correct SELECT clause based on if we are
-		// grouping or not and, if so, if we are doing it at the survey level
-		// or the prompt level.
-		if(columns == null) { 
-			sqlBuilder.insert(0, SQL_GET_SURVEY_RESPONSES_INDIVIDUAL);
-		}
-		else if(onSurveyResponse) {
-			sqlBuilder.insert(0, SQL_GET_SURVEY_RESPONSES_AGGREGATED_SURVEY);
-		}
-		else {
-			sqlBuilder.insert(0, SQL_GET_SURVEY_RESPONSES_AGGREGATED_PROMPT);
-		}
-		
-		// Finally, add some ordering to facilitate consistent results in the
-		// paging system.
 		if(sortOrder == null) {
 			sqlBuilder.append(" ORDER BY epoch_millis DESC, uuid");
 		}
@@ -1111,7 +1809,119 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 				sqlBuilder.append(", uuid");
 			}
 		}
+	}
+	
+	/**
+	 * Creates a survey response, without its prompt responses, from the
+	 * current row of a result with the columns of
+	 * {@link #SQL_GET_SURVEY_RESPONSE_HEADERS}. If the launch context was not
+	 * read, one is created from the survey response's time, as it is 
+	 * required but will not be output.
+	 * 
+	 * @param campaign The campaign to which the survey response belongs.
+	 * 
+	 * @param rs The result, positioned at the survey response's row.
+	 * 
+	 * @param withLaunchContext Whether the launch context was read.
+	 * 
+	 * @param withLocation Whether the location was read.
+	 * 
+	 * @return The survey response.
+	 * 
+	 * @throws SQLException The row could not be read or was invalid.
+	 */
+	private static SurveyResponse mapSurveyResponse(
+		final Campaign campaign,
+		final ResultSet rs,
+		final boolean withLaunchContext,
+		final boolean withLocation)
+		throws SQLException {
 		
-		return sqlBuilder.toString();
+		try {
+			long time = rs.getLong("epoch_millis");
+			String timezone = rs.getString("phone_timezone");
+			
+			JSONObject launchContext;
+			if(withLaunchContext) {
+				launchContext =
+					new JSONObject(
+						rs.getString("launch_context"));
+			}
+			else {
+				launchContext = new JSONObject();
+				launchContext.put(
+					SurveyResponse.LaunchContext.JSON_KEY_LAUNCH_TIME,
+					time);
+				launchContext.put(
+					SurveyResponse.LaunchContext.JSON_KEY_LAUNCH_TIMEZONE,
+					timezone);
+				launchContext.put(
+					SurveyResponse.LaunchContext.JSON_KEY_ACTIVE_TRIGGERS,
+					new JSONArray());
+			}
+			
+			JSONObject location = null;
+			if(withLocation) {
+				String locationString =
+					rs.getString("location");
+				if(locationString != null) {
+					location = new JSONObject(locationString);
+				}
+			}
+			
+			return
+				new SurveyResponse(
+					campaign.getSurveys().get(rs.getString("survey_id")),
+					UUID.fromString(rs.getString("uuid")),
+					rs.getString("username"),
+					rs.getString("urn"),
+					rs.getString("client"),
+					time,
+					DateTimeUtils.getDateTimeZoneFromString(timezone),
+					launchContext,
+					rs.getString("location_status"),
+					location,
+					SurveyResponse.PrivacyState.getValue(rs.getString("privacy_state")));
+		}
+		catch(IllegalArgumentException e) {
+			throw new SQLException("The TimeZone is unknown.", e);
+		}
+		catch(JSONException e) {
+			throw new SQLException("Error creating a JSONObject.", e);
+		}
+		catch(DomainException e) {
+			throw new SQLException("Error creating the survey response information object.", e);
+		}
+	}
+	
+	/**
+	 * Builds the message for a failed query.
+	 * 
+	 * @param sql The SQL that was executed.
+	 * 
+	 * @param parameters The parameters it was executed with.
+	 * 
+	 * @return The message.
+	 */
+	private static String getErrorMessage(
+		final String sql,
+		final Collection<Object> parameters) {
+		
+		StringBuilder errorBuilder =
+			new StringBuilder(
+				"Error executing SQL '" + sql + "' with parameters: ");
+		
+		boolean firstPass = true;
+		for(Object parameter : parameters) {
+			if(firstPass) {
+				firstPass = false;
+			}
+			else {
+				errorBuilder.append(", ");
+			}
+			errorBuilder.append(parameter.toString());
+		}
+		
+		return errorBuilder.toString();
 	}
 }
@@ -16,9 +16,6 @@
 package org.ohmage.query.impl;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FilenameFilter;
-import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -26,13 +23,12 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.UUID;
-import java.util.regex.Pattern;
 
 import javax.sql.DataSource;
 
@@ -40,13 +36,12 @@ import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.ohmage.cache.AudioDirectoryCache;
 import org.ohmage.cache.PreferenceCache;
-import org.ohmage.cache.VideoDirectoryCache;
 import org.ohmage.domain.Audio;
 import org.ohmage.domain.Image;
 import org.ohmage.domain.Location;
 import org.ohmage.domain.Location.LocationColumnKey;
+import org.ohmage.domain.MediaBlob;
 import org.ohmage.domain.Video;
 import org.ohmage.domain.campaign.PromptResponse;
 import org.ohmage.domain.campaign.RepeatableSet;
@@ -54,6 +49,7 @@ import org.ohmage.domain.campaign.RepeatableSetResponse;
 import org.ohmage.domain.campaign.Response;
 import org.ohmage.domain.campaign.Response.NoResponse;
 import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.domain.campaign.SurveyUploadStatus;
 import org.ohmage.domain.campaign.prompt.PhotoPrompt.NoResponseMedia;
 import org.ohmage.domain.campaign.response.AudioPromptResponse;
 import org.ohmage.domain.campaign.response.MultiChoiceCustomPromptResponse;
@@ -81,31 +77,9 @@ import org.springframework.transaction.support.DefaultTransactionDefinition;
  * @author Joshua Selsky
  */
 public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUploadQuery {
-	// The current directory to which the next image should be saved.
-	private static File imageLeafDirectory;
-	
-	private static final Pattern IMAGE_DIRECTORY_PATTERN = 
-		Pattern.compile("[0-9]+");
-	
 	public static final String IMAGE_STORE_FORMAT = "jpg";
 	public static final String IMAGE_SCALED_EXTENSION = "-s";
 	
-	/**
-	 * Filters the sub-directories in a directory to only return those that
-	 * match the regular expression matcher for directories.
-	 * 
-	 * @author Joshua Selsky
-	 */
-	private static final class DirectoryFilter implements FilenameFilter {
-		/**
-		 * Returns true iff the filename is appropriate for the regular
-		 * expression. 
-		 */
-		public boolean accept(File f, String name) {
-			return IMAGE_DIRECTORY_PATTERN.matcher(name).matches();
-		}
-	}
-
 	private static final Logger LOGGER = 
 		Logger.getLogger(SurveyUploadQuery.class);
 	
@@ -169,8 +143,55 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 			final Map<String, Audio> audioContentsMap)
 			throws DataAccessException {
 		
+		// The whole list is a single batch.
+		return insertSurveys(
+			username,
+			client,
+			campaignUrn,
+			new SurveyResponseSource() {
+				private boolean returned = false;
+				
+				@Override
+				public List<SurveyResponse> nextBatch() {
+					if(returned) {
+						return null;
+					}
+					
+					returned = true;
+					return surveyUploadList;
+				}
+				
+				@Override
+				public void batchInserted(
+						final List<SurveyResponse> batch,
+						final Collection<Integer> duplicateIndexes) {
+					
+					// Nothing to do.
+				}
+			},
+			bufferedImageMap,
+			videoContentsMap,
+			audioContentsMap);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.ISurveyUploadQuery#insertSurveys(java.lang.String, java.lang.String, java.lang.String, org.ohmage.query.ISurveyUploadQuery.SurveyResponseSource, java.util.Map, java.util.Map, java.util.Map)
+	 */
+	@Override
+	public List<Integer> insertSurveys(
+			final String username,
+			final String client,
+			final String campaignUrn,
+			final SurveyResponseSource source,
+			final Map<UUID, Image> bufferedImageMap,
+			final Map<String, Video> videoContentsMap,
+			final Map<String, Audio> audioContentsMap)
+			throws DataAccessException {
+		
+		recordWrite(username);
+		
 		List<Integer> duplicateIndexList = new ArrayList<Integer>();
-		int numberOfSurveys = surveyUploadList.size();
 		
 		// The following variables are used in logging messages when errors occur
 		SurveyResponse currentSurveyResponse = null;
@@ -190,86 +211,25 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 		
 		try { // handle TransactionExceptions
 			
-			for(int surveyIndex = 0; surveyIndex < numberOfSurveys; surveyIndex++) { 
+			SurveyCursor surveys = new SurveyCursor(source, transactionManager, status, fileList);
+			for(int surveyIndex = 0; surveys.hasNext(); surveyIndex++) { 
 				
 				 try { // handle DataAccessExceptions
 					
-					final SurveyResponse surveyUpload = surveyUploadList.get(surveyIndex);
+					final SurveyResponse surveyUpload = surveys.next();
 					currentSurveyResponse = surveyUpload; 
 					currentSql = SQL_INSERT_SURVEY_RESPONSE;
 			
-					KeyHolder idKeyHolder = new GeneratedKeyHolder();
-					
 					// First, insert the survey
-					getJdbcTemplate().update(
-						new PreparedStatementCreator() {
-							public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
-								PreparedStatement ps 
-									= connection.prepareStatement(SQL_INSERT_SURVEY_RESPONSE, Statement.RETURN_GENERATED_KEYS);
-								
-								String locationString = null;
-								Location location = surveyUpload.getLocation();
-								if(location != null) {
-									try {
-										locationString = 
-												location.toJson(false, LocationColumnKey.ALL_COLUMNS).toString();
-									}
-									catch(JSONException e) {
-										throw new SQLException(e);
-									}
-									catch(DomainException e) {
-										throw new SQLException(e);
-									}
-								}
-								
-								ps.setString(1, surveyUpload.getSurveyResponseId().toString());
-								ps.setString(2, username);
-								ps.setString(3, campaignUrn);
-								ps.setLong(4, surveyUpload.getTime());
-								ps.setString(5, surveyUpload.getTimezone().getID());
-								ps.setString(6, surveyUpload.getLocationStatus().toString());
-								ps.setString(7, locationString);
-								ps.setString(8, surveyUpload.getSurvey().getId());
-								try {
-									ps.setString(9, surveyUpload.toJson(false, false, false, false, true, true, true, true, true, false, false, true, true, true, true, false, false).toString());
-								}
-								catch(JSONException e) {
-									throw new SQLException(
-											"Couldn't create the JSON.",
-											e);
-								}
-								catch(DomainException e) {
-									throw new SQLException(
-											"Couldn't create the JSON.",
-											e);
-								}
-								ps.setString(10, client);
-								ps.setTimestamp(11, new Timestamp(System.currentTimeMillis()));
-								try {
-									ps.setString(12, surveyUpload.getLaunchContext().toJson(true).toString());
-								}
-								catch(JSONException e) {
-									throw new SQLException(
-											"Couldn't create the JSON.",
-											e);
-								}
-								try {
-									ps.setString(13, PreferenceCache.instance().lookup(PreferenceCache.KEY_DEFAULT_SURVEY_RESPONSE_SHARING_STATE));
-								} catch (CacheMissException e) {
-									throw new SQLException(
-											"Error reading from the cache.", 
-											e);
-								}
-								return ps;
-							}
-						},
-						idKeyHolder
-					);
+					final Number surveyResponseId =
+						insertSurveyResponse(
+							username,
+							client,
+							campaignUrn,
+							surveyUpload);
 					
 					savepoint = status.createSavepoint();
 					
-					final Number surveyResponseId = idKeyHolder.getKey(); // the primary key on the survey_response table for the 
-					                                                      // just-inserted survey
 					currentSql = SQL_INSERT_PROMPT_RESPONSE;
 					
 					// Now insert each prompt response from the survey
@@ -284,9 +244,15 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 						null,
 						bufferedImageMap,
 						videoContentsMap,
-						audioContentsMap,
-						transactionManager,
-						status);
+						audioContentsMap);
+					
+					// Record the new response in the change feed.
+					ChangeQueries.recordSurveyResponseInsert(
+						getJdbcTemplate(),
+						campaignUrn,
+						username,
+						surveyUpload.getSurveyResponseId(),
+						surveyUpload.getTime());
 					
 				} catch (DataIntegrityViolationException dive) { // a unique index exists only on the survey_response table
 					
@@ -295,6 +261,7 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 						LOGGER.debug("Found a duplicate survey upload message for user " + username);
 						
 						duplicateIndexList.add(surveyIndex);
+						surveys.duplicate(surveyIndex);
 						status.rollbackToSavepoint(savepoint);
 						
 					} 
@@ -326,7 +293,18 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 					}
 					rollback(transactionManager, status);
 					throw new DataAccessException(dae);
-				} 
+				} catch (DataAccessException e) {
+					
+					// The media could not be saved.
+					
+					LOGGER.error("caught DataAccessException", e);
+					logErrorDetails(currentSurveyResponse, currentPromptResponse, currentSql, username, campaignUrn);
+					for(File f : fileList) {
+						f.delete();
+					}
+					rollback(transactionManager, status);
+					throw e;
+				}
 				
 			}
 			
@@ -350,6 +328,334 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 		return duplicateIndexList;
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.ISurveyUploadQuery#insertSurveyChunk(java.lang.String, java.lang.String, java.lang.String, java.util.SortedMap, java.util.Map, java.util.Map, java.util.Map)
+	 */
+	@Override
+	public List<SurveyUploadStatus> insertSurveyChunk(
+			final String username,
+			final String client,
+			final String campaignUrn,
+			final SortedMap<Integer, SurveyResponse> chunk,
+			final Map<UUID, Image> bufferedImageMap,
+			final Map<String, Video> videoContentsMap,
+			final Map<String, Audio> audioContentsMap)
+			throws DataAccessException {
+		
+		recordWrite(username);
+		
+		List<SurveyUploadStatus> result = 
+			new ArrayList<SurveyUploadStatus>(chunk.size());
+		
+		// The files written for the surveys that were inserted. They are only
+		// removed if the chunk cannot be committed.
+		List<File> chunkFileList = new LinkedList<File>();
+		
+		DefaultTransactionDefinition def = new DefaultTransactionDefinition();
+		def.setName("survey upload chunk");
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(getDataSource());
+		TransactionStatus status = null;
+		
+		try {
+			status = transactionManager.getTransaction(def);
+			
+			for(Map.Entry<Integer, SurveyResponse> entry : chunk.entrySet()) {
+				SurveyResponse surveyUpload = entry.getValue();
+				UUID surveyResponseId = surveyUpload.getSurveyResponseId();
+				
+				// Each survey is undone by itself if it fails. The rolled 
+				// back rows stay locked until the chunk is committed, so no
+				// other upload can start using the survey's files before 
+				// they are removed.
+				Object savepoint = status.createSavepoint();
+				List<File> fileList = new LinkedList<File>();
+				
+				String failure = null;
+				boolean duplicate = false;
+				try {
+					Number id = 
+						insertSurveyResponse(
+							username, 
+							client, 
+							campaignUrn, 
+							surveyUpload);
+					
+					createPromptResponse(
+						username,
+						client,
+						id,
+						fileList,
+						surveyUpload.getResponses().values(),
+						null,
+						bufferedImageMap,
+						videoContentsMap,
+						audioContentsMap);
+					
+					ChangeQueries.recordSurveyResponseInsert(
+						getJdbcTemplate(),
+						campaignUrn,
+						username,
+						surveyResponseId,
+						surveyUpload.getTime());
+				}
+				catch(DataIntegrityViolationException e) {
+					// Another upload may have stored the same survey since
+					// the duplicates were checked.
+					if(isDuplicate(e)) {
+						duplicate = true;
+					}
+					else {
+						LOGGER.error("A survey response could not be inserted.", e);
+						failure = "The survey response could not be stored.";
+					}
+				}
+				catch(org.springframework.dao.DataAccessException e) {
+					LOGGER.error("A survey response could not be inserted.", e);
+					failure = "The survey response could not be stored.";
+				}
+				catch(DataAccessException e) {
+					LOGGER.error("A survey response's media could not be saved.", e);
+					failure = "The survey response's media could not be saved.";
+				}
+				
+				if(duplicate || (failure != null)) {
+					status.rollbackToSavepoint(savepoint);
+					for(File f : fileList) {
+						f.delete();
+					}
+				}
+				else {
+					status.releaseSavepoint(savepoint);
+					chunkFileList.addAll(fileList);
+				}
+				
+				result.add(
+					new SurveyUploadStatus(
+						entry.getKey(),
+						surveyResponseId,
+						(duplicate) ?
+							SurveyUploadStatus.Status.DUPLICATE :
+							(failure == null) ?
+								SurveyUploadStatus.Status.STORED :
+								SurveyUploadStatus.Status.FAILED,
+						failure));
+			}
+			
+			transactionManager.commit(status);
+		}
+		catch(TransactionException e) {
+			// A failed commit has already been rolled back.
+			if((status != null) && (! status.isCompleted())) {
+				try {
+					transactionManager.rollback(status);
+				}
+				catch(TransactionException rollbackException) {
+					LOGGER.error("failed to rollback survey upload chunk", rollbackException);
+				}
+			}
+			for(File f : chunkFileList) {
+				f.delete();
+			}
+			throw new DataAccessException(
+				"The chunk of survey responses could not be committed.",
+				e);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Inserts the survey response itself, but not its prompt responses.
+	 * 
+	 * @param username
+	 *        The owner of the survey response.
+	 * 
+	 * @param client
+	 *        The software client that performed the upload.
+	 * 
+	 * @param campaignUrn
+	 *        The campaign for the survey response.
+	 * 
+	 * @param surveyUpload
+	 *        The survey response.
+	 * 
+	 * @return The database ID of the new survey response.
+	 * 
+	 * @throws org.springframework.dao.DataAccessException
+	 *         The survey response could not be inserted, e.g. because it is a
+	 *         duplicate.
+	 */
+	private Number insertSurveyResponse(
+			final String username,
+			final String client,
+			final String campaignUrn,
+			final SurveyResponse surveyUpload) {
+		
+		KeyHolder idKeyHolder = new GeneratedKeyHolder();
+		
+		getJdbcTemplate().update(
+			new PreparedStatementCreator() {
+				public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
+					PreparedStatement ps 
+						= connection.prepareStatement(SQL_INSERT_SURVEY_RESPONSE, Statement.RETURN_GENERATED_KEYS);
+				
+					String locationString = null;
+					Location location = surveyUpload.getLocation();
+					if(location != null) {
+						try {
+							locationString = 
+									location.toJson(false, LocationColumnKey.ALL_COLUMNS).toString();
+						}
+						catch(JSONException e) {
+							throw new SQLException(e);
+						}
+						catch(DomainException e) {
+							throw new SQLException(e);
+						}
+					}
+				
+					ps.setString(1, surveyUpload.getSurveyResponseId().toString());
+					ps.setString(2, username);
+					ps.setString(3, campaignUrn);
+					ps.setLong(4, surveyUpload.getTime());
+					ps.setString(5, surveyUpload.getTimezone().getID());
+					ps.setString(6, surveyUpload.getLocationStatus().toString());
+					ps.setString(7, locationString);
+					ps.setString(8, surveyUpload.getSurvey().getId());
+					try {
+						ps.setString(9, surveyUpload.toJson(false, false, false, false, true, true, true, true, true, false, false, true, true, true, true, false, false).toString());
+					}
+					catch(JSONException e) {
+						throw new SQLException(
+								"Couldn't create the JSON.",
+								e);
+					}
+					catch(DomainException e) {
+						throw new SQLException(
+								"Couldn't create the JSON.",
+								e);
+					}
+					ps.setString(10, client);
+					ps.setTimestamp(11, new Timestamp(System.currentTimeMillis()));
+					try {
+						ps.setString(12, surveyUpload.getLaunchContext().toJson(true).toString());
+					}
+					catch(JSONException e) {
+						throw new SQLException(
+								"Couldn't create the JSON.",
+								e);
+					}
+					try {
+						ps.setString(13, PreferenceCache.instance().lookup(PreferenceCache.KEY_DEFAULT_SURVEY_RESPONSE_SHARING_STATE));
+					} catch (CacheMissException e) {
+						throw new SQLException(
+								"Error reading from the cache.", 
+								e);
+					}
+					return ps;
+				}
+			},
+			idKeyHolder
+		);
+		
+		return idKeyHolder.getKey();
+	}
+	
+	/**
+	 * Retrieves the next batch from the source. If the source fails, the
+	 * files that have already been written are removed and the transaction
+	 * is rolled back before the exception is rethrown.
+	 */
+	private List<SurveyResponse> nextBatch(
+			final SurveyResponseSource source,
+			final PlatformTransactionManager transactionManager,
+			final TransactionStatus status,
+			final List<File> fileList)
+			throws DataAccessException {
+		
+		try {
+			return source.nextBatch();
+		}
+		catch(DataAccessException e) {
+			for(File f : fileList) {
+				f.delete();
+			}
+			rollback(transactionManager, status);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Walks the survey responses in each of a source's batches, telling the
+	 * source when each batch has been inserted. The survey responses are
+	 * numbered across all of the batches.
+	 */
+	private final class SurveyCursor {
+		private final SurveyResponseSource source;
+		private final PlatformTransactionManager transactionManager;
+		private final TransactionStatus status;
+		private final List<File> fileList;
+		
+		private List<SurveyResponse> batch = null;
+		private boolean finished = false;
+		private int batchIndex = 0;
+		private int batchOffset = 0;
+		private List<Integer> batchDuplicateIndexList = 
+			new ArrayList<Integer>();
+		
+		/**
+		 * Creates a cursor before the first survey response of the source.
+		 */
+		private SurveyCursor(
+				final SurveyResponseSource source,
+				final PlatformTransactionManager transactionManager,
+				final TransactionStatus status,
+				final List<File> fileList) {
+			
+			this.source = source;
+			this.transactionManager = transactionManager;
+			this.status = status;
+			this.fileList = fileList;
+		}
+		
+		/**
+		 * Returns whether or not there is another survey response. If the 
+		 * current batch has been walked, the source is told that it was 
+		 * inserted and the next batch is retrieved.
+		 */
+		private boolean hasNext() throws DataAccessException {
+			while((! finished) && ((batch == null) || (batchIndex == batch.size()))) {
+				if(batch != null) {
+					source.batchInserted(batch, batchDuplicateIndexList);
+					batchOffset += batch.size();
+				}
+				
+				batch = nextBatch(source, transactionManager, status, fileList);
+				batchIndex = 0;
+				batchDuplicateIndexList = new ArrayList<Integer>();
+				finished = (batch == null);
+			}
+			
+			return ! finished;
+		}
+		
+		/**
+		 * Returns the next survey response.
+		 */
+		private SurveyResponse next() {
+			return batch.get(batchIndex++);
+		}
+		
+		/**
+		 * Records that a survey response in the current batch was a 
+		 * duplicate.
+		 */
+		private void duplicate(final int surveyIndex) {
+			batchDuplicateIndexList.add(surveyIndex - batchOffset);
+		}
+	}
+	
 	/**
 	 * Attempts to rollback a transaction. 
 	 */
@@ -417,14 +723,10 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 	 * @param videoContentsMap
 	 *        The map of video IDs to their contents.
 	 * 
-	 * @param transactionManager
-	 *        The manager for this transaction.
-	 * 
-	 * @param status
-	 *        The status of this transaction.
-	 * 
 	 * @throws DataAccessException
-	 *         There was an error saving the information.
+	 *         There was an error saving the information. The caller is
+	 *         responsible for rolling back the transaction or savepoint and
+	 *         for removing the files in the file list.
 	 */
 	private void createPromptResponse(
 			final String username, final String client,
@@ -434,9 +736,7 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 			final Integer repeatableSetIteration,
             final Map<UUID, Image> bufferedImageMap,
             final Map<String, Video> videoContentsMap, 
-            final Map<String, Audio> audioContentsMap, 
-            final DataSourceTransactionManager transactionManager,
-            final TransactionStatus status) 
+            final Map<String, Audio> audioContentsMap) 
 			throws DataAccessException {
 		
 		for(Response response : promptUploadList) {
@@ -454,9 +754,7 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 						iteration,
 						bufferedImageMap,
 						videoContentsMap,
-						audioContentsMap,
-						transactionManager,
-						status);
+						audioContentsMap);
 				}
 				continue;
 			}
@@ -518,24 +816,32 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 					! JsonInputKeys.PROMPT_NOT_DISPLAYED.equals(imageId) &&
 					! JsonInputKeys.IMAGE_NOT_UPLOADED.equals(imageId)) {
 					
-					// Get the directory to save the image and save it.
-					File originalFile;
+					// Save the original image in the media store. Its other
+					// sizes are saved next to it when it is processed.
+					MediaBlob blob;
 					try {
-						originalFile =
-							bufferedImageMap
-								.get(UUID.fromString(imageId))
-								.saveImage(getDirectory());
+						blob =
+							MediaBlobQueries.instance().storeBlob(
+								bufferedImageMap
+									.get(UUID.fromString(imageId))
+									.getInputStream(Image.ORIGINAL),
+								null);
 					}
 					catch(DomainException e) {
-						rollback(transactionManager, status);
 						throw
 							new DataAccessException(
 								"Error saving the images.",
 								e);
 					}
 					
+					// Only remove the file on failure if this upload wrote
+					// it.
+					if(blob.isCreated()) {
+						fileList.add(blob.getFile());
+					}
+					
 					// Get the image's URL.
-					String url = "file://" + originalFile.getAbsolutePath();
+					String url = blob.getUrl();
 					// Insert the image URL into the database.
 					try {
 						getJdbcTemplate().update(
@@ -544,7 +850,6 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 							);
 					}
 					catch(org.springframework.dao.DataAccessException e) {
-						transactionManager.rollback(status);
 						throw new DataAccessException(
 							"Error executing SQL '" + 
 								SQL_INSERT_IMAGE + 
@@ -566,89 +871,58 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 						(responseValue instanceof NoResponseMedia)
 					)) {
 					
-					// Attempt to write it to the file system.
-					try {
-						// Get the current video directory.
-						File currVideoDirectory = 
-							VideoDirectoryCache.getDirectory();
-
-						// Get the video ID.
-						String responseValueString = responseValue.toString();
-						
-						// Get the video object.
-						Video video = 
-							videoContentsMap.get(responseValueString);
-						
-						// Get the file.
-						File videoFile = 
-							new File(
-								currVideoDirectory.getAbsolutePath() +
-								"/" +
-								responseValueString +
-								"." +
-								video.getType());
-						
-						// Get the video contents.
-						InputStream content = video.getContentStream();
-						if(content == null) {
-							transactionManager.rollback(status);
-							throw new DataAccessException(
-								"The video contents did not exist in the map.");
-						}
-						
-						// Write the video contents to disk.
-						FileOutputStream fos = new FileOutputStream(videoFile);
-						
-						// Write the content to the output stream.
-						int bytesRead;
-						byte[] buffer = new byte[4096];
-						while((bytesRead = content.read(buffer)) != -1) {
-							fos.write(buffer, 0, bytesRead);
-						}
-						fos.close();
-
-						// Store the file reference in the video list.
-						fileList.add(videoFile);
-						
-						// Get the video's URL.
-						String url = "file://" + videoFile.getAbsolutePath();
-						
-						// Insert the video URL into the database.
-						try {
-							getJdbcTemplate().update(
-									SQL_INSERT_IMAGE, 
-									new Object[] { 
-										username, 
-										client, 
-										responseValueString,
-										url }
-								);
-						}
-						catch(org.springframework.dao.DataAccessException e) {
-							videoFile.delete();
-							transactionManager.rollback(status);
-							throw new DataAccessException(
-								"Error executing SQL '" + 
-									SQL_INSERT_IMAGE + 
-									"' with parameters: " +
-									username + ", " + 
-									client + ", " + 
-									responseValueString + ", " + 
-									url, 
-								e);
-						}
-					}
-					// If it fails, roll back the transaction.
-					catch(DomainException e) {
-						transactionManager.rollback(status);
+					// Get the video ID.
+					String responseValueString = responseValue.toString();
+					
+					// Get the video object.
+					Video video = 
+						videoContentsMap.get(responseValueString);
+					
+					// Get the video contents.
+					InputStream content = video.getContentStream();
+					if(content == null) {
 						throw new DataAccessException(
-							"Could not get the video directory.",
-							e);
+							"The video contents did not exist in the map.");
+					}
+					
+					// Save the video in the media store.
+					MediaBlob blob =
+						MediaBlobQueries.instance().storeBlob(
+							content,
+							video.getType());
+					
+					// Only remove the file on failure if this upload wrote
+					// it.
+					if(blob.isCreated()) {
+						fileList.add(blob.getFile());
 					}
-					catch(IOException e) {
-						transactionManager.rollback(status);
+					
+					// Get the video's URL.
+					String url = blob.getUrl();
+					
+					// Insert the video URL into the database.
+					try {
+						getJdbcTemplate().update(
+								SQL_INSERT_IMAGE, 
+								new Object[] { 
+									username, 
+									client, 
+									responseValueString,
+									url }
+							);
+					}
+					catch(org.springframework.dao.DataAccessException e) {
+						if(blob.isCreated()) {
+							blob.getFile().delete();
+						}
 						throw new DataAccessException(
-							"Could not write the file.",
+							"Error executing SQL '" + 
+								SQL_INSERT_IMAGE + 
+								"' with parameters: " +
+								username + ", " + 
+								client + ", " + 
+								responseValueString + ", " + 
+								url, 
 							e);
 					}
 				}
@@ -661,415 +935,62 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 						(responseValue instanceof NoResponseMedia)
 					)) {
 					
-					// Attempt to write it to the file system.
-					try {
-						// Get the current audio directory.
-						File currAudioDirectory = 
-							AudioDirectoryCache.getDirectory();
-
-						// Get the audio ID.
-						String responseValueString = responseValue.toString();
-						
-						// Get the audio object.
-						Audio audio = 
-							audioContentsMap.get(responseValueString);
-						
-						// Get the file.
-						File audioFile = 
-							new File(
-								currAudioDirectory.getAbsolutePath() +
-								"/" +
-								responseValueString +
-								"." +
-								audio.getType());
-						
-						// Get the video contents.
-						InputStream content = audio.getContentStream();
-						if(content == null) {
-							transactionManager.rollback(status);
-							throw new DataAccessException(
-								"The audio contents did not exist in the map.");
-						}
-						
-						// Write the video contents to disk.
-						FileOutputStream fos = new FileOutputStream(audioFile);
-						
-						// Write the content to the output stream.
-						int bytesRead;
-						byte[] buffer = new byte[4096];
-						while((bytesRead = content.read(buffer)) != -1) {
-							fos.write(buffer, 0, bytesRead);
-						}
-						fos.close();
-
-						// Store the file reference in the video list.
-						fileList.add(audioFile);
-						
-						// Get the video's URL.
-						String url = "file://" + audioFile.getAbsolutePath();
-						
-						// Insert the video URL into the database.
-						try {
-							getJdbcTemplate().update(
-									SQL_INSERT_IMAGE, 
-									new Object[] { 
-										username, 
-										client, 
-										responseValueString,
-										url }
-								);
-						}
-						catch(org.springframework.dao.DataAccessException e) {
-							audioFile.delete();
-							transactionManager.rollback(status);
-							throw new DataAccessException(
-								"Error executing SQL '" + 
-									SQL_INSERT_IMAGE + 
-									"' with parameters: " +
-									username + ", " + 
-									client + ", " + 
-									responseValueString + ", " + 
-									url, 
-								e);
-						}
-					}
-					// If it fails, roll back the transaction.
-					catch(DomainException e) {
-						transactionManager.rollback(status);
-						throw new DataAccessException(
-							"Could not get the video directory.",
-							e);
-					}
-					catch(IOException e) {
-						transactionManager.rollback(status);
-						throw new DataAccessException(
-							"Could not write the file.",
-							e);
-					}
-				}
-			}
-		}
-	}
-	
-	/**
-	 * Copied directly from ImageQueries.
-	 * 
-	 * Gets the directory to which a image should be saved. This should be used
-	 * instead of accessing the class-level variable directly as it handles the
-	 * creation of new folders and the checking that the current
-	 * folder is not full.
-	 * 
-	 * @return A File object for where an image should be written.
-	 */
-	private File getDirectory() throws DataAccessException {
-		// Get the maximum number of items in a directory.
-		int numFilesPerDirectory;
-		try {
-			numFilesPerDirectory = 
-				Integer.decode(
-					PreferenceCache.instance().lookup(
-						PreferenceCache.KEY_MAXIMUM_NUMBER_OF_FILES_PER_DIRECTORY));
-		}
-		catch(CacheMissException e) {
-			throw new DataAccessException(
-				"Preference cache doesn't know about 'known' key: " + 
-					PreferenceCache.KEY_MAXIMUM_NUMBER_OF_FILES_PER_DIRECTORY,
-				e);
-		}
-		catch(NumberFormatException e) {
-			throw new DataAccessException(
-				"Stored value for key '" + 
-					PreferenceCache.KEY_MAXIMUM_NUMBER_OF_FILES_PER_DIRECTORY +
-					"' is not decodable as a number.",
-				e);
-		}
-		
-		// If the leaf directory was never initialized, then we should do
-		// that. Note that the initialization is dumb in that it will get to
-		// the end of the structure and not check to see if the leaf node is
-		// full.
-		if(imageLeafDirectory == null) {
-			init(numFilesPerDirectory);
-		}
-		
-		File[] documents = imageLeafDirectory.listFiles();
-		// If the 'imageLeafDirectory' directory is full, traverse the tree and
-		// find a new directory.
-		if(documents.length >= numFilesPerDirectory) {
-			getNewDirectory(numFilesPerDirectory);
-		}
-		
-		return imageLeafDirectory;
-	}
-	
-	/**
-	 * Initializes the directory structure by drilling down to the leaf
-	 * directory with each step choosing the directory with the largest
-	 * integer value.
-	 */
-	private synchronized void init(int numFilesPerDirectory) throws DataAccessException {
-		try {
-			// If the current leaf directory has been set, we weren't the
-			// first to call init(), so we can just back out.
-			if(imageLeafDirectory != null) {
-				return;
-			}
-			
-			// Get the root directory from the preference cache based on the
-			// key.
-			String rootFile;
-			try {
-				rootFile = PreferenceCache.instance().lookup(PreferenceCache.KEY_IMAGE_DIRECTORY);
-			}
-			catch(CacheMissException e) {
-				throw new DataAccessException("Preference cache doesn't know about 'known' key: " + PreferenceCache.KEY_IMAGE_DIRECTORY, e);
-			}
-			File rootDirectory = new File(rootFile);
-			if(! rootDirectory.exists()) {
-				throw new DataAccessException("The root file doesn't exist suggesting an incomplete installation: " + rootFile);
-			}
-			else if(! rootDirectory.isDirectory()) {
-				throw new DataAccessException("The root file isn't a directory.");
-			}
-			
-			// Get the number of folders deep that documents are stored.
-			int fileDepth;
-			try {
-				fileDepth = Integer.decode(PreferenceCache.instance().lookup(PreferenceCache.KEY_FILE_HIERARCHY_DEPTH));
-			}
-			catch(CacheMissException e) {
-				throw new DataAccessException("Preference cache doesn't know about 'known' key: " + PreferenceCache.KEY_FILE_HIERARCHY_DEPTH, e);
-			}
-			catch(NumberFormatException e) {
-				throw new DataAccessException("Stored value for key '" + PreferenceCache.KEY_FILE_HIERARCHY_DEPTH + "' is not decodable as a number.", e);
-			}
-			
-			DirectoryFilter directoryFilter = new DirectoryFilter();
-			File currDirectory = rootDirectory;
-			for(int currDepth = 0; currDepth < fileDepth; currDepth++) {
-				// Get the list of directories in the current directory.
-				File[] currDirectories = currDirectory.listFiles(directoryFilter);
-				
-				// If there aren't any, create the first subdirectory in this
-				// directory.
-				if(currDirectories.length == 0) {
-					String newFolderName = directoryNameBuilder(0, numFilesPerDirectory);
-					currDirectory = new File(currDirectory.getAbsolutePath() + "/" + newFolderName);
-					currDirectory.mkdir();
-				}
-				// If the directory is overly full, step back up in the
-				// structure. This should never happen, as it indicates that
-				// there is an overflow in the structure.
-				else if(currDirectories.length > numFilesPerDirectory) {
-					LOGGER.warn("Too many subdirectories in: " + currDirectory.getAbsolutePath());
+					// Get the audio ID.
+					String responseValueString = responseValue.toString();
 					
-					// Take a step back in our depth.
-					currDepth--;
-					
-					// If, while backing up the tree, we back out of the root
-					// directory, we have filled up the space.
-					if(currDepth < 0) {
-						LOGGER.error("Image directory structure full!");
-						throw new DataAccessException("Image directory structure full!");
-					}
-
-					// Get the next parent and the current directory to it.
-					int nextDirectoryNumber = Integer.decode(currDirectory.getName()) + 1;
-					currDirectory = new File(currDirectory.getParent() + "/" + nextDirectoryNumber);
+					// Get the audio object.
+					Audio audio = 
+						audioContentsMap.get(responseValueString);
 					
-					// If the directory already exists, then there is either a
-					// concurrency issue or someone else is adding files.
-					// Either way, this shouldn't happen.
-					if(currDirectory.exists()) {
-						LOGGER.error("Somehow the 'new' directory already exists. This should be looked into: " + currDirectory.getAbsolutePath());
-					}
-					// Otherwise, create the directory.
-					else {
-						currDirectory.mkdir();
-					}
-				}
-				// Drill down to the directory with the largest, numeric value.
-				else {
-					currDirectory = getLargestSubfolder(currDirectories);
-				}
-			}
-			
-			// After we have found a suitable directory, set it.
-			imageLeafDirectory = currDirectory;
-		}
-		catch(SecurityException e) {
-			throw new DataAccessException("The current process doesn't have sufficient permiossions to create new directories.", e);
-		}
-	}
-	
-	/**
-	 * Checks again that the current leaf directory is full. If it is not, then
-	 * it will just back out under the impression someone else made the change.
-	 * If it is, it will go up and down the directory tree structure to find a
-	 * new leaf node in which to store new files.
-	 * 
-	 * @param numFilesPerDirectory The maximum allowed number of files in a
-	 * 							   leaf directory and the maximum allowed
-	 * 							   number of directories in the branches.
-	 */
-	private synchronized void getNewDirectory(int numFilesPerDirectory) throws DataAccessException {
-		try {
-			// Make sure that this hasn't changed because another thread may
-			// have preempted us and already changed the current leaf
-			// directory.
-			File[] files = imageLeafDirectory.listFiles();
-			if(files.length < numFilesPerDirectory) {
-				return;
-			}
-			
-			// Get the root directory from the preference cache based on the
-			// key.
-			String rootFile;
-			try {
-				rootFile = PreferenceCache.instance().lookup(PreferenceCache.KEY_IMAGE_DIRECTORY);
-			}
-			catch(CacheMissException e) {
-				throw new DataAccessException("Preference cache doesn't know about 'known' key: " + PreferenceCache.KEY_IMAGE_DIRECTORY, e);
-			}
-			File rootDirectory = new File(rootFile);
-			if(! rootDirectory.exists()) {
-				throw new DataAccessException("The root file doesn't exist suggesting an incomplete installation: " + rootFile);
-			}
-			else if(! rootDirectory.isDirectory()) {
-				throw new DataAccessException("The root file isn't a directory.");
-			}
-			String absoluteRootDirectory = rootDirectory.getAbsolutePath();
-			
-			// A filter when listing a set of directories for a file.
-			DirectoryFilter directoryFilter = new DirectoryFilter();
-			
-			// A local File to use while we are searching to not confuse other
-			// threads.
-			File newDirectory = imageLeafDirectory;
-			
-			// A flag to indicate when we are done looking for a directory.
-			boolean lookingForDirectory = true;
-			
-			// The number of times we stepped up in the hierarchy.
-			int depth = 0;
-			
-			// While we are still looking for a suitable directory,
-			while(lookingForDirectory) {
-				// Get the current directory's name which should be a Long
-				// value.
-				long currDirectoryName;
-				try {
-					String dirName = newDirectory.getName();
-					while(dirName.startsWith("0")) {
-						dirName = dirName.substring(1);
-					}
-					if("".equals(dirName)) {
-						currDirectoryName = 0;
-					}
-					else {
-						currDirectoryName = Long.decode(dirName);
-					}
-				}
-				catch(NumberFormatException e) {
-					if(newDirectory.getAbsolutePath().equals(absoluteRootDirectory)) {
-						throw new DataAccessException("Document structure full!", e);
-					}
-					else {
-						throw new DataAccessException("Potential breach of document structure.", e);
+					// Get the audio contents.
+					InputStream content = audio.getContentStream();
+					if(content == null) {
+						throw new DataAccessException(
+							"The audio contents did not exist in the map.");
 					}
-				}
-				
-				// Move the pointer up a directory.
-				newDirectory = new File(newDirectory.getParent());
-				// Get the list of files in the parent.
-				File[] parentDirectoryFiles = newDirectory.listFiles(directoryFilter);
-				
-				// If this directory has room for a new subdirectory,
-				if(parentDirectoryFiles.length < numFilesPerDirectory) {
-					// Increment the name for the next subfolder.
-					currDirectoryName++;
 					
-					// Create the new subfolder.
-					newDirectory = new File(newDirectory.getAbsolutePath() + "/" + directoryNameBuilder(currDirectoryName, numFilesPerDirectory));
-					newDirectory.mkdir();
+					// Save the audio in the media store.
+					MediaBlob blob =
+						MediaBlobQueries.instance().storeBlob(
+							content,
+							audio.getType());
 					
-					// Continue drilling down to reach an appropriate leaf
-					// node.
-					while(depth > 0) {
-						newDirectory = new File(newDirectory.getAbsolutePath() + "/" + directoryNameBuilder(0, numFilesPerDirectory));
-						newDirectory.mkdir();
-						
-						depth--;
+					// Only remove the file on failure if this upload wrote
+					// it.
+					if(blob.isCreated()) {
+						fileList.add(blob.getFile());
 					}
 					
-					lookingForDirectory = false;
-				}
-				// If the parent is full as well, increment the depth unless
-				// we are already at the parent. If we are at the parent, then
-				// we cannot go up any further and have exhausted the
-				// directory structure.
-				else
-				{
-					if(newDirectory.getAbsoluteFile().equals(absoluteRootDirectory)) {
-						throw new DataAccessException("Document structure full!");
+					// Get the audio's URL.
+					String url = blob.getUrl();
+					
+					// Insert the audio URL into the database.
+					try {
+						getJdbcTemplate().update(
+								SQL_INSERT_IMAGE, 
+								new Object[] { 
+									username, 
+									client, 
+									responseValueString,
+									url }
+							);
 					}
-					else {
-						depth++;
+					catch(org.springframework.dao.DataAccessException e) {
+						if(blob.isCreated()) {
+							blob.getFile().delete();
+						}
+						throw new DataAccessException(
+							"Error executing SQL '" + 
+								SQL_INSERT_IMAGE + 
+								"' with parameters: " +
+								username + ", " + 
+								client + ", " + 
+								responseValueString + ", " + 
+								url, 
+							e);
 					}
 				}
 			}
-			
-			imageLeafDirectory = newDirectory;
-		}
-		catch(NumberFormatException e) {
-			throw new DataAccessException("Could not decode a directory name as an integer.", e);
 		}
 	}
-	
-	/**
-	 * Builds the name of a folder by prepending zeroes where necessary and
-	 * converting the name into a String.
-	 * 
-	 * @param name The name of the file as an integer.
-	 * 
-	 * @param numFilesPerDirectory The maximum number of files allowed in the
-	 * 							   directory used to determine how many zeroes
-	 * 							   to prepend.
-	 * 
-	 * @return A String representing the directory name based on the
-	 * 		   parameters.
-	 */
-	private String directoryNameBuilder(long name, int numFilesPerDirectory) {
-		int nameLength = String.valueOf(name).length();
-		int maxLength = new Double(Math.log10(numFilesPerDirectory)).intValue();
-		int numberOfZeros = maxLength - nameLength;
-		
-		StringBuilder builder = new StringBuilder();
-		for(int i = 0; i < numberOfZeros; i++) {
-			builder.append("0");
-		}
-		builder.append(String.valueOf(name));
-		
-		return builder.toString();
-	}
-	
-	/**
-	 * Sorts the directories and returns the one whose alphanumeric value is
-	 * the greatest.
-	 * 
-	 * This will work with any naming for directories, so it is the caller's
-	 * responsibility to ensure that the list of directories are what they
-	 * want them to be.
-	 *  
-	 * @param directories The list of directories whose largest alphanumeric
-	 * 					  value is desired.
-	 * 
-	 * @return Returns the File whose path and name has the largest
-	 * 		   alphanumeric value.
-	 */
-	private File getLargestSubfolder(File[] directories) {
-		Arrays.sort(directories);
-		
-		return directories[directories.length - 1];
-	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.ohmage.reporting.PerformanceMetrics;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.CallableStatementCallback;
+import org.springframework.jdbc.core.CallableStatementCreator;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.StatementCallback;
+
+/**
+ * A JDBC template that records the time taken by every statement with the
+ * {@link PerformanceMetrics}. Every other method of the JDBC template funnels
+ * through one of the four overridden execute methods, so all statements are
+ * timed, including the time spent mapping their results.
+ * 
+ * The statements are attributed to the query class that owns this template.
+ * One out of every so many statements is also attributed to the method that
+ * issued it by walking the stack.
+ * 
+ * @author John Jenkins
+ */
+class TimedJdbcTemplate extends JdbcTemplate {
+	private static final String SPRING_PACKAGE = "org.springframework.";
+	private static final String TIMED_CLASS = 
+		TimedJdbcTemplate.class.getName();
+	private static final String REPLICA_CLASS = 
+		ReplicaJdbcTemplate.class.getName();
+	
+	private final String queryName;
+	private final AtomicLong statementCount = new AtomicLong(0);
+	
+	/**
+	 * Creates a timed JDBC template.
+	 * 
+	 * @param dataSource The DataSource to use to query the database.
+	 * 
+	 * @param queryName The name under which the statements are recorded,
+	 * 					usually the simple name of the query class that owns
+	 * 					this template.
+	 */
+	TimedJdbcTemplate(
+			final DataSource dataSource,
+			final String queryName) {
+		
+		super(dataSource);
+		
+		this.queryName = queryName;
+	}
+	
+	/**
+	 * Times the connection callback.
+	 */
+	@Override
+	public <T> T execute(
+			final ConnectionCallback<T> action)
+			throws DataAccessException {
+		
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			T result = super.execute(action);
+			failed = false;
+			return result;
+		}
+		finally {
+			record(System.nanoTime() - start, failed);
+		}
+	}
+	
+	/**
+	 * Times the statement callback.
+	 */
+	@Override
+	public <T> T execute(
+			final StatementCallback<T> action)
+			throws DataAccessException {
+		
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			T result = super.execute(action);
+			failed = false;
+			return result;
+		}
+		finally {
+			record(System.nanoTime() - start, failed);
+		}
+	}
+	
+	/**
+	 * Times the prepared statement callback.
+	 */
+	@Override
+	public <T> T execute(
+			final PreparedStatementCreator psc,
+			final PreparedStatementCallback<T> action)
+			throws DataAccessException {
+		
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			T result = super.execute(psc, action);
+			failed = false;
+			return result;
+		}
+		finally {
+			record(System.nanoTime() - start, failed);
+		}
+	}
+	
+	/**
+	 * Times the callable statement callback.
+	 */
+	@Override
+	public <T> T execute(
+			final CallableStatementCreator csc,
+			final CallableStatementCallback<T> action)
+			throws DataAccessException {
+		
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			T result = super.execute(csc, action);
+			failed = false;
+			return result;
+		}
+		finally {
+			record(System.nanoTime() - start, failed);
+		}
+	}
+	
+	/**
+	 * Records the statement against this template's query class and, if it
+	 * was sampled, against the method that issued it.
+	 * 
+	 * @param nanos The time taken by the statement.
+	 * 
+	 * @param failed Whether or not the statement failed.
+	 */
+	private void record(final long nanos, final boolean failed) {
+		PerformanceMetrics metrics = PerformanceMetrics.instance();
+		if(metrics == null) {
+			return;
+		}
+		
+		metrics.recordQuery(queryName, nanos, failed);
+		
+		if((statementCount.incrementAndGet() % 
+				metrics.getMethodSampleRate()) == 0) {
+			
+			String methodName = callingMethod();
+			if(methodName != null) {
+				metrics.recordQueryMethod(methodName, nanos, failed);
+			}
+		}
+	}
+	
+	/**
+	 * Walks the stack to find the first method outside of the JDBC templates
+	 * and Spring, which is the query method that issued the statement.
+	 * 
+	 * @return The method's simple class name and name, e.g.
+	 * 		   "UserQueries.userExists", or null if it could not be found.
+	 */
+	private static String callingMethod() {
+		for(StackTraceElement frame : new Throwable().getStackTrace()) {
+			String className = frame.getClassName();
+			if(className.equals(TIMED_CLASS) || 
+					className.equals(REPLICA_CLASS) ||
+					className.startsWith(SPRING_PACKAGE)) {
+				
+				continue;
+			}
+			
+			return 
+				className.substring(className.lastIndexOf('.') + 1) + 
+				"." + 
+				frame.getMethodName();
+		}
+		
+		return null;
+	}
+}
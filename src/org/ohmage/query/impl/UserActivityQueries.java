@@ -0,0 +1,342 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.ohmage.domain.UserActivity;
+import org.ohmage.exception.DataAccessException;
+import org.ohmage.exception.DomainException;
+import org.ohmage.query.IUserActivityQueries;
+import org.ohmage.util.StringUtils;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * This class contains all of the functionality for maintaining and reading
+ * the per-user activity summaries. The summaries are written by the upload
+ * paths and read in bulk by the statistics requests.
+ *
+ * @author John Jenkins
+ */
+public final class UserActivityQueries
+		extends Query
+		implements IUserActivityQueries {
+
+	/**
+	 * The number of hourly buckets that are retained for each summary. Any
+	 * window larger than this will only count the retained buckets.
+	 */
+	public static final int MAX_WINDOW_HOURS = 48;
+
+	// Creates the summary for a user and source if it doesn't yet exist and
+	// moves its last data time forward if the new time is later.
+	private static final String SQL_UPSERT_SUMMARY =
+		"INSERT INTO user_activity_summary(" +
+			"user_id, source_type, source_id, last_data_millis) " +
+		"VALUES (" +
+			"(SELECT id FROM user WHERE username = ?), " +
+			"?, " +
+			"?, " +
+			"?" +
+		") " +
+		"ON DUPLICATE KEY UPDATE " +
+			"last_data_millis = " +
+				"IF(" +
+					"VALUES(last_data_millis) IS NULL, " +
+					"last_data_millis, " +
+					"GREATEST(" +
+						"IFNULL(last_data_millis, 0), " +
+						"VALUES(last_data_millis)))";
+
+	// Adds the points to the current hour's bucket.
+	private static final String SQL_UPSERT_HOURLY =
+		"INSERT INTO user_activity_hourly(" +
+			"summary_id, hour_bucket, num_points, num_points_with_location) " +
+		"VALUES (" +
+			"(" +
+				"SELECT uas.id " +
+				"FROM user u, user_activity_summary uas " +
+				"WHERE u.username = ? " +
+				"AND u.id = uas.user_id " +
+				"AND uas.source_type = ? " +
+				"AND uas.source_id = ?" +
+			"), " +
+			"?, " +
+			"?, " +
+			"?" +
+		") " +
+		"ON DUPLICATE KEY UPDATE " +
+			"num_points = num_points + VALUES(num_points), " +
+			"num_points_with_location = " +
+				"num_points_with_location + " +
+				"VALUES(num_points_with_location)";
+
+	// Removes the buckets that have fallen outside of the retained window.
+	private static final String SQL_DELETE_EXPIRED_HOURLY =
+		"DELETE uah " +
+		"FROM user u, user_activity_summary uas, user_activity_hourly uah " +
+		"WHERE u.username = ? " +
+		"AND u.id = uas.user_id " +
+		"AND uas.source_type = ? " +
+		"AND uas.source_id = ? " +
+		"AND uas.id = uah.summary_id " +
+		"AND uah.hour_bucket < ?";
+
+	// Retrieves the summaries for a source and a set of users, which must be
+	// completed with the parameter list for the usernames.
+	private static final String SQL_GET_ACTIVITY =
+		"SELECT u.username, uas.last_data_millis, " +
+			"IFNULL(SUM(uah.num_points), 0) AS num_points, " +
+			"IFNULL(SUM(uah.num_points_with_location), 0) " +
+				"AS num_points_with_location " +
+		"FROM user u " +
+			"JOIN user_activity_summary uas " +
+				"ON u.id = uas.user_id " +
+			"LEFT JOIN user_activity_hourly uah " +
+				"ON uas.id = uah.summary_id " +
+				"AND uah.hour_bucket >= ? " +
+		"WHERE uas.source_type = ? " +
+		"AND uas.source_id = ? " +
+		"AND u.username IN ";
+
+	private static final String SQL_GROUP_BY_SUMMARY =
+		" GROUP BY uas.id";
+
+	/**
+	 * Creates this object via dependency injection (reflection).
+	 *
+	 * @param dataSource
+	 *        The DataSource to use when querying the database.
+	 */
+	private UserActivityQueries(final DataSource dataSource) {
+		super(dataSource);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IUserActivityQueries#recordActivity(java.lang.String, org.ohmage.domain.UserActivity.SourceType, java.lang.String, java.lang.Long, long, long)
+	 */
+	@Override
+	public void recordActivity(
+			final String username,
+			final UserActivity.SourceType sourceType,
+			final String sourceId,
+			final Long lastDataMillis,
+			final long numPoints,
+			final long numPointsWithLocation)
+			throws DataAccessException {
+
+		long currentHour =
+			UserActivity.getHourBucket(System.currentTimeMillis());
+
+		// Create the transaction.
+		DefaultTransactionDefinition def = new DefaultTransactionDefinition();
+		def.setName("Recording a user's upload activity.");
+
+		try {
+			// Begin the transaction.
+			PlatformTransactionManager transactionManager =
+				new DataSourceTransactionManager(getDataSource());
+			TransactionStatus status = transactionManager.getTransaction(def);
+
+			try {
+				getJdbcTemplate().update(
+					SQL_UPSERT_SUMMARY,
+					username,
+					sourceType.toString(),
+					sourceId,
+					lastDataMillis);
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error executing SQL '" +
+						SQL_UPSERT_SUMMARY +
+						"' with parameters: " +
+						username + ", " +
+						sourceType + ", " +
+						sourceId + ", " +
+						lastDataMillis,
+					e);
+			}
+
+			if(numPoints > 0) {
+				try {
+					getJdbcTemplate().update(
+						SQL_UPSERT_HOURLY,
+						username,
+						sourceType.toString(),
+						sourceId,
+						currentHour,
+						numPoints,
+						numPointsWithLocation);
+				}
+				catch(org.springframework.dao.DataAccessException e) {
+					transactionManager.rollback(status);
+					throw new DataAccessException(
+						"Error executing SQL '" +
+							SQL_UPSERT_HOURLY +
+							"' with parameters: " +
+							username + ", " +
+							sourceType + ", " +
+							sourceId + ", " +
+							currentHour + ", " +
+							numPoints + ", " +
+							numPointsWithLocation,
+						e);
+				}
+			}
+
+			try {
+				getJdbcTemplate().update(
+					SQL_DELETE_EXPIRED_HOURLY,
+					username,
+					sourceType.toString(),
+					sourceId,
+					currentHour - MAX_WINDOW_HOURS);
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error executing SQL '" +
+						SQL_DELETE_EXPIRED_HOURLY +
+						"' with parameters: " +
+						username + ", " +
+						sourceType + ", " +
+						sourceId + ", " +
+						(currentHour - MAX_WINDOW_HOURS),
+					e);
+			}
+
+			// Commit the transaction.
+			try {
+				transactionManager.commit(status);
+			}
+			catch(TransactionException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error while committing the transaction.",
+					e);
+			}
+		}
+		catch(TransactionException e) {
+			throw new DataAccessException(
+				"Error while attempting to rollback the transaction.",
+				e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IUserActivityQueries#getActivity(java.util.Collection, org.ohmage.domain.UserActivity.SourceType, java.lang.String, int)
+	 */
+	@Override
+	public Map<String, UserActivity> getActivity(
+			final Collection<String> usernames,
+			final UserActivity.SourceType sourceType,
+			final String sourceId,
+			final int windowHours)
+			throws DataAccessException {
+
+		if((usernames == null) || usernames.isEmpty()) {
+			return Collections.emptyMap();
+		}
+
+		// The current hour's bucket is part of the window, so it starts that
+		// many hours minus one before the current hour.
+		long firstHour =
+			UserActivity.getHourBucket(System.currentTimeMillis()) -
+			Math.min(windowHours, MAX_WINDOW_HOURS) + 1;
+
+		String sql =
+			SQL_GET_ACTIVITY +
+			StringUtils.generateStatementPList(usernames.size()) +
+			SQL_GROUP_BY_SUMMARY;
+
+		List<Object> parameters = new ArrayList<Object>(usernames.size() + 3);
+		parameters.add(firstHour);
+		parameters.add(sourceType.toString());
+		parameters.add(sourceId);
+		parameters.addAll(usernames);
+
+		final Map<String, UserActivity> result =
+			new HashMap<String, UserActivity>();
+		try {
+			getJdbcTemplate().query(
+				sql,
+				parameters.toArray(),
+				new RowCallbackHandler() {
+					/**
+					 * Decodes each summary and adds it to the result.
+					 */
+					@Override
+					public void processRow(
+							final ResultSet rs)
+							throws SQLException {
+
+						String username = rs.getString("username");
+
+						long lastDataMillis =
+							rs.getLong("last_data_millis");
+						boolean lastDataUnknown = rs.wasNull();
+
+						try {
+							result.put(
+								username,
+								new UserActivity(
+									username,
+									sourceType,
+									sourceId,
+									(lastDataUnknown) ?
+										null :
+										lastDataMillis,
+									rs.getLong("num_points"),
+									rs.getLong("num_points_with_location")));
+						}
+						catch(DomainException e) {
+							throw new SQLException(
+								"The activity summary is corrupt.",
+								e);
+						}
+					}
+				});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" +
+					sql +
+					"' with parameters: " +
+					parameters,
+				e);
+		}
+
+		return result;
+	}
+}
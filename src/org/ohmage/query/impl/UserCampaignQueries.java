@@ -38,8 +38,10 @@ import org.ohmage.domain.campaign.CampaignMask.MaskId;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.DomainException;
 import org.ohmage.query.IUserCampaignQueries;
+import org.ohmage.util.StringUtils;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.SingleColumnRowMapper;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
@@ -107,6 +109,16 @@ public final class UserCampaignQueries extends Query implements IUserCampaignQue
 			"AND u.id = urc.user_id " +
 			"AND ur.id = urc.user_role_id";
 
+	// Retrieves all of the users and their roles for a set of campaigns, which
+	// must be completed with the parameter list for the campaign IDs.
+	private static final String SQL_GET_USERS_AND_CAMPAIGN_ROLES_FOR_CAMPAIGNS = 
+			"SELECT c.urn, u.username, ur.role " +
+			"FROM user u, campaign c, user_role ur, user_role_campaign urc " +
+			"WHERE c.id = urc.campaign_id " +
+			"AND u.id = urc.user_id " +
+			"AND ur.id = urc.user_role_id " +
+			"AND c.urn IN ";
+
 	// Retrieves the ID and name for all of the campaign to which the user is
 	// associated.
 	private static final String SQL_GET_CAMPAIGN_ID_AND_NAMES_FOR_USER = 
@@ -448,6 +460,79 @@ public final class UserCampaignQueries extends Query implements IUserCampaignQue
 		}
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IUserCampaignQueries#getUsersAndRolesForCampaigns(java.util.Collection)
+	 */
+	@Override
+	public Map<String, Map<String, Collection<Campaign.Role>>> getUsersAndRolesForCampaigns(
+			final Collection<String> campaignIds)
+			throws DataAccessException {
+		
+		final Map<String, Map<String, Collection<Campaign.Role>>> result =
+				new HashMap<String, Map<String, Collection<Campaign.Role>>>();
+		for(String campaignId : campaignIds) {
+			result.put(
+					campaignId, 
+					new HashMap<String, Collection<Campaign.Role>>());
+		}
+		if(campaignIds.isEmpty()) {
+			return result;
+		}
+		
+		String sql =
+				SQL_GET_USERS_AND_CAMPAIGN_ROLES_FOR_CAMPAIGNS +
+				StringUtils.generateStatementPList(campaignIds.size());
+		
+		try {
+			getJdbcTemplate().query(
+					sql,
+					campaignIds.toArray(),
+					new RowCallbackHandler() {
+						/**
+						 * Adds the user's role to its campaign's map.
+						 */
+						@Override
+						public void processRow(
+								final ResultSet rs)
+								throws SQLException {
+							
+							Map<String, Collection<Campaign.Role>> users =
+									result.get(rs.getString("urn"));
+							
+							String username = rs.getString("username");
+							Collection<Campaign.Role> roles = 
+									users.get(username);
+							if(roles == null) {
+								roles = new HashSet<Campaign.Role>();
+								users.put(username, roles);
+							}
+							
+							try {
+								roles.add(
+										Campaign.Role.getValue(
+												rs.getString("role")));
+							}
+							catch(IllegalArgumentException e) {
+								throw new SQLException(
+										"The role is not a valid role.",
+										e);
+							}
+						}
+					});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+					"Error executing SQL '" + 
+							sql + 
+						"' with parameters: " + 
+							campaignIds, 
+					e);
+		}
+		
+		return result;
+	}
+	
 	/**
 	 * Retrieves all of the campaign IDs and their respective names to which a
 	 * user is associated.
@@ -20,13 +20,17 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.sql.DataSource;
 
 import org.ohmage.cache.PreferenceCache;
 import org.ohmage.domain.Clazz;
+import org.ohmage.domain.UserBatchEntry;
 import org.ohmage.domain.UserInformation;
 import org.ohmage.domain.UserInformation.UserPersonal;
 import org.ohmage.domain.campaign.Campaign;
@@ -34,6 +38,7 @@ import org.ohmage.exception.CacheMissException;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.DomainException;
 import org.ohmage.query.IUserQueries;
+import org.ohmage.query.impl.ReplicaRouter.Consistency;
 import org.ohmage.query.impl.QueryResultsList.QueryResultListBuilder;
 import org.ohmage.util.StringUtils;
 import org.springframework.jdbc.core.ResultSetExtractor;
@@ -62,6 +67,13 @@ public class UserQueries extends Query implements IUserQueries {
 			"WHERE username = ?" +
 		")";
 	
+	// Returns the usernames of the users that exist from a set of usernames,
+	// which must be completed with the parameter list for the usernames.
+	private static final String SQL_GET_EXISTING_USERNAMES = 
+		"SELECT username " +
+		"FROM user " +
+		"WHERE username IN ";
+	
 	// Returns a single, boolean row if the user exists which explains if the
 	// user is an admin or not.
 	private static final String SQL_EXISTS_USER_IS_ADMIN = 
@@ -229,6 +241,16 @@ public class UserQueries extends Query implements IUserQueries {
 			"WHERE username = ?" +
 		"),?,?,?,?)";
 	
+	// Inserts a new personal information record for a user or replaces the
+	// one they already have.
+	private static final String SQL_INSERT_OR_REPLACE_USER_PERSONAL =
+		SQL_INSERT_USER_PERSONAL + " " +
+		"ON DUPLICATE KEY UPDATE " +
+			"first_name = VALUES(first_name), " +
+			"last_name = VALUES(last_name), " +
+			"organization = VALUES(organization), " +
+			"personal_id = VALUES(personal_id)";
+	
 	// Inserts a new registration for a user.
 	private static final String SQL_INSERT_REGISTRATION =
 		"INSERT INTO user_registration(user_id, registration_id, request_timestamp) " +
@@ -297,6 +319,18 @@ public class UserQueries extends Query implements IUserQueries {
 		"SET user_setup_privilege = ? " +
 		"WHERE username = ?";
 	
+	// Updates a user's password, email address, and privileges, leaving any 
+	// value that is NULL unchanged.
+	private static final String SQL_UPDATE_USER_FROM_BATCH =
+		"UPDATE user " +
+		"SET password = COALESCE(?, password), " +
+			"email_address = COALESCE(?, email_address), " +
+			"admin = COALESCE(?, admin), " +
+			"enabled = COALESCE(?, enabled), " +
+			"new_account = COALESCE(?, new_account), " +
+			"campaign_creation_privilege = COALESCE(?, campaign_creation_privilege) " +
+		"WHERE username = ?";
+	
 	// Updates a user's first name in their personal information record.
 	private static final String SQL_UPDATE_FIRST_NAME = 
 		"UPDATE user_personal " +
@@ -449,6 +483,108 @@ public class UserQueries extends Query implements IUserQueries {
 		}
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IUserQueries#createAndUpdateUsers(java.util.Collection, java.util.Collection, java.util.Map)
+	 */
+	@Override
+	public void createAndUpdateUsers(
+			final Collection<UserBatchEntry> newUsers,
+			final Collection<UserBatchEntry> existingUsers,
+			final Map<String, String> hashedPasswords)
+			throws DataAccessException {
+		
+		boolean defaultCampaignCreationPrivilege;
+		try {
+			defaultCampaignCreationPrivilege = PreferenceCache.instance().lookup(PreferenceCache.KEY_DEFAULT_CAN_CREATE_PRIVILIEGE).equals("true");
+		}
+		catch(CacheMissException e) {
+			throw new DataAccessException("Cache doesn't know about 'known' value: " + PreferenceCache.KEY_DEFAULT_CAN_CREATE_PRIVILIEGE, e);
+		}
+		
+		// Build the parameters for each of the batches.
+		List<Object[]> userInserts = new ArrayList<Object[]>(newUsers.size());
+		List<Object[]> personalInserts = new LinkedList<Object[]>();
+		for(UserBatchEntry user : newUsers) {
+			String hashedPassword = hashedPasswords.get(user.getUsername());
+			if(hashedPassword == null) {
+				throw new DataAccessException(
+						"The new user does not have a password: " + 
+							user.getUsername());
+			}
+			
+			userInserts.add(
+					new Object[] {
+						user.getUsername(),
+						hashedPassword,
+						user.getEmailAddress(),
+						(user.getAdmin() == null) ? false : user.getAdmin(),
+						(user.getEnabled() == null) ? false : user.getEnabled(),
+						(user.getNewAccount() == null) ? true : user.getNewAccount(),
+						(user.getCampaignCreationPrivilege() == null) ? 
+							defaultCampaignCreationPrivilege : 
+							user.getCampaignCreationPrivilege() 
+					});
+			
+			if(user.getPersonalInfo() != null) {
+				personalInserts.add(getPersonalParameters(user));
+			}
+		}
+		
+		List<Object[]> userUpdates = 
+				new ArrayList<Object[]>(existingUsers.size());
+		List<Object[]> personalUpdates = new LinkedList<Object[]>();
+		for(UserBatchEntry user : existingUsers) {
+			userUpdates.add(
+					new Object[] {
+						hashedPasswords.get(user.getUsername()),
+						user.getEmailAddress(),
+						user.getAdmin(),
+						user.getEnabled(),
+						user.getNewAccount(),
+						user.getCampaignCreationPrivilege(),
+						user.getUsername()
+					});
+			
+			if(user.getPersonalInfo() != null) {
+				personalUpdates.add(getPersonalParameters(user));
+			}
+		}
+		
+		// Create the transaction.
+		DefaultTransactionDefinition def = new DefaultTransactionDefinition();
+		def.setName("Creating and updating a batch of users.");
+		
+		try {
+			// Begin the transaction.
+			PlatformTransactionManager transactionManager = new DataSourceTransactionManager(getDataSource());
+			TransactionStatus status = transactionManager.getTransaction(def);
+			
+			try {
+				batchUpdate(SQL_INSERT_USER, userInserts);
+				batchUpdate(SQL_INSERT_USER_PERSONAL, personalInserts);
+				batchUpdate(SQL_UPDATE_USER_FROM_BATCH, userUpdates);
+				batchUpdate(SQL_INSERT_OR_REPLACE_USER_PERSONAL, personalUpdates);
+			}
+			catch(DataAccessException e) {
+				transactionManager.rollback(status);
+				throw e;
+			}
+			
+			// Commit the transaction.
+			try {
+				transactionManager.commit(status);
+			}
+			catch(TransactionException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException("Error while committing the transaction.", e);
+			}
+		}
+		catch(TransactionException e) {
+			throw new DataAccessException("Error while attempting to rollback the transaction.", e);
+		}
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see org.ohmage.query.IUserQueries#createUserRegistration(java.lang.String, java.lang.String, java.lang.String, java.lang.String)
@@ -672,6 +808,50 @@ public class UserQueries extends Query implements IUserQueries {
 			throw new DataAccessException("Error executing the following SQL '" + SQL_EXISTS_USER + "' with parameter: " + username, e);
 		}
 	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IUserQueries#getExistingUsernames(java.util.Collection)
+	 */
+	@Override
+	public Set<String> getExistingUsernames(
+			final Collection<String> usernames)
+			throws DataAccessException {
+		
+		// Usernames are compared without regard to case, just as they are by
+		// the database.
+		Set<String> existing = new HashSet<String>();
+		for(List<String> chunk : chunk(usernames)) {
+			String sql = 
+				SQL_GET_EXISTING_USERNAMES + 
+				StringUtils.generateStatementPList(chunk.size());
+			
+			try {
+				for(String username : 
+						getJdbcTemplate().query(
+							sql, 
+							chunk.toArray(), 
+							new SingleColumnRowMapper<String>())) {
+					
+					existing.add(username.toLowerCase());
+				}
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				throw new DataAccessException(
+					"Error executing the following SQL '" + sql + 
+						"' with parameters: " + chunk, 
+					e);
+			}
+		}
+		
+		Set<String> result = new HashSet<String>();
+		for(String username : usernames) {
+			if(existing.contains(username.toLowerCase())) {
+				result.add(username);
+			}
+		}
+		return result;
+	}
 
 	/*
 	 * (non-Javadoc)
@@ -1641,7 +1821,7 @@ public class UserQueries extends Query implements IUserQueries {
 		
 		// Returns the results as queried by the database.
 		try {
-			return getJdbcTemplate().query(
+			return getReadJdbcTemplate(Consistency.EVENTUAL, null).query(
 					sql.toString(), 
 					parameters.toArray(),
 					new ResultSetExtractor<QueryResultsList<UserInformation>>() {
@@ -2226,4 +2406,24 @@ public class UserQueries extends Query implements IUserQueries {
 			throw new DataAccessException("Error while attempting to rollback the transaction.", e);
 		}
 	}
+	
+	/**
+	 * Builds the parameters for inserting a user's personal information.
+	 * 
+	 * @param user The user, who must have personal information.
+	 * 
+	 * @return The parameters for {@link #SQL_INSERT_USER_PERSONAL} and 
+	 * 		   {@link #SQL_INSERT_OR_REPLACE_USER_PERSONAL}.
+	 */
+	private static Object[] getPersonalParameters(final UserBatchEntry user) {
+		UserPersonal personalInfo = user.getPersonalInfo();
+		
+		return new Object[] {
+			user.getUsername(),
+			personalInfo.getFirstName(),
+			personalInfo.getLastName(),
+			personalInfo.getOrganization(),
+			personalInfo.getPersonalId()
+		};
+	}
 }
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.reporting;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A fixed-size, thread-safe histogram of latencies, e.g. of requests or of
+ * SQL statements.
+ * </p>
+ *
+ * <p>
+ * Latencies are recorded in microseconds into buckets whose width doubles
+ * with every power of two, and each power of two is split into
+ * {@link #SUB_BUCKETS} linear sub-buckets. This keeps the relative error of
+ * any reported percentile under about 6% no matter how long the run is,
+ * without keeping every sample.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public final class LatencyHistogram {
+	/**
+	 * The number of linear sub-buckets in each power of two.
+	 */
+	private static final int SUB_BUCKETS = 16;
+
+	/**
+	 * The number of bits used to index the sub-buckets.
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+
+	/**
+	 * The number of powers of two that are tracked. Anything larger is
+	 * recorded in the last bucket.
+	 */
+	private static final int MAGNITUDES = 40;
+
+	private final AtomicLongArray buckets =
+		new AtomicLongArray((MAGNITUDES + 1) * SUB_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong totalMicros = new AtomicLong();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	/**
+	 * Records the latency of a request that succeeded.
+	 *
+	 * @param nanos The request's latency in nanoseconds.
+	 */
+	public void record(final long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+
+		buckets.incrementAndGet(index(micros));
+		count.incrementAndGet();
+		totalMicros.addAndGet(micros);
+
+		long max;
+		while((max = maxMicros.get()) < micros) {
+			if(maxMicros.compareAndSet(max, micros)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Records a request that failed. Its latency is not recorded.
+	 */
+	public void recordError() {
+		errors.incrementAndGet();
+	}
+
+	/**
+	 * Returns the number of successful requests.
+	 *
+	 * @return The number of successful requests.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the number of failed requests.
+	 *
+	 * @return The number of failed requests.
+	 */
+	public long getErrors() {
+		return errors.get();
+	}
+
+	/**
+	 * Returns the mean latency of the successful requests.
+	 *
+	 * @return The mean latency in microseconds or 0 if there were no
+	 * 		   successful requests.
+	 */
+	public double getMeanMicros() {
+		long tCount = count.get();
+		return (tCount == 0) ? 0 : ((double) totalMicros.get()) / tCount;
+	}
+
+	/**
+	 * Returns the largest latency of the successful requests.
+	 *
+	 * @return The largest latency in microseconds.
+	 */
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	/**
+	 * Returns the latency under which the given percentage of the successful
+	 * requests completed.
+	 *
+	 * @param percentile The percentile, between 0 and 100.
+	 *
+	 * @return The upper bound of the bucket in which the percentile lies, in
+	 * 		   microseconds, or 0 if there were no successful requests.
+	 */
+	public long getPercentileMicros(final double percentile) {
+		long tCount = count.get();
+		if(tCount == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil((percentile / 100) * tCount);
+		if(rank < 1) {
+			rank = 1;
+		}
+
+		long seen = 0;
+		for(int i = 0; i < buckets.length(); i++) {
+			seen += buckets.get(i);
+			if(seen >= rank) {
+				return Math.min(upperBound(i), maxMicros.get());
+			}
+		}
+		return maxMicros.get();
+	}
+
+	/**
+	 * Returns the bucket for a latency.
+	 */
+	private static int index(final long micros) {
+		if(micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+
+		int magnitude =
+			(63 - Long.numberOfLeadingZeros(micros)) - SUB_BUCKET_BITS + 1;
+		if(magnitude > MAGNITUDES) {
+			return ((MAGNITUDES + 1) * SUB_BUCKETS) - 1;
+		}
+
+		int subBucket =
+			(int) ((micros >> (magnitude - 1)) - SUB_BUCKETS);
+		return (magnitude * SUB_BUCKETS) + subBucket;
+	}
+
+	/**
+	 * Returns the largest latency that is recorded in a bucket.
+	 */
+	private static long upperBound(final int index) {
+		int magnitude = index / SUB_BUCKETS;
+		int subBucket = index % SUB_BUCKETS;
+
+		if(magnitude == 0) {
+			return subBucket;
+		}
+
+		return ((((long) SUB_BUCKETS + subBucket + 1) << (magnitude - 1))) - 1;
+	}
+}
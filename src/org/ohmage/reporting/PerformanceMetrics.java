@@ -0,0 +1,456 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.reporting;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * <p>
+ * Collects latency histograms for the phases of every request and for every
+ * SQL statement, as well as a few counters. This is built once by Spring
+ * when the server starts and periodically writes a summary of the histograms
+ * to the log. The histograms may also be read by an admin through the API.
+ * </p>
+ *
+ * <p>
+ * Requests are broken into the time spent waiting to be admitted, the time
+ * to build the request, which includes reading and validating the
+ * parameters, the time to service it, and the time to respond. SQL
+ * statements are attributed to the query class that issued them and, for a
+ * sample of the statements, to the method in that class. Finding the method
+ * requires walking the stack, which costs about as much as a fast query, so
+ * it is only done for one out of every so many statements.
+ * </p>
+ *
+ * <p>
+ * The histograms are cumulative from when the server started. Recording a
+ * latency is lock-free and never allocates once a histogram exists.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public final class PerformanceMetrics {
+	private static final Logger LOGGER =
+		Logger.getLogger(PerformanceMetrics.class);
+
+	private static final String JSON_KEY_REQUESTS = "requests";
+	private static final String JSON_KEY_QUERIES = "queries";
+	private static final String JSON_KEY_QUERY_METHODS = "query_methods";
+	private static final String JSON_KEY_METHOD_SAMPLE_RATE =
+		"query_method_sample_rate";
+	private static final String JSON_KEY_COUNTERS = "counters";
+	private static final String JSON_KEY_COUNT = "count";
+	private static final String JSON_KEY_ERRORS = "errors";
+	private static final String JSON_KEY_MEAN = "mean_ms";
+	private static final String JSON_KEY_P50 = "p50_ms";
+	private static final String JSON_KEY_P90 = "p90_ms";
+	private static final String JSON_KEY_P99 = "p99_ms";
+	private static final String JSON_KEY_MAX = "max_ms";
+
+	/**
+	 * The key under which requests to unknown URIs are recorded so that
+	 * arbitrary URIs cannot create an unbounded number of histograms.
+	 */
+	public static final String UNKNOWN_URI = "unknown";
+
+	/**
+	 * The phases of a request.
+	 *
+	 * @author John Jenkins
+	 */
+	public static enum Phase {
+		/**
+		 * Waiting to be admitted, which includes the wait of requests that
+		 * were rejected.
+		 */
+		QUEUE,
+		/**
+		 * Building the request, which includes reading and validating its
+		 * parameters.
+		 */
+		BUILD,
+		/**
+		 * Servicing the request, which is where most of the queries are
+		 * made.
+		 */
+		SERVICE,
+		/**
+		 * Responding to the request, which includes serializing the result.
+		 */
+		RESPOND;
+
+		/**
+		 * Returns this phase's name as it appears in the histograms' keys.
+		 *
+		 * @return The phase's name.
+		 */
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	private static PerformanceMetrics instance;
+
+	private final int methodSampleRate;
+
+	private final Map<Phase, ConcurrentMap<String, LatencyHistogram>> requests =
+		new EnumMap<Phase, ConcurrentMap<String, LatencyHistogram>>(Phase.class);
+	private final ConcurrentMap<String, LatencyHistogram> queries =
+		new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, LatencyHistogram> queryMethods =
+		new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, AtomicLong> counters =
+		new ConcurrentHashMap<String, AtomicLong>();
+
+	/**
+	 * Creates the metrics and begins logging them.
+	 *
+	 * @param logIntervalMinutes The number of minutes between writing the
+	 * 							 metrics to the log. If this is not positive,
+	 * 							 the metrics are never logged.
+	 *
+	 * @param methodSampleRate One out of every this many SQL statements is
+	 * 						   attributed to the method that issued it.
+	 *
+	 * @throws IllegalStateException An instance of this class already exists.
+	 *
+	 * @throws IllegalArgumentException The sample rate is not positive.
+	 */
+	private PerformanceMetrics(
+			final int logIntervalMinutes,
+			final int methodSampleRate) {
+
+		if(instance != null) {
+			throw new IllegalStateException(
+				"An instance of this class already exists.");
+		}
+		if(methodSampleRate < 1) {
+			throw new IllegalArgumentException(
+				"The method sample rate must be positive.");
+		}
+
+		this.methodSampleRate = methodSampleRate;
+		for(Phase phase : Phase.values()) {
+			requests.put(
+				phase,
+				new ConcurrentHashMap<String, LatencyHistogram>());
+		}
+
+		if(logIntervalMinutes > 0) {
+			ScheduledExecutorService executor =
+				Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactory() {
+						/**
+						 * Creates a daemon thread so that the logging never
+						 * keeps the server from shutting down.
+						 */
+						@Override
+						public Thread newThread(final Runnable runnable) {
+							Thread result =
+								new Thread(runnable, "PerformanceMetrics");
+							result.setDaemon(true);
+							return result;
+						}
+					});
+			executor.scheduleAtFixedRate(
+				new Runnable() {
+					/**
+					 * Writes the metrics to the log.
+					 */
+					@Override
+					public void run() {
+						log();
+					}
+				},
+				logIntervalMinutes,
+				logIntervalMinutes,
+				TimeUnit.MINUTES);
+		}
+
+		instance = this;
+	}
+
+	/**
+	 * Returns the singleton instance of this class.
+	 *
+	 * @return The singleton instance of this class or null if it has not yet
+	 * 		   been built, e.g. outside of the web application.
+	 */
+	public static PerformanceMetrics instance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the number of SQL statements out of which one is attributed to
+	 * the method that issued it.
+	 *
+	 * @return The method sample rate.
+	 */
+	public int getMethodSampleRate() {
+		return methodSampleRate;
+	}
+
+	/**
+	 * Records the time spent in one phase of a request.
+	 *
+	 * @param uri The request's URI. This should be {@link #UNKNOWN_URI} if
+	 * 			  the URI is not a known API.
+	 *
+	 * @param phase The phase of the request.
+	 *
+	 * @param nanos The time spent in the phase.
+	 */
+	public void recordRequest(
+			final String uri,
+			final Phase phase,
+			final long nanos) {
+
+		histogram(requests.get(phase), uri).record(nanos);
+	}
+
+	/**
+	 * Records a SQL statement that was issued by a query class.
+	 *
+	 * @param queryName The name of the query class.
+	 *
+	 * @param nanos The time taken by the statement.
+	 *
+	 * @param failed Whether or not the statement failed. Failed statements
+	 * 				 are counted as errors and their time is not recorded.
+	 */
+	public void recordQuery(
+			final String queryName,
+			final long nanos,
+			final boolean failed) {
+
+		record(histogram(queries, queryName), nanos, failed);
+	}
+
+	/**
+	 * Records a sampled SQL statement against the query method that issued
+	 * it. This should be called in addition to
+	 * {@link #recordQuery(String, long, boolean)}.
+	 *
+	 * @param methodName The name of the query class and method, e.g.
+	 * 					 "UserQueries.userExists".
+	 *
+	 * @param nanos The time taken by the statement.
+	 *
+	 * @param failed Whether or not the statement failed.
+	 */
+	public void recordQueryMethod(
+			final String methodName,
+			final long nanos,
+			final boolean failed) {
+
+		record(histogram(queryMethods, methodName), nanos, failed);
+	}
+
+	/**
+	 * Increments a named counter, e.g. of the reads that were routed to
+	 * some database.
+	 * 
+	 * @param name The counter's name. This should be a constant so that
+	 * 			   arbitrary names cannot create an unbounded number of
+	 * 			   counters.
+	 */
+	public void incrementCounter(final String name) {
+		AtomicLong counter = counters.get(name);
+		if(counter == null) {
+			AtomicLong newCounter = new AtomicLong();
+			counter = counters.putIfAbsent(name, newCounter);
+			if(counter == null) {
+				counter = newCounter;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	/**
+	 * Returns a snapshot of all of the histograms and counters as JSON.
+	 *
+	 * @return The histograms as JSON.
+	 *
+	 * @throws JSONException There was an error building the JSON.
+	 */
+	public JSONObject toJson() throws JSONException {
+		JSONObject requestsJson = new JSONObject();
+		for(Phase phase : Phase.values()) {
+			for(Map.Entry<String, LatencyHistogram> entry :
+					requests.get(phase).entrySet()) {
+
+				JSONObject uriJson = requestsJson.optJSONObject(entry.getKey());
+				if(uriJson == null) {
+					uriJson = new JSONObject();
+					requestsJson.put(entry.getKey(), uriJson);
+				}
+				uriJson.put(phase.toString(), toJson(entry.getValue()));
+			}
+		}
+
+		JSONObject result = new JSONObject();
+		result.put(JSON_KEY_REQUESTS, requestsJson);
+		result.put(JSON_KEY_QUERIES, toJson(queries));
+		result.put(JSON_KEY_QUERY_METHODS, toJson(queryMethods));
+		result.put(JSON_KEY_METHOD_SAMPLE_RATE, methodSampleRate);
+		JSONObject countersJson = new JSONObject();
+		for(Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+			countersJson.put(entry.getKey(), entry.getValue().get());
+		}
+		result.put(JSON_KEY_COUNTERS, countersJson);
+		return result;
+	}
+
+	/**
+	 * Writes a summary of every histogram to the log, in name order.
+	 */
+	private void log() {
+		if(! LOGGER.isInfoEnabled()) {
+			return;
+		}
+
+		StringBuilder builder = new StringBuilder("Performance metrics:");
+		for(Phase phase : Phase.values()) {
+			summarize(builder, "request " + phase, requests.get(phase));
+		}
+		summarize(builder, "query", queries);
+		summarize(
+			builder,
+			"query method (1 in " + methodSampleRate + ")",
+			queryMethods);
+		SortedMap<String, AtomicLong> sortedCounters =
+			new TreeMap<String, AtomicLong>(counters);
+		for(Map.Entry<String, AtomicLong> entry : sortedCounters.entrySet()) {
+			builder
+				.append("\ncounter ")
+				.append(entry.getKey())
+				.append(": ")
+				.append(entry.getValue().get());
+		}
+		LOGGER.info(builder.toString());
+	}
+
+	/**
+	 * Appends one line for each histogram to the builder.
+	 */
+	private static void summarize(
+			final StringBuilder builder,
+			final String type,
+			final Map<String, LatencyHistogram> histograms) {
+
+		SortedMap<String, LatencyHistogram> sorted =
+			new TreeMap<String, LatencyHistogram>(histograms);
+		for(Map.Entry<String, LatencyHistogram> entry : sorted.entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+
+			builder
+				.append('\n')
+				.append(
+					String.format(
+						"%s %s: count=%d errors=%d mean=%.2fms " +
+							"p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+						type,
+						entry.getKey(),
+						histogram.getCount(),
+						histogram.getErrors(),
+						histogram.getMeanMicros() / 1000,
+						histogram.getPercentileMicros(50) / 1000.0,
+						histogram.getPercentileMicros(90) / 1000.0,
+						histogram.getPercentileMicros(99) / 1000.0,
+						histogram.getMaxMicros() / 1000.0));
+		}
+	}
+
+	/**
+	 * Converts a set of histograms to a JSON object keyed by their names.
+	 */
+	private static JSONObject toJson(
+			final Map<String, LatencyHistogram> histograms)
+			throws JSONException {
+
+		JSONObject result = new JSONObject();
+		for(Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			result.put(entry.getKey(), toJson(entry.getValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * Converts a histogram to a JSON object of its summary statistics.
+	 */
+	private static JSONObject toJson(final LatencyHistogram histogram)
+			throws JSONException {
+
+		JSONObject result = new JSONObject();
+		result.put(JSON_KEY_COUNT, histogram.getCount());
+		result.put(JSON_KEY_ERRORS, histogram.getErrors());
+		result.put(JSON_KEY_MEAN, histogram.getMeanMicros() / 1000);
+		result.put(JSON_KEY_P50, histogram.getPercentileMicros(50) / 1000.0);
+		result.put(JSON_KEY_P90, histogram.getPercentileMicros(90) / 1000.0);
+		result.put(JSON_KEY_P99, histogram.getPercentileMicros(99) / 1000.0);
+		result.put(JSON_KEY_MAX, histogram.getMaxMicros() / 1000.0);
+		return result;
+	}
+
+	/**
+	 * Records a latency or an error.
+	 */
+	private static void record(
+			final LatencyHistogram histogram,
+			final long nanos,
+			final boolean failed) {
+
+		if(failed) {
+			histogram.recordError();
+		}
+		else {
+			histogram.record(nanos);
+		}
+	}
+
+	/**
+	 * Returns the histogram with the given name, creating it if necessary.
+	 */
+	private static LatencyHistogram histogram(
+			final ConcurrentMap<String, LatencyHistogram> histograms,
+			final String name) {
+
+		LatencyHistogram result = histograms.get(name);
+		if(result == null) {
+			LatencyHistogram newHistogram = new LatencyHistogram();
+			result = histograms.putIfAbsent(name, newHistogram);
+			if(result == null) {
+				result = newHistogram;
+			}
+		}
+		return result;
+	}
+}
@@ -23,6 +23,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.log4j.Logger;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.ohmage.cache.VersionStamps;
 import org.ohmage.domain.ServerConfig;
 import org.ohmage.exception.InvalidRequestException;
 import org.ohmage.exception.ServiceException;
@@ -62,6 +63,11 @@ public class ConfigReadRequest extends Request {
 	 */
 	@Override
 	public void service() {
+		if(isNotModified(null, VersionStamps.Domain.CONFIGURATION)) {
+			LOGGER.info("The configuration has not changed.");
+			return;
+		}
+		
 		LOGGER.info("Gathering information about the system.");
 		
 		try {
@@ -96,6 +96,7 @@ public final class InputKeys {
 	public static final String SURVEY_KEY = "survey_key";
 	public static final String SURVEY_RESPONSE_OWNER = "owner";
 	public static final String SURVEYS = "surveys";
+	public static final String SURVEY_ALLOW_PARTIAL = "allow_partial";
 	public static final String SURVEY_FUNCTION_PRIVACY_STATE_GROUP_ITEM_LIST = "privacy_state_item_list";
 	
 	// Prompt Constants
@@ -148,6 +149,8 @@ public final class InputKeys {
 	public static final String PERSONAL_ID_SEARCH = "personal_id_search";
 	public static final String USER_REGISTRATION_ID = "registration_id";
 	public static final String USER_DELETE_PERSONAL_INFO = "delete_personal_info";
+	public static final String USER_BATCH = "user_batch";
+	public static final String UPDATE_EXISTING = "update_existing";
 	
 	// State Constants
 	public static final String PRIVACY_STATE = "privacy_state";
@@ -164,6 +167,7 @@ public final class InputKeys {
 	public static final String COLUMN_LIST = "column_list";
 	public static final String RETURN_ID = "return_id";
 	public static final String COLLAPSE = "collapse";
+	public static final String INCLUDE_ANNOTATIONS = "include_annotations";
 	
 	// Shared Constants
 	public static final String DESCRIPTION = "description";
@@ -213,6 +217,10 @@ public final class InputKeys {
 	public static final String STREAM_IDS_WITH_VERSION = "stream_ids_with_version";
 	public static final String CHRONOLOGICAL = "chronological";
 	public static final String PRESERVE_INVALID_POINTS = "preserve_invalid_points";
+	public static final String BUCKET_WIDTH = "bucket_width";
+	public static final String AGGREGATE_FUNCTIONS = "aggregate_functions";
+	public static final String DOWNSAMPLE = "downsample";
+	public static final String DOWNSAMPLE_FIELD = "downsample_field";
 	
 	// OMH Constants
 	public static final String OMH_REQUESTER = "requester";
@@ -227,6 +235,13 @@ public final class InputKeys {
 	public static final String OMH_OWNER = "owner";
 	public static final String OMH_DATA = "data";
 	
+	// Export Constants
+	public static final String EXPORT_ID = "export_id";
+	public static final String EXPORT_TYPE = "export_type";
+	
+	// Change Feed Constants
+	public static final String CHANGE_TOKEN = "change_token";
+	
 	// Separator Constants
 	public static final String LIST_ITEM_SEPARATOR = ",";
 	public static final String ENTITY_ROLE_SEPARATOR = ";";
@@ -22,9 +22,13 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -40,6 +44,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.ohmage.annotator.Annotator;
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.VersionStamps;
 import org.ohmage.exception.InvalidRequestException;
 import org.ohmage.exception.ValidationException;
 import org.ohmage.jee.filter.GzipFilter;
@@ -113,6 +118,21 @@ public abstract class Request {
 	private static final String KEY_AUDIT_REQUESTER_INTERNET_ADDRESS = 
 			"requester_inet_addr";
 	
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	private static final String HEADER_ETAG = "ETag";
+	private static final String WEAK_TAG_PREFIX = "W/";
+	
+	/**
+	 * The parameters that do not change a response and so are left out of 
+	 * its entity tag.
+	 */
+	private static final Set<String> UNTAGGED_PARAMETERS =
+		new HashSet<String>(
+			Arrays.asList(
+				InputKeys.AUTH_TOKEN, 
+				InputKeys.PASSWORD, 
+				InputKeys.CLIENT));
+	
 	/**
 	 * The value our Android app uses when setting the client parameter for
 	 * each request.
@@ -124,6 +144,10 @@ public abstract class Request {
 	
 	private final Map<String, String[]> parameters;
 	private final String requesterInetAddr; 
+	private final String ifNoneMatch;
+	
+	private String entityTag;
+	private boolean notModified;
 	
 	/**
 	 * Initializes this request.
@@ -153,11 +177,16 @@ public abstract class Request {
 
 		Map<String, String[]> tParameters = new HashMap<String, String[]>();
 		String tRequesterInetAddr = null;
+		String tIfNoneMatch = null;
 		try {
 			if(httpRequest != null) {
 				// Get the requester's IP address.
 				tRequesterInetAddr = httpRequest.getRemoteAddr();
 				
+				// Get the entity tags of the responses the requester already
+				// has, if any.
+				tIfNoneMatch = httpRequest.getHeader(HEADER_IF_NONE_MATCH);
+				
 				// Get the parameters.
 				if (parameters == null) {
 					Object parametersObject = 
@@ -190,6 +219,10 @@ public abstract class Request {
 		
 		this.parameters = tParameters;
 		this.requesterInetAddr = tRequesterInetAddr;
+		this.ifNoneMatch = tIfNoneMatch;
+		
+		entityTag = null;
+		notModified = false;
 	}
 	
 	/**
@@ -325,6 +358,66 @@ public abstract class Request {
 		}
 	}
 	
+	/**
+	 * Tags this request's response with an entity tag built from the request,
+	 * its parameters, the requester, and the version stamps of the domains 
+	 * the response depends on, and checks it against the tags the requester
+	 * sent in its "If-None-Match" header. This should be called by 
+	 * {@link #service()} after the requester has been authenticated and 
+	 * before anything is read; if it returns true, the service should return
+	 * immediately, and the response will be "304 Not Modified".
+	 * 
+	 * @param requester The requester's username or null if the response is
+	 * 					the same for every requester.
+	 * 
+	 * @param domains The domains whose version stamps the response depends
+	 * 				  on.
+	 * 
+	 * @return True if the requester already has the response; false 
+	 * 		   otherwise.
+	 */
+	protected boolean isNotModified(
+			final String requester,
+			final VersionStamps.Domain... domains) {
+		
+		StringBuilder keyBuilder = new StringBuilder();
+		keyBuilder
+			.append(getClass().getName()).append('\n')
+			.append(requester);
+		for(Map.Entry<String, String[]> parameter :
+				(new TreeMap<String, String[]>(parameters)).entrySet()) {
+			
+			if(UNTAGGED_PARAMETERS.contains(parameter.getKey())) {
+				continue;
+			}
+			
+			keyBuilder
+				.append('\n')
+				.append(parameter.getKey())
+				.append('=')
+				.append(Arrays.toString(parameter.getValue()));
+		}
+		
+		entityTag = 
+			WEAK_TAG_PREFIX + 
+			VersionStamps.buildTag(keyBuilder.toString(), domains);
+		
+		notModified = false;
+		if(ifNoneMatch != null) {
+			for(String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if("*".equals(tag) || entityTag.equals(tag) ||
+					entityTag.equals(WEAK_TAG_PREFIX + tag)) {
+					
+					notModified = true;
+					break;
+				}
+			}
+		}
+		
+		return notModified;
+	}
+	
 	/**
 	 * Performs the operations for which this Request is responsible and 
 	 * aggregates any resulting data. This should be container agnostic. The
@@ -383,6 +476,11 @@ public abstract class Request {
 			final HttpServletResponse httpResponse, 
 			final JSONObject response) {
 		
+		// If the requester already has the response, don't send it again.
+		if(respondNotModified(httpResponse)) {
+			return;
+		}
+		
 		// Create a writer for the HTTP response object.
 		Writer writer = null;
 		String responseText = "";
@@ -600,9 +698,39 @@ public abstract class Request {
 	}
 	
 	/**
-	 * Sets the response headers to disallow client caching.
+	 * If the request has not failed and the requester already has the 
+	 * response, as decided by 
+	 * {@link #isNotModified(String, VersionStamps.Domain...)}, responds with
+	 * "304 Not Modified" and no body. Requests that write their own responses
+	 * must call this before opening the response's output stream.
+	 * 
+	 * @param response The HTTP response.
+	 * 
+	 * @return True if the response was sent; false if the caller must still
+	 * 		   send it.
+	 */
+	protected boolean respondNotModified(HttpServletResponse response) {
+		if(failed || (! notModified)) {
+			return false;
+		}
+		
+		response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		expireResponse(response);
+		return true;
+	}
+	
+	/**
+	 * Sets the response headers to disallow client caching. If the response
+	 * has an entity tag, it is sent instead and the client may keep the 
+	 * response but must revalidate it before each use.
 	 */
 	protected void expireResponse(HttpServletResponse response) {
+		if((entityTag != null) && (! failed)) {
+			response.setHeader(HEADER_ETAG, entityTag);
+			response.setHeader("Cache-Control", "private, no-cache");
+			return;
+		}
+		
 		response.setHeader("Expires", "Fri, 5 May 1995 12:00:00 GMT");
         response.setHeader("Cache-Control", "no-store, no-cache, must-revalidate");
         response.setHeader("Pragma", "no-cache");
@@ -625,8 +753,11 @@ public abstract class Request {
 		
 		OutputStream os = null; 
 		
-		// Determine if the response can be gzipped
-		String encoding = request.getHeader("Accept-Encoding");
+		// Determine if the response can be gzipped. There is no request when
+		// the response is being written to somewhere other than the client,
+		// e.g. an export.
+		String encoding = 
+			(request == null) ? null : request.getHeader("Accept-Encoding");
 		if (encoding != null && encoding.indexOf("gzip") >= 0) {
             
 			if(LOGGER.isDebugEnabled()) {
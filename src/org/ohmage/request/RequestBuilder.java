@@ -22,7 +22,9 @@ import javax.servlet.http.HttpServletRequest;
 
 import org.apache.log4j.Logger;
 import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.jee.servlet.AdmissionControl;
 import org.ohmage.request.audio.AudioReadRequest;
+import org.ohmage.request.audit.AuditMetricsReadRequest;
 import org.ohmage.request.audit.AuditReadRequest;
 import org.ohmage.request.auth.AuthRequest;
 import org.ohmage.request.auth.AuthTokenLogoutRequest;
@@ -46,6 +48,9 @@ import org.ohmage.request.document.DocumentDeletionRequest;
 import org.ohmage.request.document.DocumentReadContentsRequest;
 import org.ohmage.request.document.DocumentReadRequest;
 import org.ohmage.request.document.DocumentUpdateRequest;
+import org.ohmage.request.export.ExportCreateRequest;
+import org.ohmage.request.export.ExportDownloadRequest;
+import org.ohmage.request.export.ExportReadRequest;
 import org.ohmage.request.image.ImageBatchZipReadRequest;
 import org.ohmage.request.image.ImageReadRequest;
 import org.ohmage.request.mobility.MobilityAggregateReadRequest;
@@ -59,6 +64,7 @@ import org.ohmage.request.observer.ObserverCreationRequest;
 import org.ohmage.request.observer.ObserverReadRequest;
 import org.ohmage.request.observer.ObserverUpdateRequest;
 import org.ohmage.request.observer.StreamReadInvalidRequest;
+import org.ohmage.request.observer.StreamChangesReadRequest;
 import org.ohmage.request.observer.StreamReadRequest;
 import org.ohmage.request.observer.StreamUploadRequest;
 import org.ohmage.request.omh.OmhAuthenticateRequest;
@@ -71,16 +77,19 @@ import org.ohmage.request.omh.OmhWriteRequest;
 import org.ohmage.request.registration.RegistrationReadRequest;
 import org.ohmage.request.survey.SurveyResponseDeleteRequest;
 import org.ohmage.request.survey.SurveyResponseFunctionReadRequest;
+import org.ohmage.request.survey.SurveyResponseChangesReadRequest;
 import org.ohmage.request.survey.SurveyResponseReadRequest;
 import org.ohmage.request.survey.SurveyResponseUpdateRequest;
 import org.ohmage.request.survey.SurveyUploadRequest;
 import org.ohmage.request.survey.annotation.AnnotationDeleteRequest;
+import org.ohmage.request.survey.annotation.AnnotationReadRequest;
 import org.ohmage.request.survey.annotation.AnnotationUpdateRequest;
 import org.ohmage.request.survey.annotation.PromptResponseAnnotationCreationRequest;
 import org.ohmage.request.survey.annotation.PromptResponseAnnotationReadRequest;
 import org.ohmage.request.survey.annotation.SurveyResponseAnnotationCreationRequest;
 import org.ohmage.request.survey.annotation.SurveyResponseAnnotationReadRequest;
 import org.ohmage.request.user.UserActivationRequest;
+import org.ohmage.request.user.UserBatchCreationRequest;
 import org.ohmage.request.user.UserChangePasswordRequest;
 import org.ohmage.request.user.UserCreationRequest;
 import org.ohmage.request.user.UserDeletionRequest;
@@ -122,12 +131,14 @@ public final class RequestBuilder implements ServletContextAware {
 	private String apiAnnotationSurveyResponseRead;
 	private String apiAnnotationUpdate;
 	private String apiAnnotationDelete;
+	private String apiAnnotationRead;
 	
 	// Audio
 	private String apiAudioRead;
 	
 	// Audit
 	private String apiAuditRead;
+	private String apiAuditMetricsRead;
 	
 	// Authentication
 	private String apiUserAuth;
@@ -162,6 +173,11 @@ public final class RequestBuilder implements ServletContextAware {
 	private String apiDocumentUpdate;
 	private String apiDocumentDelete;
 
+	// Export
+	private String apiExportCreate;
+	private String apiExportRead;
+	private String apiExportDownload;
+
 	// Image
 	private String apiImageRead;
 	private String apiImageBatchZipRead;
@@ -182,6 +198,7 @@ public final class RequestBuilder implements ServletContextAware {
 	private String apiObserverUpdate;
 	private String apiStreamUpload;
 	private String apiStreamRead;
+	private String apiStreamChangesRead;
 	private String apiStreamInvalidRead;
 	
 	// OMH
@@ -197,11 +214,13 @@ public final class RequestBuilder implements ServletContextAware {
 	private String apiSurveyUpload;
 	private String apiSurveyResponseDelete;
 	private String apiSurveyResponseRead;
+	private String apiSurveyResponseChangesRead;
 	private String apiSurveyResponseUpdate;
 	private String apiSurveyResponseFunctionRead;
 	
 	// User
 	private String apiUserCreate;
+	private String apiUserBatchCreate;
 	private String apiUserRegister;
 	private String apiUserActivate;
 	private String apiUserPasswordReset;
@@ -265,12 +284,14 @@ public final class RequestBuilder implements ServletContextAware {
 		apiAnnotationSurveyResponseRead = apiRoot + "/annotation/survey_response/read";
 		apiAnnotationUpdate = apiRoot + "/annotation/update";
 		apiAnnotationDelete = apiRoot + "/annotation/delete";
+		apiAnnotationRead = apiRoot + "/annotation/read";
 		
 		// Audio
 		apiAudioRead = apiRoot + "/audio/read";
 		
 		// Audit
 		apiAuditRead = apiRoot + "/audit/read";
+		apiAuditMetricsRead = apiRoot + "/audit/metrics/read";
 		
 		// Authentication
 		apiUserAuth = apiRoot + "/user/auth";
@@ -305,6 +326,11 @@ public final class RequestBuilder implements ServletContextAware {
 		apiDocumentUpdate = apiRoot + "/document/update";
 		apiDocumentDelete = apiRoot + "/document/delete";
 
+		// Export
+		apiExportCreate = apiRoot + "/export/create";
+		apiExportRead = apiRoot + "/export/read";
+		apiExportDownload = apiRoot + "/export/download";
+
 		// Image
 		apiImageRead = apiRoot + "/image/read";
 		apiImageBatchZipRead = apiRoot + "/image/batch/zip/read";
@@ -325,6 +351,7 @@ public final class RequestBuilder implements ServletContextAware {
 		apiObserverUpdate = apiRoot + "/observer/update";
 		apiStreamUpload = apiRoot + "/stream/upload";
 		apiStreamRead = apiRoot + "/stream/read";
+		apiStreamChangesRead = apiRoot + "/stream/changes/read";
 		apiStreamInvalidRead = apiRoot + "/stream/invalid/read";
 		
 		// OMH
@@ -340,11 +367,13 @@ public final class RequestBuilder implements ServletContextAware {
 		apiSurveyUpload = apiRoot + "/survey/upload";
 		apiSurveyResponseDelete = apiRoot + "/survey_response/delete";
 		apiSurveyResponseRead = apiRoot + "/survey_response/read";
+		apiSurveyResponseChangesRead = apiRoot + "/survey_response/changes/read";
 		apiSurveyResponseUpdate = apiRoot + "/survey_response/update";
 		apiSurveyResponseFunctionRead = apiRoot + "/survey_response/function/read";
 		
 		// User
 		apiUserCreate = apiRoot + "/user/create";
+		apiUserBatchCreate = apiRoot + "/user/batch_create";
 		apiUserRegister = apiRoot + "/user/register";
 		apiUserActivate = apiRoot + "/user/activate";
 		apiUserPasswordReset = apiRoot + "/user/reset_password";
@@ -432,6 +461,9 @@ public final class RequestBuilder implements ServletContextAware {
 		else if(apiAnnotationDelete.equals(requestUri)) {
 			return new AnnotationDeleteRequest(httpRequest);
 		}
+		else if(apiAnnotationRead.equals(requestUri)) {
+			return new AnnotationReadRequest(httpRequest);
+		}
 		// Audio
 		else if(apiAudioRead.equals(requestUri)) {
 			return new AudioReadRequest(httpRequest);
@@ -440,6 +472,9 @@ public final class RequestBuilder implements ServletContextAware {
 		else if(apiAuditRead.equals(requestUri)) {
 			return new AuditReadRequest(httpRequest);
 		}
+		else if(apiAuditMetricsRead.equals(requestUri)) {
+			return new AuditMetricsReadRequest(httpRequest);
+		}
 		// Campaign
 		else if(apiCampaignAssignment.equals(requestUri)) {
 			return new CampaignAssignmentRequest(httpRequest);
@@ -497,6 +532,16 @@ public final class RequestBuilder implements ServletContextAware {
 		else if(apiDocumentDelete.equals(requestUri)) {
 			return new DocumentDeletionRequest(httpRequest);
 		}
+		// Export
+		else if(apiExportCreate.equals(requestUri)) {
+			return new ExportCreateRequest(httpRequest);
+		}
+		else if(apiExportRead.equals(requestUri)) {
+			return new ExportReadRequest(httpRequest);
+		}
+		else if(apiExportDownload.equals(requestUri)) {
+			return new ExportDownloadRequest(httpRequest);
+		}
 		// Image
 		else if(apiImageRead.equals(requestUri)) {
 			return new ImageReadRequest(httpRequest);
@@ -545,6 +590,9 @@ public final class RequestBuilder implements ServletContextAware {
 		else if(apiStreamRead.equals(requestUri)) {
 			return new StreamReadRequest(httpRequest);
 		}
+		else if(apiStreamChangesRead.equals(requestUri)) {
+			return new StreamChangesReadRequest(httpRequest);
+		}
 		else if(apiStreamInvalidRead.equals(requestUri)) {
 			return new StreamReadInvalidRequest(httpRequest);
 		}
@@ -577,6 +625,9 @@ public final class RequestBuilder implements ServletContextAware {
 		else if(apiSurveyResponseRead.equals(requestUri)) {
 			return new SurveyResponseReadRequest(httpRequest);
 		}
+		else if(apiSurveyResponseChangesRead.equals(requestUri)) {
+			return new SurveyResponseChangesReadRequest(httpRequest);
+		}
 		else if(apiSurveyResponseUpdate.equals(requestUri)) {
 			return new SurveyResponseUpdateRequest(httpRequest);
 		}
@@ -590,6 +641,9 @@ public final class RequestBuilder implements ServletContextAware {
 		else if(apiUserCreate.equals(requestUri)) {
 			return new UserCreationRequest(httpRequest);
 		}
+		else if(apiUserBatchCreate.equals(requestUri)) {
+			return new UserBatchCreationRequest(httpRequest);
+		}
 		else if(apiUserRegister.equals(requestUri)) {
 			return new UserRegistrationRequest(httpRequest);
 		}
@@ -673,6 +727,7 @@ public final class RequestBuilder implements ServletContextAware {
 				apiAnnotationPromptResponseRead.equals(uri) ||
 				apiAnnotationSurveyResponseCreate.equals(uri) ||
 				apiAnnotationSurveyResponseRead.equals(uri) ||
+				apiAnnotationRead.equals(uri) ||
 				// Authentication
 				apiUserAuth.equals(uri) ||
 				apiUserAuthToken.equals(uri) ||
@@ -682,6 +737,7 @@ public final class RequestBuilder implements ServletContextAware {
 				apiAudioRead.equals(uri) ||
 				// Audit
 				apiAuditRead.equals(uri) ||
+				apiAuditMetricsRead.equals(uri) ||
 				// Campaign
 				apiCampaignAssignment.equals(uri) ||
 				apiCampaignCreate.equals(uri) ||
@@ -703,6 +759,10 @@ public final class RequestBuilder implements ServletContextAware {
 				apiDocumentReadContents.equals(uri) ||
 				apiDocumentUpdate.equals(uri) ||
 				apiDocumentDelete.equals(uri) ||
+				// Export
+				apiExportCreate.equals(uri) ||
+				apiExportRead.equals(uri) ||
+				apiExportDownload.equals(uri) ||
 				// Image
 				apiImageRead.equals(uri) ||
 				apiImageBatchZipRead.equals(uri) ||
@@ -721,6 +781,7 @@ public final class RequestBuilder implements ServletContextAware {
 				apiObserverUpdate.equals(uri) ||
 				apiStreamUpload.equals(uri) ||
 				apiStreamRead.equals(uri) ||
+				apiStreamChangesRead.equals(uri) ||
 				apiStreamInvalidRead.equals(uri) ||
 				// OMH
 				apiOmhAuth.equals(uri) ||
@@ -733,11 +794,13 @@ public final class RequestBuilder implements ServletContextAware {
 				// Survey
 				apiSurveyUpload.equals(uri) ||
 				apiSurveyResponseRead.equals(uri) ||
+				apiSurveyResponseChangesRead.equals(uri) ||
 				apiSurveyResponseUpdate.equals(uri) ||
 				apiSurveyResponseDelete.equals(uri) ||
 				apiSurveyResponseFunctionRead.equals(uri) ||
 				// User
 				apiUserCreate.equals(uri) ||
+				apiUserBatchCreate.equals(uri) ||
 				apiUserRegister.equals(uri) ||
 				apiUserActivate.equals(uri) ||
 				apiUserPasswordReset.equals(uri) ||
@@ -768,6 +831,59 @@ public final class RequestBuilder implements ServletContextAware {
 		return false;
 	}
 
+	/**
+	 * Returns the admission lane for a URI. Reads that may return a large
+	 * amount of data or hold their connection for a long time are bulk 
+	 * reads, data uploads from clients are uploads, and everything else,
+	 * including unknown URIs, is interactive.
+	 * 
+	 * @param uri The request's URI.
+	 * 
+	 * @return The lane in which the request is admitted.
+	 */
+	public AdmissionControl.Lane getAdmissionLane(String uri) {
+		if(
+				// Audit
+				apiAuditRead.equals(uri) ||
+				// Export
+				apiExportDownload.equals(uri) ||
+				// Image
+				apiImageBatchZipRead.equals(uri) ||
+				// Mobility
+				apiMobilityRead.equals(uri) ||
+				apiMobilityReadChunked.equals(uri) ||
+				apiMobilityAggregateRead.equals(uri) ||
+				apiMobilityReadCsv.equals(uri) ||
+				// Observer
+				apiStreamRead.equals(uri) ||
+				apiStreamInvalidRead.equals(uri) ||
+				// OMH
+				apiOmhRead.equals(uri) ||
+				// Survey response
+				apiSurveyResponseRead.equals(uri) ||
+				apiSurveyResponseFunctionRead.equals(uri) ||
+				// Visualization
+				apiVisualizationSurveyResponseCount.equals(uri) ||
+				apiVisualizationPromptDistribution.equals(uri) ||
+				apiVisualizationPromptTimeseries.equals(uri) ||
+				apiVisualizationUserTimeseries.equals(uri) ||
+				apiVisualizationScatterPlot.equals(uri) ||
+				apiVisualization2dDensity.equals(uri) ||
+				apiVisualizationSurveyResponsePrivacy.equals(uri) ||
+				apiVisualizationSurveyResponsePrivacyTimeseries.equals(uri)) {
+			return AdmissionControl.Lane.BULK_READ;
+		}
+		else if(
+				apiMobilityUpload.equals(uri) ||
+				apiStreamUpload.equals(uri) ||
+				apiOmhWrite.equals(uri) ||
+				apiSurveyUpload.equals(uri)) {
+			return AdmissionControl.Lane.UPLOAD;
+		}
+		
+		return AdmissionControl.Lane.INTERACTIVE;
+	}
+
 	/**
 	 * Returns the root of this web application.
 	 * 
@@ -830,6 +946,15 @@ public final class RequestBuilder implements ServletContextAware {
 	public String getApiAnnotationDelete() {
 		return apiAnnotationDelete;
 	}
+
+	/**
+	 * Returns apiAnnotationRead.
+	 *
+	 * @return The apiAnnotationRead.
+	 */
+	public String getApiAnnotationRead() {
+		return apiAnnotationRead;
+	}
 	
 	/**
 	 * Returns apiAudioRead.
@@ -849,6 +974,15 @@ public final class RequestBuilder implements ServletContextAware {
 		return apiAuditRead;
 	}
 
+	/**
+	 * Returns apiAuditMetricsRead.
+	 *
+	 * @return The apiAuditMetricsRead.
+	 */
+	public String getApiAuditMetricsRead() {
+		return apiAuditMetricsRead;
+	}
+
 	/**
 	 * Returns apiUserAuth.
 	 *
@@ -1065,6 +1199,33 @@ public final class RequestBuilder implements ServletContextAware {
 		return apiDocumentDelete;
 	}
 
+	/**
+	 * Returns apiExportCreate.
+	 *
+	 * @return The apiExportCreate.
+	 */
+	public String getApiExportCreate() {
+		return apiExportCreate;
+	}
+
+	/**
+	 * Returns apiExportRead.
+	 *
+	 * @return The apiExportRead.
+	 */
+	public String getApiExportRead() {
+		return apiExportRead;
+	}
+
+	/**
+	 * Returns apiExportDownload.
+	 *
+	 * @return The apiExportDownload.
+	 */
+	public String getApiExportDownload() {
+		return apiExportDownload;
+	}
+
 	/**
 	 * Returns apiImageRead.
 	 *
@@ -1182,6 +1343,15 @@ public final class RequestBuilder implements ServletContextAware {
 		return apiStreamRead;
 	}
 
+	/**
+	 * Returns apiStreamChangesRead.
+	 *
+	 * @return The apiStreamChangesRead.
+	 */
+	public String getApiStreamChangesRead() {
+		return apiStreamChangesRead;
+	}
+
 	/**
 	 * Returns apiStreamInvalidRead.
 	 *
@@ -1218,6 +1388,15 @@ public final class RequestBuilder implements ServletContextAware {
 		return apiSurveyResponseRead;
 	}
 
+	/**
+	 * Returns apiSurveyResponseChangesRead.
+	 *
+	 * @return The apiSurveyResponseChangesRead.
+	 */
+	public String getApiSurveyResponseChangesRead() {
+		return apiSurveyResponseChangesRead;
+	}
+
 	/**
 	 * Returns apiSurveyResponseUpdate.
 	 *
@@ -1245,6 +1424,15 @@ public final class RequestBuilder implements ServletContextAware {
 		return apiUserCreate;
 	}
 
+	/**
+	 * Returns apiUserBatchCreate.
+	 *
+	 * @return The apiUserBatchCreate.
+	 */
+	public String getApiUserBatchCreate() {
+		return apiUserBatchCreate;
+	}
+
 	/**
 	 * Returns apiUserRegister.
 	 *
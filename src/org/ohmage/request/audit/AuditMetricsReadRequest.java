@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request.audit;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.ImageVariantCache;
+import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.jee.servlet.AdmissionControl;
+import org.ohmage.reporting.PerformanceMetrics;
+import org.ohmage.request.UserRequest;
+import org.ohmage.service.UserServices;
+
+/**
+ * <p>Reads the server's performance metrics, which are the latency 
+ * histograms of each phase of every request and of the SQL statements made 
+ * by each query class, along with the hit ratio of the in-memory image
+ * cache. The histograms are cumulative from when the server started. In
+ * order to read the metrics the user must be an admin.</p>
+ * <table border="1">
+ *   <tr>
+ *     <td>Parameter Name</td>
+ *     <td>Description</td>
+ *     <td>Required</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CLIENT}</td>
+ *     <td>A string describing the client that is making this request.</td>
+ *     <td>true</td>
+ *   </tr>
+ * </table>
+ * 
+ * @author John Jenkins
+ */
+public class AuditMetricsReadRequest extends UserRequest {
+	private static final Logger LOGGER = 
+		Logger.getLogger(AuditMetricsReadRequest.class);
+	
+	/**
+	 * The key for the statistics of the in-memory image variant cache.
+	 */
+	public static final String JSON_KEY_IMAGE_VARIANT_CACHE = 
+		"image_variant_cache";
+	/**
+	 * The key for the limits and statistics of the admission lanes.
+	 */
+	public static final String JSON_KEY_ADMISSION = "admission";
+	
+	private JSONObject result;
+	
+	/**
+	 * Creates a performance metrics read request.
+	 * 
+	 * @param httpRequest The HttpServletRequest with the parameters.
+	 * 
+	 * @throws InvalidRequestException Thrown if the parameters cannot be 
+	 * 								   parsed.
+	 * 
+	 * @throws IOException There was an error reading from the request.
+	 */
+	public AuditMetricsReadRequest(
+			final HttpServletRequest httpRequest) 
+			throws IOException, InvalidRequestException {
+		
+		super(httpRequest, null, TokenLocation.EITHER, null);
+		
+		LOGGER.info("Creating a performance metrics read request.");
+		
+		result = null;
+	}
+
+	/**
+	 * Services the request.
+	 */
+	@Override
+	public void service() {
+		LOGGER.info("Servicing the performance metrics read request.");
+		
+		if(! authenticate(AllowNewAccount.NEW_ACCOUNT_DISALLOWED)) {
+			return;
+		}
+		
+		try {
+			LOGGER.info("Verifying the user is an admin.");
+			UserServices.instance().verifyUserIsAdmin(getUser().getUsername());
+		}
+		catch(ServiceException e) {
+			e.failRequest(this);
+			e.logException(LOGGER);
+			return;
+		}
+		
+		PerformanceMetrics metrics = PerformanceMetrics.instance();
+		if(metrics == null) {
+			setFailed(
+				ErrorCode.SYSTEM_GENERAL_ERROR, 
+				"The performance metrics are not being collected.");
+			return;
+		}
+		
+		try {
+			LOGGER.info("Gathering the performance metrics.");
+			result = metrics.toJson();
+			result.put(JSON_KEY_IMAGE_VARIANT_CACHE, ImageVariantCache.toJson());
+			
+			AdmissionControl admission = AdmissionControl.instance();
+			if(admission != null) {
+				result.put(JSON_KEY_ADMISSION, admission.toJson());
+			}
+		}
+		catch(JSONException e) {
+			LOGGER.error("Error building the performance metrics.", e);
+			setFailed();
+		}
+	}
+
+	/**
+	 * Replies to the request.
+	 */
+	@Override
+	public void respond(
+			final HttpServletRequest httpRequest, 
+			final HttpServletResponse httpResponse) {
+		
+		super.respond(httpRequest, httpResponse, (JSONObject) null, result);
+	}
+}
@@ -36,6 +36,7 @@ import org.joda.time.DateTime;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.VersionStamps;
 import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.domain.campaign.Campaign.OutputFormat;
 import org.ohmage.exception.DomainException;
@@ -396,6 +397,15 @@ public class CampaignReadRequest extends UserRequest {
 			return;
 		}
 		
+		if(isNotModified(
+				getUser().getUsername(), 
+				VersionStamps.Domain.CAMPAIGN,
+				VersionStamps.Domain.CLASS)) {
+			
+			LOGGER.info("The campaigns have not changed.");
+			return;
+		}
+		
 		try {
 			LOGGER.info("Getting the campaign information.");
 			campaignResults =
@@ -411,7 +421,8 @@ public class CampaignReadRequest extends UserRequest {
 						runningState, 
 						role, 
 						OutputFormat.LONG.equals(outputFormat), 
-						OutputFormat.LONG.equals(outputFormat));
+						OutputFormat.LONG.equals(outputFormat),
+						false);
 			
 			// If this is a request for XML and there were no campaigns visible
 			// to the user based on the parameters, we need to report that
@@ -439,6 +450,12 @@ public class CampaignReadRequest extends UserRequest {
 	public void respond(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
 		LOGGER.info("Responding to the campaign read request.");
 		
+		// If the requester already has the response, don't send it again.
+		if(respondNotModified(httpResponse)) {
+			refreshTokenCookie(httpResponse);
+			return;
+		}
+		
 		// Creates the writer that will write the response, success or fail.
 		Writer writer;
 		try {
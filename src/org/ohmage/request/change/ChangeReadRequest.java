@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request.change;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.Change;
+import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.UserRequest;
+import org.ohmage.validator.ChangeValidators;
+
+/**
+ * <p>The base class for the requests that read a page of the change feed,
+ * the inserts, updates, and deletes of some source's data in the order they
+ * were made. Each page's metadata includes a token for the last change in the
+ * page, which is given back to read the next page, and whether or not more
+ * changes are already available. If the page is empty, the token that was
+ * given is returned so that the client may poll with it again.</p>
+ * <table border="1">
+ *   <tr>
+ *     <td>Parameter Name</td>
+ *     <td>Description</td>
+ *     <td>Required</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CLIENT}</td>
+ *     <td>A string describing the client that is making this request.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CHANGE_TOKEN}</td>
+ *     <td>The token from a previous page after which changes should be
+ *       returned. If omitted, the changes from the beginning of the feed are
+ *       returned.</td>
+ *     <td>false</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#NUM_TO_RETURN}</td>
+ *     <td>The maximum number of changes to return, up to
+ *       {@value org.ohmage.validator.ChangeValidators#MAX_NUM_TO_RETURN},
+ *       which is the default.</td>
+ *     <td>false</td>
+ *   </tr>
+ * </table>
+ *
+ * @author John Jenkins
+ */
+public abstract class ChangeReadRequest extends UserRequest {
+	private static final Logger LOGGER =
+		Logger.getLogger(ChangeReadRequest.class);
+
+	private static final String JSON_KEY_COUNT = "count";
+	private static final String JSON_KEY_NEXT_TOKEN = "next_token";
+	private static final String JSON_KEY_HAS_MORE = "has_more";
+	private static final String JSON_KEY_CHANGES = "changes";
+
+	private final Long after;
+	private final int numToReturn;
+
+	private List<Change> results;
+	private boolean hasMore;
+
+	/**
+	 * Creates a change read request and validates the paging parameters.
+	 *
+	 * @param httpRequest The HttpServletRequest with the parameters.
+	 *
+	 * @throws InvalidRequestException Thrown if the parameters cannot be
+	 * 								   parsed.
+	 *
+	 * @throws IOException There was an error reading from the request.
+	 */
+	protected ChangeReadRequest(
+			final HttpServletRequest httpRequest)
+			throws IOException, InvalidRequestException {
+
+		super(httpRequest, false, TokenLocation.EITHER, null);
+
+		Long tAfter = null;
+		int tNumToReturn = ChangeValidators.MAX_NUM_TO_RETURN;
+
+		if(! isFailed()) {
+			String[] t;
+
+			try {
+				t = getParameterValues(InputKeys.CHANGE_TOKEN);
+				if(t.length > 1) {
+					throw new ValidationException(
+						ErrorCode.CHANGE_INVALID_TOKEN,
+						"Multiple change tokens were given: " +
+							InputKeys.CHANGE_TOKEN);
+				}
+				else if(t.length == 1) {
+					tAfter = ChangeValidators.validateChangeToken(t[0]);
+				}
+
+				t = getParameterValues(InputKeys.NUM_TO_RETURN);
+				if(t.length > 1) {
+					throw new ValidationException(
+						ErrorCode.SERVER_INVALID_NUM_TO_RETURN,
+						"Multiple numbers to return were given: " +
+							InputKeys.NUM_TO_RETURN);
+				}
+				else if(t.length == 1) {
+					tNumToReturn = ChangeValidators.validateNumToReturn(t[0]);
+				}
+			}
+			catch(ValidationException e) {
+				e.failRequest(this);
+				e.logException(LOGGER);
+			}
+		}
+
+		after = tAfter;
+		numToReturn = tNumToReturn;
+
+		results = Collections.emptyList();
+		hasMore = false;
+	}
+
+	/**
+	 * Authenticates the user, verifies that they may read the changes, and
+	 * reads one more change than was requested in order to know if there are
+	 * more.
+	 */
+	@Override
+	public void service() {
+		LOGGER.info("Servicing a change read request.");
+
+		if(! authenticate(AllowNewAccount.NEW_ACCOUNT_DISALLOWED)) {
+			return;
+		}
+
+		try {
+			List<Change> changes = getChanges(after, numToReturn + 1);
+
+			hasMore = changes.size() > numToReturn;
+			results = (hasMore) ? changes.subList(0, numToReturn) : changes;
+			LOGGER.info("Returning " + results.size() + " changes.");
+		}
+		catch(ServiceException e) {
+			e.failRequest(this);
+			e.logException(LOGGER);
+		}
+	}
+
+	/**
+	 * Replies with the page of changes.
+	 */
+	@Override
+	public void respond(
+			final HttpServletRequest httpRequest,
+			final HttpServletResponse httpResponse) {
+
+		JSONObject metadata = new JSONObject();
+		JSONObject data = new JSONObject();
+		try {
+			JSONArray changes = new JSONArray();
+			for(Change change : results) {
+				changes.put(change.toJson());
+			}
+			data.put(JSON_KEY_CHANGES, changes);
+
+			String nextToken;
+			if(results.isEmpty()) {
+				nextToken = (after == null) ? null : Change.encodeToken(after);
+			}
+			else {
+				nextToken = results.get(results.size() - 1).getToken();
+			}
+
+			metadata.put(JSON_KEY_COUNT, results.size());
+			metadata.put(JSON_KEY_NEXT_TOKEN, nextToken);
+			metadata.put(JSON_KEY_HAS_MORE, hasMore);
+		}
+		catch(JSONException e) {
+			LOGGER.error("Error building the changes.", e);
+			setFailed();
+		}
+
+		super.respond(httpRequest, httpResponse, metadata, data);
+	}
+
+	/**
+	 * Verifies that the user may read the source's changes and reads them.
+	 * The user has already been authenticated.
+	 *
+	 * @param after The position in the feed after which changes should be
+	 * 				returned or null to start at the beginning.
+	 *
+	 * @param numToReturn The maximum number of changes to return.
+	 *
+	 * @return The changes in the order they were made.
+	 *
+	 * @throws ServiceException The user may not read the changes or there
+	 * 							was an error.
+	 */
+	protected abstract List<Change> getChanges(
+			final Long after,
+			final int numToReturn)
+			throws ServiceException;
+}
@@ -28,6 +28,7 @@ import org.apache.log4j.Logger;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.VersionStamps;
 import org.ohmage.domain.Clazz;
 import org.ohmage.exception.InvalidRequestException;
 import org.ohmage.exception.ServiceException;
@@ -210,6 +211,14 @@ public class ClassReadRequest extends UserRequest {
 			return;
 		}
 		
+		if(isNotModified(
+				getUser().getUsername(), 
+				VersionStamps.Domain.CLASS)) {
+			
+			LOGGER.info("The classes have not changed.");
+			return;
+		}
+		
 		try {
 			LOGGER.info("Gathering the information about the classes in the list.");
 			result.putAll(
@@ -0,0 +1,335 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.annotator.Annotator;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.ExportJob;
+import org.ohmage.exception.DomainException;
+import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.UserRequest;
+import org.ohmage.request.observer.StreamReadRequest;
+import org.ohmage.request.survey.SurveyResponseReadRequest;
+import org.ohmage.service.ExportServices;
+import org.ohmage.validator.ExportValidators;
+
+/**
+ * <p>Creates an export of a large set of data. The export is produced in the
+ * background and its state is returned immediately. Once it has succeeded, it
+ * may be downloaded with the export download API.</p>
+ * <p>The remaining parameters are exactly those of the API that reads the
+ * data being exported and are validated the same way. For streams and for
+ * individual survey responses in the json-rows format, the export contains
+ * every point or survey response in the requested range, which is read from
+ * the database in a single pass and written as it is read; the number to
+ * return or process is ignored. The other survey response formats pivot or
+ * aggregate the whole result, so their export is the survey response read
+ * API's output and is bounded the same way that read is.</p>
+ * <table border="1">
+ *   <tr>
+ *     <td>Parameter Name</td>
+ *     <td>Description</td>
+ *     <td>Required</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CLIENT}</td>
+ *     <td>A string describing the client that is making this request.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#EXPORT_TYPE}</td>
+ *     <td>The kind of data to export, one of
+ *       {@link org.ohmage.domain.ExportJob.Type}.</td>
+ *     <td>true</td>
+ *   </tr>
+ * </table>
+ *
+ * @author John Jenkins
+ */
+public class ExportCreateRequest extends UserRequest {
+	private static final Logger LOGGER =
+		Logger.getLogger(ExportCreateRequest.class);
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final ExportJob.Type type;
+	private final UserRequest exportRequest;
+
+	private ExportJob job;
+
+	/**
+	 * Creates an export create request.
+	 *
+	 * @param httpRequest The HttpServletRequest with the parameters.
+	 *
+	 * @throws InvalidRequestException Thrown if the parameters cannot be
+	 * 								   parsed.
+	 *
+	 * @throws IOException There was an error reading from the request.
+	 */
+	public ExportCreateRequest(
+			final HttpServletRequest httpRequest)
+			throws IOException, InvalidRequestException {
+
+		super(httpRequest, false, TokenLocation.EITHER, null);
+
+		LOGGER.info("Creating an export create request.");
+
+		ExportJob.Type tType = null;
+		UserRequest tExportRequest = null;
+
+		if(! isFailed()) {
+			String[] t;
+
+			try {
+				t = getParameterValues(InputKeys.EXPORT_TYPE);
+				if(t.length > 1) {
+					throw new ValidationException(
+						ErrorCode.EXPORT_INVALID_TYPE,
+						"Multiple export types were given: " +
+							InputKeys.EXPORT_TYPE);
+				}
+				else if(t.length == 1) {
+					tType = ExportValidators.validateExportType(t[0]);
+				}
+				if(tType == null) {
+					throw new ValidationException(
+						ErrorCode.EXPORT_INVALID_TYPE,
+						"The export type is missing: " +
+							InputKeys.EXPORT_TYPE);
+				}
+
+				// Validate the rest of the parameters as the read would.
+				switch(tType) {
+				case SURVEY_RESPONSE:
+					tExportRequest = new SurveyResponseReadRequest(httpRequest);
+					break;
+
+				case STREAM:
+					tExportRequest = new StreamReadRequest(httpRequest);
+					break;
+				}
+
+				if(tExportRequest.isFailed()) {
+					Annotator annotator = tExportRequest.getAnnotator();
+					setFailed(
+						annotator.getErrorCode(),
+						annotator.getErrorText());
+				}
+			}
+			catch(ValidationException e) {
+				e.failRequest(this);
+				e.logException(LOGGER);
+			}
+		}
+
+		type = tType;
+		exportRequest = tExportRequest;
+
+		job = null;
+	}
+
+	/**
+	 * Services the request.
+	 */
+	@Override
+	public void service() {
+		LOGGER.info("Servicing the export create request.");
+
+		if(! authenticate(AllowNewAccount.NEW_ACCOUNT_DISALLOWED)) {
+			return;
+		}
+
+		try {
+			LOGGER.info("Queueing the export.");
+			job =
+				ExportServices.instance().submit(
+					getUser().getUsername(),
+					type,
+					new ExportServices.Exporter() {
+						/**
+						 * Services the read and writes its results.
+						 */
+						@Override
+						public String export(
+								final OutputStream outputStream)
+								throws ServiceException, IOException {
+
+							exportRequest.service();
+							checkFailed();
+
+							switch(type) {
+							case SURVEY_RESPONSE:
+								return exportSurveyResponses(outputStream);
+
+							case STREAM:
+								return exportStream(outputStream);
+
+							default:
+								throw new ServiceException(
+									ErrorCode.EXPORT_INVALID_TYPE,
+									"The export type is unknown: " + type);
+							}
+						}
+					});
+		}
+		catch(ServiceException e) {
+			e.failRequest(this);
+			e.logException(LOGGER);
+		}
+	}
+
+	/**
+	 * Replies to the request with the export's state.
+	 */
+	@Override
+	public void respond(
+			final HttpServletRequest httpRequest,
+			final HttpServletResponse httpResponse) {
+
+		JSONObject result = null;
+		if(job != null) {
+			try {
+				result = job.toJson();
+			}
+			catch(JSONException e) {
+				LOGGER.error("Error building the export's state.", e);
+				setFailed();
+			}
+		}
+
+		super.respond(httpRequest, httpResponse, (JSONObject) null, result);
+	}
+
+	/**
+	 * Writes every survey response in the read's range to the export if they
+	 * can be written as they are read. Otherwise, writes the survey response
+	 * read's usual response.
+	 *
+	 * @param outputStream The export's stream.
+	 *
+	 * @return The content type of the response.
+	 *
+	 * @throws ServiceException The response could not be built.
+	 *
+	 * @throws IOException The survey responses could not be written.
+	 */
+	private String exportSurveyResponses(
+			final OutputStream outputStream)
+			throws ServiceException, IOException {
+
+		SurveyResponseReadRequest readRequest =
+			(SurveyResponseReadRequest) exportRequest;
+		if(readRequest.canWriteAll()) {
+			JsonGenerator generator =
+				JSON_FACTORY.createJsonGenerator(outputStream);
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+			try {
+				readRequest.writeAll(generator);
+			}
+			finally {
+				generator.close();
+			}
+
+			return "application/json";
+		}
+
+		ExportHttpServletResponse response =
+			new ExportHttpServletResponse(outputStream);
+		exportRequest.respond(null, response);
+
+		checkFailed();
+		if(response.isError()) {
+			throw new ServiceException(
+				"The survey responses could not be written: " +
+					response.getStatus());
+		}
+
+		return response.getContentType();
+	}
+
+	/**
+	 * Writes every point in the stream read's range to the export.
+	 *
+	 * @param outputStream The export's stream.
+	 *
+	 * @return The content type of the export.
+	 *
+	 * @throws ServiceException A page of points could not be read.
+	 *
+	 * @throws IOException The points could not be written.
+	 */
+	private String exportStream(
+			final OutputStream outputStream)
+			throws ServiceException, IOException {
+
+		JsonGenerator generator =
+			JSON_FACTORY.createJsonGenerator(outputStream);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+		try {
+			generator.writeStartObject();
+			generator.writeStringField(JSON_KEY_RESULT, RESULT_SUCCESS);
+
+			generator.writeFieldName(JSON_KEY_DATA);
+			long count = ((StreamReadRequest) exportRequest).writeAll(generator);
+
+			generator.writeObjectFieldStart(JSON_KEY_METADATA);
+			generator.writeNumberField("count", count);
+			generator.writeEndObject();
+
+			generator.writeEndObject();
+		}
+		catch(DomainException e) {
+			throw new ServiceException("One of the points could not be written.", e);
+		}
+		finally {
+			generator.close();
+		}
+
+		return "application/json";
+	}
+
+	/**
+	 * Throws the read's failure, if it failed, so that it is reported as the
+	 * export's failure.
+	 *
+	 * @throws ServiceException The read failed.
+	 */
+	private void checkFailed() throws ServiceException {
+		if(exportRequest.isFailed()) {
+			Annotator annotator = exportRequest.getAnnotator();
+			throw new ServiceException(
+				annotator.getErrorCode(),
+				annotator.getErrorText());
+		}
+	}
+}
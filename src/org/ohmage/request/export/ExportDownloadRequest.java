@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.catalina.connector.ClientAbortException;
+import org.apache.log4j.Logger;
+import org.json.JSONObject;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.ExportJob;
+import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.UserRequest;
+import org.ohmage.service.ExportServices;
+import org.ohmage.validator.ExportValidators;
+
+/**
+ * <p>Downloads a finished export. The export is returned exactly as it is
+ * stored, gzip-compressed, as an attachment. A single byte range may be
+ * requested with the HTTP Range header so that an interrupted download may be
+ * resumed.</p>
+ * <table border="1">
+ *   <tr>
+ *     <td>Parameter Name</td>
+ *     <td>Description</td>
+ *     <td>Required</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CLIENT}</td>
+ *     <td>A string describing the client that is making this request.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#EXPORT_ID}</td>
+ *     <td>The unique identifier of the export.</td>
+ *     <td>true</td>
+ *   </tr>
+ * </table>
+ *
+ * @author John Jenkins
+ */
+public class ExportDownloadRequest extends UserRequest {
+	private static final Logger LOGGER =
+		Logger.getLogger(ExportDownloadRequest.class);
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private static final String HEADER_RANGE = "Range";
+	private static final String HEADER_IF_RANGE = "If-Range";
+	private static final String RANGE_UNIT = "bytes";
+
+	private final UUID exportId;
+
+	private ExportJob job;
+	private File file;
+
+	/**
+	 * Creates an export download request.
+	 *
+	 * @param httpRequest The HttpServletRequest with the parameters.
+	 *
+	 * @throws InvalidRequestException Thrown if the parameters cannot be
+	 * 								   parsed.
+	 *
+	 * @throws IOException There was an error reading from the request.
+	 */
+	public ExportDownloadRequest(
+			final HttpServletRequest httpRequest)
+			throws IOException, InvalidRequestException {
+
+		super(httpRequest, false, TokenLocation.EITHER, null);
+
+		LOGGER.info("Creating an export download request.");
+
+		UUID tExportId = null;
+
+		if(! isFailed()) {
+			try {
+				String[] t = getParameterValues(InputKeys.EXPORT_ID);
+				if(t.length > 1) {
+					throw new ValidationException(
+						ErrorCode.EXPORT_INVALID_ID,
+						"Multiple export IDs were given: " +
+							InputKeys.EXPORT_ID);
+				}
+				else if(t.length == 1) {
+					tExportId = ExportValidators.validateExportId(t[0]);
+				}
+				if(tExportId == null) {
+					throw new ValidationException(
+						ErrorCode.EXPORT_INVALID_ID,
+						"The export ID is missing: " + InputKeys.EXPORT_ID);
+				}
+			}
+			catch(ValidationException e) {
+				e.failRequest(this);
+				e.logException(LOGGER);
+			}
+		}
+
+		exportId = tExportId;
+
+		job = null;
+		file = null;
+	}
+
+	/**
+	 * Services the request.
+	 */
+	@Override
+	public void service() {
+		LOGGER.info("Servicing the export download request.");
+
+		if(! authenticate(AllowNewAccount.NEW_ACCOUNT_DISALLOWED)) {
+			return;
+		}
+
+		try {
+			LOGGER.info("Retrieving the export.");
+			job =
+				ExportServices.instance().getJob(
+					getUser().getUsername(),
+					exportId);
+
+			LOGGER.info("Verifying that the export is finished.");
+			file = ExportServices.instance().getFile(job);
+		}
+		catch(ServiceException e) {
+			e.failRequest(this);
+			e.logException(LOGGER);
+		}
+	}
+
+	/**
+	 * Writes the export, or the requested range of it, to the response.
+	 */
+	@Override
+	public void respond(
+			final HttpServletRequest httpRequest,
+			final HttpServletResponse httpResponse) {
+
+		LOGGER.info("Writing the export download response.");
+
+		if(isFailed()) {
+			super.respond(httpRequest, httpResponse, (JSONObject) null);
+			return;
+		}
+
+		RandomAccessFile contents;
+		try {
+			contents = new RandomAccessFile(file, "r");
+		}
+		catch(IOException e) {
+			// The export expired between servicing and responding.
+			LOGGER.info("The export could no longer be read.", e);
+			setFailed(
+				ErrorCode.EXPORT_NOT_FINISHED,
+				"The export is no longer available: " + exportId);
+			super.respond(httpRequest, httpResponse, (JSONObject) null);
+			return;
+		}
+
+		try {
+			long size = contents.length();
+			String eTag = "\"" + exportId + "-" + job.getFinished() + "\"";
+
+			refreshTokenCookie(httpResponse);
+			httpResponse.setHeader("Accept-Ranges", RANGE_UNIT);
+			httpResponse.setHeader("ETag", eTag);
+			httpResponse.setHeader("Cache-Control", "private");
+
+			long start = 0;
+			long end = size - 1;
+			String range = httpRequest.getHeader(HEADER_RANGE);
+			String ifRange = httpRequest.getHeader(HEADER_IF_RANGE);
+			long[] bounds = null;
+			if((range != null) && ((ifRange == null) || ifRange.equals(eTag))) {
+				// Multiple or malformed ranges are ignored and the whole
+				// export is sent.
+				bounds = parseRange(range, size);
+			}
+			if(bounds != null) {
+				if((bounds[0] >= size) || (bounds[0] > bounds[1])) {
+					httpResponse.setStatus(
+						HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+					httpResponse.setHeader(
+						"Content-Range",
+						RANGE_UNIT + " */" + size);
+					return;
+				}
+				else {
+					start = bounds[0];
+					end = Math.min(bounds[1], size - 1);
+
+					httpResponse.setStatus(
+						HttpServletResponse.SC_PARTIAL_CONTENT);
+					httpResponse.setHeader(
+						"Content-Range",
+						RANGE_UNIT + " " + start + "-" + end + "/" + size);
+				}
+			}
+
+			httpResponse.setContentType("application/gzip");
+			httpResponse.setHeader(
+				"Content-Disposition",
+				"attachment; filename=\"export-" + exportId + "." +
+					("text/csv".equals(job.getContentType()) ? "csv" : "json") +
+					".gz\"");
+			httpResponse.setHeader(
+				"Content-Length",
+				Long.toString(end - start + 1));
+
+			// The export is already compressed, so it is written directly
+			// rather than through a stream that may compress it again.
+			OutputStream outputStream = httpResponse.getOutputStream();
+			contents.seek(start);
+			byte[] bytes = new byte[CHUNK_SIZE];
+			long remaining = end - start + 1;
+			while(remaining > 0) {
+				int currRead =
+					contents.read(
+						bytes,
+						0,
+						(int) Math.min(bytes.length, remaining));
+				if(currRead == -1) {
+					break;
+				}
+
+				outputStream.write(bytes, 0, currRead);
+				remaining -= currRead;
+			}
+			outputStream.flush();
+		}
+		catch(ClientAbortException e) {
+			LOGGER.info("The client hung up unexpectedly.", e);
+		}
+		catch(IOException e) {
+			LOGGER.error(
+				"The export could not be read or written to the response.",
+				e);
+			httpResponse.setStatus(
+				HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		}
+		finally {
+			try {
+				contents.close();
+			}
+			catch(IOException e) {
+				LOGGER.warn("Could not close the export.", e);
+			}
+		}
+	}
+
+	/**
+	 * Parses a Range header with a single byte range.
+	 *
+	 * @param range The header's value, e.g. "bytes=100-", "bytes=100-199",
+	 * 				or "bytes=-100".
+	 *
+	 * @param size The size of the export.
+	 *
+	 * @return The first and last byte, inclusive, where the last byte may be
+	 * 		   past the end of the export, or null if the header is malformed
+	 * 		   or has more than one range.
+	 */
+	private static long[] parseRange(final String range, final long size) {
+		String prefix = RANGE_UNIT + "=";
+		if(! range.startsWith(prefix)) {
+			return null;
+		}
+
+		String spec = range.substring(prefix.length()).trim();
+		int dash = spec.indexOf('-');
+		if((dash == -1) || (spec.indexOf(',') != -1)) {
+			return null;
+		}
+
+		try {
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+
+			if(first.length() == 0) {
+				// A suffix of the export.
+				long suffix = Long.parseLong(last);
+				if(suffix <= 0) {
+					return new long[] { size, size };
+				}
+				return new long[] { Math.max(0, size - suffix), size - 1 };
+			}
+
+			long start = Long.parseLong(first);
+			long end =
+				(last.length() == 0) ? (size - 1) : Long.parseLong(last);
+			if(start < 0) {
+				return null;
+			}
+			return new long[] { start, end };
+		}
+		catch(NumberFormatException e) {
+			return null;
+		}
+	}
+}
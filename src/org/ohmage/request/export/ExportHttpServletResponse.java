@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * An HTTP response whose body is written to an export rather than to a
+ * client. This allows an existing request to write its usual response into
+ * an export. Closing the response's stream only flushes it, as the export
+ * owns the underlying stream.
+ *
+ * @author John Jenkins
+ */
+class ExportHttpServletResponse implements HttpServletResponse {
+	private static final String DEFAULT_CHARACTER_ENCODING = "UTF-8";
+
+	private final ServletOutputStream outputStream;
+	private final Map<String, List<String>> headers =
+		new LinkedHashMap<String, List<String>>();
+
+	private int status = SC_OK;
+	private String contentType = null;
+	private String characterEncoding = DEFAULT_CHARACTER_ENCODING;
+	private PrintWriter writer = null;
+
+	/**
+	 * Creates a response that writes its body to the given stream.
+	 *
+	 * @param outputStream The stream to which the body is written.
+	 */
+	ExportHttpServletResponse(final OutputStream outputStream) {
+		this.outputStream =
+			new ServletOutputStream() {
+				/**
+				 * Writes a byte to the export.
+				 */
+				@Override
+				public void write(final int b) throws IOException {
+					outputStream.write(b);
+				}
+
+				/**
+				 * Writes a range of bytes to the export.
+				 */
+				@Override
+				public void write(
+						final byte[] b,
+						final int off,
+						final int len)
+						throws IOException {
+
+					outputStream.write(b, off, len);
+				}
+
+				/**
+				 * Flushes the export.
+				 */
+				@Override
+				public void flush() throws IOException {
+					outputStream.flush();
+				}
+
+				/**
+				 * Flushes, but does not close, the export.
+				 */
+				@Override
+				public void close() throws IOException {
+					outputStream.flush();
+				}
+			};
+	}
+
+	/**
+	 * Returns whether or not the response's status is an error.
+	 *
+	 * @return True if the status is 400 or above.
+	 */
+	boolean isError() {
+		return status >= SC_BAD_REQUEST;
+	}
+
+	@Override
+	public void addCookie(final Cookie cookie) {
+		// Cookies have no meaning in an export.
+	}
+
+	@Override
+	public boolean containsHeader(final String name) {
+		return headers.containsKey(name);
+	}
+
+	@Override
+	public String encodeURL(final String url) {
+		return url;
+	}
+
+	@Override
+	public String encodeRedirectURL(final String url) {
+		return url;
+	}
+
+	@Override
+	@Deprecated
+	public String encodeUrl(final String url) {
+		return url;
+	}
+
+	@Override
+	@Deprecated
+	public String encodeRedirectUrl(final String url) {
+		return url;
+	}
+
+	@Override
+	public void sendError(final int sc, final String msg) {
+		status = sc;
+	}
+
+	@Override
+	public void sendError(final int sc) {
+		status = sc;
+	}
+
+	@Override
+	public void sendRedirect(final String location) {
+		status = SC_FOUND;
+	}
+
+	@Override
+	public void setDateHeader(final String name, final long date) {
+		setHeader(name, Long.toString(date));
+	}
+
+	@Override
+	public void addDateHeader(final String name, final long date) {
+		addHeader(name, Long.toString(date));
+	}
+
+	@Override
+	public void setHeader(final String name, final String value) {
+		headers.remove(name);
+		addHeader(name, value);
+	}
+
+	@Override
+	public void addHeader(final String name, final String value) {
+		List<String> values = headers.get(name);
+		if(values == null) {
+			values = new ArrayList<String>(1);
+			headers.put(name, values);
+		}
+		values.add(value);
+	}
+
+	@Override
+	public void setIntHeader(final String name, final int value) {
+		setHeader(name, Integer.toString(value));
+	}
+
+	@Override
+	public void addIntHeader(final String name, final int value) {
+		addHeader(name, Integer.toString(value));
+	}
+
+	@Override
+	public void setStatus(final int sc) {
+		status = sc;
+	}
+
+	@Override
+	@Deprecated
+	public void setStatus(final int sc, final String sm) {
+		status = sc;
+	}
+
+	@Override
+	public int getStatus() {
+		return status;
+	}
+
+	@Override
+	public String getHeader(final String name) {
+		List<String> values = headers.get(name);
+		return (values == null) ? null : values.get(0);
+	}
+
+	@Override
+	public Collection<String> getHeaders(final String name) {
+		List<String> values = headers.get(name);
+		if(values == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(values);
+	}
+
+	@Override
+	public Collection<String> getHeaderNames() {
+		return Collections.unmodifiableSet(headers.keySet());
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		return characterEncoding;
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if(writer == null) {
+			writer =
+				new PrintWriter(
+					new OutputStreamWriter(outputStream, characterEncoding));
+		}
+		return writer;
+	}
+
+	@Override
+	public void setCharacterEncoding(final String charset) {
+		characterEncoding = charset;
+	}
+
+	@Override
+	public void setContentLength(final int len) {
+		// The length of an export is only known once it is finished.
+	}
+
+	@Override
+	public void setContentType(final String type) {
+		contentType = type;
+	}
+
+	@Override
+	public void setBufferSize(final int size) {
+		// The export is buffered by its owner.
+	}
+
+	@Override
+	public int getBufferSize() {
+		return 0;
+	}
+
+	@Override
+	public void flushBuffer() throws IOException {
+		if(writer != null) {
+			writer.flush();
+		}
+		outputStream.flush();
+	}
+
+	@Override
+	public void resetBuffer() {
+		// What has been written to the export cannot be taken back.
+	}
+
+	@Override
+	public boolean isCommitted() {
+		return false;
+	}
+
+	@Override
+	public void reset() {
+		status = SC_OK;
+		contentType = null;
+		headers.clear();
+	}
+
+	@Override
+	public void setLocale(final Locale loc) {
+		// The locale has no meaning in an export.
+	}
+
+	@Override
+	public Locale getLocale() {
+		return Locale.getDefault();
+	}
+}
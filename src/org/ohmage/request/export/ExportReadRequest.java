@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request.export;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.ExportJob;
+import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.UserRequest;
+import org.ohmage.service.ExportServices;
+import org.ohmage.validator.ExportValidators;
+
+/**
+ * <p>Reads the state of one of the requesting user's exports or, if no export
+ * is given, of all of the user's exports that have not yet expired.</p>
+ * <table border="1">
+ *   <tr>
+ *     <td>Parameter Name</td>
+ *     <td>Description</td>
+ *     <td>Required</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CLIENT}</td>
+ *     <td>A string describing the client that is making this request.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#EXPORT_ID}</td>
+ *     <td>The unique identifier of the export.</td>
+ *     <td>false</td>
+ *   </tr>
+ * </table>
+ *
+ * @author John Jenkins
+ */
+public class ExportReadRequest extends UserRequest {
+	private static final Logger LOGGER =
+		Logger.getLogger(ExportReadRequest.class);
+
+	private final UUID exportId;
+
+	private Collection<ExportJob> results;
+
+	/**
+	 * Creates an export read request.
+	 *
+	 * @param httpRequest The HttpServletRequest with the parameters.
+	 *
+	 * @throws InvalidRequestException Thrown if the parameters cannot be
+	 * 								   parsed.
+	 *
+	 * @throws IOException There was an error reading from the request.
+	 */
+	public ExportReadRequest(
+			final HttpServletRequest httpRequest)
+			throws IOException, InvalidRequestException {
+
+		super(httpRequest, false, TokenLocation.EITHER, null);
+
+		LOGGER.info("Creating an export read request.");
+
+		UUID tExportId = null;
+
+		if(! isFailed()) {
+			try {
+				String[] t = getParameterValues(InputKeys.EXPORT_ID);
+				if(t.length > 1) {
+					throw new ValidationException(
+						ErrorCode.EXPORT_INVALID_ID,
+						"Multiple export IDs were given: " +
+							InputKeys.EXPORT_ID);
+				}
+				else if(t.length == 1) {
+					tExportId = ExportValidators.validateExportId(t[0]);
+				}
+			}
+			catch(ValidationException e) {
+				e.failRequest(this);
+				e.logException(LOGGER);
+			}
+		}
+
+		exportId = tExportId;
+
+		results = Collections.emptyList();
+	}
+
+	/**
+	 * Services the request.
+	 */
+	@Override
+	public void service() {
+		LOGGER.info("Servicing the export read request.");
+
+		if(! authenticate(AllowNewAccount.NEW_ACCOUNT_DISALLOWED)) {
+			return;
+		}
+
+		try {
+			if(exportId == null) {
+				LOGGER.info("Gathering the user's exports.");
+				results =
+					ExportServices.instance().getJobs(getUser().getUsername());
+			}
+			else {
+				LOGGER.info("Gathering the export.");
+				results =
+					Collections.singletonList(
+						ExportServices.instance().getJob(
+							getUser().getUsername(),
+							exportId));
+			}
+		}
+		catch(ServiceException e) {
+			e.failRequest(this);
+			e.logException(LOGGER);
+		}
+	}
+
+	/**
+	 * Replies to the request with the state of each export.
+	 */
+	@Override
+	public void respond(
+			final HttpServletRequest httpRequest,
+			final HttpServletResponse httpResponse) {
+
+		JSONArray result = new JSONArray();
+		try {
+			for(ExportJob job : results) {
+				result.put(job.toJson());
+			}
+		}
+		catch(JSONException e) {
+			LOGGER.error("Error building the exports' states.", e);
+			setFailed();
+		}
+
+		super.respond(httpRequest, httpResponse, JSON_KEY_DATA, result);
+	}
+}
@@ -1,5 +1,6 @@
 package org.ohmage.request.image;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -7,9 +8,18 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -30,6 +40,9 @@ import org.ohmage.service.ImageServices;
 /**
  * <p>Reads all of the images for a campaign that match the given criteria and
  * returns them as a ZIP file.</p>
+ * <p>The images are already compressed, so they are stored in the ZIP file 
+ * as-is and the response is never gzipped. The next few images are read from
+ * disk while the current one is being written to the client.</p>
  * <table>
  *   <tr>
  *     <td>Parameter Name</td>
@@ -99,6 +112,75 @@ public class ImageBatchZipReadRequest extends SurveyResponseRequest {
 	private static final Logger LOGGER = 
 			Logger.getLogger(ImageBatchZipReadRequest.class);
 	
+	/**
+	 * The number of images that may be read ahead of the one currently being
+	 * written. This bounds the number of images held in memory.
+	 */
+	private static final int READ_AHEAD_COUNT = 4;
+	/**
+	 * The number of threads used to read the images, which are shared by all
+	 * of the requests.
+	 */
+	private static final int READ_AHEAD_THREADS = 4;
+	
+	private static final AtomicInteger READER_COUNT = new AtomicInteger(0);
+	/**
+	 * The pool that reads the images for all of the requests. Each request
+	 * only has {@link #READ_AHEAD_COUNT} images queued at a time, so the
+	 * queue is bounded by the number of concurrent requests.
+	 */
+	private static final ExecutorService READERS = 
+		Executors.newFixedThreadPool(
+			READ_AHEAD_THREADS,
+			new ThreadFactory() {
+				/**
+				 * Creates a daemon thread so that the pool never keeps the
+				 * server from shutting down.
+				 */
+				@Override
+				public Thread newThread(final Runnable runnable) {
+					Thread result =
+						new Thread(
+							runnable,
+							"ImageBatchZipReadRequest-" + 
+								READER_COUNT.incrementAndGet());
+					result.setDaemon(true);
+					return result;
+				}
+			});
+	
+	/**
+	 * An image that has been completely read into memory along with its 
+	 * checksum, which a stored ZIP entry requires before its data is 
+	 * written.
+	 * 
+	 * @author John Jenkins
+	 */
+	private static final class LoadedImage {
+		private final UUID imageId;
+		private final byte[] contents;
+		private final long crc;
+		
+		/**
+		 * Creates a new loaded image.
+		 * 
+		 * @param imageId The image's unique identifier.
+		 * 
+		 * @param contents The image's contents.
+		 * 
+		 * @param crc The CRC-32 of the image's contents.
+		 */
+		private LoadedImage(
+				final UUID imageId, 
+				final byte[] contents, 
+				final long crc) {
+			
+			this.imageId = imageId;
+			this.contents = contents;
+			this.crc = crc;
+		}
+	}
+	
 	private final Map<UUID, URL> imageUrls;
 	
 	/**
@@ -152,17 +234,17 @@ public class ImageBatchZipReadRequest extends SurveyResponseRequest {
 			imageIds.addAll(getImageIds(surveyResponse.getResponses().values()));
 		}
 		
-		LOGGER.info("Getting the URL for each UUID.");
+		LOGGER.info("Getting the URLs for the UUIDs.");
 		try {
-			for(UUID imageId : imageIds) {
-				URL imageUrl = ImageServices.instance().getImageUrl(imageId);
-				if(imageUrl == null) {
-					LOGGER.debug(
-							"The image doesn't have a URL: " + 
-								imageId.toString());
-				}
-				else {
-					imageUrls.put(imageId, imageUrl);
+			imageUrls.putAll(ImageServices.instance().getImageUrls(imageIds));
+			
+			if(LOGGER.isDebugEnabled()) {
+				for(UUID imageId : imageIds) {
+					if(! imageUrls.containsKey(imageId)) {
+						LOGGER.debug(
+								"The image doesn't have a URL: " + 
+									imageId.toString());
+					}
 				}
 			}
 		}
@@ -193,101 +275,85 @@ public class ImageBatchZipReadRequest extends SurveyResponseRequest {
 				"Content-Disposition", 
 				"attachment; filename=images.zip");
 		
-		// Create the zip stream to the outside world.
+		httpResponse.setContentType("application/zip");
+		
+		// Create the zip stream to the outside world. The images are already
+		// compressed, so the response is not gzipped.
 		ZipOutputStream zipStream = null;
 		try {
-			zipStream = 
-					new ZipOutputStream(
-						getOutputStream(httpRequest, httpResponse));
+			zipStream = new ZipOutputStream(httpResponse.getOutputStream());
 		}
 		catch(IOException e) {
 			LOGGER.error("Unable to write response message. Aborting.", e);
 			return;
 		}
 		
-		// Stream each image into the input of the ZIP stream.
-		int lengthRead;
-		byte[] buffer = new byte[4096];
-		for(UUID imageId : imageUrls.keySet()) {
-			// First, attempt to connect to the image. If this cannot be done,
-			// we will simply skip this image and not return it in the ZIP 
-			// file.
-			InputStream imageStream;
-			try {
-				URL imageUrl = imageUrls.get(imageId);
-				imageStream = imageUrl.openStream();
-			}
-			catch(IOException e) {
-				LOGGER.info(
-						"The image does not exist, so it will not be added to the ZIP file: " +
-							imageId.toString(),
-						e);
-				continue;
-			}
-			
-			// Next, we create a new entry in the ZIP file for this image.
-			try {
-				zipStream.putNextEntry(new ZipEntry(imageId.toString() + ".png"));
-			}
-			catch(IOException e) {
-				LOGGER.error(
-						"Unable to add an entry to the stream: " +
-							imageId.toString(),
-						e);
-				break;
+		// Start reading the first images.
+		Iterator<Map.Entry<UUID, URL>> imageIter = 
+			imageUrls.entrySet().iterator();
+		LinkedList<Future<LoadedImage>> readAhead = 
+			new LinkedList<Future<LoadedImage>>();
+		try {
+			while((readAhead.size() < READ_AHEAD_COUNT) && imageIter.hasNext()) {
+				readAhead.add(READERS.submit(loadImage(imageIter.next())));
 			}
 			
-			// Attempt to read from the image buffer and shuffle it into the 
-			// ZIP file buffer.
-			try {
-				while((lengthRead = imageStream.read(buffer)) != -1) {
-					try {
-						zipStream.write(buffer, 0, lengthRead);
-					}
-					catch(IOException e) {
-						LOGGER.error(
-								"There was a problem writing the response: " +
-									imageId.toString(),
-								e);
-						break;
-					}
+			// Write each image as it becomes available and start reading 
+			// another one in its place.
+			while(! readAhead.isEmpty()) {
+				LoadedImage image;
+				try {
+					image = readAhead.removeFirst().get();
+				}
+				catch(InterruptedException e) {
+					LOGGER.error("Interrupted while reading the images.", e);
+					Thread.currentThread().interrupt();
+					break;
+				}
+				catch(ExecutionException e) {
+					// If the image cannot be read, we will simply skip this 
+					// image and not return it in the ZIP file.
+					LOGGER.info(
+							"The image could not be read, so it will not be added to the ZIP file.",
+							e.getCause());
+					image = null;
 				}
-			}
-			catch(IOException e) {
-				LOGGER.error(
-						"There was a problem reading the image's contents: " +
-							imageId.toString(),
-						e);
-				break;
-			}
-			
-			// Once we have copied the entire image into the buffer, we can 
-			// close it. If it fails to close, we don't really care because we
-			// have supposedly read everything we need.
-			try {
-				imageStream.close();	
-			}
-			catch(IOException e) {
-				LOGGER.error(
-						"There was a problem closing the connection to the image: " +
-							imageId.toString(),
-						e);
 				
-				// We don't abort here, because everything should have been
-				// successfully written to to the stream. Therefore, we should
-				// log that it happened, but we can safely continue.
-			}
-			
-			// Finally, close this entry in the ZIP file.
-			try {
-				zipStream.closeEntry();
+				if(imageIter.hasNext()) {
+					readAhead.add(READERS.submit(loadImage(imageIter.next())));
+				}
+				
+				if(image == null) {
+					continue;
+				}
+				
+				// Create a stored entry in the ZIP file for this image.
+				ZipEntry entry = 
+					new ZipEntry(image.imageId.toString() + ".png");
+				entry.setMethod(ZipEntry.STORED);
+				entry.setSize(image.contents.length);
+				entry.setCompressedSize(image.contents.length);
+				entry.setCrc(image.crc);
+				
+				try {
+					zipStream.putNextEntry(entry);
+					zipStream.write(image.contents);
+					zipStream.closeEntry();
+				}
+				catch(IOException e) {
+					LOGGER.error(
+							"There was a problem writing the response: " +
+								image.imageId.toString(),
+							e);
+					break;
+				}
 			}
-			catch(IOException e) {
-				LOGGER.error(
-						"There was a problem closing this image's entry: " +
-							imageId.toString(),
-						e);
-				break;
+		}
+		finally {
+			// The pool is shared, so only this request's unfinished reads
+			// are stopped.
+			for(Future<LoadedImage> future : readAhead) {
+				future.cancel(true);
 			}
 		}
 		
@@ -309,6 +375,63 @@ public class ImageBatchZipReadRequest extends SurveyResponseRequest {
 		}
 	}
 	
+	/**
+	 * Creates a task that reads an image completely into memory and computes
+	 * its checksum.
+	 * 
+	 * @param image The image's unique identifier and URL.
+	 * 
+	 * @return The task that will read the image.
+	 */
+	private static Callable<LoadedImage> loadImage(
+			final Map.Entry<UUID, URL> image) {
+		
+		return new Callable<LoadedImage>() {
+			/**
+			 * Reads the image.
+			 */
+			@Override
+			public LoadedImage call() throws IOException {
+				ByteArrayOutputStream contents = new ByteArrayOutputStream();
+				CRC32 crc = new CRC32();
+				
+				InputStream imageStream = image.getValue().openStream();
+				try {
+					int lengthRead;
+					byte[] buffer = new byte[4096];
+					while((lengthRead = imageStream.read(buffer)) != -1) {
+						contents.write(buffer, 0, lengthRead);
+						crc.update(buffer, 0, lengthRead);
+					}
+				}
+				catch(IOException e) {
+					throw new IOException(
+						"There was a problem reading the image's contents: " +
+							image.getKey().toString(),
+						e);
+				}
+				finally {
+					try {
+						imageStream.close();
+					}
+					catch(IOException e) {
+						// Everything should have been read, so we can safely
+						// continue.
+						LOGGER.error(
+								"There was a problem closing the connection to the image: " +
+									image.getKey().toString(),
+								e);
+					}
+				}
+				
+				return new LoadedImage(
+					image.getKey(), 
+					contents.toByteArray(), 
+					crc.getValue());
+			}
+		};
+	}
+	
 	/**
 	 * Cycles through a collection of responses and retrieves the photo prompt
 	 * response's UUIDs.
@@ -28,6 +28,7 @@ import org.apache.catalina.connector.ClientAbortException;
 import org.apache.log4j.Logger;
 import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.ImageVariantCache;
 import org.ohmage.domain.Image;
 import org.ohmage.exception.DomainException;
 import org.ohmage.exception.InvalidRequestException;
@@ -83,6 +84,7 @@ public class ImageReadRequest extends UserRequest {
 	private final Image.Size size;
 	
 	private Image image;
+	private ImageVariantCache.Variant variant;
 	
 	/**
 	 * Creates a new image read request.
@@ -151,6 +153,7 @@ public class ImageReadRequest extends UserRequest {
 		size = tSize;
 		
 		image = null;
+		variant = null;
 	}
 	
 	/**
@@ -177,8 +180,13 @@ public class ImageReadRequest extends UserRequest {
 				UserImageServices.instance().verifyUserCanReadImage(getUser().getUsername(), imageId);
 			}
 			
-			LOGGER.info("Retrieving the original image.");
-			image = ImageServices.instance().getImage(imageId, size);
+			LOGGER.info("Retrieving the image variant from memory.");
+			variant = ImageServices.instance().getImageVariant(imageId, size);
+			
+			if(variant == null) {
+				LOGGER.info("Retrieving the original image.");
+				image = ImageServices.instance().getImage(imageId, size);
+			}
 		}
 		catch(ServiceException e) {
 			e.failRequest(this);
@@ -211,7 +219,10 @@ public class ImageReadRequest extends UserRequest {
 		// Open the connection to the image if it is not null.
 		InputStream imageStream = null;
 		try {
-			if(image != null) {
+			if(variant != null) {
+				imageStream = variant.getInputStream();
+			}
+			else if(image != null) {
 				imageStream = image.getInputStream(size);
 			}
 		}
@@ -235,10 +246,18 @@ public class ImageReadRequest extends UserRequest {
 				// FIXME: This isn't necessarily the case. We might want to do
 				// some sort of image inspection to figure out what this should
 				// be.
-				httpResponse.setContentType(image.getType(size));
-				httpResponse.setHeader(
-						"Content-Length", 
-						new Long(image.getSizeBytes(size)).toString());
+				if(variant != null) {
+					httpResponse.setContentType(variant.getType());
+					httpResponse.setHeader(
+							"Content-Length", 
+							new Long(variant.getSizeBytes()).toString());
+				}
+				else {
+					httpResponse.setContentType(image.getType(size));
+					httpResponse.setHeader(
+							"Content-Length", 
+							new Long(image.getSizeBytes(size)).toString());
+				}
 				
 				// If available, set the token.
 				if(getUser() != null) {
@@ -159,7 +159,10 @@ import org.ohmage.service.ObserverServices;
 public class MobilityUploadRequest extends Request {
 	private static final Logger LOGGER = Logger.getLogger(MobilityUploadRequest.class);
 	
-	private static final String OBSERVER_ID = "edu.ucla.cens.Mobility";
+	/**
+	 * The ID of the observer under which Mobility points are stored.
+	 */
+	public static final String OBSERVER_ID = "edu.ucla.cens.Mobility";
 	private static final long OBSERVER_VERSION = 2012061300;
 
 	private static final String AUDIT_KEY_VALID_POINT_IDS = "accepted_point_id";
@@ -19,6 +19,7 @@ import org.codehaus.jackson.JsonGenerator.Feature;
 import org.codehaus.jackson.JsonProcessingException;
 import org.codehaus.jackson.map.MappingJsonFactory;
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.VersionStamps;
 import org.ohmage.domain.Observer;
 import org.ohmage.exception.InvalidRequestException;
 import org.ohmage.exception.ServiceException;
@@ -218,6 +219,11 @@ public class ObserverReadRequest extends Request {
 	public void service() {
 		LOGGER.info("Servicing an observer read request.");
 		
+		if(isNotModified(null, VersionStamps.Domain.OBSERVER)) {
+			LOGGER.info("The observers have not changed.");
+			return;
+		}
+		
 		try {
 			// Get all observers visible to the requesting user based on the
 			// parameters.
@@ -254,6 +260,11 @@ public class ObserverReadRequest extends Request {
 			return;
 		}
 		
+		// If the requester already has the response, don't send it again.
+		if(respondNotModified(httpResponse)) {
+			return;
+		}
+		
 		// Expire the response, but this may be a bad idea.
 		expireResponse(httpResponse);
 		
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request.observer;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.log4j.Logger;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.PreferenceCache;
+import org.ohmage.domain.Change;
+import org.ohmage.exception.CacheMissException;
+import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.change.ChangeReadRequest;
+import org.ohmage.service.ChangeServices;
+import org.ohmage.service.UserClassServices;
+import org.ohmage.service.UserServices;
+import org.ohmage.util.StringUtils;
+import org.ohmage.validator.ObserverValidators;
+import org.ohmage.validator.UserValidators;
+
+/**
+ * <p>Reads the changes to a user's data for a stream, across all of the
+ * observer's and stream's versions, after some position in the change feed.
+ * Reading another user's changes follows the same rules as reading their
+ * data with {@link StreamReadRequest}. Besides the parameters of
+ * {@link ChangeReadRequest}, this request takes:</p>
+ * <table border="1">
+ *   <tr>
+ *     <td>Parameter Name</td>
+ *     <td>Description</td>
+ *     <td>Required</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#OBSERVER_ID}</td>
+ *     <td>The observer's unique identifier.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#STREAM_ID}</td>
+ *     <td>The stream's unique identifier.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#USERNAME}</td>
+ *     <td>The username of the user whose changes are desired. If omitted,
+ *       the requesting user is used.</td>
+ *     <td>false</td>
+ *   </tr>
+ * </table>
+ *
+ * @author John Jenkins
+ */
+public class StreamChangesReadRequest extends ChangeReadRequest {
+	private static final Logger LOGGER =
+		Logger.getLogger(StreamChangesReadRequest.class);
+
+	private final String observerId;
+	private final String streamId;
+	private final String username;
+
+	/**
+	 * Creates a stream changes read request.
+	 *
+	 * @param httpRequest The HttpServletRequest with the parameters.
+	 *
+	 * @throws InvalidRequestException Thrown if the parameters cannot be
+	 * 								   parsed.
+	 *
+	 * @throws IOException There was an error reading from the request.
+	 */
+	public StreamChangesReadRequest(
+			final HttpServletRequest httpRequest)
+			throws IOException, InvalidRequestException {
+
+		super(httpRequest);
+
+		String tObserverId = null;
+		String tStreamId = null;
+		String tUsername = null;
+
+		if(! isFailed()) {
+			LOGGER.info("Creating a stream changes read request.");
+			String[] t;
+
+			try {
+				t = getParameterValues(InputKeys.USERNAME);
+				if(t.length > 1) {
+					throw new ValidationException(
+						ErrorCode.USER_INVALID_USERNAME,
+						"Multiple usernames were given: " +
+							InputKeys.USERNAME);
+				}
+				else if(t.length == 1) {
+					tUsername = UserValidators.validateUsername(t[0]);
+				}
+
+				t = getParameterValues(InputKeys.OBSERVER_ID);
+				if(t.length > 1) {
+					throw new ValidationException(
+						ErrorCode.OBSERVER_INVALID_ID,
+						"Multiple observer IDs were given: " +
+							InputKeys.OBSERVER_ID);
+				}
+				else if(t.length == 1) {
+					tObserverId =
+						ObserverValidators.validateObserverId(t[0]);
+				}
+				if(tObserverId == null) {
+					throw new ValidationException(
+						ErrorCode.OBSERVER_INVALID_ID,
+						"The observer's ID is missing.");
+				}
+
+				t = getParameterValues(InputKeys.STREAM_ID);
+				if(t.length > 1) {
+					throw new ValidationException(
+						ErrorCode.OBSERVER_INVALID_STREAM_ID,
+						"Multiple stream IDs were given: " +
+							InputKeys.STREAM_ID);
+				}
+				else if(t.length == 1) {
+					tStreamId = ObserverValidators.validateStreamId(t[0]);
+				}
+				if(tStreamId == null) {
+					throw new ValidationException(
+						ErrorCode.OBSERVER_INVALID_STREAM_ID,
+						"The stream ID is missing: " + InputKeys.STREAM_ID);
+				}
+			}
+			catch(ValidationException e) {
+				e.failRequest(this);
+				e.logException(LOGGER);
+			}
+		}
+
+		observerId = tObserverId;
+		streamId = tStreamId;
+		username = tUsername;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.request.change.ChangeReadRequest#getChanges(java.lang.Long, int)
+	 */
+	@Override
+	protected List<Change> getChanges(
+			final Long after,
+			final int numToReturn)
+			throws ServiceException {
+
+		String requester = getUser().getUsername();
+		if((username != null) && (! username.equals(requester))) {
+			try {
+				LOGGER.info("Checking if the user is an admin.");
+				UserServices.instance().verifyUserIsAdmin(requester);
+			}
+			catch(ServiceException notAdmin) {
+				LOGGER.info("The user is not an admin.");
+
+				LOGGER.info(
+					"Checking if reading stream data about another user is even allowed.");
+				boolean isPlausible;
+				try {
+					isPlausible =
+						StringUtils.decodeBoolean(
+							PreferenceCache.instance().lookup(
+								PreferenceCache.KEY_PRIVILEGED_USER_IN_CLASS_CAN_VIEW_MOBILITY_FOR_EVERYONE_IN_CLASS));
+				}
+				catch(CacheMissException e) {
+					throw new ServiceException(e);
+				}
+
+				if(isPlausible) {
+					LOGGER.info(
+						"Checking if the requester is allowed to read stream data about the user.");
+					UserClassServices
+						.instance()
+						.userIsPrivilegedInAnotherUserClass(
+							requester,
+							username);
+				}
+				else {
+					throw new ServiceException(
+						ErrorCode.OBSERVER_INSUFFICIENT_PERMISSIONS,
+						"This user is not allowed to query stream data about the requested user.");
+				}
+			}
+		}
+
+		LOGGER.info("Reading the stream changes.");
+		return
+			ChangeServices.instance().getStreamChanges(
+				observerId,
+				streamId,
+				(username == null) ? requester : username,
+				after,
+				numToReturn);
+	}
+}
@@ -29,9 +29,12 @@ import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.cache.PreferenceCache;
 import org.ohmage.domain.DataStream;
+import org.ohmage.domain.DataStreamAggregator;
 import org.ohmage.domain.Location;
 import org.ohmage.domain.Location.LocationColumnKey;
+import org.ohmage.domain.LttbDownsampler;
 import org.ohmage.domain.Observer;
+import org.ohmage.domain.TimeBucketAggregator;
 import org.ohmage.exception.CacheMissException;
 import org.ohmage.exception.DomainException;
 import org.ohmage.exception.InvalidRequestException;
@@ -118,6 +121,37 @@ import org.ohmage.validator.UserValidators;
  *       returned after skipping. This is used to facilitate paging.</td>
  *     <td>false</td>
  *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#BUCKET_WIDTH}</td>
+ *     <td>Instead of returning the points, divides the range between the
+ *       start and end dates, which are then required, into buckets of this
+ *       many milliseconds and returns one summary of the numeric fields per
+ *       non-empty bucket. The column list limits which numeric fields are
+ *       summarized. Paging does not apply. This may not be combined with
+ *       {@value org.ohmage.request.InputKeys#DOWNSAMPLE}.</td>
+ *     <td>false</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#AGGREGATE_FUNCTIONS}</td>
+ *     <td>The functions to compute for each numeric field in each bucket,
+ *       any of "count", "min", "max", "mean", "sum", "first", and "last".
+ *       The default is "mean".</td>
+ *     <td>false</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#DOWNSAMPLE}</td>
+ *     <td>Instead of returning the points, returns at most this many of them
+ *       that best preserve the shape of one numeric field between the start
+ *       and end dates, which are then required. Paging does not apply.</td>
+ *     <td>false</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#DOWNSAMPLE_FIELD}</td>
+ *     <td>The numeric field, in the same form as a column, with which to
+ *       downsample. The default is the first numeric field in the stream's
+ *       schema that is in the column list.</td>
+ *     <td>false</td>
+ *   </tr>
  * </table>
  * 
  * @author John Jenkins
@@ -278,6 +312,197 @@ public class StreamReadRequest
 		}
 	}
 	
+	/**
+	 * The parameters for reducing the data to a bounded number of results
+	 * in a single pass instead of paging through it.
+	 *
+	 * @author John Jenkins
+	 */
+	private static final class Aggregation {
+		private final Long bucketWidth;
+		private final List<TimeBucketAggregator.Function> functions;
+		private final Integer downsample;
+		private final String downsampleField;
+		
+		/**
+		 * Creates the aggregation parameters.
+		 * 
+		 * @param bucketWidth The width of the buckets or null if the data is
+		 * 					  being downsampled.
+		 * 
+		 * @param functions The functions to compute for each bucket.
+		 * 
+		 * @param downsample The number of points to downsample to or null if
+		 * 					 the data is being bucketed.
+		 * 
+		 * @param downsampleField The field with which to downsample or null
+		 * 						  to use the default.
+		 */
+		private Aggregation(
+				final Long bucketWidth,
+				final List<TimeBucketAggregator.Function> functions,
+				final Integer downsample,
+				final String downsampleField) {
+			
+			this.bucketWidth = bucketWidth;
+			this.functions = functions;
+			this.downsample = downsample;
+			this.downsampleField = downsampleField;
+		}
+		
+		/**
+		 * Validates the aggregation parameters of a request.
+		 * 
+		 * @param request The request whose parameters are validated.
+		 * 
+		 * @param startDate The request's start date.
+		 * 
+		 * @param endDate The request's end date.
+		 * 
+		 * @return The aggregation parameters or null if the data should not
+		 * 		   be aggregated.
+		 * 
+		 * @throws ValidationException A parameter was invalid or the
+		 * 							   parameters were inconsistent.
+		 */
+		private static Aggregation parse(
+				final StreamReadRequest request,
+				final DateTime startDate,
+				final DateTime endDate)
+				throws ValidationException {
+			
+			Long tBucketWidth = null;
+			List<TimeBucketAggregator.Function> tFunctions = null;
+			Integer tDownsample = null;
+			String tDownsampleField = null;
+			
+			String[] t = request.getParameterValues(InputKeys.BUCKET_WIDTH);
+			if(t.length > 1) {
+				throw new ValidationException(
+					ErrorCode.OBSERVER_INVALID_BUCKET_WIDTH,
+					"Multiple bucket widths were given: " + 
+						InputKeys.BUCKET_WIDTH);
+			}
+			else if(t.length == 1) {
+				tBucketWidth = ObserverValidators.validateBucketWidth(t[0]);
+			}
+			
+			t = request.getParameterValues(InputKeys.AGGREGATE_FUNCTIONS);
+			if(t.length > 1) {
+				throw new ValidationException(
+					ErrorCode.OBSERVER_INVALID_AGGREGATE_FUNCTIONS,
+					"Multiple aggregate function lists were given: " + 
+						InputKeys.AGGREGATE_FUNCTIONS);
+			}
+			else if(t.length == 1) {
+				tFunctions = 
+					ObserverValidators.validateAggregateFunctions(t[0]);
+			}
+			
+			t = request.getParameterValues(InputKeys.DOWNSAMPLE);
+			if(t.length > 1) {
+				throw new ValidationException(
+					ErrorCode.OBSERVER_INVALID_DOWNSAMPLE,
+					"Multiple downsample sizes were given: " + 
+						InputKeys.DOWNSAMPLE);
+			}
+			else if(t.length == 1) {
+				tDownsample = 
+					ObserverValidators
+						.validateDownsample(t[0], MAX_NUMBER_TO_RETURN);
+			}
+			
+			t = request.getParameterValues(InputKeys.DOWNSAMPLE_FIELD);
+			if(t.length > 1) {
+				throw new ValidationException(
+					ErrorCode.OBSERVER_INVALID_AGGREGATION_FIELD,
+					"Multiple downsample fields were given: " + 
+						InputKeys.DOWNSAMPLE_FIELD);
+			}
+			else if(t.length == 1) {
+				tDownsampleField = 
+					ObserverValidators.validateDownsampleField(t[0]);
+			}
+			
+			if((tBucketWidth == null) && (tDownsample == null)) {
+				if(tFunctions != null) {
+					throw new ValidationException(
+						ErrorCode.OBSERVER_INVALID_AGGREGATE_FUNCTIONS,
+						"Aggregate functions were given without a bucket width: " +
+							InputKeys.BUCKET_WIDTH);
+				}
+				if(tDownsampleField != null) {
+					throw new ValidationException(
+						ErrorCode.OBSERVER_INVALID_AGGREGATION_FIELD,
+						"A downsample field was given without a downsample size: " +
+							InputKeys.DOWNSAMPLE);
+				}
+				
+				return null;
+			}
+			else if((tBucketWidth != null) && (tDownsample != null)) {
+				throw new ValidationException(
+					ErrorCode.OBSERVER_INVALID_DOWNSAMPLE,
+					"The data may be bucketed or downsampled, but not both.");
+			}
+			
+			if((startDate == null) || (endDate == null)) {
+				throw new ValidationException(
+					ErrorCode.SERVER_INVALID_DATE,
+					"Both a start and end date are required to aggregate data.");
+			}
+			else if(endDate.isBefore(startDate)) {
+				throw new ValidationException(
+					ErrorCode.SERVER_INVALID_DATE,
+					"The end date is before the start date.");
+			}
+			
+			if(tBucketWidth != null) {
+				long numBuckets;
+				try {
+					numBuckets = 
+						DataStreamAggregator.getNumBuckets(
+							startDate.getMillis(), 
+							endDate.getMillis(), 
+							tBucketWidth);
+				}
+				catch(DomainException e) {
+					throw new ValidationException(
+						ErrorCode.OBSERVER_INVALID_BUCKET_WIDTH,
+						e.getMessage(),
+						e);
+				}
+				
+				if(numBuckets > MAX_NUMBER_TO_RETURN) {
+					throw new ValidationException(
+						ErrorCode.OBSERVER_INVALID_BUCKET_WIDTH,
+						"The bucket width would create more than the allowed maximum number of buckets (" +
+							MAX_NUMBER_TO_RETURN +
+							"): " +
+							numBuckets);
+				}
+				
+				if(tFunctions == null) {
+					tFunctions = 
+						Collections.singletonList(
+							TimeBucketAggregator.Function.MEAN);
+				}
+			}
+			else if(tFunctions != null) {
+				throw new ValidationException(
+					ErrorCode.OBSERVER_INVALID_AGGREGATE_FUNCTIONS,
+					"Aggregate functions do not apply to downsampling.");
+			}
+			
+			return 
+				new Aggregation(
+					tBucketWidth, 
+					tFunctions, 
+					tDownsample, 
+					tDownsampleField);
+		}
+	}
+	
 	// The username of the user whose data is being read.
 	private final String username;
 	
@@ -301,12 +526,19 @@ public class StreamReadRequest
 	private final long numToSkip;
 	private final long numToReturn;
 	
+	// Optional parameters that reduce the data instead of paging it.
+	private final Aggregation aggregation;
+	
 	// The stream created during the servicing of the request.
 	private Observer.Stream stream;
 	
 	// The collection results from this request.
 	private final List<DataStream> results;
 	
+	// The reduced results from this request if it is being aggregated.
+	private TimeBucketAggregator bucketAggregator = null;
+	private LttbDownsampler downsampler = null;
+	
 	/**
 	 * Creates a stream read request from the given parameters.
 	 * 
@@ -419,6 +651,18 @@ public class StreamReadRequest
 			this.numToReturn = numToReturn;
 		}
 		
+		Aggregation tAggregation = null;
+		if(! isFailed()) {
+			try {
+				tAggregation = Aggregation.parse(this, startDate, endDate);
+			}
+			catch(ValidationException e) {
+				e.failRequest(this);
+				e.logException(LOGGER);
+			}
+		}
+		aggregation = tAggregation;
+		
 		results = new LinkedList<DataStream>();
 	}
 	
@@ -449,6 +693,7 @@ public class StreamReadRequest
 		boolean tChronological = true;
 		long tNumToSkip = 0;
 		long tNumToReturn = MAX_NUMBER_TO_RETURN;
+		Aggregation tAggregation = null;
 		
 		if(! isFailed()) {
 			LOGGER.info("Creating a stream read request.");
@@ -600,6 +845,8 @@ public class StreamReadRequest
 						ObserverValidators
 							.validateNumToReturn(t[0], MAX_NUMBER_TO_RETURN);
 				}
+				
+				tAggregation = Aggregation.parse(this, tStartDate, tEndDate);
 			}
 			catch(ValidationException e) {
 				e.failRequest(this);
@@ -618,6 +865,7 @@ public class StreamReadRequest
 		chronological = tChronological;
 		numToSkip = tNumToSkip;
 		numToReturn = tNumToReturn;
+		aggregation = tAggregation;
 		
 		results = new LinkedList<DataStream>();
 	}
@@ -638,6 +886,13 @@ public class StreamReadRequest
 	 */
 	@Override
 	public long getNumDataPoints() {
+		if(bucketAggregator != null) {
+			return bucketAggregator.size();
+		}
+		else if(downsampler != null) {
+			return downsampler.size();
+		}
+		
 		return results.size();
 	}
 
@@ -706,6 +961,11 @@ public class StreamReadRequest
 				return;
 			}
 			
+			if(aggregation != null) {
+				aggregate();
+				return;
+			}
+			
 			LOGGER.info("Gathering the data.");
 			results.addAll(
 				ObserverServices.instance().getStreamData(
@@ -812,11 +1072,12 @@ public class StreamReadRequest
 			generator.writeObjectFieldStart("metadata");
 			
 			// Add the count to the meta-data.
-			generator.writeNumberField("count", results.size());
+			generator.writeNumberField("count", getNumDataPoints());
 
 			// Get the URL that will be the base for the "previous" and "next"
-			// URLs.
-			StringBuilder prevAndNextUrlBuilder = buildNextAndPrevUrl();
+			// URLs. Aggregated results are not paged.
+			StringBuilder prevAndNextUrlBuilder = 
+				(aggregation == null) ? buildNextAndPrevUrl() : null;
 			
 			// If the number of entries skipped was non-zero, add a previous
 			// pointer.
@@ -883,49 +1144,13 @@ public class StreamReadRequest
 			
 			// Add a "data" key that is an array of the results.
 			generator.writeArrayFieldStart("data");
-			for(DataStream dataStream : results) {
-				// Begin this data stream.
-				generator.writeStartObject();
-				
-				// Write the meta-data.
-				DataStream.MetaData metaData = dataStream.getMetaData();
-				if(metaData != null) {
-					generator.writeObjectFieldStart("metadata");
-					
-					String id = metaData.getId();
-					if(id != null) {
-						generator.writeStringField("id", id);
-					}
-					
-					DateTime timestamp = metaData.getTimestamp();
-					if(timestamp != null) {
-						generator.writeStringField(
-							"timestamp",
-							ISODateTimeFormat.dateTime().print(timestamp));
-					}
-					
-					Location location = metaData.getLocation();
-					if(location != null) {
-						generator.writeObjectFieldStart("location");
-						location.streamJson(
-							generator, 
-							false, 
-							LocationColumnKey.ALL_COLUMNS);
-						generator.writeEndObject();
-					}
-					
-					generator.writeEndObject();
+			if(aggregation == null) {
+				for(DataStream dataStream : results) {
+					writeDataStream(generator, dataStream);
 				}
-				
-				// Write the data.
-				handleGeneric(
-					generator,
-					dataStream.getData(), 
-					columnsRoot, 
-					"data");
-				
-				// End this data stream.
-				generator.writeEndObject();
+			}
+			else {
+				writeAggregatedData(generator, columnsRoot);
 			}
 			generator.writeEndArray();
 			
@@ -973,7 +1198,324 @@ public class StreamReadRequest
 			final ColumnNode<String> columns)
 			throws JsonGenerationException, IOException, DomainException {
 		
-		writeData(generator, columns);
+		if(aggregation == null) {
+			writeData(generator, columns);
+		}
+		else {
+			writeAggregatedData(generator, columns);
+		}
+	}
+	
+	/**
+	 * Reduces the requested range of data with the requested aggregation in
+	 * a single pass. The user has already been authorized and the stream has
+	 * already been found.
+	 * 
+	 * @throws ServiceException The stream has no suitable numeric fields or
+	 * 							there was an error reading the data.
+	 */
+	private void aggregate() throws ServiceException {
+		LOGGER.info("Finding the numeric fields to aggregate.");
+		List<String> fields = new LinkedList<String>();
+		try {
+			for(String field : stream.getNumericFields()) {
+				if(isSelected(field, columnsRoot)) {
+					fields.add(field);
+				}
+			}
+		}
+		catch(DomainException e) {
+			throw new ServiceException(e);
+		}
+		
+		String owner = (username == null) ? getUser().getUsername() : username;
+		try {
+			if(aggregation.bucketWidth != null) {
+				if(fields.isEmpty()) {
+					throw new ServiceException(
+						ErrorCode.OBSERVER_INVALID_AGGREGATION_FIELD,
+						"The stream has no numeric fields to aggregate.");
+				}
+				
+				LOGGER.info("Aggregating the data.");
+				bucketAggregator = 
+					new TimeBucketAggregator(
+						startDate.getMillis(),
+						endDate.getMillis(),
+						aggregation.bucketWidth,
+						fields,
+						aggregation.functions);
+				ObserverServices.instance().aggregateStreamData(
+					stream, 
+					owner, 
+					observerId, 
+					observerVersion, 
+					startDate, 
+					endDate, 
+					bucketAggregator);
+			}
+			else {
+				String field = aggregation.downsampleField;
+				if(field == null) {
+					if(fields.isEmpty()) {
+						throw new ServiceException(
+							ErrorCode.OBSERVER_INVALID_AGGREGATION_FIELD,
+							"The stream has no numeric fields with which to downsample.");
+					}
+					field = fields.get(0);
+				}
+				else if(! fields.contains(field)) {
+					throw new ServiceException(
+						ErrorCode.OBSERVER_INVALID_AGGREGATION_FIELD,
+						"The downsample field is not a numeric field in the requested columns: " +
+							field);
+				}
+				
+				LOGGER.info("Downsampling the data.");
+				downsampler = 
+					new LttbDownsampler(
+						startDate.getMillis(),
+						endDate.getMillis(),
+						aggregation.downsample,
+						field);
+				ObserverServices.instance().aggregateStreamData(
+					stream, 
+					owner, 
+					observerId, 
+					observerVersion, 
+					startDate, 
+					endDate, 
+					downsampler);
+			}
+		}
+		catch(DomainException e) {
+			throw new ServiceException(e);
+		}
+		LOGGER.info("Returning " + getNumDataPoints() + " aggregated results.");
+	}
+	
+	/**
+	 * Writes the aggregated results as the elements of an array. The
+	 * generator must already have the array open.
+	 * 
+	 * @param generator The generator to write to.
+	 * 
+	 * @param columns The columns to which downsampled points' data is limited.
+	 * 
+	 * @throws IOException There was an error writing the results.
+	 * 
+	 * @throws DomainException One of the downsampled points could not be
+	 * 						   written.
+	 */
+	private void writeAggregatedData(
+			final JsonGenerator generator,
+			final ColumnNode<String> columns)
+			throws IOException, DomainException {
+		
+		if(bucketAggregator != null) {
+			bucketAggregator.write(generator, startDate.getZone());
+		}
+		else if(downsampler != null) {
+			for(DataStream dataStream : downsampler.getPoints()) {
+				generator.writeStartObject();
+				writeMetaData(generator, dataStream.getMetaData());
+				writeData(generator, dataStream, columns);
+				generator.writeEndObject();
+			}
+		}
+	}
+	
+	/**
+	 * Checks whether a field is within the requested columns.
+	 * 
+	 * @param field The path to the field, with its keys separated by ':'s.
+	 * 
+	 * @param columns The requested columns.
+	 * 
+	 * @return True if all of the columns were requested or the field or one
+	 * 		   of its ancestors was requested; false, otherwise.
+	 */
+	private static boolean isSelected(
+			final String field,
+			final ColumnNode<String> columns) {
+		
+		ColumnNode<String> node = columns;
+		for(String key : DataStreamAggregator.splitPath(field)) {
+			if(node.isLeaf()) {
+				return true;
+			}
+			
+			node = node.getChild(key);
+			if(node == null) {
+				return false;
+			}
+		}
+		
+		return node.isLeaf();
+	}
+	
+	/**
+	 * Writes every point in the requested range as a JSON array, ignoring the
+	 * number of points to return. The points are read from the database in a
+	 * single pass and written as they are read, so they are never all in
+	 * memory. This should only be called after this request has been 
+	 * successfully serviced.
+	 * 
+	 * @param generator The generator to which the array is written.
+	 * 
+	 * @return The number of points that were written.
+	 * 
+	 * @throws ServiceException There was an error reading or writing the
+	 * 							points.
+	 * 
+	 * @throws IOException There was an error writing the points.
+	 * 
+	 * @throws DomainException One of the points could not be written.
+	 */
+	public long writeAll(
+			final JsonGenerator generator)
+			throws ServiceException, IOException, DomainException {
+		
+		generator.writeStartArray();
+		
+		if(aggregation != null) {
+			writeAggregatedData(generator, columnsRoot);
+			generator.writeEndArray();
+			
+			return getNumDataPoints();
+		}
+		
+		DataStreamWriter writer = new DataStreamWriter(generator);
+		if(stream != null) {
+			ObserverServices.instance().readAllStreamData(
+				stream,
+				(username == null) ? getUser().getUsername() : username,
+				observerId,
+				observerVersion,
+				startDate,
+				endDate,
+				chronological,
+				numToSkip,
+				writer);
+		}
+		
+		generator.writeEndArray();
+		
+		return writer.count;
+	}
+	
+	/**
+	 * Writes each point as it is read and counts them.
+	 *
+	 * @author John Jenkins
+	 */
+	private final class DataStreamWriter implements DataStream.Handler {
+		private final JsonGenerator generator;
+		private long count = 0;
+		
+		/**
+		 * Creates a writer.
+		 * 
+		 * @param generator The generator to which the points are written.
+		 */
+		private DataStreamWriter(final JsonGenerator generator) {
+			this.generator = generator;
+		}
+		
+		/**
+		 * Writes the point.
+		 */
+		@Override
+		public void handle(
+				final DataStream dataStream)
+				throws DomainException {
+			
+			try {
+				writeDataStream(generator, dataStream);
+			}
+			catch(IOException e) {
+				throw new DomainException(
+					"The point could not be written.",
+					e);
+			}
+			count++;
+		}
+	}
+	
+	/**
+	 * Writes a single point, its meta-data and its data, as a JSON object.
+	 * 
+	 * @param generator The generator to which the point is written.
+	 * 
+	 * @param dataStream The point.
+	 * 
+	 * @throws IOException There was an error writing the point.
+	 * 
+	 * @throws DomainException The point's data could not be written.
+	 */
+	private void writeDataStream(
+			final JsonGenerator generator,
+			final DataStream dataStream)
+			throws IOException, DomainException {
+		
+		// Begin this data stream.
+		generator.writeStartObject();
+		
+		// Write the meta-data.
+		writeMetaData(generator, dataStream.getMetaData());
+		
+		// Write the data.
+		writeData(generator, dataStream, columnsRoot);
+		
+		// End this data stream.
+		generator.writeEndObject();
+	}
+	
+	/**
+	 * Writes a point's meta-data, if it has any, as the "metadata" field.
+	 * 
+	 * @param generator The generator to which the meta-data is written.
+	 * 
+	 * @param metaData The point's meta-data, which may be null.
+	 * 
+	 * @throws IOException There was an error writing the meta-data.
+	 * 
+	 * @throws DomainException The location could not be written.
+	 */
+	private static void writeMetaData(
+			final JsonGenerator generator,
+			final DataStream.MetaData metaData)
+			throws IOException, DomainException {
+		
+		if(metaData == null) {
+			return;
+		}
+		
+		generator.writeObjectFieldStart("metadata");
+		
+		String id = metaData.getId();
+		if(id != null) {
+			generator.writeStringField("id", id);
+		}
+		
+		DateTime timestamp = metaData.getTimestamp();
+		if(timestamp != null) {
+			generator.writeStringField(
+				"timestamp",
+				ISODateTimeFormat.dateTime().print(timestamp));
+		}
+		
+		Location location = metaData.getLocation();
+		if(location != null) {
+			generator.writeObjectFieldStart("location");
+			location.streamJson(
+				generator, 
+				false, 
+				LocationColumnKey.ALL_COLUMNS);
+			generator.writeEndObject();
+		}
+		
+		generator.writeEndObject();
 	}
 	
 	/**
@@ -1136,14 +1678,44 @@ public class StreamReadRequest
 			}
 			
 			// Write the data.
+			writeData(generator, dataStream, columns);
+			
+			// End this data stream.
+			generator.writeEndObject();
+		}
+	}
+	
+	/**
+	 * Writes a data point's data as the "data" field. If all of the columns
+	 * were requested, the data is transcoded directly from its stored form;
+	 * otherwise, it is decoded so that the columns may be selected.
+	 * 
+	 * @param generator The generator to write to.
+	 * 
+	 * @param dataStream The data point whose data should be written.
+	 * 
+	 * @param columns The columns to restrict the output.
+	 * 
+	 * @throws IOException Could not write to the output stream.
+	 * 
+	 * @throws DomainException The stored data could not be decoded.
+	 */
+	private static void writeData(
+			final JsonGenerator generator,
+			final DataStream dataStream,
+			final ColumnNode<String> columns)
+			throws IOException, DomainException {
+		
+		if(columns.isLeaf()) {
+			generator.writeFieldName("data");
+			dataStream.writeData(generator);
+		}
+		else {
 			handleGeneric(
 				generator,
 				dataStream.getData(), 
 				columns, 
 				"data");
-			
-			// End this data stream.
-			generator.writeEndObject();
 		}
 	}
 	
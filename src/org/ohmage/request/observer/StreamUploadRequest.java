@@ -15,7 +15,6 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
-import org.ohmage.domain.DataStream;
 import org.ohmage.domain.Observer;
 import org.ohmage.exception.InvalidRequestException;
 import org.ohmage.exception.ServiceException;
@@ -24,6 +23,7 @@ import org.ohmage.request.InputKeys;
 import org.ohmage.request.UserRequest;
 import org.ohmage.service.ObserverServices;
 import org.ohmage.service.ObserverServices.InvalidPoint;
+import org.ohmage.service.UserActivityServices;
 import org.ohmage.util.StringUtils;
 import org.ohmage.validator.ObserverValidators;
 
@@ -301,34 +301,51 @@ public class StreamUploadRequest extends UserRequest {
 			// Get the first observer which should be the most recent.
 			Observer observer = observers.iterator().next();
 			
-			LOGGER.info("Validating the uploaded data.");
-			Collection<DataStream> dataStreams =
-				ObserverServices
-					.instance()
-					.validateData(observer, data, invalidPoints);
-			
+			LOGGER.info("Validating and storing the uploaded data.");
+			ObserverServices.UploadResult uploadResult;
 			try {
-				data.close();
+				uploadResult =
+					ObserverServices
+						.instance()
+						.uploadData(
+							getUser().getUsername(), 
+							observer,
+							data,
+							invalidPoints);
 			}
-			catch(IOException e) {
-				LOGGER.info("Error closing the data.", e);
+			finally {
+				try {
+					data.close();
+				}
+				catch(IOException e) {
+					LOGGER.info("Error closing the data.", e);
+				}
 			}
+			numDuplicatePoints = uploadResult.getNumDuplicates();
+			numValidPoints = uploadResult.getNumStored() + numDuplicatePoints;
+			LOGGER.info(
+				"Stored " + 
+					uploadResult.getNumStored() + 
+					" points and pruned out " + 
+					numDuplicatePoints + 
+					" duplicates.");
 			
-			long numPoints = numValidPoints = dataStreams.size();
-			LOGGER.info("Pruning out the duplicates from previous uploads.");
-			ObserverServices.instance().removeDuplicates(
-				getUser().getUsername(), 
-				observerId,
-				dataStreams);
-			numDuplicatePoints = numPoints - dataStreams.size();
-			LOGGER.info("Pruned out " + numDuplicatePoints + " points.");
-			numPoints = dataStreams.size();
-			
-			LOGGER.info("Storing the uploaded data: " + numPoints + " points");
-			ObserverServices.instance().storeData(
-				getUser().getUsername(), 
-				observer,
-				dataStreams);
+			// Even if the upload failed, the committed chunks are stored, so
+			// they are summarized and their invalid points are kept. The data
+			// is already stored, so a failure to update the summary shouldn't
+			// fail the upload.
+			LOGGER.info("Updating the user's activity summary.");
+			try {
+				UserActivityServices.instance().recordStreamActivity(
+					getUser().getUsername(),
+					observerId,
+					uploadResult.getLastStoredMillis(),
+					uploadResult.getNumStored(),
+					uploadResult.getNumStoredWithLocation());
+			}
+			catch(ServiceException e) {
+				e.logException(LOGGER);
+			}
 			
 			if(preserveInvalidPoints) {
 				LOGGER
@@ -343,6 +360,10 @@ public class StreamUploadRequest extends UserRequest {
 						observer,
 						invalidPoints);
 			}
+			
+			if(uploadResult.getFailure() != null) {
+				throw uploadResult.getFailure();
+			}
 		}
 		catch(ServiceException e) {
 			e.failRequest(this);
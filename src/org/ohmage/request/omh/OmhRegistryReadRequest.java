@@ -20,6 +20,7 @@ import org.codehaus.jackson.JsonGenerator.Feature;
 import org.codehaus.jackson.JsonProcessingException;
 import org.codehaus.jackson.map.MappingJsonFactory;
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.VersionStamps;
 import org.ohmage.domain.CampaignPayloadId;
 import org.ohmage.domain.Observer.Stream;
 import org.ohmage.domain.ObserverPayloadId;
@@ -160,6 +161,15 @@ public class OmhRegistryReadRequest extends Request {
 	public void service() {
 		LOGGER.info("Servicing an OMH registry read request.");
 		
+		if(isNotModified(
+				null, 
+				VersionStamps.Domain.OBSERVER, 
+				VersionStamps.Domain.CAMPAIGN)) {
+			
+			LOGGER.info("The registry has not changed.");
+			return;
+		}
+		
 		try {
 			// If the user isn't specifically asking for campaigns, then either
 			// they are asking for a specific observer or they want everything 
@@ -264,6 +274,11 @@ public class OmhRegistryReadRequest extends Request {
 			super.respond(httpRequest, httpResponse, null);
 			return;
 		}
+		
+		// If the requester already has the response, don't send it again.
+		if(respondNotModified(httpResponse)) {
+			return;
+		}
 
 		// Expire the response, but this may be a bad idea.
 		expireResponse(httpResponse);
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request.survey;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.log4j.Logger;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.Change;
+import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.change.ChangeReadRequest;
+import org.ohmage.service.CampaignServices;
+import org.ohmage.service.ChangeServices;
+import org.ohmage.service.UserCampaignServices;
+import org.ohmage.service.UserServices;
+import org.ohmage.validator.CampaignValidators;
+
+/**
+ * <p>Reads the changes to a campaign's survey responses after some position
+ * in the change feed. Admins and the campaign's supervisors receive the
+ * changes to every user's responses; all other members of the campaign only
+ * receive the changes to their own responses. Besides the parameters of
+ * {@link ChangeReadRequest}, this request takes:</p>
+ * <table border="1">
+ *   <tr>
+ *     <td>Parameter Name</td>
+ *     <td>Description</td>
+ *     <td>Required</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CAMPAIGN_URN}</td>
+ *     <td>The campaign's unique identifier.</td>
+ *     <td>true</td>
+ *   </tr>
+ * </table>
+ *
+ * @author John Jenkins
+ */
+public class SurveyResponseChangesReadRequest extends ChangeReadRequest {
+	private static final Logger LOGGER =
+		Logger.getLogger(SurveyResponseChangesReadRequest.class);
+
+	private final String campaignId;
+
+	/**
+	 * Creates a survey response changes read request.
+	 *
+	 * @param httpRequest The HttpServletRequest with the parameters.
+	 *
+	 * @throws InvalidRequestException Thrown if the parameters cannot be
+	 * 								   parsed.
+	 *
+	 * @throws IOException There was an error reading from the request.
+	 */
+	public SurveyResponseChangesReadRequest(
+			final HttpServletRequest httpRequest)
+			throws IOException, InvalidRequestException {
+
+		super(httpRequest);
+
+		String tCampaignId = null;
+
+		if(! isFailed()) {
+			LOGGER.info("Creating a survey response changes read request.");
+
+			try {
+				String[] t = getParameterValues(InputKeys.CAMPAIGN_URN);
+				if(t.length > 1) {
+					throw new ValidationException(
+						ErrorCode.CAMPAIGN_INVALID_ID,
+						"Multiple campaign IDs were given: " +
+							InputKeys.CAMPAIGN_URN);
+				}
+				else if(t.length == 1) {
+					tCampaignId = CampaignValidators.validateCampaignId(t[0]);
+				}
+				if(tCampaignId == null) {
+					throw new ValidationException(
+						ErrorCode.CAMPAIGN_INVALID_ID,
+						"The campaign ID is missing: " +
+							InputKeys.CAMPAIGN_URN);
+				}
+			}
+			catch(ValidationException e) {
+				e.failRequest(this);
+				e.logException(LOGGER);
+			}
+		}
+
+		campaignId = tCampaignId;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.request.change.ChangeReadRequest#getChanges(java.lang.Long, int)
+	 */
+	@Override
+	protected List<Change> getChanges(
+			final Long after,
+			final int numToReturn)
+			throws ServiceException {
+
+		String requester = getUser().getUsername();
+		String owner = null;
+
+		if(UserServices.instance().isUserAnAdmin(requester)) {
+			LOGGER.info("Verifying that the campaign exists.");
+			CampaignServices.instance()
+				.checkCampaignExistence(campaignId, true);
+		}
+		else {
+			LOGGER.info(
+				"Verifying that the campaign exists and the user belongs.");
+			UserCampaignServices.instance()
+				.campaignExistsAndUserBelongs(campaignId, requester);
+
+			try {
+				LOGGER.info("Checking if the user is a supervisor.");
+				UserCampaignServices.instance()
+					.verifyUserCanReadUsersInfoInCampaign(
+						requester,
+						campaignId);
+			}
+			catch(ServiceException notSupervisor) {
+				LOGGER.info(
+					"The user is not a supervisor, so only their own changes will be returned.");
+				owner = requester;
+			}
+		}
+
+		LOGGER.info("Reading the survey response changes.");
+		return
+			ChangeServices.instance().getSurveyResponseChanges(
+				campaignId,
+				owner,
+				after,
+				numToReturn);
+	}
+}
@@ -138,7 +138,9 @@ public class SurveyResponseDeleteRequest extends UserRequest {
 			}
 			
 			LOGGER.info("Deleting the survey response.");
-			SurveyResponseServices.instance().deleteSurveyResponse(surveyResponseId);
+			SurveyResponseServices.instance().deleteSurveyResponse(
+					getUser().getUsername(), 
+					surveyResponseId);
 		}
 		catch(ServiceException e) {
 			e.failRequest(this);
@@ -17,6 +17,7 @@ package org.ohmage.request.survey;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
@@ -110,6 +111,16 @@ import org.ohmage.validator.SurveyResponseValidators;
 public class SurveyResponseFunctionReadRequest extends UserRequest {
 	private static final Logger LOGGER = Logger.getLogger(SurveyResponseFunctionReadRequest.class);
 	
+	/**
+	 * The only columns the functions need, so that nothing else is read.
+	 */
+	private static final Collection<SurveyResponse.ColumnKey> FUNCTION_COLUMNS =
+			Collections.unmodifiableList(
+					Arrays.asList(
+							SurveyResponse.ColumnKey.SURVEY_PRIVACY_STATE,
+							SurveyResponse.ColumnKey.CONTEXT_EPOCH_MILLIS,
+							SurveyResponse.ColumnKey.CONTEXT_TIMEZONE));
+	
 	private final String campaignId;
 	private final Function functionId;
 	private final Collection<FunctionPrivacyStateItem> privacyStateGroupItems;
@@ -274,6 +285,7 @@ public class SurveyResponseFunctionReadRequest extends UserRequest {
 					null, 
 					null,
 					null,
+					FUNCTION_COLUMNS,
 					null,
 					0,
 					Long.MAX_VALUE,
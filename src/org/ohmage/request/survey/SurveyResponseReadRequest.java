@@ -49,8 +49,10 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.cache.PreferenceCache;
+import org.ohmage.domain.Annotation;
 import org.ohmage.domain.Location;
 import org.ohmage.domain.Location.LocationColumnKey;
+import org.ohmage.domain.PromptResponseAnnotation;
 import org.ohmage.domain.campaign.Prompt;
 import org.ohmage.domain.campaign.Prompt.LabelValuePair;
 import org.ohmage.domain.campaign.PromptResponse;
@@ -73,10 +75,14 @@ import org.ohmage.domain.campaign.response.SingleChoicePromptResponse;
 import org.ohmage.exception.CacheMissException;
 import org.ohmage.exception.DomainException;
 import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.exception.ServiceException;
 import org.ohmage.exception.ValidationException;
 import org.ohmage.request.InputKeys;
 import org.ohmage.request.observer.StreamReadRequest.ColumnNode;
 import org.ohmage.request.omh.OmhReadResponder;
+import org.ohmage.service.UserAnnotationServices;
+import org.ohmage.service.UserCampaignServices;
+import org.ohmage.service.UserServices;
 import org.ohmage.util.DateTimeUtils;
 import org.ohmage.validator.SurveyResponseValidators;
 
@@ -198,6 +204,15 @@ import org.ohmage.validator.SurveyResponseValidators;
  *       </td>
  *     <td>false</td>
  *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#INCLUDE_ANNOTATIONS}</td>
+ *     <td>For {@value #_OUTPUT_FORMAT_JSON_ROWS} output, whether to include
+ *     the annotations on each survey response and on its prompt responses.
+ *     The annotations for the whole page are read at once, and only
+ *     supervisors in the campaign, or admins, may read them. The default is
+ *     "false".</td>
+ *     <td>false</td>
+ *   </tr>
  * </table>
  * 
  * @author Joshua Selsky
@@ -211,6 +226,12 @@ public final class SurveyResponseReadRequest
 	
 	private static final JsonFactory JSON_FACTORY = new MappingJsonFactory();
 	
+	/**
+	 * The number of survey responses whose annotations are read together 
+	 * when every survey response is written.
+	 */
+	private static final int WRITE_ALL_BATCH_SIZE = 100;
+	
 	/**
 	 * The, optional, additional JSON key associated with a prompt responses in
 	 * the 
@@ -259,6 +280,28 @@ public final class SurveyResponseReadRequest
 	 * @see org.ohmage.request.InputKeys#COLLAPSE
 	 */
 	public static final String JSON_KEY_COUNT = "count";
+	/**
+	 * The JSON key associated with every record in
+	 * {@link org.ohmage.domain.campaign.SurveyResponse.OutputFormat#JSON_ROWS JSON_ROWS}
+	 * output if the input parameter
+	 * {@link org.ohmage.request.InputKeys#INCLUDE_ANNOTATIONS include_annotations}
+	 * is true. Its value is an object of the survey response's annotations
+	 * keyed by their unique identifiers.
+	 * 
+	 * @see org.ohmage.request.InputKeys#INCLUDE_ANNOTATIONS
+	 */
+	public static final String JSON_KEY_ANNOTATIONS = "annotations";
+	/**
+	 * The JSON key associated with every record in
+	 * {@link org.ohmage.domain.campaign.SurveyResponse.OutputFormat#JSON_ROWS JSON_ROWS}
+	 * output if the input parameter
+	 * {@link org.ohmage.request.InputKeys#INCLUDE_ANNOTATIONS include_annotations}
+	 * is true. Its value is an object of the annotations on the survey 
+	 * response's prompt responses keyed by their unique identifiers.
+	 * 
+	 * @see org.ohmage.request.InputKeys#INCLUDE_ANNOTATIONS
+	 */
+	public static final String JSON_KEY_PROMPT_ANNOTATIONS = "prompt_annotations";
 	
 	final Collection<SurveyResponse.ColumnKey> columns;
 	private final SurveyResponse.OutputFormat outputFormat;
@@ -268,10 +311,16 @@ public final class SurveyResponseReadRequest
 	private final Boolean prettyPrint;
 	private final Boolean returnId;
 	private final Boolean suppressMetadata;
+	private final Boolean includeAnnotations;
 	
 	final long surveyResponsesToSkip;
 	final long surveyResponsesToProcess;
 	
+	private Map<UUID, List<Annotation>> annotations = 
+		Collections.emptyMap();
+	private Map<UUID, List<PromptResponseAnnotation>> promptAnnotations = 
+		Collections.emptyMap();
+	
 	/**
 	 * Creates a survey response read request. The 'httpRequest', 'parameters',
 	 * and 'campaignId' parameters are required. The rest are optional and will
@@ -377,6 +426,7 @@ public final class SurveyResponseReadRequest
 		this.prettyPrint = prettyPrint;
 		this.returnId = returnId;
 		this.suppressMetadata = suppressMetadata;
+		this.includeAnnotations = null;
 		
 		if(numResponsesToSkip == null) {
 			this.surveyResponsesToSkip = 0;
@@ -433,6 +483,7 @@ public final class SurveyResponseReadRequest
 		Boolean tPrettyPrint = null;
 		Boolean tReturnId = null;
 		Boolean tSuppressMetadata = null;
+		Boolean tIncludeAnnotations = null;
 		
 		long tSurveyResponsesToSkip = 0;
 		long tSurveyResponsesToProcess = -1;
@@ -580,6 +631,32 @@ public final class SurveyResponseReadRequest
 									t[0]);
 				}
 				
+				// Include annotations
+				t = getParameterValues(InputKeys.INCLUDE_ANNOTATIONS);
+				if(t.length > 1) {
+					throw new ValidationException(
+							ErrorCode.SURVEY_INVALID_INCLUDE_ANNOTATIONS_VALUE, 
+							"Multiple include annotations values were given: " + 
+								InputKeys.INCLUDE_ANNOTATIONS);
+				}
+				else if(t.length == 1) {
+					tIncludeAnnotations = 
+							SurveyResponseValidators.validateIncludeAnnotations(
+									t[0]);
+					
+					if((tIncludeAnnotations != null) && 
+						tIncludeAnnotations &&
+						(! OutputFormat.JSON_ROWS.equals(tOutputFormat))) {
+						
+						throw new ValidationException(
+								ErrorCode.SURVEY_INVALID_INCLUDE_ANNOTATIONS_VALUE, 
+								"Annotations may only be included with the " +
+									OutputFormat.JSON_ROWS.toString() +
+									" output format: " +
+									InputKeys.INCLUDE_ANNOTATIONS);
+					}
+				}
+				
 				// Number of survey responses to skip.
 				t = getParameterValues(InputKeys.NUM_TO_SKIP);
 				if(t.length > 1) {
@@ -624,6 +701,7 @@ public final class SurveyResponseReadRequest
 		prettyPrint = tPrettyPrint;
 		returnId = tReturnId;
 		suppressMetadata = tSuppressMetadata;
+		includeAnnotations = tIncludeAnnotations;
 		
 		surveyResponsesToSkip = tSurveyResponsesToSkip;
 		surveyResponsesToProcess = tSurveyResponsesToProcess;
@@ -643,8 +721,242 @@ public final class SurveyResponseReadRequest
 				collapse, 
 				surveyResponsesToSkip, 
 				surveyResponsesToProcess);
+		
+		if(isFailed() || 
+			(includeAnnotations == null) || 
+			(! includeAnnotations) ||
+			getSurveyResponses().isEmpty()) {
+			
+			return;
+		}
+		
+		try {
+			// Every survey response belongs to the request's campaign, so
+			// one check covers the whole page.
+			if(! UserServices.instance().isUserAnAdmin(getUser().getUsername())) {
+				LOGGER.info("Verifying that the user can read the annotations in the campaign.");
+				UserCampaignServices.instance().verifyUserCanReadAnnotationsInCampaign(
+						getUser().getUsername(), 
+						getCampaignId());
+			}
+			
+			List<UUID> surveyResponseIds = 
+				new ArrayList<UUID>(getSurveyResponses().size());
+			for(SurveyResponse surveyResponse : getSurveyResponses()) {
+				surveyResponseIds.add(surveyResponse.getSurveyResponseId());
+			}
+			
+			LOGGER.info("Reading the annotations for the survey responses.");
+			annotations = 
+				UserAnnotationServices.instance().readSurveyResponseAnnotations(
+						surveyResponseIds);
+			promptAnnotations = 
+				UserAnnotationServices.instance().readPromptResponseAnnotations(
+						surveyResponseIds);
+		}
+		catch(ServiceException e) {
+			e.failRequest(this);
+			e.logException(LOGGER);
+		}
 	}
 
+	/**
+	 * Returns whether {@link #writeAll(JsonGenerator)} can write this 
+	 * request's output. Only individual survey responses in the
+	 * {@link OutputFormat#JSON_ROWS JSON_ROWS} format can be written as they
+	 * are read. The other formats are pivoted into columns, and collapsed
+	 * survey responses are aggregated, so both need every survey response
+	 * before anything can be written.
+	 * 
+	 * @return True if the survey responses can be written as they are read.
+	 */
+	public boolean canWriteAll() {
+		return
+			OutputFormat.JSON_ROWS.equals(outputFormat) &&
+			((collapse == null) || (! collapse));
+	}
+	
+	/**
+	 * Writes every survey response that matches this request's criteria as
+	 * {@link OutputFormat#JSON_ROWS JSON_ROWS} output, ignoring the number of
+	 * survey responses to process. The survey responses are read from the
+	 * database in a single pass and written as they are read, so they are 
+	 * never all in memory. Their annotations, if requested, are read for a 
+	 * batch of survey responses at a time. The metadata follows the data, 
+	 * and its total is the number of survey responses that were written. 
+	 * This should only be called after this request has been successfully
+	 * serviced and only if {@link #canWriteAll()}.
+	 * 
+	 * @param generator The generator to which the output is written.
+	 * 
+	 * @return The number of survey responses that were written.
+	 * 
+	 * @throws ServiceException There was an error reading or writing the
+	 * 							survey responses.
+	 * 
+	 * @throws IOException There was an error writing the output.
+	 */
+	public long writeAll(
+			final JsonGenerator generator)
+			throws ServiceException, IOException {
+		
+		if((includeAnnotations != null) && includeAnnotations &&
+			(! UserServices.instance().isUserAnAdmin(getUser().getUsername()))) {
+			
+			UserCampaignServices.instance().verifyUserCanReadAnnotationsInCampaign(
+					getUser().getUsername(), 
+					getCampaignId());
+		}
+		
+		generator.writeStartObject();
+		generator.writeStringField(JSON_KEY_RESULT, RESULT_SUCCESS);
+		
+		generator.writeArrayFieldStart(JSON_KEY_DATA);
+		SurveyResponseWriter writer = new SurveyResponseWriter(generator);
+		readAll(sortOrder, surveyResponsesToSkip, writer);
+		try {
+			writer.flush();
+		}
+		catch(DomainException e) {
+			throw new ServiceException(e);
+		}
+		generator.writeEndArray();
+		
+		if((suppressMetadata == null) || (! suppressMetadata)) {
+			generator.writeObjectFieldStart(JSON_KEY_METADATA);
+			generator.writeNumberField(
+				JSON_KEY_NUM_SURVEYS, 
+				writer.surveyIds.size());
+			generator.writeNumberField(
+				JSON_KEY_NUM_PROMPTS, 
+				writer.promptIds.size());
+			generator.writeArrayFieldStart(JSON_KEY_ITEMS);
+			for(String item : getItems(writer.promptIds)) {
+				generator.writeString(item);
+			}
+			generator.writeEndArray();
+			generator.writeNumberField(
+				JSON_KEY_TOTAL_NUM_RESULTS, 
+				writer.count);
+			generator.writeEndObject();
+		}
+		
+		generator.writeEndObject();
+		
+		return writer.count;
+	}
+	
+	/**
+	 * Writes survey responses as {@link OutputFormat#JSON_ROWS JSON_ROWS}
+	 * records as they are read. They are held in batches of
+	 * {@value #WRITE_ALL_BATCH_SIZE} only so that their annotations can be
+	 * read together.
+	 *
+	 * @author John Jenkins
+	 */
+	private final class SurveyResponseWriter 
+			implements SurveyResponse.Handler {
+		
+		private final JsonGenerator generator;
+		private final boolean allColumns = columns.equals(URN_SPECIAL_ALL_LIST);
+		private final List<SurveyResponse> batch =
+			new ArrayList<SurveyResponse>(WRITE_ALL_BATCH_SIZE);
+		
+		private final Set<String> surveyIds = new HashSet<String>();
+		private final Set<String> promptIds = new HashSet<String>();
+		private long count = 0;
+		
+		/**
+		 * Creates a writer.
+		 * 
+		 * @param generator The generator to which the records are written.
+		 */
+		private SurveyResponseWriter(final JsonGenerator generator) {
+			this.generator = generator;
+		}
+		
+		/**
+		 * Adds the survey response to the batch and writes the batch once it
+		 * is full.
+		 */
+		@Override
+		public void handle(
+				final SurveyResponse surveyResponse)
+				throws DomainException {
+			
+			batch.add(surveyResponse);
+			if(batch.size() == WRITE_ALL_BATCH_SIZE) {
+				flush();
+			}
+		}
+		
+		/**
+		 * Writes the survey responses in the batch with their annotations.
+		 * 
+		 * @throws DomainException The annotations could not be read or a 
+		 * 						   record could not be written.
+		 */
+		private void flush() throws DomainException {
+			if(batch.isEmpty()) {
+				return;
+			}
+			
+			Map<UUID, List<Annotation>> batchAnnotations = 
+				Collections.emptyMap();
+			Map<UUID, List<PromptResponseAnnotation>> batchPromptAnnotations =
+				Collections.emptyMap();
+			try {
+				if((includeAnnotations != null) && includeAnnotations) {
+					List<UUID> surveyResponseIds = 
+						new ArrayList<UUID>(batch.size());
+					for(SurveyResponse surveyResponse : batch) {
+						surveyResponseIds.add(
+							surveyResponse.getSurveyResponseId());
+					}
+					
+					batchAnnotations = 
+						UserAnnotationServices
+							.instance()
+							.readSurveyResponseAnnotations(surveyResponseIds);
+					batchPromptAnnotations = 
+						UserAnnotationServices
+							.instance()
+							.readPromptResponseAnnotations(surveyResponseIds);
+				}
+				
+				for(SurveyResponse surveyResponse : batch) {
+					surveyIds.add(surveyResponse.getSurvey().getId());
+					promptIds.addAll(surveyResponse.getPromptIds());
+					
+					generator.writeRawValue(
+						toJsonRow(
+							surveyResponse, 
+							allColumns, 
+							batchAnnotations, 
+							batchPromptAnnotations).toString());
+					count++;
+				}
+			}
+			catch(ServiceException e) {
+				throw new DomainException(
+					"The annotations could not be read.", 
+					e);
+			}
+			catch(JSONException e) {
+				throw new DomainException(
+					"A survey response could not be converted.", 
+					e);
+			}
+			catch(IOException e) {
+				throw new DomainException(
+					"A survey response could not be written.", 
+					e);
+			}
+			
+			batch.clear();
+		}
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see org.ohmage.request.omh.OmhReadResponder#getNumDataPoints()
@@ -702,141 +1014,12 @@ public final class SurveyResponseReadRequest
 						uniqueSurveyIds.add(surveyResponse.getSurvey().getId());
 						uniquePromptIds.addAll(surveyResponse.getPromptIds());
 						
-						JSONObject currResult;
-						currResult = surveyResponse.toJson(
-								allColumns || columns.contains(ColumnKey.USER_ID),
-								allColumns || false,
-								allColumns || columns.contains(ColumnKey.CONTEXT_CLIENT),
-								allColumns || columns.contains(ColumnKey.SURVEY_PRIVACY_STATE),
-								allColumns || columns.contains(ColumnKey.CONTEXT_EPOCH_MILLIS),
-								allColumns || columns.contains(ColumnKey.CONTEXT_TIMEZONE),
-								allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_STATUS),
-								false,
-								allColumns || columns.contains(ColumnKey.SURVEY_ID),
-								allColumns || columns.contains(ColumnKey.SURVEY_TITLE),
-								allColumns || columns.contains(ColumnKey.SURVEY_DESCRIPTION),
-								allColumns || columns.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_SHORT),
-								allColumns || columns.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_LONG),
-								allColumns || columns.contains(ColumnKey.PROMPT_RESPONSE),
-								false,
-								(((returnId == null) ? false : returnId) ||
-								 allColumns ||
-								 columns.contains(ColumnKey.SURVEY_RESPONSE_ID)
-								),
-								((collapse != null) && collapse)
-							);
-						
-						if(allColumns || columns.contains(ColumnKey.CONTEXT_DATE)) {
-							currResult.put(
-									"date", 
-									DateTimeUtils.getIso8601DateString(
-											surveyResponse.getDate(),
-											false));
-						}
-						if(allColumns || columns.contains(ColumnKey.CONTEXT_TIMESTAMP)) {
-							currResult.put(
-									"timestamp", 
-									DateTimeUtils.getIso8601DateString(
-											surveyResponse.getDate(),
-											true));
-						}
-						if(allColumns || columns.contains(ColumnKey.CONTEXT_UTC_TIMESTAMP)) {
-							Calendar tmpCalendar = 
-									Calendar.getInstance(
-											surveyResponse.getTimezone().toTimeZone());
-							tmpCalendar.setTimeInMillis(
-									surveyResponse.getTime());
-							
-							currResult.put(
-									"utc_timestamp",
-									DateTimeUtils.getIso8601DateString(
-										new DateTime(
-											surveyResponse.getTime(), 
-											DateTimeZone.UTC),
-										true));
-						}
-						if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_ACCURACY)) {
-							Location location = surveyResponse.getLocation();
-							
-							if(location == null) {
-								currResult.put(Location.LocationColumnKey.ACCURACY.toString(false), JSONObject.NULL);
-							}
-							else {
-								double accuracy = location.getAccuracy();
-								
-								if(Double.isInfinite(accuracy) || Double.isNaN(accuracy)) {
-									currResult.put(Location.LocationColumnKey.ACCURACY.toString(false), JSONObject.NULL);
-								}
-								else {
-									currResult.put(Location.LocationColumnKey.ACCURACY.toString(false), accuracy);
-								}
-							}
-						}
-						if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_LATITUDE)) {
-							Location location = surveyResponse.getLocation();
-							
-							if(location == null) {
-								currResult.put(Location.LocationColumnKey.LATITUDE.toString(false), JSONObject.NULL);
-							}
-							else {
-								double latitude = location.getLatitude();
-								
-								if(Double.isInfinite(latitude) || Double.isNaN(latitude)) {
-									currResult.put(Location.LocationColumnKey.LATITUDE.toString(false), JSONObject.NULL);
-								}
-								else {
-									currResult.put(Location.LocationColumnKey.LATITUDE.toString(false), latitude);
-								}
-							}
-						}
-						if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_LONGITUDE)) {
-							Location location = surveyResponse.getLocation();
-							
-							if(location == null) {
-								currResult.put(Location.LocationColumnKey.LONGITUDE.toString(false), JSONObject.NULL);
-							}
-							else {
-								double longitude = location.getLongitude();
-								
-								if(Double.isInfinite(longitude) || Double.isNaN(longitude)) {
-									currResult.put(Location.LocationColumnKey.LONGITUDE.toString(false), JSONObject.NULL);
-								}
-								else {
-									currResult.put(Location.LocationColumnKey.LONGITUDE.toString(false), longitude);
-								}
-							}
-						}
-						if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_PROVIDER)) {
-							Location location = surveyResponse.getLocation();
-							
-							if(location == null) {
-								currResult.put(Location.LocationColumnKey.PROVIDER.toString(false), JSONObject.NULL);
-							}
-							else {
-								currResult.put(Location.LocationColumnKey.PROVIDER.toString(false), location.getProvider());
-							}
-						}
-						if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_TIMESTAMP)) {
-							Location location = surveyResponse.getLocation();
-							
-							if(location == null) {
-								currResult.put("location_timestamp", JSONObject.NULL);
-							}
-							else {
-								currResult.put("location_timestamp", location.getTime());
-							}
-						}
-						if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_TIMESTAMP)) {
-							Location location = surveyResponse.getLocation();
-							
-							if(location == null) {
-								currResult.put("location_timezone", JSONObject.NULL);
-							}
-							else {
-								currResult.put("location_timezone", location.getTimeZone().getID());
-							}
-						}
-						
+						JSONObject currResult =
+							toJsonRow(
+								surveyResponse,
+								allColumns,
+								annotations,
+								promptAnnotations);
 						results.put(currResult);
 					}
 					result.put(JSON_KEY_DATA, results);
@@ -848,36 +1031,8 @@ public final class SurveyResponseReadRequest
 						metadata.put(JSON_KEY_NUM_SURVEYS, uniqueSurveyIds.size());
 						metadata.put(JSON_KEY_NUM_PROMPTS, uniquePromptIds.size());
 						
-						Collection<String> columnsResult = 
-							new HashSet<String>(columns.size());
-						
-						// If it contains the special 'all' value, add them 
-						// all.
-						if(columns.contains(URN_SPECIAL_ALL)) {
-							ColumnKey[] values = SurveyResponse.ColumnKey.values();
-							for(int i = 0; i < values.length; i++) {
-								columnsResult.add(values[i].toString());
-							}
-						}
-						// Otherwise, add cycle through them 
-						else {
-							for(ColumnKey columnKey : columns) {
-								columnsResult.add(columnKey.toString());
-							}
-						}
-						
-						// Check if prompt responses were requested, and, if 
-						// so, add them to the list of columns.
-						if(columns.contains(SurveyResponse.ColumnKey.PROMPT_RESPONSE) ||
-								columns.contains(URN_SPECIAL_ALL)) {
-							
-							for(String promptId : uniquePromptIds) {
-								columnsResult.add(ColumnKey.URN_PROMPT_ID_PREFIX + promptId);
-							}
-						}
-						
-						// Add it to the metadata result.
-						metadata.put(JSON_KEY_ITEMS, columnsResult);
+						// Add the columns to the metadata result.
+						metadata.put(JSON_KEY_ITEMS, getItems(uniquePromptIds));
 						
 						// Add the total count to the metadata.
 						metadata.put(
@@ -2074,4 +2229,247 @@ public final class SurveyResponseReadRequest
 		
 		return numResponses;
 	}
+	
+	/**
+	 * Returns the columns that were output as the
+	 * {@link OutputFormat#JSON_ROWS JSON_ROWS} metadata's items.
+	 * 
+	 * @param promptIds The IDs of the prompts whose responses were output.
+	 * 
+	 * @return The columns.
+	 */
+	private Collection<String> getItems(final Collection<String> promptIds) {
+		Collection<String> columnsResult = 
+			new HashSet<String>(columns.size());
+		
+		// If it contains the special 'all' value, add them all.
+		if(columns.contains(URN_SPECIAL_ALL)) {
+			ColumnKey[] values = SurveyResponse.ColumnKey.values();
+			for(int i = 0; i < values.length; i++) {
+				columnsResult.add(values[i].toString());
+			}
+		}
+		// Otherwise, add cycle through them 
+		else {
+			for(ColumnKey columnKey : columns) {
+				columnsResult.add(columnKey.toString());
+			}
+		}
+		
+		// Check if prompt responses were requested, and, if so, add them to
+		// the list of columns.
+		if(columns.contains(SurveyResponse.ColumnKey.PROMPT_RESPONSE) ||
+				columns.contains(URN_SPECIAL_ALL)) {
+			
+			for(String promptId : promptIds) {
+				columnsResult.add(ColumnKey.URN_PROMPT_ID_PREFIX + promptId);
+			}
+		}
+		
+		return columnsResult;
+	}
+	
+	/**
+	 * Creates the {@link OutputFormat#JSON_ROWS JSON_ROWS} record for a 
+	 * survey response with the requested columns.
+	 * 
+	 * @param surveyResponse The survey response.
+	 * 
+	 * @param allColumns Whether all of the columns were requested.
+	 * 
+	 * @param surveyResponseAnnotations The annotations on the survey 
+	 * 									responses, which are only used if 
+	 * 									annotations were requested.
+	 * 
+	 * @param promptResponseAnnotations The annotations on the survey 
+	 * 									responses' prompt responses, which
+	 * 									are only used if annotations were
+	 * 									requested.
+	 * 
+	 * @return The record.
+	 * 
+	 * @throws JSONException There was an error building the record.
+	 * 
+	 * @throws DomainException There was an error building the record.
+	 */
+	private JSONObject toJsonRow(
+			final SurveyResponse surveyResponse,
+			final boolean allColumns,
+			final Map<UUID, List<Annotation>> surveyResponseAnnotations,
+			final Map<UUID, List<PromptResponseAnnotation>> promptResponseAnnotations)
+			throws JSONException, DomainException {
+		
+		JSONObject currResult = surveyResponse.toJson(
+				allColumns || columns.contains(ColumnKey.USER_ID),
+				allColumns || false,
+				allColumns || columns.contains(ColumnKey.CONTEXT_CLIENT),
+				allColumns || columns.contains(ColumnKey.SURVEY_PRIVACY_STATE),
+				allColumns || columns.contains(ColumnKey.CONTEXT_EPOCH_MILLIS),
+				allColumns || columns.contains(ColumnKey.CONTEXT_TIMEZONE),
+				allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_STATUS),
+				false,
+				allColumns || columns.contains(ColumnKey.SURVEY_ID),
+				allColumns || columns.contains(ColumnKey.SURVEY_TITLE),
+				allColumns || columns.contains(ColumnKey.SURVEY_DESCRIPTION),
+				allColumns || columns.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_SHORT),
+				allColumns || columns.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_LONG),
+				allColumns || columns.contains(ColumnKey.PROMPT_RESPONSE),
+				false,
+				(((returnId == null) ? false : returnId) ||
+				 allColumns ||
+				 columns.contains(ColumnKey.SURVEY_RESPONSE_ID)
+				),
+				((collapse != null) && collapse)
+			);
+		
+		if(allColumns || columns.contains(ColumnKey.CONTEXT_DATE)) {
+			currResult.put(
+					"date", 
+					DateTimeUtils.getIso8601DateString(
+							surveyResponse.getDate(),
+							false));
+		}
+		if(allColumns || columns.contains(ColumnKey.CONTEXT_TIMESTAMP)) {
+			currResult.put(
+					"timestamp", 
+					DateTimeUtils.getIso8601DateString(
+							surveyResponse.getDate(),
+							true));
+		}
+		if(allColumns || columns.contains(ColumnKey.CONTEXT_UTC_TIMESTAMP)) {
+			Calendar tmpCalendar = 
+					Calendar.getInstance(
+							surveyResponse.getTimezone().toTimeZone());
+			tmpCalendar.setTimeInMillis(
+					surveyResponse.getTime());
+		
+			currResult.put(
+					"utc_timestamp",
+					DateTimeUtils.getIso8601DateString(
+						new DateTime(
+							surveyResponse.getTime(), 
+							DateTimeZone.UTC),
+						true));
+		}
+		if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_ACCURACY)) {
+			Location location = surveyResponse.getLocation();
+		
+			if(location == null) {
+				currResult.put(Location.LocationColumnKey.ACCURACY.toString(false), JSONObject.NULL);
+			}
+			else {
+				double accuracy = location.getAccuracy();
+		
+				if(Double.isInfinite(accuracy) || Double.isNaN(accuracy)) {
+					currResult.put(Location.LocationColumnKey.ACCURACY.toString(false), JSONObject.NULL);
+				}
+				else {
+					currResult.put(Location.LocationColumnKey.ACCURACY.toString(false), accuracy);
+				}
+			}
+		}
+		if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_LATITUDE)) {
+			Location location = surveyResponse.getLocation();
+		
+			if(location == null) {
+				currResult.put(Location.LocationColumnKey.LATITUDE.toString(false), JSONObject.NULL);
+			}
+			else {
+				double latitude = location.getLatitude();
+		
+				if(Double.isInfinite(latitude) || Double.isNaN(latitude)) {
+					currResult.put(Location.LocationColumnKey.LATITUDE.toString(false), JSONObject.NULL);
+				}
+				else {
+					currResult.put(Location.LocationColumnKey.LATITUDE.toString(false), latitude);
+				}
+			}
+		}
+		if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_LONGITUDE)) {
+			Location location = surveyResponse.getLocation();
+		
+			if(location == null) {
+				currResult.put(Location.LocationColumnKey.LONGITUDE.toString(false), JSONObject.NULL);
+			}
+			else {
+				double longitude = location.getLongitude();
+		
+				if(Double.isInfinite(longitude) || Double.isNaN(longitude)) {
+					currResult.put(Location.LocationColumnKey.LONGITUDE.toString(false), JSONObject.NULL);
+				}
+				else {
+					currResult.put(Location.LocationColumnKey.LONGITUDE.toString(false), longitude);
+				}
+			}
+		}
+		if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_PROVIDER)) {
+			Location location = surveyResponse.getLocation();
+		
+			if(location == null) {
+				currResult.put(Location.LocationColumnKey.PROVIDER.toString(false), JSONObject.NULL);
+			}
+			else {
+				currResult.put(Location.LocationColumnKey.PROVIDER.toString(false), location.getProvider());
+			}
+		}
+		if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_TIMESTAMP)) {
+			Location location = surveyResponse.getLocation();
+		
+			if(location == null) {
+				currResult.put("location_timestamp", JSONObject.NULL);
+			}
+			else {
+				currResult.put("location_timestamp", location.getTime());
+			}
+		}
+		if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_TIMESTAMP)) {
+			Location location = surveyResponse.getLocation();
+		
+			if(location == null) {
+				currResult.put("location_timezone", JSONObject.NULL);
+			}
+			else {
+				currResult.put("location_timezone", location.getTimeZone().getID());
+			}
+		}
+		
+		if((includeAnnotations != null) && includeAnnotations) {
+			currResult.put(
+					JSON_KEY_ANNOTATIONS, 
+					annotationsToJson(
+							surveyResponseAnnotations.get(
+								surveyResponse.getSurveyResponseId())));
+			currResult.put(
+					JSON_KEY_PROMPT_ANNOTATIONS, 
+					annotationsToJson(
+							promptResponseAnnotations.get(
+								surveyResponse.getSurveyResponseId())));
+		}
+		
+		return currResult;
+	}
+	
+	/**
+	 * Converts some annotations into a JSONObject keyed by their unique
+	 * identifiers.
+	 * 
+	 * @param annotations The annotations, which may be null if there are 
+	 * 					  none.
+	 * 
+	 * @return The JSONObject.
+	 * 
+	 * @throws JSONException There was an error building the JSONObject.
+	 */
+	private static JSONObject annotationsToJson(
+			final Collection<? extends Annotation> annotations)
+			throws JSONException {
+		
+		JSONObject result = new JSONObject();
+		if(annotations != null) {
+			for(Annotation annotation : annotations) {
+				result.put(annotation.getId().toString(), annotation.toJson());
+			}
+		}
+		return result;
+	}
 }
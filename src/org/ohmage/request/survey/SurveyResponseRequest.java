@@ -449,6 +449,7 @@ public abstract class SurveyResponseRequest extends UserRequest {
 							null,
 							promptResponseSearchTokens,
 							((collapse != null) && collapse && (! columns.equals(URN_SPECIAL_ALL_LIST))) ? columns : null,
+							((columns == null) || columns.equals(URN_SPECIAL_ALL_LIST)) ? null : columns,
 							sortOrder,
 							numSurveyResponsesToSkip,
 							numSurveyResponsesToProcess,
@@ -475,6 +476,44 @@ public abstract class SurveyResponseRequest extends UserRequest {
 		}
 	}
 	
+	/**
+	 * Gives every individual survey response that matches this request's
+	 * criteria to a handler as it is read from the database, regardless of
+	 * the number of survey responses to process. This should only be called
+	 * after this request has been successfully serviced.
+	 * 
+	 * @param sortOrder The order in which to sort the survey responses.
+	 * 
+	 * @param numSurveyResponsesToSkip The number of survey responses to skip.
+	 * 
+	 * @param handler The handler to which each survey response is given.
+	 * 
+	 * @throws ServiceException There was an error reading the survey 
+	 * 							responses or one could not be handled.
+	 */
+	public void readAll(
+			final List<SortParameter> sortOrder,
+			final long numSurveyResponsesToSkip,
+			final SurveyResponse.Handler handler)
+			throws ServiceException {
+		
+		SurveyResponseServices.instance().readAllSurveyResponses(
+				campaign,
+				getUser().getUsername(),
+				surveyResponseIds,
+				(URN_SPECIAL_ALL_LIST.equals(usernames) ? null : usernames), 
+				startDate, 
+				endDate, 
+				privacyState, 
+				(URN_SPECIAL_ALL_LIST.equals(surveyIds)) ? null : surveyIds, 
+				(URN_SPECIAL_ALL_LIST.equals(promptIds)) ? null : promptIds,
+				null,
+				promptResponseSearchTokens,
+				sortOrder,
+				numSurveyResponsesToSkip,
+				handler);
+	}
+	
 	/**
 	 * The campaign's unique identifier as supplied by the requester.
 	 * 
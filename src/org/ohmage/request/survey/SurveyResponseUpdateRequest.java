@@ -236,6 +236,7 @@ public class SurveyResponseUpdateRequest extends UserRequest {
 			
 			LOGGER.info("Updating the survey response.");
 			SurveyResponseServices.instance().updateSurveyResponsesPrivacyState(
+					this.getUser().getUsername(),
 					this.surveyResponseIds, 
 					this.privacyState);
 		}
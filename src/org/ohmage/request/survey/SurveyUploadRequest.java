@@ -33,13 +33,16 @@ import javax.servlet.http.Part;
 
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.domain.Audio;
 import org.ohmage.domain.Image;
 import org.ohmage.domain.Video;
 import org.ohmage.domain.campaign.Campaign;
-import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.domain.campaign.SurveyResponseReader;
+import org.ohmage.domain.campaign.SurveyUploadStatus;
 import org.ohmage.exception.DomainException;
 import org.ohmage.exception.InvalidRequestException;
 import org.ohmage.exception.ServiceException;
@@ -48,8 +51,10 @@ import org.ohmage.request.InputKeys;
 import org.ohmage.request.UserRequest;
 import org.ohmage.service.CampaignServices;
 import org.ohmage.service.SurveyResponseServices;
+import org.ohmage.service.UserActivityServices;
 import org.ohmage.service.UserCampaignServices;
 import org.ohmage.util.DateTimeUtils;
+import org.ohmage.util.StringUtils;
 import org.ohmage.validator.CampaignValidators;
 import org.ohmage.validator.ImageValidators;
 import org.ohmage.validator.SurveyResponseValidators;
@@ -101,6 +106,17 @@ import org.ohmage.validator.SurveyResponseValidators;
  *       multipart/form-post method must define all images in the payload.</td>
  *   </tr>
  *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#SURVEY_ALLOW_PARTIAL}</td>
+ *     <td>Whether or not the upload may partially fail. If so, the survey
+ *       responses are stored in chunks, each in its own transaction, those
+ *       that were already stored are found with one query up front, and the
+ *       response contains the status of each survey response, so that only
+ *       the ones that failed need to be uploaded again. Otherwise, if any
+ *       survey response cannot be stored, none of them are. The default 
+ *       value is "false".</td>
+ *     <td>false</td>
+ *   </tr>
+ *   <tr>
  *     <td>The image's ID.</td>
  *     <td>The image's constants.</td>
  *     <td>One for every image in the payload. This is deprecated in favor of
@@ -114,17 +130,25 @@ public class SurveyUploadRequest extends UserRequest {
 	private static final Logger LOGGER =
 		Logger.getLogger(SurveyUploadRequest.class);
 	
+	/**
+	 * The key used in the returned JSON for the array of each survey
+	 * response's status when the upload may partially fail.
+	 */
+	public static final String KEY_RESULTS = "results";
+	
 	// The campaign creation timestamp is stored as a String because it is 
 	// never used in any kind of calculation.
 	private final String campaignUrn;
 	private final DateTime campaignCreationTimestamp;
-	private List<JSONObject> jsonData;
+	private final byte[] surveyData;
 	private final Map<UUID, Image> imageContentsMap;
 	private final Map<String, Video> videoContentsMap;
 	private final Map<String, Audio> audioContentsMap;
 	private final String owner;
+	private final boolean allowPartial;
 	
 	private Collection<UUID> surveyResponseIds;
+	private List<SurveyUploadStatus> statuses;
 	
 	public SurveyUploadRequest(
 		final HttpServletRequest httpRequest,
@@ -137,7 +161,7 @@ public class SurveyUploadRequest extends UserRequest {
 		super(httpRequest, false, TokenLocation.PARAMETER, parameters);
 		
 		String tCampaignUrn = null;
-		List<JSONObject> tJsonData = null;
+		byte[] tSurveyData = null;
 		
 		if(! isFailed()) {
 			LOGGER.info("Creating a survey response upload request.");
@@ -149,7 +173,7 @@ public class SurveyUploadRequest extends UserRequest {
 							ErrorCode.CAMPAIGN_INVALID_ID,
 							"The campaign ID was null.");
 				}
-				if(data == null) {
+				if(StringUtils.isEmptyOrWhitespaceOnly(data)) {
 					throw
 						new ValidationException(
 							ErrorCode.SURVEY_INVALID_RESPONSES,
@@ -158,7 +182,10 @@ public class SurveyUploadRequest extends UserRequest {
 				
 				tCampaignUrn = 
 					CampaignValidators.validateCampaignId(campaignId);
-				tJsonData = CampaignValidators.validateUploadedJson(data);
+				
+				// The responses are parsed and validated as they are
+				// inserted.
+				tSurveyData = data.getBytes("UTF-8");
 			}
 			catch(ValidationException e) {
 				e.failRequest(this);
@@ -168,11 +195,12 @@ public class SurveyUploadRequest extends UserRequest {
 		
 		campaignUrn = tCampaignUrn;
 		campaignCreationTimestamp = null;
-		jsonData = tJsonData;
+		surveyData = tSurveyData;
 		imageContentsMap = Collections.emptyMap();
 		videoContentsMap = Collections.emptyMap();
 		audioContentsMap = Collections.emptyMap();
 		this.owner = owner;
+		allowPartial = false;
 	}
 	
 	/**
@@ -193,10 +221,11 @@ public class SurveyUploadRequest extends UserRequest {
 
 		String tCampaignUrn = null;
 		DateTime tCampaignCreationTimestamp = null;
-		List<JSONObject> tJsonData = null;
+		byte[] tSurveyData = null;
 		Map<UUID, Image> tImageContentsMap = null;
 		Map<String, Video> tVideoContentsMap = null;
 		Map<String, Audio> tAudioContentsMap = null;
+		boolean tAllowPartial = false;
 		
 		if(! isFailed()) {
 			try {
@@ -243,17 +272,28 @@ public class SurveyUploadRequest extends UserRequest {
 						"No value found for 'surveys' parameter or multiple surveys parameters were found.");
 				}
 				else {
-					LOGGER.debug(new String(surveyDataBytes));
-					try {
-						tJsonData =
-							CampaignValidators
-								.validateUploadedJson(
-									new String(surveyDataBytes, "UTF-8"));
+					if(LOGGER.isDebugEnabled()) {
+						LOGGER.debug(new String(surveyDataBytes, "UTF-8"));
 					}
-					catch(IllegalArgumentException e) {
-						throw new ValidationException(
-							ErrorCode.SURVEY_INVALID_RESPONSES, 
-							"The survey responses could not be URL decoded.", e);
+					
+					// The responses are parsed and validated as they are
+					// inserted.
+					tSurveyData = surveyDataBytes;
+				}
+				
+				t = getParameterValues(InputKeys.SURVEY_ALLOW_PARTIAL);
+				if(t.length > 1) {
+					throw new ValidationException(
+						ErrorCode.SURVEY_INVALID_ALLOW_PARTIAL_VALUE,
+						"Multiple allow partial parameters were given: " +
+							InputKeys.SURVEY_ALLOW_PARTIAL);
+				}
+				else if(t.length == 1) {
+					Boolean allowPartialValue = 
+						SurveyResponseValidators.validateAllowPartial(t[0]);
+					
+					if(allowPartialValue != null) {
+						tAllowPartial = allowPartialValue;
 					}
 				}
 				
@@ -372,11 +412,12 @@ public class SurveyUploadRequest extends UserRequest {
 
 		this.campaignUrn = tCampaignUrn;
 		this.campaignCreationTimestamp = tCampaignCreationTimestamp;
-		this.jsonData = tJsonData;
+		this.surveyData = tSurveyData;
 		this.imageContentsMap = tImageContentsMap;
 		this.videoContentsMap = tVideoContentsMap;
 		this.audioContentsMap = tAudioContentsMap;
 		this.owner = null;
+		this.allowPartial = tAllowPartial;
 		
 		surveyResponseIds = null;
 	}
@@ -417,7 +458,8 @@ public class SurveyUploadRequest extends UserRequest {
 							null,
 							null,
 							false,
-							false);
+							false,
+							true);
 			if(campaigns.size() == 0) {
 				throw
 					new ServiceException(
@@ -436,40 +478,74 @@ public class SurveyUploadRequest extends UserRequest {
 				CampaignServices.instance().verifyCampaignIsUpToDate(campaign, campaignCreationTimestamp);
 			}
 			
-			LOGGER.info("Verifying the uploaded data against the campaign.");
-			List<SurveyResponse> surveyResponses = 
-				CampaignServices.instance().getSurveyResponses(
-						getUser().getUsername(), 
+			SurveyResponseReader reader;
+			try {
+				reader =
+					new SurveyResponseReader(
+						getUser().getUsername(),
 						getClient(),
-						campaign, 
-						jsonData);
+						campaign,
+						surveyData);
+			}
+			catch(DomainException e) {
+				throw new ServiceException(e);
+			}
 			
-			surveyResponseIds = new ArrayList<UUID>(surveyResponses.size());
-			for(SurveyResponse surveyResponse : surveyResponses) {
-				surveyResponseIds.add(surveyResponse.getSurveyResponseId());
+			// Each response is validated against the campaign and checked
+			// for its media as it is read, while the previously read
+			// responses are being inserted.
+			SurveyResponseServices.UploadResult uploadResult;
+			if(allowPartial) {
+				LOGGER.info("Validating and inserting the survey responses in chunks.");
+				uploadResult = 
+					SurveyResponseServices.instance().createSurveyResponsesInChunks(
+						((owner == null) ? getUser().getUsername() : owner), 
+						getClient(), 
+						campaignUrn, 
+						reader, 
+						imageContentsMap,
+						videoContentsMap,
+						audioContentsMap);
+			}
+			else {
+				LOGGER.info("Validating and inserting the survey responses.");
+				uploadResult = 
+					SurveyResponseServices.instance().createSurveyResponses(
+						((owner == null) ? getUser().getUsername() : owner), 
+						getClient(), 
+						campaignUrn, 
+						reader, 
+						imageContentsMap,
+						videoContentsMap,
+						audioContentsMap);
 			}
-
-			LOGGER.info("Validating that all photo prompt responses have their corresponding images attached.");
-			SurveyResponseServices.instance().verifyImagesExistForPhotoPromptResponses(surveyResponses, imageContentsMap);
 			
-			LOGGER.info("Validating that all video prompt responses have their corresponding videos attached.");
-			SurveyResponseServices.instance().verifyVideosExistForVideoPromptResponses(surveyResponses, videoContentsMap);
+			surveyResponseIds = uploadResult.getSurveyResponseIds();
+			statuses = uploadResult.getStatuses();
+
+			LOGGER.info("Inserted " + surveyResponseIds.size() + " survey responses and found " + uploadResult.getDuplicateIndexes().size() + " duplicate survey uploads");
 			
-			LOGGER.info("Validating that all audio prompt responses have their corresponding audio files attached.");
-			SurveyResponseServices.instance().verifyAudioFilesExistForAudioPromptResponses(surveyResponses, audioContentsMap);
+			// The responses are already stored, so a failure to update the
+			// summary shouldn't fail the upload.
+			LOGGER.info("Updating the user's activity summary.");
+			try {
+				UserActivityServices.instance().recordSurveyActivity(
+					((owner == null) ? getUser().getUsername() : owner),
+					campaignUrn,
+					uploadResult.getLastStoredMillis(),
+					uploadResult.getNumStored(),
+					uploadResult.getNumStoredWithLocation());
+			}
+			catch(ServiceException e) {
+				e.logException(LOGGER);
+			}
 			
-			LOGGER.info("Inserting " + surveyResponses.size() + " survey responses into the database.");
-			List<Integer> duplicateIndexList = 
-				SurveyResponseServices.instance().createSurveyResponses(
-					((owner == null) ? getUser().getUsername() : owner), 
-					getClient(), 
-					campaignUrn, 
-					surveyResponses, 
-					imageContentsMap,
-					videoContentsMap,
-					audioContentsMap);
-
-			LOGGER.info("Found " + duplicateIndexList.size() + " duplicate survey uploads");
+			// If a partial upload stopped early, the responses before that
+			// point have been stored and tallied, but the request still
+			// fails.
+			if(uploadResult.getFailure() != null) {
+				throw uploadResult.getFailure();
+			}
 		}
 		catch(ServiceException e) {
 			e.failRequest(this);
@@ -479,27 +555,47 @@ public class SurveyUploadRequest extends UserRequest {
 
 	/**
 	 * Responds to the image upload request with success or a failure message
-	 * that contains a failure code and failure text.
+	 * that contains a failure code and failure text. If the upload may
+	 * partially fail, a successful response also contains the status of each
+	 * survey response.
 	 */
 	@Override
 	public void respond(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
 		LOGGER.info("Responding to the survey upload request.");
 		
-		super.respond(httpRequest, httpResponse, (JSONObject) null);
+		if((! allowPartial) || (statuses == null)) {
+			super.respond(httpRequest, httpResponse, (JSONObject) null);
+			return;
+		}
+		
+		JSONArray result = new JSONArray();
+		try {
+			for(SurveyUploadStatus status : statuses) {
+				result.put(status.toJson());
+			}
+		}
+		catch(JSONException e) {
+			LOGGER.error("Error building the results.", e);
+			setFailed();
+		}
+		
+		super.respond(httpRequest, httpResponse, KEY_RESULTS, result);
 	}
 	
 	/**
-	 * If the upload was successful, this records the UUIDs of the successfully
-	 * uploaded survey responses to the audit's extras table.
+	 * If any survey responses were stored, this records the UUIDs of the
+	 * successfully uploaded survey responses to the audit's extras table.
+	 * This includes a partial upload that failed after some of its responses
+	 * had been stored.
 	 * 
 	 * @return The parents audit information with the successfully uploaded
-	 * 		   survey responses if the request was successful.
+	 * 		   survey responses if there are any.
 	 */
 	@Override
 	public Map<String, String[]> getAuditInformation() {
 		Map<String, String[]> result = super.getAuditInformation();
 		
-		if((! isFailed()) && (surveyResponseIds != null)) {
+		if(surveyResponseIds != null) {
 			int numSurveyResponseIdsAdded = 0;
 			String[] surveyResponseIdsArray = 
 					new String[surveyResponseIds.size()];
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request.survey.annotation;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.Annotation;
+import org.ohmage.domain.PromptResponseAnnotation;
+import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.UserRequest;
+import org.ohmage.service.UserAnnotationServices;
+import org.ohmage.service.UserServices;
+import org.ohmage.validator.SurveyResponseValidators;
+
+/**
+ * <p>Reads the annotations for many survey responses and their prompt 
+ * responses at once. The user must be a supervisor in the campaign of every
+ * survey response or an admin.</p>
+ * <table border="1">
+ *   <tr>
+ *     <td>Parameter Name</td>
+ *     <td>Description</td>
+ *     <td>Required</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#AUTH_TOKEN}</td>
+ *     <td>The requesting user's authentication token.</td>
+ *     <td>true</td>
+ *   </tr>   
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CLIENT}</td>
+ *     <td>A string describing the client that is making this request.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#SURVEY_RESPONSE_ID_LIST}</td>
+ *     <td>A comma-separated list of survey response ids (UUIDs) whose
+ *       annotations should be read.</td>
+ *     <td>true</td>
+ *   </tr>
+ * </table>
+ * 
+ * @author Joshua Selsky
+ */
+public class AnnotationReadRequest extends UserRequest {
+	private static final Logger LOGGER = Logger.getLogger(AnnotationReadRequest.class);
+	
+	/**
+	 * The JSON key for the annotations on a survey response.
+	 */
+	public static final String JSON_KEY_ANNOTATIONS = "annotations";
+	/**
+	 * The JSON key for the annotations on a survey response's prompt 
+	 * responses.
+	 */
+	public static final String JSON_KEY_PROMPT_ANNOTATIONS = "prompt_annotations";
+	
+	private final Set<UUID> surveyResponseIds;
+	
+	private Map<UUID, List<Annotation>> annotations;
+	private Map<UUID, List<PromptResponseAnnotation>> promptAnnotations;
+	
+	/**
+	 * Creates a new annotation read request.
+	 * 
+	 * @param httpRequest The HttpServletRequest with the parameters for this
+	 * 					  request.
+	 * 
+	 * @throws InvalidRequestException Thrown if the parameters cannot be 
+	 * 								   parsed.
+	 * 
+	 * @throws IOException There was an error reading from the request.
+	 */
+	public AnnotationReadRequest(HttpServletRequest httpRequest) throws IOException, InvalidRequestException {
+		super(httpRequest, null, TokenLocation.PARAMETER, null);
+		
+		LOGGER.info("Creating an annotation read request.");
+		
+		Set<UUID> tSurveyResponseIds = null;
+		
+		if(! isFailed()) {
+			try {
+				String[] t = getParameterValues(InputKeys.SURVEY_RESPONSE_ID_LIST);
+				if(t.length > 1) {
+					throw new ValidationException(
+							ErrorCode.SURVEY_INVALID_SURVEY_ID,
+							"Multiple survey response ID lists were given: " +
+								InputKeys.SURVEY_RESPONSE_ID_LIST);
+				}
+				else if(t.length == 1) {
+					tSurveyResponseIds = 
+							SurveyResponseValidators.validateSurveyResponseIds(
+									t[0]);
+				}
+				
+				if((tSurveyResponseIds == null) || tSurveyResponseIds.isEmpty()) {
+					throw new ValidationException(
+							ErrorCode.SURVEY_INVALID_SURVEY_ID,
+							"The survey response ID list is missing: " +
+								InputKeys.SURVEY_RESPONSE_ID_LIST);
+				}
+			}
+			catch(ValidationException e) {
+				e.failRequest(this);
+				e.logException(LOGGER);
+			}
+		}
+		
+		surveyResponseIds = tSurveyResponseIds;
+		
+		annotations = Collections.emptyMap();
+		promptAnnotations = Collections.emptyMap();
+	}
+
+	/**
+	 * Services the request.
+	 */
+	@Override
+	public void service() {
+		LOGGER.info("Servicing an annotation read request.");
+		
+		if(! authenticate(AllowNewAccount.NEW_ACCOUNT_DISALLOWED)) {
+			return;
+		}
+		
+		try {
+			if(! UserServices.instance().isUserAnAdmin(getUser().getUsername())) {
+				LOGGER.info("Verifying that the logged in user can read the annotations.");
+				UserAnnotationServices.instance().verifyUserCanReadSurveyResponseAnnotations(
+						getUser().getUsername(), 
+						surveyResponseIds);
+			}
+			
+			LOGGER.info("Reading the annotations for " + surveyResponseIds.size() + " survey responses.");
+			annotations = 
+				UserAnnotationServices.instance().readSurveyResponseAnnotations(
+						surveyResponseIds);
+			promptAnnotations = 
+				UserAnnotationServices.instance().readPromptResponseAnnotations(
+						surveyResponseIds);
+		}
+		catch(ServiceException e) {
+			e.failRequest(this);
+			e.logException(LOGGER);
+		}
+	}
+
+	/**
+	 * Responds with an object keyed by survey response id whose values hold
+	 * the survey response's annotations and its prompt responses' 
+	 * annotations, each keyed by annotation id.
+	 */
+	@Override
+	public void respond(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
+		LOGGER.info("Responding to the annotation read request.");
+		
+		if(isFailed()) {
+			super.respond(httpRequest, httpResponse, (JSONObject) null);
+			return;
+		}
+		
+		try {
+			JSONObject result = new JSONObject();
+			
+			for(UUID surveyResponseId : surveyResponseIds) {
+				JSONObject surveyResponseAnnotations = new JSONObject();
+				
+				JSONObject bucket = new JSONObject();
+				List<Annotation> currAnnotations = annotations.get(surveyResponseId);
+				if(currAnnotations != null) {
+					for(Annotation annotation : currAnnotations) {
+						bucket.put(annotation.getId().toString(), annotation.toJson());
+					}
+				}
+				surveyResponseAnnotations.put(JSON_KEY_ANNOTATIONS, bucket);
+				
+				bucket = new JSONObject();
+				List<PromptResponseAnnotation> currPromptAnnotations = 
+					promptAnnotations.get(surveyResponseId);
+				if(currPromptAnnotations != null) {
+					for(PromptResponseAnnotation annotation : currPromptAnnotations) {
+						bucket.put(annotation.getId().toString(), annotation.toJson());
+					}
+				}
+				surveyResponseAnnotations.put(JSON_KEY_PROMPT_ANNOTATIONS, bucket);
+				
+				result.put(surveyResponseId.toString(), surveyResponseAnnotations);
+			}
+			
+			super.respond(httpRequest, httpResponse, result);
+		}	
+		catch(JSONException e) {
+			LOGGER.error("There was a problem creating the response.", e);
+			setFailed();
+			super.respond(httpRequest, httpResponse, (JSONObject) null);
+		}		
+	}
+}
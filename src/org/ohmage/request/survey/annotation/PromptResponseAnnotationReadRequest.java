@@ -277,11 +277,7 @@ public class PromptResponseAnnotationReadRequest extends UserRequest {
 			JSONObject result = new JSONObject();
 						
 			for(Annotation annotation : annotationsToReturn) {
-				JSONObject bucket = new JSONObject();
-				bucket.put("text", annotation.getText());
-				bucket.put("time", annotation.getEpochMillis());
-				bucket.put("timezone", annotation.getTimezone().getID());
-				result.put(annotation.getId().toString(), bucket);	
+				result.put(annotation.getId().toString(), annotation.toJson());
 			}
 			
 			super.respond(httpRequest, httpResponse, result);
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request.user;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.UserBatchEntry;
+import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.UserRequest;
+import org.ohmage.service.UserServices;
+import org.ohmage.validator.UserValidators;
+
+/**
+ * <p>Creates, and optionally updates, a batch of users. The requester must be
+ * an admin. The response contains the outcome for each user in the batch:
+ * whether they were created, updated, or failed and, if they failed, why.
+ * The users are saved in chunks, so some may fail while others succeed.</p>
+ * <table border="1">
+ *   <tr>
+ *     <td>Parameter Name</td>
+ *     <td>Description</td>
+ *     <td>Required</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CLIENT}</td>
+ *     <td>A string describing the client that is making this request.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#USER_BATCH}</td>
+ *     <td>The users, either as a JSON array of objects or as CSV text whose
+ *       first line is a header. The keys or columns are the parameters of
+ *       the user creation and update APIs, of which only
+ *       {@value org.ohmage.request.InputKeys#USERNAME} is required. See
+ *       {@link UserValidators#validateUserBatch(byte[])}. This may be a
+ *       parameter or a file.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#UPDATE_EXISTING}</td>
+ *     <td>Whether or not users in the batch that already exist should be
+ *       updated. If not, they fail. The default value is "false".</td>
+ *     <td>false</td>
+ *   </tr>
+ * </table>
+ *
+ * @author John Jenkins
+ */
+public class UserBatchCreationRequest extends UserRequest {
+	private static final Logger LOGGER = Logger.getLogger(UserBatchCreationRequest.class);
+
+	/**
+	 * The key used in the returned JSON for the array of results.
+	 */
+	public static final String KEY_RESULTS = "results";
+
+	private final List<UserBatchEntry> users;
+	private final boolean updateExisting;
+
+	private List<UserBatchEntry.Result> results;
+
+	/**
+	 * Creates a user batch creation request.
+	 *
+	 * @param httpRequest The HttpServletRequest that contains the required and
+	 * 					  optional parameters for creating this request.
+	 *
+	 * @throws InvalidRequestException Thrown if the parameters cannot be
+	 * 								   parsed.
+	 *
+	 * @throws IOException There was an error reading from the request.
+	 */
+	public UserBatchCreationRequest(HttpServletRequest httpRequest) throws IOException, InvalidRequestException {
+		super(httpRequest, null, TokenLocation.PARAMETER, null);
+
+		List<UserBatchEntry> tUsers = null;
+		boolean tUpdateExisting = false;
+
+		if(! isFailed()) {
+			LOGGER.info("Creating a user batch creation request.");
+
+			try {
+				tUsers =
+						UserValidators.validateUserBatch(
+								getParameter(httpRequest, InputKeys.USER_BATCH));
+				if(tUsers == null) {
+					throw new ValidationException(
+							ErrorCode.USER_INVALID_BATCH,
+							"Missing the required batch of users: " +
+								InputKeys.USER_BATCH);
+				}
+
+				String[] t = getParameterValues(InputKeys.UPDATE_EXISTING);
+				if(t.length > 1) {
+					throw new ValidationException(
+							ErrorCode.USER_INVALID_BATCH,
+							"Multiple update existing parameters were given: " +
+								InputKeys.UPDATE_EXISTING);
+				}
+				else if(t.length == 1) {
+					tUpdateExisting =
+							UserValidators.validateUpdateExisting(t[0]);
+				}
+			}
+			catch(ValidationException e) {
+				e.failRequest(this);
+				e.logException(LOGGER);
+			}
+		}
+
+		users = tUsers;
+		updateExisting = tUpdateExisting;
+
+		results = Collections.emptyList();
+	}
+
+	/**
+	 * Services this request if an existing user is making the request.
+	 */
+	@Override
+	public void service() {
+		LOGGER.info("Servicing the user batch creation request.");
+
+		if(! authenticate(AllowNewAccount.NEW_ACCOUNT_DISALLOWED)) {
+			return;
+		}
+
+		try {
+			LOGGER.info("Verifying that the requesting user is an admin.");
+			UserServices.instance().verifyUserIsAdmin(getUser().getUsername());
+
+			LOGGER.info("Creating and updating the " + users.size() + " users.");
+			results =
+					UserServices.instance().createAndUpdateUsers(
+							users,
+							updateExisting);
+		}
+		catch(ServiceException e) {
+			e.failRequest(this);
+			e.logException(LOGGER);
+		}
+	}
+
+	/**
+	 * Responds with success and the result for each user or failure and a
+	 * message.
+	 */
+	@Override
+	public void respond(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
+		JSONArray result = new JSONArray();
+		try {
+			for(UserBatchEntry.Result userResult : results) {
+				result.put(userResult.toJson());
+			}
+		}
+		catch(JSONException e) {
+			LOGGER.error("Error building the results.", e);
+			setFailed();
+		}
+
+		super.respond(httpRequest, httpResponse, KEY_RESULTS, result);
+	}
+}
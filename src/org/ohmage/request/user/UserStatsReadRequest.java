@@ -16,6 +16,9 @@
 package org.ohmage.request.user;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -24,14 +27,16 @@ import org.apache.log4j.Logger;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.UserActivity;
 import org.ohmage.exception.InvalidRequestException;
 import org.ohmage.exception.ServiceException;
 import org.ohmage.exception.ValidationException;
 import org.ohmage.request.InputKeys;
 import org.ohmage.request.UserRequest;
+import org.ohmage.request.mobility.MobilityUploadRequest;
+import org.ohmage.service.UserActivityServices;
 import org.ohmage.service.UserCampaignServices;
 import org.ohmage.service.UserMobilityServices;
-import org.ohmage.service.UserSurveyResponseServices;
 import org.ohmage.validator.CampaignValidators;
 import org.ohmage.validator.UserValidators;
 
@@ -41,7 +46,14 @@ import org.ohmage.validator.UserValidators;
  * have sufficient permissions to view the user's survey responses, at least 
  * the shared ones, and their Mobility points, at least the shared ones. The
  * user may authenticate themselves with a username and password or by 
- * supplying an authentication token.
+ * supplying an authentication token.<br />
+ * <br />
+ * The statistics are read from the users' activity summaries, which are 
+ * maintained as data is uploaded, so the cost of this request doesn't grow
+ * with the amount of data a user has uploaded. The survey statistics only
+ * pertain to the given campaign. Instead of a single username, a list of
+ * usernames may be given, in which case the statistics for all of the users
+ * are read at once and returned as an object keyed by username.
  * <table border="1">
  *   <tr>
  *     <td>Parameter Name</td>
@@ -62,8 +74,17 @@ import org.ohmage.validator.UserValidators;
  *   <tr>
  *     <td>{@value org.ohmage.request.InputKeys#USERNAME}</td>
  *     <td>The username of the user whose statistical information is desired.
- *       </td>
- *     <td>true</td>
+ *       Exactly one of this and 
+ *       {@value org.ohmage.request.InputKeys#USER_LIST} must be given.</td>
+ *     <td>false</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#USER_LIST}</td>
+ *     <td>A list of usernames, separated by
+ *       {@value org.ohmage.request.InputKeys#LIST_ITEM_SEPARATOR}s, whose 
+ *       statistical information is desired. Exactly one of this and
+ *       {@value org.ohmage.request.InputKeys#USERNAME} must be given.</td>
+ *     <td>false</td>
  *   </tr>
  * </table>
  * 
@@ -98,18 +119,17 @@ public class UserStatsReadRequest extends UserRequest {
 	 */
 	public static final String JSON_KEY_PAST_DAY_SUCCESSFUL_MOBILITY_LOCATION_UPDATES_PERCENTAGE = "Past Day Percent Successful Mobility Location Updates";
 	
-	private static final Double DEFAULT_VALUE_IF_NO_MOBILITY_UPLOADS = Double.MAX_VALUE;
-	private static final Double DEFAULT_VALUE_IF_NO_MOBILITY_UPLOADS_IN_LAST_DAY = -1.0;
+	private static final Double DEFAULT_VALUE_IF_NO_UPLOADS = Double.MAX_VALUE;
+	private static final Double DEFAULT_VALUE_IF_NO_UPLOADS_IN_LAST_DAY = -1.0;
 	
 	// Parameters
 	private final String campaignId;
 	private final String username;
+	private final Set<String> usernames;
 	
 	// Results
-	private Double hoursSinceLastSurveyUpload;
-	private Double hoursSinceLastMobilityUpload;
-	private Double pastDaySuccessfulSurveyLocationUpdatesPercentage;
-	private Double pastDatSuccessfulMobilityLocationUpdatesPercentage;
+	private Map<String, UserActivity> surveyActivity;
+	private Map<String, UserActivity> mobilityActivity;
 	
 	/**
 	 * Creates a new user stats read request.
@@ -129,6 +149,7 @@ public class UserStatsReadRequest extends UserRequest {
 		
 		String tCampaignId = null;
 		String tUsername = null;
+		Set<String> tUsernames = null;
 		
 		try {
 			tCampaignId = CampaignValidators.validateCampaignId(httpRequest.getParameter(InputKeys.CAMPAIGN_URN));
@@ -141,15 +162,30 @@ public class UserStatsReadRequest extends UserRequest {
 				throw new ValidationException("Multiple campaign ID parameters were given.");
 			}
 			
+			String[] t = httpRequest.getParameterValues(InputKeys.USER_LIST);
+			if((t != null) && (t.length > 1)) {
+				setFailed(ErrorCode.USER_INVALID_USERNAME, "Multiple username list parameters were given: " + InputKeys.USER_LIST);
+				throw new ValidationException("Multiple username list parameters were given: " + InputKeys.USER_LIST);
+			}
+			else if((t != null) && (t.length == 1)) {
+				tUsernames = UserValidators.validateUsernames(t[0]);
+			}
+			
 			tUsername = UserValidators.validateUsername(httpRequest.getParameter(InputKeys.USERNAME));
 			if(tUsername == null) {
-				setFailed(ErrorCode.USER_INVALID_USERNAME, "Missing the required username: " + InputKeys.USERNAME);
-				throw new ValidationException("Missing the required username: " + InputKeys.USERNAME);
+				if(tUsernames == null) {
+					setFailed(ErrorCode.USER_INVALID_USERNAME, "Missing the required username: " + InputKeys.USERNAME);
+					throw new ValidationException("Missing the required username: " + InputKeys.USERNAME);
+				}
 			}
 			else if(httpRequest.getParameterValues(InputKeys.USERNAME).length > 1) {
 				setFailed(ErrorCode.USER_INVALID_USERNAME, "Multiple username parameters were given.");
 				throw new ValidationException("Multiple username parameters were given.");
 			}
+			else if(tUsernames != null) {
+				setFailed(ErrorCode.USER_INVALID_USERNAME, "Both a username and a username list were given.");
+				throw new ValidationException("Both a username and a username list were given.");
+			}
 		}
 		catch(ValidationException e) {
 			e.failRequest(this);
@@ -158,11 +194,15 @@ public class UserStatsReadRequest extends UserRequest {
 		
 		campaignId = tCampaignId;
 		username = tUsername;
+		if(tUsernames == null) {
+			usernames = (tUsername == null) ? Collections.<String>emptySet() : Collections.singleton(tUsername);
+		}
+		else {
+			usernames = tUsernames;
+		}
 		
-		hoursSinceLastSurveyUpload = Double.MAX_VALUE;
-		hoursSinceLastMobilityUpload = Double.MAX_VALUE;
-		pastDaySuccessfulSurveyLocationUpdatesPercentage = Double.MAX_VALUE;
-		pastDatSuccessfulMobilityLocationUpdatesPercentage = Double.MAX_VALUE;
+		surveyActivity = Collections.emptyMap();
+		mobilityActivity = Collections.emptyMap();
 	}
 
 	/**
@@ -178,22 +218,18 @@ public class UserStatsReadRequest extends UserRequest {
 		
 		try {
 			LOGGER.info("Verifying that the requester has permissions to view the survey information.");
-			UserCampaignServices.instance().requesterCanViewUsersSurveyResponses(campaignId, getUser().getUsername(), username);
+			UserCampaignServices.instance().requesterCanViewUsersSurveyResponses(campaignId, getUser().getUsername(), usernames.toArray(new String[usernames.size()]));
 			
 			LOGGER.info("Verifying that the requester has permissions to view the mobility information.");
-			UserMobilityServices.instance().requesterCanViewUsersMobilityData(getUser().getUsername(), username);
-			
-			LOGGER.info("Gathering the number of hours since the last survey upload.");
-			hoursSinceLastSurveyUpload = UserSurveyResponseServices.instance().getHoursSinceLastSurveyUplaod(getUser().getUsername(), username);
-			
-			LOGGER.info("Gathering the number of hours since the last Mobility upload.");
-			hoursSinceLastMobilityUpload = UserMobilityServices.instance().getHoursSinceLastMobilityUpload(username);
+			for(String currUsername : usernames) {
+				UserMobilityServices.instance().requesterCanViewUsersMobilityData(getUser().getUsername(), currUsername);
+			}
 			
-			LOGGER.info("Gathering the percentage of successful location uploads from surveys in the last day.");
-			pastDaySuccessfulSurveyLocationUpdatesPercentage = UserSurveyResponseServices.instance().getPercentageOfNonNullLocationsOverPastDay(getUser().getUsername(), username);
+			LOGGER.info("Gathering the survey activity summaries.");
+			surveyActivity = UserActivityServices.instance().getActivity(usernames, UserActivity.SourceType.SURVEY, campaignId);
 			
-			LOGGER.info("Gathering the percentage of successful location updates from Mobility in the last day.");
-			pastDatSuccessfulMobilityLocationUpdatesPercentage = UserMobilityServices.instance().getPercentageOfNonNullLocationsOverPastDay(username);
+			LOGGER.info("Gathering the Mobility activity summaries.");
+			mobilityActivity = UserActivityServices.instance().getActivity(usernames, UserActivity.SourceType.STREAM, MobilityUploadRequest.OBSERVER_ID);
 		}
 		catch(ServiceException e) {
 			e.failRequest(this);
@@ -210,27 +246,14 @@ public class UserStatsReadRequest extends UserRequest {
 		
 		if(! isFailed()) {
 			try {
-				jsonResult.put(
-						JSON_KEY_HOURS_SINCE_LAST_SURVEY_UPLOAD, 
-						hoursSinceLastSurveyUpload);
-				
-				jsonResult.put(
-						JSON_KEY_HOURS_SINCE_LAST_MOBILITY_UPLOAD, 
-						((hoursSinceLastMobilityUpload == null) ? 
-								DEFAULT_VALUE_IF_NO_MOBILITY_UPLOADS : 
-								hoursSinceLastMobilityUpload)
-						);
-				
-				jsonResult.put(
-						JSON_KEY_PAST_DAY_SUCCESSFUL_SURVEY_LOCATION_UPDATES_PERCENTAGE, 
-						pastDaySuccessfulSurveyLocationUpdatesPercentage);
-				
-				jsonResult.put(
-						JSON_KEY_PAST_DAY_SUCCESSFUL_MOBILITY_LOCATION_UPDATES_PERCENTAGE, 
-						((pastDatSuccessfulMobilityLocationUpdatesPercentage == null) ?
-								DEFAULT_VALUE_IF_NO_MOBILITY_UPLOADS_IN_LAST_DAY : 
-								pastDatSuccessfulMobilityLocationUpdatesPercentage)
-						);
+				if(username != null) {
+					jsonResult = buildStats(username);
+				}
+				else {
+					for(String currUsername : usernames) {
+						jsonResult.put(currUsername, buildStats(currUsername));
+					}
+				}
 			}
 			catch(JSONException e) {
 				LOGGER.error("There was an error creating the JSONArray result object.", e);
@@ -240,4 +263,66 @@ public class UserStatsReadRequest extends UserRequest {
 		
 		super.respond(httpRequest, httpResponse, JSON_KEY_RESULT, jsonResult);
 	}
+	
+	/**
+	 * Builds the statistics for a single user from their activity summaries.
+	 * 
+	 * @param currUsername The user's username.
+	 * 
+	 * @return The user's statistics as a JSONObject.
+	 * 
+	 * @throws JSONException There was an error building the JSONObject.
+	 */
+	private JSONObject buildStats(
+			final String currUsername)
+			throws JSONException {
+		
+		long now = System.currentTimeMillis();
+		JSONObject result = new JSONObject();
+		
+		UserActivity survey = surveyActivity.get(currUsername);
+		UserActivity mobility = mobilityActivity.get(currUsername);
+		
+		result.put(
+				JSON_KEY_HOURS_SINCE_LAST_SURVEY_UPLOAD, 
+				defaultIfNull(
+					(survey == null) ? null : survey.getHoursSinceLastData(now),
+					DEFAULT_VALUE_IF_NO_UPLOADS));
+		
+		result.put(
+				JSON_KEY_HOURS_SINCE_LAST_MOBILITY_UPLOAD, 
+				defaultIfNull(
+					(mobility == null) ? null : mobility.getHoursSinceLastData(now),
+					DEFAULT_VALUE_IF_NO_UPLOADS));
+		
+		result.put(
+				JSON_KEY_PAST_DAY_SUCCESSFUL_SURVEY_LOCATION_UPDATES_PERCENTAGE, 
+				defaultIfNull(
+					(survey == null) ? null : survey.getPercentageWithLocation(),
+					DEFAULT_VALUE_IF_NO_UPLOADS_IN_LAST_DAY));
+		
+		result.put(
+				JSON_KEY_PAST_DAY_SUCCESSFUL_MOBILITY_LOCATION_UPDATES_PERCENTAGE, 
+				defaultIfNull(
+					(mobility == null) ? null : mobility.getPercentageWithLocation(),
+					DEFAULT_VALUE_IF_NO_UPLOADS_IN_LAST_DAY));
+		
+		return result;
+	}
+	
+	/**
+	 * Returns the value or, if it is null, the default value.
+	 * 
+	 * @param value The value.
+	 * 
+	 * @param defaultValue The value to use if 'value' is null.
+	 * 
+	 * @return The value or the default value.
+	 */
+	private static Double defaultIfNull(
+			final Double value,
+			final Double defaultValue) {
+		
+		return (value == null) ? defaultValue : value;
+	}
 }
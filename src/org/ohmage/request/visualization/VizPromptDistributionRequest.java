@@ -115,7 +115,7 @@ public class VizPromptDistributionRequest extends VisualizationRequest {
 			parameters.put(VisualizationServices.PARAMETER_KEY_PROMPT_ID, promptId);
 			
 			LOGGER.info("Making the request to the visualization server.");
-			setImage(VisualizationServices.sendVisualizationRequest(REQUEST_PATH, getUser().getToken(), 
+			setImage(VisualizationServices.sendVisualizationRequest(REQUEST_PATH, getUser().getUsername(), getUser().getToken(), 
 					getCampaignId(), getWidth(), getHeight(), parameters));
 		}
 		catch(ServiceException e) {
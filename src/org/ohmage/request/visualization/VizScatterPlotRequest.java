@@ -133,7 +133,7 @@ public class VizScatterPlotRequest extends VisualizationRequest {
 			parameters.put(VisualizationServices.PARAMETER_KEY_PROMPT2_ID, prompt2Id);
 			
 			LOGGER.info("Making the request to the visualization server.");
-			setImage(VisualizationServices.sendVisualizationRequest(REQUEST_PATH, getUser().getToken(), 
+			setImage(VisualizationServices.sendVisualizationRequest(REQUEST_PATH, getUser().getUsername(), getUser().getToken(), 
 					getCampaignId(), getWidth(), getHeight(), parameters));
 		}
 		catch(ServiceException e) {
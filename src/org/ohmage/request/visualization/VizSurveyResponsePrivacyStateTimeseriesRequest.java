@@ -82,7 +82,7 @@ public class VizSurveyResponsePrivacyStateTimeseriesRequest extends Visualizatio
 			parameters.remove(VisualizationServices.PARAMETER_KEY_PRIVACY_STATE);
 			
 			LOGGER.info("Making the request to the visualization server.");
-			setImage(VisualizationServices.sendVisualizationRequest(REQUEST_PATH, getUser().getToken(), 
+			setImage(VisualizationServices.sendVisualizationRequest(REQUEST_PATH, getUser().getUsername(), getUser().getToken(), 
 					getCampaignId(), getWidth(), getHeight(), parameters));
 		}
 		catch(ServiceException e) {
@@ -35,6 +35,7 @@ import nu.xom.ValidityException;
 import org.joda.time.DateTime;
 import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.VersionStamps;
 import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.domain.campaign.SurveyResponse;
 import org.ohmage.exception.DataAccessException;
@@ -132,6 +133,8 @@ public class CampaignServices {
 		catch(DataAccessException e) {
 			throw new ServiceException(e);
 		}
+		
+		VersionStamps.bump(VersionStamps.Domain.CAMPAIGN);
 	}
 	
 	/**
@@ -670,6 +673,8 @@ public class CampaignServices {
 		catch(DataAccessException e) {
 			throw new ServiceException(e);
 		}
+		
+		VersionStamps.bump(VersionStamps.Domain.CAMPAIGN);
 	}
 		
 	/**
@@ -699,6 +704,8 @@ public class CampaignServices {
 			throw new ServiceException(e);
 		}
 		
+		VersionStamps.bump(VersionStamps.Domain.CAMPAIGN);
+		
 		// If the transaction succeeded, delete all of the images from the 
 		// disk.
 		for(URL imageUrl : imageUrls) {
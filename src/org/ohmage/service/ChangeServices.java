@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.service;
+
+import java.util.List;
+
+import org.ohmage.domain.Change;
+import org.ohmage.exception.DataAccessException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.query.IChangeQueries;
+
+/**
+ * This class contains the services for reading the change feed. The feed is
+ * written by the upload, update, and delete queries themselves.
+ *
+ * @author John Jenkins
+ */
+public class ChangeServices {
+	private static ChangeServices instance;
+
+	private IChangeQueries changeQueries;
+
+	/**
+	 * Default constructor. Privately instantiated via dependency injection
+	 * (reflection).
+	 *
+	 * @throws IllegalStateException if an instance of this class already
+	 * exists
+	 *
+	 * @throws IllegalArgumentException if iChangeQueries is null
+	 */
+	private ChangeServices(final IChangeQueries iChangeQueries) {
+		if(instance != null) {
+			throw new IllegalStateException("An instance of this class already exists.");
+		}
+
+		if(iChangeQueries == null) {
+			throw new IllegalArgumentException("An instance of IChangeQueries is required.");
+		}
+
+		changeQueries = iChangeQueries;
+
+		instance = this;
+	}
+
+	/**
+	 * @return  Returns the singleton instance of this class.
+	 */
+	public static ChangeServices instance() {
+		return instance;
+	}
+
+	/**
+	 * Retrieves the changes to a campaign's survey responses after some
+	 * position in the change feed.
+	 *
+	 * @param campaignId The campaign's unique identifier.
+	 *
+	 * @param username Limits the changes to those to this user's responses.
+	 * 				   If null, the changes to every user's responses are
+	 * 				   returned.
+	 *
+	 * @param after The position in the feed after which changes should be
+	 * 				returned. If null, the changes from the beginning of the
+	 * 				feed are returned.
+	 *
+	 * @param numToReturn The maximum number of changes to return.
+	 *
+	 * @return The changes in the order they were made.
+	 *
+	 * @throws ServiceException There was an error.
+	 */
+	public List<Change> getSurveyResponseChanges(
+			final String campaignId,
+			final String username,
+			final Long after,
+			final int numToReturn)
+			throws ServiceException {
+
+		try {
+			return
+				changeQueries.getChanges(
+					Change.SourceType.SURVEY_RESPONSE,
+					campaignId,
+					null,
+					username,
+					(after == null) ? 0 : after,
+					numToReturn);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+
+	/**
+	 * Retrieves the changes to a user's data for a stream, across all of the
+	 * observer's and stream's versions, after some position in the change
+	 * feed.
+	 *
+	 * @param observerId The observer's unique identifier.
+	 *
+	 * @param streamId The stream's unique identifier.
+	 *
+	 * @param username The username of the user whose data's changes are
+	 * 				   desired.
+	 *
+	 * @param after The position in the feed after which changes should be
+	 * 				returned. If null, the changes from the beginning of the
+	 * 				feed are returned.
+	 *
+	 * @param numToReturn The maximum number of changes to return.
+	 *
+	 * @return The changes in the order they were made.
+	 *
+	 * @throws ServiceException There was an error.
+	 */
+	public List<Change> getStreamChanges(
+			final String observerId,
+			final String streamId,
+			final String username,
+			final Long after,
+			final int numToReturn)
+			throws ServiceException {
+
+		try {
+			return
+				changeQueries.getChanges(
+					Change.SourceType.STREAM,
+					observerId,
+					streamId,
+					username,
+					(after == null) ? 0 : after,
+					numToReturn);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+}
@@ -24,6 +24,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.VersionStamps;
 import org.ohmage.domain.Clazz;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.ServiceException;
@@ -85,6 +86,10 @@ public final class ClassServices {
 		catch(DataAccessException e) {
 			throw new ServiceException(e);
 		}
+		
+		VersionStamps.bump(
+			VersionStamps.Domain.CLASS, 
+			VersionStamps.Domain.CAMPAIGN);
 	}
 	
 	/**
@@ -405,14 +410,7 @@ public final class ClassServices {
 			throws ServiceException {
 		
 		try {
-			Map<String, Map<String, Clazz.Role>> result = 
-					new HashMap<String, Map<String, Clazz.Role>>();
-			
-			for(String classId : classIds) {
-				result.put(classId, classQueries.getUserRolePairs(username, classId));
-			}
-			
-			return result;
+			return classQueries.getUserRolePairs(username, classIds);
 		}
 		catch(DataAccessException e) {
 			throw new ServiceException(e);
@@ -449,6 +447,10 @@ public final class ClassServices {
 		catch(DataAccessException e) {
 			throw new ServiceException(e);
 		}
+		
+		VersionStamps.bump(
+			VersionStamps.Domain.CLASS, 
+			VersionStamps.Domain.CAMPAIGN);
 	}
 	
 	/**
@@ -469,6 +471,10 @@ public final class ClassServices {
 				warningMessages.addAll(classQueries.updateClass(classId, null, null, roster.get(classId), null));
 			}
 			
+			VersionStamps.bump(
+				VersionStamps.Domain.CLASS, 
+				VersionStamps.Domain.CAMPAIGN);
+			
 			return warningMessages;
 		}
 		catch(DataAccessException e) {
@@ -492,5 +498,9 @@ public final class ClassServices {
 		catch(DataAccessException e) {
 			throw new ServiceException(e);
 		}
+		
+		VersionStamps.bump(
+			VersionStamps.Domain.CLASS, 
+			VersionStamps.Domain.CAMPAIGN);
 	}
 }
@@ -0,0 +1,497 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.service;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+import org.ohmage.annotator.Annotator;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.ExportJob;
+import org.ohmage.exception.ServiceException;
+
+/**
+ * <p>
+ * This class is responsible for producing exports of large sets of data in
+ * the background. An export is submitted, produced by one of a small pool of
+ * workers into a compressed file, and then downloaded by its owner.
+ * </p>
+ *
+ * <p>
+ * Exports are only tracked in memory. When the server is restarted, any
+ * exports that were queued, running, or waiting to be downloaded are lost and
+ * their files are removed. Finished exports are removed after a configurable
+ * number of hours and, oldest first, whenever the exports on disk exceed a
+ * configurable quota.
+ * </p>
+ *
+ * @author John Jenkins
+ */
+public class ExportServices {
+	private static final Logger LOGGER = Logger.getLogger(ExportServices.class);
+
+	private static final String EXTENSION_PARTIAL = ".part";
+	private static final String EXTENSION_FINISHED = ".gz";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Produces the contents of an export.
+	 *
+	 * @author John Jenkins
+	 */
+	public static interface Exporter {
+		/**
+		 * Writes the export to the stream. The stream is compressed by the
+		 * caller and should not be closed.
+		 *
+		 * @param outputStream The stream to which the export is written.
+		 *
+		 * @return The content type of what was written, e.g. "text/csv".
+		 *
+		 * @throws ServiceException The export could not be produced. Its
+		 * 							error code and text are reported to the
+		 * 							export's owner.
+		 *
+		 * @throws IOException The export could not be written.
+		 */
+		public String export(
+				final OutputStream outputStream)
+				throws ServiceException, IOException;
+	}
+
+	private static ExportServices instance;
+
+	private final File directory;
+	private final long quotaBytes;
+	private final long expirationMillis;
+
+	private final ThreadPoolExecutor workers;
+	private final ConcurrentMap<UUID, ExportJob> jobs =
+		new ConcurrentHashMap<UUID, ExportJob>();
+
+	/**
+	 * Default constructor. Privately instantiated via dependency injection
+	 * (reflection).
+	 *
+	 * @param directory The directory in which the exports are written. It is
+	 * 					created if it does not exist and any exports left in
+	 * 					it by a previous run are removed.
+	 *
+	 * @param threads The number of exports that may be produced at once.
+	 *
+	 * @param maxQueued The number of exports that may be waiting for a
+	 * 					worker before new exports are rejected.
+	 *
+	 * @param quotaMegabytes The number of megabytes that the finished exports
+	 * 						 may use on disk.
+	 *
+	 * @param expirationHours The number of hours after an export finishes
+	 * 						  that it is removed.
+	 *
+	 * @throws IllegalStateException if an instance of this class already
+	 * exists
+	 *
+	 * @throws IllegalArgumentException if the directory is null or cannot be
+	 * created or any of the limits are not positive
+	 */
+	private ExportServices(
+			final String directory,
+			final int threads,
+			final int maxQueued,
+			final long quotaMegabytes,
+			final int expirationHours) {
+
+		if(instance != null) {
+			throw new IllegalStateException("An instance of this class already exists.");
+		}
+
+		if(directory == null) {
+			throw new IllegalArgumentException("The export directory is null.");
+		}
+		if(threads < 1) {
+			throw new IllegalArgumentException("The number of export threads must be positive.");
+		}
+		if(maxQueued < 1) {
+			throw new IllegalArgumentException("The maximum number of queued exports must be positive.");
+		}
+		if(quotaMegabytes < 1) {
+			throw new IllegalArgumentException("The export quota must be positive.");
+		}
+		if(expirationHours < 1) {
+			throw new IllegalArgumentException("The export expiration must be positive.");
+		}
+
+		this.directory = new File(directory);
+		if((! this.directory.isDirectory()) && (! this.directory.mkdirs())) {
+			throw new IllegalArgumentException(
+				"The export directory could not be created: " + directory);
+		}
+		removeLeftovers();
+
+		quotaBytes = quotaMegabytes * 1024 * 1024;
+		expirationMillis = TimeUnit.HOURS.toMillis(expirationHours);
+
+		final AtomicInteger threadCount = new AtomicInteger(0);
+		final ThreadFactory threadFactory =
+			new ThreadFactory() {
+				/**
+				 * Creates a daemon thread so that a long export never keeps
+				 * the server from shutting down.
+				 */
+				@Override
+				public Thread newThread(final Runnable runnable) {
+					Thread result =
+						new Thread(
+							runnable,
+							"ExportServices-" + threadCount.incrementAndGet());
+					result.setDaemon(true);
+					return result;
+				}
+			};
+		workers =
+			new ThreadPoolExecutor(
+				threads,
+				threads,
+				0,
+				TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(maxQueued),
+				threadFactory);
+
+		ScheduledExecutorService cleaner =
+			Executors.newSingleThreadScheduledExecutor(threadFactory);
+		cleaner.scheduleWithFixedDelay(
+			new Runnable() {
+				/**
+				 * Removes the expired exports.
+				 */
+				@Override
+				public void run() {
+					cleanUp();
+				}
+			},
+			1,
+			1,
+			TimeUnit.HOURS);
+
+		instance = this;
+	}
+
+	/**
+	 * @return  Returns the singleton instance of this class.
+	 */
+	public static ExportServices instance() {
+		return instance;
+	}
+
+	/**
+	 * Queues a new export.
+	 *
+	 * @param owner The username of the user that requested the export.
+	 *
+	 * @param type The kind of data being exported.
+	 *
+	 * @param exporter The exporter that produces the export's contents.
+	 *
+	 * @return The queued export.
+	 *
+	 * @throws ServiceException Too many exports are already waiting.
+	 */
+	public ExportJob submit(
+			final String owner,
+			final ExportJob.Type type,
+			final Exporter exporter)
+			throws ServiceException {
+
+		final ExportJob job = new ExportJob(owner, type);
+		jobs.put(job.getId(), job);
+
+		try {
+			workers.execute(
+				new Runnable() {
+					/**
+					 * Produces the export.
+					 */
+					@Override
+					public void run() {
+						produce(job, exporter);
+					}
+				});
+		}
+		catch(RejectedExecutionException e) {
+			jobs.remove(job.getId());
+			throw new ServiceException(
+				ErrorCode.EXPORT_TOO_MANY_EXPORTS,
+				"Too many exports are waiting. Please try again later.",
+				e);
+		}
+
+		return job;
+	}
+
+	/**
+	 * Returns an export that belongs to a user.
+	 *
+	 * @param owner The user's username.
+	 *
+	 * @param id The export's unique identifier.
+	 *
+	 * @return The export.
+	 *
+	 * @throws ServiceException The export does not exist, has expired, or
+	 * 							belongs to a different user.
+	 */
+	public ExportJob getJob(
+			final String owner,
+			final UUID id)
+			throws ServiceException {
+
+		ExportJob result = jobs.get(id);
+		if((result == null) || (! result.getOwner().equals(owner))) {
+			throw new ServiceException(
+				ErrorCode.EXPORT_INVALID_ID,
+				"The export does not exist: " + id);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns all of a user's exports that have not yet expired.
+	 *
+	 * @param owner The user's username.
+	 *
+	 * @return The user's exports, which may be empty.
+	 */
+	public List<ExportJob> getJobs(final String owner) {
+		List<ExportJob> result = new ArrayList<ExportJob>();
+
+		for(ExportJob job : jobs.values()) {
+			if(job.getOwner().equals(owner)) {
+				result.add(job);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the file that contains a finished export.
+	 *
+	 * @param job The export.
+	 *
+	 * @return The compressed file.
+	 *
+	 * @throws ServiceException The export has not succeeded or its file has
+	 * 							since been removed.
+	 */
+	public File getFile(final ExportJob job) throws ServiceException {
+		File result = getFinishedFile(job.getId());
+
+		if((! ExportJob.State.SUCCEEDED.equals(job.getState())) ||
+				(! result.isFile())) {
+
+			throw new ServiceException(
+				ErrorCode.EXPORT_NOT_FINISHED,
+				"The export is not ready to be downloaded: " + job.getId());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Produces an export into a partial file and, if it succeeds, renames it
+	 * so that it may be downloaded.
+	 */
+	private void produce(final ExportJob job, final Exporter exporter) {
+		job.setRunning();
+
+		File partial =
+			new File(directory, job.getId().toString() + EXTENSION_PARTIAL);
+		File finished = getFinishedFile(job.getId());
+		try {
+			String contentType;
+			OutputStream outputStream =
+				new GZIPOutputStream(
+					new BufferedOutputStream(
+						new FileOutputStream(partial),
+						BUFFER_SIZE));
+			try {
+				contentType = exporter.export(outputStream);
+			}
+			finally {
+				outputStream.close();
+			}
+
+			if(partial.length() > quotaBytes) {
+				throw new ServiceException(
+					ErrorCode.EXPORT_TOO_MANY_EXPORTS,
+					"The export is larger than the space set aside for exports.");
+			}
+			if(! partial.renameTo(finished)) {
+				throw new IOException(
+					"The export could not be renamed: " + partial.getPath());
+			}
+
+			job.setSucceeded(contentType, finished.length());
+			LOGGER.info(
+				"Export " + job.getId() + " for " + job.getOwner() +
+					" finished with " + job.getSize() + " bytes.");
+		}
+		catch(ServiceException e) {
+			e.logException(LOGGER);
+			fail(job, partial, e.getAnnotator());
+		}
+		catch(Exception e) {
+			LOGGER.error("Export " + job.getId() + " failed.", e);
+			fail(job, partial, null);
+		}
+
+		cleanUp();
+	}
+
+	/**
+	 * Marks an export as failed and removes its partial file.
+	 */
+	private void fail(
+			final ExportJob job,
+			final File partial,
+			final Annotator annotator) {
+
+		if(! partial.delete()) {
+			LOGGER.warn("The partial export could not be deleted: " + partial);
+		}
+
+		job.setFailed(
+			(annotator == null) ?
+				new Annotator(
+					ErrorCode.SYSTEM_GENERAL_ERROR,
+					"The export could not be produced.") :
+				annotator);
+	}
+
+	/**
+	 * Removes the exports that have expired and then, oldest first, the
+	 * finished exports that do not fit within the quota.
+	 */
+	private synchronized void cleanUp() {
+		long now = System.currentTimeMillis();
+
+		List<ExportJob> finishedJobs = new ArrayList<ExportJob>();
+		for(ExportJob job : jobs.values()) {
+			long finished = job.getFinished();
+			if(finished == 0) {
+				continue;
+			}
+
+			if((now - finished) > expirationMillis) {
+				remove(job);
+			}
+			else if(ExportJob.State.SUCCEEDED.equals(job.getState())) {
+				finishedJobs.add(job);
+			}
+		}
+
+		// Newest first, so that the oldest exports are the ones that are
+		// over the quota.
+		Collections.sort(
+			finishedJobs,
+			new Comparator<ExportJob>() {
+				/**
+				 * Sorts the exports by the time they finished, descending.
+				 */
+				@Override
+				public int compare(
+						final ExportJob first,
+						final ExportJob second) {
+
+					long difference = second.getFinished() - first.getFinished();
+					return (difference < 0) ? -1 : ((difference > 0) ? 1 : 0);
+				}
+			});
+
+		long used = 0;
+		for(ExportJob job : finishedJobs) {
+			used += job.getSize();
+			if(used > quotaBytes) {
+				LOGGER.info(
+					"Removing export " + job.getId() +
+						" as the exports are over their quota.");
+				remove(job);
+			}
+		}
+	}
+
+	/**
+	 * Forgets an export and deletes its file, if any.
+	 */
+	private void remove(final ExportJob job) {
+		jobs.remove(job.getId());
+
+		File file = getFinishedFile(job.getId());
+		if(file.exists() && (! file.delete())) {
+			LOGGER.warn("The export could not be deleted: " + file);
+		}
+	}
+
+	/**
+	 * Removes the exports left by a previous run, as they are no longer
+	 * tracked.
+	 */
+	private void removeLeftovers() {
+		File[] files = directory.listFiles();
+		if(files == null) {
+			return;
+		}
+
+		for(File file : files) {
+			String name = file.getName();
+			if((name.endsWith(EXTENSION_PARTIAL) ||
+					name.endsWith(EXTENSION_FINISHED)) &&
+				(! file.delete())) {
+
+				LOGGER.warn("The old export could not be deleted: " + file);
+			}
+		}
+	}
+
+	/**
+	 * Returns the file in which a finished export is kept.
+	 */
+	private File getFinishedFile(final UUID id) {
+		return new File(directory, id.toString() + EXTENSION_FINISHED);
+	}
+}
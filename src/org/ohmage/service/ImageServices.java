@@ -16,10 +16,13 @@
 package org.ohmage.service;
 
 import java.net.URL;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.ImageVariantCache;
 import org.ohmage.domain.Image;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.DomainException;
@@ -149,6 +152,56 @@ public final class ImageServices {
 		}
 	}
 	
+	/**
+	 * Retrieves a small variant of an image from memory, reading it and
+	 * remembering it if it hasn't been read yet. This is faster than
+	 * {@link #getImage(UUID, Image.Size)} for the sizes that are requested
+	 * most, e.g. thumbnails.
+	 * 
+	 * @param imageId
+	 *        The image's unique identifier.
+	 * 
+	 * @param size
+	 *        The desired size of the image.
+	 * 
+	 * @return The variant or null if the size is not kept in memory, the
+	 *         variant is too large to be kept in memory, or the image doesn't
+	 *         exist. In any of these cases, the image should be read with
+	 *         {@link #getImage(UUID, Image.Size)}.
+	 * 
+	 * @throws ServiceException
+	 *         Thrown if there is an error.
+	 */
+	public ImageVariantCache.Variant getImageVariant(
+		final UUID imageId,
+		final Image.Size size)
+		throws ServiceException {
+		
+		if(! ImageVariantCache.isCached(size)) {
+			return null;
+		}
+		
+		ImageVariantCache.Variant result = 
+			ImageVariantCache.get(imageId, size);
+		if(result != null) {
+			return result;
+		}
+		
+		Image image = getImage(imageId, size);
+		if(image == null) {
+			return null;
+		}
+		
+		try {
+			return ImageVariantCache.load(image, size);
+		}
+		catch(DomainException e) {
+			throw new ServiceException(
+					"There was a problem reading the image.", 
+					e);
+		}
+	}
+	
 	/**
 	 * Retrieves the URL of an image.
 	 * 
@@ -167,6 +220,28 @@ public final class ImageServices {
 		}
 	}
 	
+	/**
+	 * Retrieves the URLs of a collection of images in a single query.
+	 * 
+	 * @param imageIds The images' unique identifiers.
+	 * 
+	 * @return A map of image IDs to their URLs. Images that don't exist are
+	 * 		   not included.
+	 * 
+	 * @throws ServiceException Thrown if there is an error.
+	 */
+	public Map<UUID, URL> getImageUrls(
+			final Collection<UUID> imageIds) 
+			throws ServiceException {
+		
+		try {
+			return imageQueries.getImageUrls(imageIds);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+	
 	/**
 	 * Retrieves the Images that have not yet been processed.
 	 * 
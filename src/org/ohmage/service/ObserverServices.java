@@ -9,18 +9,30 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.annotate.JsonProperty;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.joda.time.DateTime;
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.VersionStamps;
 import org.ohmage.domain.DataStream;
 import org.ohmage.domain.DataStream.MetaData;
+import org.ohmage.domain.DataStreamAggregator;
 import org.ohmage.domain.Observer;
 import org.ohmage.domain.Observer.Stream;
 import org.ohmage.exception.DataAccessException;
@@ -146,9 +158,383 @@ public class ObserverServices {
 		}
 	}
 	
+	/**
+	 * The number of points that are validated, pruned of duplicates, and 
+	 * stored together when data is uploaded.
+	 */
+	public static final int UPLOAD_CHUNK_SIZE = 500;
+	
+	/**
+	 * The number of chunks of an upload that may be parsed ahead of being
+	 * stored. This bounds the memory used by an upload and holds the parser
+	 * back when the database falls behind.
+	 */
+	private static final int MAX_PENDING_CHUNKS =
+		2 * Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * The points in a chunk of an upload after they have been validated.
+	 *
+	 * @author John Jenkins
+	 */
+	private static final class ValidatedChunk {
+		private final int size;
+		private final List<DataStream> points;
+		private final List<InvalidPoint> invalidPoints;
+		
+		/**
+		 * Creates an empty chunk.
+		 * 
+		 * @param size The number of points that will be validated.
+		 */
+		private ValidatedChunk(final int size) {
+			this.size = size;
+			points = new ArrayList<DataStream>(size);
+			invalidPoints = new LinkedList<InvalidPoint>();
+		}
+	}
+	
+	/**
+	 * The outcome of a stream upload. Only the tallies of the stored points
+	 * are retained, not the points themselves.
+	 *
+	 * @author John Jenkins
+	 */
+	public static final class UploadResult {
+		private long numPointsCommitted = 0;
+		private long numStored = 0;
+		private long numStoredWithLocation = 0;
+		private Long lastStoredMillis = null;
+		private long numDuplicates = 0;
+		private ServiceException failure = null;
+		
+		/**
+		 * Only the services may create a result.
+		 */
+		private UploadResult() {}
+		
+		/**
+		 * Tallies a point that was stored.
+		 * 
+		 * @param point The point.
+		 */
+		private void stored(final DataStream point) {
+			numStored++;
+			
+			MetaData metaData = point.getMetaData();
+			if(metaData == null) {
+				return;
+			}
+			
+			if(metaData.getLocation() != null) {
+				numStoredWithLocation++;
+			}
+			
+			DateTime timestamp = metaData.getTimestamp();
+			if(timestamp != null) {
+				long time = timestamp.getMillis();
+				if((lastStoredMillis == null) || (time > lastStoredMillis)) {
+					lastStoredMillis = time;
+				}
+			}
+		}
+		
+		/**
+		 * Returns the number of points, counted from the start of the upload
+		 * and including the duplicates and invalid points, whose chunks were
+		 * committed. If the upload failed, only the points after these need
+		 * to be uploaded again.
+		 * 
+		 * @return The number of points that were handled.
+		 */
+		public long getNumPointsCommitted() {
+			return numPointsCommitted;
+		}
+		
+		/**
+		 * Returns the number of points that were stored, i.e. that were
+		 * neither duplicates nor invalid.
+		 * 
+		 * @return The number of points stored.
+		 */
+		public long getNumStored() {
+			return numStored;
+		}
+		
+		/**
+		 * Returns the number of stored points that had a location.
+		 * 
+		 * @return The number of stored points with a location.
+		 */
+		public long getNumStoredWithLocation() {
+			return numStoredWithLocation;
+		}
+		
+		/**
+		 * Returns the latest time at which a stored point was taken.
+		 * 
+		 * @return The latest time in milliseconds since the epoch or null if
+		 * 		   no stored point had a timestamp.
+		 */
+		public Long getLastStoredMillis() {
+			return lastStoredMillis;
+		}
+		
+		/**
+		 * Returns the number of valid points that were not stored because
+		 * they were duplicates.
+		 * 
+		 * @return The number of duplicates.
+		 */
+		public long getNumDuplicates() {
+			return numDuplicates;
+		}
+		
+		/**
+		 * Returns why the upload stopped before all of its points were
+		 * stored. The points counted by {@link #getNumPointsCommitted()}
+		 * remain stored.
+		 * 
+		 * @return The error or null if the whole upload was stored.
+		 */
+		public ServiceException getFailure() {
+			return failure;
+		}
+	}
+	
+	/**
+	 * The state of one upload as its points move from the parser, through
+	 * validation, to the database. Chunks are validated in parallel but are
+	 * always stored in the order they were parsed.
+	 *
+	 * @author John Jenkins
+	 */
+	private final class UploadPipeline {
+		private final String username;
+		private final Observer observer;
+		private final List<InvalidPoint> invalidPoints;
+		private final UploadResult result;
+		
+		private final LinkedList<Future<ValidatedChunk>> pending =
+			new LinkedList<Future<ValidatedChunk>>();
+		private long numPointsParsed = 0;
+		
+		// The time spent in each stage. Validation happens on many threads
+		// at once, so its time is the sum across all of them.
+		private long parseNanos = 0;
+		private final AtomicLong validateNanos = new AtomicLong(0);
+		private long duplicateNanos = 0;
+		private long storeNanos = 0;
+		
+		/**
+		 * Creates a pipeline for an upload.
+		 * 
+		 * @param username The user who is uploading the data.
+		 * 
+		 * @param observer The observer to which the data belong.
+		 * 
+		 * @param invalidPoints The list to which invalid points are added or
+		 * 						null if an invalid point should fail the
+		 * 						upload.
+		 * 
+		 * @param result The result in which the committed chunks are
+		 * 				 tallied.
+		 */
+		private UploadPipeline(
+				final String username,
+				final Observer observer,
+				final List<InvalidPoint> invalidPoints,
+				final UploadResult result) {
+			
+			this.username = username;
+			this.observer = observer;
+			this.invalidPoints = invalidPoints;
+			this.result = result;
+		}
+		
+		/**
+		 * Queues a chunk of parsed points to be validated. If too many chunks
+		 * are already waiting, the oldest is stored first.
+		 * 
+		 * @param nodes The parsed points.
+		 * 
+		 * @throws ServiceException There was an error storing the oldest
+		 * 							chunk.
+		 */
+		private void submit(
+				final List<JsonNode> nodes)
+				throws ServiceException {
+			
+			final long firstIndex = numPointsParsed;
+			numPointsParsed += nodes.size();
+			
+			pending.add(
+				dataValidators.submit(
+					new Callable<ValidatedChunk>() {
+						/**
+						 * Validates each point against its stream's 
+						 * schema.
+						 */
+						@Override
+						public ValidatedChunk call() throws ServiceException {
+							long start = System.nanoTime();
+							ValidatedChunk result =
+								new ValidatedChunk(nodes.size());
+							
+							try {
+								int numNodes = nodes.size();
+								for(int i = 0; i < numNodes; i++) {
+									JsonNode node = nodes.get(i);
+									
+									try {
+										result.points.add(
+											observer.getDataStream(node));
+									}
+									catch(DomainException e) {
+										if(invalidPoints == null) {
+											throw new ServiceException(
+												ErrorCode.OBSERVER_INVALID_STREAM_DATA,
+												"The data was malformed: " + 
+													e.getMessage(),
+												e);
+										}
+										
+										LOGGER
+											.warn(
+												"An invalid point was detected for observer '" +
+													observer.getId() +
+													"' with version '" +
+													observer.getVersion() +
+													"': " +
+													e.getMessage());
+										result.invalidPoints
+											.add(
+												new InvalidPoint(
+													firstIndex + i, 
+													node.toString(), 
+													e.getMessage(), 
+													e));
+									}
+								}
+							}
+							finally {
+								validateNanos.addAndGet(
+									System.nanoTime() - start);
+							}
+							
+							return result;
+						}
+					}));
+			
+			if(pending.size() >= MAX_PENDING_CHUNKS) {
+				storeNext();
+			}
+		}
+		
+		/**
+		 * Waits for the oldest chunk to be validated, prunes its duplicates,
+		 * and stores it.
+		 * 
+		 * @throws ServiceException The chunk was invalid or could not be
+		 * 							stored.
+		 */
+		private void storeNext() throws ServiceException {
+			ValidatedChunk chunk;
+			try {
+				chunk = pending.removeFirst().get();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ServiceException(
+					"The upload was interrupted.",
+					e);
+			}
+			catch(ExecutionException e) {
+				if(e.getCause() instanceof ServiceException) {
+					throw (ServiceException) e.getCause();
+				}
+				throw new ServiceException(
+					"The data could not be validated.",
+					e.getCause());
+			}
+			
+			long start = System.nanoTime();
+			int numPoints = chunk.points.size();
+			removeDuplicates(username, observer.getId(), chunk.points);
+			int numDuplicates = numPoints - chunk.points.size();
+			duplicateNanos += System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			if(! chunk.points.isEmpty()) {
+				storeData(username, observer, chunk.points);
+			}
+			storeNanos += System.nanoTime() - start;
+			
+			// Only a committed chunk is counted, so that the result describes
+			// exactly what is in the database if a later chunk fails.
+			result.numPointsCommitted += chunk.size;
+			result.numDuplicates += numDuplicates;
+			for(DataStream point : chunk.points) {
+				result.stored(point);
+			}
+			if(invalidPoints != null) {
+				invalidPoints.addAll(chunk.invalidPoints);
+			}
+		}
+		
+		/**
+		 * Stores all of the remaining chunks.
+		 * 
+		 * @throws ServiceException A chunk was invalid or could not be 
+		 * 							stored.
+		 */
+		private void finish() throws ServiceException {
+			while(! pending.isEmpty()) {
+				storeNext();
+			}
+		}
+		
+		/**
+		 * Stops validating any chunks that have not yet been stored.
+		 */
+		private void cancel() {
+			for(Future<ValidatedChunk> chunk : pending) {
+				chunk.cancel(true);
+			}
+			pending.clear();
+		}
+		
+		/**
+		 * Logs the time spent in each stage.
+		 */
+		private void logTimes() {
+			LOGGER.info(
+				"Uploaded " + 
+					numPointsParsed + 
+					" points for observer '" + 
+					observer.getId() + 
+					"' in chunks of " + 
+					UPLOAD_CHUNK_SIZE +
+					": parsing took " + 
+					TimeUnit.NANOSECONDS.toMillis(parseNanos) + 
+					"ms, validating took " + 
+					TimeUnit.NANOSECONDS.toMillis(validateNanos.get()) + 
+					"ms across all threads, pruning duplicates took " + 
+					TimeUnit.NANOSECONDS.toMillis(duplicateNanos) + 
+					"ms, and storing took " + 
+					TimeUnit.NANOSECONDS.toMillis(storeNanos) + 
+					"ms.");
+		}
+	}
+	
 	private static ObserverServices instance;
 	private IObserverQueries observerQueries;
 	
+	// Validates chunks of uploaded points. Validation runs the streams'
+	// schemas and uses only the processor, so there is one thread per
+	// processor.
+	private final ExecutorService dataValidators;
+	
 	/**
 	 * Default constructor. Privately instantiated via dependency injection
 	 * (reflection).
@@ -169,6 +555,27 @@ public class ObserverServices {
 		
 		observerQueries = iObserverQueries;
 		instance = this;
+		
+		final AtomicInteger threadCount = new AtomicInteger(0);
+		dataValidators = 
+			Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(),
+				new ThreadFactory() {
+					/**
+					 * Creates a daemon thread so that the pool never keeps 
+					 * the server from shutting down.
+					 */
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						Thread result =
+							new Thread(
+								runnable,
+								"ObserverServices-" + 
+									threadCount.incrementAndGet());
+						result.setDaemon(true);
+						return result;
+					}
+				});
 	}
 	
 	/**
@@ -200,6 +607,8 @@ public class ObserverServices {
 		catch(DataAccessException e) {
 			throw new ServiceException(e);
 		}
+		
+		VersionStamps.bump(VersionStamps.Domain.OBSERVER);
 	}
 	
 	/**
@@ -688,6 +1097,144 @@ public class ObserverServices {
 		return result;
 	}
 	
+	/**
+	 * Validates, prunes the duplicates from, and stores uploaded data as it
+	 * is read. The data is parsed one point at a time and grouped into chunks
+	 * of {@value #UPLOAD_CHUNK_SIZE} points. The chunks are validated in 
+	 * parallel, one per processor, while earlier chunks are pruned and stored
+	 * in the order they were uploaded. At most a fixed number of chunks may
+	 * wait to be stored, after which the parser waits for the database.<br />
+	 * <br />
+	 * Each chunk is stored in its own transaction, so, if the upload fails,
+	 * the chunks before the failure remain stored. Rather than being thrown,
+	 * the failure is returned in the result along with the number of points
+	 * that were committed, and its error text says how many there were. Only
+	 * the points after those should be uploaded again, because only points
+	 * with an ID are pruned as duplicates.
+	 * 
+	 * @param username The user who is uploading the data.
+	 * 
+	 * @param observer The observer to which the data belong.
+	 * 
+	 * @param data The parser for the data, which must be a JSON array of 
+	 * 			   points.
+	 * 
+	 * @param invalidPoints A list to which the points that are not entirely 
+	 * 						valid, and why, are added. If this is null, an
+	 * 						invalid point fails the upload. Only the invalid
+	 * 						points in committed chunks are added.
+	 * 
+	 * @return The tallies of the committed chunks and, if the data was 
+	 * 		   invalid or there was an error storing it, the failure.
+	 */
+	public UploadResult uploadData(
+			final String username,
+			final Observer observer,
+			final JsonParser data,
+			final List<InvalidPoint> invalidPoints) {
+		
+		UploadResult result = new UploadResult();
+		UploadPipeline pipeline =
+			new UploadPipeline(username, observer, invalidPoints, result);
+		
+		try {
+			long start = System.nanoTime();
+			if(data.nextToken() != JsonToken.START_ARRAY) {
+				throw new ServiceException(
+					ErrorCode.OBSERVER_INVALID_STREAM_DATA,
+					"The data was not a JSON array.");
+			}
+			
+			List<JsonNode> nodes = new ArrayList<JsonNode>(UPLOAD_CHUNK_SIZE);
+			JsonToken token;
+			while((token = data.nextToken()) != JsonToken.END_ARRAY) {
+				if(token == null) {
+					throw new ServiceException(
+						ErrorCode.OBSERVER_INVALID_STREAM_DATA,
+						"The data was not well-formed JSON.");
+				}
+				
+				nodes.add(data.readValueAsTree());
+				if(nodes.size() == UPLOAD_CHUNK_SIZE) {
+					pipeline.parseNanos += System.nanoTime() - start;
+					pipeline.submit(nodes);
+					nodes = new ArrayList<JsonNode>(UPLOAD_CHUNK_SIZE);
+					start = System.nanoTime();
+				}
+			}
+			pipeline.parseNanos += System.nanoTime() - start;
+			if(! nodes.isEmpty()) {
+				pipeline.submit(nodes);
+			}
+			
+			pipeline.finish();
+		}
+		catch(JsonProcessingException e) {
+			result.failure =
+				describeFailure(
+					result,
+					new ServiceException(
+						ErrorCode.OBSERVER_INVALID_STREAM_DATA,
+						"The data was not well-formed JSON.",
+						e));
+		}
+		catch(IOException e) {
+			result.failure =
+				describeFailure(
+					result,
+					new ServiceException(
+						ErrorCode.OBSERVER_INVALID_STREAM_DATA,
+						"Could not read the data from the parser.",
+						e));
+		}
+		catch(ServiceException e) {
+			result.failure = describeFailure(result, e);
+		}
+		finally {
+			pipeline.cancel();
+			pipeline.logTimes();
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Adds the number of points that were committed to the error text of an
+	 * upload's failure, so that the uploader knows where to resume.
+	 * 
+	 * @param result The upload's result.
+	 * 
+	 * @param failure The reason the upload failed.
+	 * 
+	 * @return The failure itself if nothing was committed, otherwise a 
+	 * 		   failure whose error text also says how much was committed.
+	 */
+	private ServiceException describeFailure(
+			final UploadResult result,
+			final ServiceException failure) {
+		
+		if(result.numPointsCommitted == 0) {
+			return failure;
+		}
+		
+		ErrorCode errorCode = ErrorCode.SYSTEM_GENERAL_ERROR;
+		String errorText = "The upload failed.";
+		if(failure.getAnnotator() != null) {
+			errorCode = failure.getAnnotator().getErrorCode();
+			errorText = failure.getAnnotator().getErrorText();
+		}
+		
+		return new ServiceException(
+			errorCode,
+			errorText + 
+				" The first " + 
+				result.numPointsCommitted + 
+				" points were committed; only the points after them should " +
+				"be uploaded again, as points without an ID are not pruned " +
+				"as duplicates.",
+			failure);
+	}
+	
 	/**
 	 * Prunes the duplicates from the collection of data elements. A duplicate
 	 * is defined as a point with an ID whose ID already exists for the given
@@ -878,6 +1425,111 @@ public class ObserverServices {
 		}
 	}
 
+	/**
+	 * Reduces all of a user's data for a stream in a range of time with an
+	 * aggregator in a single pass over the data.
+	 * 
+	 * @param stream The Stream object for the stream whose data is in 
+	 * 				 question. Required.
+	 * 
+	 * @param username The username of the user to which the data must belong.
+	 * 				   Required.
+	 * 
+	 * @param observerId The observer's unique identifier. Required.
+	 * 
+	 * @param observerVersion The observer's version. Optional.
+	 * 
+	 * @param startDate The earliest data point to aggregate. Required.
+	 * 
+	 * @param endDate The latest point data point to aggregate. Required.
+	 * 
+	 * @param aggregator The aggregator, which will be finished when this
+	 * 					 returns.
+	 * 
+	 * @throws ServiceException There was an error.
+	 */
+	public void aggregateStreamData(
+			final Stream stream,
+			final String username,
+			final String observerId,
+			final Long observerVersion,
+			final DateTime startDate,
+			final DateTime endDate,
+			final DataStreamAggregator aggregator)
+			throws ServiceException {
+		
+		try {
+			observerQueries.aggregateData(
+				stream,
+				username,
+				observerId,
+				observerVersion,
+				startDate,
+				endDate,
+				aggregator);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+	
+	/**
+	 * Gives all of a user's data for a stream in a range of time to a handler
+	 * in a single pass over the data, so that it need not all be in memory.
+	 * 
+	 * @param stream The Stream object for the stream whose data is in 
+	 * 				 question. Required.
+	 * 
+	 * @param username The username of the user to which the data must belong.
+	 * 				   Required.
+	 * 
+	 * @param observerId The observer's unique identifier. Required.
+	 * 
+	 * @param observerVersion The observer's version. Optional.
+	 * 
+	 * @param startDate The earliest data point to read. Optional.
+	 * 
+	 * @param endDate The latest point data point to read. Optional.
+	 * 
+	 * @param chronological Whether the points are read oldest first or 
+	 * 						newest first.
+	 * 
+	 * @param numToSkip The number of points to skip. Required.
+	 * 
+	 * @param handler The handler to which each point is given.
+	 * 
+	 * @throws ServiceException There was an error or a point could not be
+	 * 							handled.
+	 */
+	public void readAllStreamData(
+			final Stream stream,
+			final String username,
+			final String observerId,
+			final Long observerVersion,
+			final DateTime startDate,
+			final DateTime endDate,
+			final boolean chronological,
+			final long numToSkip,
+			final DataStream.Handler handler)
+			throws ServiceException {
+		
+		try {
+			observerQueries.readAllData(
+				stream,
+				username,
+				observerId,
+				observerVersion,
+				startDate,
+				endDate,
+				chronological,
+				numToSkip,
+				handler);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+
 	/**
 	 * Retrieves the invalid data for a stream.
 	 * 
@@ -951,5 +1603,7 @@ public class ObserverServices {
 		catch(DataAccessException e) {
 			throw new ServiceException(e);
 		}
+		
+		VersionStamps.bump(VersionStamps.Domain.OBSERVER);
 	}
 }
\ No newline at end of file
@@ -15,14 +15,29 @@
  ******************************************************************************/
 package org.ohmage.service;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.ImageVariantCache;
 import org.ohmage.domain.Audio;
 import org.ohmage.domain.Image;
 import org.ohmage.domain.Video;
@@ -31,10 +46,13 @@ import org.ohmage.domain.campaign.Response;
 import org.ohmage.domain.campaign.SurveyResponse;
 import org.ohmage.domain.campaign.SurveyResponse.ColumnKey;
 import org.ohmage.domain.campaign.SurveyResponse.SortParameter;
+import org.ohmage.domain.campaign.SurveyResponseReader;
+import org.ohmage.domain.campaign.SurveyUploadStatus;
 import org.ohmage.domain.campaign.response.AudioPromptResponse;
 import org.ohmage.domain.campaign.response.PhotoPromptResponse;
 import org.ohmage.domain.campaign.response.VideoPromptResponse;
 import org.ohmage.exception.DataAccessException;
+import org.ohmage.exception.DomainException;
 import org.ohmage.exception.ServiceException;
 import org.ohmage.query.IImageQueries;
 import org.ohmage.query.ISurveyResponseImageQueries;
@@ -52,6 +70,141 @@ import org.ohmage.query.ISurveyUploadQuery;
  * @author Joshua Selsky
  */
 public final class SurveyResponseServices {
+	private static final Logger LOGGER = 
+		Logger.getLogger(SurveyResponseServices.class);
+	
+	/**
+	 * The number of survey responses that are read and validated before they
+	 * are handed to the database as one batch.
+	 */
+	public static final int UPLOAD_BATCH_SIZE = 100;
+	
+	/**
+	 * The number of validated batches that may be waiting to be inserted.
+	 * Once this many are waiting, reading pauses until the database catches
+	 * up.
+	 */
+	public static final int UPLOAD_QUEUED_BATCHES = 2;
+	
+	/**
+	 * How long the inserter waits for the next batch before it checks
+	 * whether the reader has stopped without queueing one.
+	 */
+	private static final long UPLOAD_BATCH_WAIT_MILLIS = 1000;
+	
+	/**
+	 * The outcome of a survey response upload that was read and inserted in
+	 * batches. Only the information about the responses that is needed after
+	 * the upload is retained, not the responses themselves.
+	 * 
+	 * @author John Jenkins
+	 */
+	public static final class UploadResult {
+		private final List<UUID> surveyResponseIds = new ArrayList<UUID>();
+		private final List<Integer> duplicateIndexes = new ArrayList<Integer>();
+		private final List<SurveyUploadStatus> statuses = 
+			new ArrayList<SurveyUploadStatus>();
+		private long numStored = 0;
+		private long numStoredWithLocation = 0;
+		private Long lastStoredMillis = null;
+		private ServiceException failure = null;
+		
+		/**
+		 * Only the services may create a result.
+		 */
+		private UploadResult() {}
+		
+		/**
+		 * Returns the IDs of all of the uploaded survey responses in the
+		 * order in which they were uploaded, including the duplicates but not
+		 * those that failed.
+		 * 
+		 * @return The survey response IDs.
+		 */
+		public List<UUID> getSurveyResponseIds() {
+			return surveyResponseIds;
+		}
+		
+		/**
+		 * Returns the status of each survey response in the order in which
+		 * they were uploaded. This is only populated if the upload was
+		 * allowed to partially fail.
+		 * 
+		 * @return The survey responses' statuses.
+		 */
+		public List<SurveyUploadStatus> getStatuses() {
+			return statuses;
+		}
+		
+		/**
+		 * Returns the indexes of the survey responses that were duplicates.
+		 * 
+		 * @return The indexes of the duplicates.
+		 */
+		public List<Integer> getDuplicateIndexes() {
+			return duplicateIndexes;
+		}
+		
+		/**
+		 * Returns why the upload stopped before all of its survey responses
+		 * were read. This is only set if the upload was allowed to partially
+		 * fail, in which case the responses before that point were still
+		 * handled as reported.
+		 * 
+		 * @return The error or null if the whole upload was read.
+		 */
+		public ServiceException getFailure() {
+			return failure;
+		}
+		
+		/**
+		 * Tallies a survey response that was stored.
+		 * 
+		 * @param surveyResponse The survey response.
+		 */
+		private void stored(final SurveyResponse surveyResponse) {
+			numStored++;
+			if(surveyResponse.getLocation() != null) {
+				numStoredWithLocation++;
+			}
+			
+			long time = surveyResponse.getTime();
+			if((lastStoredMillis == null) || (time > lastStoredMillis)) {
+				lastStoredMillis = time;
+			}
+		}
+		
+		/**
+		 * Returns the number of survey responses that were stored, i.e. that
+		 * were not duplicates.
+		 * 
+		 * @return The number of survey responses stored.
+		 */
+		public long getNumStored() {
+			return numStored;
+		}
+		
+		/**
+		 * Returns the number of stored survey responses that had a location.
+		 * 
+		 * @return The number of stored survey responses with a location.
+		 */
+		public long getNumStoredWithLocation() {
+			return numStoredWithLocation;
+		}
+		
+		/**
+		 * Returns the latest time at which a stored survey response was
+		 * taken.
+		 * 
+		 * @return The latest time in milliseconds since the epoch or null if
+		 * 		   nothing was stored.
+		 */
+		public Long getLastStoredMillis() {
+			return lastStoredMillis;
+		}
+	}
+	
 	private static SurveyResponseServices instance;
 	
 	private IImageQueries imageQueries;
@@ -59,6 +212,12 @@ public final class SurveyResponseServices {
 	private ISurveyResponseQueries surveyResponseQueries;
 	private ISurveyResponseImageQueries surveyResponseImageQueries;
 	
+	// Reads and validates uploaded survey responses while the previously
+	// read ones are inserted. Validation uses only the processor, so there
+	// is one thread per processor, and an upload whose reader is waiting for
+	// a thread simply waits with it.
+	private final ExecutorService uploadReaders;
+	
 	/**
 	 * Default constructor. Privately instantiated via dependency injection
 	 * (reflection).
@@ -94,6 +253,27 @@ public final class SurveyResponseServices {
 		surveyResponseQueries = iSurveyResponseQueries;
 		surveyResponseImageQueries = iSurveyResponseImageQueries;
 		
+		final AtomicInteger threadCount = new AtomicInteger(0);
+		uploadReaders = 
+			Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(),
+				new ThreadFactory() {
+					/**
+					 * Creates a daemon thread so that the pool never keeps 
+					 * the server from shutting down.
+					 */
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						Thread result =
+							new Thread(
+								runnable,
+								"SurveyResponseServices-" + 
+									threadCount.incrementAndGet());
+						result.setDaemon(true);
+						return result;
+					}
+				});
+		
 		instance = this;
 	}
 	
@@ -142,18 +322,438 @@ public final class SurveyResponseServices {
             throws ServiceException {
 		
 		try {
-			return surveyUploadQuery.insertSurveys(
-				user, 
-				client, 
-				campaignUrn, 
-				surveyUploadList, 
-				bufferedImageMap,
-				videoContentsMap,
-				audioContentsMap);
+			List<Integer> duplicateIndexList = 
+				surveyUploadQuery.insertSurveys(
+					user, 
+					client, 
+					campaignUrn, 
+					surveyUploadList, 
+					bufferedImageMap,
+					videoContentsMap,
+					audioContentsMap);
+			
+			if(duplicateIndexList.size() < surveyUploadList.size()) {
+				VisualizationServices.campaignDataChanged(campaignUrn);
+			}
+			
+			return duplicateIndexList;
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+	
+	/**
+	 * Creates new survey responses in the database as they are read. A
+	 * separate thread reads and validates the responses in batches of
+	 * {@value #UPLOAD_BATCH_SIZE} while the previous batches are inserted,
+	 * so at most a few batches are ever in memory at once. The upload is a
+	 * single transaction, so if any response is invalid, none of them are
+	 * stored.
+	 * 
+	 * @param user The username of the user that created these survey
+	 * 			   responses.
+	 * 
+	 * @param client The client value.
+	 * 
+	 * @param campaignUrn The unique identifier for the campaign to which the
+	 * 					  responses belong.
+	 * 
+	 * @param reader The reader over the uploaded survey responses.
+	 * 
+	 * @param bufferedImageMap The map of image unique identifiers to their
+	 * 						   objects. Every photo prompt response must have
+	 * 						   its image in this map.
+	 * 
+	 * @param videoContentsMap The map of the video unique identifiers to their
+	 * 						   objects. Every video prompt response must have
+	 * 						   its video in this map.
+	 * 
+	 * @param audioContentsMap The map of the audio unique identifiers to their
+	 * 						   objects. Every audio prompt response must have
+	 * 						   its audio file in this map.
+	 * 
+	 * @return The outcome of the upload.
+	 * 
+	 * @throws ServiceException One of the responses was invalid or was 
+	 * 							missing its media, or there was an error
+	 * 							storing the responses.
+	 */
+	public UploadResult createSurveyResponses(
+			final String user,
+			final String client,
+			final String campaignUrn,
+			final SurveyResponseReader reader,
+			final Map<UUID, Image> bufferedImageMap,
+			final Map<String, Video> videoContentsMap,
+			final Map<String, Audio> audioContentsMap)
+			throws ServiceException {
+		
+		final UploadResult result = new UploadResult();
+		
+		// The batches that have been validated but not yet inserted. The end
+		// of the upload is marked by a batch that is never handed out.
+		final BlockingQueue<List<SurveyResponse>> batches =
+			new ArrayBlockingQueue<List<SurveyResponse>>(
+				UPLOAD_QUEUED_BATCHES);
+		final List<SurveyResponse> endOfUpload =
+			new ArrayList<SurveyResponse>(0);
+		final Throwable[] readError = new Throwable[1];
+		
+		final Future<?> readerTask =
+			uploadReaders.submit(
+				new Runnable() {
+					/**
+					 * Reads, validates, and queues each batch.
+					 */
+					@Override
+					public void run() {
+						try {
+							List<SurveyResponse> batch;
+							while(! 
+								(batch = reader.nextBatch(UPLOAD_BATCH_SIZE))
+									.isEmpty()) {
+								
+								verifyImagesExistForPhotoPromptResponses(
+									batch, 
+									bufferedImageMap);
+								verifyVideosExistForVideoPromptResponses(
+									batch, 
+									videoContentsMap);
+								verifyAudioFilesExistForAudioPromptResponses(
+									batch, 
+									audioContentsMap);
+								
+								batches.put(batch);
+							}
+						}
+						catch(DomainException e) {
+							readError[0] = new ServiceException(e);
+						}
+						catch(InterruptedException e) {
+							// The upload was abandoned.
+						}
+						catch(Throwable t) {
+							// Whatever went wrong, the inserter must be told
+							// so that it doesn't wait forever.
+							readError[0] = t;
+						}
+						finally {
+							try {
+								batches.put(endOfUpload);
+							}
+							catch(InterruptedException e) {
+								// The upload was abandoned.
+							}
+						}
+					}
+				});
+		
+		try {
+			List<Integer> duplicateIndexes =
+				surveyUploadQuery.insertSurveys(
+					user,
+					client,
+					campaignUrn,
+					new ISurveyUploadQuery.SurveyResponseSource() {
+						/**
+						 * Waits for the next validated batch.
+						 */
+						@Override
+						public List<SurveyResponse> nextBatch()
+								throws DataAccessException {
+							
+							List<SurveyResponse> batch;
+							try {
+								while((batch = 
+									batches.poll(
+										UPLOAD_BATCH_WAIT_MILLIS, 
+										TimeUnit.MILLISECONDS)) == null) {
+									
+									if(readerTask.isDone()) {
+										// The reader may have queued its
+										// last batch just before it 
+										// stopped.
+										batch = batches.poll();
+										if(batch == null) {
+											throw new DataAccessException(
+												"The survey responses could not be read.",
+												readError[0]);
+										}
+										break;
+									}
+								}
+							}
+							catch(InterruptedException e) {
+								throw new DataAccessException(
+									"Interrupted while waiting for the survey responses.",
+									e);
+							}
+							
+							if(batch == endOfUpload) {
+								if(readError[0] != null) {
+									throw new DataAccessException(
+										"The survey responses could not be read.",
+										readError[0]);
+								}
+								
+								return null;
+							}
+							
+							for(SurveyResponse surveyResponse : batch) {
+								result.surveyResponseIds.add(
+									surveyResponse.getSurveyResponseId());
+							}
+							return batch;
+						}
+						
+						/**
+						 * Tallies the responses that were stored.
+						 */
+						@Override
+						public void batchInserted(
+								final List<SurveyResponse> batch,
+								final Collection<Integer> duplicateIndexes) {
+							
+							Set<Integer> duplicates = 
+								new HashSet<Integer>(duplicateIndexes);
+							
+							int index = 0;
+							for(SurveyResponse surveyResponse : batch) {
+								if(duplicates.contains(index++)) {
+									continue;
+								}
+								
+								result.stored(surveyResponse);
+							}
+						}
+					},
+					bufferedImageMap,
+					videoContentsMap,
+					audioContentsMap);
+			
+			result.duplicateIndexes.addAll(duplicateIndexes);
 		}
 		catch(DataAccessException e) {
+			// If the responses themselves were the problem, report that
+			// instead of the aborted insert.
+			if(readError[0] instanceof ServiceException) {
+				throw (ServiceException) readError[0];
+			}
+			if(readError[0] != null) {
+				throw new ServiceException(
+					"The survey responses could not be read.",
+					readError[0]);
+			}
+			
 			throw new ServiceException(e);
 		}
+		finally {
+			readerTask.cancel(true);
+		}
+		
+		if(result.numStored > 0) {
+			VisualizationServices.campaignDataChanged(campaignUrn);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Creates new survey responses in the database as they are read, allowing
+	 * the upload to partially fail. Each batch of
+	 * {@value #UPLOAD_BATCH_SIZE} responses is checked against the responses
+	 * that are already stored with one query, and the rest are stored in
+	 * their own transaction. A response that is invalid, is a duplicate, is
+	 * missing its media, or cannot be stored is reported as such without
+	 * affecting the others, so a client only needs to upload the ones that
+	 * failed again. If the upload itself cannot be read any further, e.g.
+	 * because it isn't valid JSON, the responses before that point are still
+	 * reported and the error is returned with them rather than thrown.
+	 * 
+	 * @param user The username of the user that created these survey
+	 * 			   responses.
+	 * 
+	 * @param client The client value.
+	 * 
+	 * @param campaignUrn The unique identifier for the campaign to which the
+	 * 					  responses belong.
+	 * 
+	 * @param reader The reader over the uploaded survey responses.
+	 * 
+	 * @param bufferedImageMap The map of image unique identifiers to their
+	 * 						   objects.
+	 * 
+	 * @param videoContentsMap The map of the video unique identifiers to their
+	 * 						   objects.
+	 * 
+	 * @param audioContentsMap The map of the audio unique identifiers to their
+	 * 						   objects.
+	 * 
+	 * @return The outcome of the upload, including each response's status
+	 * 		   and, if the upload stopped early, why.
+	 */
+	public UploadResult createSurveyResponsesInChunks(
+			final String user,
+			final String client,
+			final String campaignUrn,
+			final SurveyResponseReader reader,
+			final Map<UUID, Image> bufferedImageMap,
+			final Map<String, Video> videoContentsMap,
+			final Map<String, Audio> audioContentsMap) {
+		
+		UploadResult result = new UploadResult();
+		
+		try {
+			while(true) {
+				// Responses that fail validation are reported rather than
+				// stopping the upload.
+				List<SurveyUploadStatus> invalid = 
+					new ArrayList<SurveyUploadStatus>();
+				SortedMap<Integer, SurveyResponse> batch = 
+					reader.nextIndexedBatch(UPLOAD_BATCH_SIZE, invalid);
+				if(batch.isEmpty() && invalid.isEmpty()) {
+					break;
+				}
+				
+				SortedMap<Integer, SurveyUploadStatus> statuses = 
+					new TreeMap<Integer, SurveyUploadStatus>();
+				for(SurveyUploadStatus status : invalid) {
+					statuses.put(status.getIndex(), status);
+				}
+				
+				List<UUID> ids = new ArrayList<UUID>(batch.size());
+				for(SurveyResponse surveyResponse : batch.values()) {
+					ids.add(surveyResponse.getSurveyResponseId());
+				}
+				Set<UUID> existingIds = 
+					(ids.isEmpty()) ?
+						Collections.<UUID>emptySet() :
+						surveyResponseQueries
+							.getCampaignIdsForSurveyResponseIds(ids)
+							.keySet();
+				
+				// Decide which responses need to be stored before storing
+				// any of them.
+				SortedMap<Integer, SurveyResponse> chunk = 
+					new TreeMap<Integer, SurveyResponse>();
+				for(Map.Entry<Integer, SurveyResponse> entry : 
+						batch.entrySet()) {
+					
+					int index = entry.getKey();
+					SurveyResponse surveyResponse = entry.getValue();
+					UUID id = surveyResponse.getSurveyResponseId();
+					
+					if(existingIds.contains(id)) {
+						statuses.put(
+							index,
+							new SurveyUploadStatus(
+								index, 
+								id, 
+								SurveyUploadStatus.Status.DUPLICATE, 
+								null));
+						continue;
+					}
+					
+					Collection<SurveyResponse> single = 
+						Collections.singletonList(surveyResponse);
+					try {
+						verifyImagesExistForPhotoPromptResponses(
+							single, 
+							bufferedImageMap);
+						verifyVideosExistForVideoPromptResponses(
+							single, 
+							videoContentsMap);
+						verifyAudioFilesExistForAudioPromptResponses(
+							single, 
+							audioContentsMap);
+					}
+					catch(ServiceException e) {
+						statuses.put(
+							index,
+							new SurveyUploadStatus(
+								index, 
+								id, 
+								SurveyUploadStatus.Status.FAILED, 
+								e.getMessage()));
+						continue;
+					}
+					
+					chunk.put(index, surveyResponse);
+				}
+				
+				if(! chunk.isEmpty()) {
+					try {
+						for(SurveyUploadStatus status : 
+								surveyUploadQuery.insertSurveyChunk(
+									user, 
+									client, 
+									campaignUrn, 
+									chunk, 
+									bufferedImageMap, 
+									videoContentsMap, 
+									audioContentsMap)) {
+							
+							statuses.put(status.getIndex(), status);
+						}
+					}
+					catch(DataAccessException e) {
+						LOGGER.error("A chunk of survey responses could not be stored.", e);
+						
+						String failure = 
+							"The survey response could not be stored along " +
+								"with the other " + chunk.size() + 
+								" survey responses that were stored at the " +
+								"same time.";
+						for(Map.Entry<Integer, SurveyResponse> entry : 
+								chunk.entrySet()) {
+							
+							statuses.put(
+								entry.getKey(),
+								new SurveyUploadStatus(
+									entry.getKey(), 
+									entry.getValue().getSurveyResponseId(), 
+									SurveyUploadStatus.Status.FAILED, 
+									failure));
+						}
+					}
+				}
+				
+				for(SurveyUploadStatus status : statuses.values()) {
+					result.statuses.add(status);
+					
+					switch(status.getStatus()) {
+					case STORED:
+						result.stored(batch.get(status.getIndex()));
+						result.surveyResponseIds.add(
+							status.getSurveyResponseId());
+						break;
+						
+					case DUPLICATE:
+						result.duplicateIndexes.add(status.getIndex());
+						result.surveyResponseIds.add(
+							status.getSurveyResponseId());
+						break;
+						
+					case FAILED:
+						break;
+					}
+				}
+			}
+		}
+		catch(DomainException e) {
+			result.failure = new ServiceException(e);
+		}
+		catch(DataAccessException e) {
+			result.failure = new ServiceException(e);
+		}
+		finally {
+			if(result.numStored > 0) {
+				VisualizationServices.campaignDataChanged(campaignUrn);
+			}
+		}
+		
+		return result;
 	}
 	
 	/**
@@ -329,6 +929,11 @@ public final class SurveyResponseServices {
 	 * 				  null, no aggregation is performed. If the list is empty,
 	 * 				  an empty list is returned.
 	 * 
+	 * @param projection The columns that will be output for individual survey
+	 * 					 responses, which limits what is read. If this is 
+	 * 					 null, everything is read. This is ignored when 
+	 * 					 aggregating.
+	 * 
 	 * @param sortOrder The order in which to sort the responses.
 	 * 
 	 * @param surveyResponsesToSkip The number of survey responses to skip once
@@ -361,6 +966,7 @@ public final class SurveyResponseServices {
 			final String promptType,
 			final Set<String> promptResponseSearchTokens,
 			final Collection<ColumnKey> columns, 
+			final Collection<ColumnKey> projection,
 			final List<SortParameter> sortOrder,
 			final long surveyResponsesToSkip,
 			final long surveyResponsesToProcess,
@@ -381,6 +987,7 @@ public final class SurveyResponseServices {
 					promptType,
 					promptResponseSearchTokens,
 					columns,
+					projection,
 					sortOrder,
 					surveyResponsesToSkip,
 					surveyResponsesToProcess,
@@ -391,20 +998,85 @@ public final class SurveyResponseServices {
 		}
 	}
 	
+	/**
+	 * Gives every individual survey response that matches the criteria to a
+	 * handler as it is read from the database, so that they need not all be
+	 * in memory. The criteria are the same as those of
+	 * {@link #readSurveyResponseInformation(Campaign, String, Set, Collection, DateTime, DateTime, SurveyResponse.PrivacyState, Collection, Collection, String, Set, Collection, Collection, List, long, long, List)}
+	 * when the results are not aggregated, and the survey responses are
+	 * always read with all of their columns.
+	 * 
+	 * @param surveyResponsesToSkip The number of survey responses to skip.
+	 * 
+	 * @param handler The handler to which each survey response is given.
+	 * 
+	 * @throws ServiceException Thrown if there is an error or a survey
+	 * 							response could not be handled.
+	 */
+	public void readAllSurveyResponses(
+			final Campaign campaign,
+			final String username,
+			final Set<UUID> surveyResponseIds,
+			final Collection<String> usernames,
+			final DateTime startDate, final DateTime endDate, 
+			final SurveyResponse.PrivacyState privacyState, 
+			final Collection<String> surveyIds, 
+			final Collection<String> promptIds, 
+			final String promptType,
+			final Set<String> promptResponseSearchTokens,
+			final List<SortParameter> sortOrder,
+			final long surveyResponsesToSkip,
+			final SurveyResponse.Handler handler)
+			throws ServiceException {
+		
+		try {
+			surveyResponseQueries.readAllSurveyResponses(
+					campaign, 
+					username,
+					surveyResponseIds,
+					usernames, 
+					startDate, 
+					endDate, 
+					privacyState, 
+					surveyIds, 
+					promptIds, 
+					promptType,
+					promptResponseSearchTokens,
+					sortOrder,
+					surveyResponsesToSkip,
+					handler);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+	
 	/**
 	 * Updates the privacy state on a survey.
 	 * 
+	 * @param username  The username of the user making the change.
 	 * @param surveyResponseIds  The key for the survey responses to update.
 	 * @param privacyState  The new privacy state value.
 	 * @throws ServiceException  If an error occurs.
 	 */
 	public void updateSurveyResponsesPrivacyState(
+			final String username,
 			final Set<UUID> surveyResponseIds, 
 			final SurveyResponse.PrivacyState privacyState) 
 			throws ServiceException {
 		
 		try {
-			surveyResponseQueries.updateSurveyResponsesPrivacyState(surveyResponseIds, privacyState);
+			Set<String> campaignIds = 
+				new HashSet<String>(
+					surveyResponseQueries
+						.getCampaignIdsForSurveyResponseIds(surveyResponseIds)
+						.values());
+			
+			surveyResponseQueries.updateSurveyResponsesPrivacyState(username, surveyResponseIds, privacyState);
+			
+			for(String campaignId : campaignIds) {
+				VisualizationServices.campaignDataChanged(campaignId);
+			}
 		} 
 		catch(DataAccessException e) {
 			throw new ServiceException(e);
@@ -415,11 +1087,15 @@ public final class SurveyResponseServices {
 	 * Deletes all of the images associated with a survey response then deletes
 	 * the survey response itself.
 	 * 
+	 * @param username The username of the user deleting the survey response.
+	 * 
 	 * @param surveyResponseId The survey response's unique identifier.
 	 * 
 	 * @throws ServiceException Thrown if there is an error.
 	 */
-	public void deleteSurveyResponse(final UUID surveyResponseId) 
+	public void deleteSurveyResponse(
+			final String username,
+			final UUID surveyResponseId) 
 			throws ServiceException {
 		
 		try {
@@ -444,10 +1120,19 @@ public final class SurveyResponseServices {
 			for(UUID imageId : imageIds) {
 				if(imageId != null) {
 					imageQueries.deleteImage(imageId);
+					ImageVariantCache.invalidate(imageId);
 				}
 			}
 			
-			surveyResponseQueries.deleteSurveyResponse(surveyResponseId);
+			String campaignId = 
+				surveyResponseQueries
+					.getCampaignIdForSurveyResponseId(surveyResponseId);
+			
+			surveyResponseQueries.deleteSurveyResponse(username, surveyResponseId);
+			
+			if(campaignId != null) {
+				VisualizationServices.campaignDataChanged(campaignId);
+			}
 		}
 		catch(DataAccessException e) {
 			throw new ServiceException(e);
@@ -472,4 +1157,27 @@ public final class SurveyResponseServices {
 			throw new ServiceException(e);
 		}
 	}
+	
+	/**
+	 * Gets the campaign IDs for many survey response IDs at once.
+	 * 
+	 * @param surveyResponseIds The survey responses' unique identifiers.
+	 * 
+	 * @return A map of each survey response's unique identifier to its
+	 * 		   campaign's unique identifier. Unknown survey responses are not
+	 * 		   keys.
+	 * 
+	 * @throws ServiceException There was an error.
+	 */
+	public Map<UUID, String> getCampaignsForSurveyResponseIds(
+			final Collection<UUID> surveyResponseIds) 
+			throws ServiceException {
+		
+		try {
+			return surveyResponseQueries.getCampaignIdsForSurveyResponseIds(surveyResponseIds);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
 }
@@ -15,11 +15,11 @@
  ******************************************************************************/
 package org.ohmage.service;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.List;
 
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
 import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.exception.ServiceException;
@@ -36,6 +36,8 @@ import org.ohmage.util.DateTimeUtils;
  */
 public final class UploadValidationServices {
 	private static final String ISO_8601_TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss";
+	private static final DateTimeFormatter ISO_8601_TIMESTAMP_FORMATTER =
+		DateTimeFormat.forPattern(ISO_8601_TIMESTAMP_PATTERN);
 	
 	private static final List<String> LOCATION_STATUSES = Arrays.asList(new String[] {
 		JsonInputKeys.METADATA_LOCATION_STATUS_UNAVAILABLE,
@@ -58,7 +60,8 @@ public final class UploadValidationServices {
 	
 	/**
 	 * Validates the provided timestamp. The timestamp must be of the form 
-	 * yyyy-MM-dd HH:mm:ss in SimpleDateFormat pattern parlance. 
+	 * {@value #ISO_8601_TIMESTAMP_PATTERN} in SimpleDateFormat pattern
+	 * parlance. 
 	 * 
 	 * @param date The date to validate.
 	 * @param errorMessageEmptyOrNull The error message to push into the
@@ -79,20 +82,11 @@ public final class UploadValidationServices {
 					errorMessageEmptyOrNull);
 		}
 		
-		SimpleDateFormat sdf = new SimpleDateFormat(ISO_8601_TIMESTAMP_PATTERN);
-		sdf.setLenient(false);
-		
-		try {
-			
-			sdf.parse(timestamp);
-			
-		} catch (ParseException pe) {
-			
+		if(DateTimeUtils.decodeDate(ISO_8601_TIMESTAMP_FORMATTER, timestamp) == null) {
 			String msg = errorMessageInvalid + timestamp;
 			throw new ServiceException(
 					ErrorCode.SERVER_INVALID_TIMESTAMP, 
-					msg, 
-					pe);
+					msg);
 		}
 	}
 	
@@ -148,20 +142,20 @@ public final class UploadValidationServices {
 	/**
 	 * Validates the provided latitude.
 	 * 
-	 * @param latitude  The latitude to validate
-	 * @throws ServiceException if the latitude is null or not within the range
+	 * @param latitude  The latitude to validate or NaN if it is missing
+	 * @throws ServiceException if the latitude is missing or not within the range
 	 * of a correct latitude (-90 < latitude < 90)
 	 */
-	public static void validateLatitude(final Double latitude) 
+	public static void validateLatitude(final double latitude) 
 			throws ServiceException {
 		
-		if(latitude == null) {
+		if(Double.isNaN(latitude)) {
 			throw new ServiceException(
 					ErrorCode.SERVER_INVALID_LOCATION,
 					"latitude in upload message is null");
 		}
 		
-		if(latitude.doubleValue() < -90d || latitude.doubleValue() > 90d) {
+		if(latitude < -90d || latitude > 90d) {
 			throw new ServiceException(
 				ErrorCode.SERVER_INVALID_LOCATION,
                 "latitude in upload message is invalid: " + latitude);
@@ -171,20 +165,20 @@ public final class UploadValidationServices {
 	/**
 	 * Validates the provided longitude.
 	 * 
-	 * @param longitude The longitude to validate
-	 * @throws ServiceException if the latitude is null or not within the range
+	 * @param longitude The longitude to validate or NaN if it is missing
+	 * @throws ServiceException if the latitude is missing or not within the range
 	 * of a correct longitude (-180 < latitude < 180)
 	 */
-    public static void validateLongitude(final Double longitude) 
+    public static void validateLongitude(final double longitude) 
     		throws ServiceException {
     	
-    	if(longitude == null) {
+    	if(Double.isNaN(longitude)) {
     		throw new ServiceException(
     			ErrorCode.SERVER_INVALID_LOCATION,
     			"longitude in upload message is null");
 		}
 		
-		if(longitude.doubleValue() < -180d || longitude.doubleValue() > 180d) {
+		if(longitude < -180d || longitude > 180d) {
 			throw new ServiceException(
 				ErrorCode.SERVER_INVALID_LOCATION,
                 "longitude in upload message is invalid: " + longitude);
@@ -287,8 +281,8 @@ public final class UploadValidationServices {
 		}
 		
 		if(location != null) {
-			UploadValidationServices.validateLatitude(JsonUtils.getDoubleFromJsonObject(location, JsonInputKeys.METADATA_LOCATION_LATITUDE));
-			UploadValidationServices.validateLongitude(JsonUtils.getDoubleFromJsonObject(location, JsonInputKeys.METADATA_LOCATION_LONGITUDE));
+			UploadValidationServices.validateLatitude(JsonUtils.getDouble(location, JsonInputKeys.METADATA_LOCATION_LATITUDE, null));
+			UploadValidationServices.validateLongitude(JsonUtils.getDouble(location, JsonInputKeys.METADATA_LOCATION_LONGITUDE, null));
 			UploadValidationServices.validateAccuracy(JsonUtils.getStringFromJsonObject(location, JsonInputKeys.METADATA_LOCATION_ACCURACY));
 			UploadValidationServices.validateProvider(JsonUtils.getStringFromJsonObject(location, JsonInputKeys.METADATA_LOCATION_PROVIDER));
 			
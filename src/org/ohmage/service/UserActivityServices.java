@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.service;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.ohmage.domain.UserActivity;
+import org.ohmage.exception.DataAccessException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.query.IUserActivityQueries;
+
+/**
+ * This class contains the services for maintaining and reading the summaries
+ * of users' upload activity.
+ *
+ * @author John Jenkins
+ */
+public class UserActivityServices {
+	private static UserActivityServices instance;
+
+	private IUserActivityQueries userActivityQueries;
+
+	/**
+	 * Default constructor. Privately instantiated via dependency injection
+	 * (reflection).
+	 *
+	 * @throws IllegalStateException if an instance of this class already
+	 * exists
+	 *
+	 * @throws IllegalArgumentException if iUserActivityQueries is null
+	 */
+	private UserActivityServices(
+			final IUserActivityQueries iUserActivityQueries) {
+
+		if(instance != null) {
+			throw new IllegalStateException("An instance of this class already exists.");
+		}
+
+		if(iUserActivityQueries == null) {
+			throw new IllegalArgumentException("An instance of IUserActivityQueries is required.");
+		}
+
+		userActivityQueries = iUserActivityQueries;
+
+		instance = this;
+	}
+
+	/**
+	 * @return  Returns the singleton instance of this class.
+	 */
+	public static UserActivityServices instance() {
+		return instance;
+	}
+
+	/**
+	 * Adds the already tallied counts for a set of stored survey responses to
+	 * the user's activity summary for the campaign.
+	 *
+	 * @param username The username of the user that owns the responses.
+	 *
+	 * @param campaignId The campaign's unique identifier.
+	 *
+	 * @param lastDataMillis The latest time at which any of the responses was
+	 * 						 taken or null if none were stored.
+	 *
+	 * @param numPoints The number of responses that were stored.
+	 *
+	 * @param numPointsWithLocation The number of stored responses that had a
+	 * 								location.
+	 *
+	 * @throws ServiceException There was an error.
+	 */
+	public void recordSurveyActivity(
+			final String username,
+			final String campaignId,
+			final Long lastDataMillis,
+			final long numPoints,
+			final long numPointsWithLocation)
+			throws ServiceException {
+
+		if(numPoints == 0) {
+			return;
+		}
+
+		try {
+			userActivityQueries.recordActivity(
+					username,
+					UserActivity.SourceType.SURVEY,
+					campaignId,
+					lastDataMillis,
+					numPoints,
+					numPointsWithLocation);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+
+	/**
+	 * Adds the already tallied counts for a set of stored stream data points
+	 * to the user's activity summary for the observer.
+	 *
+	 * @param username The username of the user that uploaded the points.
+	 *
+	 * @param observerId The observer's unique identifier.
+	 *
+	 * @param lastDataMillis The latest time at which any of the points was
+	 * 						 taken or null if none had a timestamp.
+	 *
+	 * @param numPoints The number of points that were stored.
+	 *
+	 * @param numPointsWithLocation The number of stored points that had a
+	 * 								location.
+	 *
+	 * @throws ServiceException There was an error.
+	 */
+	public void recordStreamActivity(
+			final String username,
+			final String observerId,
+			final Long lastDataMillis,
+			final long numPoints,
+			final long numPointsWithLocation)
+			throws ServiceException {
+
+		if(numPoints == 0) {
+			return;
+		}
+
+		try {
+			userActivityQueries.recordActivity(
+					username,
+					UserActivity.SourceType.STREAM,
+					observerId,
+					lastDataMillis,
+					numPoints,
+					numPointsWithLocation);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+
+	/**
+	 * Retrieves the activity summaries of a set of users for a single source
+	 * over the default window, which is the last day.
+	 *
+	 * @param usernames The usernames of the users.
+	 *
+	 * @param sourceType The type of source.
+	 *
+	 * @param sourceId The source's unique identifier.
+	 *
+	 * @return A map of usernames to their activity. Users that have never
+	 * 		   uploaded anything to the source will not have an entry.
+	 *
+	 * @throws ServiceException There was an error.
+	 */
+	public Map<String, UserActivity> getActivity(
+			final Collection<String> usernames,
+			final UserActivity.SourceType sourceType,
+			final String sourceId)
+			throws ServiceException {
+
+		try {
+			return userActivityQueries.getActivity(
+					usernames,
+					sourceType,
+					sourceId,
+					UserActivity.DEFAULT_WINDOW_HOURS);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+}
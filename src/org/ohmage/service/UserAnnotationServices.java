@@ -16,15 +16,18 @@
 package org.ohmage.service;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.apache.log4j.Logger;
 import org.joda.time.DateTimeZone;
 import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.domain.Annotation;
+import org.ohmage.domain.PromptResponseAnnotation;
 import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.ServiceException;
@@ -124,6 +127,39 @@ public final class UserAnnotationServices {
 		}
 	}
 	
+	/**
+	 * Verifies that the user may read the annotations on all of the survey
+	 * responses, which they may if they are a supervisor in each of the
+	 * survey responses' campaigns. The survey responses' campaigns are looked
+	 * up together, and each distinct campaign is only checked once, no
+	 * matter how many of the survey responses belong to it.
+	 * 
+	 * @param username the user attempting to read the annotations
+	 * @param surveyResponseIds the survey response ids
+	 * @throws ServiceException if one of the survey responses doesn't exist,
+	 *                          if the user isn't allowed to read the
+	 *                          annotations on one of them, or if there was a
+	 *                          problem dispatching to the data layer
+	 */
+	public void verifyUserCanReadSurveyResponseAnnotations(final String username, 
+		final Collection<UUID> surveyResponseIds) 
+			throws ServiceException {
+		
+		Map<UUID, String> campaignIds = 
+			SurveyResponseServices.instance().getCampaignsForSurveyResponseIds(surveyResponseIds);
+		
+		for(UUID surveyResponseId : surveyResponseIds) {
+			if(! campaignIds.containsKey(surveyResponseId)) {
+				throw new ServiceException(
+						ErrorCode.SURVEY_INVALID_SURVEY_ID, 
+						"The survey response does not exist: " + surveyResponseId);
+			}
+		}
+		
+		Set<String> distinctCampaignIds = new HashSet<String>(campaignIds.values());
+		UserCampaignServices.instance().verifyUserCanReadAnnotationsInCampaigns(username, distinctCampaignIds);
+	}
+	
 	/**
 	 * Dispatches to the data layer to create an annotation on a survey
 	 * response.
@@ -165,6 +201,24 @@ public final class UserAnnotationServices {
 			throw new ServiceException(e);
 		}
 	}
+	
+	/**
+	 * Reads the annotations for many survey responses at once.
+	 * 
+	 * @param surveyResponseIds the survey responses to read annotations from
+	 * @return returns a map of each survey response id to the annotations 
+	 * that are attached to it, which may be empty
+	 */
+	public Map<UUID, List<Annotation>> readSurveyResponseAnnotations(
+		final Collection<UUID> surveyResponseIds)
+			throws ServiceException {
+		try {
+			return annotationQueries.readSurveyResponseAnnotations(surveyResponseIds);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
 
 	/**
 	 * Dispatches to the data layer to check whether the user
@@ -232,6 +286,26 @@ public final class UserAnnotationServices {
 		}
 	}
 	
+	/**
+	 * Reads the annotations on the prompt responses of many survey responses
+	 * at once.
+	 * 
+	 * @param surveyResponseIds the survey responses whose prompt responses'
+	 * annotations should be read
+	 * @return returns a map of each survey response id to the annotations 
+	 * that are attached to its prompt responses, which may be empty
+	 */
+	public Map<UUID, List<PromptResponseAnnotation>> readPromptResponseAnnotations(
+		final Collection<UUID> surveyResponseIds)
+			throws ServiceException {
+		try {
+			return annotationQueries.readPromptResponseAnnotations(surveyResponseIds);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+	
 	/**
 	 * Updates annotation text and its associated metadata.
 	 * 
@@ -15,10 +15,12 @@
  ******************************************************************************/
 package org.ohmage.service;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -258,6 +260,56 @@ public class UserCampaignServices {
 		}
 	}
 	
+	/**
+	 * Verifies that a user is allowed to read the annotations on the survey
+	 * responses in a campaign. Only supervisors may.
+	 * 
+	 * @param username The username of the user.
+	 * 
+	 * @param campaignId The campaign's unique identifier.
+	 * 
+	 * @throws ServiceException Thrown if the user isn't allowed to read the
+	 * 							annotations in the campaign or if there is an
+	 * 							error.
+	 */
+	public void verifyUserCanReadAnnotationsInCampaign(
+			final String username, final String campaignId) 
+			throws ServiceException  {
+		
+		try {
+			if(! userCampaignQueries.getUserCampaignRoles(username, campaignId).contains(Campaign.Role.SUPERVISOR)) {
+				throw new ServiceException(
+						ErrorCode.ANNOTATION_INSUFFICIENT_PERMISSIONS, 
+						"The user is not allowed to read the annotations in the following campaign: " + 
+							campaignId);
+			}
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+	
+	/**
+	 * Verifies that a user is allowed to read the annotations on the survey
+	 * responses in all of the campaigns.
+	 * 
+	 * @param username The username of the user.
+	 * 
+	 * @param campaignIds A Collection of unique identifiers for the campaigns.
+	 * 
+	 * @throws ServiceException Thrown if the user isn't allowed to read the
+	 * 							annotations in one of the campaigns or if
+	 * 							there is an error.
+	 */
+	public void verifyUserCanReadAnnotationsInCampaigns(
+			final String username, final Collection<String> campaignIds) 
+			throws ServiceException {
+		
+		for(String campaignId : campaignIds) {
+			verifyUserCanReadAnnotationsInCampaign(username, campaignId);
+		}
+	}
+	
 	/**
 	 * Verifies that some user is allowed to update some campaign.
 	 * 
@@ -934,6 +986,9 @@ public class UserCampaignServices {
 	 * @param withUsers Whether or not to aggregate all of the users and their
 	 * 					respective roles for this campaign.
 	 * 
+	 * @param withSurveys Whether or not the campaigns' surveys are needed. If
+	 * 					  not, the campaigns' XML isn't parsed.
+	 * 
 	 * @return A map of Campaign objects to the requesting user's respective
 	 * 		   roles.
 	 * 
@@ -950,7 +1005,8 @@ public class UserCampaignServices {
 			final Campaign.RunningState runningState, 
 			final Campaign.Role role,
 			final boolean withClasses,
-			final boolean withUsers) 
+			final boolean withUsers,
+			final boolean withSurveys) 
 			throws ServiceException {
 		
 		try {
@@ -965,25 +1021,78 @@ public class UserCampaignServices {
 							endDate, 
 							privacyState, 
 							runningState, 
-							role);
+							role,
+							withSurveys);
 			List<Campaign> campaignResults = queryResult.getResults();
 			
 			Map<Campaign, Collection<Campaign.Role>> result =
 					new HashMap<Campaign, Collection<Campaign.Role>>(
 							campaignResults.size());
+			if(campaignResults.isEmpty()) {
+				return result;
+			}
+			
+			// Gather the memberships for all of the campaigns at once rather
+			// than campaign by campaign.
+			Set<String> resultCampaignIds = 
+					new HashSet<String>(campaignResults.size());
+			for(Campaign campaign : campaignResults) {
+				resultCampaignIds.add(campaign.getId());
+			}
+			
+			Map<String, Set<Campaign.Role>> userRoles =
+					userCampaignQueries.getCampaignAndRolesForUser(username);
+			
+			Map<String, List<String>> campaignClasses = null;
+			if(withClasses) {
+				campaignClasses = 
+						campaignClassQueries.getClassesAssociatedWithCampaigns(
+								resultCampaignIds);
+			}
+			
+			Map<String, Map<String, Collection<Campaign.Role>>> campaignUsers = 
+					null;
+			if(withUsers) {
+				campaignUsers = 
+						userCampaignQueries.getUsersAndRolesForCampaigns(
+								resultCampaignIds);
+			}
+			
+			// Get the masks for this user, which are applied to their 
+			// respective campaigns.
+			Map<String, List<CampaignMask>> campaignMasks =
+					new HashMap<String, List<CampaignMask>>();
+			for(CampaignMask mask :
+					userCampaignQueries.getCampaignMasks(
+							null, 
+							null, 
+							null, 
+							null, 
+							username, 
+							null)) {
+				
+				List<CampaignMask> masks = 
+						campaignMasks.get(mask.getCampaignId());
+				if(masks == null) {
+					masks = new LinkedList<CampaignMask>();
+					campaignMasks.put(mask.getCampaignId(), masks);
+				}
+				masks.add(mask);
+			}
 			
 			for(Campaign campaign : campaignResults) {
+				Collection<Campaign.Role> roles = 
+						userRoles.get(campaign.getId());
 				result.put(
 						campaign, 
-						userCampaignQueries.getUserCampaignRoles(
-								username, 
-								campaign.getId()));
+						(roles == null) ? 
+							new ArrayList<Campaign.Role>(0) : 
+							new ArrayList<Campaign.Role>(roles));
 				
 				if(withClasses) {
 					try {
 						campaign.addClasses(
-								campaignClassQueries.getClassesAssociatedWithCampaign(
-										campaign.getId()));
+								campaignClasses.get(campaign.getId()));
 					}
 					catch(DomainException e) {
 						throw new ServiceException(
@@ -994,22 +1103,11 @@ public class UserCampaignServices {
 				
 				if(withUsers) {
 					// Add the users and their roles to the campaign.
-					campaign.addUsers(
-							userCampaignQueries.getUsersAndRolesForCampaign(
-									campaign.getId()));
+					campaign.addUsers(campaignUsers.get(campaign.getId()));
 				}
 				
-				// Get and apply the masks for this campaign.
-				campaign
-					.addMasks(
-						userCampaignQueries
-							.getCampaignMasks(
-								null, 
-								null, 
-								null, 
-								null, 
-								username, 
-								campaign.getId()));
+				// Apply the masks for this campaign.
+				campaign.addMasks(campaignMasks.get(campaign.getId()));
 			}
 			
 			return result;
@@ -18,7 +18,10 @@ package org.ohmage.service;
 import java.net.URL;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -28,6 +31,13 @@ import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.mail.Message;
 import javax.mail.MessagingException;
@@ -46,8 +56,10 @@ import org.apache.log4j.Logger;
 import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.cache.PreferenceCache;
 import org.ohmage.cache.UserBin;
+import org.ohmage.cache.VersionStamps;
 import org.ohmage.domain.Clazz;
 import org.ohmage.domain.User;
+import org.ohmage.domain.UserBatchEntry;
 import org.ohmage.domain.UserInformation;
 import org.ohmage.domain.UserInformation.UserPersonal;
 import org.ohmage.domain.UserSummary;
@@ -106,6 +118,16 @@ public final class UserServices {
 	private IUserImageQueries userImageQueries;
 	private IImageQueries imageQueries;
 	
+	/**
+	 * The number of users in a batch that are created or updated in the same
+	 * transaction.
+	 */
+	private static final int USER_BATCH_CHUNK_SIZE = 500;
+	
+	// Hashes the passwords of batches of users. Hashing is deliberately slow
+	// and uses only the processor, so there is one thread per processor.
+	private final ExecutorService passwordHashers;
+	
 	/**
 	 * Default constructor. Privately instantiated via dependency injection
 	 * (reflection).
@@ -146,6 +168,27 @@ public final class UserServices {
 		userClassQueries = iUserClassQueries;
 		userImageQueries = iUserImageQueries;
 		imageQueries = iImageQueries;
+		
+		final AtomicInteger threadCount = new AtomicInteger(0);
+		passwordHashers = 
+			Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(),
+				new ThreadFactory() {
+					/**
+					 * Creates a daemon thread so that the pool never keeps 
+					 * the server from shutting down.
+					 */
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						Thread result =
+							new Thread(
+								runnable,
+								"UserServices-" + 
+									threadCount.incrementAndGet());
+						result.setDaemon(true);
+						return result;
+					}
+				});
 	}
 	
 	/**
@@ -196,6 +239,236 @@ public final class UserServices {
 		}
 	}
 	
+	/**
+	 * Creates the users in a batch that don't exist and, if requested, 
+	 * updates the ones that do. A user that would be created must have a 
+	 * password. The passwords are hashed in parallel, and the users are saved
+	 * in chunks of {@value #USER_BATCH_CHUNK_SIZE}, each in its own 
+	 * transaction, while the passwords of the next chunk are being hashed. If
+	 * a chunk's passwords cannot be hashed or the chunk cannot be saved, each
+	 * of its users fails, but the other chunks are still saved and their
+	 * results are still returned.
+	 * 
+	 * @param users The users in the batch.
+	 * 
+	 * @param updateExisting Whether or not to update the users that already
+	 * 						 exist. If not, they fail.
+	 * 
+	 * @return The result for each user in the order of their rows.
+	 * 
+	 * @throws ServiceException There was an error checking which users 
+	 * 							exist, so none of them were saved.
+	 */
+	public List<UserBatchEntry.Result> createAndUpdateUsers(
+			final List<UserBatchEntry> users,
+			final boolean updateExisting)
+			throws ServiceException {
+		
+		Set<String> usernames = new HashSet<String>();
+		for(UserBatchEntry user : users) {
+			usernames.add(user.getUsername());
+		}
+		
+		Set<String> existingUsernames;
+		try {
+			existingUsernames = userQueries.getExistingUsernames(usernames);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+		
+		// Decide what to do with each user before doing any of it so that 
+		// only the passwords that will be used are hashed.
+		List<UserBatchEntry.Result> results = 
+			new ArrayList<UserBatchEntry.Result>(users.size());
+		List<UserBatchEntry> pending = new ArrayList<UserBatchEntry>();
+		for(UserBatchEntry user : users) {
+			if(existingUsernames.contains(user.getUsername())) {
+				if(! updateExisting) {
+					results.add(
+						new UserBatchEntry.Result(
+							user, 
+							UserBatchEntry.Result.Status.FAILED, 
+							"The user already exists."));
+					continue;
+				}
+			}
+			else if(user.getPassword() == null) {
+				results.add(
+					new UserBatchEntry.Result(
+						user, 
+						UserBatchEntry.Result.Status.FAILED, 
+						"A password is required to create a user."));
+				continue;
+			}
+			
+			pending.add(user);
+		}
+		
+		List<List<UserBatchEntry>> chunks = 
+			new ArrayList<List<UserBatchEntry>>();
+		for(int i = 0; i < pending.size(); i += USER_BATCH_CHUNK_SIZE) {
+			chunks.add(
+				pending.subList(
+					i, 
+					Math.min(i + USER_BATCH_CHUNK_SIZE, pending.size())));
+		}
+		
+		Map<String, Future<String>> hashes = null;
+		for(int i = 0; i < chunks.size(); i++) {
+			if(hashes == null) {
+				hashes = hashPasswords(chunks.get(i));
+			}
+			
+			// Start hashing the next chunk's passwords before waiting on 
+			// this chunk's.
+			Map<String, Future<String>> nextHashes = null;
+			if((i + 1) < chunks.size()) {
+				nextHashes = hashPasswords(chunks.get(i + 1));
+			}
+			
+			// Earlier chunks may already be committed, so a chunk whose 
+			// passwords cannot be hashed only fails its own users.
+			String failure = null;
+			Map<String, String> hashedPasswords = 
+				new HashMap<String, String>();
+			try {
+				for(String username : hashes.keySet()) {
+					hashedPasswords.put(username, hashes.get(username).get());
+				}
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				LOGGER.error("Interrupted while hashing the passwords.", e);
+				failure = 
+					"The server was interrupted before the user could be " +
+						"saved.";
+			}
+			catch(ExecutionException e) {
+				LOGGER.error("There was an error hashing a password.", e);
+				failure = 
+					"A password could not be hashed, so the user was not " +
+						"saved along with the other " +
+						chunks.get(i).size() + 
+						" users that would have been saved at the same time.";
+			}
+			
+			List<UserBatchEntry> newUsers = new ArrayList<UserBatchEntry>();
+			List<UserBatchEntry> existingUsers = 
+				new ArrayList<UserBatchEntry>();
+			for(UserBatchEntry user : chunks.get(i)) {
+				if(existingUsernames.contains(user.getUsername())) {
+					existingUsers.add(user);
+				}
+				else {
+					newUsers.add(user);
+				}
+			}
+			
+			try {
+				if(failure == null) {
+					userQueries.createAndUpdateUsers(
+						newUsers, 
+						existingUsers, 
+						hashedPasswords);
+				}
+			}
+			catch(DataAccessException e) {
+				LOGGER.error("A chunk of a batch of users could not be saved.", e);
+				failure = 
+					"The user could not be saved along with the other " +
+						chunks.get(i).size() + 
+						" users that were saved at the same time.";
+			}
+			
+			for(UserBatchEntry user : newUsers) {
+				results.add(
+					new UserBatchEntry.Result(
+						user, 
+						(failure == null) ? 
+							UserBatchEntry.Result.Status.CREATED : 
+							UserBatchEntry.Result.Status.FAILED, 
+						failure));
+			}
+			for(UserBatchEntry user : existingUsers) {
+				results.add(
+					new UserBatchEntry.Result(
+						user, 
+						(failure == null) ? 
+							UserBatchEntry.Result.Status.UPDATED : 
+							UserBatchEntry.Result.Status.FAILED, 
+						failure));
+			}
+			
+			hashes = nextHashes;
+		}
+		
+		// Existing users may have been made or unmade admins.
+		VersionStamps.bump(
+			VersionStamps.Domain.CAMPAIGN, 
+			VersionStamps.Domain.CLASS);
+		
+		Collections.sort(
+			results, 
+			new Comparator<UserBatchEntry.Result>() {
+				/**
+				 * Orders the results by their entries' rows.
+				 */
+				@Override
+				public int compare(
+						final UserBatchEntry.Result first,
+						final UserBatchEntry.Result second) {
+					
+					int firstRow = first.getEntry().getRow();
+					int secondRow = second.getEntry().getRow();
+					return 
+						(firstRow < secondRow) ? 
+							-1 : 
+							((firstRow == secondRow) ? 0 : 1);
+				}
+			});
+		
+		return results;
+	}
+	
+	/**
+	 * Starts hashing the passwords of some users on the password hashing 
+	 * pool.
+	 * 
+	 * @param users The users, some of which may not have passwords.
+	 * 
+	 * @return The hashes, which may not yet be finished, of the users that 
+	 * 		   have passwords by their usernames.
+	 */
+	private Map<String, Future<String>> hashPasswords(
+			final List<UserBatchEntry> users) {
+		
+		Map<String, Future<String>> result = 
+			new HashMap<String, Future<String>>();
+		for(final UserBatchEntry user : users) {
+			if(user.getPassword() == null) {
+				continue;
+			}
+			
+			result.put(
+				user.getUsername(),
+				passwordHashers.submit(
+					new Callable<String>() {
+						/**
+						 * Hashes the user's password.
+						 */
+						@Override
+						public String call() {
+							return BCrypt.hashpw(
+								user.getPassword(), 
+								BCrypt.gensalt(User.BCRYPT_COMPLEXITY));
+						}
+					}));
+		}
+		
+		return result;
+	}
+	
 	/**
 	 * Registers the user in the system by first creating the user whose 
 	 * account is disabled. It then creates an entry in the registration cache
@@ -534,8 +807,29 @@ public final class UserServices {
 	public void verifyUsersExist(final Collection<String> usernames, 
 			final boolean shouldExist) throws ServiceException {
 		
+		Set<String> existingUsernames;
+		try {
+			existingUsernames = userQueries.getExistingUsernames(usernames);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+		
 		for(String username : usernames) {
-			checkUserExistance(username, shouldExist);
+			if(existingUsernames.contains(username)) {
+				if(! shouldExist) {
+					throw new ServiceException(
+							ErrorCode.USER_INVALID_USERNAME, 
+							"The following user already exists: " + username);
+				}
+			}
+			else {
+				if(shouldExist) {
+					throw new ServiceException(
+							ErrorCode.USER_INVALID_USERNAME, 
+							"The following user does not exist: " + username);
+				}
+			}
 		}
 	}
 	
@@ -1548,6 +1842,10 @@ public final class UserServices {
 		catch(DataAccessException e) {
 			throw new ServiceException(e);
 		}
+		
+		VersionStamps.bump(
+			VersionStamps.Domain.CAMPAIGN, 
+			VersionStamps.Domain.CLASS);
 	}
 
 	/**
@@ -1568,6 +1866,10 @@ public final class UserServices {
 		catch(DataAccessException e) {
 			throw new ServiceException(e);
 		}
+		
+		VersionStamps.bump(
+			VersionStamps.Domain.CAMPAIGN, 
+			VersionStamps.Domain.CLASS);
 	}
 	
 	/**
@@ -1776,6 +2078,10 @@ public final class UserServices {
 			throw new ServiceException(e);
 		}
 		
+		VersionStamps.bump(
+			VersionStamps.Domain.CAMPAIGN, 
+			VersionStamps.Domain.CLASS);
+		
 		// Remove the users' authentication tokens if any exist.
 		for(String username : usernames) {
 			UserBin.removeUser(username);
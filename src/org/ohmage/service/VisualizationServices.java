@@ -15,17 +15,36 @@
  ******************************************************************************/
 package org.ohmage.service;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.URLEncoder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.ProtocolException;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultRedirectStrategy;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.cache.PreferenceCache;
 import org.ohmage.exception.CacheMissException;
@@ -98,10 +117,152 @@ public class VisualizationServices {
 	
 	private static final String ENCODING = "UTF-8";
 	
+	/**
+	 * The maximum number of bytes of rendered images that will be cached.
+	 */
+	private static final long MAX_CACHE_BYTES = 32 * 1024 * 1024;
+	/**
+	 * The maximum size of a single image that will be cached. Anything 
+	 * larger is always rendered.
+	 */
+	private static final long MAX_CACHED_IMAGE_BYTES = 2 * 1024 * 1024;
+	/**
+	 * How long a rendered image may be served from the cache. The data 
+	 * version catches new and changed survey responses, but this bounds how
+	 * long changes it doesn't see, e.g. to a user's roles, may go unnoticed.
+	 */
+	private static final long CACHE_LIFETIME_MILLIS = 5 * 60 * 1000;
+	
+	/**
+	 * The maximum number of connections to the visualization server.
+	 */
+	private static final int MAX_CONNECTIONS = 20;
+	/**
+	 * How long to wait when connecting to the visualization server.
+	 */
+	private static final int CONNECTION_TIMEOUT_MILLIS = 10 * 1000;
+	/**
+	 * How long to wait for the visualization server to render an image.
+	 */
+	private static final int SOCKET_TIMEOUT_MILLIS = 2 * 60 * 1000;
+	
+	/**
+	 * A rendered image and the time it was rendered.
+	 * 
+	 * @author John Jenkins
+	 */
+	private static final class CachedImage {
+		private final byte[] image;
+		private final long renderedMillis;
+		
+		/**
+		 * Creates a new cached image.
+		 * 
+		 * @param image The rendered image.
+		 */
+		private CachedImage(final byte[] image) {
+			this.image = image;
+			renderedMillis = System.currentTimeMillis();
+		}
+	}
+	
+	/**
+	 * The data version for each campaign. It is bumped whenever the survey
+	 * responses for a campaign change, which orphans the cached renders of 
+	 * the old data.
+	 */
+	private static final ConcurrentMap<String, AtomicLong> DATA_VERSIONS =
+		new ConcurrentHashMap<String, AtomicLong>();
+	
+	/**
+	 * The rendered images in least-recently-used order. All access must be 
+	 * synchronized on the map itself.
+	 */
+	private static final LinkedHashMap<String, CachedImage> RENDER_CACHE =
+		new LinkedHashMap<String, CachedImage>(16, 0.75f, true);
+	/**
+	 * The total number of bytes in the render cache. This is guarded by the
+	 * render cache's lock.
+	 */
+	private static long renderCacheBytes = 0;
+	
+	/**
+	 * The renders that are currently in progress. Concurrent requests for 
+	 * the same render wait on the same task instead of each calling the 
+	 * visualization server.
+	 */
+	private static final ConcurrentMap<String, FutureTask<byte[]>> IN_FLIGHT =
+		new ConcurrentHashMap<String, FutureTask<byte[]>>();
+	
+	/**
+	 * The client used to communicate with the visualization server. Its 
+	 * connections are pooled and kept alive between renders. Like the 
+	 * HttpURLConnection that it replaced, it follows the server's redirects
+	 * even though the renders are POSTs.
+	 */
+	private static final HttpClient HTTP_CLIENT;
+	static {
+		ThreadSafeClientConnManager connectionManager =
+			new ThreadSafeClientConnManager();
+		connectionManager.setMaxTotal(MAX_CONNECTIONS);
+		connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+		
+		HttpParams httpParams = new BasicHttpParams();
+		HttpConnectionParams
+			.setConnectionTimeout(httpParams, CONNECTION_TIMEOUT_MILLIS);
+		HttpConnectionParams.setSoTimeout(httpParams, SOCKET_TIMEOUT_MILLIS);
+		
+		DefaultHttpClient httpClient = 
+			new DefaultHttpClient(connectionManager, httpParams);
+		httpClient.setRedirectStrategy(
+			new DefaultRedirectStrategy() {
+				/**
+				 * Also follows a 301, 302, or 307 in response to a POST, 
+				 * which the default strategy only follows for a GET or HEAD.
+				 */
+				@Override
+				public boolean isRedirected(
+						final HttpRequest request,
+						final HttpResponse response,
+						final HttpContext context)
+						throws ProtocolException {
+					
+					if(super.isRedirected(request, response, context)) {
+						return true;
+					}
+					
+					switch(response.getStatusLine().getStatusCode()) {
+					case HttpStatus.SC_MOVED_PERMANENTLY:
+					case HttpStatus.SC_MOVED_TEMPORARILY:
+					case HttpStatus.SC_TEMPORARY_REDIRECT:
+						return 
+							HttpPost.METHOD_NAME.equalsIgnoreCase(
+								request.getRequestLine().getMethod());
+						
+					default:
+						return false;
+					}
+				}
+			});
+		HTTP_CLIENT = httpClient;
+	}
+	
 	/**
 	 * Default constructor. Made private so that it cannot be instantiated.
 	 */
 	private VisualizationServices() {}
+	
+	/**
+	 * Marks a campaign's survey response data as changed so that any cached
+	 * visualizations of it will no longer be used. This should be called 
+	 * whenever survey responses are uploaded to, updated in, or deleted from
+	 * the campaign.
+	 * 
+	 * @param campaignId The campaign's unique identifier.
+	 */
+	public static void campaignDataChanged(final String campaignId) {
+		getDataVersion(campaignId).incrementAndGet();
+	}
 
 	/**
 	 * Sends a request to the visualization server and returns the image as a
@@ -115,6 +276,11 @@ public class VisualizationServices {
 	 * 					  would result in a URL of
 	 * 					  "https://viz.server/com/R/visualizations/survey_response_count?param1=...".
 	 * 
+	 * @param username The requesting user's username. The visualization 
+	 * 				   server only sees the data that this user can see, so
+	 * 				   renders are only shared between requests by the same
+	 * 				   user.
+	 * 
 	 * @param userToken The authentication token for the requesting user that
 	 * 					will be passed on to the visualization server to 
 	 * 					perform subsequent requests on our behalf.
@@ -132,12 +298,14 @@ public class VisualizationServices {
 	 * 					 the key in the HTTP parameter and their actual value
 	 * 					 will be their single-quoted HTTP parameter value.
 	 * 
-	 * @return Returns a byte[] representation of the visualization image.
+	 * @return Returns a byte[] representation of the visualization image. 
+	 * 		   This may be shared with other requests and must not be 
+	 * 		   modified.
 	 * 
 	 * @throws ServiceException Thrown if there is an error.
 	 */
 	public static byte[] sendVisualizationRequest(final String requestPath, 
-			final String userToken, final String campaignId, final int width, 
+			final String username, final String userToken, final String campaignId, final int width, 
 			final int height, final Map<String, String> parameters) 
 			throws ServiceException {
 		
@@ -160,7 +328,7 @@ public class VisualizationServices {
 		urlBuilder.append(requestPath);
 		
 		// Generate the URL String.
-		String urlString = urlBuilder.toString();
+		final String urlString = urlBuilder.toString();
 		
 		// Build this server's URL.
 		StringBuilder parameterBuilder = new StringBuilder();
@@ -236,76 +404,230 @@ public class VisualizationServices {
 					e);
 		}
 		
+		// Build the key for the render, which excludes the token but includes
+		// the campaign's data version.
+		StringBuilder keyBuilder = new StringBuilder();
+		keyBuilder
+			.append(username).append('\n')
+			.append(requestPath).append('\n')
+			.append(campaignId).append('\n')
+			.append(getDataVersion(campaignId).get()).append('\n')
+			.append(width).append('x').append(height);
+		for(Map.Entry<String, String> parameter :
+				(new TreeMap<String, String>(parameters)).entrySet()) {
+			
+			keyBuilder
+				.append('\n')
+				.append(parameter.getKey())
+				.append('=')
+				.append(parameter.getValue());
+		}
+		final String key = keyBuilder.toString();
+		
+		// Check the cache.
+		byte[] result = getCachedImage(key);
+		if(result != null) {
+			return result;
+		}
+		
+		// Render the image or wait for an identical render that is already
+		// in progress.
+		final String parameterString = parameterBuilder.toString();
+		FutureTask<byte[]> task =
+			new FutureTask<byte[]>(
+				new Callable<byte[]>() {
+					/**
+					 * Renders the image and caches it.
+					 */
+					@Override
+					public byte[] call() throws ServiceException {
+						byte[] image = render(urlString, parameterString);
+						cacheImage(key, image);
+						return image;
+					}
+				});
+		FutureTask<byte[]> inFlight = IN_FLIGHT.putIfAbsent(key, task);
+		if(inFlight == null) {
+			inFlight = task;
+			try {
+				task.run();
+			}
+			finally {
+				IN_FLIGHT.remove(key, task);
+			}
+		}
+		
 		try {
-			// Connect to the visualization server.
-			URL url = new URL(urlString);
-			HttpURLConnection urlConnection = 
-					(HttpURLConnection) url.openConnection();
+			return inFlight.get();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceException(
+					ErrorCode.VISUALIZATION_GENERAL_ERROR,
+					"There was an error. Please, try again later.",
+					"Interrupted while waiting for the visualization.",
+					e);
+		}
+		catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof ServiceException) {
+				throw (ServiceException) cause;
+			}
 			
-			urlConnection.setDoOutput(true);
-			urlConnection.setDoInput(true);
-			urlConnection.setInstanceFollowRedirects(true);
-			urlConnection.setRequestMethod("POST");
-			urlConnection.setRequestProperty(
-					"Content-Length", 
-					Integer.toString(parameterBuilder.length()));
+			throw new ServiceException(
+					ErrorCode.VISUALIZATION_GENERAL_ERROR,
+					"There was an error. Please, try again later.",
+					"Error while rendering the visualization.",
+					cause);
+		}
+	}
+	
+	/**
+	 * Posts the parameters to the visualization server and returns the 
+	 * rendered image.
+	 * 
+	 * @param urlString The visualization server URL for the render.
+	 * 
+	 * @param parameters The encoded parameters for the render.
+	 * 
+	 * @return The rendered image.
+	 * 
+	 * @throws ServiceException The visualization server returned an error or
+	 * 							couldn't be reached.
+	 */
+	private static byte[] render(
+			final String urlString,
+			final String parameters)
+			throws ServiceException {
+		
+		HttpPost post;
+		try {
+			post = new HttpPost(urlString);
+		}
+		catch(IllegalArgumentException e) {
+			throw new ServiceException(
+					ErrorCode.VISUALIZATION_GENERAL_ERROR, 
+					"Built a malformed URL: " + urlString, 
+					e);
+		}
+		
+		try {
+			StringEntity entity = new StringEntity(parameters, ENCODING);
+			entity.setContentType("application/x-www-form-urlencoded");
+			post.setEntity(entity);
 			
-			DataOutputStream output = 
-					new DataOutputStream(urlConnection.getOutputStream());
-			output.writeBytes(parameterBuilder.toString());
-			output.flush();
-			output.close();
+			// Connect to the visualization server.
+			HttpResponse response = HTTP_CLIENT.execute(post);
+			HttpEntity responseEntity = response.getEntity();
+			int statusCode = response.getStatusLine().getStatusCode();
 			
 			// If a non-200 response was returned, get the text from the 
 			// response.
-			if(urlConnection.getResponseCode() != 200) {
+			if(statusCode != HttpStatus.SC_OK) {
 				// Get the error text.
-				ByteArrayOutputStream errorByteStream = new ByteArrayOutputStream();
-				InputStream errorStream = urlConnection.getErrorStream();
-				byte[] chunk = new byte[4096];
-				int amountRead;
-				while((amountRead = errorStream.read(chunk)) != -1) {
-					errorByteStream.write(chunk, 0, amountRead);
-				}
-				errorStream.close();
+				String error = 
+					(responseEntity == null) ? 
+						"" : 
+						EntityUtils.toString(responseEntity);
 				
 				// Echo the error.
 				throw new ServiceException(
 						ErrorCode.VISUALIZATION_GENERAL_ERROR,
 						"There was an error. Please, try again later.",
 						"The server returned the HTTP error code '" + 
-							urlConnection.getResponseCode() + 
+							statusCode + 
 							"' with the error '" + 
-							errorByteStream.toString() + 
+							error + 
 							"': " + 
 							urlString);
 			}
 			
-			// Build the response.
-			InputStream reader = urlConnection.getInputStream();
-			
-			// Generate the byte array.
-			ByteArrayOutputStream byteArrayStream = new ByteArrayOutputStream();
-			byte[] chunk = new byte[4096];
-			int amountRead = 0;
-			while((amountRead = reader.read(chunk)) != -1) {
-				byteArrayStream.write(chunk, 0, amountRead);
+			// Reading the whole entity releases the connection back to the
+			// pool.
+			if(responseEntity == null) {
+				return new byte[0];
 			}
-			reader.close();
-			
-			return byteArrayStream.toByteArray();
-		}
-		catch(MalformedURLException e) {
-			throw new ServiceException(
-					ErrorCode.VISUALIZATION_GENERAL_ERROR, 
-					"Built a malformed URL: " + urlString, 
-					e);
+			return EntityUtils.toByteArray(responseEntity);
 		}
 		catch(IOException e) {
+			post.abort();
 			throw new ServiceException(
 					ErrorCode.VISUALIZATION_GENERAL_ERROR, 
 					"Error while communicating with the visualization server.",
 					e);
 		}
 	}
+	
+	/**
+	 * Returns the data version for a campaign, creating it if necessary.
+	 * 
+	 * @param campaignId The campaign's unique identifier.
+	 * 
+	 * @return The campaign's data version.
+	 */
+	private static AtomicLong getDataVersion(final String campaignId) {
+		AtomicLong version = DATA_VERSIONS.get(campaignId);
+		if(version == null) {
+			AtomicLong newVersion = new AtomicLong(0);
+			version = DATA_VERSIONS.putIfAbsent(campaignId, newVersion);
+			if(version == null) {
+				version = newVersion;
+			}
+		}
+		return version;
+	}
+	
+	/**
+	 * Returns a cached render if it exists and hasn't expired.
+	 * 
+	 * @param key The render's key.
+	 * 
+	 * @return The rendered image or null if it isn't cached.
+	 */
+	private static byte[] getCachedImage(final String key) {
+		synchronized(RENDER_CACHE) {
+			CachedImage cachedImage = RENDER_CACHE.get(key);
+			if(cachedImage == null) {
+				return null;
+			}
+			
+			long age = System.currentTimeMillis() - cachedImage.renderedMillis;
+			if(age > CACHE_LIFETIME_MILLIS) {
+				RENDER_CACHE.remove(key);
+				renderCacheBytes -= cachedImage.image.length;
+				return null;
+			}
+			
+			return cachedImage.image;
+		}
+	}
+	
+	/**
+	 * Adds a render to the cache, evicting the least-recently-used renders 
+	 * until the cache is within its size limit.
+	 * 
+	 * @param key The render's key.
+	 * 
+	 * @param image The rendered image.
+	 */
+	private static void cacheImage(final String key, final byte[] image) {
+		if(image.length > MAX_CACHED_IMAGE_BYTES) {
+			return;
+		}
+		
+		synchronized(RENDER_CACHE) {
+			CachedImage previous = 
+				RENDER_CACHE.put(key, new CachedImage(image));
+			if(previous != null) {
+				renderCacheBytes -= previous.image.length;
+			}
+			renderCacheBytes += image.length;
+			
+			Iterator<CachedImage> iter = RENDER_CACHE.values().iterator();
+			while((renderCacheBytes > MAX_CACHE_BYTES) && iter.hasNext()) {
+				renderCacheBytes -= iter.next().image.length;
+				iter.remove();
+			}
+		}
+	}
 }
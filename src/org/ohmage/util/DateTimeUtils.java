@@ -17,11 +17,18 @@ package org.ohmage.util;
 
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.MutableDateTime;
+import org.joda.time.chrono.ISOChronology;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.DateTimeFormatterBuilder;
@@ -101,6 +108,27 @@ public final class DateTimeUtils {
 	private static final DateTimeFormatter DATE_TIME_FORMATTER = 
 			DateTimeFormat.forPattern(FORMAT_ISO_8601_DATETIME);
 	
+	/**
+	 * The IDs of the time zones known to the JVM. This is built once because
+	 * building it requires copying every ID.
+	 */
+	private static final Set<String> TIMEZONE_IDS =
+		Collections.unmodifiableSet(
+			new HashSet<String>(Arrays.asList(TimeZone.getAvailableIDs())));
+	
+	/**
+	 * The maximum number of time zone strings whose decoded value is
+	 * remembered. Clients only ever send a handful of distinct strings, so
+	 * this is only a guard against a client sending garbage.
+	 */
+	private static final int MAX_CACHED_TIME_ZONES = 4096;
+	/**
+	 * The time zone strings that have already been decoded. Only valid
+	 * strings are added.
+	 */
+	private static final Map<String, DateTimeZone> TIME_ZONE_CACHE =
+		new ConcurrentHashMap<String, DateTimeZone>();
+	
 	/**
 	 * Default constructor. Private so that it cannot be instantiated.
 	 */
@@ -249,18 +277,90 @@ public final class DateTimeUtils {
 			return null;
 		}
 		
+		// Most uploads send the same few time zones for every point, so skip
+		// the lookup, and the exception for "GMT" and "UTC" offsets, for any
+		// that have already been seen.
+		DateTimeZone result = TIME_ZONE_CACHE.get(timeZone);
+		if(result != null) {
+			return result;
+		}
+		
 		try {
-			return DateTimeZone.forID(timeZone);
+			result = DateTimeZone.forID(timeZone);
 		}
 		catch(IllegalArgumentException e) {
 			// This is acceptable if it starts with "GMT" or "UTC".
 			if(timeZone.startsWith("GMT") || timeZone.startsWith("UTC")) {
-				return DateTimeZone.forID(timeZone.substring(3));
+				result = DateTimeZone.forID(timeZone.substring(3));
 			}
 			else {
 				throw e;
 			}
 		}
+		
+		if(TIME_ZONE_CACHE.size() < MAX_CACHED_TIME_ZONES) {
+			TIME_ZONE_CACHE.put(timeZone, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * Decodes a string that may or may not follow a pattern without throwing
+	 * an exception if it does not. The string only needs to begin with a
+	 * value that follows the pattern, the fields must be within their ranges,
+	 * the year must be positive, and the value must be a wall time that
+	 * exists in the JVM's default time zone. Unlike
+	 * {@link java.text.SimpleDateFormat}, the formatter is immutable, so a
+	 * single instance may be shared by every thread.<br />
+	 * <br />
+	 * This is stricter than a non-lenient SimpleDateFormat in some ways and
+	 * looser in others: whitespace before a field and a field with more
+	 * digits than the pattern, e.g. "2012-001-01", are rejected, while a '+'
+	 * before the year, e.g. "+2012-01-01", is accepted.
+	 * 
+	 * @param formatter The formatter built from the pattern. It must not
+	 * 					have its own time zone.
+	 * 
+	 * @param value The string to decode.
+	 * 
+	 * @return The decoded date or null if the string is null or does not
+	 * 		   follow the pattern.
+	 */
+	public static Date decodeDate(
+			final DateTimeFormatter formatter,
+			final String value) {
+		
+		if(value == null) {
+			return null;
+		}
+		
+		// Any field that is not in the pattern is left at its value in this
+		// instant, which is midnight of the epoch.
+		MutableDateTime localTime =
+			new MutableDateTime(0L, ISOChronology.getInstanceUTC());
+		try {
+			if(formatter.parseInto(localTime, value, 0) < 0) {
+				return null;
+			}
+			
+			// A signed year, e.g. "-2012-01-01", parses as a year before the
+			// common era, which a non-lenient SimpleDateFormat rejected.
+			if(localTime.getYear() < 1) {
+				return null;
+			}
+			
+			return
+				new Date(
+					DateTimeZone.getDefault().convertLocalToUTC(
+						localTime.getMillis(),
+						true));
+		}
+		// This is only thrown when a field is out of its range, e.g. the 13th
+		// month, or the wall time falls in a daylight saving gap, rather than
+		// when the string does not follow the pattern.
+		catch(IllegalArgumentException e) {
+			return null;
+		}
 	}
 	
 	/**
@@ -297,8 +397,7 @@ public final class DateTimeUtils {
 	 */
 	public static boolean isValidTimezone(final String tz) {
 		if(null != tz) {
-			// TODO store a static sorted copy of this list?
-			return Arrays.asList(TimeZone.getAvailableIDs()).contains(tz);
+			return TIMEZONE_IDS.contains(tz);
 		}
 		return false;
 	}
@@ -35,18 +35,10 @@ public final class JsonUtils {
 	 * @return the String value found in the JSONObject using the provided key. If no value is found, null is returned. 
 	 */
 	public static String getStringFromJsonObject(JSONObject jsonObject, String key) {
-		String value = null;
+		String value = toString(jsonObject.opt(key));
 		
-		try {
-			
-			value = jsonObject.getString(key); 
-			
-		} catch (JSONException jsone) {
-			
-			if(LOGGER.isDebugEnabled()) {
-				LOGGER.debug("failed attempt to retrieve " + key + " from JSON object " + jsonObject, jsone);
-			}
-			
+		if((value == null) && LOGGER.isDebugEnabled()) {
+			LOGGER.debug("failed attempt to retrieve " + key + " from JSON object " + jsonObject);
 		}
 		
 		return value;
@@ -56,18 +48,10 @@ public final class JsonUtils {
 	 * @return the Integer value found in the JSONObject using the provided key. If no value is found, null is returned. 
 	 */
 	public static Integer getIntegerFromJsonObject(JSONObject jsonObject, String key) {
-		Integer value = null;
+		Integer value = toInteger(jsonObject.opt(key));
 		
-		try {
-			
-			value = jsonObject.getInt(key); 
-			
-		} catch (JSONException jsone) {
-			
-			if(LOGGER.isDebugEnabled()) {
-				LOGGER.debug("failed attempt to retrieve " + key + " from JSON object " + jsonObject, jsone);
-			}
-			
+		if((value == null) && LOGGER.isDebugEnabled()) {
+			LOGGER.debug("failed attempt to retrieve " + key + " from JSON object " + jsonObject);
 		}
 		
 		return value;
@@ -77,18 +61,10 @@ public final class JsonUtils {
 	 * @return the Long value found in the JSONObject using the provided key. If no value is found, null is returned. 
 	 */
 	public static Long getLongFromJsonObject(JSONObject jsonObject, String key) {
-		Long value = null;
+		Long value = toLong(jsonObject.opt(key));
 		
-		try {
-			
-			value = jsonObject.getLong(key); 
-			
-		} catch (JSONException jsone) {
-			
-			if(LOGGER.isDebugEnabled()) {
-				LOGGER.debug("failed attempt to retrieve " + key + " from JSON object " + jsonObject, jsone);
-			}
-			
+		if((value == null) && LOGGER.isDebugEnabled()) {
+			LOGGER.debug("failed attempt to retrieve " + key + " from JSON object " + jsonObject);
 		}
 		
 		return value;
@@ -98,18 +74,10 @@ public final class JsonUtils {
 	 * @return the JSONObject value found in the JSONObject using the provided key. If no value is found, null is returned. 
 	 */
 	public static JSONObject getJsonObjectFromJsonObject(JSONObject jsonObject, String key) {
-		JSONObject value = null;
+		JSONObject value = toJsonObject(jsonObject.opt(key));
 		
-		try {
-			
-			value = jsonObject.getJSONObject(key); 
-			
-		} catch (JSONException jsone) {
-			
-			if(LOGGER.isDebugEnabled()) {
-				LOGGER.debug("failed attempt to retrieve " + key + " from JSON object " + jsonObject, jsone);
-			}
-			
+		if((value == null) && LOGGER.isDebugEnabled()) {
+			LOGGER.debug("failed attempt to retrieve " + key + " from JSON object " + jsonObject);
 		}
 		
 		return value;
@@ -119,18 +87,10 @@ public final class JsonUtils {
 	 * @return the Double value found in the JSONObject using the provided key. If no value is found, null is returned. 
 	 */
 	public static Double getDoubleFromJsonObject(JSONObject jsonObject, String key) {
-		Double value = null;
+		Double value = toDouble(jsonObject.opt(key));
 		
-		try {
-			
-			value = jsonObject.getDouble(key); 
-			
-		} catch (JSONException jsone) {
-			
-			if(LOGGER.isDebugEnabled()) {
-				LOGGER.debug("failed attempt to retrieve " + key + " from JSON object " + jsonObject, jsone);
-			}
-			
+		if((value == null) && LOGGER.isDebugEnabled()) {
+			LOGGER.debug("failed attempt to retrieve " + key + " from JSON object " + jsonObject);
 		}
 		
 		return value;
@@ -140,18 +100,11 @@ public final class JsonUtils {
 	 * @return the JSONArray value found in the JSONObject using the provided key. If no value is found, null is returned. 
 	 */
 	public static JSONArray getJsonArrayFromJsonObject(JSONObject jsonObject, String key) {
-		JSONArray array = null;
+		Object value = jsonObject.opt(key);
+		JSONArray array = (value instanceof JSONArray) ? (JSONArray) value : null;
 		
-		try {
-			
-			array = jsonObject.getJSONArray(key); 
-			
-		} catch (JSONException jsone) {
-			
-			if(LOGGER.isDebugEnabled()) {
-				LOGGER.debug("failed attempt to retrieve " + key + " from JSON object " + jsonObject, jsone);
-			}
-			
+		if((array == null) && LOGGER.isDebugEnabled()) {
+			LOGGER.debug("failed attempt to retrieve " + key + " from JSON object " + jsonObject);
 		}
 		
 		return array;
@@ -350,4 +303,185 @@ public final class JsonUtils {
 		
 	}
 
+	/**
+	 * Returns the value of the first of two keys that is present in a
+	 * JSONObject as a string. Many uploaded values may be given either with
+	 * their full key or with their abbreviated key.
+	 * 
+	 * @param jsonObject The JSONObject.
+	 * 
+	 * @param key The key that is checked first.
+	 * 
+	 * @param alternateKey The key that is checked if the first key is
+	 * 					   missing or null if there is no alternate key.
+	 * 
+	 * @return The value as a string or null if neither key is present.
+	 */
+	public static String getString(
+			final JSONObject jsonObject,
+			final String key,
+			final String alternateKey) {
+		
+		String result = toString(jsonObject.opt(key));
+		if((result == null) && (alternateKey != null)) {
+			result = toString(jsonObject.opt(alternateKey));
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the value of the first of two keys that is present in a
+	 * JSONObject and is a number, or a string representing a number, as a
+	 * long.
+	 * 
+	 * @param jsonObject The JSONObject.
+	 * 
+	 * @param key The key that is checked first.
+	 * 
+	 * @param alternateKey The key that is checked if the first key is
+	 * 					   missing or not a number or null if there is no
+	 * 					   alternate key.
+	 * 
+	 * @return The value as a long or null if neither key is a number.
+	 */
+	public static Long getLong(
+			final JSONObject jsonObject,
+			final String key,
+			final String alternateKey) {
+		
+		Long result = toLong(jsonObject.opt(key));
+		if((result == null) && (alternateKey != null)) {
+			result = toLong(jsonObject.opt(alternateKey));
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the value of the first of two keys that is present in a
+	 * JSONObject and is a number, or a string representing a number, as a
+	 * primitive double. This is meant for values that are decoded for every
+	 * uploaded point, like coordinates, so the value is never boxed.
+	 * 
+	 * @param jsonObject The JSONObject.
+	 * 
+	 * @param key The key that is checked first.
+	 * 
+	 * @param alternateKey The key that is checked if the first key is
+	 * 					   missing or not a number or null if there is no
+	 * 					   alternate key.
+	 * 
+	 * @return The value as a double or {@link Double#NaN} if neither key is
+	 * 		   a number.
+	 */
+	public static double getDouble(
+			final JSONObject jsonObject,
+			final String key,
+			final String alternateKey) {
+		
+		double result = toPrimitiveDouble(jsonObject.opt(key));
+		if(Double.isNaN(result) && (alternateKey != null)) {
+			result = toPrimitiveDouble(jsonObject.opt(alternateKey));
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the value of the first of two keys that is present in a
+	 * JSONObject and is a JSONObject.
+	 * 
+	 * @param jsonObject The JSONObject.
+	 * 
+	 * @param key The key that is checked first.
+	 * 
+	 * @param alternateKey The key that is checked if the first key is
+	 * 					   missing or not a JSONObject or null if there is no
+	 * 					   alternate key.
+	 * 
+	 * @return The value or null if neither key is a JSONObject.
+	 */
+	public static JSONObject getJsonObject(
+			final JSONObject jsonObject,
+			final String key,
+			final String alternateKey) {
+		
+		JSONObject result = toJsonObject(jsonObject.opt(key));
+		if((result == null) && (alternateKey != null)) {
+			result = toJsonObject(jsonObject.opt(alternateKey));
+		}
+		return result;
+	}
+	
+	/**
+	 * Converts a value the same way {@link JSONObject#getString(String)}
+	 * does, without throwing an exception if it is missing.
+	 */
+	private static String toString(final Object value) {
+		return (value == null) ? null : value.toString();
+	}
+	
+	/**
+	 * Converts a value the same way {@link JSONObject#getInt(String)} does,
+	 * without throwing an exception if it is missing or not a number.
+	 */
+	private static Integer toInteger(final Object value) {
+		if(value instanceof Number) {
+			return ((Number) value).intValue();
+		}
+		
+		double result = toPrimitiveDouble(value);
+		return (Double.isNaN(result)) ? null : (int) result;
+	}
+	
+	/**
+	 * Converts a value the same way {@link JSONObject#getLong(String)} does,
+	 * without throwing an exception if it is missing or not a number.
+	 */
+	private static Long toLong(final Object value) {
+		if(value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		
+		double result = toPrimitiveDouble(value);
+		return (Double.isNaN(result)) ? null : (long) result;
+	}
+	
+	/**
+	 * Converts a value the same way {@link JSONObject#getDouble(String)}
+	 * does, without throwing an exception if it is missing or not a number.
+	 */
+	private static Double toDouble(final Object value) {
+		double result = toPrimitiveDouble(value);
+		return (Double.isNaN(result)) ? null : result;
+	}
+	
+	/**
+	 * Converts a value to a primitive double. Numbers are used as they are
+	 * and strings are parsed.
+	 * 
+	 * @return The value or {@link Double#NaN} if it is missing or not a
+	 * 		   number.
+	 */
+	private static double toPrimitiveDouble(final Object value) {
+		if(value instanceof Number) {
+			return ((Number) value).doubleValue();
+		}
+		else if(value instanceof String) {
+			try {
+				return Double.parseDouble((String) value);
+			}
+			catch(NumberFormatException e) {
+				return Double.NaN;
+			}
+		}
+		return Double.NaN;
+	}
+	
+	/**
+	 * Converts a value the same way {@link JSONObject#getJSONObject(String)}
+	 * does, without throwing an exception if it is missing or not a
+	 * JSONObject.
+	 */
+	private static JSONObject toJsonObject(final Object value) {
+		return (value instanceof JSONObject) ? (JSONObject) value : null;
+	}
 }
@@ -17,8 +17,6 @@ package org.ohmage.util;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -31,6 +29,9 @@ import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
 /**
  * A collection of methods for manipulating or validating Strings.
  * 
@@ -51,6 +52,16 @@ public final class StringUtils {
 	private static final String FORMAT_ISO_8601_DATE_TIME = "yyyy-M-d H:m:s";
 	private static final String FORMAT_ISO_8601_DATE_TIME_WITH_T = "yyyy-M-d'T'H:m:s";
 	
+	private static final DateTimeFormatter[] DATE_FORMATTERS = {
+		DateTimeFormat.forPattern(FORMAT_AMERICAN_DATE),
+		DateTimeFormat.forPattern(FORMAT_ISO_8601_DATE)
+	};
+	private static final DateTimeFormatter[] DATE_TIME_FORMATTERS = {
+		DateTimeFormat.forPattern(FORMAT_AMERICAN_DATE_TIME),
+		DateTimeFormat.forPattern(FORMAT_ISO_8601_DATE_TIME),
+		DateTimeFormat.forPattern(FORMAT_ISO_8601_DATE_TIME_WITH_T)
+	};
+	
 	private static final Pattern EMAIL_PATTERN = 
 		Pattern.compile(
 			"^([_A-Za-z0-9-]+)(\\.[_A-Za-z0-9-]+)*@[A-Za-z0-9]+(\\.[A-Za-z0-9]+)*(\\.[A-Za-z]{2,})$");
@@ -307,23 +318,13 @@ public final class StringUtils {
 			return null;
 		}
 		
-		try {
-			SimpleDateFormat simpleDateFormat = new SimpleDateFormat(FORMAT_AMERICAN_DATE);
-			simpleDateFormat.setLenient(false);
-			
-			return simpleDateFormat.parse(date);
-		}
-		catch(ParseException americanException) {
-			try {
-				SimpleDateFormat simpleDateFormat = new SimpleDateFormat(FORMAT_ISO_8601_DATE);
-				simpleDateFormat.setLenient(false);
-				
-				return simpleDateFormat.parse(date);
-			}
-			catch(ParseException iso8601Exception) {
-				return null;
+		for(DateTimeFormatter formatter : DATE_FORMATTERS) {
+			Date result = DateTimeUtils.decodeDate(formatter, date);
+			if(result != null) {
+				return result;
 			}
 		}
+		return null;
 	}
 	
 	/**
@@ -332,6 +333,7 @@ public final class StringUtils {
 	 * <ul>
 	 *   <li>{@value #FORMAT_AMERICAN_DATE_TIME}</li>
 	 *   <li>{@value #FORMAT_ISO_8601_DATE_TIME}</li>
+	 *   <li>{@value #FORMAT_ISO_8601_DATE_TIME_WITH_T}</li>
 	 * </ul>
 	 * 
 	 * @param dateTime The date-time as a String that is to be decoded.
@@ -345,36 +347,17 @@ public final class StringUtils {
 			return null;
 		}
 		
-		try {
-			// FIXME: Once we move to only epoch long values, we need to adjust
-			// the time zone on these SimpleDateFormat objects to reflect that
-			// change, but that assumes we know the sender's timezone. We may
-			// want to get rid of this call altogether.
-			SimpleDateFormat simpleDateFormat = new SimpleDateFormat(FORMAT_AMERICAN_DATE_TIME);
-			simpleDateFormat.setLenient(false);
-			
-			return simpleDateFormat.parse(dateTime);
-		}
-		catch(ParseException americanException) {
-			try {
-				SimpleDateFormat simpleDateFormat = new SimpleDateFormat(FORMAT_ISO_8601_DATE_TIME);
-				simpleDateFormat.setLenient(false);
-				
-				return simpleDateFormat.parse(dateTime);
-			}
-			catch(ParseException iso8601Exception) {
-				
-				try {
-					SimpleDateFormat simpleDateFormat = new SimpleDateFormat(FORMAT_ISO_8601_DATE_TIME_WITH_T);
-					simpleDateFormat.setLenient(false);
-					
-					return simpleDateFormat.parse(dateTime);
-				}
-				catch(ParseException iso8601WithTException) {
-					return null;
-				}
+		// FIXME: Once we move to only epoch long values, we need to adjust
+		// the time zone of these values to reflect that change, but that
+		// assumes we know the sender's timezone. We may want to get rid of
+		// this call altogether.
+		for(DateTimeFormatter formatter : DATE_TIME_FORMATTERS) {
+			Date result = DateTimeUtils.decodeDate(formatter, dateTime);
+			if(result != null) {
+				return result;
 			}
 		}
+		return null;
 	}
 	
 	/**
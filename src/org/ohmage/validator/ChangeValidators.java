@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.validator;
+
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.Change;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.util.StringUtils;
+
+/**
+ * This class contains the functionality for validating change feed
+ * information.
+ * 
+ * @author John Jenkins
+ */
+public class ChangeValidators {
+	/**
+	 * The maximum number of changes that may be returned at once.
+	 */
+	public static final int MAX_NUM_TO_RETURN = 1000;
+	
+	/**
+	 * Default constructor. Private so that it cannot be instantiated.
+	 */
+	private ChangeValidators() {}
+	
+	/**
+	 * Validates that a change token is one that was given out by the change
+	 * feed.
+	 * 
+	 * @param token The token to validate.
+	 * 
+	 * @return The position in the feed to which the token refers or null if
+	 * 		   the token was null or whitespace only.
+	 * 
+	 * @throws ValidationException Thrown if the token is not null, not
+	 * 							   whitespace only, and not a valid token.
+	 */
+	public static Long validateChangeToken(final String token) 
+			throws ValidationException {
+		
+		if(StringUtils.isEmptyOrWhitespaceOnly(token)) {
+			return null;
+		}
+		
+		try {
+			return Change.decodeToken(token.trim());
+		}
+		catch(IllegalArgumentException e) {
+			throw new ValidationException(
+					ErrorCode.CHANGE_INVALID_TOKEN, 
+					"The change token is invalid: " + token,
+					e);
+		}
+	}
+	
+	/**
+	 * Validates that the number of changes to return is positive and no 
+	 * greater than {@value #MAX_NUM_TO_RETURN}.
+	 * 
+	 * @param value The value to validate.
+	 * 
+	 * @return The number of changes to return or 
+	 * 		   {@value #MAX_NUM_TO_RETURN} if the value was null or whitespace
+	 * 		   only.
+	 * 
+	 * @throws ValidationException Thrown if the value is not a number or is
+	 * 							   out of range.
+	 */
+	public static int validateNumToReturn(final String value) 
+			throws ValidationException {
+		
+		if(StringUtils.isEmptyOrWhitespaceOnly(value)) {
+			return MAX_NUM_TO_RETURN;
+		}
+		
+		int result;
+		try {
+			result = Integer.decode(value.trim());
+		}
+		catch(NumberFormatException e) {
+			throw new ValidationException(
+					ErrorCode.SERVER_INVALID_NUM_TO_RETURN, 
+					"The number of changes to return is not a number: " + 
+						value,
+					e);
+		}
+		
+		if((result < 1) || (result > MAX_NUM_TO_RETURN)) {
+			throw new ValidationException(
+					ErrorCode.SERVER_INVALID_NUM_TO_RETURN, 
+					"The number of changes to return must be between 1 and " +
+						MAX_NUM_TO_RETURN + 
+						": " + 
+						result);
+		}
+		
+		return result;
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.validator;
+
+import java.util.UUID;
+
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.ExportJob;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.util.StringUtils;
+
+/**
+ * This class contains the functionality for validating export information.
+ * 
+ * @author John Jenkins
+ */
+public class ExportValidators {
+	/**
+	 * Default constructor. Private so that it cannot be instantiated.
+	 */
+	private ExportValidators() {}
+	
+	/**
+	 * Validates that an export ID is a valid UUID.
+	 * 
+	 * @param exportId The export ID to validate.
+	 * 
+	 * @return The export ID or null if it was null or whitespace only.
+	 * 
+	 * @throws ValidationException Thrown if the export ID is not null, not
+	 * 							   whitespace only, and not a valid UUID.
+	 */
+	public static UUID validateExportId(final String exportId) 
+			throws ValidationException {
+		
+		if(StringUtils.isEmptyOrWhitespaceOnly(exportId)) {
+			return null;
+		}
+		
+		try {
+			return UUID.fromString(exportId.trim());
+		}
+		catch(IllegalArgumentException e) {
+			throw new ValidationException(
+					ErrorCode.EXPORT_INVALID_ID, 
+					"The export ID is invalid: " + exportId,
+					e);
+		}
+	}
+	
+	/**
+	 * Validates that an export type is one of the known export types.
+	 * 
+	 * @param exportType The export type to validate.
+	 * 
+	 * @return The export type or null if it was null or whitespace only.
+	 * 
+	 * @throws ValidationException Thrown if the export type is not null, not
+	 * 							   whitespace only, and not a known type.
+	 */
+	public static ExportJob.Type validateExportType(final String exportType)
+			throws ValidationException {
+		
+		if(StringUtils.isEmptyOrWhitespaceOnly(exportType)) {
+			return null;
+		}
+		
+		try {
+			return ExportJob.Type.getValue(exportType.trim());
+		}
+		catch(IllegalArgumentException e) {
+			throw new ValidationException(
+					ErrorCode.EXPORT_INVALID_TYPE, 
+					"The export type must be one of '" +
+						ExportJob.Type.SURVEY_RESPONSE.toString() + 
+						"' or '" +
+						ExportJob.Type.STREAM.toString() + 
+						"'. Given: " + 
+						exportType,
+					e);
+		}
+	}
+}
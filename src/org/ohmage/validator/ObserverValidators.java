@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
 import org.codehaus.jackson.JsonParseException;
@@ -13,7 +14,9 @@ import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormatter;
 import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.domain.ISOW3CDateTimeFormat;
+import org.ohmage.domain.LttbDownsampler;
 import org.ohmage.domain.Observer;
+import org.ohmage.domain.TimeBucketAggregator;
 import org.ohmage.exception.DomainException;
 import org.ohmage.exception.ValidationException;
 import org.ohmage.request.InputKeys;
@@ -482,4 +485,185 @@ public class ObserverValidators {
 				e);
 		}
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Validates that a bucket width, in milliseconds, is a positive number.
+	 * 
+	 * @param value The value to validate.
+	 * 
+	 * @return The bucket width or null if the value was null or only 
+	 * 		   whitespace.
+	 * 
+	 * @throws ValidationException The value is not a positive number.
+	 */
+	public static final Long validateBucketWidth(
+			final String value)
+			throws ValidationException {
+		
+		if(StringUtils.isEmptyOrWhitespaceOnly(value)) {
+			return null;
+		}
+		
+		try {
+			long result = Long.decode(value.trim());
+			
+			if(result <= 0) {
+				throw new ValidationException(
+					ErrorCode.OBSERVER_INVALID_BUCKET_WIDTH,
+					"The bucket width must be positive: " + result);
+			}
+			
+			return result;
+		}
+		catch(NumberFormatException e) {
+			throw new ValidationException(
+				ErrorCode.OBSERVER_INVALID_BUCKET_WIDTH,
+				"The bucket width is not a valid number: " + value,
+				e);
+		}
+	}
+	
+	/**
+	 * Validates a list of aggregate functions.
+	 * 
+	 * @param value The comma-separated list of functions.
+	 * 
+	 * @return The functions in the order they were given without duplicates
+	 * 		   or null if the value was null or only whitespace.
+	 * 
+	 * @throws ValidationException One of the functions is unknown.
+	 */
+	public static final List<TimeBucketAggregator.Function> validateAggregateFunctions(
+			final String value)
+			throws ValidationException {
+		
+		if(StringUtils.isEmptyOrWhitespaceOnly(value)) {
+			return null;
+		}
+		
+		List<TimeBucketAggregator.Function> result = 
+			new LinkedList<TimeBucketAggregator.Function>();
+		
+		String[] items = value.split(InputKeys.LIST_ITEM_SEPARATOR);
+		for(int i = 0; i < items.length; i++) {
+			String item = items[i].trim();
+			if(item.length() == 0) {
+				continue;
+			}
+			
+			TimeBucketAggregator.Function function;
+			try {
+				function = TimeBucketAggregator.Function.getValue(item);
+			}
+			catch(IllegalArgumentException e) {
+				throw new ValidationException(
+					ErrorCode.OBSERVER_INVALID_AGGREGATE_FUNCTIONS,
+					"The aggregate function is unknown: " + item,
+					e);
+			}
+			
+			if(! result.contains(function)) {
+				result.add(function);
+			}
+		}
+		
+		if(result.size() == 0) {
+			return null;
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Validates the number of points to which the data should be downsampled.
+	 * 
+	 * @param value The value to validate.
+	 * 
+	 * @param limit The maximum number of points.
+	 * 
+	 * @return The number of points or null if the value was null or only
+	 * 		   whitespace.
+	 * 
+	 * @throws ValidationException The value is not a number or is less than
+	 * 							   {@value LttbDownsampler#MIN_NUM_POINTS} or
+	 * 							   greater than the limit.
+	 */
+	public static final Integer validateDownsample(
+			final String value,
+			final long limit)
+			throws ValidationException {
+		
+		if(StringUtils.isEmptyOrWhitespaceOnly(value)) {
+			return null;
+		}
+		
+		try {
+			int result = Integer.decode(value.trim());
+			
+			if(result < LttbDownsampler.MIN_NUM_POINTS) {
+				throw new ValidationException(
+					ErrorCode.OBSERVER_INVALID_DOWNSAMPLE,
+					"The number of points to downsample to must be at least " +
+						LttbDownsampler.MIN_NUM_POINTS +
+						": " +
+						result);
+			}
+			else if(result > limit) {
+				throw new ValidationException(
+					ErrorCode.OBSERVER_INVALID_DOWNSAMPLE,
+					"The number of points to downsample to is greater than the allowed maximum (" +
+						limit +
+						"): " +
+						result);
+			}
+			
+			return result;
+		}
+		catch(NumberFormatException e) {
+			throw new ValidationException(
+				ErrorCode.OBSERVER_INVALID_DOWNSAMPLE,
+				"The number of points to downsample to is not a valid number: " +
+					value,
+				e);
+		}
+	}
+	
+	/**
+	 * Validates the path to the field with which data is downsampled. Whether
+	 * or not the field exists and is numeric can only be checked against the
+	 * stream's schema.
+	 * 
+	 * @param value The path, whose keys are separated by ':'s.
+	 * 
+	 * @return The trimmed path or null if the value was null or only
+	 * 		   whitespace.
+	 * 
+	 * @throws ValidationException One of the path's keys is empty.
+	 */
+	public static final String validateDownsampleField(
+			final String value)
+			throws ValidationException {
+		
+		if(StringUtils.isEmptyOrWhitespaceOnly(value)) {
+			return null;
+		}
+		
+		StringBuilder result = new StringBuilder();
+		String[] parts = value.trim().split(":", -1);
+		for(int i = 0; i < parts.length; i++) {
+			String part = parts[i].trim();
+			if(part.length() == 0) {
+				throw new ValidationException(
+					ErrorCode.OBSERVER_INVALID_AGGREGATION_FIELD,
+					"The field has an empty key: " + value);
+			}
+			
+			if(i > 0) {
+				result.append(':');
+			}
+			result.append(part);
+		}
+		
+		return result.toString();
+	}
+}
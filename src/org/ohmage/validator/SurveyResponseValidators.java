@@ -672,6 +672,41 @@ public final class SurveyResponseValidators {
 				"The return ID value is invalid: ");
 	}
 
+	/**
+	 * Validates the optional includeAnnotations boolean.
+	 * 
+	 * @param includeAnnotations  The value to validate.
+	 * @return  the Boolean equivalent of includeAnnotations 
+	 * @throws ValidationException if includeAnnotations is not null and 
+	 * 							   non-boolean.
+	 */
+	public static Boolean validateIncludeAnnotations(
+			final String includeAnnotations) 
+			throws ValidationException {
+		
+		return validateOptionalBoolean(
+				includeAnnotations, 
+				ErrorCode.SURVEY_INVALID_INCLUDE_ANNOTATIONS_VALUE, 
+				"The include annotations value is invalid: ");
+	}
+
+	/**
+	 * Validates the optional allowPartial boolean.
+	 * 
+	 * @param allowPartial  The value to validate.
+	 * @return  the Boolean equivalent of allowPartial 
+	 * @throws ValidationException if allowPartial is not null and 
+	 * 							   non-boolean.
+	 */
+	public static Boolean validateAllowPartial(final String allowPartial) 
+			throws ValidationException {
+		
+		return validateOptionalBoolean(
+				allowPartial, 
+				ErrorCode.SURVEY_INVALID_ALLOW_PARTIAL_VALUE, 
+				"The allow partial value is invalid: ");
+	}
+
 	/**
 	 * Validates the optional prettyPrint boolean.
 	 * 
@@ -15,13 +15,27 @@
  ******************************************************************************/
 package org.ohmage.validator;
 
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.domain.User;
+import org.ohmage.domain.UserBatchEntry;
+import org.ohmage.domain.UserInformation.UserPersonal;
+import org.ohmage.exception.DomainException;
 import org.ohmage.exception.ValidationException;
 import org.ohmage.request.InputKeys;
 import org.ohmage.util.StringUtils;
@@ -104,6 +118,26 @@ public final class UserValidators {
 	 */
 	public static final int MAX_PERSONAL_ID_LENGTH = 255;
 	
+	/**
+	 * The maximum number of users in a batch.
+	 */
+	public static final int MAX_USER_BATCH_SIZE = 10000;
+	
+	// The columns that a user batch may have. Only the username is required.
+	private static final List<String> USER_BATCH_COLUMNS = 
+		Arrays.asList(
+			InputKeys.USERNAME,
+			InputKeys.PASSWORD,
+			InputKeys.EMAIL_ADDRESS,
+			InputKeys.USER_ADMIN,
+			InputKeys.USER_ENABLED,
+			InputKeys.NEW_ACCOUNT,
+			InputKeys.CAMPAIGN_CREATION_PRIVILEGE,
+			InputKeys.FIRST_NAME,
+			InputKeys.LAST_NAME,
+			InputKeys.ORGANIZATION,
+			InputKeys.PERSONAL_ID);
+	
 	/**
 	 * Default constructor. Private so that it cannot be instantiated.
 	 */
@@ -878,6 +912,327 @@ public final class UserValidators {
 		}
 	}
 	
+	/**
+	 * Validates a batch of users to create or update. The batch may either be
+	 * a JSON array of objects or CSV text whose first line is a header. In 
+	 * both cases, the keys or columns are the same as the parameters to the
+	 * user creation and update APIs: {@value org.ohmage.request.InputKeys#USERNAME},
+	 * {@value org.ohmage.request.InputKeys#PASSWORD},
+	 * {@value org.ohmage.request.InputKeys#EMAIL_ADDRESS},
+	 * {@value org.ohmage.request.InputKeys#USER_ADMIN},
+	 * {@value org.ohmage.request.InputKeys#USER_ENABLED},
+	 * {@value org.ohmage.request.InputKeys#NEW_ACCOUNT},
+	 * {@value org.ohmage.request.InputKeys#CAMPAIGN_CREATION_PRIVILEGE},
+	 * {@value org.ohmage.request.InputKeys#FIRST_NAME},
+	 * {@value org.ohmage.request.InputKeys#LAST_NAME},
+	 * {@value org.ohmage.request.InputKeys#ORGANIZATION}, and
+	 * {@value org.ohmage.request.InputKeys#PERSONAL_ID}. Only the username is
+	 * required. The personal information must either be given in full or not
+	 * at all. Like the class roster, the CSV values may not contain commas.
+	 * 
+	 * @param value The batch.
+	 * 
+	 * @return The users in the order they were given or null if the value is
+	 * 		   null or whitespace only.
+	 * 
+	 * @throws ValidationException The batch is malformed, has more than 
+	 * 							   {@value #MAX_USER_BATCH_SIZE} users, has 
+	 * 							   the same user more than once, or any of its
+	 * 							   values are invalid.
+	 */
+	public static List<UserBatchEntry> validateUserBatch(
+			final byte[] value)
+			throws ValidationException {
+		
+		LOGGER.info("Validating a batch of users.");
+		
+		if(value == null) {
+			return null;
+		}
+		String batch = new String(value, Charset.forName("UTF-8")).trim();
+		if(batch.length() == 0) {
+			return null;
+		}
+		
+		List<Map<String, String>> rows;
+		if(batch.charAt(0) == '[') {
+			rows = parseUserBatchJson(batch);
+		}
+		else {
+			rows = parseUserBatchCsv(batch);
+		}
+		
+		if(rows.isEmpty()) {
+			return null;
+		}
+		if(rows.size() > MAX_USER_BATCH_SIZE) {
+			throw new ValidationException(
+					ErrorCode.USER_INVALID_BATCH,
+					"The batch may not have more than " + 
+						MAX_USER_BATCH_SIZE + 
+						" users.");
+		}
+		
+		List<UserBatchEntry> result = 
+				new ArrayList<UserBatchEntry>(rows.size());
+		Set<String> usernames = new HashSet<String>();
+		int rowNumber = 0;
+		for(Map<String, String> row : rows) {
+			rowNumber++;
+			
+			try {
+				String username = 
+						validateUsername(row.get(InputKeys.USERNAME));
+				if(username == null) {
+					throw new ValidationException(
+							ErrorCode.USER_INVALID_USERNAME,
+							"The username is missing.");
+				}
+				if(! usernames.add(username.toLowerCase())) {
+					throw new ValidationException(
+							ErrorCode.USER_INVALID_BATCH,
+							"The user is in the batch more than once: " + 
+								username);
+				}
+				
+				String firstName = 
+						validateFirstName(row.get(InputKeys.FIRST_NAME));
+				String lastName = 
+						validateLastName(row.get(InputKeys.LAST_NAME));
+				String organization = 
+						validateOrganization(row.get(InputKeys.ORGANIZATION));
+				String personalId = 
+						validatePersonalId(row.get(InputKeys.PERSONAL_ID));
+				
+				UserPersonal personalInfo = null;
+				if((firstName != null) && 
+					(lastName != null) && 
+					(organization != null) && 
+					(personalId != null)) {
+					
+					try {
+						personalInfo = 
+								new UserPersonal(
+										firstName, 
+										lastName, 
+										organization, 
+										personalId);
+					}
+					catch(DomainException e) {
+						throw new ValidationException(
+								ErrorCode.USER_INVALID_BATCH,
+								"The personal information is invalid.",
+								e);
+					}
+				}
+				else if((firstName != null) || 
+						(lastName != null) || 
+						(organization != null) || 
+						(personalId != null)) {
+					
+					throw new ValidationException(
+							ErrorCode.USER_INVALID_BATCH,
+							"The personal information must include the " +
+								InputKeys.FIRST_NAME + ", " +
+								InputKeys.LAST_NAME + ", " +
+								InputKeys.ORGANIZATION + ", and " +
+								InputKeys.PERSONAL_ID + ".");
+				}
+				
+				result.add(
+						new UserBatchEntry(
+								rowNumber,
+								username,
+								validatePlaintextPassword(
+										row.get(InputKeys.PASSWORD)),
+								validateEmailAddress(
+										row.get(InputKeys.EMAIL_ADDRESS)),
+								validateAdminValue(
+										row.get(InputKeys.USER_ADMIN)),
+								validateEnabledValue(
+										row.get(InputKeys.USER_ENABLED)),
+								validateNewAccountValue(
+										row.get(InputKeys.NEW_ACCOUNT)),
+								validateCampaignCreationPrivilegeValue(
+										row.get(InputKeys.CAMPAIGN_CREATION_PRIVILEGE)),
+								personalInfo));
+			}
+			catch(ValidationException e) {
+				throw new ValidationException(
+						e.getAnnotator().getErrorCode(),
+						"User " + rowNumber + " in the batch is invalid: " + 
+							e.getAnnotator().getErrorText(),
+						e);
+			}
+			catch(DomainException e) {
+				throw new ValidationException(
+						ErrorCode.USER_INVALID_BATCH,
+						"User " + rowNumber + " in the batch is invalid.",
+						e);
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Validates that an "update existing" flag is a valid boolean.
+	 * 
+	 * @param value The value to validate.
+	 * 
+	 * @return Whether or not the users in a batch that already exist should
+	 * 		   be updated. The default is false.
+	 * 
+	 * @throws ValidationException The value was not null nor whitespace only,
+	 * 							   and it could not be decoded as a boolean.
+	 */
+	public static boolean validateUpdateExisting(
+			final String value)
+			throws ValidationException {
+		
+		LOGGER.info("Validating an update existing value.");
+		
+		if(StringUtils.isEmptyOrWhitespaceOnly(value)) {
+			return false;
+		}
+		
+		Boolean result = StringUtils.decodeBoolean(value);
+		
+		if(result == null) {
+			throw new ValidationException(
+					ErrorCode.USER_INVALID_BATCH,
+					"The 'update existing' flag was not a valid boolean: " +
+						value);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Parses a batch of users that is a JSON array of objects.
+	 * 
+	 * @param batch The batch.
+	 * 
+	 * @return The values of each user by their keys.
+	 * 
+	 * @throws ValidationException The batch is not a JSON array of objects,
+	 * 							   or an object has an unknown key.
+	 */
+	private static List<Map<String, String>> parseUserBatchJson(
+			final String batch)
+			throws ValidationException {
+		
+		JSONArray array;
+		try {
+			array = new JSONArray(batch);
+		}
+		catch(JSONException e) {
+			throw new ValidationException(
+					ErrorCode.USER_INVALID_BATCH,
+					"The batch is not a valid JSON array.",
+					e);
+		}
+		
+		List<Map<String, String>> result = 
+				new ArrayList<Map<String, String>>(array.length());
+		for(int i = 0; i < array.length(); i++) {
+			JSONObject object = array.optJSONObject(i);
+			if(object == null) {
+				throw new ValidationException(
+						ErrorCode.USER_INVALID_BATCH,
+						"User " + (i + 1) + " in the batch is not a JSON object.");
+			}
+			
+			Map<String, String> row = new HashMap<String, String>();
+			Iterator<?> keys = object.keys();
+			while(keys.hasNext()) {
+				String key = (String) keys.next();
+				if(! USER_BATCH_COLUMNS.contains(key)) {
+					throw new ValidationException(
+							ErrorCode.USER_INVALID_BATCH,
+							"User " + (i + 1) + 
+								" in the batch has an unknown key: " + 
+								key);
+				}
+				if(! object.isNull(key)) {
+					row.put(key, object.optString(key));
+				}
+			}
+			result.add(row);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Parses a batch of users that is CSV text whose first line is a header.
+	 * Empty lines are ignored.
+	 * 
+	 * @param batch The batch.
+	 * 
+	 * @return The values of each user by their columns.
+	 * 
+	 * @throws ValidationException The header has an unknown or repeated 
+	 * 							   column, or a line has more values than 
+	 * 							   there are columns.
+	 */
+	private static List<Map<String, String>> parseUserBatchCsv(
+			final String batch)
+			throws ValidationException {
+		
+		// Excel (and most of Microsoft) saves newlines as carriage returns 
+		// instead of newlines, so we substitute those here as we only deal 
+		// with newlines.
+		String[] lines = batch.replace('\r', '\n').split("\n");
+		
+		String[] header = null;
+		List<Map<String, String>> result = new LinkedList<Map<String, String>>();
+		for(String line : lines) {
+			if(StringUtils.isEmptyOrWhitespaceOnly(line)) {
+				continue;
+			}
+			
+			String[] values = line.split(InputKeys.LIST_ITEM_SEPARATOR, -1);
+			if(header == null) {
+				header = new String[values.length];
+				for(int i = 0; i < values.length; i++) {
+					header[i] = values[i].trim();
+					
+					if(! USER_BATCH_COLUMNS.contains(header[i])) {
+						throw new ValidationException(
+								ErrorCode.USER_INVALID_BATCH,
+								"The batch's header has an unknown column: " + 
+									header[i]);
+					}
+					for(int j = 0; j < i; j++) {
+						if(header[j].equals(header[i])) {
+							throw new ValidationException(
+									ErrorCode.USER_INVALID_BATCH,
+									"The batch's header has the same column more than once: " + 
+										header[i]);
+						}
+					}
+				}
+				continue;
+			}
+			
+			if(values.length > header.length) {
+				throw new ValidationException(
+						ErrorCode.USER_INVALID_BATCH,
+						"The following line in the batch has more values than there are columns: " + 
+							line);
+			}
+			
+			Map<String, String> row = new HashMap<String, String>();
+			for(int i = 0; i < values.length; i++) {
+				row.put(header[i], values[i]);
+			}
+			result.add(row);
+		}
+		
+		return result;
+	}
+	
 	/**
 	 * Validates that a delete personal info flag is a valid boolean.
 	 * 
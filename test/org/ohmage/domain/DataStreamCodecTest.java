@@ -0,0 +1,381 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.ohmage.domain.Observer.Stream;
+import org.ohmage.exception.DomainException;
+
+/**
+ * Tests the binary encoding of stream data.
+ *
+ * @author John Jenkins
+ */
+public class DataStreamCodecTest extends TestCase {
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/**
+	 * A schema with each of the types, optional fields, a nested object, and
+	 * both kinds of arrays.
+	 */
+	private static final String SCHEMA =
+		"{" +
+			"\"type\":\"object\"," +
+			"\"fields\":[" +
+				"{\"name\":\"number\",\"type\":\"number\"}," +
+				"{\"name\":\"label\",\"type\":\"string\"}," +
+				"{\"name\":\"moving\",\"type\":\"boolean\"}," +
+				"{\"name\":\"note\",\"type\":\"string\",\"optional\":true}," +
+				"{" +
+					"\"name\":\"battery\"," +
+					"\"type\":\"object\"," +
+					"\"optional\":true," +
+					"\"fields\":[" +
+						"{\"name\":\"level\",\"type\":\"number\"}," +
+						"{\"name\":\"charging\",\"type\":\"boolean\"}" +
+					"]" +
+				"}," +
+				"{" +
+					"\"name\":\"samples\"," +
+					"\"type\":\"array\"," +
+					"\"constType\":{\"type\":\"number\",\"optional\":true}" +
+				"}," +
+				"{" +
+					"\"name\":\"pair\"," +
+					"\"type\":\"array\"," +
+					"\"constLength\":[" +
+						"{\"type\":\"string\"}," +
+						"{" +
+							"\"type\":\"array\"," +
+							"\"constType\":{" +
+								"\"type\":\"object\"," +
+								"\"fields\":[" +
+									"{\"name\":\"id\",\"type\":\"number\"}" +
+								"]" +
+							"}" +
+						"}" +
+					"]" +
+				"}" +
+			"]" +
+		"}";
+
+	/**
+	 * Points that conform to the schema.
+	 */
+	private static final String[] POINTS = {
+		"{\"number\":1,\"label\":\"a\",\"moving\":true," +
+			"\"battery\":{\"level\":0.5,\"charging\":false}," +
+			"\"samples\":[1,2.5,null,-3]," +
+			"\"pair\":[\"b\",[{\"id\":1},{\"id\":2}]]}",
+		"{\"number\":-2.25,\"label\":\"\",\"moving\":false," +
+			"\"note\":null,\"battery\":null," +
+			"\"samples\":[],\"pair\":[\"\",[]]}",
+		"{\"number\":12345678901234567890,\"label\":\"é漢\"," +
+			"\"moving\":true,\"note\":\"n\"," +
+			"\"samples\":[null],\"pair\":[\"c\",[{\"id\":-1}]]}"
+	};
+
+	/**
+	 * The boundaries of the variable-length integers.
+	 */
+	private static final long[] INTEGERS = {
+		0, 1, -1, 63, -64, 64, -65, 127, 128,
+		Integer.MAX_VALUE, Integer.MIN_VALUE,
+		((long) Integer.MAX_VALUE) + 1, ((long) Integer.MIN_VALUE) - 1,
+		Long.MAX_VALUE, Long.MIN_VALUE
+	};
+
+	private Stream binaryStream;
+	private Stream compressedStream;
+	private Stream jsonStream;
+
+	/**
+	 * Builds a stream with each encoding.
+	 */
+	@Override
+	protected void setUp() throws DomainException {
+		binaryStream = stream(DataStreamCodec.Encoding.BINARY);
+		compressedStream = stream(DataStreamCodec.Encoding.BINARY_COMPRESSED);
+		jsonStream = stream(DataStreamCodec.Encoding.JSON);
+	}
+
+	/**
+	 * Tests that points that conform to the schema are binary encoded and
+	 * decoded unchanged.
+	 */
+	@Test
+	public void testRoundTrip() throws DomainException, IOException {
+		for(String point : POINTS) {
+			JsonNode data = MAPPER.readTree(point);
+
+			byte[] encoded = DataStreamCodec.encode(binaryStream, data);
+			Assert.assertEquals(DataStreamCodec.MARKER, encoded[0]);
+			Assert.assertEquals(
+				data,
+				DataStreamCodec.decode(binaryStream, encoded));
+
+			encoded = DataStreamCodec.encode(jsonStream, data);
+			Assert.assertEquals('{', encoded[0]);
+			Assert.assertEquals(
+				data,
+				DataStreamCodec.decode(jsonStream, encoded));
+		}
+	}
+
+	/**
+	 * Tests that a large point is deflated and decoded unchanged.
+	 */
+	@Test
+	public void testCompressedRoundTrip() throws DomainException, IOException {
+		char[] repeated = new char[4096];
+		Arrays.fill(repeated, 'x');
+		JsonNode data =
+			MAPPER.readTree(
+				"{\"number\":7,\"label\":\"" + new String(repeated) + "\"," +
+					"\"moving\":false,\"samples\":[1,1,1,1]," +
+					"\"pair\":[\"" + new String(repeated) + "\",[]]}");
+
+		byte[] binary = DataStreamCodec.encode(binaryStream, data);
+		byte[] compressed = DataStreamCodec.encode(compressedStream, data);
+		Assert.assertEquals(DataStreamCodec.MARKER, compressed[0]);
+		Assert.assertTrue(compressed.length < binary.length);
+		Assert.assertEquals(
+			data,
+			DataStreamCodec.decode(compressedStream, compressed));
+
+		// A point that deflating doesn't shrink is stored without it.
+		data = MAPPER.readTree(POINTS[1]);
+		Assert.assertTrue(
+			Arrays.equals(
+				DataStreamCodec.encode(binaryStream, data),
+				DataStreamCodec.encode(compressedStream, data)));
+		Assert.assertEquals(
+			data,
+			DataStreamCodec.decode(
+				compressedStream,
+				DataStreamCodec.encode(compressedStream, data)));
+	}
+
+	/**
+	 * Tests the boundaries of the variable-length integers.
+	 */
+	@Test
+	public void testIntegers() throws DomainException, IOException {
+		for(long integer : INTEGERS) {
+			JsonNode data =
+				MAPPER.readTree(
+					"{\"number\":" + integer + ",\"label\":\"\"," +
+						"\"moving\":true,\"samples\":[" + integer + "]," +
+						"\"pair\":[\"\",[{\"id\":" + integer + "}]]}");
+
+			JsonNode decoded =
+				DataStreamCodec.decode(
+					binaryStream,
+					DataStreamCodec.encode(binaryStream, data));
+			Assert.assertEquals(data, decoded);
+			Assert.assertEquals(
+				integer,
+				decoded.get("number").getLongValue());
+		}
+	}
+
+	/**
+	 * Tests that points that don't conform to the schema are stored as JSON
+	 * text and still decoded unchanged.
+	 */
+	@Test
+	public void testNonConforming() throws DomainException, IOException {
+		String[] points = {
+			// An unknown field.
+			"{\"number\":1,\"label\":\"a\",\"moving\":true,\"extra\":1," +
+				"\"samples\":[],\"pair\":[\"b\",[]]}",
+			// A missing required field.
+			"{\"number\":1,\"moving\":true," +
+				"\"samples\":[],\"pair\":[\"b\",[]]}",
+			// A required field that is null.
+			"{\"number\":null,\"label\":\"a\",\"moving\":true," +
+				"\"samples\":[],\"pair\":[\"b\",[]]}",
+			// The wrong type.
+			"{\"number\":\"1\",\"label\":\"a\",\"moving\":true," +
+				"\"samples\":[],\"pair\":[\"b\",[]]}",
+			// The wrong length.
+			"{\"number\":1,\"label\":\"a\",\"moving\":true," +
+				"\"samples\":[],\"pair\":[\"b\"]}"
+		};
+
+		for(String point : points) {
+			JsonNode data = MAPPER.readTree(point);
+
+			byte[] encoded = DataStreamCodec.encode(binaryStream, data);
+			Assert.assertEquals('{', encoded[0]);
+			Assert.assertEquals(
+				data,
+				DataStreamCodec.decode(binaryStream, encoded));
+		}
+	}
+
+	/**
+	 * Tests that every truncation of a binary value is rejected.
+	 */
+	@Test
+	public void testTruncated() throws IOException {
+		for(String point : POINTS) {
+			JsonNode data = MAPPER.readTree(point);
+			assertTruncationsRejected(
+				binaryStream,
+				DataStreamCodec.encode(binaryStream, data));
+		}
+
+		char[] repeated = new char[4096];
+		Arrays.fill(repeated, 'x');
+		JsonNode data =
+			MAPPER.readTree(
+				"{\"number\":7,\"label\":\"" + new String(repeated) + "\"," +
+					"\"moving\":false,\"samples\":[],\"pair\":[\"\",[]]}");
+		assertTruncationsRejected(
+			compressedStream,
+			DataStreamCodec.encode(compressedStream, data));
+	}
+
+	/**
+	 * Tests that corrupt values are rejected.
+	 */
+	@Test
+	public void testCorrupt() throws IOException {
+		byte[] encoded =
+			DataStreamCodec.encode(
+				binaryStream,
+				MAPPER.readTree(POINTS[0]));
+
+		// An unknown version.
+		byte[] corrupt = encoded.clone();
+		corrupt[1] = 2;
+		assertRejected(binaryStream, corrupt);
+
+		// An unknown representation of the first number.
+		corrupt = encoded.clone();
+		corrupt[3] = 9;
+		assertRejected(binaryStream, corrupt);
+
+		// A variable-length integer that never ends.
+		corrupt = new byte[16];
+		corrupt[1] = DataStreamCodec.FORMAT_VERSION;
+		Arrays.fill(corrupt, 4, corrupt.length, (byte) 0xFF);
+		assertRejected(binaryStream, corrupt);
+
+		// A string that is longer than the value.
+		corrupt =
+			new byte[] {
+				DataStreamCodec.MARKER, DataStreamCodec.FORMAT_VERSION, 0,
+				0, 0,
+				(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F };
+		assertRejected(binaryStream, corrupt);
+
+		// A number whose text isn't a number.
+		corrupt =
+			new byte[] {
+				DataStreamCodec.MARKER, DataStreamCodec.FORMAT_VERSION, 0,
+				2, 3, 'a', 'b', 'c',
+				0, 0, 0, 0, 0, 0, 0, 0 };
+		assertRejected(binaryStream, corrupt);
+
+		// An unknown presence.
+		corrupt =
+			new byte[] {
+				DataStreamCodec.MARKER, DataStreamCodec.FORMAT_VERSION, 0,
+				0, 0, 0, 1, 7 };
+		assertRejected(binaryStream, corrupt);
+
+		// A deflated value whose body isn't deflated.
+		corrupt = encoded.clone();
+		corrupt[2] = 1;
+		assertRejected(binaryStream, corrupt);
+
+		// A deflated value that claims to be enormous.
+		corrupt =
+			new byte[] {
+				DataStreamCodec.MARKER, DataStreamCodec.FORMAT_VERSION, 1,
+				(byte) 0xFE, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07,
+				0x63, 0x00, 0x00 };
+		assertRejected(compressedStream, corrupt);
+
+		// Binary data for a stream that cannot decode it.
+		assertRejected(jsonStream, encoded);
+
+		// Invalid JSON text.
+		assertRejected(
+			binaryStream,
+			"{\"number\":".getBytes("UTF-8"));
+	}
+
+	/**
+	 * Builds the test stream with an encoding.
+	 */
+	private static Stream stream(
+			final DataStreamCodec.Encoding encoding)
+			throws DomainException {
+
+		return
+			new Stream(
+				"codec_test",
+				1,
+				"Codec Test",
+				"A stream for testing the binary encoding.",
+				false,
+				false,
+				false,
+				SCHEMA,
+				encoding);
+	}
+
+	/**
+	 * Asserts that every strict prefix of a value is rejected.
+	 */
+	private static void assertTruncationsRejected(
+			final Stream stream,
+			final byte[] encoded) {
+
+		Assert.assertEquals(DataStreamCodec.MARKER, encoded[0]);
+		for(int length = 1; length < encoded.length; length++) {
+			assertRejected(stream, Arrays.copyOf(encoded, length));
+		}
+	}
+
+	/**
+	 * Asserts that decoding a value throws a DomainException and not some
+	 * other exception.
+	 */
+	private static void assertRejected(
+			final Stream stream,
+			final byte[] encoded) {
+
+		try {
+			DataStreamCodec.decode(stream, encoded);
+			fail("The corrupt value was decoded: " + Arrays.toString(encoded));
+		}
+		catch(DomainException e) {
+			// Expected.
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.validator;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.Change;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.test.ParameterSets;
+
+/**
+ * Tests the change feed validators.
+ * 
+ * @author John Jenkins
+ */
+public class ChangeValidatorsTest extends TestCase {
+	/**
+	 * Tests the change token validator.
+	 */
+	@Test
+	public void testValidateChangeToken() {
+		try {
+			for(String emptyValue : ParameterSets.getEmptyValues()) {
+				Assert.assertNull(ChangeValidators.validateChangeToken(emptyValue));
+			}
+			
+			String[] invalidTokens = { "Invalid value.", "-1", "!" };
+			for(String invalidToken : invalidTokens) {
+				try {
+					ChangeValidators.validateChangeToken(invalidToken);
+					fail("The change token was invalid: " + invalidToken);
+				}
+				catch(ValidationException e) {
+					Assert.assertEquals(
+							ErrorCode.CHANGE_INVALID_TOKEN, 
+							e.getAnnotator().getErrorCode());
+				}
+			}
+			
+			long[] sequences = { 0, 1, 12345, Long.MAX_VALUE };
+			for(long sequence : sequences) {
+				Assert.assertEquals(
+						Long.valueOf(sequence), 
+						ChangeValidators.validateChangeToken(
+								Change.encodeToken(sequence)));
+			}
+		}
+		catch(ValidationException e) {
+			fail("A validation exception was thrown: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Tests the number to return validator.
+	 */
+	@Test
+	public void testValidateNumToReturn() {
+		try {
+			for(String emptyValue : ParameterSets.getEmptyValues()) {
+				Assert.assertEquals(
+						ChangeValidators.MAX_NUM_TO_RETURN, 
+						ChangeValidators.validateNumToReturn(emptyValue));
+			}
+			
+			String[] invalidValues = 
+				{ 
+					"Invalid value.", 
+					"0", 
+					"-1", 
+					Integer.toString(ChangeValidators.MAX_NUM_TO_RETURN + 1) 
+				};
+			for(String invalidValue : invalidValues) {
+				try {
+					ChangeValidators.validateNumToReturn(invalidValue);
+					fail("The number to return was invalid: " + invalidValue);
+				}
+				catch(ValidationException e) {
+					Assert.assertEquals(
+							ErrorCode.SERVER_INVALID_NUM_TO_RETURN, 
+							e.getAnnotator().getErrorCode());
+				}
+			}
+			
+			Assert.assertEquals(1, ChangeValidators.validateNumToReturn("1"));
+			Assert.assertEquals(
+					ChangeValidators.MAX_NUM_TO_RETURN, 
+					ChangeValidators.validateNumToReturn(
+							Integer.toString(
+									ChangeValidators.MAX_NUM_TO_RETURN)));
+		}
+		catch(ValidationException e) {
+			fail("A validation exception was thrown: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.validator;
+
+import java.util.UUID;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.ExportJob;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.test.ParameterSets;
+
+/**
+ * Tests the export validators.
+ * 
+ * @author John Jenkins
+ */
+public class ExportValidatorsTest extends TestCase {
+	/**
+	 * Tests the export ID validator.
+	 */
+	@Test
+	public void testValidateExportId() {
+		try {
+			for(String emptyValue : ParameterSets.getEmptyValues()) {
+				Assert.assertNull(ExportValidators.validateExportId(emptyValue));
+			}
+			
+			try {
+				ExportValidators.validateExportId("Invalid value.");
+				fail("The export ID was an invalid value.");
+			}
+			catch(ValidationException e) {
+				Assert.assertEquals(
+						ErrorCode.EXPORT_INVALID_ID, 
+						e.getAnnotator().getErrorCode());
+			}
+			
+			UUID id = UUID.randomUUID();
+			Assert.assertEquals(
+					id, 
+					ExportValidators.validateExportId(id.toString()));
+			Assert.assertEquals(
+					id, 
+					ExportValidators.validateExportId(" " + id + " "));
+		}
+		catch(ValidationException e) {
+			fail("A validation exception was thrown: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Tests the export type validator.
+	 */
+	@Test
+	public void testValidateExportType() {
+		try {
+			for(String emptyValue : ParameterSets.getEmptyValues()) {
+				Assert.assertNull(ExportValidators.validateExportType(emptyValue));
+			}
+			
+			try {
+				ExportValidators.validateExportType("Invalid value.");
+				fail("The export type was an invalid value.");
+			}
+			catch(ValidationException e) {
+				Assert.assertEquals(
+						ErrorCode.EXPORT_INVALID_TYPE, 
+						e.getAnnotator().getErrorCode());
+			}
+			
+			for(ExportJob.Type type : ExportJob.Type.values()) {
+				Assert.assertEquals(
+						type, 
+						ExportValidators.validateExportType(type.toString()));
+				Assert.assertEquals(
+						type, 
+						ExportValidators.validateExportType(
+								type.toString().toUpperCase()));
+			}
+		}
+		catch(ValidationException e) {
+			fail("A validation exception was thrown: " + e.getMessage());
+		}
+	}
+}
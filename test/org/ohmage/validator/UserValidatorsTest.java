@@ -15,10 +15,13 @@
  ******************************************************************************/
 package org.ohmage.validator;
 
+import java.util.List;
+
 import junit.framework.TestCase;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.ohmage.domain.UserBatchEntry;
 import org.ohmage.exception.ValidationException;
 import org.ohmage.test.ParameterSets;
 
@@ -639,4 +642,65 @@ public class UserValidatorsTest extends TestCase {
 			fail("A validation exception was thrown: " + e.getMessage());
 		}
 	}
+	
+	/**
+	 * Tests the user batch validator.
+	 */
+	@Test
+	public void testValidateUserBatch() {
+		try {
+			Assert.assertNull(UserValidators.validateUserBatch(null));
+			Assert.assertNull(UserValidators.validateUserBatch(" \n".getBytes()));
+			
+			List<UserBatchEntry> users = 
+				UserValidators.validateUserBatch(
+					("username,password,admin,first_name,last_name,organization,personal_id\r\n" +
+					"valid.user,password1,true,First,Last,Org,1\r\n" +
+					"\r\n" +
+					"other.user,,,,,,\r\n").getBytes());
+			Assert.assertEquals(2, users.size());
+			Assert.assertEquals(1, users.get(0).getRow());
+			Assert.assertEquals("valid.user", users.get(0).getUsername());
+			Assert.assertEquals("password1", users.get(0).getPassword());
+			Assert.assertEquals(Boolean.TRUE, users.get(0).getAdmin());
+			Assert.assertNull(users.get(0).getEnabled());
+			Assert.assertEquals("Org", users.get(0).getPersonalInfo().getOrganization());
+			Assert.assertEquals(2, users.get(1).getRow());
+			Assert.assertNull(users.get(1).getPassword());
+			Assert.assertNull(users.get(1).getPersonalInfo());
+			
+			users = 
+				UserValidators.validateUserBatch(
+					"[{\"username\":\"valid.user\",\"password\":\"password1\",\"enabled\":true},{\"username\":\"other.user\"}]".getBytes());
+			Assert.assertEquals(2, users.size());
+			Assert.assertEquals(Boolean.TRUE, users.get(0).getEnabled());
+			Assert.assertEquals("other.user", users.get(1).getUsername());
+			
+			String[] invalidBatches = 
+				new String[] {
+					"[{\"username\":\"valid.user\"",
+					"[\"valid.user\"]",
+					"[{\"username\":\"valid.user\",\"unknown\":\"value\"}]",
+					"[{\"password\":\"password1\"}]",
+					"username,unknown\nvalid.user,value",
+					"username,username\nvalid.user,valid.user",
+					"username\nvalid.user,extra",
+					"username\nvalid.user\nVALID.USER",
+					"username,first_name\nvalid.user,First",
+					"username,admin\nvalid.user,maybe"
+				};
+			for(String invalidBatch : invalidBatches) {
+				try {
+					UserValidators.validateUserBatch(invalidBatch.getBytes());
+					fail("An invalid batch passed validation: " + invalidBatch);
+				}
+				catch(ValidationException e) {
+					// Passed.
+				}
+			}
+		}
+		catch(ValidationException e) {
+			fail("A validation exception was thrown: " + e.getMessage());
+		}
+	}
 }
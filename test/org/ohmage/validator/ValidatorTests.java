@@ -43,10 +43,12 @@ public class ValidatorTests {
 		suite.addTestSuite(CampaignClassValidatorsTest.class);
 		suite.addTestSuite(CampaignDocumentValidatorsTest.class);
 		suite.addTestSuite(CampaignValidatorsTest.class);
+		suite.addTestSuite(ChangeValidatorsTest.class);
 		suite.addTestSuite(ClassDocumentValidatorsTest.class);
 		suite.addTestSuite(ClassValidatorsTest.class);
 		//suite.addTestSuite(DateValidatorsTest.class);
 		suite.addTestSuite(DocumentValidatorsTest.class);
+		suite.addTestSuite(ExportValidatorsTest.class);
 		suite.addTestSuite(ImageValidatorsTest.class);
 		suite.addTestSuite(MobilityValidatorsTest.class);
 		suite.addTestSuite(SurveyResponseValidatorsTest.class);